@@ -28,6 +28,8 @@
 
 package org.opennms.core.ipc.sink.common;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Objects;
 
 import org.opennms.core.ipc.sink.aggregation.AggregatingSinkMessageProducer;
@@ -37,6 +39,9 @@ import org.opennms.core.ipc.sink.api.MessageDispatcherFactory;
 import org.opennms.core.ipc.sink.api.SinkModule;
 import org.opennms.core.ipc.sink.api.SyncDispatcher;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer.Context;
 
@@ -47,6 +52,8 @@ import com.codahale.metrics.Timer.Context;
  * Different types of dispatchers are created based on whether or not the module is using aggregation.
  *
  * Asynchronous dispatchers use a queue and a thread pool to delegate to a suitable synchronous dispatcher.
+ * When an off-heap directory is set, messages that do not fit in the queue are spilled to disk
+ * and replayed once the queue has room again.
  *
  * @author jwhite
  *
@@ -54,6 +61,34 @@ import com.codahale.metrics.Timer.Context;
  */
 public abstract class AbstractMessageDispatcherFactory<W> implements MessageDispatcherFactory {
 
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractMessageDispatcherFactory.class);
+
+    /**
+     * System property used to set the directory in which messages are spilled when
+     * the queue of an asynchronous dispatcher is full. Spilling is disabled when unset.
+     */
+    public static final String OFF_HEAP_DIRECTORY_SYS_PROP = "org.opennms.core.ipc.sink.offheap.directory";
+
+    /**
+     * System property used to override the size of the segment files, in bytes.
+     */
+    public static final String OFF_HEAP_SEGMENT_SIZE_SYS_PROP = "org.opennms.core.ipc.sink.offheap.segmentSize";
+
+    /**
+     * System property used to override the maximum number of bytes spilled by each module.
+     */
+    public static final String OFF_HEAP_MAX_SIZE_SYS_PROP = "org.opennms.core.ipc.sink.offheap.maxSize";
+
+    public static final int DEFAULT_OFF_HEAP_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    public static final long DEFAULT_OFF_HEAP_MAX_SIZE = 1024L * 1024 * 1024;
+
+    private File offHeapDirectory = System.getProperty(OFF_HEAP_DIRECTORY_SYS_PROP) != null ? new File(System.getProperty(OFF_HEAP_DIRECTORY_SYS_PROP)) : null;
+
+    private int offHeapSegmentSize = Integer.getInteger(OFF_HEAP_SEGMENT_SIZE_SYS_PROP, DEFAULT_OFF_HEAP_SEGMENT_SIZE);
+
+    private long offHeapMaxSize = Long.getLong(OFF_HEAP_MAX_SIZE_SYS_PROP, DEFAULT_OFF_HEAP_MAX_SIZE);
+
     public abstract <S extends Message, T extends Message> void dispatch(SinkModule<S, T> module, W metadata, T message);
 
     private final MetricRegistry metrics = new MetricRegistry();
@@ -94,7 +129,28 @@ public abstract class AbstractMessageDispatcherFactory<W> implements MessageDisp
         Objects.requireNonNull(module.getAsyncPolicy(), "module must have an AsyncPolicy");
         final DispatcherState<W,S,T> state = new DispatcherState<>(this, module);
         final SyncDispatcher<S> syncDispatcher = createSyncDispatcher(state);
-        return new AsyncDispatcherImpl<>(state, module.getAsyncPolicy(), syncDispatcher);
+        final MappedSegmentStore overflowStore = createOverflowStore(module);
+        return new AsyncDispatcherImpl<>(state, module.getAsyncPolicy(), syncDispatcher,
+                overflowStore, message -> timedDispatch(state, message));
+    }
+
+    /**
+     * Opens the store used to spill the messages of the given module.
+     *
+     * @return the store, or <code>null</code> if spilling is disabled, or the store could not be opened
+     */
+    private MappedSegmentStore createOverflowStore(SinkModule<?, ?> module) {
+        if (offHeapDirectory == null) {
+            return null;
+        }
+        final File directory = new File(offHeapDirectory, module.getId());
+        try {
+            return new MappedSegmentStore(directory, offHeapSegmentSize, offHeapMaxSize);
+        } catch (IOException|RuntimeException e) {
+            LOG.warn("Failed to open the off-heap store in {}. Messages for module {} will not be spilled to disk.",
+                    directory, module.getId(), e);
+            return null;
+        }
     }
 
     protected <S extends Message, T extends Message> SyncDispatcher<S> createSyncDispatcher(DispatcherState<W,S,T> state) {
@@ -142,4 +198,28 @@ public abstract class AbstractMessageDispatcherFactory<W> implements MessageDisp
     protected MetricRegistry getMetrics() {
         return metrics;
     }
+
+    public File getOffHeapDirectory() {
+        return offHeapDirectory;
+    }
+
+    public void setOffHeapDirectory(File offHeapDirectory) {
+        this.offHeapDirectory = offHeapDirectory;
+    }
+
+    public int getOffHeapSegmentSize() {
+        return offHeapSegmentSize;
+    }
+
+    public void setOffHeapSegmentSize(int offHeapSegmentSize) {
+        this.offHeapSegmentSize = offHeapSegmentSize;
+    }
+
+    public long getOffHeapMaxSize() {
+        return offHeapMaxSize;
+    }
+
+    public void setOffHeapMaxSize(long offHeapMaxSize) {
+        this.offHeapMaxSize = offHeapMaxSize;
+    }
 }
@@ -28,6 +28,7 @@
 
 package org.opennms.core.ipc.sink.common;
 
+import java.io.IOException;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
@@ -36,12 +37,15 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.joda.time.Duration;
 import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.ipc.sink.api.AggregationPolicy;
 import org.opennms.core.ipc.sink.api.AsyncDispatcher;
 import org.opennms.core.ipc.sink.api.AsyncPolicy;
 import org.opennms.core.ipc.sink.api.Message;
+import org.opennms.core.ipc.sink.api.SinkModule;
 import org.opennms.core.ipc.sink.api.SyncDispatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,8 +59,24 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
 
     private static final Logger LOG = LoggerFactory.getLogger(AsyncDispatcherImpl.class);
 
+    /**
+     * How long the replay thread waits before checking the queue again
+     * when the overflow store is empty, or the queue is full.
+     */
+    private static final long REPLAY_INTERVAL_MS = 100;
+
+    private final SinkModule<S,T> module;
+
     private final SyncDispatcher<S> syncDispatcher;
 
+    private final MappedSegmentStore overflowStore;
+
+    private final Consumer<T> overflowDispatcher;
+
+    private final Thread replayThread;
+
+    private volatile boolean closed = false;
+
     final RateLimitedLog rateLimittedLogger = RateLimitedLog
             .withRateLimit(LOG)
             .maxRate(5).every(Duration.standardSeconds(30))
@@ -66,10 +86,38 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
     final ExecutorService executor;
 
     public AsyncDispatcherImpl(DispatcherState<W,S,T> state, AsyncPolicy asyncPolicy, SyncDispatcher<S> syncDispatcher) {
+        this(state, asyncPolicy, syncDispatcher, null, null);
+    }
+
+    /**
+     * Builds an asynchronous dispatcher that spills messages to the given store
+     * when the queue is full, instead of blocking or dropping them.
+     *
+     * Spilled messages are stored in their marshalled form, and are replayed in order
+     * once the queue has room again. Since these were already aggregated, they are handed
+     * to the overflow dispatcher directly instead of going through the sync dispatcher.
+     *
+     * @param overflowStore store used for messages that do not fit in the queue,
+     * or <code>null</code> if the messages should never be spilled
+     * @param overflowDispatcher used to dispatch the replayed messages
+     */
+    public AsyncDispatcherImpl(DispatcherState<W,S,T> state, AsyncPolicy asyncPolicy, SyncDispatcher<S> syncDispatcher,
+            MappedSegmentStore overflowStore, Consumer<T> overflowDispatcher) {
         Objects.requireNonNull(state);
         Objects.requireNonNull(asyncPolicy);
+        this.module = state.getModule();
         this.syncDispatcher = Objects.requireNonNull(syncDispatcher);
+        this.overflowStore = overflowStore;
+        if (overflowStore != null) {
+            this.overflowDispatcher = Objects.requireNonNull(overflowDispatcher);
+        } else {
+            this.overflowDispatcher = null;
+        }
 
+        // Replayed messages that are rejected are still in the overflow store, so they are not dropped
+        final Counter replayRejectedCounter = overflowStore != null
+                ? state.getMetrics().counter(MetricRegistry.name(state.getModule().getId(), "replay-rejected"))
+                : null;
         final RejectedExecutionHandler rejectedExecutionHandler;
         if (asyncPolicy.isBlockWhenFull()) {
             // This queue ensures that calling thread is blocked when the queue is full
@@ -83,7 +131,11 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
             rejectedExecutionHandler = new RejectedExecutionHandler() {
                 @Override
                 public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
-                    droppedCounter.inc();
+                    if (r instanceof AsyncDispatcherImpl.ReplayedMessage) {
+                        replayRejectedCounter.inc();
+                    } else {
+                        droppedCounter.inc();
+                    }
                     throw new RejectedExecutionException("Task " + r.toString() +
                             " rejected from " +
                             e.toString());
@@ -107,6 +159,28 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
                 new LogPreservingThreadFactory("OpenNMS.Sink.AsyncDispatcher." + state.getModule().getId(), Integer.MAX_VALUE),
                 rejectedExecutionHandler
             );
+
+        if (overflowStore != null) {
+            state.getMetrics().register(MetricRegistry.name(state.getModule().getId(), "spilled-messages"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return overflowStore.size();
+                }
+            });
+            state.getMetrics().register(MetricRegistry.name(state.getModule().getId(), "spilled-bytes"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return overflowStore.getRecordBytes();
+                }
+            });
+
+            replayThread = new LogPreservingThreadFactory("OpenNMS.Sink.AsyncDispatcher.Replay." + state.getModule().getId(), 1)
+                    .newThread(this::replay);
+            replayThread.setDaemon(true);
+            replayThread.start();
+        } else {
+            replayThread = null;
+        }
     }
 
     /**
@@ -147,8 +221,31 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
         }
     }
 
+    /**
+     * A message replayed from the overflow store. It is only removed from the
+     * store once it was accepted by the executor.
+     */
+    private class ReplayedMessage implements Runnable {
+        private final T message;
+
+        private ReplayedMessage(T message) {
+            this.message = message;
+        }
+
+        @Override
+        public void run() {
+            overflowDispatcher.accept(message);
+        }
+    }
+
     @Override
     public CompletableFuture<S> send(S message) {
+        if (overflowStore != null
+                // Keep spilling until the store is drained, so that messages are dispatched in order
+                && (overflowStore.size() > 0 || queue.remainingCapacity() < 1)
+                && spill(message)) {
+            return CompletableFuture.completedFuture(message);
+        }
         try {
             return CompletableFuture.supplyAsync(() -> {
                 syncDispatcher.send(message);
@@ -161,6 +258,95 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
         }
     }
 
+    /**
+     * Marshals the message and appends it to the overflow store.
+     *
+     * @return <code>true</code> if the message was stored, or <code>false</code>
+     * if the store is full, or the message could not be stored
+     */
+    private boolean spill(S message) {
+        try {
+            return overflowStore.append(module.marshal(toSingleMessage(message)));
+        } catch (IOException|RuntimeException e) {
+            rateLimittedLogger.warn("Failed to spill message for module {} to disk.", module.getId(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Converts the given message to a message that can be marshalled,
+     * aggregating it on its own if the module uses aggregation.
+     */
+    @SuppressWarnings("unchecked")
+    private T toSingleMessage(S message) {
+        final AggregationPolicy<S,T,Object> aggregationPolicy = (AggregationPolicy<S,T,Object>)module.getAggregationPolicy();
+        if (aggregationPolicy == null) {
+            // Modules that do not use an AggregationPolicy must have the same types for S and T
+            return (T)message;
+        }
+        return aggregationPolicy.build(aggregationPolicy.aggregate(null, message));
+    }
+
+    /**
+     * Moves messages from the overflow store back to the queue as room becomes available.
+     *
+     * Messages are only removed from the store once they were accepted by the executor,
+     * so a message that is rejected is retried instead of being lost.
+     */
+    private void replay() {
+        while (!closed) {
+            try {
+                if (overflowStore.size() < 1 || queue.remainingCapacity() < 1) {
+                    Thread.sleep(REPLAY_INTERVAL_MS);
+                    continue;
+                }
+                final byte[] bytes = overflowStore.peek();
+                if (bytes == null) {
+                    // The remaining records were discarded, or removed concurrently
+                    Thread.sleep(REPLAY_INTERVAL_MS);
+                    continue;
+                }
+                final T message;
+                try {
+                    message = module.unmarshal(bytes);
+                } catch (RuntimeException e) {
+                    // Don't keep retrying a message we will never be able to read
+                    overflowStore.remove();
+                    rateLimittedLogger.warn("Dropped replayed message for module {}: it could not be unmarshalled.", module.getId(), e);
+                    continue;
+                }
+                executor.execute(new ReplayedMessage(message));
+                overflowStore.remove();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RejectedExecutionException e) {
+                // The message is still in the store, try again once the queue has room
+                if (!backOff()) {
+                    break;
+                }
+            } catch (RuntimeException e) {
+                rateLimittedLogger.warn("Failed to replay message for module {}.", module.getId(), e);
+                if (!backOff()) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return <code>false</code> if the replay thread was interrupted while waiting
+     */
+    private boolean backOff() {
+        try {
+            Thread.sleep(REPLAY_INTERVAL_MS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     @Override
     public int getQueueSize() {
         return queue.size();
@@ -168,7 +354,16 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
 
     @Override
     public void close() throws Exception {
+        closed = true;
+        if (replayThread != null) {
+            replayThread.interrupt();
+            replayThread.join();
+        }
         syncDispatcher.close();
         executor.shutdown();
+        if (overflowStore != null) {
+            // Any messages left in the store will be replayed the next time it is opened
+            overflowStore.close();
+        }
     }
 }
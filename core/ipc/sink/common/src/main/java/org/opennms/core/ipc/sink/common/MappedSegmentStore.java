@@ -0,0 +1,406 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.ipc.sink.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only store for byte arrays, backed by memory-mapped segment files.
+ *
+ * Records are appended to the last segment, and read back in the same order
+ * from the first one. Each record is stored as its length followed by its bytes.
+ * A length of zero marks the end of the records in a segment, and records that
+ * were read have their length negated, so that the records that remain can be
+ * recovered when the store is opened again.
+ *
+ * Segments are deleted once all of their records have been read. The total size
+ * of the segment files is capped, and appends are refused once the cap is reached.
+ * A segment in which a record was found to be corrupted is discarded as a whole,
+ * since the records that follow can no longer be located.
+ */
+public class MappedSegmentStore implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedSegmentStore.class);
+
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    private static final int HEADER_SIZE = Integer.BYTES;
+
+    private final File directory;
+
+    private final int segmentSize;
+
+    private final long maxSize;
+
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    private long nextSequence = 0;
+
+    private long recordCount = 0;
+
+    private long recordBytes = 0;
+
+    private long segmentBytes = 0;
+
+    private boolean closed = false;
+
+    private static class Segment {
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private int readPosition = 0;
+        private int writePosition = 0;
+        private boolean writable = true;
+        // The unread records of the segment
+        private long recordCount = 0;
+        private long recordBytes = 0;
+
+        private Segment(File file, int capacity) throws IOException {
+            this.file = file;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                if (raf.length() < capacity) {
+                    raf.setLength(capacity);
+                }
+                // The mapping remains valid after the channel is closed
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            }
+        }
+
+        private int capacity() {
+            return buffer.capacity();
+        }
+
+        private boolean hasRoomFor(int length) {
+            return writable && writePosition + HEADER_SIZE + length <= capacity();
+        }
+
+        private int lengthAt(int position) {
+            if (position + HEADER_SIZE > capacity()) {
+                return 0;
+            }
+            final int length = buffer.getInt(position);
+            if (Math.abs((long)length) > capacity() - position - HEADER_SIZE) {
+                // Truncated or corrupted record, treat it as the end of the segment
+                return 0;
+            }
+            return length;
+        }
+    }
+
+    public MappedSegmentStore(File directory, int segmentSize, long maxSize) throws IOException {
+        this.directory = Objects.requireNonNull(directory);
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("segmentSize must be greater than " + HEADER_SIZE);
+        }
+        this.segmentSize = segmentSize;
+        this.maxSize = maxSize;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create directory " + directory);
+        }
+        recover();
+    }
+
+    /**
+     * Opens the segments left over by a previous instance and locates the
+     * records that were not yet read.
+     */
+    private void recover() throws IOException {
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        final long[] sequences = new long[files.length];
+        int numSegments = 0;
+        for (File file : files) {
+            try {
+                sequences[numSegments++] = Long.parseLong(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                LOG.warn("Ignoring unexpected file {} in {}", file, directory);
+            }
+        }
+        Arrays.sort(sequences, 0, numSegments);
+
+        for (int i = 0; i < numSegments; i++) {
+            final File file = getSegmentFile(sequences[i]);
+            final Segment segment = new Segment(file, 0);
+            // Segments are never appended to after a restart
+            segment.writable = false;
+
+            int position = 0;
+            int length;
+            while ((length = segment.lengthAt(position)) != 0) {
+                if (length < 0) {
+                    segment.readPosition = position + HEADER_SIZE - length;
+                } else {
+                    segment.recordCount++;
+                    segment.recordBytes += length;
+                }
+                position += HEADER_SIZE + Math.abs(length);
+            }
+            segment.writePosition = position;
+
+            if (segment.readPosition < segment.writePosition) {
+                segments.addLast(segment);
+                segmentBytes += segment.capacity();
+                recordCount += segment.recordCount;
+                recordBytes += segment.recordBytes;
+            } else {
+                delete(segment);
+            }
+            nextSequence = sequences[i] + 1;
+        }
+        if (recordCount > 0) {
+            LOG.info("Recovered {} records ({} bytes) from {}", recordCount, recordBytes, directory);
+        }
+    }
+
+    /**
+     * Appends the given record to the store.
+     *
+     * @param record the bytes to store
+     * @return <code>true</code> if the record was stored, or <code>false</code>
+     * if doing so would exceed the maximum size of the store, or if the store is closed
+     * @throws IOException if a new segment could not be created
+     */
+    public synchronized boolean append(byte[] record) throws IOException {
+        if (closed) {
+            return false;
+        }
+        Segment segment = segments.peekLast();
+        if (segment == null || !segment.hasRoomFor(record.length)) {
+            final int capacity = Math.max(segmentSize, HEADER_SIZE + record.length);
+            if (segmentBytes + capacity > maxSize) {
+                return false;
+            }
+            if (segment != null) {
+                segment.writable = false;
+            }
+            segment = new Segment(getSegmentFile(nextSequence++), capacity);
+            segments.addLast(segment);
+            segmentBytes += segment.capacity();
+        }
+
+        // Write the record before its length, so that a partial write is never read back
+        final ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(segment.writePosition + HEADER_SIZE);
+        buffer.put(record);
+        segment.buffer.putInt(segment.writePosition, record.length);
+        segment.writePosition += HEADER_SIZE + record.length;
+
+        segment.recordCount++;
+        segment.recordBytes += record.length;
+        recordCount++;
+        recordBytes += record.length;
+        return true;
+    }
+
+    /**
+     * Retrieves and removes the oldest record in the store.
+     *
+     * @return the record, or <code>null</code> if the store is empty
+     */
+    public synchronized byte[] poll() {
+        final byte[] record = peek();
+        if (record != null) {
+            remove();
+        }
+        return record;
+    }
+
+    /**
+     * Retrieves, but does not remove, the oldest record in the store.
+     *
+     * @return the record, or <code>null</code> if the store is empty
+     */
+    public synchronized byte[] peek() {
+        final Segment segment = firstReadableRecord();
+        if (segment == null) {
+            return null;
+        }
+        final int length = segment.buffer.getInt(segment.readPosition);
+        final byte[] record = new byte[length];
+        final ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(segment.readPosition + HEADER_SIZE);
+        buffer.get(record);
+        return record;
+    }
+
+    /**
+     * Removes the oldest record in the store, i.e. the one last returned by {@link #peek()}.
+     *
+     * @return <code>true</code> if a record was removed, or <code>false</code> if the store is empty
+     */
+    public synchronized boolean remove() {
+        final Segment segment = firstReadableRecord();
+        if (segment == null) {
+            return false;
+        }
+        final int length = segment.buffer.getInt(segment.readPosition);
+        // Mark the record as read
+        segment.buffer.putInt(segment.readPosition, -length);
+        segment.readPosition += HEADER_SIZE + length;
+
+        segment.recordCount--;
+        segment.recordBytes -= length;
+        recordCount--;
+        recordBytes -= length;
+        return true;
+    }
+
+    /**
+     * Returns the first segment with unread records, after checking that the length of
+     * the record at its read position is valid. Segments with an invalid length are discarded.
+     */
+    private Segment firstReadableRecord() {
+        Segment segment;
+        while ((segment = firstReadableSegment()) != null) {
+            final int length = segment.lengthAt(segment.readPosition);
+            if (length > 0 && segment.readPosition + HEADER_SIZE + length <= segment.writePosition) {
+                return segment;
+            }
+            LOG.warn("Discarding {} records ({} bytes) from {}: the record at position {} is corrupted.",
+                    segment.recordCount, segment.recordBytes, segment.file, segment.readPosition);
+            recordCount -= segment.recordCount;
+            recordBytes -= segment.recordBytes;
+            segment.recordCount = 0;
+            segment.recordBytes = 0;
+            segment.readPosition = segment.writePosition;
+            // Further records go to a new segment, so that this one gets deleted
+            segment.writable = false;
+        }
+        return null;
+    }
+
+    /**
+     * Deletes the segments that were fully read, and returns the first
+     * segment with unread records, if any.
+     */
+    private Segment firstReadableSegment() {
+        Segment segment;
+        while ((segment = segments.peekFirst()) != null) {
+            if (segment.readPosition < segment.writePosition) {
+                return segment;
+            }
+            if (segment.writable) {
+                // All caught up with the writer
+                return null;
+            }
+            segments.removeFirst();
+            segmentBytes -= segment.capacity();
+            delete(segment);
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of records in the store
+     */
+    public synchronized long size() {
+        return recordCount;
+    }
+
+    /**
+     * @return the number of bytes used by the records in the store
+     */
+    public synchronized long getRecordBytes() {
+        return recordBytes;
+    }
+
+    /**
+     * @return the number of bytes used by the segment files
+     */
+    public synchronized long getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    private File getSegmentFile(long sequence) {
+        return new File(directory, String.format("%019d%s", sequence, SEGMENT_SUFFIX));
+    }
+
+    private void delete(Segment segment) {
+        unmap(segment.buffer);
+        if (!segment.file.delete()) {
+            LOG.warn("Failed to delete segment {}", segment.file);
+        }
+    }
+
+    /**
+     * Releases the mapping of the buffer now, instead of whenever it is garbage collected,
+     * so that the space used by deleted segments is given back. The buffer must not be
+     * used afterwards.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                // Java 8
+                final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+                return;
+            }
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException|RuntimeException e) {
+            LOG.debug("Failed to unmap a segment, it will be unmapped once it is garbage collected.", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+            unmap(segment.buffer);
+        }
+        segments.clear();
+        closed = true;
+    }
+}
@@ -37,14 +37,18 @@ import static org.junit.Assert.assertTrue;
 
 import static org.mockito.Mockito.*;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
@@ -66,6 +70,9 @@ public class AsyncDispatcherTest {
 
     private final ThreadLockingDispatcherFactory<MyMessage> threadLockingDispatcherFactory = new ThreadLockingDispatcherFactory<>();
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     @Test(timeout=3*60*1000)
     public void testConcurrencyAndQueuing() throws Exception {
         when(module.getAsyncPolicy()).thenReturn(new AsyncPolicy() {
@@ -202,4 +209,65 @@ public class AsyncDispatcherTest {
 
         asyncDispatcher.close();
     }
+
+    @Test(timeout=3*60*1000)
+    public void testSpilledMessagesAreReplayed() throws Exception {
+        final int numSpilled = 10;
+        when(module.getId()).thenReturn("spill");
+        when(module.marshal(any(MyMessage.class))).thenReturn(new byte[] { 1, 2, 3 });
+        when(module.unmarshal(any(byte[].class))).thenAnswer(invocation -> new MyMessage());
+        final AsyncPolicy asyncPolicy = new AsyncPolicy() {
+            @Override
+            public int getQueueSize() {
+                return QUEUE_SIZE;
+            }
+
+            @Override
+            public int getNumThreads() {
+                return NUM_THREADS;
+            }
+
+            @Override
+            public boolean isBlockWhenFull() {
+                return false;
+            }
+        };
+
+        final File directory = tempFolder.newFolder();
+        final MappedSegmentStore overflowStore = new MappedSegmentStore(directory, 1024, Long.MAX_VALUE);
+        final ThreadLockingSyncDispatcher<MyMessage> threadLockingSyncDispatcher = threadLockingDispatcherFactory.getThreadLockingSyncDispatcher();
+        final AtomicInteger numReplayed = new AtomicInteger(0);
+        final DispatcherState<Void, MyMessage, MyMessage> state = new DispatcherState<>(threadLockingDispatcherFactory, module);
+        final AsyncDispatcher<MyMessage> asyncDispatcher = new AsyncDispatcherImpl<>(state,
+                asyncPolicy, threadLockingSyncDispatcher, overflowStore, message -> numReplayed.incrementAndGet());
+
+        final AtomicBoolean allThreadsLocked = new AtomicBoolean(false);
+        threadLockingSyncDispatcher.waitForThreads(NUM_THREADS).thenRun(() -> {
+            allThreadsLocked.set(true);
+        });
+
+        // Lock all of the threads and fill up the queue
+        for (int i = 0; i < NUM_THREADS + QUEUE_SIZE; i++) {
+            asyncDispatcher.send(new MyMessage());
+        }
+        await().atMost(1, MINUTES).until(() -> allThreadsLocked.get());
+        assertEquals(QUEUE_SIZE, asyncDispatcher.getQueueSize());
+
+        // Messages that don't fit in the queue are spilled instead of being rejected
+        for (int i = 0; i < numSpilled; i++) {
+            final CompletableFuture<MyMessage> future = asyncDispatcher.send(new MyMessage());
+            assertTrue("message should have been spilled", future.isDone() && !future.isCompletedExceptionally());
+        }
+        assertEquals(numSpilled, overflowStore.size());
+        assertEquals(0, numReplayed.get());
+
+        // Release the threads, the spilled messages are replayed once the queue has room
+        threadLockingSyncDispatcher.release();
+        await().atMost(1, MINUTES).until(() -> numReplayed.get(), equalTo(numSpilled));
+        assertEquals(0, overflowStore.size());
+        // None of the messages were lost, even if some replays had to be retried
+        assertEquals(0, state.getMetrics().counter("spill.dropped").getCount());
+
+        asyncDispatcher.close();
+    }
 }
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedSegmentStoreTest {
+
+    private static final int SEGMENT_SIZE = 64;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void canReadRecordsInOrderAcrossSegments() throws Exception {
+        try (MappedSegmentStore store = new MappedSegmentStore(tempFolder.getRoot(), SEGMENT_SIZE, Long.MAX_VALUE)) {
+            for (int i = 0; i < 100; i++) {
+                assertTrue(store.append(toBytes(i)));
+            }
+            assertEquals(100, store.size());
+            assertTrue(store.getSegmentBytes() > SEGMENT_SIZE);
+
+            for (int i = 0; i < 100; i++) {
+                assertArrayEquals(toBytes(i), store.poll());
+            }
+            assertNull(store.poll());
+            assertEquals(0, store.size());
+            assertEquals(0, store.getRecordBytes());
+        }
+        // Only the segment that is still being written to should be left
+        assertEquals(1, tempFolder.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void canPeekWithoutRemoving() throws Exception {
+        try (MappedSegmentStore store = new MappedSegmentStore(tempFolder.getRoot(), SEGMENT_SIZE, Long.MAX_VALUE)) {
+            assertNull(store.peek());
+            assertFalse(store.remove());
+
+            for (int i = 0; i < 10; i++) {
+                assertTrue(store.append(toBytes(i)));
+            }
+            for (int i = 0; i < 10; i++) {
+                assertArrayEquals(toBytes(i), store.peek());
+                assertArrayEquals(toBytes(i), store.peek());
+                assertEquals(10 - i, store.size());
+                assertTrue(store.remove());
+            }
+            assertNull(store.peek());
+            assertEquals(0, store.size());
+        }
+    }
+
+    @Test
+    public void canStoreRecordsLargerThanSegments() throws Exception {
+        final byte[] record = new byte[SEGMENT_SIZE * 3];
+        record[record.length - 1] = 42;
+        try (MappedSegmentStore store = new MappedSegmentStore(tempFolder.getRoot(), SEGMENT_SIZE, Long.MAX_VALUE)) {
+            assertTrue(store.append(toBytes(1)));
+            assertTrue(store.append(record));
+            assertTrue(store.append(toBytes(2)));
+
+            assertArrayEquals(toBytes(1), store.poll());
+            assertArrayEquals(record, store.poll());
+            assertArrayEquals(toBytes(2), store.poll());
+        }
+    }
+
+    @Test
+    public void refusesAppendsWhenFull() throws Exception {
+        try (MappedSegmentStore store = new MappedSegmentStore(tempFolder.getRoot(), SEGMENT_SIZE, 2 * SEGMENT_SIZE)) {
+            int numAppended = 0;
+            while (store.append(toBytes(numAppended))) {
+                numAppended++;
+            }
+            assertTrue(numAppended > 0);
+            assertEquals(numAppended, store.size());
+            assertEquals(2 * SEGMENT_SIZE, store.getSegmentBytes());
+
+            // Draining the first segment makes room for another one
+            for (int i = 0; i < numAppended; i++) {
+                assertArrayEquals(toBytes(i), store.poll());
+            }
+            assertTrue(store.append(toBytes(numAppended)));
+        }
+    }
+
+    @Test
+    public void canRecoverUnreadRecords() throws Exception {
+        final File directory = tempFolder.getRoot();
+        try (MappedSegmentStore store = new MappedSegmentStore(directory, SEGMENT_SIZE, Long.MAX_VALUE)) {
+            for (int i = 0; i < 20; i++) {
+                store.append(toBytes(i));
+            }
+            for (int i = 0; i < 5; i++) {
+                assertArrayEquals(toBytes(i), store.poll());
+            }
+        }
+
+        try (MappedSegmentStore store = new MappedSegmentStore(directory, SEGMENT_SIZE, Long.MAX_VALUE)) {
+            assertEquals(15, store.size());
+            // New records are appended after the recovered ones
+            store.append(toBytes(20));
+            for (int i = 5; i <= 20; i++) {
+                assertArrayEquals(toBytes(i), store.poll());
+            }
+            assertNull(store.poll());
+            assertFalse(store.size() > 0);
+        }
+    }
+
+    @Test
+    public void discardsSegmentsWithCorruptedRecords() throws Exception {
+        try (MappedSegmentStore store = new MappedSegmentStore(tempFolder.getRoot(), SEGMENT_SIZE, Long.MAX_VALUE)) {
+            // 5 records fit in a segment
+            for (int i = 0; i < 10; i++) {
+                assertTrue(store.append(toBytes(i)));
+            }
+            final File[] files = tempFolder.getRoot().listFiles();
+            Arrays.sort(files);
+            assertEquals(2, files.length);
+
+            // Overwrite the length of the second record of the first segment
+            try (RandomAccessFile raf = new RandomAccessFile(files[0], "rw")) {
+                raf.seek(Integer.BYTES + toBytes(0).length);
+                raf.writeInt(Integer.MAX_VALUE);
+            }
+
+            assertArrayEquals(toBytes(0), store.poll());
+            assertArrayEquals(toBytes(5), store.peek());
+            assertEquals(5, store.size());
+            assertEquals(5 * toBytes(5).length, store.getRecordBytes());
+            assertFalse(files[0].exists());
+
+            for (int i = 5; i < 10; i++) {
+                assertArrayEquals(toBytes(i), store.poll());
+            }
+            assertNull(store.poll());
+            assertEquals(0, store.size());
+        }
+    }
+
+    @Test
+    public void refusesAppendsOnceClosed() throws Exception {
+        final MappedSegmentStore store = new MappedSegmentStore(tempFolder.getRoot(), SEGMENT_SIZE, Long.MAX_VALUE);
+        assertTrue(store.append(toBytes(1)));
+        store.close();
+        assertFalse(store.append(toBytes(2)));
+        assertNull(store.poll());
+    }
+
+    private static byte[] toBytes(int i) {
+        return ("record-" + i).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -28,6 +28,8 @@
 
 package org.opennms.core.ipc.sink.xml;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 
@@ -37,12 +39,45 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.opennms.core.ipc.sink.api.Message;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+/**
+ * Marshals messages to XML, or to a compact binary format for modules that provide a {@link BinaryCodec}.
+ *
+ * Messages are always unmarshaled according to the format they were sent in, so producers
+ * can be switched over one at a time. Producers send XML unless the binary format is selected
+ * for the module, which should only be done once the consumers have been upgraded to support it.
+ */
 public abstract class AbstractXmlSinkModule<S extends Message, T extends Message> implements SinkModule<S, T> {
 
     private static final Logger LOG = LoggerFactory.getLogger(AbstractXmlSinkModule.class);
 
+    /**
+     * Prefix of the system properties used to select the format of the messages
+     * sent by a module, i.e. <code>org.opennms.core.ipc.sink.format.Syslog=binary</code>
+     */
+    public static final String FORMAT_SYS_PROP_PREFIX = "org.opennms.core.ipc.sink.format.";
+
+    /**
+     * Binary messages start with this byte, which can never start an XML document,
+     * followed by the version of the codec.
+     */
+    private static final byte BINARY_MAGIC = 0;
+
+    private static final int BINARY_HEADER_SIZE = 2;
+
+    public enum Format {
+        XML,
+        BINARY
+    }
+
     private final Class<T> messageClazz;
 
+    private final BinaryCodec<T> binaryCodec;
+
+    private volatile Format format;
+
     /**
      * Store a thread-local reference to the {@link XmlHandler} because 
      * Unmarshalers are not thread-safe.
@@ -50,19 +85,91 @@ public abstract class AbstractXmlSinkModule<S extends Message, T extends Message
     private final ThreadLocal<XmlHandler<T>> messageXmlHandler = new ThreadLocal<>();
 
     public AbstractXmlSinkModule(Class<T> messageClazz) {
+        this(messageClazz, null);
+    }
+
+    public AbstractXmlSinkModule(Class<T> messageClazz, BinaryCodec<T> binaryCodec) {
         this.messageClazz = Objects.requireNonNull(messageClazz);
+        this.binaryCodec = binaryCodec;
     }
 
     @Override
     public byte[] marshal(T message) {
+        if (binaryCodec != null && getFormat() == Format.BINARY) {
+            return marshalBinary(message);
+        }
         return getXmlHandler().marshal(message).getBytes(StandardCharsets.UTF_8);
     }
 
     @Override
     public T unmarshal(byte[] bytes) {
+        if (bytes.length > 0 && bytes[0] == BINARY_MAGIC) {
+            return unmarshalBinary(bytes);
+        }
         return getXmlHandler().unmarshal(new String(bytes, StandardCharsets.UTF_8));
     }
 
+    private byte[] marshalBinary(T message) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            bytes.write(BINARY_MAGIC);
+            bytes.write(binaryCodec.getVersion());
+            final CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+            binaryCodec.write(message, out);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private T unmarshalBinary(byte[] bytes) {
+        if (binaryCodec == null) {
+            throw new IllegalArgumentException("Module " + getId() + " does not support the binary format.");
+        }
+        if (bytes.length < BINARY_HEADER_SIZE) {
+            throw new IllegalArgumentException("Truncated binary message for module " + getId());
+        }
+        final int version = bytes[1] & 0xFF;
+        if (version > binaryCodec.getVersion()) {
+            throw new IllegalArgumentException(String.format("Module %s supports binary messages up to version %d, but got version %d.",
+                    getId(), binaryCodec.getVersion(), version));
+        }
+        try {
+            return binaryCodec.read(CodedInputStream.newInstance(bytes, BINARY_HEADER_SIZE, bytes.length - BINARY_HEADER_SIZE));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Retrieves the format used to marshal messages, defaulting to the value of the
+     * system property for this module, or XML if unset.
+     */
+    public Format getFormat() {
+        if (format == null) {
+            final String value = System.getProperty(FORMAT_SYS_PROP_PREFIX + getId());
+            Format effectiveFormat = Format.XML;
+            if (value != null) {
+                try {
+                    effectiveFormat = Format.valueOf(value.trim().toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    LOG.warn("Invalid format '{}' for module {}. Using {}.", value, getId(), effectiveFormat);
+                }
+            }
+            if (effectiveFormat == Format.BINARY && binaryCodec == null) {
+                LOG.warn("Module {} does not support the binary format. Using {}.", getId(), Format.XML);
+                effectiveFormat = Format.XML;
+            }
+            format = effectiveFormat;
+        }
+        return format;
+    }
+
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(getId());
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.xml;
+
+import java.io.IOException;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+/**
+ * Encodes and decodes messages using the protobuf wire format.
+ *
+ * Codecs are written by hand against {@link CodedOutputStream} and {@link CodedInputStream}
+ * so that the existing JAXB annotated DTOs can be used on either side of the wire.
+ * Fields that are not known to the reader must be skipped, so that fields can be added
+ * to a codec without breaking older readers.
+ *
+ * @param <T> type of message
+ */
+public interface BinaryCodec<T> {
+
+    /**
+     * Version of the encoding produced by this codec.
+     *
+     * Readers refuse messages encoded with a version greater than their own, so
+     * this should only be increased when a change cannot be handled by skipping
+     * unknown fields.
+     */
+    int getVersion();
+
+    void write(T message, CodedOutputStream out) throws IOException;
+
+    T read(CodedInputStream in) throws IOException;
+
+}
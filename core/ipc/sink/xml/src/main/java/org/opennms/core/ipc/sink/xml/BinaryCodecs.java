@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.xml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+/**
+ * Helpers used to nest messages within the {@link BinaryCodec}s.
+ */
+public abstract class BinaryCodecs {
+
+    private BinaryCodecs() {}
+
+    public static <T> byte[] toByteArray(BinaryCodec<T> codec, T message) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+        codec.write(message, out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public static <T> T fromByteArray(BinaryCodec<T> codec, byte[] bytes) throws IOException {
+        return codec.read(CodedInputStream.newInstance(bytes));
+    }
+
+    /**
+     * Writes the given message as a length-delimited field.
+     */
+    public static <T> void writeMessage(CodedOutputStream out, int fieldNumber, BinaryCodec<T> codec, T message) throws IOException {
+        out.writeByteArray(fieldNumber, toByteArray(codec, message));
+    }
+
+    /**
+     * Reads a message written by {@link #writeMessage}.
+     */
+    public static <T> T readMessage(CodedInputStream in, BinaryCodec<T> codec) throws IOException {
+        final int length = in.readRawVarint32();
+        final int oldLimit = in.pushLimit(length);
+        final T message = codec.read(in);
+        in.popLimit(oldLimit);
+        return message;
+    }
+}
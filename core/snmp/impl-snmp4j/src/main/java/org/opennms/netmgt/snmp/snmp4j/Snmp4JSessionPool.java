@@ -0,0 +1,324 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.MessageDispatcher;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.mp.MPv1;
+import org.snmp4j.mp.MPv2c;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.security.USM;
+import org.snmp4j.security.UsmUser;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * A small set of long-lived SNMP sessions shared by all of the requests.
+ *
+ * Responses are matched to their requests using the request ids, so any
+ * number of requests can be outstanding on a given socket. Every agent is
+ * always sent its requests from the same session, so the engine ids and the
+ * engine times discovered for SNMPv3 agents are reused by the subsequent
+ * requests. The number of outstanding requests per agent is bounded, and
+ * the agents that have been idle for a while are forgotten.
+ *
+ * The SNMPv3 users are kept in a single USM, keyed by security name. Agents
+ * which use a security name that was already registered with different
+ * credentials are not supported by the pool, see {@link #supports(Snmp4JAgentConfig)}.
+ */
+public class Snmp4JSessionPool implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(Snmp4JSessionPool.class);
+
+    private static final long DEFAULT_AGENT_EXPIRY_MS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * The permits of an agent, along with the last time they were handed out.
+     */
+    private static class AgentPermits {
+        private final Semaphore semaphore;
+        private volatile long lastUsed;
+
+        private AgentPermits(int permits) {
+            semaphore = new Semaphore(permits);
+        }
+    }
+
+    private final Snmp[] sessions;
+
+    private final USM usm;
+
+    private final int maxRequestsPerAgent;
+
+    private final Map<OctetString, List<Object>> credentialsBySecurityName = new ConcurrentHashMap<>();
+
+    private final Map<Address, AgentPermits> permitsByAgent = new ConcurrentHashMap<>();
+
+    private final long agentExpiryMs;
+
+    private final AtomicLong lastExpiry = new AtomicLong(System.currentTimeMillis());
+
+    private final AtomicInteger outstandingRequests = new AtomicInteger(0);
+
+    private final MetricRegistry metrics = new MetricRegistry();
+
+    private final Meter requests;
+
+    private final Counter timeouts;
+
+    private final JmxReporter reporter;
+
+    public Snmp4JSessionPool(int numSessions, int maxRequestsPerAgent) throws IOException {
+        this(numSessions, maxRequestsPerAgent, DEFAULT_AGENT_EXPIRY_MS);
+    }
+
+    Snmp4JSessionPool(int numSessions, int maxRequestsPerAgent, long agentExpiryMs) throws IOException {
+        if (numSessions < 1) {
+            throw new IllegalArgumentException("numSessions must be strictly positive");
+        }
+        if (maxRequestsPerAgent < 1) {
+            throw new IllegalArgumentException("maxRequestsPerAgent must be strictly positive");
+        }
+        this.maxRequestsPerAgent = maxRequestsPerAgent;
+        this.agentExpiryMs = agentExpiryMs;
+        usm = new USM(SecurityProtocols.getInstance(), new OctetString(MPv3.createLocalEngineID()), 0);
+
+        sessions = new Snmp[numSessions];
+        try {
+            for (int i = 0; i < numSessions; i++) {
+                final MessageDispatcher disp = new MessageDispatcherImpl();
+                disp.addMessageProcessingModel(new MPv1());
+                disp.addMessageProcessingModel(new MPv2c());
+                disp.addMessageProcessingModel(new MPv3(usm));
+                sessions[i] = new Snmp(disp, new DefaultUdpTransportMapping());
+                sessions[i].listen();
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+
+        requests = metrics.meter("requests");
+        timeouts = metrics.counter("timeouts");
+        metrics.register("outstanding", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return outstandingRequests.get();
+            }
+        });
+        metrics.register("agents", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return permitsByAgent.size();
+            }
+        });
+        reporter = JmxReporter.forRegistry(metrics)
+                .inDomain(Snmp4JSessionPool.class.getPackage().getName())
+                .build();
+        reporter.start();
+    }
+
+    /**
+     * Determines whether or not requests for the given agent can be sent
+     * using the shared sessions.
+     *
+     * SNMPv3 users are registered on first use.
+     */
+    public boolean supports(Snmp4JAgentConfig agentConfig) {
+        if (!agentConfig.isSnmpV3()) {
+            return true;
+        }
+        final OctetString securityName = agentConfig.getSecurityName();
+        final List<Object> credentials = Arrays.asList(agentConfig.getAuthProtocol(), agentConfig.getAuthPassPhrase(),
+                agentConfig.getPrivProtocol(), agentConfig.getPrivPassPhrase());
+        final List<Object> existingCredentials = credentialsBySecurityName.computeIfAbsent(securityName, (name) -> {
+            usm.addUser(name, new UsmUser(name, agentConfig.getAuthProtocol(), agentConfig.getAuthPassPhrase(),
+                    agentConfig.getPrivProtocol(), agentConfig.getPrivPassPhrase()));
+            return credentials;
+        });
+        if (!existingCredentials.equals(credentials)) {
+            LOG.debug("Security name {} is already in use with different credentials. Agent {} will use a dedicated session.",
+                    securityName, agentConfig);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sends the given request to the agent and notifies the listener once a
+     * response is received, or when the request times out.
+     *
+     * Blocks while the maximum number of outstanding requests for the agent
+     * has been reached.
+     */
+    public void send(Snmp4JAgentConfig agentConfig, PDU pdu, ResponseListener listener) throws IOException, InterruptedException {
+        final Target target = agentConfig.getTarget();
+        final long now = System.currentTimeMillis();
+        expireIdleAgents(now);
+        // Mark the permits as used within the same atomic operation, so they can't be expired before they are acquired
+        final AgentPermits permits = permitsByAgent.compute(target.getAddress(), (a, p) -> {
+            final AgentPermits result = p != null ? p : new AgentPermits(maxRequestsPerAgent);
+            result.lastUsed = now;
+            return result;
+        });
+        permits.semaphore.acquire();
+        send(target, pdu, listener, permits.semaphore);
+    }
+
+    /**
+     * Forgets the agents that have no outstanding requests, and that
+     * were not sent any request since the expiry period.
+     *
+     * Only runs once per expiry period.
+     */
+    private void expireIdleAgents(long now) {
+        final long last = lastExpiry.get();
+        if (now - last < agentExpiryMs || !lastExpiry.compareAndSet(last, now)) {
+            return;
+        }
+        for (Address address : permitsByAgent.keySet()) {
+            permitsByAgent.computeIfPresent(address, (a, p) -> {
+                if (now - p.lastUsed >= agentExpiryMs && p.semaphore.availablePermits() >= maxRequestsPerAgent) {
+                    return null;
+                }
+                return p;
+            });
+        }
+    }
+
+    /**
+     * Sends a request that follows up on a response, such as the next PDU of a
+     * walk, and notifies the listener once a response is received, or when the
+     * request times out.
+     *
+     * These requests are not counted against the per-agent limit: they are sent
+     * from the response callbacks, and blocking there would stall every agent
+     * using the same session. Each walk only has a single outstanding request.
+     */
+    public void sendNext(Snmp4JAgentConfig agentConfig, PDU pdu, ResponseListener listener) throws IOException {
+        send(agentConfig.getTarget(), pdu, listener, null);
+    }
+
+    private void send(Target target, PDU pdu, ResponseListener listener, Semaphore permits) throws IOException {
+        final Snmp session = sessions[Math.floorMod(target.getAddress().hashCode(), sessions.length)];
+        outstandingRequests.incrementAndGet();
+        requests.mark();
+        try {
+            session.send(pdu, target, null, new ResponseListener() {
+                private final AtomicBoolean done = new AtomicBoolean(false);
+
+                @Override
+                public void onResponse(ResponseEvent responseEvent) {
+                    // Stop tracking the request, the session remains open
+                    session.cancel(responseEvent.getRequest(), this);
+                    if (!done.compareAndSet(false, true)) {
+                        return;
+                    }
+                    if (responseEvent.getResponse() == null && responseEvent.getError() == null) {
+                        timeouts.inc();
+                    }
+                    outstandingRequests.decrementAndGet();
+                    if (permits != null) {
+                        permits.release();
+                    }
+                    listener.onResponse(responseEvent);
+                }
+            });
+        } catch (IOException|RuntimeException e) {
+            outstandingRequests.decrementAndGet();
+            if (permits != null) {
+                permits.release();
+            }
+            throw e;
+        }
+    }
+
+    public int getOutstandingRequests() {
+        return outstandingRequests.get();
+    }
+
+    public long getNumTimeouts() {
+        return timeouts.getCount();
+    }
+
+    /**
+     * @return the number of agents for which the outstanding requests are tracked
+     */
+    public int getNumAgents() {
+        return permitsByAgent.size();
+    }
+
+    @Override
+    public void close() {
+        if (reporter != null) {
+            reporter.close();
+        }
+        for (Snmp session : sessions) {
+            if (session == null) {
+                continue;
+            }
+            try {
+                session.close();
+            } catch (IOException e) {
+                LOG.warn("Error closing shared SNMP session.", e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Snmp4JSessionPool[sessions=" + sessions.length + ", maxRequestsPerAgent=" + maxRequestsPerAgent
+                + ", outstandingRequests=" + outstandingRequests.get() + "]";
+    }
+}
@@ -108,6 +108,17 @@ public class Snmp4JStrategy implements SnmpStrategy {
 
     private static USM m_usm;
 
+    /**
+     * When set, requests which expect a response, including the requests of
+     * walkers, are sent using a set of long-lived shared sessions instead of
+     * a new session per request.
+     */
+    private static final boolean s_useSharedSessions = Boolean.getBoolean("org.opennms.snmp.snmp4j.sharedSessions");
+    private static final int s_numSharedSessions = Integer.getInteger("org.opennms.snmp.snmp4j.sharedSessions.count", 4);
+    private static final int s_maxRequestsPerAgent = Integer.getInteger("org.opennms.snmp.snmp4j.sharedSessions.maxRequestsPerAgent", 10);
+
+    private static Snmp4JSessionPool s_sessionPool;
+
     private Snmp4JValueFactory m_valueFactory;
 
     private static ScheduledExecutorService s_sessionStatsExecutor;
@@ -146,6 +157,15 @@ public class Snmp4JStrategy implements SnmpStrategy {
         // so we perform it only once during initialization
         SecurityProtocols.getInstance().addDefaultProtocols();
 
+        if (s_useSharedSessions) {
+            try {
+                s_sessionPool = new Snmp4JSessionPool(s_numSharedSessions, s_maxRequestsPerAgent);
+                LOG.info("Using shared SNMP sessions: {}", s_sessionPool);
+            } catch (IOException e) {
+                LOG.error("Failed to create the shared SNMP sessions. A new session will be used for every request.", e);
+            }
+        }
+
         s_initialized = true;
     }
     
@@ -303,6 +323,28 @@ public class Snmp4JStrategy implements SnmpStrategy {
     }
 
     private void send(Snmp4JAgentConfig agentConfig, PDU pdu, boolean expectResponse, CompletableFuture<SnmpValue[]> future) {
+        if (expectResponse && s_sessionPool != null && s_sessionPool.supports(agentConfig)) {
+            try {
+                s_sessionPool.send(agentConfig, pdu, new ResponseListener() {
+                    @Override
+                    public void onResponse(final ResponseEvent responseEvent) {
+                        try {
+                            future.complete(processResponse(agentConfig, responseEvent));
+                        } catch (final Exception e) {
+                            future.completeExceptionally(new SnmpException(e));
+                        }
+                    }
+                });
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(new SnmpException("Interrupted while waiting to send the request", e));
+            } catch (final Exception e) {
+                LOG.error("send: error during SNMP operation", e);
+                future.completeExceptionally(e);
+            }
+            return;
+        }
+
         Snmp session;
 
         try {
@@ -724,6 +766,13 @@ public class Snmp4JStrategy implements SnmpStrategy {
         }
     }
 
+    /**
+     * @return the shared sessions, or null if they are disabled
+     */
+    static Snmp4JSessionPool getSessionPool() {
+        return s_sessionPool;
+    }
+
         @Override
 	public byte[] getLocalEngineID() {
 		return MPv3.createLocalEngineID();
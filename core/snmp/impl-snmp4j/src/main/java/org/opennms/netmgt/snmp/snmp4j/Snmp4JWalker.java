@@ -162,8 +162,18 @@ public class Snmp4JWalker extends SnmpWalker {
 
         @Override
         public void onResponse(ResponseEvent responseEvent) {
+            if (m_closed) {
+                // Responses may still arrive on a shared session after the walker was closed
+                LOG.debug("Ignoring a response for closed walker {}", getName());
+                return;
+            }
+
             // need to cancel the request here otherwise SNMP4J Keeps it around forever... go figure
-            m_session.cancel(responseEvent.getRequest(), this);
+            // (the shared sessions take care of this themselves)
+            final Snmp session = m_session;
+            if (session != null) {
+                session.cancel(responseEvent.getRequest(), this);
+            }
 
             // Check to see if we got an interrupted exception
             if (responseEvent.getError() instanceof InterruptedException) {
@@ -189,6 +199,8 @@ public class Snmp4JWalker extends SnmpWalker {
     }
     
     private Snmp m_session;
+    private final Snmp4JSessionPool m_sessionPool;
+    private volatile boolean m_closed = false;
     private final Target m_tgt;
     private final ResponseListener m_listener;
     private final Snmp4JAgentConfig m_agentConfig;
@@ -200,6 +212,9 @@ public class Snmp4JWalker extends SnmpWalker {
         
         m_tgt = agentConfig.getTarget();
         m_listener = new Snmp4JResponseListener();
+
+        final Snmp4JSessionPool sessionPool = Snmp4JStrategy.getSessionPool();
+        m_sessionPool = sessionPool != null && sessionPool.supports(agentConfig) ? sessionPool : null;
     }
     
         @Override
@@ -220,6 +235,18 @@ public class Snmp4JWalker extends SnmpWalker {
         @Override
     protected void sendNextPdu(WalkerPduBuilder pduBuilder) throws SnmpException {
         Snmp4JPduBuilder snmp4JPduBuilder = (Snmp4JPduBuilder)pduBuilder;
+        if (m_sessionPool != null) {
+            LOG.debug("Sending tracker pdu of size {} over a shared session", snmp4JPduBuilder.getPdu().size());
+            try {
+                m_sessionPool.sendNext(m_agentConfig, snmp4JPduBuilder.getPdu(), m_listener);
+            } catch (final IOException e) {
+                LOG.debug("Failed to send pdu of size {}", snmp4JPduBuilder.getPdu().size(), e);
+                close();
+                throw new SnmpException(e);
+            }
+            return;
+        }
+
         try {
             if (m_session == null) {
                 m_session = m_agentConfig.createSnmpSession();
@@ -247,6 +274,7 @@ public class Snmp4JWalker extends SnmpWalker {
 
     @Override
     public void close() {
+        m_closed = true;
         if (m_session != null) {
             try {
                 m_session.close();
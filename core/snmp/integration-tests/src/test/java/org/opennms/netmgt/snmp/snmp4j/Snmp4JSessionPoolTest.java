@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.snmp.SnmpAgentConfig;
+import org.opennms.netmgt.snmp.SnmpConfiguration;
+import org.snmp4j.MessageException;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.mp.StatusInformation;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+public class Snmp4JSessionPoolTest {
+
+    private static final OID SYS_NAME = new OID(".1.3.6.1.2.1.1.5.0");
+
+    private DefaultUdpTransportMapping m_agentTransport;
+
+    private Snmp m_agent;
+
+    private final AtomicBoolean m_respond = new AtomicBoolean(true);
+
+    private Snmp4JSessionPool m_pool;
+
+    @Before
+    public void setUp() throws Exception {
+        // A minimal agent that answers every request with the sysName
+        m_agentTransport = new DefaultUdpTransportMapping(new UdpAddress(InetAddress.getLoopbackAddress(), 0));
+        m_agent = new Snmp(m_agentTransport);
+        m_agent.addCommandResponder(e -> {
+            if (!m_respond.get()) {
+                return;
+            }
+            final PDU response = (PDU)e.getPDU().clone();
+            response.setType(PDU.RESPONSE);
+            response.clear();
+            response.add(new VariableBinding(SYS_NAME, new OctetString("agent")));
+            e.setProcessed(true);
+            try {
+                e.getMessageDispatcher().returnResponsePdu(e.getMessageProcessingModel(), e.getSecurityModel(), e.getSecurityName(),
+                        e.getSecurityLevel(), response, e.getMaxSizeResponsePDU(), e.getStateReference(), new StatusInformation());
+            } catch (MessageException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        m_agent.listen();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (m_pool != null) {
+            m_pool.close();
+        }
+        m_agent.close();
+    }
+
+    @Test(timeout=30000)
+    public void canSendRequests() throws Exception {
+        m_pool = new Snmp4JSessionPool(2, 10);
+
+        for (int i = 0; i < 5; i++) {
+            final ResponseEvent event = get(getAgentConfig(5000)).get();
+            assertNotNull(event.getResponse());
+            assertEquals(new OctetString("agent"), event.getResponse().getVariable(SYS_NAME));
+        }
+        assertEquals(0, m_pool.getOutstandingRequests());
+        assertEquals(0, m_pool.getNumTimeouts());
+        assertEquals(1, m_pool.getNumAgents());
+    }
+
+    @Test(timeout=30000)
+    public void countsTimeouts() throws Exception {
+        m_pool = new Snmp4JSessionPool(1, 10);
+        m_respond.set(false);
+
+        final ResponseEvent event = get(getAgentConfig(100)).get();
+        assertNull(event.getResponse());
+        assertEquals(0, m_pool.getOutstandingRequests());
+        assertEquals(1, m_pool.getNumTimeouts());
+    }
+
+    @Test(timeout=30000)
+    public void limitsTheOutstandingRequestsPerAgent() throws Exception {
+        m_pool = new Snmp4JSessionPool(1, 1);
+        m_respond.set(false);
+
+        final CompletableFuture<ResponseEvent> first = get(getAgentConfig(2000));
+        final CompletableFuture<ResponseEvent> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return get(getAgentConfig(2000)).get();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        // The second request is held back until the first one times out
+        try {
+            second.get(500, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Expected
+        }
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+        assertEquals(1, m_pool.getOutstandingRequests());
+
+        m_respond.set(true);
+        assertNull(first.get().getResponse());
+        assertNotNull(second.get().getResponse());
+    }
+
+    @Test(timeout=30000)
+    public void expiresIdleAgents() throws Exception {
+        m_pool = new Snmp4JSessionPool(1, 10, 100);
+
+        // An agent that never answers
+        try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            final SnmpAgentConfig config = new SnmpAgentConfig(InetAddress.getLoopbackAddress());
+            config.setPort(socket.getLocalPort());
+            config.setTimeout(100);
+            config.setRetries(0);
+            config.setVersion(SnmpConfiguration.VERSION2C);
+            assertNull(get(new Snmp4JAgentConfig(config)).get().getResponse());
+            assertEquals(1, m_pool.getNumAgents());
+        }
+
+        // The idle agent is forgotten by the next request once the expiry period has elapsed
+        Thread.sleep(200);
+        assertNotNull(get(getAgentConfig(5000)).get().getResponse());
+        assertEquals(1, m_pool.getNumAgents());
+    }
+
+    @Test
+    public void doesNotSupportConflictingSecurityNames() throws Exception {
+        m_pool = new Snmp4JSessionPool(1, 10);
+
+        final SnmpAgentConfig config = new SnmpAgentConfig(InetAddress.getLoopbackAddress());
+        config.setVersion(SnmpConfiguration.VERSION3);
+        config.setSecurityName("opennms");
+        config.setAuthProtocol("MD5");
+        config.setAuthPassPhrase("0p3nNMSv3");
+        assertTrue(m_pool.supports(new Snmp4JAgentConfig(config)));
+        assertTrue(m_pool.supports(new Snmp4JAgentConfig(config)));
+
+        config.setAuthPassPhrase("other-passphrase");
+        assertFalse(m_pool.supports(new Snmp4JAgentConfig(config)));
+        assertTrue(m_pool.supports(getAgentConfig(1000)));
+    }
+
+    private Snmp4JAgentConfig getAgentConfig(int timeout) {
+        final SnmpAgentConfig config = new SnmpAgentConfig(InetAddress.getLoopbackAddress());
+        config.setPort(m_agentTransport.getListenAddress().getPort());
+        config.setTimeout(timeout);
+        config.setRetries(0);
+        config.setVersion(SnmpConfiguration.VERSION2C);
+        return new Snmp4JAgentConfig(config);
+    }
+
+    private CompletableFuture<ResponseEvent> get(Snmp4JAgentConfig agentConfig) throws Exception {
+        final PDU pdu = new PDU();
+        pdu.setType(PDU.GET);
+        pdu.add(new VariableBinding(SYS_NAME));
+        final CompletableFuture<ResponseEvent> future = new CompletableFuture<>();
+        m_pool.send(agentConfig, pdu, future::complete);
+        return future;
+    }
+}
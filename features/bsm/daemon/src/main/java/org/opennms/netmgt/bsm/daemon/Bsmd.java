@@ -28,11 +28,16 @@
 
 package org.opennms.netmgt.bsm.daemon;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import org.opennms.netmgt.bsm.service.BusinessServiceManager;
@@ -75,6 +80,9 @@ import org.springframework.transaction.support.TransactionTemplate;
  * but not all changes send the required events (i.e. escalating an alarm in the WebUI).
  * In order to work around this, we periodically poll the database. 
  *
+ * Alarm life-cycle events are queued and handed to the state machine in batches,
+ * so that a burst of events only updates the state machine once.
+ *
  * @author jwhite
  */
 @EventListener(name=Bsmd.NAME, logPrefix="bsmd")
@@ -110,6 +118,28 @@ public class Bsmd implements SpringServiceDaemon, BusinessServiceStateChangeHand
 
     final ScheduledExecutorService alarmPoller = Executors.newScheduledThreadPool(1);
 
+    final ExecutorService alarmHandler = Executors.newSingleThreadExecutor();
+
+    private final Queue<AlarmLifecycleEvent> m_alarmEvents = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean m_drainScheduled = new AtomicBoolean(false);
+
+    /**
+     * An alarm life-cycle event waiting to be handed to the state machine.
+     */
+    private static final class AlarmLifecycleEvent {
+        private final int alarmId;
+        private final String uei;
+        // only set when the alarm was deleted
+        private final String deletedReductionKey;
+
+        private AlarmLifecycleEvent(int alarmId, String uei, String deletedReductionKey) {
+            this.alarmId = alarmId;
+            this.uei = uei;
+            this.deletedReductionKey = deletedReductionKey;
+        }
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
         Objects.requireNonNull(m_stateMachine, "stateMachine cannot be null");
@@ -246,39 +276,74 @@ public class Bsmd implements SpringServiceDaemon, BusinessServiceStateChangeHand
             return;
         }
 
+        String deletedReductionKey = null;
         if (EventConstants.ALARM_DELETED_EVENT_UEI.equals(e.getUei())) {
-            handleAlarmDeleted(e, alarmId);
-        } else {
-            handleAlarmCreatedOrUpdated(e, alarmId);
+            final Parm alarmReductionKeyParm = e.getParm(EventConstants.PARM_ALARM_REDUCTION_KEY);
+            if (alarmReductionKeyParm == null || alarmReductionKeyParm.getValue() == null) {
+                LOG.warn("The alarmReductionKey parameter has no value on event with uei: {}. Ignoring.", e.getUei());
+                return;
+            }
+            deletedReductionKey = alarmReductionKeyParm.getValue().toString();
+        }
+
+        m_alarmEvents.add(new AlarmLifecycleEvent(alarmId, e.getUei(), deletedReductionKey));
+        if (m_drainScheduled.compareAndSet(false, true)) {
+            alarmHandler.execute(this::drainAlarmEvents);
         }
     }
 
-    private void handleAlarmCreatedOrUpdated(Event e, int alarmId) {
-        m_template.execute(new TransactionCallbackWithoutResult() {
-            @Override
-            protected void doInTransactionWithoutResult(TransactionStatus status) {
-                final OnmsAlarm alarm = m_alarmDao.get(alarmId);
-                if (alarm == null) {
-                    LOG.error("Could not find alarm with id: {} for event with uei: {}. Ignoring.", alarmId, e.getUei());
-                    return;
+    /**
+     * Hands all the queued alarm events to the state machine in a single batch.
+     */
+    private void drainAlarmEvents() {
+        // Clear the flag before draining, so that events queued from now on schedule another drain
+        m_drainScheduled.set(false);
+
+        final List<AlarmLifecycleEvent> events = new ArrayList<>();
+        for (AlarmLifecycleEvent event = m_alarmEvents.poll(); event != null; event = m_alarmEvents.poll()) {
+            events.add(event);
+        }
+        if (events.isEmpty()) {
+            return;
+        }
+
+        try {
+            m_template.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    // Keep the events in order, the state machine uses the last status given for a reduction key
+                    final List<AlarmWrapper> alarms = new ArrayList<>(events.size());
+                    for (AlarmLifecycleEvent event : events) {
+                        final AlarmWrapper alarm = event.deletedReductionKey != null
+                                ? handleAlarmDeleted(event.alarmId, event.deletedReductionKey)
+                                : handleAlarmCreatedOrUpdated(event.uei, event.alarmId);
+                        if (alarm != null) {
+                            alarms.add(alarm);
+                        }
+                    }
+                    LOG.debug("Handling {} alarms from {} alarm events.", alarms.size(), events.size());
+                    m_stateMachine.handleNewOrUpdatedAlarms(alarms);
                 }
-                final AlarmWrapperImpl alarmWrapper = new AlarmWrapperImpl(alarm);
-                LOG.debug("Handling alarm with id: {}, reduction key: {} and severity: {} and status: {}", alarm.getId(), alarm.getReductionKey(), alarm.getSeverity(), alarmWrapper.getStatus());
-                m_stateMachine.handleNewOrUpdatedAlarm(alarmWrapper);
-            }
-        });
+            });
+        } catch (Exception ex) {
+            LOG.error("Error while handling {} alarm events.", events.size(), ex);
+        }
     }
 
-    private void handleAlarmDeleted(Event e, int alarmId) {
-        final Parm alarmReductionKeyParm = e.getParm(EventConstants.PARM_ALARM_REDUCTION_KEY);
-        if (alarmReductionKeyParm == null || alarmReductionKeyParm.getValue() == null) {
-            LOG.warn("The alarmReductionKey parameter has no value on event with uei: {}. Ignoring.", e.getUei());
-            return;
+    private AlarmWrapper handleAlarmCreatedOrUpdated(String uei, int alarmId) {
+        final OnmsAlarm alarm = m_alarmDao.get(alarmId);
+        if (alarm == null) {
+            LOG.error("Could not find alarm with id: {} for event with uei: {}. Ignoring.", alarmId, uei);
+            return null;
         }
+        final AlarmWrapperImpl alarmWrapper = new AlarmWrapperImpl(alarm);
+        LOG.debug("Handling alarm with id: {}, reduction key: {} and severity: {} and status: {}", alarm.getId(), alarm.getReductionKey(), alarm.getSeverity(), alarmWrapper.getStatus());
+        return alarmWrapper;
+    }
 
-        final String reductionKey = alarmReductionKeyParm.getValue().toString();
+    private static AlarmWrapper handleAlarmDeleted(int alarmId, String reductionKey) {
         LOG.debug("Handling delete for alarm with id: {} and reduction key: {}", alarmId, reductionKey);
-        m_stateMachine.handleNewOrUpdatedAlarm(new AlarmWrapper() {
+        return new AlarmWrapper() {
             @Override
             public String getReductionKey() {
                 return reductionKey;
@@ -288,7 +353,7 @@ public class Bsmd implements SpringServiceDaemon, BusinessServiceStateChangeHand
             public Status getStatus() {
                 return Status.INDETERMINATE;
             }
-        });
+        };
     }
 
     /**
@@ -346,6 +411,7 @@ public class Bsmd implements SpringServiceDaemon, BusinessServiceStateChangeHand
     public void destroy() throws Exception {
         LOG.info("Stopping bsmd...");
         alarmPoller.shutdown();
+        alarmHandler.shutdown();
     }
 
     public void setAlarmDao(AlarmDao alarmDao) {
@@ -29,6 +29,7 @@
 package org.opennms.netmgt.bsm.service;
 
 import java.io.File;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -95,6 +96,19 @@ public interface BusinessServiceStateMachine {
      */
     void handleNewOrUpdatedAlarm(AlarmWrapper alarm);
 
+    /**
+     * Updates the states of the Business Services using the given alarms as a single batch.
+     *
+     * Every affected vertex is reduced at most once, and the handlers are only notified
+     * of the final state of each Business Service, which makes this considerably cheaper than
+     * calling {@link #handleNewOrUpdatedAlarm(AlarmWrapper)} for each alarm when processing
+     * bursts. Unlike {@link #handleAllAlarms(List)}, reduction keys missing from the
+     * given alarms are left untouched.
+     *
+     * @param alarms alarms to apply, if the same reduction key is present more than once, the last one wins
+     */
+    void handleNewOrUpdatedAlarms(Collection<AlarmWrapper> alarms);
+
     /**
      * Updates the states of the Business Services using the given list of alarms.
      *
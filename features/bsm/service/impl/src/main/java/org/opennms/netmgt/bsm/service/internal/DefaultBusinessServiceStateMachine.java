@@ -39,12 +39,15 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NavigableMap;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
@@ -92,6 +95,7 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
     private final List<BusinessServiceStateChangeHandler> m_handlers = Lists.newArrayList();
     private final ReadWriteLock m_rwLock = new ReentrantReadWriteLock();
     private BusinessServiceGraph m_g = new BusinessServiceGraphImpl(Collections.emptyList());
+    private volatile StatusSnapshot m_snapshot = StatusSnapshot.of(m_g);
 
     @Override
     public void setBusinessServices(List<BusinessService> businessServices) {
@@ -102,11 +106,12 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
 
             // Prime the graph with the state from the previous graph and
             // keep track of the new reductions keys
+            final Map<GraphVertex, Status> updates = new LinkedHashMap<>();
             Set<String> reductionsKeysToLookup = Sets.newHashSet();
             for (String reductionKey : g.getReductionKeys()) {
                 GraphVertex reductionKeyVertex = m_g.getVertexByReductionKey(reductionKey);
                 if (reductionKeyVertex != null) {
-                    updateAndPropagateVertex(g, g.getVertexByReductionKey(reductionKey), reductionKeyVertex.getStatus());
+                    updates.put(g.getVertexByReductionKey(reductionKey), reductionKeyVertex.getStatus());
                 } else {
                     reductionsKeysToLookup.add(reductionKey);
                 }
@@ -121,11 +126,13 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
                 if (reductionsKeysToLookup.size() > 0) {
                     final Map<String, AlarmWrapper> lookup = m_alarmProvider.lookup(reductionsKeysToLookup);
                     for (Entry<String, AlarmWrapper> eachEntry : lookup.entrySet()) {
-                        updateAndPropagateVertex(g, g.getVertexByReductionKey(eachEntry.getKey()), eachEntry.getValue().getStatus());
+                        putIfVertex(updates, g.getVertexByReductionKey(eachEntry.getKey()), eachEntry.getValue().getStatus());
                     }
                 }
             }
+            updateAndPropagateVertices(g, updates);
             m_g = g;
+            m_snapshot = StatusSnapshot.of(g);
         } finally {
             m_rwLock.writeLock().unlock();
         }
@@ -133,10 +140,19 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
 
     @Override
     public void handleNewOrUpdatedAlarm(AlarmWrapper alarm) {
+        handleNewOrUpdatedAlarms(Collections.singletonList(alarm));
+    }
+
+    @Override
+    public void handleNewOrUpdatedAlarms(Collection<AlarmWrapper> alarms) {
         m_rwLock.writeLock().lock();
         try {
-            // Recursively propagate the status
-            updateAndPropagateVertex(m_g, m_g.getVertexByReductionKey(alarm.getReductionKey()), alarm.getStatus());
+            final Map<GraphVertex, Status> updates = new LinkedHashMap<>();
+            for (AlarmWrapper alarm : alarms) {
+                // The last status wins when the same reduction key appears more than once
+                putIfVertex(updates, m_g.getVertexByReductionKey(alarm.getReductionKey()), alarm.getStatus());
+            }
+            publish(updateAndPropagateVertices(m_g, updates));
         } finally {
             m_rwLock.writeLock().unlock();
         }
@@ -147,9 +163,9 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
         final Set<String> reductionKeysFromGivenAlarms = new HashSet<>(alarms.size());
         m_rwLock.writeLock().lock();
         try {
+            final Map<GraphVertex, Status> updates = new LinkedHashMap<>();
             for (AlarmWrapper alarm : alarms) {
-                // Recursively propagate the status for all of the given alarms
-                updateAndPropagateVertex(m_g, m_g.getVertexByReductionKey(alarm.getReductionKey()), alarm.getStatus());
+                putIfVertex(updates, m_g.getVertexByReductionKey(alarm.getReductionKey()), alarm.getStatus());
                 // Keep track of the reduction keys that have been processed
                 reductionKeysFromGivenAlarms.add(alarm.getReductionKey());
             }
@@ -157,19 +173,64 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
             for (String missingReductionKey : Sets.difference(m_g.getReductionKeys(), reductionKeysFromGivenAlarms)) {
                 // There is a vertex on the graph that corresponds to this reduction key
                 // but no alarm with this reduction key exists
-                updateAndPropagateVertex(m_g, m_g.getVertexByReductionKey(missingReductionKey), Status.INDETERMINATE);
+                putIfVertex(updates, m_g.getVertexByReductionKey(missingReductionKey), Status.INDETERMINATE);
             }
+            publish(updateAndPropagateVertices(m_g, updates));
         } finally {
             m_rwLock.writeLock().unlock();
         }
     }
 
-    private void updateAndPropagateVertex(BusinessServiceGraph graph, GraphVertex vertex, Status newStatus) {
-        if (vertex == null) {
-            // Nothing to do here
-            return;
+    private static void putIfVertex(Map<GraphVertex, Status> updates, GraphVertex vertex, Status status) {
+        if (vertex != null) {
+            updates.put(vertex, status);
+        }
+    }
+
+    /**
+     * Applies the given statuses to their vertices and propagates the changes
+     * up the graph.
+     *
+     * Parents are not reduced as soon as one of their children changes. Instead,
+     * they are marked dirty and reduced once all of the vertices on the levels
+     * below them have been processed. Since a parent always sits on a lower level
+     * than any of its children, walking the levels from the deepest one up to the
+     * roots reduces every affected vertex exactly once.
+     *
+     * Handlers are notified once per vertex, after the propagation completes, and
+     * only if the final status differs from the status prior to the batch.
+     *
+     * @return the vertices that changed, along with their new status
+     */
+    private Map<GraphVertex, Status> updateAndPropagateVertices(BusinessServiceGraph graph, Map<GraphVertex, Status> updates) {
+        final Map<GraphVertex, Status> previousStatuses = new LinkedHashMap<>();
+        final NavigableMap<Integer, Set<GraphVertex>> dirtyByLevel = new TreeMap<>();
+
+        for (Entry<GraphVertex, Status> entry : updates.entrySet()) {
+            updateVertex(graph, entry.getKey(), entry.getValue(), previousStatuses, dirtyByLevel);
+        }
+
+        Entry<Integer, Set<GraphVertex>> deepestLevel;
+        while ((deepestLevel = dirtyByLevel.pollLastEntry()) != null) {
+            for (GraphVertex vertex : deepestLevel.getValue()) {
+                updateVertex(graph, vertex, reduce(graph, vertex), previousStatuses, dirtyByLevel);
+            }
         }
 
+        final Map<GraphVertex, Status> changes = new LinkedHashMap<>();
+        for (Entry<GraphVertex, Status> entry : previousStatuses.entrySet()) {
+            final GraphVertex vertex = entry.getKey();
+            if (!vertex.getStatus().equals(entry.getValue())) {
+                changes.put(vertex, vertex.getStatus());
+                // Notify the listeners
+                onStatusUpdated(graph, vertex, entry.getValue());
+            }
+        }
+        return changes;
+    }
+
+    private void updateVertex(BusinessServiceGraph graph, GraphVertex vertex, Status newStatus,
+            Map<GraphVertex, Status> previousStatuses, NavigableMap<Integer, Set<GraphVertex>> dirtyByLevel) {
         // Apply lower bound
         newStatus = newStatus.isLessThan(MIN_SEVERITY) ? MIN_SEVERITY : newStatus;
 
@@ -180,12 +241,9 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
             return;
         }
         vertex.setStatus(newStatus);
-
-        // Notify the listeners
-        onStatusUpdated(graph, vertex, previousStatus);
+        previousStatuses.putIfAbsent(vertex, previousStatus);
 
         // Update the edges with the mapped status
-        List<GraphEdge> updatedEges = Lists.newArrayList();
         for (GraphEdge edge : graph.getInEdges(vertex)) {
             Status mappedStatus = newStatus;
             if (newStatus.isGreaterThan(MIN_SEVERITY)) {
@@ -200,38 +258,34 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
                 continue;
             }
 
-            // Update the status and add it to the list of edges to propagate
+            // Update the status and mark the parent as dirty
             edge.setStatus(mappedStatus);
-            updatedEges.add(edge);
-        }
-
-        // Propagate once all of the edges have been updated
-        for (GraphEdge edge : updatedEges) {
-            reduceUpdateAndPropagateVertex(graph, graph.getOpposite(vertex, edge));
+            final GraphVertex parent = graph.getOpposite(vertex, edge);
+            dirtyByLevel.computeIfAbsent(parent.getLevel(), level -> new LinkedHashSet<>()).add(parent);
         }
     }
 
-    private void reduceUpdateAndPropagateVertex(BusinessServiceGraph graph, GraphVertex vertex) {
-        if (vertex == null) {
-            // Nothing to do here
-            return;
-        }
-
+    private static Status reduce(BusinessServiceGraph graph, GraphVertex vertex) {
         // Calculate the weighed statuses from the child edges
         List<StatusWithIndex> statuses = weighEdges(graph.getOutEdges(vertex));
 
         // Reduce
         Optional<StatusWithIndices> reducedStatus = vertex.getReductionFunction().reduce(statuses);
-
-        Status newStatus;
         if (reducedStatus.isPresent()) {
-            newStatus = reducedStatus.get().getStatus();
-        } else {
-            newStatus = MIN_SEVERITY;
+            return reducedStatus.get().getStatus();
         }
+        return MIN_SEVERITY;
+    }
 
-        // Update and propagate
-        updateAndPropagateVertex(graph, vertex, newStatus);
+    /**
+     * Publishes a new snapshot containing the given changes. The previous snapshot
+     * is copied rather than modified, so readers holding a reference to it
+     * are never affected.
+     */
+    private void publish(Map<GraphVertex, Status> changes) {
+        if (!changes.isEmpty()) {
+            m_snapshot = m_snapshot.with(changes);
+        }
     }
 
     public static List<StatusWithIndex> weighEdges(Collection<GraphEdge> edges) {
@@ -296,58 +350,26 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
     @Override
     public Status getOperationalStatus(BusinessService businessService) {
         Objects.requireNonNull(businessService);
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByBusinessServiceId(businessService.getId());
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
-        }
+        final StatusSnapshot snapshot = m_snapshot;
+        return snapshot.getStatus(snapshot.graph.getVertexByBusinessServiceId(businessService.getId()));
     }
 
     @Override
     public Status getOperationalStatus(IpService ipService) {
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByIpServiceId(ipService.getId());
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
-        }
+        final StatusSnapshot snapshot = m_snapshot;
+        return snapshot.getStatus(snapshot.graph.getVertexByIpServiceId(ipService.getId()));
     }
 
     @Override
     public Status getOperationalStatus(String reductionKey) {
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByReductionKey(reductionKey);
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
-        }
+        final StatusSnapshot snapshot = m_snapshot;
+        return snapshot.getStatus(snapshot.graph.getVertexByReductionKey(reductionKey));
     }
 
     @Override
     public Status getOperationalStatus(Edge edge) {
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByEdgeId(edge.getId());
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
-        }
+        final StatusSnapshot snapshot = m_snapshot;
+        return snapshot.getStatus(snapshot.graph.getVertexByEdgeId(edge.getId()));
     }
 
     public void setAlarmProvider(AlarmProvider alarmProvider) {
@@ -459,9 +481,10 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
 
             // Prime the state
             if (preserveState) {
+                final List<AlarmWrapper> alarms = Lists.newArrayListWithCapacity(graph.getReductionKeys().size());
                 for (String reductionKey : graph.getReductionKeys()) {
                     GraphVertex reductionKeyVertex = graph.getVertexByReductionKey(reductionKey);
-                    sm.handleNewOrUpdatedAlarm(new AlarmWrapper() {
+                    alarms.add(new AlarmWrapper() {
                         @Override
                         public String getReductionKey() {
                             return reductionKey;
@@ -473,6 +496,7 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
                         }
                     });
                 }
+                sm.handleNewOrUpdatedAlarms(alarms);
             }
             return sm;
         } finally {
@@ -561,4 +585,45 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
     private List<GraphVertex> calculateImpact(GraphVertex vertex) {
         return GraphAlgorithms.calculateImpact(m_g, vertex);
     }
+
+    /**
+     * Immutable view of the vertex statuses of a graph.
+     *
+     * The statuses are stored in an array indexed by vertex. Publishing a new
+     * snapshot copies the whole array, which is linear in the number of vertices,
+     * so alarms should be handed over in batches to pay for the copy once per batch.
+     */
+    private static final class StatusSnapshot {
+        private final BusinessServiceGraph graph;
+        private final Map<GraphVertex, Integer> indices;
+        private final Status[] statuses;
+
+        private StatusSnapshot(BusinessServiceGraph graph, Map<GraphVertex, Integer> indices, Status[] statuses) {
+            this.graph = graph;
+            this.indices = indices;
+            this.statuses = statuses;
+        }
+
+        private static StatusSnapshot of(BusinessServiceGraph graph) {
+            final Map<GraphVertex, Integer> indices = new HashMap<>(graph.getVertexCount());
+            final Status[] statuses = new Status[graph.getVertexCount()];
+            for (GraphVertex vertex : graph.getVertices()) {
+                statuses[indices.size()] = vertex.getStatus();
+                indices.put(vertex, indices.size());
+            }
+            return new StatusSnapshot(graph, Collections.unmodifiableMap(indices), statuses);
+        }
+
+        private StatusSnapshot with(Map<GraphVertex, Status> changes) {
+            final Status[] statuses = this.statuses.clone();
+            for (Entry<GraphVertex, Status> change : changes.entrySet()) {
+                statuses[indices.get(change.getKey())] = change.getValue();
+            }
+            return new StatusSnapshot(graph, indices, statuses);
+        }
+
+        private Status getStatus(GraphVertex vertex) {
+            return vertex != null ? statuses[indices.get(vertex)] : null;
+        }
+    }
 }
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.bsm.service.internal;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opennms.netmgt.bsm.mock.MockAlarmWrapper;
+import org.opennms.netmgt.bsm.mock.MockBusinessService;
+import org.opennms.netmgt.bsm.mock.MockChildEdge;
+import org.opennms.netmgt.bsm.mock.MockReductionKeyEdge;
+import org.opennms.netmgt.bsm.service.model.AlarmWrapper;
+import org.opennms.netmgt.bsm.service.model.BusinessService;
+import org.opennms.netmgt.bsm.service.model.Status;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Compares propagating bursts of alarms through the {@link DefaultBusinessServiceStateMachine}
+ * one at a time and as a single batch.
+ *
+ * The synthetic hierarchy is a tree of business services with the given fan-out and depth,
+ * where every leaf service references two reduction keys. Neighbouring leaves share one of their
+ * keys, so that changes to a single key propagate along more than one path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BusinessServiceStateMachineBenchmark {
+
+    private static final int DEPTH = 4;
+
+    @Param({"4", "10"})
+    public int fanOut;
+
+    @Param({"100", "5000"})
+    public int numAlarms;
+
+    private DefaultBusinessServiceStateMachine stateMachine;
+
+    private List<AlarmWrapper> raiseAlarms;
+
+    private List<AlarmWrapper> clearAlarms;
+
+    private long nextId;
+
+    private int numLeaves;
+
+    @Setup
+    public void setUp() {
+        nextId = 0;
+        numLeaves = 0;
+        final List<BusinessService> businessServices = Lists.newArrayList();
+        final MockBusinessService root = new MockBusinessService(nextId++);
+        businessServices.add(root);
+        addChildren(root, 1, businessServices);
+        final int numReductionKeys = numLeaves + 1;
+
+        stateMachine = new DefaultBusinessServiceStateMachine();
+        stateMachine.setBusinessServices(businessServices);
+
+        final Random random = new Random(42);
+        raiseAlarms = Lists.newArrayListWithCapacity(numAlarms);
+        clearAlarms = Lists.newArrayListWithCapacity(numAlarms);
+        for (int i = 0; i < numAlarms; i++) {
+            final String reductionKey = "rk-" + random.nextInt(numReductionKeys);
+            raiseAlarms.add(new MockAlarmWrapper(reductionKey, Status.values()[Status.MINOR.ordinal() + random.nextInt(3)]));
+            clearAlarms.add(new MockAlarmWrapper(reductionKey, Status.NORMAL));
+        }
+    }
+
+    private void addChildren(MockBusinessService parent, int level, List<BusinessService> businessServices) {
+        for (int i = 0; i < fanOut; i++) {
+            final MockBusinessService child = new MockBusinessService(nextId++);
+            businessServices.add(child);
+            parent.addEdge(new MockChildEdge(nextId++, child));
+            if (level < DEPTH) {
+                addChildren(child, level + 1, businessServices);
+            } else {
+                child.addEdge(new MockReductionKeyEdge(nextId++, "rk-" + numLeaves, null));
+                child.addEdge(new MockReductionKeyEdge(nextId++, "rk-" + (numLeaves + 1), null));
+                numLeaves++;
+            }
+        }
+    }
+
+    @Benchmark
+    public void handleAlarmsSequentially() {
+        raiseAlarms.forEach(stateMachine::handleNewOrUpdatedAlarm);
+        clearAlarms.forEach(stateMachine::handleNewOrUpdatedAlarm);
+    }
+
+    @Benchmark
+    public void handleAlarmsInBatches() {
+        stateMachine.handleNewOrUpdatedAlarms(raiseAlarms);
+        stateMachine.handleNewOrUpdatedAlarms(clearAlarms);
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(BusinessServiceStateMachineBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -56,6 +56,7 @@ import org.opennms.netmgt.bsm.service.model.graph.GraphVertex;
 import org.opennms.netmgt.bsm.test.LoggingStateChangeHandler;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 public class DefaultBusinessServiceStateMachineTest {
@@ -156,6 +157,63 @@ public class DefaultBusinessServiceStateMachineTest {
         assertEquals(1, stateChangeHandler.getStateChanges().size());
     }
 
+    @Test
+    public void canPropagateBatchesOfAlarms() {
+        // Create a hierarchy where b1 is reachable from a1 through two different paths
+        MockBusinessServiceHierarchy h = MockBusinessServiceHierarchy.builder()
+                .withBusinessService(1)
+                    .withBusinessService(2)
+                        .withReductionKey(21, "a1")
+                        .withReductionKey(22, "a2")
+                    .commit()
+                    .withBusinessService(3)
+                        .withBusinessService(4)
+                            .withReductionKey(41, "a1")
+                            .withReductionKey(42, "a3")
+                        .commit()
+                    .commit()
+                .commit()
+                .build();
+
+        // Setup two state machines, one updated sequentially and one updated in a single batch
+        DefaultBusinessServiceStateMachine sequentialStateMachine = new DefaultBusinessServiceStateMachine();
+        sequentialStateMachine.setBusinessServices(h.getBusinessServices());
+        DefaultBusinessServiceStateMachine batchStateMachine = new DefaultBusinessServiceStateMachine();
+        LoggingStateChangeHandler stateChangeHandler = new LoggingStateChangeHandler();
+        batchStateMachine.addHandler(stateChangeHandler, Maps.newHashMap());
+        batchStateMachine.setBusinessServices(h.getBusinessServices());
+
+        List<AlarmWrapper> alarms = Lists.newArrayList(
+                new MockAlarmWrapper("a1", Status.MINOR),
+                new MockAlarmWrapper("a3", Status.MAJOR),
+                new MockAlarmWrapper("a1", Status.CRITICAL),
+                new MockAlarmWrapper("a2", Status.WARNING));
+        alarms.forEach(sequentialStateMachine::handleNewOrUpdatedAlarm);
+        batchStateMachine.handleNewOrUpdatedAlarms(alarms);
+
+        // Both state machines should end up in the same state
+        for (long id = 1; id <= 4; id++) {
+            BusinessService businessService = h.getBusinessServiceById(id);
+            assertEquals(Status.CRITICAL, batchStateMachine.getOperationalStatus(businessService));
+            assertEquals(sequentialStateMachine.getOperationalStatus(businessService), batchStateMachine.getOperationalStatus(businessService));
+        }
+        assertEquals(Status.WARNING, batchStateMachine.getOperationalStatus("a2"));
+        assertEquals(Status.MAJOR, batchStateMachine.getOperationalStatus("a3"));
+
+        // Only the final state of each business service should have been published
+        assertEquals(4, stateChangeHandler.getStateChanges().size());
+
+        // Clear the alarms, unrelated keys should be left untouched
+        batchStateMachine.handleNewOrUpdatedAlarms(Lists.newArrayList(
+                new MockAlarmWrapper("a1", Status.NORMAL),
+                new MockAlarmWrapper("a2", Status.NORMAL)));
+        assertEquals(Status.MAJOR, batchStateMachine.getOperationalStatus(h.getBusinessServiceById(1)));
+        assertEquals(Status.NORMAL, batchStateMachine.getOperationalStatus(h.getBusinessServiceById(2)));
+        assertEquals(Status.MAJOR, batchStateMachine.getOperationalStatus(h.getBusinessServiceById(3)));
+        assertEquals(Status.MAJOR, batchStateMachine.getOperationalStatus(h.getBusinessServiceById(4)));
+        assertEquals(8, stateChangeHandler.getStateChanges().size());
+    }
+
     @Test
     public void canPerformRootCauseAndImpactAnalysis() {
         // Create a hierarchy using all of the available reduction functions
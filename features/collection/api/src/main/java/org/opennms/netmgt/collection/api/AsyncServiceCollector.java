@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.collection.api;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>
+ * A {@link ServiceCollector} that can collect from agents without blocking the
+ * calling thread for the duration of the collection.
+ * </p>
+ *
+ * <p>
+ * Implementations are expected to perform their I/O on a small, shared pool of
+ * threads and to complete the returned future once the collection set is complete.
+ * The synchronous {@link #collect(CollectionAgent, Map)} method must remain functional,
+ * so that the collector can still be used by callers that are not aware of this interface.
+ * </p>
+ *
+ * <P>
+ * <STRONG>NOTE: </STRONG> The callbacks attached to the returned future may be invoked
+ * on the I/O threads of the collector, and must therefore never block.
+ * </P>
+ */
+public interface AsyncServiceCollector extends ServiceCollector {
+
+    /**
+     * Asynchronously invokes a collection on the agent.
+     *
+     * @param agent
+     *            Includes details about to the agent from which we wish to collect.
+     * @param parameters
+     *            Includes the service parameters defined in <em>collectd-configuration.xml</em> and those
+     *            returned by {@link #getRuntimeAttributes(CollectionAgent, Map)}.
+     * @return a future that completes with the collected data, or exceptionally
+     *         with a {@link CollectionException} if the collection failed.
+     */
+    CompletableFuture<CollectionSet> collectAsync(CollectionAgent agent, Map<String, Object> parameters);
+
+}
@@ -35,7 +35,9 @@ import java.util.function.Supplier;
 
 import org.opennms.core.logging.Logging;
 import org.opennms.core.rpc.xml.AbstractXmlRpcModule;
+import org.opennms.netmgt.collection.api.AsyncServiceCollector;
 import org.opennms.netmgt.collection.api.CollectionAgent;
+import org.opennms.netmgt.collection.api.CollectionSet;
 import org.opennms.netmgt.collection.api.ServiceCollector;
 import org.opennms.netmgt.collection.api.ServiceCollectorRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -44,6 +46,9 @@ import org.springframework.beans.factory.annotation.Qualifier;
 /**
  * Used to perform collections via {@link ServiceCollector}s.
  *
+ * Collectors implementing {@link AsyncServiceCollector} collect without holding
+ * a thread of the executor, while the other collectors are run on it.
+ *
  * @author jwhite
  */
 public class CollectorClientRpcModule extends AbstractXmlRpcModule<CollectorRequestDTO, CollectorResponseDTO>{
@@ -74,6 +79,19 @@ public class CollectorClientRpcModule extends AbstractXmlRpcModule<CollectorRequ
             throw new IllegalArgumentException("No collector found with class name '" + className + "'.");
         }
 
+        if (collector instanceof AsyncServiceCollector) {
+            Logging.putPrefix("collectd");
+            final CompletableFuture<CollectionSet> future;
+            try {
+                future = ((AsyncServiceCollector)collector).collectAsync(request.getAgent(), request.getParameters(collector));
+            } catch (RuntimeException e) {
+                final CompletableFuture<CollectorResponseDTO> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+            return future.thenApply(CollectorResponseDTO::new);
+        }
+
         return CompletableFuture.supplyAsync(new Supplier<CollectorResponseDTO>() {
             @Override
             public CollectorResponseDTO get() {
@@ -132,7 +132,7 @@ public class HibernateEventWriter implements EventWriter {
      * @param logPrefix a {@link java.lang.String} object.
      * @return a boolean.
      */
-    private static boolean checkEventSanityAndDoWeProcess(Event event, String logPrefix) {
+    static boolean checkEventSanityAndDoWeProcess(Event event, String logPrefix) {
         Assert.notNull(event, "event argument must not be null");
 
         /*
@@ -239,34 +239,15 @@ public class HibernateEventWriter implements EventWriter {
         // eventID
         //ovent.setId(event.getDbid());
 
-        // eventUEI
-        ovent.setEventUei(EventDatabaseConstants.format(event.getUei(), EVENT_UEI_FIELD_SIZE));
-
         // nodeID
         if (event.hasNodeid()) {
             ovent.setNode(nodeDao.get(event.getNodeid().intValue()));
         }
 
-        // eventTime
-        ovent.setEventTime(event.getTime());
-
         // eventHost
         // Resolve the event host to a hostname using the ipInterface table
         ovent.setEventHost(EventDatabaseConstants.format(eventUtil.getEventHost(event), EVENT_HOST_FIELD_SIZE));
 
-        // eventSource
-        ovent.setEventSource(EventDatabaseConstants.format(event.getSource(), EVENT_SOURCE_FIELD_SIZE));
-
-        // ipAddr
-        ovent.setIpAddr(event.getInterfaceAddress());
-
-        // ifindex
-        if (event.hasIfIndex()) {
-            ovent.setIfIndex(event.getIfIndex());
-        } else {
-            ovent.setIfIndex(null);
-        }
-
         // systemId
 
         // If available, use the header's distPoller
@@ -283,12 +264,40 @@ public class HibernateEventWriter implements EventWriter {
             ovent.setDistPoller(distPollerDao.whoami());
         }
 
-        // eventSnmpHost
-        ovent.setEventSnmpHost(EventDatabaseConstants.format(event.getSnmphost(), EVENT_SNMPHOST_FIELD_SIZE));
-
         // service
         ovent.setServiceType(serviceTypeDao.findByName(event.getService()));
 
+        populateOnmsEvent(ovent, event);
+        return ovent;
+    }
+
+    /**
+     * Sets the fields of the OnmsEvent that are derived from the event alone,
+     * without any lookups against the database.
+     */
+    static void populateOnmsEvent(final OnmsEvent ovent, final Event event) {
+        // eventUEI
+        ovent.setEventUei(EventDatabaseConstants.format(event.getUei(), EVENT_UEI_FIELD_SIZE));
+
+        // eventTime
+        ovent.setEventTime(event.getTime());
+
+        // eventSource
+        ovent.setEventSource(EventDatabaseConstants.format(event.getSource(), EVENT_SOURCE_FIELD_SIZE));
+
+        // ipAddr
+        ovent.setIpAddr(event.getInterfaceAddress());
+
+        // ifindex
+        if (event.hasIfIndex()) {
+            ovent.setIfIndex(event.getIfIndex());
+        } else {
+            ovent.setIfIndex(null);
+        }
+
+        // eventSnmpHost
+        ovent.setEventSnmpHost(EventDatabaseConstants.format(event.getSnmphost(), EVENT_SNMPHOST_FIELD_SIZE));
+
         // eventSnmp
         ovent.setEventSnmp(event.getSnmp() == null ? null : SnmpInfo.format(event.getSnmp(), EVENT_SNMP_FIELD_SIZE));
 
@@ -399,7 +408,6 @@ public class HibernateEventWriter implements EventWriter {
             ovent.setEventAckUser(null);
             ovent.setEventAckTime(null);
         }
-        return ovent;
     }
 
     public void setTransactionManager(TransactionOperations transactionManager) {
@@ -0,0 +1,593 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.eventd.processor;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.dao.api.DistPollerDao;
+import org.opennms.netmgt.dao.api.MonitoringSystemDao;
+import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.dao.api.ServiceTypeDao;
+import org.opennms.netmgt.eventd.EventUtil;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventDatabaseConstants;
+import org.opennms.netmgt.events.api.EventProcessorException;
+import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.model.OnmsEventParameter;
+import org.opennms.netmgt.model.OnmsServiceType;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Header;
+import org.opennms.netmgt.xml.event.Log;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionOperations;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * A high-throughput alternative to the {@link HibernateEventWriter}.
+ *
+ * Events from the logs handed to {@link #process(Log)} by the concurrent
+ * event handlers are grouped into batches of up to {@link #setBatchSize(int)} events,
+ * or whatever arrived within {@link #setBatchWindowMs(long)}, and written by a single
+ * writer thread using JDBC batch inserts into the events and event_parameters tables.
+ * The ids are pre-allocated from the sequence in a single query and assigned back onto
+ * each {@link Event} before {@link #process(Log)} returns, so the processors that follow
+ * see the same state as they would with the {@link HibernateEventWriter}.
+ *
+ * Nodes, host names, monitoring systems and services are resolved through
+ * in-memory caches instead of once per event. The entries of a node or service
+ * are dropped as soon as the event announcing its addition or deletion goes by.
+ *
+ * When a batch fails, for example because one of its events refers to a node
+ * that was deleted in the meantime, its logs are written again one at a time so
+ * that only the offending log fails.
+ *
+ * The column values are derived with {@link HibernateEventWriter#populateOnmsEvent(OnmsEvent, Event)}
+ * so both writers store the same content.
+ */
+public class JdbcBatchEventWriter implements EventWriter, InitializingBean, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbcBatchEventWriter.class);
+
+    private static final String INSERT_EVENT_SQL = "INSERT INTO events (" +
+            "eventid, eventuei, nodeid, eventtime, eventhost, eventsource, ipaddr, systemid, eventsnmphost, serviceid, " +
+            "eventsnmp, eventcreatetime, eventdescr, eventloggroup, eventlogmsg, eventseverity, eventpathoutage, eventcorrelation, " +
+            "eventsuppressedcount, eventoperinstruct, eventautoaction, eventoperaction, eventoperactionmenutext, eventnotification, " +
+            "eventtticket, eventtticketstate, eventforward, eventmouseovertext, eventlog, eventdisplay, ifindex, eventackuser, eventacktime" +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_EVENT_PARAMETER_SQL = "INSERT INTO event_parameters (eventid, name, value, type) VALUES (?, ?, ?, ?)";
+
+    private static final String NEXT_EVENT_IDS_SQL = "SELECT nextval('eventsNxtId') FROM generate_series(1, ?)";
+
+    @Autowired
+    private TransactionOperations m_transactionManager;
+
+    @Autowired
+    private JdbcTemplate m_jdbcTemplate;
+
+    @Autowired
+    private NodeDao nodeDao;
+
+    @Autowired
+    private MonitoringSystemDao monitoringSystemDao;
+
+    @Autowired
+    private DistPollerDao distPollerDao;
+
+    @Autowired
+    private ServiceTypeDao serviceTypeDao;
+
+    @Autowired
+    private EventUtil eventUtil;
+
+    private int m_batchSize = Integer.getInteger("org.opennms.eventd.writer.batchSize", 1000);
+
+    private long m_batchWindowMs = Long.getLong("org.opennms.eventd.writer.batchWindowMs", 10L);
+
+    private long m_cacheTtlMs = Long.getLong("org.opennms.eventd.writer.cacheTtlMs", TimeUnit.MINUTES.toMillis(5));
+
+    private final BlockingQueue<PendingLog> m_queue = new LinkedBlockingQueue<>();
+
+    private final Timer writeTimer;
+
+    private final Histogram batchSizes;
+
+    private LoadingCache<Integer, Boolean> m_nodeCache;
+
+    private LoadingCache<NodeHost, String> m_hostNameCache;
+
+    private LoadingCache<String, Boolean> m_distPollerCache;
+
+    private LoadingCache<String, Boolean> m_monitoringSystemCache;
+
+    private LoadingCache<String, Optional<Integer>> m_serviceCache;
+
+    private Thread m_writerThread;
+
+    private volatile boolean m_running;
+
+    public JdbcBatchEventWriter(MetricRegistry registry) {
+        writeTimer = Objects.requireNonNull(registry).timer("eventlogs.process.write");
+        batchSizes = registry.histogram("eventlogs.process.write.batchSizes");
+        registry.register(MetricRegistry.name("eventlogs.process.write.queued"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return m_queue.size();
+            }
+        });
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        m_nodeCache = buildCache(new CacheLoader<Integer, Boolean>() {
+            @Override
+            public Boolean load(Integer nodeId) {
+                return nodeDao.get(nodeId) != null;
+            }
+        });
+        m_hostNameCache = buildCache(new CacheLoader<NodeHost, String>() {
+            @Override
+            public String load(NodeHost key) throws Exception {
+                final String hostName = eventUtil.getHostName(key.nodeId, key.host);
+                return hostName == null ? key.host : hostName;
+            }
+        });
+        m_distPollerCache = buildCache(new CacheLoader<String, Boolean>() {
+            @Override
+            public Boolean load(String id) {
+                return distPollerDao.get(id) != null;
+            }
+        });
+        m_monitoringSystemCache = buildCache(new CacheLoader<String, Boolean>() {
+            @Override
+            public Boolean load(String id) {
+                return monitoringSystemDao.get(id) != null;
+            }
+        });
+        m_serviceCache = buildCache(new CacheLoader<String, Optional<Integer>>() {
+            @Override
+            public Optional<Integer> load(String name) {
+                final OnmsServiceType serviceType = serviceTypeDao.findByName(name);
+                return serviceType == null ? Optional.empty() : Optional.of(serviceType.getId());
+            }
+        });
+
+        m_running = true;
+        m_writerThread = new LogPreservingThreadFactory(getClass().getSimpleName(), 1).newThread(this::writeBatches);
+        m_writerThread.start();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        m_running = false;
+        if (m_writerThread != null) {
+            m_writerThread.interrupt();
+            m_writerThread.join();
+        }
+        // Fail anything that didn't make it into a batch
+        PendingLog pending;
+        while ((pending = m_queue.poll()) != null) {
+            pending.future.completeExceptionally(new IllegalStateException("The event writer was stopped."));
+        }
+    }
+
+    private <K, V> LoadingCache<K, V> buildCache(CacheLoader<K, V> loader) {
+        return CacheBuilder.newBuilder()
+                .expireAfterWrite(m_cacheTtlMs, TimeUnit.MILLISECONDS)
+                .maximumSize(100000)
+                .build(loader);
+    }
+
+    /**
+     * Event writing is always synchronous so this method just
+     * delegates to {@link #process(Log)}.
+     */
+    @Override
+    public void process(Log eventLog, boolean synchronous) throws EventProcessorException {
+        process(eventLog);
+    }
+
+    /**
+     * Queues the events of the log for the next batch and waits until
+     * the batch was written and the database ids were assigned.
+     */
+    @Override
+    public void process(Log eventLog) throws EventProcessorException {
+        if (eventLog == null || eventLog.getEvents() == null || eventLog.getEvents().getEventCollection() == null) {
+            return;
+        }
+
+        final List<Event> eventsToPersist = eventLog.getEvents().getEventCollection().stream()
+                .filter(e -> HibernateEventWriter.checkEventSanityAndDoWeProcess(e, "JdbcBatchEventWriter"))
+                .collect(Collectors.toList());
+        if (eventsToPersist.size() < 1) {
+            return;
+        }
+        if (!m_running) {
+            throw new EventProcessorException("The event writer is not running.");
+        }
+        eventsToPersist.forEach(this::invalidateCaches);
+
+        final PendingLog pending = new PendingLog(eventLog.getHeader(), eventsToPersist);
+        m_queue.add(pending);
+        try {
+            pending.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EventProcessorException("Interrupted while waiting for the events to be stored.", e);
+        } catch (ExecutionException e) {
+            throw new EventProcessorException("Unexpected exception while storing events: " + eventsToPersist, e.getCause());
+        }
+    }
+
+    private void writeBatches() {
+        final List<PendingLog> batch = new ArrayList<>();
+        while (m_running) {
+            try {
+                // Wait for the first log, and then gather more until the batch is full or the window is closed
+                final PendingLog first = m_queue.take();
+                batch.add(first);
+                int numEvents = first.events.size();
+                final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(m_batchWindowMs);
+                while (numEvents < m_batchSize) {
+                    final PendingLog next = m_queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    numEvents += next.events.size();
+                }
+                write(batch, numEvents);
+            } catch (InterruptedException e) {
+                LOG.debug("Interrupted while waiting for events.");
+            } finally {
+                batch.forEach(p -> p.future.completeExceptionally(new IllegalStateException("The events were not written.")));
+                batch.clear();
+            }
+        }
+    }
+
+    private void invalidateCaches(final Event event) {
+        final String uei = event.getUei();
+        if (event.hasNodeid() && (EventConstants.NODE_ADDED_EVENT_UEI.equals(uei) || EventConstants.NODE_DELETED_EVENT_UEI.equals(uei))) {
+            final int nodeId = event.getNodeid().intValue();
+            m_nodeCache.invalidate(nodeId);
+            m_hostNameCache.asMap().keySet().removeIf(key -> key.nodeId == nodeId);
+        } else if (EventConstants.SERVICE_DELETED_EVENT_UEI.equals(uei) && event.getService() != null) {
+            m_serviceCache.invalidate(event.getService());
+        }
+    }
+
+    private void write(final List<PendingLog> batch, final int numEvents) {
+        batchSizes.update(numEvents);
+        try (Context context = writeTimer.time()) {
+            store(batch, numEvents);
+        } catch (Throwable t) {
+            if (batch.size() == 1) {
+                LOG.warn("Failed to store a batch of {} events.", numEvents, t);
+                batch.get(0).future.completeExceptionally(t);
+                return;
+            }
+            // Don't let a single bad log fail the unrelated ones
+            LOG.warn("Failed to store a batch of {} events, storing its {} logs one at a time.", numEvents, batch.size(), t);
+            for (final PendingLog pending : batch) {
+                try {
+                    store(Collections.singletonList(pending), pending.events.size());
+                } catch (Throwable e) {
+                    LOG.warn("Failed to store {} events.", pending.events.size(), e);
+                    pending.future.completeExceptionally(e);
+                    continue;
+                }
+                complete(pending);
+            }
+            return;
+        }
+
+        batch.forEach(this::complete);
+    }
+
+    /**
+     * Updates the events with the database IDs of the events stored in the database
+     */
+    private void complete(final PendingLog pending) {
+        for (int i = 0; i < pending.events.size(); i++) {
+            pending.events.get(i).setDbid(pending.ids.get(i));
+        }
+        pending.future.complete(null);
+    }
+
+    private void store(final List<PendingLog> batch, final int numEvents) {
+        m_transactionManager.execute(status -> {
+            final List<Integer> ids = m_jdbcTemplate.queryForList(NEXT_EVENT_IDS_SQL, Integer.class, numEvents);
+
+            final List<Row> rows = new ArrayList<>(numEvents);
+            final List<OnmsEventParameter> parameters = new ArrayList<>();
+            int index = 0;
+            for (final PendingLog pending : batch) {
+                pending.ids.clear();
+                for (final Event event : pending.events) {
+                    final Integer id = ids.get(index++);
+                    pending.ids.add(id);
+                    final Row row = createRow(pending.header, event, id);
+                    rows.add(row);
+                    for (final OnmsEventParameter parameter : row.ovent.getEventParameters()) {
+                        parameters.add(parameter);
+                    }
+                }
+            }
+
+            insertEvents(rows);
+            insertParameters(parameters);
+            return null;
+        });
+    }
+
+    private Row createRow(final Header eventHeader, final Event event, final Integer id) {
+        LOG.debug("JdbcBatchEventWriter: processing {}, nodeid: {}, ipaddr: {}, serviceid: {}, time: {}", event.getUei(), event.getNodeid(), event.getInterface(), event.getService(), event.getTime());
+
+        final Row row = new Row();
+        row.ovent = new OnmsEvent();
+        row.ovent.setId(id);
+        HibernateEventWriter.populateOnmsEvent(row.ovent, event);
+        row.ovent.setEventHost(EventDatabaseConstants.format(getEventHost(event), EVENT_HOST_FIELD_SIZE));
+
+        if (event.hasNodeid() && m_nodeCache.getUnchecked(event.getNodeid().intValue())) {
+            row.nodeId = event.getNodeid().intValue();
+        }
+
+        // Same order of precedence as the HibernateEventWriter: the header's distPoller,
+        // the event's distPoller and then the local system
+        if (eventHeader != null && eventHeader.getDpName() != null && !"".equals(eventHeader.getDpName().trim())
+                && m_distPollerCache.getUnchecked(eventHeader.getDpName())) {
+            row.systemId = eventHeader.getDpName();
+        } else if (event.getDistPoller() != null && !"".equals(event.getDistPoller().trim())
+                && m_monitoringSystemCache.getUnchecked(event.getDistPoller())) {
+            row.systemId = event.getDistPoller();
+        } else {
+            row.systemId = DistPollerDao.DEFAULT_DIST_POLLER_ID;
+        }
+
+        if (event.getService() != null) {
+            row.serviceId = m_serviceCache.getUnchecked(event.getService()).orElse(null);
+        }
+
+        return row;
+    }
+
+    private String getEventHost(final Event event) {
+        if (event.getHost() == null) {
+            return null;
+        }
+
+        // If the event doesn't have a node ID, we can't lookup the IP address and be sure we have the right one since we don't know what node it is on
+        if (!event.hasNodeid()) {
+            return event.getHost();
+        }
+
+        try {
+            return m_hostNameCache.get(new NodeHost(event.getNodeid().intValue(), event.getHost()));
+        } catch (final ExecutionException | UncheckedExecutionException e) {
+            LOG.warn("Error converting host IP \"{}\" to a hostname, storing the IP.", event.getHost(), e);
+            return event.getHost();
+        }
+    }
+
+    private void insertEvents(final List<Row> rows) {
+        m_jdbcTemplate.batchUpdate(INSERT_EVENT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                final Row row = rows.get(i);
+                final OnmsEvent ovent = row.ovent;
+                int col = 1;
+                ps.setInt(col++, ovent.getId());
+                ps.setString(col++, ovent.getEventUei());
+                setInteger(ps, col++, row.nodeId);
+                setTimestamp(ps, col++, ovent.getEventTime());
+                ps.setString(col++, ovent.getEventHost());
+                ps.setString(col++, ovent.getEventSource());
+                ps.setString(col++, ovent.getIpAddr() == null ? null : InetAddressUtils.str(ovent.getIpAddr()));
+                ps.setString(col++, row.systemId);
+                ps.setString(col++, ovent.getEventSnmpHost());
+                setInteger(ps, col++, row.serviceId);
+                ps.setString(col++, ovent.getEventSnmp());
+                setTimestamp(ps, col++, ovent.getEventCreateTime());
+                ps.setString(col++, ovent.getEventDescr());
+                ps.setString(col++, ovent.getEventLogGroup());
+                ps.setString(col++, ovent.getEventLogMsg());
+                setInteger(ps, col++, ovent.getEventSeverity());
+                ps.setString(col++, ovent.getEventPathOutage());
+                ps.setString(col++, ovent.getEventCorrelation());
+                setInteger(ps, col++, ovent.getEventSuppressedCount());
+                ps.setString(col++, ovent.getEventOperInstruct());
+                ps.setString(col++, ovent.getEventAutoAction());
+                ps.setString(col++, ovent.getEventOperAction());
+                ps.setString(col++, ovent.getEventOperActionMenuText());
+                ps.setString(col++, ovent.getEventNotification());
+                ps.setString(col++, ovent.getEventTTicket());
+                setInteger(ps, col++, ovent.getEventTTicketState());
+                ps.setString(col++, ovent.getEventForward());
+                ps.setString(col++, ovent.getEventMouseOverText());
+                ps.setString(col++, ovent.getEventLog());
+                ps.setString(col++, ovent.getEventDisplay());
+                setInteger(ps, col++, ovent.getIfIndex());
+                ps.setString(col++, ovent.getEventAckUser());
+                setTimestamp(ps, col++, ovent.getEventAckTime());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
+    }
+
+    private void insertParameters(final List<OnmsEventParameter> parameters) {
+        if (parameters.isEmpty()) {
+            return;
+        }
+        m_jdbcTemplate.batchUpdate(INSERT_EVENT_PARAMETER_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                final OnmsEventParameter parameter = parameters.get(i);
+                ps.setInt(1, parameter.getEvent().getId());
+                ps.setString(2, parameter.getName());
+                ps.setString(3, parameter.getValue());
+                ps.setString(4, parameter.getType());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return parameters.size();
+            }
+        });
+    }
+
+    private static void setInteger(final PreparedStatement ps, final int index, final Integer value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.INTEGER);
+        } else {
+            ps.setInt(index, value);
+        }
+    }
+
+    private static void setTimestamp(final PreparedStatement ps, final int index, final Date value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.TIMESTAMP);
+        } else {
+            ps.setTimestamp(index, new Timestamp(value.getTime()));
+        }
+    }
+
+    public void setTransactionManager(TransactionOperations transactionManager) {
+        m_transactionManager = transactionManager;
+    }
+
+    public void setJdbcTemplate(JdbcTemplate jdbcTemplate) {
+        m_jdbcTemplate = jdbcTemplate;
+    }
+
+    public int getBatchSize() {
+        return m_batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        m_batchSize = batchSize;
+    }
+
+    public long getBatchWindowMs() {
+        return m_batchWindowMs;
+    }
+
+    public void setBatchWindowMs(long batchWindowMs) {
+        m_batchWindowMs = batchWindowMs;
+    }
+
+    public long getCacheTtlMs() {
+        return m_cacheTtlMs;
+    }
+
+    public void setCacheTtlMs(long cacheTtlMs) {
+        m_cacheTtlMs = cacheTtlMs;
+    }
+
+    private static class PendingLog {
+        private final Header header;
+        private final List<Event> events;
+        private final List<Integer> ids = new ArrayList<>();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        public PendingLog(Header header, List<Event> events) {
+            this.header = header;
+            this.events = events;
+        }
+    }
+
+    private static class Row {
+        private OnmsEvent ovent;
+        private Integer nodeId;
+        private String systemId;
+        private Integer serviceId;
+    }
+
+    private static class NodeHost {
+        private final int nodeId;
+        private final String host;
+
+        public NodeHost(int nodeId, String host) {
+            this.nodeId = nodeId;
+            this.host = host;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(nodeId, host);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof NodeHost)) {
+                return false;
+            }
+            final NodeHost that = (NodeHost) obj;
+            return this.nodeId == that.nodeId && Objects.equals(this.host, that.host);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.eventd.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Log;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class JdbcBatchEventWriterTest {
+
+    private JdbcBatchEventWriter eventWriter;
+    private TransactionOperations transactionManager;
+    private JdbcTemplate jdbcTemplate;
+    private final AtomicInteger sequence = new AtomicInteger(100);
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        transactionManager = mock(TransactionOperations.class);
+        when(transactionManager.execute(any())).thenAnswer(invocation -> ((TransactionCallback<Object>)invocation.getArguments()[0]).doInTransaction(null));
+
+        jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForList(any(String.class), eq(Integer.class), anyVararg())).thenAnswer(invocation -> {
+            final int count = (Integer)invocation.getArguments()[2];
+            final List<Integer> ids = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ids.add(sequence.incrementAndGet());
+            }
+            return ids;
+        });
+
+        eventWriter = new JdbcBatchEventWriter(new MetricRegistry());
+        eventWriter.setTransactionManager(transactionManager);
+        eventWriter.setJdbcTemplate(jdbcTemplate);
+        eventWriter.setBatchSize(4);
+        eventWriter.setBatchWindowMs(5000);
+        eventWriter.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        eventWriter.destroy();
+    }
+
+    /**
+     * Verifies that no transaction is opened when none of the events
+     * in the event log need to be persisted.
+     */
+    @Test
+    public void testNoTransactionOpened() throws Exception {
+        eventWriter.process(null);
+        eventWriter.process(new Log());
+
+        EventBuilder bldr = new EventBuilder("testUei", "testSource");
+        bldr.setLogDest(HibernateEventWriter.LOG_MSG_DEST_DO_NOT_PERSIST);
+        eventWriter.process(bldr.getLog());
+
+        verify(transactionManager, never()).execute(any());
+    }
+
+    /**
+     * Verifies that the events from concurrent logs are written in a
+     * single batch and that the ids are assigned back onto the events.
+     */
+    @Test
+    public void testLogsAreBatched() throws Exception {
+        final List<Log> logs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            EventBuilder bldr = new EventBuilder("testUei" + i, "testSource");
+            bldr.setLogDest(HibernateEventWriter.LOG_MSG_DEST_LOG_AND_DISPLAY);
+            bldr.addParam("parm", "value" + i);
+            logs.add(bldr.getLog());
+        }
+
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (final Log log : logs) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    eventWriter.process(log);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).get();
+
+        verify(transactionManager, times(1)).execute(any());
+        verify(jdbcTemplate, times(2)).batchUpdate(any(String.class), any(BatchPreparedStatementSetter.class));
+
+        final List<Integer> ids = new ArrayList<>();
+        for (final Log log : logs) {
+            final Event event = log.getEvents().getEvent(0);
+            ids.add(event.getDbid());
+        }
+        ids.sort(Integer::compare);
+        assertEquals(Integer.valueOf(101), ids.get(0));
+        assertEquals(Integer.valueOf(104), ids.get(3));
+    }
+
+    /**
+     * Verifies that a failed batch is written again one log at a time
+     * so that only the log that keeps failing is rejected.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFailedBatchIsRetriedPerLog() throws Exception {
+        // Fail the batch and the retry of its second log
+        final AtomicInteger transactions = new AtomicInteger();
+        when(transactionManager.execute(any())).thenAnswer(invocation -> {
+            final int transaction = transactions.incrementAndGet();
+            if (transaction == 1 || transaction == 3) {
+                throw new DataIntegrityViolationException("transaction " + transaction);
+            }
+            return ((TransactionCallback<Object>)invocation.getArguments()[0]).doInTransaction(null);
+        });
+
+        final List<Log> logs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            EventBuilder bldr = new EventBuilder("testUei" + i, "testSource");
+            bldr.setLogDest(HibernateEventWriter.LOG_MSG_DEST_LOG_AND_DISPLAY);
+            logs.add(bldr.getLog());
+        }
+
+        final AtomicInteger failures = new AtomicInteger();
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (final Log log : logs) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    eventWriter.process(log);
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                }
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).get();
+
+        verify(transactionManager, times(5)).execute(any());
+        assertEquals(1, failures.get());
+
+        int stored = 0;
+        for (final Log log : logs) {
+            if (log.getEvents().getEvent(0).getDbid() != null) {
+                stored++;
+            }
+        }
+        assertEquals(3, stored);
+    }
+}
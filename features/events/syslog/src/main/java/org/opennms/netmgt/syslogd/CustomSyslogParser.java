@@ -38,6 +38,10 @@ import org.opennms.netmgt.config.SyslogdConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
 public class CustomSyslogParser extends SyslogParser {
     private static final Logger LOG = LoggerFactory.getLogger(CustomSyslogParser.class);
     private static final Pattern m_messageIdPattern = Pattern.compile("^((\\S+):\\s*)");
@@ -47,6 +51,14 @@ public class CustomSyslogParser extends SyslogParser {
     private static final Pattern m_datePattern = Pattern.compile("^\\s*((\\d\\d\\d\\d-\\d\\d-\\d\\d)\\s*)");
     private static final Pattern m_oldDatePattern = Pattern.compile("^\\s*(\\S\\S\\S\\s+\\d{1,2}\\s+\\d\\d:\\d\\d:\\d\\d)\\s+");
 
+    private static final LoadingCache<String,Pattern> FORWARDING_PATTERNS = CacheBuilder.newBuilder().maximumSize(16).build(
+        new CacheLoader<String,Pattern>() {
+            public Pattern load(String forwardingRegexp) {
+                return Pattern.compile(forwardingRegexp, Pattern.MULTILINE);
+            }
+        }
+    );
+
     private final Pattern m_forwardingPattern;
     private final int m_matchingGroupHost;
     private final int m_matchingGroupMessage;
@@ -58,7 +70,7 @@ public class CustomSyslogParser extends SyslogParser {
             throw new SyslogParserException("no forwarding regular expression defined");
         }
         final String forwardingRegexp = config.getForwardingRegexp();
-        m_forwardingPattern = Pattern.compile(forwardingRegexp, Pattern.MULTILINE);
+        m_forwardingPattern = FORWARDING_PATTERNS.getUnchecked(forwardingRegexp);
         m_matchingGroupHost = config.getMatchingGroupHost();
         m_matchingGroupMessage = config.getMatchingGroupMessage();
     }
@@ -69,7 +81,7 @@ public class CustomSyslogParser extends SyslogParser {
         final SyslogMessage syslogMessage = new SyslogMessage();
         syslogMessage.setParserClass(getClass());
 
-        String message = SyslogParser.fromByteBuffer(getText());
+        String message = getTextAsString();
 
         int lbIdx = message.indexOf('<');
         int rbIdx = message.indexOf('>');
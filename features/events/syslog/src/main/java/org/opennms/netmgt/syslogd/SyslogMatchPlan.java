@@ -0,0 +1,442 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import static org.opennms.core.utils.InetAddressUtils.str;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.netmgt.config.SyslogdConfig;
+import org.opennms.netmgt.config.syslogd.HideMatch;
+import org.opennms.netmgt.config.syslogd.ParameterAssignment;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>ueiList</code> and <code>hideMessage</code> rules of a {@link SyslogdConfig},
+ * compiled into a form that can be applied to a message without any further lookups.
+ *
+ * All of the expressions are compiled up front, the facilities and severities of every
+ * rule are turned into tables indexed by ordinal, and regular expressions are guarded by
+ * the literals that any match must contain, so that most rules are rejected with a few
+ * calls to {@link String#contains(CharSequence)}.
+ *
+ * Plans are immutable. {@link #forConfig(SyslogdConfig)} replaces the current plan as a
+ * whole when the configuration hands out different rules, which is what happens when
+ * the configuration is reloaded.
+ */
+public final class SyslogMatchPlan {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SyslogMatchPlan.class);
+
+    private static final AtomicReference<SyslogMatchPlan> CURRENT = new AtomicReference<>();
+
+    private final SyslogdConfig m_config;
+    private final List<UeiMatch> m_ueiList;
+    private final List<HideMatch> m_hideList;
+    private final String m_discardUei;
+
+    private final CompiledUeiMatch[] m_ueiMatches;
+    private final CompiledMatch[] m_hideMatches;
+
+    /**
+     * Returns the plan for the current rules of the given configuration, compiling
+     * it if the rules have changed since the last call.
+     */
+    public static SyslogMatchPlan forConfig(final SyslogdConfig config) {
+        final List<UeiMatch> ueiList = config.getUeiList();
+        final List<HideMatch> hideList = config.getHideMessages();
+        final String discardUei = config.getDiscardUei();
+
+        final SyslogMatchPlan plan = CURRENT.get();
+        if (plan != null && plan.isCompiledFrom(config, ueiList, hideList, discardUei)) {
+            return plan;
+        }
+
+        final SyslogMatchPlan newPlan = new SyslogMatchPlan(config, ueiList, hideList, discardUei);
+        CURRENT.set(newPlan);
+        LOG.debug("Compiled {} uei-match and {} hide-match rules", newPlan.m_ueiMatches.length, newPlan.m_hideMatches.length);
+        return newPlan;
+    }
+
+    private SyslogMatchPlan(final SyslogdConfig config, final List<UeiMatch> ueiList, final List<HideMatch> hideList, final String discardUei) {
+        m_config = config;
+        m_ueiList = ueiList;
+        m_hideList = hideList;
+        m_discardUei = discardUei;
+
+        final List<CompiledUeiMatch> ueiMatches = new ArrayList<>();
+        for (final UeiMatch uei : (ueiList == null ? Collections.<UeiMatch>emptyList() : ueiList)) {
+            final CompiledUeiMatch compiled = CompiledUeiMatch.compile(uei, discardUei);
+            if (compiled != null) {
+                ueiMatches.add(compiled);
+            }
+        }
+        m_ueiMatches = ueiMatches.toArray(new CompiledUeiMatch[ueiMatches.size()]);
+
+        final List<CompiledMatch> hideMatches = new ArrayList<>();
+        for (final HideMatch hide : (hideList == null ? Collections.<HideMatch>emptyList() : hideList)) {
+            final String type = hide.getMatch().getType();
+            final String expression = hide.getMatch().getExpression();
+            if ("substr".equals(type)) {
+                hideMatches.add(new CompiledMatch(new String[] { expression }, null));
+            } else if ("regex".equals(type)) {
+                final Pattern pattern = compile(expression, "hide-match");
+                if (pattern != null) {
+                    hideMatches.add(new CompiledMatch(requiredLiterals(expression), pattern));
+                }
+            }
+        }
+        m_hideMatches = hideMatches.toArray(new CompiledMatch[hideMatches.size()]);
+    }
+
+    private boolean isCompiledFrom(final SyslogdConfig config, final List<UeiMatch> ueiList, final List<HideMatch> hideList, final String discardUei) {
+        return m_config == config && m_ueiList == ueiList && m_hideList == hideList && Objects.equals(m_discardUei, discardUei);
+    }
+
+    /**
+     * Updates the event built from the message according to the first matching
+     * <code>ueiList</code> rule, and hides the message if any <code>hideMessage</code> rule matches.
+     *
+     * @throws MessageDiscardedException if the first matching rule maps the message to the discard UEI
+     */
+    public void apply(final SyslogMessage message, final EventBuilder bldr) throws MessageDiscardedException {
+        final String text = message.getMessage();
+        if (m_ueiMatches.length > 0 && text != null) {
+            final int facility = message.getFacility().ordinal();
+            final int severity = message.getSeverity().ordinal();
+            String hostAddress = null;
+            boolean hostAddressResolved = false;
+
+            for (final CompiledUeiMatch uei : m_ueiMatches) {
+                if (!uei.m_facilities[facility] || !uei.m_severities[severity]) {
+                    continue;
+                }
+                if (!find(uei.m_process, message.getProcessName()) || !find(uei.m_hostname, message.getHostName())) {
+                    continue;
+                }
+                if (uei.m_hostaddr != null) {
+                    if (!hostAddressResolved) {
+                        hostAddress = str(message.getHostAddress());
+                        hostAddressResolved = true;
+                    }
+                    if (!find(uei.m_hostaddr, hostAddress)) {
+                        continue;
+                    }
+                }
+                if (uei.apply(text, bldr)) {
+                    break;
+                }
+            }
+        }
+
+        if (m_hideMatches.length > 0) {
+            // Match against the full string of the message
+            final String fullText = message.asRfc3164Message();
+            for (final CompiledMatch hide : m_hideMatches) {
+                if (hide.find(fullText)) {
+                    LOG.debug("Hiding syslog message from Event - May contain sensitive data");
+                    bldr.setLogMessage(ConvertToEvent.HIDDEN_MESSAGE);
+                    bldr.setParam("syslogmessage", ConvertToEvent.HIDDEN_MESSAGE);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static boolean find(final Pattern pattern, final String input) {
+        if (pattern == null) {
+            return true;
+        }
+        return input != null && pattern.matcher(input).find();
+    }
+
+    private static Pattern compile(final String expression, final String context) {
+        try {
+            return Pattern.compile(expression, Pattern.MULTILINE);
+        } catch (final PatternSyntaxException e) {
+            LOG.warn("Failed to compile {} regex pattern '{}'", context, expression, e);
+            return null;
+        }
+    }
+
+    private static boolean[] toOrdinalTable(final List<String> names, final Enum<?>[] values) {
+        final boolean[] table = new boolean[values.length];
+        for (final Enum<?> value : values) {
+            table[value.ordinal()] = names.isEmpty() || names.stream().anyMatch(name -> name.equalsIgnoreCase(value.toString()));
+        }
+        return table;
+    }
+
+    /**
+     * Returns the runs of literal characters that every match of the given regular
+     * expression must contain, in the order they appear, or <code>null</code> if none
+     * can safely be determined.
+     *
+     * Expressions using top-level alternation, inline flags or quoting are not analyzed,
+     * and only characters outside of groups and character classes are considered.
+     */
+    protected static String[] requiredLiterals(final String regex) {
+        if (regex.contains("(?") || regex.contains("\\Q")) {
+            return null;
+        }
+
+        final List<String> runs = new ArrayList<>();
+        final StringBuilder run = new StringBuilder();
+        int depth = 0;
+        final int length = regex.length();
+        for (int i = 0; i < length; i++) {
+            final char c = regex.charAt(i);
+            char literal = 0;
+            boolean isLiteral = false;
+            switch (c) {
+            case '\\':
+                if (i + 1 >= length) {
+                    return null;
+                }
+                final char escaped = regex.charAt(++i);
+                if (!Character.isLetterOrDigit(escaped)) {
+                    literal = escaped;
+                    isLiteral = true;
+                } else if ("dDsSwWbBAzZGhHvVR".indexOf(escaped) < 0) {
+                    // Escapes such as \x41, \p{Alpha} or back references span more than one character
+                    return null;
+                }
+                break;
+            case '[':
+                i = skipCharacterClass(regex, i);
+                if (i < 0) {
+                    return null;
+                }
+                break;
+            case '{':
+                i = regex.indexOf('}', i);
+                if (i < 0) {
+                    return null;
+                }
+                break;
+            case '(':
+                depth++;
+                break;
+            case ')':
+                depth--;
+                break;
+            case '|':
+                if (depth == 0) {
+                    return null;
+                }
+                break;
+            case '.': case '^': case '$': case '*': case '+': case '?':
+                break;
+            default:
+                literal = c;
+                isLiteral = true;
+            }
+
+            if (isLiteral && depth == 0) {
+                final char next = i + 1 < length ? regex.charAt(i + 1) : 0;
+                if (next == '?' || next == '*' || next == '{') {
+                    // The character is optional, so the run ends before it
+                    isLiteral = false;
+                } else {
+                    run.append(literal);
+                    if (next != '+') {
+                        continue;
+                    }
+                    // The character may be repeated, so the run ends with it
+                }
+            }
+
+            if (run.length() > 0) {
+                runs.add(run.toString());
+                run.setLength(0);
+            }
+        }
+        if (run.length() > 0) {
+            runs.add(run.toString());
+        }
+        return runs.isEmpty() ? null : runs.toArray(new String[runs.size()]);
+    }
+
+    private static int skipCharacterClass(final String regex, final int start) {
+        int nesting = 0;
+        for (int i = start; i < regex.length(); i++) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                nesting++;
+            } else if (c == ']' && --nesting == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A substring or regular expression match, optionally guarded by literals.
+     */
+    private static class CompiledMatch {
+        protected final String[] m_literals;
+        protected final Pattern m_pattern;
+
+        public CompiledMatch(final String[] literals, final Pattern pattern) {
+            m_literals = literals;
+            m_pattern = pattern;
+        }
+
+        protected boolean containsLiterals(final String text) {
+            if (m_literals != null) {
+                for (final String literal : m_literals) {
+                    if (!text.contains(literal)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        public boolean find(final String text) {
+            return containsLiterals(text) && (m_pattern == null || m_pattern.matcher(text).find());
+        }
+    }
+
+    private static final class CompiledUeiMatch extends CompiledMatch {
+        private final String m_uei;
+        private final boolean m_discard;
+        private final boolean[] m_facilities;
+        private final boolean[] m_severities;
+        private final Pattern m_process;
+        private final Pattern m_hostname;
+        private final Pattern m_hostaddr;
+        private final boolean m_defaultParameterMapping;
+        private final String[] m_parameterNames;
+        private final int[] m_parameterGroups;
+
+        private CompiledUeiMatch(final UeiMatch uei, final String discardUei, final String[] literals, final Pattern pattern, final Pattern process, final Pattern hostname, final Pattern hostaddr) {
+            super(literals, pattern);
+            m_uei = uei.getUei();
+            m_discard = Objects.equals(discardUei, uei.getUei());
+            m_facilities = toOrdinalTable(uei.getFacilities(), SyslogFacility.values());
+            m_severities = toOrdinalTable(uei.getSeverities(), SyslogSeverity.values());
+            m_process = process;
+            m_hostname = hostname;
+            m_hostaddr = hostaddr;
+            m_defaultParameterMapping = Boolean.TRUE.equals(uei.getMatch().getDefaultParameterMapping());
+            final List<ParameterAssignment> assignments = uei.getParameterAssignments();
+            m_parameterNames = new String[assignments.size()];
+            m_parameterGroups = new int[assignments.size()];
+            for (int i = 0; i < assignments.size(); i++) {
+                m_parameterNames[i] = assignments.get(i).getParameterName();
+                m_parameterGroups[i] = assignments.get(i).getMatchingGroup();
+            }
+        }
+
+        /**
+         * @return the compiled rule, or <code>null</code> if it can never match
+         */
+        public static CompiledUeiMatch compile(final UeiMatch uei, final String discardUei) {
+            final String type = uei.getMatch().getType();
+            final String expression = uei.getMatch().getExpression();
+
+            Pattern process = null, hostname = null, hostaddr = null;
+            if (uei.getProcessMatch().isPresent() && (process = compile(uei.getProcessMatch().get().getExpression(), "process-match")) == null) {
+                return null;
+            }
+            if (uei.getHostnameMatch().isPresent() && (hostname = compile(uei.getHostnameMatch().get().getExpression(), "hostname-match")) == null) {
+                return null;
+            }
+            if (uei.getHostaddrMatch().isPresent() && (hostaddr = compile(uei.getHostaddrMatch().get().getExpression(), "hostaddr-match")) == null) {
+                return null;
+            }
+
+            if ("substr".equals(type)) {
+                return new CompiledUeiMatch(uei, discardUei, new String[] { expression }, null, process, hostname, hostaddr);
+            } else if (type.startsWith("regex")) {
+                final Pattern pattern = compile(expression, "uei-match");
+                if (pattern == null) {
+                    return null;
+                }
+                return new CompiledUeiMatch(uei, discardUei, requiredLiterals(expression), pattern, process, hostname, hostaddr);
+            }
+            return null;
+        }
+
+        /**
+         * Checks the text of the message against this rule. If it matches, then the UEI is
+         * updated (or the event is discarded if the discard UEI is used) and, for regular
+         * expressions, parameters are added to the event.
+         */
+        public boolean apply(final String text, final EventBuilder bldr) throws MessageDiscardedException {
+            if (!containsLiterals(text)) {
+                return false;
+            }
+
+            Matcher matcher = null;
+            if (m_pattern != null) {
+                matcher = m_pattern.matcher(text);
+                if (!matcher.find()) {
+                    return false;
+                }
+            }
+
+            if (m_discard) {
+                LOG.trace("Specified UEI '{}' is same as discard-uei, discarding this message.", m_uei);
+                throw new MessageDiscardedException();
+            }
+            LOG.trace("Changed the UEI of a Syslogd event to: {}", m_uei);
+            bldr.setUei(m_uei);
+
+            if (matcher != null && matcher.groupCount() > 0) {
+                // Perform default parameter mapping
+                if (m_defaultParameterMapping) {
+                    for (int groupNum = 1; groupNum <= matcher.groupCount(); groupNum++) {
+                        bldr.addParam("group" + groupNum, matcher.group(groupNum));
+                    }
+                }
+
+                // If there are specific parameter mappings as well, perform those mappings
+                for (int i = 0; i < m_parameterNames.length; i++) {
+                    final String parmValue = matcher.group(m_parameterGroups[i]);
+                    bldr.addParam(m_parameterNames[i], parmValue == null ? "" : parmValue);
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+import org.opennms.core.ipc.sink.xml.BinaryCodec;
+import org.opennms.core.ipc.sink.xml.BinaryCodecs;
+import org.opennms.netmgt.syslogd.api.SyslogMessageDTO;
+import org.opennms.netmgt.syslogd.api.SyslogMessageLogDTO;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Encodes {@link SyslogMessageLogDTO}s using the messages defined in syslog.proto.
+ */
+public class SyslogMessageLogCodec implements BinaryCodec<SyslogMessageLogDTO> {
+
+    private static final int VERSION = 1;
+
+    private static final int LOG_LOCATION = 1;
+    private static final int LOG_SYSTEM_ID = 2;
+    private static final int LOG_SOURCE_ADDRESS = 3;
+    private static final int LOG_SOURCE_PORT = 4;
+    private static final int LOG_MESSAGE = 5;
+
+    private static final int MESSAGE_TIMESTAMP = 1;
+    private static final int MESSAGE_BYTES = 2;
+
+    private static final BinaryCodec<SyslogMessageDTO> MESSAGE_CODEC = new BinaryCodec<SyslogMessageDTO>() {
+        @Override
+        public int getVersion() {
+            return VERSION;
+        }
+
+        @Override
+        public void write(SyslogMessageDTO message, CodedOutputStream out) throws IOException {
+            if (message.getTimestamp() != null) {
+                out.writeUInt64(MESSAGE_TIMESTAMP, message.getTimestamp().getTime());
+            }
+            if (message.getBytes() != null) {
+                // Copy the remaining bytes while preserving the original position
+                final ByteBuffer bytes = message.getBytes().duplicate();
+                final byte[] array = new byte[bytes.remaining()];
+                bytes.get(array);
+                out.writeByteArray(MESSAGE_BYTES, array);
+            }
+        }
+
+        @Override
+        public SyslogMessageDTO read(CodedInputStream in) throws IOException {
+            final SyslogMessageDTO message = new SyslogMessageDTO();
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                switch (WireFormat.getTagFieldNumber(tag)) {
+                case MESSAGE_TIMESTAMP:
+                    message.setTimestamp(new Date(in.readUInt64()));
+                    break;
+                case MESSAGE_BYTES:
+                    message.setBytes(ByteBuffer.wrap(in.readByteArray()));
+                    break;
+                default:
+                    in.skipField(tag);
+                }
+            }
+            return message;
+        }
+    };
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public void write(SyslogMessageLogDTO messageLog, CodedOutputStream out) throws IOException {
+        if (messageLog.getLocation() != null) {
+            out.writeString(LOG_LOCATION, messageLog.getLocation());
+        }
+        if (messageLog.getSystemId() != null) {
+            out.writeString(LOG_SYSTEM_ID, messageLog.getSystemId());
+        }
+        if (messageLog.getSourceAddress() != null) {
+            out.writeByteArray(LOG_SOURCE_ADDRESS, messageLog.getSourceAddress().getAddress());
+        }
+        out.writeUInt32(LOG_SOURCE_PORT, messageLog.getSourcePort());
+        for (SyslogMessageDTO message : messageLog.getMessages()) {
+            BinaryCodecs.writeMessage(out, LOG_MESSAGE, MESSAGE_CODEC, message);
+        }
+    }
+
+    @Override
+    public SyslogMessageLogDTO read(CodedInputStream in) throws IOException {
+        final SyslogMessageLogDTO messageLog = new SyslogMessageLogDTO();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+            case LOG_LOCATION:
+                messageLog.setLocation(in.readString());
+                break;
+            case LOG_SYSTEM_ID:
+                messageLog.setSystemId(in.readString());
+                break;
+            case LOG_SOURCE_ADDRESS:
+                messageLog.setSourceAddress(InetAddress.getByAddress(in.readByteArray()));
+                break;
+            case LOG_SOURCE_PORT:
+                messageLog.setSourcePort(in.readUInt32());
+                break;
+            case LOG_MESSAGE:
+                messageLog.getMessages().add(BinaryCodecs.readMessage(in, MESSAGE_CODEC));
+                break;
+            default:
+                in.skipField(tag);
+            }
+        }
+        return messageLog;
+    }
+}
@@ -57,34 +57,36 @@ import com.google.common.cache.LoadingCache;
 public class SyslogParser {
     private static final Logger LOG = LoggerFactory.getLogger(SyslogParser.class);
     private static final String datePattern="((19|20)\\d{2})-([1-9]|0[1-9]|1[0-2])-(0[1-9]|[1-9]|[12][0-9]|3[01])";
+    private static final Pattern ANY_LINE = Pattern.compile("^.*$");
     private Matcher m_matcher = null;
     private final SyslogdConfig m_config;
     private final ByteBuffer m_text;
+    private String m_string = null;
     private Boolean m_found = null;
     private Boolean m_matched = null;
     private boolean m_traceEnabled = false;
-    private static final LoadingCache<String,Class<? extends SyslogParser>> PARSER_CLASSES = CacheBuilder.newBuilder().build(
-        new CacheLoader<String,Class<? extends SyslogParser>>() {
-            public Class<? extends SyslogParser> load(String className) {
+    private static final LoadingCache<String,Constructor<? extends SyslogParser>> PARSER_CONSTRUCTORS = CacheBuilder.newBuilder().build(
+        new CacheLoader<String,Constructor<? extends SyslogParser>>() {
+            public Constructor<? extends SyslogParser> load(String className) throws NoSuchMethodException {
+                Class<? extends SyslogParser> parserClass;
                 try {
-                    return Class.forName(className).asSubclass(SyslogParser.class);
+                    parserClass = Class.forName(className).asSubclass(SyslogParser.class);
                 } catch (final Exception e) {
                     LOG.debug("Unable to instantiate Syslog parser class specified in config: {}", className, e);
-                    return CustomSyslogParser.class;
+                    parserClass = CustomSyslogParser.class;
                 }
+                // Resolve the constructor once, rather than reflecting on every message
+                return parserClass.getConstructor(SyslogdConfig.class, ByteBuffer.class);
             }
         }
     );
 
     public static SyslogParser getParserInstance(SyslogdConfig config, ByteBuffer text) throws MessageDiscardedException {
-        Class<? extends SyslogParser> parserClass = PARSER_CLASSES.getUnchecked(config.getParser());
-
         final SyslogParser retval;
         try {
-            Constructor<? extends SyslogParser> m = parserClass.getConstructor(SyslogdConfig.class, ByteBuffer.class);
-            retval = (SyslogParser)m.newInstance(config, text);
+            retval = PARSER_CONSTRUCTORS.getUnchecked(config.getParser()).newInstance(config, text);
         } catch (final Exception ex) {
-            LOG.debug("Unable to get parser for class '{}'", parserClass.getName(), ex);
+            LOG.debug("Unable to get parser for class '{}'", config.getParser(), ex);
             throw new MessageDiscardedException(ex);
         }
 
@@ -135,13 +137,23 @@ public class SyslogParser {
         return m_text;
     }
 
+    /**
+     * @return the text decoded as a string, which is only done once per message
+     */
+    protected String getTextAsString() {
+        if (m_string == null) {
+            m_string = SyslogParser.fromByteBuffer(getText());
+        }
+        return m_string;
+    }
+
     protected boolean traceEnabled() {
         return m_traceEnabled;
     }
 
     /* override this to get your custom pattern */
     protected Pattern getPattern() {
-        return Pattern.compile("^.*$");
+        return ANY_LINE;
     }
 
     /* override this to parse data from the matcher */
@@ -153,7 +165,7 @@ public class SyslogParser {
 
     protected Matcher getMatcher() {
         if (m_matcher == null) {
-            m_matcher = getPattern().matcher(SyslogParser.fromByteBuffer(getText()));
+            m_matcher = getPattern().matcher(getTextAsString());
         }
         return m_matcher;
     }
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opennms.core.test.ConfigurationTestUtils;
+import org.opennms.netmgt.config.SyslogdConfig;
+import org.opennms.netmgt.config.SyslogdConfigFactory;
+import org.opennms.netmgt.dao.api.DistPollerDao;
+import org.opennms.netmgt.dao.api.MonitoringLocationDao;
+import org.opennms.netmgt.dao.hibernate.InterfaceToNodeCacheDaoImpl;
+import org.opennms.netmgt.dao.mock.MockInterfaceToNodeCache;
+import org.opennms.netmgt.xml.event.Event;
+
+/**
+ * Measures the throughput of {@link ConvertToEvent} when converting a message
+ * against the rules of a configuration.
+ *
+ * The load test configuration contains 10000 <code>ueiMatch</code> rules and the
+ * message only matches the last one, so every rule is evaluated. Run the benchmark
+ * against an earlier revision to compare with the uncompiled rules.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConvertToEventBenchmark {
+
+    @Param({"/etc/syslogd-configuration.xml", "/etc/syslogd-loadtest-configuration.xml"})
+    public String configuration;
+
+    private SyslogdConfig config;
+
+    private InetAddress address;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() throws Exception {
+        InterfaceToNodeCacheDaoImpl.setInstance(new MockInterfaceToNodeCache());
+        config = new SyslogdConfigFactory(ConfigurationTestUtils.getInputStreamForResource(this, configuration));
+        address = InetAddress.getLoopbackAddress();
+        bytes = "<34> 2010-08-19 localhost foo9999: load test 9999 on tty1".getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    public Event convert() throws MessageDiscardedException {
+        return new ConvertToEvent(
+            DistPollerDao.DEFAULT_DIST_POLLER_ID,
+            MonitoringLocationDao.DEFAULT_MONITORING_LOCATION_ID,
+            address,
+            SyslogClient.PORT,
+            ByteBuffer.wrap(bytes),
+            config
+        ).getEvent();
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(ConvertToEventBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class SyslogMatchPlanTest {
+
+    @Test
+    public void testRequiredLiterals() {
+        assertArrayEquals(new String[] { "foo12: ", "load test ", " on " }, SyslogMatchPlan.requiredLiterals(".*foo12: .*load test (\\S+) on ((pts\\/\\d+)|(tty\\d+)).*"));
+        assertArrayEquals(new String[] { "Invalid user ", " from " }, SyslogMatchPlan.requiredLiterals("^Invalid user \\S+ from [0-9.]+$"));
+        // Alternation within a group only skips the group
+        assertArrayEquals(new String[] { "a", "d" }, SyslogMatchPlan.requiredLiterals("a(b|c)d"));
+        assertArrayEquals(new String[] { "a.b" }, SyslogMatchPlan.requiredLiterals("a\\.b"));
+        // Optional and repeated characters end the run
+        assertArrayEquals(new String[] { "colo", "r" }, SyslogMatchPlan.requiredLiterals("colou?r"));
+        assertArrayEquals(new String[] { "ab", "c" }, SyslogMatchPlan.requiredLiterals("ab+c"));
+        assertArrayEquals(new String[] { "x", "y" }, SyslogMatchPlan.requiredLiterals("x[abc]{2,3}y"));
+    }
+
+    @Test
+    public void testNoRequiredLiterals() {
+        assertNull(SyslogMatchPlan.requiredLiterals("foo|bar"));
+        assertNull(SyslogMatchPlan.requiredLiterals("(?i)foo"));
+        assertNull(SyslogMatchPlan.requiredLiterals("\\Qfoo\\E"));
+        assertNull(SyslogMatchPlan.requiredLiterals("\\x41bc"));
+        assertNull(SyslogMatchPlan.requiredLiterals(".*(\\d+).*"));
+    }
+}
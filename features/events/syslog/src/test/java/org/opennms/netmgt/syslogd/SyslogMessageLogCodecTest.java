@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.opennms.core.ipc.sink.xml.AbstractXmlSinkModule.Format;
+import org.opennms.core.ipc.sink.xml.BinaryCodecs;
+import org.opennms.netmgt.config.SyslogdConfig;
+import org.opennms.netmgt.dao.api.DistPollerDao;
+import org.opennms.netmgt.syslogd.api.SyslogMessageDTO;
+import org.opennms.netmgt.syslogd.api.SyslogMessageLogDTO;
+
+public class SyslogMessageLogCodecTest {
+
+    private final SyslogMessageLogCodec codec = new SyslogMessageLogCodec();
+
+    @Test
+    public void canEncodeAndDecode() throws Exception {
+        final SyslogMessageLogDTO messageLog = createMessageLog();
+        assertEquals(messageLog, BinaryCodecs.fromByteArray(codec, BinaryCodecs.toByteArray(codec, messageLog)));
+    }
+
+    @Test
+    public void canEncodeAndDecodeEmptyLog() throws Exception {
+        final SyslogMessageLogDTO messageLog = new SyslogMessageLogDTO();
+        assertEquals(messageLog, BinaryCodecs.fromByteArray(codec, BinaryCodecs.toByteArray(codec, messageLog)));
+    }
+
+    @Test
+    public void doesNotConsumeTheMessageBytes() throws Exception {
+        final SyslogMessageLogDTO messageLog = createMessageLog();
+        final ByteBuffer bytes = messageLog.getMessages().get(0).getBytes();
+        final int position = bytes.position();
+        BinaryCodecs.toByteArray(codec, messageLog);
+        assertEquals(position, bytes.position());
+    }
+
+    @Test
+    public void canMarshalAndUnmarshalWithModule() throws Exception {
+        final SyslogSinkModule module = new SyslogSinkModule(Mockito.mock(SyslogdConfig.class), Mockito.mock(DistPollerDao.class));
+        module.setFormat(Format.BINARY);
+        final SyslogMessageLogDTO messageLog = createMessageLog();
+        assertEquals(messageLog, module.unmarshal(module.marshal(messageLog)));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void refusesNewerVersions() throws Exception {
+        final SyslogSinkModule module = new SyslogSinkModule(Mockito.mock(SyslogdConfig.class), Mockito.mock(DistPollerDao.class));
+        module.setFormat(Format.BINARY);
+        final byte[] bytes = module.marshal(createMessageLog());
+        // The version of the codec follows the magic byte
+        assertArrayEquals(new byte[] { 0, (byte)codec.getVersion() }, new byte[] { bytes[0], bytes[1] });
+        bytes[1] = (byte)(codec.getVersion() + 1);
+        module.unmarshal(bytes);
+    }
+
+    private static SyslogMessageLogDTO createMessageLog() throws Exception {
+        final SyslogMessageLogDTO messageLog = new SyslogMessageLogDTO("MINION", "00000000-0000-0000-0000-000000ddba11",
+                new InetSocketAddress(InetAddress.getByName("192.168.1.1"), 514));
+        for (int i = 0; i < 3; i++) {
+            final SyslogMessageDTO message = new SyslogMessageDTO(ByteBuffer.wrap(("<34>1 2017-01-01T00:00:00Z host app - - - message " + i).getBytes(StandardCharsets.US_ASCII)));
+            message.setTimestamp(new Date(1000L * i));
+            messageLog.getMessages().add(message);
+        }
+        return messageLog;
+    }
+}
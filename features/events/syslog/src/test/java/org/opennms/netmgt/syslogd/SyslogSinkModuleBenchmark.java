@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opennms.core.ipc.sink.xml.AbstractXmlSinkModule.Format;
+import org.opennms.netmgt.config.SyslogdConfig;
+import org.opennms.netmgt.dao.api.DistPollerDao;
+import org.opennms.netmgt.model.OnmsDistPoller;
+import org.opennms.netmgt.syslogd.api.SyslogConnection;
+import org.opennms.netmgt.syslogd.api.SyslogMessageLogDTO;
+
+/**
+ * Measures the throughput of the {@link SyslogSinkModule} when marshaling and
+ * unmarshaling a batch of syslog messages with the XML and the binary formats.
+ *
+ * The size of the marshaled batch is printed during the setup of each trial.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SyslogSinkModuleBenchmark {
+
+    private static final String MESSAGE = "<31>main: 2010-08-19 localhost foo%d: load test %d on tty1";
+
+    @Param({"XML", "BINARY"})
+    public Format format;
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    private SyslogSinkModule module;
+
+    private SyslogMessageLogDTO messageLog;
+
+    private byte[] marshaled;
+
+    @Setup
+    public void setUp() {
+        final OnmsDistPoller distPoller = new OnmsDistPoller("00000000-0000-0000-0000-000000000000");
+        distPoller.setLocation("Default");
+        final DistPollerDao distPollerDao = mock(DistPollerDao.class);
+        when(distPollerDao.whoami()).thenReturn(distPoller);
+
+        module = new SyslogSinkModule(mock(SyslogdConfig.class), distPollerDao);
+        module.setFormat(format);
+
+        final InetSocketAddress source = new InetSocketAddress("127.0.0.1", 514);
+        final SyslogConnection[] connections = new SyslogConnection[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            final byte[] bytes = String.format(MESSAGE, i, i).getBytes(StandardCharsets.US_ASCII);
+            connections[i] = new SyslogConnection(source, ByteBuffer.wrap(bytes));
+        }
+        messageLog = module.toMessageLog(connections);
+        marshaled = module.marshal(messageLog);
+        System.out.printf("%s batch of %d messages: %d bytes%n", format, batchSize, marshaled.length);
+    }
+
+    @Benchmark
+    public byte[] marshal() {
+        return module.marshal(messageLog);
+    }
+
+    @Benchmark
+    public SyslogMessageLogDTO unmarshal() {
+        return module.unmarshal(marshaled);
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(SyslogSinkModuleBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.trapd;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+import org.opennms.core.ipc.sink.xml.BinaryCodec;
+import org.opennms.core.ipc.sink.xml.BinaryCodecs;
+import org.opennms.netmgt.snmp.SnmpInstId;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpResult;
+import org.opennms.netmgt.snmp.SnmpUtils;
+import org.opennms.netmgt.snmp.SnmpValue;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Encodes {@link TrapLogDTO}s using the messages defined in trap.proto.
+ */
+public class TrapLogCodec implements BinaryCodec<TrapLogDTO> {
+
+    private static final int VERSION = 1;
+
+    private static final int LOG_SYSTEM_ID = 1;
+    private static final int LOG_LOCATION = 2;
+    private static final int LOG_TRAP_ADDRESS = 3;
+    private static final int LOG_MESSAGE = 4;
+
+    private static final int TRAP_AGENT_ADDRESS = 1;
+    private static final int TRAP_COMMUNITY = 2;
+    private static final int TRAP_VERSION = 3;
+    private static final int TRAP_TIMESTAMP = 4;
+    private static final int TRAP_PDU_LENGTH = 5;
+    private static final int TRAP_CREATION_TIME = 6;
+    private static final int TRAP_RAW_MESSAGE = 7;
+    private static final int TRAP_IDENTITY = 8;
+    private static final int TRAP_RESULT = 9;
+
+    private static final int IDENTITY_GENERIC = 1;
+    private static final int IDENTITY_SPECIFIC = 2;
+    private static final int IDENTITY_ENTERPRISE_ID = 3;
+
+    private static final int RESULT_BASE = 1;
+    private static final int RESULT_INSTANCE = 2;
+    private static final int RESULT_VALUE_TYPE = 3;
+    private static final int RESULT_VALUE = 4;
+
+    private static final BinaryCodec<TrapIdentityDTO> IDENTITY_CODEC = new BinaryCodec<TrapIdentityDTO>() {
+        @Override
+        public int getVersion() {
+            return VERSION;
+        }
+
+        @Override
+        public void write(TrapIdentityDTO identity, CodedOutputStream out) throws IOException {
+            out.writeInt32(IDENTITY_GENERIC, identity.getGeneric());
+            out.writeInt32(IDENTITY_SPECIFIC, identity.getSpecific());
+            if (identity.getEnterpriseId() != null) {
+                out.writeString(IDENTITY_ENTERPRISE_ID, identity.getEnterpriseId());
+            }
+        }
+
+        @Override
+        public TrapIdentityDTO read(CodedInputStream in) throws IOException {
+            final TrapIdentityDTO identity = new TrapIdentityDTO();
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                switch (WireFormat.getTagFieldNumber(tag)) {
+                case IDENTITY_GENERIC:
+                    identity.setGeneric(in.readInt32());
+                    break;
+                case IDENTITY_SPECIFIC:
+                    identity.setSpecific(in.readInt32());
+                    break;
+                case IDENTITY_ENTERPRISE_ID:
+                    identity.setEnterpriseId(in.readString());
+                    break;
+                default:
+                    in.skipField(tag);
+                }
+            }
+            return identity;
+        }
+    };
+
+    private static final BinaryCodec<SnmpResult> RESULT_CODEC = new BinaryCodec<SnmpResult>() {
+        @Override
+        public int getVersion() {
+            return VERSION;
+        }
+
+        @Override
+        public void write(SnmpResult result, CodedOutputStream out) throws IOException {
+            if (result.getBase() != null) {
+                out.writeString(RESULT_BASE, result.getBase().toString());
+            }
+            if (result.getInstance() != null) {
+                out.writeString(RESULT_INSTANCE, result.getInstance().toString());
+            }
+            if (result.getValue() != null) {
+                out.writeInt32(RESULT_VALUE_TYPE, result.getValue().getType());
+                out.writeByteArray(RESULT_VALUE, result.getValue().getBytes());
+            }
+        }
+
+        @Override
+        public SnmpResult read(CodedInputStream in) throws IOException {
+            SnmpObjId base = null;
+            SnmpInstId instance = null;
+            Integer valueType = null;
+            byte[] valueBytes = null;
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                switch (WireFormat.getTagFieldNumber(tag)) {
+                case RESULT_BASE:
+                    base = SnmpObjId.get(in.readString());
+                    break;
+                case RESULT_INSTANCE:
+                    instance = new SnmpInstId(in.readString());
+                    break;
+                case RESULT_VALUE_TYPE:
+                    valueType = in.readInt32();
+                    break;
+                case RESULT_VALUE:
+                    valueBytes = in.readByteArray();
+                    break;
+                default:
+                    in.skipField(tag);
+                }
+            }
+            SnmpValue value = null;
+            if (valueType != null) {
+                value = SnmpUtils.getValueFactory().getValue(valueType, valueBytes != null ? valueBytes : new byte[0]);
+            }
+            return new SnmpResult(base, instance, value);
+        }
+    };
+
+    private static final BinaryCodec<TrapDTO> TRAP_CODEC = new BinaryCodec<TrapDTO>() {
+        @Override
+        public int getVersion() {
+            return VERSION;
+        }
+
+        @Override
+        public void write(TrapDTO trap, CodedOutputStream out) throws IOException {
+            if (trap.getAgentAddress() != null) {
+                out.writeByteArray(TRAP_AGENT_ADDRESS, trap.getAgentAddress().getAddress());
+            }
+            if (trap.getCommunity() != null) {
+                out.writeString(TRAP_COMMUNITY, trap.getCommunity());
+            }
+            if (trap.getVersion() != null) {
+                out.writeString(TRAP_VERSION, trap.getVersion());
+            }
+            out.writeInt64(TRAP_TIMESTAMP, trap.getTimestamp());
+            out.writeInt32(TRAP_PDU_LENGTH, trap.getPduLength());
+            out.writeInt64(TRAP_CREATION_TIME, trap.getCreationTime());
+            if (trap.getRawMessage() != null) {
+                out.writeByteArray(TRAP_RAW_MESSAGE, trap.getRawMessage());
+            }
+            if (trap.getTrapIdentity() != null) {
+                BinaryCodecs.writeMessage(out, TRAP_IDENTITY, IDENTITY_CODEC, trap.getTrapIdentity());
+            }
+            for (SnmpResult result : trap.getResults()) {
+                BinaryCodecs.writeMessage(out, TRAP_RESULT, RESULT_CODEC, result);
+            }
+        }
+
+        @Override
+        public TrapDTO read(CodedInputStream in) throws IOException {
+            final TrapDTO trap = new TrapDTO();
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                switch (WireFormat.getTagFieldNumber(tag)) {
+                case TRAP_AGENT_ADDRESS:
+                    trap.setAgentAddress(InetAddress.getByAddress(in.readByteArray()));
+                    break;
+                case TRAP_COMMUNITY:
+                    trap.setCommunity(in.readString());
+                    break;
+                case TRAP_VERSION:
+                    trap.setVersion(in.readString());
+                    break;
+                case TRAP_TIMESTAMP:
+                    trap.setTimestamp(in.readInt64());
+                    break;
+                case TRAP_PDU_LENGTH:
+                    trap.setPduLength(in.readInt32());
+                    break;
+                case TRAP_CREATION_TIME:
+                    trap.setCreationTime(in.readInt64());
+                    break;
+                case TRAP_RAW_MESSAGE:
+                    trap.setRawMessage(in.readByteArray());
+                    break;
+                case TRAP_IDENTITY:
+                    trap.setTrapIdentity(BinaryCodecs.readMessage(in, IDENTITY_CODEC));
+                    break;
+                case TRAP_RESULT:
+                    trap.getResults().add(BinaryCodecs.readMessage(in, RESULT_CODEC));
+                    break;
+                default:
+                    in.skipField(tag);
+                }
+            }
+            return trap;
+        }
+    };
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public void write(TrapLogDTO trapLog, CodedOutputStream out) throws IOException {
+        if (trapLog.getSystemId() != null) {
+            out.writeString(LOG_SYSTEM_ID, trapLog.getSystemId());
+        }
+        if (trapLog.getLocation() != null) {
+            out.writeString(LOG_LOCATION, trapLog.getLocation());
+        }
+        if (trapLog.getTrapAddress() != null) {
+            out.writeByteArray(LOG_TRAP_ADDRESS, trapLog.getTrapAddress().getAddress());
+        }
+        for (TrapDTO trap : trapLog.getMessages()) {
+            BinaryCodecs.writeMessage(out, LOG_MESSAGE, TRAP_CODEC, trap);
+        }
+    }
+
+    @Override
+    public TrapLogDTO read(CodedInputStream in) throws IOException {
+        final TrapLogDTO trapLog = new TrapLogDTO();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+            case LOG_SYSTEM_ID:
+                trapLog.setSystemId(in.readString());
+                break;
+            case LOG_LOCATION:
+                trapLog.setLocation(in.readString());
+                break;
+            case LOG_TRAP_ADDRESS:
+                trapLog.setTrapAddress(InetAddress.getByAddress(in.readByteArray()));
+                break;
+            case LOG_MESSAGE:
+                trapLog.addMessage(BinaryCodecs.readMessage(in, TRAP_CODEC));
+                break;
+            default:
+                in.skipField(tag);
+            }
+        }
+        return trapLog;
+    }
+}
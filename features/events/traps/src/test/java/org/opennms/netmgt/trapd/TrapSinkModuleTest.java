@@ -28,13 +28,20 @@
 
 package org.opennms.netmgt.trapd;
 
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.opennms.core.ipc.sink.api.Message;
 import org.opennms.core.ipc.sink.api.SinkModule;
+import org.opennms.core.ipc.sink.xml.AbstractXmlSinkModule.Format;
 import org.opennms.netmgt.config.TrapdConfig;
 import org.opennms.netmgt.model.OnmsDistPoller;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpResult;
+import org.opennms.netmgt.snmp.SnmpUtils;
 
 public class TrapSinkModuleTest {
 
@@ -57,4 +64,39 @@ public class TrapSinkModuleTest {
         Assert.assertNotEquals(module, mockModule);
         Assert.assertNotEquals(module.hashCode(), mockModule.hashCode());
     }
+
+    @Test
+    public void canMarshalAndUnmarshalBinaryMessages() throws Exception {
+        final TrapSinkModule module = new TrapSinkModule(new TrapdConfigBean(), Mockito.mock(OnmsDistPoller.class));
+
+        final TrapIdentityDTO trapIdentity = new TrapIdentityDTO();
+        trapIdentity.setGeneric(6);
+        trapIdentity.setSpecific(1);
+        trapIdentity.setEnterpriseId(".1.3.6.1.4.1.5813");
+
+        final TrapDTO trap = new TrapDTO();
+        trap.setAgentAddress(InetAddress.getByName("192.168.1.1"));
+        trap.setCommunity("public");
+        trap.setVersion("v2");
+        trap.setTimestamp(5000);
+        trap.setPduLength(1);
+        trap.setCreationTime(System.currentTimeMillis());
+        trap.setTrapIdentity(trapIdentity);
+        trap.getResults().add(new SnmpResult(SnmpObjId.get(".1.3.6.1.2.1.1.5.0"), null,
+                SnmpUtils.getValueFactory().getOctetString("mockhost".getBytes(StandardCharsets.US_ASCII))));
+
+        final TrapLogDTO trapLog = new TrapLogDTO("systemId", "location", InetAddress.getByName("127.0.0.1"));
+        trapLog.addMessage(trap);
+
+        module.setFormat(Format.BINARY);
+        final byte[] binary = module.marshal(trapLog);
+        Assert.assertEquals(trapLog, module.unmarshal(binary));
+
+        // Messages sent by producers that still use XML must remain readable
+        module.setFormat(Format.XML);
+        final byte[] xml = module.marshal(trapLog);
+        Assert.assertEquals(trapLog, module.unmarshal(xml));
+        Assert.assertEquals(trapLog, module.unmarshal(binary));
+        Assert.assertTrue(binary.length < xml.length);
+    }
 }
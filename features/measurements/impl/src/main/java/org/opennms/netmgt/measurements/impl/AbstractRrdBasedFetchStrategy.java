@@ -29,8 +29,16 @@
 package org.opennms.netmgt.measurements.impl;
 
 import java.io.File;
+import java.nio.file.attribute.FileTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.stream.Collectors;
 
 import org.jrobin.core.RrdException;
 import org.opennms.netmgt.dao.api.ResourceDao;
@@ -43,23 +51,60 @@ import org.opennms.netmgt.model.ResourceId;
 import org.opennms.netmgt.model.RrdGraphAttribute;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Used to fetch measurements from RRD files.
  *
  * @author Jesse White <jesse@opennms.org>
  */
-public abstract class AbstractRrdBasedFetchStrategy implements MeasurementFetchStrategy {
+public abstract class AbstractRrdBasedFetchStrategy implements MeasurementFetchStrategy, InitializingBean, DisposableBean {
 
     private static final Logger LOG = LoggerFactory.getLogger(AbstractRrdBasedFetchStrategy.class);
 
+    private final MetricRegistry m_metrics = new MetricRegistry();
+
+    private JmxReporter m_reporter;
+
     @Autowired
     private ResourceDao m_resourceDao;
 
+    private RrdFetchResultsCache m_cache = new RrdFetchResultsCache(m_metrics);
+
+    private final ThreadFactory namedThreadFactory = new ThreadFactoryBuilder().setNameFormat("RrdFetchStrategy-%d").build();
+
+    private final ExecutorService threadPool = Executors.newCachedThreadPool(namedThreadFactory);
+
+    @Override
+    public void afterPropertiesSet() {
+        if (m_reporter == null) {
+            m_reporter = JmxReporter.forRegistry(m_metrics)
+                    .inDomain(AbstractRrdBasedFetchStrategy.class.getPackage().getName())
+                    .build();
+            m_reporter.start();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (m_reporter != null) {
+            m_reporter.close();
+            m_reporter = null;
+        }
+        threadPool.shutdown();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -70,19 +115,26 @@ public abstract class AbstractRrdBasedFetchStrategy implements MeasurementFetchS
         final Map<String, Object> constants = Maps.newHashMap();
 
         final Map<Source, String> rrdsBySource = Maps.newHashMap();
-        
+
+        final List<Map.Entry<Source, ResourceId>> resourceIdsBySource = Lists.newArrayListWithCapacity(sources.size());
         for (final Source source : sources) {
-            final ResourceId resourceId;
             try {
-                resourceId = ResourceId.fromString(source.getResourceId());
+                resourceIdsBySource.add(Maps.immutableEntry(source, ResourceId.fromString(source.getResourceId())));
             } catch (final IllegalArgumentException ex) {
                 if (relaxed) continue;
                 LOG.error("Ill-formed resource id: {}", source.getResourceId(), ex);
                 return null;
             }
+        }
 
-            // Grab the resource
-            final OnmsResource resource = m_resourceDao.getResourceById(resourceId);
+        // Grab the resources, looking up each of them only once
+        final Map<ResourceId, OnmsResource> resourcesById = getResourcesById(resourceIdsBySource.stream()
+                .map(Map.Entry::getValue)
+                .collect(Collectors.toSet()));
+
+        for (final Map.Entry<Source, ResourceId> entry : resourceIdsBySource) {
+            final Source source = entry.getKey();
+            final OnmsResource resource = resourcesById.get(entry.getValue());
             if (resource == null) {
                 if (relaxed) continue;
                 LOG.error("No resource with id: {}", source.getResourceId());
@@ -119,6 +171,41 @@ public abstract class AbstractRrdBasedFetchStrategy implements MeasurementFetchS
         return fetchMeasurements(start, end, step, maxrows, rrdsBySource, constants, sources, relaxed);
     }
 
+    /**
+     * Looks up the resources in parallel when there are more than one.
+     */
+    private Map<ResourceId, OnmsResource> getResourcesById(Set<ResourceId> resourceIds) throws Exception {
+        final Map<ResourceId, OnmsResource> resourcesById = Maps.newHashMapWithExpectedSize(resourceIds.size());
+        if (resourceIds.size() < 2) {
+            for (ResourceId resourceId : resourceIds) {
+                resourcesById.put(resourceId, m_resourceDao.getResourceById(resourceId));
+            }
+            return resourcesById;
+        }
+
+        final Map<ResourceId, Future<OnmsResource>> resourceFuturesById = Maps.newHashMapWithExpectedSize(resourceIds.size());
+        for (ResourceId resourceId : resourceIds) {
+            resourceFuturesById.put(resourceId, threadPool.submit(() -> {
+                final OnmsResource resource = m_resourceDao.getResourceById(resourceId);
+                if (resource != null) {
+                    // The attributes are typically lazy loaded, so we trigger the load here
+                    // while we're in a threaded context
+                    resource.getAttributes();
+                }
+                return resource;
+            }));
+        }
+        for (Map.Entry<ResourceId, Future<OnmsResource>> entry : resourceFuturesById.entrySet()) {
+            try {
+                resourcesById.put(entry.getKey(), entry.getValue().get());
+            } catch (ExecutionException e) {
+                Throwables.propagateIfInstanceOf(e.getCause(), Exception.class);
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+        return resourcesById;
+    }
+
     /**
      *  Performs the actual retrieval of the values from the RRD/JRB files.
      *
@@ -136,13 +223,37 @@ public abstract class AbstractRrdBasedFetchStrategy implements MeasurementFetchS
             return Utils.createEmtpyFetchResults(step, constants);
         }
 
-        FetchResults fetchResults = fetchMeasurements(start, end, step, maxrows, rrdsBySource, constants);
+        final FetchResults fetchResults;
+        final RrdFetchResultsCache.Key key = m_cache.isEnabled() ? m_cache.getKey(rrdsBySource, start, end, step, maxrows) : null;
+        if (key != null) {
+            final FetchResults cachedResults = m_cache.get(key, constants);
+            if (cachedResults != null) {
+                fetchResults = cachedResults;
+            } else {
+                // Record the modification times before reading the files, so that concurrent updates invalidate the entry
+                final Map<String, FileTime> modificationTimes = m_cache.getModificationTimes(rrdsBySource.values());
+                fetchResults = fetchMeasurements(key.getStart(), key.getEnd(), step, maxrows, rrdsBySource, constants);
+                m_cache.put(key, fetchResults, modificationTimes);
+            }
+        } else {
+            fetchResults = fetchMeasurements(start, end, step, maxrows, rrdsBySource, constants);
+        }
         if (relaxed) {
             Utils.fillMissingValues(fetchResults, sources);
         }
         return fetchResults;
     }
 
+    @VisibleForTesting
+    protected void setResourceDao(ResourceDao resourceDao) {
+        m_resourceDao = resourceDao;
+    }
+
+    @VisibleForTesting
+    protected void setCache(RrdFetchResultsCache cache) {
+        m_cache = cache;
+    }
+
     /**
      * Performs the actual retrieval of the values from the RRD/JRB files.
      */
@@ -0,0 +1,1206 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.measurements.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.LongBinaryOperator;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Compiles JEXL expressions into trees of nodes that are evaluated over whole
+ * columns at once.
+ *
+ * Only a subset of the language is supported: number and boolean literals,
+ * references to variables, arithmetic, comparison and logical operators,
+ * conditionals and calls to the functions of the <code>math</code> and
+ * <code>strictmath</code> namespaces. The nodes are typed after the values that
+ * JEXL would see, since these drive its arithmetic: integer division, equality
+ * of boxed doubles, literals parsed as floats and so on. Anything whose outcome
+ * could differ from the one of the {@link JEXLExpressionEngine} is rejected with an
+ * {@link UnsupportedExpressionException}.
+ */
+class ColumnarExpressionCompiler {
+
+    /**
+     * Thrown when an expression uses syntax or values that the compiler does not handle.
+     */
+    static class UnsupportedExpressionException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedExpressionException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The type of the boxed values that JEXL would manipulate.
+     */
+    enum Type {
+        /**
+         * Integer, Long and other integral values.
+         */
+        LONG,
+        /**
+         * Float values, which JEXL uses for decimal literals without a suffix.
+         */
+        FLOAT,
+        DOUBLE,
+        BOOLEAN;
+
+        boolean isNumeric() {
+            return this != BOOLEAN;
+        }
+
+        boolean isFloatingPoint() {
+            return this == FLOAT || this == DOUBLE;
+        }
+    }
+
+    /**
+     * The values available to the nodes while evaluating a request.
+     */
+    static class Frame {
+        final int numRows;
+        final long[] timestamps;
+        final Map<String, double[]> columns;
+        final Map<String, double[]> expressionValues;
+
+        Frame(long[] timestamps, Map<String, double[]> columns, Map<String, double[]> expressionValues) {
+            this.numRows = timestamps.length;
+            this.timestamps = timestamps;
+            this.columns = columns;
+            this.expressionValues = expressionValues;
+        }
+    }
+
+    abstract static class Node {
+        final Type type;
+
+        Node(Type type) {
+            this.type = type;
+        }
+
+        double[] evalDouble(Frame frame) {
+            throw new IllegalStateException("Not a floating point node: " + type);
+        }
+
+        long[] evalLong(Frame frame) {
+            throw new IllegalStateException("Not an integral node: " + type);
+        }
+
+        boolean[] evalBoolean(Frame frame) {
+            throw new IllegalStateException("Not a boolean node: " + type);
+        }
+
+        /**
+         * Evaluates a numeric node, widening integral values to doubles.
+         */
+        double[] evalAsDouble(Frame frame) {
+            if (type == Type.LONG) {
+                final long[] values = evalLong(frame);
+                final double[] result = new double[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    result[i] = values[i];
+                }
+                return result;
+            }
+            return evalDouble(frame);
+        }
+
+        /**
+         * @return true if the arrays returned by this node are shared, and must not be modified
+         */
+        boolean isReference() {
+            return false;
+        }
+    }
+
+    /**
+     * A compiled expression, along with the labels of the expressions it depends on.
+     */
+    static class CompiledExpression {
+        final Node node;
+        final Set<String> dependencies;
+
+        CompiledExpression(Node node, Set<String> dependencies) {
+            this.node = node;
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * Evaluates the expression, and converts its values to doubles the same
+         * way as {@link org.opennms.netmgt.measurements.utils.Utils#toDouble(Object)}.
+         */
+        double[] evaluate(Frame frame) {
+            final double[] values;
+            switch (node.type) {
+            case LONG:
+                values = node.evalAsDouble(frame);
+                break;
+            case FLOAT:
+                values = node.evalDouble(frame).clone();
+                for (int i = 0; i < values.length; i++) {
+                    // Floats are converted through their string representation
+                    values[i] = Double.valueOf(Float.toString((float) values[i]));
+                }
+                break;
+            default:
+                values = node.isReference() ? node.evalDouble(frame).clone() : node.evalDouble(frame);
+            }
+            return values;
+        }
+    }
+
+    private static final String TIMESTAMP = "timestamp";
+
+    private static final Map<String, Double> BUILT_IN_CONSTANTS = ImmutableMap.of(
+            "__inf", Double.POSITIVE_INFINITY,
+            "__neg_inf", Double.NEGATIVE_INFINITY,
+            "NaN", Double.NaN);
+
+    private static final String DIFF_TIME = "__diff_time";
+
+    /**
+     * Reserved words of JEXL that are not handled as operators or literals.
+     */
+    private static final Set<String> RESERVED_WORDS = ImmutableSet.of("null", "new", "empty", "size", "if", "else",
+            "for", "foreach", "while", "var", "return", "function", "in");
+
+    private final Set<String> columnLabels;
+    private final Map<String, Object> constants;
+    private final double diffTime;
+    private final Set<String> previousLabels;
+
+    /**
+     * @param columnLabels labels of the columns returned by the fetch
+     * @param constants constants returned by the fetch
+     * @param diffTime value of <code>__diff_time</code>
+     * @param previousLabels labels of the expressions that are evaluated before the one being compiled
+     */
+    ColumnarExpressionCompiler(Set<String> columnLabels, Map<String, Object> constants, double diffTime, Set<String> previousLabels) {
+        this.columnLabels = columnLabels;
+        this.constants = constants;
+        this.diffTime = diffTime;
+        this.previousLabels = previousLabels;
+    }
+
+    CompiledExpression compile(String expression) throws UnsupportedExpressionException {
+        if (expression == null) {
+            throw new UnsupportedExpressionException("null expression");
+        }
+        final Set<String> dependencies = new TreeSet<>();
+        final Parser parser = new Parser(tokenize(expression), dependencies);
+        final Node node = parser.parseExpression();
+        parser.expectEnd();
+        if (node.type == Type.BOOLEAN) {
+            throw new UnsupportedExpressionException("boolean result");
+        }
+        return new CompiledExpression(node, dependencies);
+    }
+
+    /*
+     * Tokens
+     */
+
+    private enum TokenType {
+        NUMBER, IDENTIFIER, OPERATOR
+    }
+
+    private static class Token {
+        private final TokenType type;
+        private final String text;
+
+        private Token(TokenType type, String text) {
+            this.type = type;
+            this.text = text;
+        }
+
+        private boolean is(String operator) {
+            return type == TokenType.OPERATOR && text.equals(operator);
+        }
+    }
+
+    private static final String[] OPERATORS = {
+        "&&", "||", "==", "!=", "<=", ">=", "=~", "!~", "?:",
+        "+", "-", "*", "/", "%", "<", ">", "!", "?", ":", "(", ")", ",", "=", "&", "|", "^", "~"
+    };
+
+    private static List<Token> tokenize(String expression) throws UnsupportedExpressionException {
+        final List<Token> tokens = new ArrayList<>();
+        final int length = expression.length();
+        int i = 0;
+        while (i < length) {
+            final char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c >= '0' && c <= '9') {
+                int j = i;
+                while (j < length && isNumberPart(expression.charAt(j))) {
+                    // Allow signs in exponents
+                    if ((expression.charAt(j) == 'e' || expression.charAt(j) == 'E') && j + 1 < length
+                            && (expression.charAt(j + 1) == '+' || expression.charAt(j + 1) == '-')) {
+                        j++;
+                    }
+                    j++;
+                }
+                tokens.add(new Token(TokenType.NUMBER, expression.substring(i, j)));
+                i = j;
+            } else if (isIdentifierStart(c)) {
+                int j = i;
+                while (j < length && isIdentifierPart(expression.charAt(j))) {
+                    j++;
+                }
+                // Dotted (ant-ish) names
+                while (j + 1 < length && expression.charAt(j) == '.' && isIdentifierStart(expression.charAt(j + 1))) {
+                    j++;
+                    while (j < length && isIdentifierPart(expression.charAt(j))) {
+                        j++;
+                    }
+                }
+                tokens.add(new Token(TokenType.IDENTIFIER, expression.substring(i, j)));
+                i = j;
+            } else {
+                String operator = null;
+                for (String candidate : OPERATORS) {
+                    if (expression.startsWith(candidate, i)) {
+                        operator = candidate;
+                        break;
+                    }
+                }
+                if (operator == null) {
+                    throw new UnsupportedExpressionException("unexpected character '" + c + "'");
+                }
+                tokens.add(new Token(TokenType.OPERATOR, operator));
+                i += operator.length();
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isNumberPart(char c) {
+        return (c >= '0' && c <= '9') || c == '.' || Character.isLetter(c);
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || (c >= '0' && c <= '9');
+    }
+
+    /*
+     * Parser
+     */
+
+    private class Parser {
+        private final List<Token> tokens;
+        private final Set<String> dependencies;
+        private int position = 0;
+
+        private Parser(List<Token> tokens, Set<String> dependencies) {
+            this.tokens = tokens;
+            this.dependencies = dependencies;
+        }
+
+        private Token peek() {
+            return position < tokens.size() ? tokens.get(position) : null;
+        }
+
+        private Token peek(int offset) {
+            return position + offset < tokens.size() ? tokens.get(position + offset) : null;
+        }
+
+        private boolean accept(String operator) {
+            final Token token = peek();
+            if (token != null && (token.is(operator) || isWordOperator(token, operator))) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String operator) throws UnsupportedExpressionException {
+            if (!accept(operator)) {
+                throw new UnsupportedExpressionException("expected '" + operator + "'");
+            }
+        }
+
+        private void expectEnd() throws UnsupportedExpressionException {
+            if (peek() != null) {
+                throw new UnsupportedExpressionException("unexpected token '" + peek().text + "'");
+            }
+        }
+
+        private Node parseExpression() throws UnsupportedExpressionException {
+            final Node condition = parseOr();
+            if (accept("?")) {
+                final Node ifTrue = parseExpression();
+                expect(":");
+                final Node ifFalse = parseExpression();
+                return conditional(condition, ifTrue, ifFalse);
+            }
+            return condition;
+        }
+
+        private Node parseOr() throws UnsupportedExpressionException {
+            Node node = parseAnd();
+            while (accept("||")) {
+                node = logical(false, node, parseAnd());
+            }
+            return node;
+        }
+
+        private Node parseAnd() throws UnsupportedExpressionException {
+            Node node = parseEquality();
+            while (accept("&&")) {
+                node = logical(true, node, parseEquality());
+            }
+            return node;
+        }
+
+        private Node parseEquality() throws UnsupportedExpressionException {
+            Node node = parseRelational();
+            while (true) {
+                if (accept("==")) {
+                    node = comparison(Comparison.EQ, node, parseRelational());
+                } else if (accept("!=")) {
+                    node = comparison(Comparison.NE, node, parseRelational());
+                } else {
+                    return node;
+                }
+            }
+        }
+
+        private Node parseRelational() throws UnsupportedExpressionException {
+            Node node = parseAdditive();
+            while (true) {
+                if (accept("<=")) {
+                    node = comparison(Comparison.LE, node, parseAdditive());
+                } else if (accept(">=")) {
+                    node = comparison(Comparison.GE, node, parseAdditive());
+                } else if (accept("<")) {
+                    node = comparison(Comparison.LT, node, parseAdditive());
+                } else if (accept(">")) {
+                    node = comparison(Comparison.GT, node, parseAdditive());
+                } else {
+                    return node;
+                }
+            }
+        }
+
+        private Node parseAdditive() throws UnsupportedExpressionException {
+            Node node = parseMultiplicative();
+            while (true) {
+                if (accept("+")) {
+                    node = arithmetic(Arithmetic.ADD, node, parseMultiplicative());
+                } else if (accept("-")) {
+                    node = arithmetic(Arithmetic.SUBTRACT, node, parseMultiplicative());
+                } else {
+                    return node;
+                }
+            }
+        }
+
+        private Node parseMultiplicative() throws UnsupportedExpressionException {
+            Node node = parseUnary();
+            while (true) {
+                if (accept("*")) {
+                    node = arithmetic(Arithmetic.MULTIPLY, node, parseUnary());
+                } else if (accept("/")) {
+                    node = arithmetic(Arithmetic.DIVIDE, node, parseUnary());
+                } else if (accept("%")) {
+                    node = arithmetic(Arithmetic.MODULO, node, parseUnary());
+                } else {
+                    return node;
+                }
+            }
+        }
+
+        private Node parseUnary() throws UnsupportedExpressionException {
+            if (accept("-")) {
+                return negate(parseUnary());
+            } else if (accept("!")) {
+                return not(parseUnary());
+            }
+            return parsePrimary();
+        }
+
+        private Node parsePrimary() throws UnsupportedExpressionException {
+            final Token token = peek();
+            if (token == null) {
+                throw new UnsupportedExpressionException("unexpected end of expression");
+            }
+            if (token.type == TokenType.NUMBER) {
+                position++;
+                return number(token.text);
+            } else if (token.is("(")) {
+                position++;
+                final Node node = parseExpression();
+                expect(")");
+                return node;
+            } else if (token.type == TokenType.IDENTIFIER) {
+                final Token next = peek(1);
+                if (next != null && next.is(":") && peek(2) != null && peek(2).type == TokenType.IDENTIFIER
+                        && peek(3) != null && peek(3).is("(")) {
+                    final String name = peek(2).text;
+                    position += 4;
+                    final List<Node> arguments = new ArrayList<>();
+                    if (!accept(")")) {
+                        do {
+                            arguments.add(parseExpression());
+                        } while (accept(","));
+                        expect(")");
+                    }
+                    return function(token.text, name, arguments);
+                }
+                position++;
+                if ("true".equals(token.text) || "false".equals(token.text)) {
+                    return new BooleanConstant(Boolean.parseBoolean(token.text));
+                }
+                return variable(token.text);
+            }
+            throw new UnsupportedExpressionException("unexpected token '" + token.text + "'");
+        }
+
+        private Node variable(String name) throws UnsupportedExpressionException {
+            if (RESERVED_WORDS.contains(name) || isWordOperator(name)) {
+                throw new UnsupportedExpressionException("reserved word '" + name + "'");
+            }
+            // JEXL resolves dotted names in the context only when none of their prefixes are defined
+            int dot = name.indexOf('.');
+            while (dot >= 0) {
+                if (resolve(name.substring(0, dot)) != null) {
+                    throw new UnsupportedExpressionException("property access on '" + name.substring(0, dot) + "'");
+                }
+                dot = name.indexOf('.', dot + 1);
+            }
+            final Node node = resolve(name);
+            if (node == null) {
+                throw new UnsupportedExpressionException("undefined variable '" + name + "'");
+            }
+            return node;
+        }
+
+        /**
+         * Resolves the variable in the same order as the JEXL context is populated.
+         */
+        private Node resolve(String name) throws UnsupportedExpressionException {
+            if (columnLabels.contains(name)) {
+                return new ColumnReference(name);
+            } else if (TIMESTAMP.equals(name)) {
+                return new TimestampReference();
+            } else if (previousLabels.contains(name)) {
+                dependencies.add(name);
+                return new ExpressionReference(name);
+            } else if (DIFF_TIME.equals(name)) {
+                return new DoubleConstant(Type.DOUBLE, diffTime);
+            } else if (BUILT_IN_CONSTANTS.containsKey(name)) {
+                return new DoubleConstant(Type.DOUBLE, BUILT_IN_CONSTANTS.get(name));
+            } else if (constants.containsKey(name)) {
+                final Object value = constants.get(name);
+                if (value instanceof Double) {
+                    return new DoubleConstant(Type.DOUBLE, (Double) value);
+                } else if (value instanceof Float) {
+                    return new DoubleConstant(Type.FLOAT, (Float) value);
+                } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                    return new LongConstant(((Number) value).longValue());
+                }
+                throw new UnsupportedExpressionException("constant '" + name + "' is not a number");
+            }
+            return null;
+        }
+    }
+
+    private static final Map<String, String> WORD_OPERATORS = ImmutableMap.<String, String>builder()
+            .put("and", "&&").put("or", "||").put("not", "!")
+            .put("eq", "==").put("ne", "!=").put("lt", "<").put("le", "<=").put("gt", ">").put("ge", ">=")
+            .put("div", "/").put("mod", "%")
+            .build();
+
+    private static boolean isWordOperator(Token token, String operator) {
+        return token.type == TokenType.IDENTIFIER && operator.equals(WORD_OPERATORS.get(token.text));
+    }
+
+    private static boolean isWordOperator(String name) {
+        return WORD_OPERATORS.containsKey(name);
+    }
+
+    /*
+     * Literals
+     */
+
+    private static Node number(String text) throws UnsupportedExpressionException {
+        final char suffix = text.charAt(text.length() - 1);
+        if (text.indexOf('.') < 0) {
+            // Octal, hexadecimal and big integers are left to JEXL
+            if ((text.length() > 1 && text.charAt(0) == '0') || !text.chars().allMatch(Character::isDigit)) {
+                throw new UnsupportedExpressionException("integer literal " + text);
+            }
+            try {
+                return new LongConstant(Long.parseLong(text));
+            } catch (NumberFormatException e) {
+                throw new UnsupportedExpressionException("integer literal " + text);
+            }
+        }
+        if (!text.matches("[0-9]+\\.[0-9]+([eE][+-]?[0-9]+)?[dDfF]?")) {
+            throw new UnsupportedExpressionException("decimal literal " + text);
+        }
+        // Decimal literals are floats, unless they are explicitly marked as doubles
+        if (suffix == 'd' || suffix == 'D') {
+            return new DoubleConstant(Type.DOUBLE, Double.parseDouble(text));
+        }
+        final float value = Float.parseFloat(text);
+        if (Float.isInfinite(value)) {
+            throw new UnsupportedExpressionException("decimal literal " + text);
+        }
+        return new DoubleConstant(Type.FLOAT, value);
+    }
+
+    private static class DoubleConstant extends Node {
+        private final double value;
+
+        private DoubleConstant(Type type, double value) {
+            super(type);
+            this.value = value;
+        }
+
+        @Override
+        double[] evalDouble(Frame frame) {
+            final double[] values = new double[frame.numRows];
+            Arrays.fill(values, value);
+            return values;
+        }
+    }
+
+    private static class LongConstant extends Node {
+        private final long value;
+
+        private LongConstant(long value) {
+            super(Type.LONG);
+            this.value = value;
+        }
+
+        @Override
+        long[] evalLong(Frame frame) {
+            final long[] values = new long[frame.numRows];
+            Arrays.fill(values, value);
+            return values;
+        }
+    }
+
+    private static class BooleanConstant extends Node {
+        private final boolean value;
+
+        private BooleanConstant(boolean value) {
+            super(Type.BOOLEAN);
+            this.value = value;
+        }
+
+        @Override
+        boolean[] evalBoolean(Frame frame) {
+            final boolean[] values = new boolean[frame.numRows];
+            Arrays.fill(values, value);
+            return values;
+        }
+    }
+
+    /*
+     * References
+     */
+
+    private static class ColumnReference extends Node {
+        private final String label;
+
+        private ColumnReference(String label) {
+            super(Type.DOUBLE);
+            this.label = label;
+        }
+
+        @Override
+        double[] evalDouble(Frame frame) {
+            return frame.columns.get(label);
+        }
+
+        @Override
+        boolean isReference() {
+            return true;
+        }
+    }
+
+    private static class ExpressionReference extends Node {
+        private final String label;
+
+        private ExpressionReference(String label) {
+            super(Type.DOUBLE);
+            this.label = label;
+        }
+
+        @Override
+        double[] evalDouble(Frame frame) {
+            return frame.expressionValues.get(label);
+        }
+
+        @Override
+        boolean isReference() {
+            return true;
+        }
+    }
+
+    private static class TimestampReference extends Node {
+        private TimestampReference() {
+            super(Type.LONG);
+        }
+
+        @Override
+        long[] evalLong(Frame frame) {
+            return frame.timestamps;
+        }
+
+        @Override
+        boolean isReference() {
+            return true;
+        }
+    }
+
+    /*
+     * Arithmetic
+     */
+
+    private enum Arithmetic {
+        ADD, SUBTRACT, MULTIPLY, DIVIDE, MODULO
+    }
+
+    private static Node arithmetic(Arithmetic operator, Node left, Node right) throws UnsupportedExpressionException {
+        if (!left.type.isNumeric() || !right.type.isNumeric()) {
+            throw new UnsupportedExpressionException("arithmetic on booleans");
+        }
+        if (left.type.isFloatingPoint() || right.type.isFloatingPoint()) {
+            return new DoubleArithmetic(operator, left, right);
+        }
+        // JEXL returns a double when an integral division fails, so only allow known divisors
+        if ((operator == Arithmetic.DIVIDE || operator == Arithmetic.MODULO)
+                && !(right instanceof LongConstant && ((LongConstant) right).value != 0)) {
+            throw new UnsupportedExpressionException("integral division by a variable");
+        }
+        return new LongArithmetic(operator, left, right);
+    }
+
+    private static class DoubleArithmetic extends Node {
+        private final Arithmetic operator;
+        private final Node left;
+        private final Node right;
+
+        private DoubleArithmetic(Arithmetic operator, Node left, Node right) {
+            super(Type.DOUBLE);
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double[] evalDouble(Frame frame) {
+            final double[] l = left.evalAsDouble(frame);
+            final double[] r = right.evalAsDouble(frame);
+            final double[] result = new double[frame.numRows];
+            switch (operator) {
+            case ADD:
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = l[i] + r[i];
+                }
+                break;
+            case SUBTRACT:
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = l[i] - r[i];
+                }
+                break;
+            case MULTIPLY:
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = l[i] * r[i];
+                }
+                break;
+            case DIVIDE:
+                // JEXL yields 0 when dividing by 0
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = r[i] == 0.0 ? 0.0 : l[i] / r[i];
+                }
+                break;
+            case MODULO:
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = r[i] == 0.0 ? 0.0 : l[i] % r[i];
+                }
+                break;
+            }
+            return result;
+        }
+    }
+
+    private static class LongArithmetic extends Node {
+        private final Arithmetic operator;
+        private final Node left;
+        private final Node right;
+
+        private LongArithmetic(Arithmetic operator, Node left, Node right) {
+            super(Type.LONG);
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        long[] evalLong(Frame frame) {
+            final long[] l = left.evalLong(frame);
+            final long[] r = right.evalLong(frame);
+            final long[] result = new long[frame.numRows];
+            switch (operator) {
+            case ADD:
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = l[i] + r[i];
+                }
+                break;
+            case SUBTRACT:
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = l[i] - r[i];
+                }
+                break;
+            case MULTIPLY:
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = l[i] * r[i];
+                }
+                break;
+            case DIVIDE:
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = l[i] / r[i];
+                }
+                break;
+            case MODULO:
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = l[i] % r[i];
+                }
+                break;
+            }
+            return result;
+        }
+    }
+
+    private static Node negate(Node operand) throws UnsupportedExpressionException {
+        if (operand.type == Type.DOUBLE) {
+            return new Node(Type.DOUBLE) {
+                @Override
+                double[] evalDouble(Frame frame) {
+                    final double[] values = operand.evalDouble(frame);
+                    final double[] result = new double[values.length];
+                    for (int i = 0; i < values.length; i++) {
+                        result[i] = -values[i];
+                    }
+                    return result;
+                }
+            };
+        } else if (operand instanceof LongConstant) {
+            return new LongConstant(-((LongConstant) operand).value);
+        } else if (operand.type == Type.LONG) {
+            return new Node(Type.LONG) {
+                @Override
+                long[] evalLong(Frame frame) {
+                    final long[] values = operand.evalLong(frame);
+                    final long[] result = new long[values.length];
+                    for (int i = 0; i < values.length; i++) {
+                        result[i] = -values[i];
+                    }
+                    return result;
+                }
+            };
+        }
+        throw new UnsupportedExpressionException("negation of " + operand.type);
+    }
+
+    /*
+     * Comparisons and logical operators
+     */
+
+    private enum Comparison {
+        EQ, NE, LT, LE, GT, GE
+    }
+
+    private static Node comparison(Comparison operator, Node left, Node right) throws UnsupportedExpressionException {
+        if (left.type == Type.BOOLEAN && right.type == Type.BOOLEAN
+                && (operator == Comparison.EQ || operator == Comparison.NE)) {
+            return new Node(Type.BOOLEAN) {
+                @Override
+                boolean[] evalBoolean(Frame frame) {
+                    final boolean[] l = left.evalBoolean(frame);
+                    final boolean[] r = right.evalBoolean(frame);
+                    final boolean[] result = new boolean[frame.numRows];
+                    for (int i = 0; i < result.length; i++) {
+                        result[i] = (l[i] == r[i]) == (operator == Comparison.EQ);
+                    }
+                    return result;
+                }
+            };
+        }
+        if (!left.type.isNumeric() || !right.type.isNumeric()) {
+            throw new UnsupportedExpressionException("comparison of booleans");
+        }
+        return new NumericComparison(operator, left, right);
+    }
+
+    private static class NumericComparison extends Node {
+        private final Comparison operator;
+        private final Node left;
+        private final Node right;
+
+        private NumericComparison(Comparison operator, Node left, Node right) {
+            super(Type.BOOLEAN);
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean[] evalBoolean(Frame frame) {
+            final boolean[] result = new boolean[frame.numRows];
+            if (left.type == Type.LONG && right.type == Type.LONG) {
+                final long[] l = left.evalLong(frame);
+                final long[] r = right.evalLong(frame);
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = compare(l[i], r[i]);
+                }
+            } else {
+                final double[] l = left.evalAsDouble(frame);
+                final double[] r = right.evalAsDouble(frame);
+                // Boxed values of the same type are compared with equals(), for which NaN == NaN
+                final boolean sameType = left.type == right.type;
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = compare(l[i], r[i], sameType);
+                }
+            }
+            return result;
+        }
+
+        private boolean compare(long l, long r) {
+            switch (operator) {
+            case EQ: return l == r;
+            case NE: return l != r;
+            case LT: return l < r;
+            case LE: return l <= r;
+            case GT: return l > r;
+            default: return l >= r;
+            }
+        }
+
+        private boolean compare(double l, double r, boolean sameType) {
+            final boolean equal = sameType ? Double.doubleToLongBits(l) == Double.doubleToLongBits(r) : l == r;
+            switch (operator) {
+            case EQ: return equal;
+            case NE: return !equal;
+            case LT: return l < r;
+            case LE: return equal || l < r;
+            case GT: return l > r;
+            default: return equal || l > r;
+            }
+        }
+    }
+
+    private static Node logical(boolean and, Node left, Node right) throws UnsupportedExpressionException {
+        if (left.type != Type.BOOLEAN || right.type != Type.BOOLEAN) {
+            throw new UnsupportedExpressionException("logical operator on numbers");
+        }
+        return new Node(Type.BOOLEAN) {
+            @Override
+            boolean[] evalBoolean(Frame frame) {
+                final boolean[] l = left.evalBoolean(frame);
+                final boolean[] r = right.evalBoolean(frame);
+                final boolean[] result = new boolean[frame.numRows];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = and ? l[i] && r[i] : l[i] || r[i];
+                }
+                return result;
+            }
+        };
+    }
+
+    private static Node not(Node operand) throws UnsupportedExpressionException {
+        if (operand.type != Type.BOOLEAN) {
+            throw new UnsupportedExpressionException("negation of a number");
+        }
+        return new Node(Type.BOOLEAN) {
+            @Override
+            boolean[] evalBoolean(Frame frame) {
+                final boolean[] values = operand.evalBoolean(frame);
+                final boolean[] result = new boolean[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    result[i] = !values[i];
+                }
+                return result;
+            }
+        };
+    }
+
+    private static Node conditional(Node condition, Node ifTrue, Node ifFalse) throws UnsupportedExpressionException {
+        if (condition.type != Type.BOOLEAN) {
+            throw new UnsupportedExpressionException("numeric condition");
+        }
+        if (ifTrue.type != ifFalse.type) {
+            throw new UnsupportedExpressionException("conditional branches of different types");
+        }
+        // Both branches are evaluated over all of the rows, which is fine since they have no side effects
+        switch (ifTrue.type) {
+        case LONG:
+            return new Node(Type.LONG) {
+                @Override
+                long[] evalLong(Frame frame) {
+                    final boolean[] c = condition.evalBoolean(frame);
+                    final long[] t = ifTrue.evalLong(frame);
+                    final long[] f = ifFalse.evalLong(frame);
+                    final long[] result = new long[frame.numRows];
+                    for (int i = 0; i < result.length; i++) {
+                        result[i] = c[i] ? t[i] : f[i];
+                    }
+                    return result;
+                }
+            };
+        case BOOLEAN:
+            return new Node(Type.BOOLEAN) {
+                @Override
+                boolean[] evalBoolean(Frame frame) {
+                    final boolean[] c = condition.evalBoolean(frame);
+                    final boolean[] t = ifTrue.evalBoolean(frame);
+                    final boolean[] f = ifFalse.evalBoolean(frame);
+                    final boolean[] result = new boolean[frame.numRows];
+                    for (int i = 0; i < result.length; i++) {
+                        result[i] = c[i] ? t[i] : f[i];
+                    }
+                    return result;
+                }
+            };
+        default:
+            return new Node(ifTrue.type) {
+                @Override
+                double[] evalDouble(Frame frame) {
+                    final boolean[] c = condition.evalBoolean(frame);
+                    final double[] t = ifTrue.evalDouble(frame);
+                    final double[] f = ifFalse.evalDouble(frame);
+                    final double[] result = new double[frame.numRows];
+                    for (int i = 0; i < result.length; i++) {
+                        result[i] = c[i] ? t[i] : f[i];
+                    }
+                    return result;
+                }
+            };
+        }
+    }
+
+    /*
+     * Functions
+     */
+
+    private static final Map<String, DoubleUnaryOperator> MATH_UNARY_FUNCTIONS = ImmutableMap.<String, DoubleUnaryOperator>builder()
+            .put("sin", Math::sin).put("cos", Math::cos).put("tan", Math::tan)
+            .put("asin", Math::asin).put("acos", Math::acos).put("atan", Math::atan)
+            .put("sinh", Math::sinh).put("cosh", Math::cosh).put("tanh", Math::tanh)
+            .put("toRadians", Math::toRadians).put("toDegrees", Math::toDegrees)
+            .put("exp", Math::exp).put("expm1", Math::expm1)
+            .put("log", Math::log).put("log10", Math::log10).put("log1p", Math::log1p)
+            .put("sqrt", Math::sqrt).put("cbrt", Math::cbrt)
+            .put("ceil", Math::ceil).put("floor", Math::floor).put("rint", Math::rint)
+            .build();
+
+    private static final Map<String, DoubleBinaryOperator> MATH_BINARY_FUNCTIONS = ImmutableMap.<String, DoubleBinaryOperator>builder()
+            .put("atan2", Math::atan2).put("pow", Math::pow).put("hypot", Math::hypot)
+            .put("IEEEremainder", Math::IEEEremainder)
+            .build();
+
+    private static final Map<String, DoubleUnaryOperator> STRICTMATH_UNARY_FUNCTIONS = ImmutableMap.<String, DoubleUnaryOperator>builder()
+            .put("sin", StrictMath::sin).put("cos", StrictMath::cos).put("tan", StrictMath::tan)
+            .put("asin", StrictMath::asin).put("acos", StrictMath::acos).put("atan", StrictMath::atan)
+            .put("sinh", StrictMath::sinh).put("cosh", StrictMath::cosh).put("tanh", StrictMath::tanh)
+            .put("toRadians", StrictMath::toRadians).put("toDegrees", StrictMath::toDegrees)
+            .put("exp", StrictMath::exp).put("expm1", StrictMath::expm1)
+            .put("log", StrictMath::log).put("log10", StrictMath::log10).put("log1p", StrictMath::log1p)
+            .put("sqrt", StrictMath::sqrt).put("cbrt", StrictMath::cbrt)
+            .put("ceil", StrictMath::ceil).put("floor", StrictMath::floor).put("rint", StrictMath::rint)
+            .build();
+
+    private static final Map<String, DoubleBinaryOperator> STRICTMATH_BINARY_FUNCTIONS = ImmutableMap.<String, DoubleBinaryOperator>builder()
+            .put("atan2", StrictMath::atan2).put("pow", StrictMath::pow).put("hypot", StrictMath::hypot)
+            .put("IEEEremainder", StrictMath::IEEEremainder)
+            .build();
+
+    private static Node function(String namespace, String name, List<Node> arguments) throws UnsupportedExpressionException {
+        final boolean strict;
+        if ("math".equals(namespace)) {
+            strict = false;
+        } else if ("strictmath".equals(namespace)) {
+            strict = true;
+        } else {
+            throw new UnsupportedExpressionException("namespace '" + namespace + "'");
+        }
+        for (Node argument : arguments) {
+            if (!argument.type.isNumeric()) {
+                throw new UnsupportedExpressionException("boolean argument to " + namespace + ":" + name);
+            }
+        }
+
+        // Functions that only accept doubles take any numeric argument
+        final DoubleUnaryOperator unary = (strict ? STRICTMATH_UNARY_FUNCTIONS : MATH_UNARY_FUNCTIONS).get(name);
+        if (unary != null && arguments.size() == 1) {
+            return new UnaryFunction(unary, arguments.get(0));
+        }
+        final DoubleBinaryOperator binary = (strict ? STRICTMATH_BINARY_FUNCTIONS : MATH_BINARY_FUNCTIONS).get(name);
+        if (binary != null && arguments.size() == 2) {
+            return new BinaryFunction(binary, arguments.get(0), arguments.get(1));
+        }
+
+        // Overloaded functions resolve to their double variant only when given doubles
+        final boolean allDoubles = arguments.stream().allMatch(a -> a.type == Type.DOUBLE);
+        final boolean allLongs = arguments.stream().allMatch(a -> a.type == Type.LONG);
+        if (arguments.size() == 1 && allDoubles) {
+            switch (name) {
+            case "abs":
+                return new UnaryFunction(Math::abs, arguments.get(0));
+            case "signum":
+                return new UnaryFunction(Math::signum, arguments.get(0));
+            case "round":
+                return new Round(arguments.get(0));
+            }
+        } else if (arguments.size() == 2 && allDoubles) {
+            switch (name) {
+            case "min":
+                return new BinaryFunction(Math::min, arguments.get(0), arguments.get(1));
+            case "max":
+                return new BinaryFunction(Math::max, arguments.get(0), arguments.get(1));
+            }
+        } else if (arguments.size() == 2 && allLongs) {
+            switch (name) {
+            case "min":
+                return new LongBinaryFunction(Math::min, arguments.get(0), arguments.get(1));
+            case "max":
+                return new LongBinaryFunction(Math::max, arguments.get(0), arguments.get(1));
+            }
+        }
+        throw new UnsupportedExpressionException("function " + namespace + ":" + name + " with " + arguments.size() + " argument(s)");
+    }
+
+    private static class UnaryFunction extends Node {
+        private final DoubleUnaryOperator function;
+        private final Node argument;
+
+        private UnaryFunction(DoubleUnaryOperator function, Node argument) {
+            super(Type.DOUBLE);
+            this.function = function;
+            this.argument = argument;
+        }
+
+        @Override
+        double[] evalDouble(Frame frame) {
+            final double[] values = argument.evalAsDouble(frame);
+            final double[] result = new double[frame.numRows];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = function.applyAsDouble(values[i]);
+            }
+            return result;
+        }
+    }
+
+    private static class BinaryFunction extends Node {
+        private final DoubleBinaryOperator function;
+        private final Node left;
+        private final Node right;
+
+        private BinaryFunction(DoubleBinaryOperator function, Node left, Node right) {
+            super(Type.DOUBLE);
+            this.function = function;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double[] evalDouble(Frame frame) {
+            final double[] l = left.evalAsDouble(frame);
+            final double[] r = right.evalAsDouble(frame);
+            final double[] result = new double[frame.numRows];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = function.applyAsDouble(l[i], r[i]);
+            }
+            return result;
+        }
+    }
+
+    private static class LongBinaryFunction extends Node {
+        private final LongBinaryOperator function;
+        private final Node left;
+        private final Node right;
+
+        private LongBinaryFunction(LongBinaryOperator function, Node left, Node right) {
+            super(Type.LONG);
+            this.function = function;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        long[] evalLong(Frame frame) {
+            final long[] l = left.evalLong(frame);
+            final long[] r = right.evalLong(frame);
+            final long[] result = new long[frame.numRows];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = function.applyAsLong(l[i], r[i]);
+            }
+            return result;
+        }
+    }
+
+    private static class Round extends Node {
+        private final Node argument;
+
+        private Round(Node argument) {
+            super(Type.LONG);
+            this.argument = argument;
+        }
+
+        @Override
+        long[] evalLong(Frame frame) {
+            final double[] values = argument.evalDouble(frame);
+            final long[] result = new long[frame.numRows];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = Math.round(values[i]);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.measurements.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.opennms.netmgt.measurements.api.ExpressionEngine;
+import org.opennms.netmgt.measurements.api.FetchResults;
+import org.opennms.netmgt.measurements.api.exceptions.ExpressionException;
+import org.opennms.netmgt.measurements.impl.ColumnarExpressionCompiler.CompiledExpression;
+import org.opennms.netmgt.measurements.impl.ColumnarExpressionCompiler.Frame;
+import org.opennms.netmgt.measurements.impl.ColumnarExpressionCompiler.UnsupportedExpressionException;
+import org.opennms.netmgt.measurements.model.Expression;
+import org.opennms.netmgt.measurements.model.QueryRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An expression engine that evaluates each expression over whole columns,
+ * instead of row by row.
+ *
+ * The expressions are compiled once per request, and are grouped in levels
+ * so that expressions that do not reference each other can be evaluated in
+ * parallel.
+ *
+ * Requests that use any feature of the expression language which is not
+ * supported by the {@link ColumnarExpressionCompiler} are delegated to the
+ * {@link JEXLExpressionEngine} as a whole.
+ */
+public class ColumnarExpressionEngine implements ExpressionEngine {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ColumnarExpressionEngine.class);
+
+    public static final String PARALLELISM_THRESHOLD_SYS_PROP = "org.opennms.netmgt.measurements.expressionEngine.parallelismThreshold";
+
+    /**
+     * Minimum number of values (rows times expressions) computed by a level
+     * before its expressions are evaluated in parallel.
+     */
+    public static final int DEFAULT_PARALLELISM_THRESHOLD = 50000;
+
+    private final ExpressionEngine fallback;
+
+    private final int parallelismThreshold;
+
+    public ColumnarExpressionEngine() {
+        this(new JEXLExpressionEngine(), Integer.getInteger(PARALLELISM_THRESHOLD_SYS_PROP, DEFAULT_PARALLELISM_THRESHOLD));
+    }
+
+    public ColumnarExpressionEngine(ExpressionEngine fallback, int parallelismThreshold) {
+        this.fallback = Preconditions.checkNotNull(fallback, "fallback argument");
+        this.parallelismThreshold = parallelismThreshold;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void applyExpressions(final QueryRequest request, final FetchResults results) throws ExpressionException {
+        Preconditions.checkNotNull(request, "request argument");
+        Preconditions.checkNotNull(results, "results argument");
+
+        final List<Expression> expressions = request.getExpressions();
+        if (expressions.size() < 1) {
+            return;
+        }
+
+        final long timestamps[] = results.getTimestamps();
+        final Map<String, double[]> columns = results.getColumns();
+        final int numRows = timestamps.length;
+        final double diffTime = numRows < 1 ? 0d : timestamps[numRows-1] - timestamps[0];
+
+        // Compile the expressions, and assign each one to the level following the ones of its dependencies
+        final List<CompiledExpression> compiledExpressions = new ArrayList<>(expressions.size());
+        final List<List<Integer>> levels = new ArrayList<>();
+        final Map<String, Integer> levelsByLabel = new HashMap<>();
+        final Set<String> previousLabels = new HashSet<>();
+        for (int i = 0; i < expressions.size(); i++) {
+            final Expression e = expressions.get(i);
+            final CompiledExpression compiledExpression;
+            try {
+                if (e.getLabel() == null || previousLabels.contains(e.getLabel())) {
+                    throw new UnsupportedExpressionException("duplicate label");
+                }
+                compiledExpression = new ColumnarExpressionCompiler(columns.keySet(), results.getConstants(),
+                        diffTime, previousLabels).compile(e.getExpression());
+            } catch (UnsupportedExpressionException ex) {
+                LOG.debug("Expression with label '{}' cannot be evaluated by columns ({}). Using the JEXL engine instead.",
+                        e.getLabel(), ex.getMessage());
+                fallback.applyExpressions(request, results);
+                return;
+            }
+            compiledExpressions.add(compiledExpression);
+
+            int level = 0;
+            for (String dependency : compiledExpression.dependencies) {
+                level = Math.max(level, levelsByLabel.get(dependency) + 1);
+            }
+            if (level == levels.size()) {
+                levels.add(new ArrayList<>());
+            }
+            levels.get(level).add(i);
+            levelsByLabel.put(e.getLabel(), level);
+            previousLabels.add(e.getLabel());
+        }
+
+        // Evaluate the levels in order
+        final Map<String, double[]> expressionValues = new ConcurrentHashMap<>();
+        final Frame frame = new Frame(timestamps, columns, expressionValues);
+        for (final List<Integer> level : levels) {
+            if (level.size() > 1 && (long) level.size() * numRows >= parallelismThreshold) {
+                level.parallelStream().forEach(i -> expressionValues.put(expressions.get(i).getLabel(),
+                        compiledExpressions.get(i).evaluate(frame)));
+            } else {
+                for (final Integer i : level) {
+                    expressionValues.put(expressions.get(i).getLabel(), compiledExpressions.get(i).evaluate(frame));
+                }
+            }
+        }
+
+        // Store the results, in the same order as which the expressions appeared in the query
+        for (final Expression e : expressions) {
+            if (!e.getTransient()) {
+                columns.put(e.getLabel(), expressionValues.get(e.getLabel()));
+            }
+        }
+    }
+}
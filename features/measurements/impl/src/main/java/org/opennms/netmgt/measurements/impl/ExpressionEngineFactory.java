@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.measurements.impl;
+
+import org.opennms.netmgt.measurements.api.ExpressionEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Used to instantiate the expression engine selected by the
+ * {@value #EXPRESSION_ENGINE_SYS_PROP} system property.
+ *
+ * Supported values are <code>jexl</code>, which is the default, and <code>columnar</code>.
+ */
+public class ExpressionEngineFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExpressionEngineFactory.class);
+
+    public static final String EXPRESSION_ENGINE_SYS_PROP = "org.opennms.netmgt.measurements.expressionEngine";
+
+    public static final String JEXL_ENGINE_NAME = "jexl";
+
+    public static final String COLUMNAR_ENGINE_NAME = "columnar";
+
+    @Bean(name="expressionEngine")
+    public ExpressionEngine getEngine() {
+        final String engineName = System.getProperty(EXPRESSION_ENGINE_SYS_PROP, JEXL_ENGINE_NAME);
+        if (COLUMNAR_ENGINE_NAME.equalsIgnoreCase(engineName)) {
+            return new ColumnarExpressionEngine();
+        } else if (!JEXL_ENGINE_NAME.equalsIgnoreCase(engineName)) {
+            LOG.error("Unsupported expression engine '{}'. Defaulting to the JEXL engine.", engineName);
+        }
+        return new JEXLExpressionEngine();
+    }
+}
@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.measurements.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.opennms.netmgt.measurements.api.FetchResults;
+import org.opennms.netmgt.measurements.model.Source;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * Caches the values fetched from RRD/JRB files.
+ *
+ * Entries are keyed by the sources, the step and the time window of the fetch.
+ * Windows are aligned on the step, so that repeated queries over a sliding window
+ * (i.e. a dashboard refreshing every few seconds) map to the same entry until a new
+ * step begins.
+ *
+ * The modification times of the files are recorded before every fetch, and an entry
+ * is discarded as soon as any of its files has been modified since, which happens
+ * whenever new samples are persisted.
+ */
+public class RrdFetchResultsCache {
+
+    public static final String MAX_VALUES_SYS_PROP = "org.opennms.netmgt.measurements.rrd.cache.maxValues";
+
+    public static final String TTL_SYS_PROP = "org.opennms.netmgt.measurements.rrd.cache.ttl";
+
+    /**
+     * Maximum number of values, over all of the columns of all of the entries, that are kept in the cache.
+     */
+    public static final long DEFAULT_MAX_VALUES = 2000000;
+
+    public static final long DEFAULT_TTL_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final long MIN_BUCKET_MS = 1000;
+
+    /**
+     * Identifies a fetch.
+     */
+    public static class Key {
+        private final List<List<String>> sources;
+        private final long start;
+        private final long end;
+        private final long step;
+        private final int maxrows;
+
+        private Key(Map<Source, String> rrdsBySource, long start, long end, long step, int maxrows) {
+            this.sources = rrdsBySource.entrySet().stream()
+                    .map(e -> ImmutableList.of(Objects.toString(e.getKey().getResourceId()), Objects.toString(e.getKey().getAttribute()),
+                            Objects.toString(e.getKey().getEffectiveDataSource()), Objects.toString(e.getKey().getAggregation()),
+                            Objects.toString(e.getKey().getLabel()), e.getValue()))
+                    .sorted((a, b) -> a.toString().compareTo(b.toString()))
+                    .collect(Collectors.toList());
+            this.start = start;
+            this.end = end;
+            this.step = step;
+            this.maxrows = maxrows;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null || getClass() != obj.getClass()) return false;
+            final Key other = (Key) obj;
+            return start == other.start
+                    && end == other.end
+                    && step == other.step
+                    && maxrows == other.maxrows
+                    && Objects.equals(sources, other.sources);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sources, start, end, step, maxrows);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Key[sources=%s, start=%d, end=%d, step=%d, maxrows=%d]", sources, start, end, step, maxrows);
+        }
+    }
+
+    private static class Entry {
+        private final long[] timestamps;
+        private final Map<String, double[]> columns;
+        private final long step;
+        private final Map<String, FileTime> modificationTimes;
+
+        private Entry(FetchResults results, Map<String, FileTime> modificationTimes) {
+            this.timestamps = results.getTimestamps().clone();
+            this.columns = copy(results.getColumns());
+            this.step = results.getStep();
+            this.modificationTimes = modificationTimes;
+        }
+
+        private int getNumValues() {
+            return timestamps.length * (1 + columns.size());
+        }
+    }
+
+    private final boolean enabled;
+
+    private final Cache<Key, Entry> cache;
+
+    private final Meter hits;
+
+    private final Meter misses;
+
+    private final Meter invalidations;
+
+    private final Counter values;
+
+    public RrdFetchResultsCache(MetricRegistry metrics) {
+        this(metrics, Long.getLong(MAX_VALUES_SYS_PROP, DEFAULT_MAX_VALUES), Long.getLong(TTL_SYS_PROP, DEFAULT_TTL_MS));
+    }
+
+    public RrdFetchResultsCache(MetricRegistry metrics, long maxValues, long ttlMs) {
+        enabled = maxValues > 0;
+        values = metrics.counter(MetricRegistry.name("cache", "values"));
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxValues)
+                .<Key, Entry>weigher((key, entry) -> entry.getNumValues())
+                .expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+                .removalListener((RemovalListener<Key, Entry>) notification -> values.dec(notification.getValue().getNumValues()))
+                .build();
+        hits = metrics.meter(MetricRegistry.name("cache", "hits"));
+        misses = metrics.meter(MetricRegistry.name("cache", "misses"));
+        invalidations = metrics.meter(MetricRegistry.name("cache", "invalidations"));
+        metrics.register(MetricRegistry.name("cache", "size"), (Gauge<Long>) cache::size);
+        metrics.register(MetricRegistry.name("cache", "hit-ratio"), (Gauge<Double>) () -> {
+            final long numHits = hits.getCount();
+            final long numLookups = numHits + misses.getCount();
+            return numLookups > 0 ? (double) numHits / numLookups : Double.NaN;
+        });
+    }
+
+    /**
+     * @return false if the cache was configured to hold no values
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Builds the key of a fetch, aligning its window on the step.
+     *
+     * @return the key, or <code>null</code> if the window is too small to be aligned
+     */
+    public Key getKey(Map<Source, String> rrdsBySource, long start, long end, long step, int maxrows) {
+        final long bucket = Math.max(step, MIN_BUCKET_MS);
+        final long alignedStart = start - Math.floorMod(start, bucket);
+        final long alignedEnd = end - Math.floorMod(end, bucket);
+        if (alignedEnd <= alignedStart) {
+            return null;
+        }
+        return new Key(rrdsBySource, alignedStart, alignedEnd, step, maxrows);
+    }
+
+    /**
+     * Records the modification times of the given files. This must be called
+     * before fetching values from the files.
+     */
+    public Map<String, FileTime> getModificationTimes(Collection<String> rrdFiles) {
+        final Map<String, FileTime> modificationTimes = Maps.newHashMapWithExpectedSize(rrdFiles.size());
+        for (String rrdFile : rrdFiles) {
+            modificationTimes.put(rrdFile, getModificationTime(rrdFile));
+        }
+        return modificationTimes;
+    }
+
+    /**
+     * Retrieves a copy of the values fetched for the given key, provided that none of the
+     * files have been modified since.
+     *
+     * @return the results, or <code>null</code> if there is no valid entry
+     */
+    public FetchResults get(Key key, Map<String, Object> constants) {
+        final Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            misses.mark();
+            return null;
+        }
+        for (Map.Entry<String, FileTime> modificationTime : entry.modificationTimes.entrySet()) {
+            if (!Objects.equals(modificationTime.getValue(), getModificationTime(modificationTime.getKey()))) {
+                cache.asMap().remove(key, entry);
+                invalidations.mark();
+                misses.mark();
+                return null;
+            }
+        }
+        hits.mark();
+        return new FetchResults(entry.timestamps.clone(), copy(entry.columns), entry.step, constants);
+    }
+
+    /**
+     * Stores a copy of the fetched values.
+     *
+     * @param modificationTimes the modification times of the files, as recorded before the fetch
+     */
+    public void put(Key key, FetchResults results, Map<String, FileTime> modificationTimes) {
+        final Entry entry = new Entry(results, modificationTimes);
+        values.inc(entry.getNumValues());
+        cache.put(key, entry);
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private static FileTime getModificationTime(String rrdFile) {
+        try {
+            return Files.getLastModifiedTime(Paths.get(rrdFile));
+        } catch (IOException e) {
+            // Missing files are recorded as such
+            return null;
+        }
+    }
+
+    private static Map<String, double[]> copy(Map<String, double[]> columns) {
+        final Map<String, double[]> copy = Maps.newHashMapWithExpectedSize(columns.size());
+        for (Map.Entry<String, double[]> column : columns.entrySet()) {
+            copy.put(column.getKey(), column.getValue().clone());
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.measurements.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.opennms.netmgt.measurements.api.ExpressionEngine;
+import org.opennms.netmgt.measurements.api.FetchResults;
+import org.opennms.netmgt.measurements.api.exceptions.ExpressionException;
+import org.opennms.netmgt.measurements.model.Expression;
+import org.opennms.netmgt.measurements.model.QueryRequest;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Runs the tests of the {@link JEXLExpressionEngine} against the
+ * {@link ColumnarExpressionEngine}, and verifies that both engines yield
+ * the same values.
+ */
+public class ColumnarExpressionEngineTest extends JEXLExpressionEngineTest {
+
+    private static final int N = 100;
+
+    @Override
+    protected ExpressionEngine getExpressionEngine() {
+        // Evaluate every level in parallel
+        return new ColumnarExpressionEngine(new JEXLExpressionEngine(), 0);
+    }
+
+    @Test
+    public void yieldsTheSameValuesAsJexl() throws ExpressionException {
+        final List<Expression> expressions = Lists.newArrayList(
+                new Expression("linear", "x * 5 + 7", false),
+                new Expression("ratio", "x / z", false),
+                new Expression("modulo", "x % 3", false),
+                new Expression("seconds", "timestamp / 1000", false),
+                new Expression("fractionalSeconds", "timestamp / 1000.0d", false),
+                new Expression("conditional", "(x > 50 && z != 0) ? x : -x", false),
+                new Expression("isNaN", "x == NaN ? 0 : 1", false),
+                new Expression("max", "math:max(x, z)", false),
+                new Expression("root", "strictmath:pow(x, 0.5)", false),
+                new Expression("float", "x lt 10 or z ge 5 ? 0.1 : 0.2", false),
+                new Expression("rounded", "math:round(x / 7)", false),
+                new Expression("negated", "-timestamp + 1", false),
+                new Expression("constant", "1 * __diff_time + speed", false),
+                new Expression("difference", "linear - ratio", false),
+                new Expression("nested", "difference == NaN ? __neg_inf : math:abs(difference)", false));
+
+        final QueryRequest request = new QueryRequest();
+        request.setExpressions(expressions);
+
+        final FetchResults expected = createResults();
+        new JEXLExpressionEngine().applyExpressions(request, expected);
+
+        final FetchResults actual = createResults();
+        new ColumnarExpressionEngine(failingEngine(), 0).applyExpressions(request, actual);
+
+        for (Expression e : expressions) {
+            assertArrayEquals(e.getExpression(), expected.getColumns().get(e.getLabel()), actual.getColumns().get(e.getLabel()), 0.0d);
+        }
+    }
+
+    @Test
+    public void doesNotStoreTransientExpressions() throws ExpressionException {
+        final QueryRequest request = new QueryRequest();
+        request.setExpressions(Lists.newArrayList(
+                new Expression("a", "x * 2", true),
+                new Expression("b", "a + 1", false)));
+
+        final FetchResults results = createResults();
+        new ColumnarExpressionEngine(failingEngine(), 0).applyExpressions(request, results);
+
+        assertFalse(results.getColumns().containsKey("a"));
+        assertEquals(21.0d, results.getColumns().get("b")[10], 0.0d);
+    }
+
+    @Test
+    public void fallsBackToJexlForUnsupportedExpressions() throws ExpressionException {
+        final AtomicInteger numFallbacks = new AtomicInteger();
+        final JEXLExpressionEngine jexl = new JEXLExpressionEngine();
+        final ExpressionEngine engine = new ColumnarExpressionEngine((request, results) -> {
+            numFallbacks.incrementAndGet();
+            jexl.applyExpressions(request, results);
+        }, 0);
+
+        for (String expression : new String[] { "unknown + 1", "label + 1", "0x10 * x", "x.length", "math:abs(1.5)" }) {
+            final QueryRequest request = new QueryRequest();
+            request.setExpressions(Lists.newArrayList(new Expression("label", expression, false)));
+            try {
+                engine.applyExpressions(request, createResults());
+            } catch (ExpressionException e) {
+                // Errors are reported by the JEXL engine
+            }
+        }
+        assertEquals(5, numFallbacks.get());
+    }
+
+    @Test
+    public void canEvaluateWithoutRows() throws ExpressionException {
+        final QueryRequest request = new QueryRequest();
+        request.setExpressions(Lists.newArrayList(new Expression("y", "x * 2", false)));
+
+        final Map<String, double[]> columns = Maps.newHashMap();
+        columns.put("x", new double[0]);
+        final FetchResults results = new FetchResults(new long[0], columns, 300, Maps.newHashMap());
+        new ColumnarExpressionEngine(failingEngine(), 0).applyExpressions(request, results);
+
+        assertTrue(results.getColumns().containsKey("y"));
+        assertEquals(0, results.getColumns().get("y").length);
+    }
+
+    private static ExpressionEngine failingEngine() {
+        return (request, results) -> fail("Expressions should have been evaluated by columns.");
+    }
+
+    private static FetchResults createResults() {
+        final long timestamps[] = new long[N];
+        final double xValues[] = new double[N];
+        final double zValues[] = new double[N];
+        for (int i = 0; i < N; i++) {
+            timestamps[i] = 1500000000000L + i * 1000;
+            xValues[i] = i;
+            zValues[i] = i % 4;
+        }
+        xValues[N - 1] = Double.NaN;
+        xValues[N - 2] = Double.POSITIVE_INFINITY;
+
+        final Map<String, double[]> columns = Maps.newHashMap();
+        columns.put("x", xValues);
+        columns.put("z", zValues);
+        final Map<String, Object> constants = Maps.newHashMap();
+        constants.put("speed", 65);
+        return new FetchResults(timestamps, columns, 300, constants);
+    }
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.measurements.impl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opennms.netmgt.measurements.api.ExpressionEngine;
+import org.opennms.netmgt.measurements.api.FetchResults;
+import org.opennms.netmgt.measurements.api.exceptions.ExpressionException;
+import org.opennms.netmgt.measurements.model.Expression;
+import org.opennms.netmgt.measurements.model.QueryRequest;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Compares the throughput of the {@link JEXLExpressionEngine} and of the
+ * {@link ColumnarExpressionEngine} when applying the expressions of a
+ * typical interface traffic graph.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExpressionEngineBenchmark {
+
+    @Param({"JEXL", "COLUMNAR"})
+    public String engineName;
+
+    @Param({"100", "10000"})
+    public int numRows;
+
+    private ExpressionEngine engine;
+
+    private QueryRequest request;
+
+    private long[] timestamps;
+
+    private Map<String, double[]> columns;
+
+    private Map<String, Object> constants;
+
+    @Setup
+    public void setUp() {
+        engine = "JEXL".equals(engineName) ? new JEXLExpressionEngine() : new ColumnarExpressionEngine();
+
+        final List<Expression> expressions = Lists.newArrayList(
+                new Expression("inBits", "octIn * 8", false),
+                new Expression("outBits", "octOut * 8", false),
+                new Expression("outBitsNeg", "-1 * outBits", false),
+                new Expression("totalBits", "( ( octIn == NaN ) ? 0.0d : octIn ) * 8 + ( ( octOut == NaN ) ? 0.0d : octOut ) * 8", false),
+                new Expression("inPercent", "( ifSpeed == 0 ) ? NaN : inBits / ifSpeed * 100.0d", false),
+                new Expression("outPercent", "( ifSpeed == 0 ) ? NaN : outBits / ifSpeed * 100.0d", false),
+                new Expression("peak", "math:max(inBits, outBits)", false),
+                new Expression("total", "totalBits * __diff_time / 1000", false));
+        request = new QueryRequest();
+        request.setExpressions(expressions);
+
+        timestamps = new long[numRows];
+        final double[] octIn = new double[numRows];
+        final double[] octOut = new double[numRows];
+        for (int i = 0; i < numRows; i++) {
+            timestamps[i] = i * 300000L;
+            octIn[i] = i % 100 == 0 ? Double.NaN : 1000d + i;
+            octOut[i] = 2000d + i;
+        }
+        columns = Maps.newHashMap();
+        columns.put("octIn", octIn);
+        columns.put("octOut", octOut);
+        constants = Maps.newHashMap();
+        constants.put("ifSpeed", 100000000d);
+    }
+
+    @Benchmark
+    public FetchResults applyExpressions() throws ExpressionException {
+        // The results are modified by the engine, so only share the source columns
+        final FetchResults results = new FetchResults(timestamps, Maps.newHashMap(columns), 300, constants);
+        engine.applyExpressions(request, results);
+        return results;
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(ExpressionEngineBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -46,7 +46,10 @@ import com.google.common.collect.Maps;
 public class JEXLExpressionEngineTest {
 
     private static final double DELTA = 0.0001;
-    private final ExpressionEngine jexlExpressionEngine = new JEXLExpressionEngine();
+
+    protected ExpressionEngine getExpressionEngine() {
+        return new JEXLExpressionEngine();
+    }
 
     @Test(expected=ExpressionException.class)
     public void failsWhenExpressionHasInvalidSyntax() throws ExpressionException {
@@ -415,7 +418,7 @@ public class JEXLExpressionEngineTest {
         FetchResults results = new FetchResults(timestamps, values, 1, constants);
 
         // Use the engine to evaluate the expression
-        jexlExpressionEngine.applyExpressions(request, results);
+        getExpressionEngine().applyExpressions(request, results);
 
         // Retrieve the results
         return results.getColumns().get("y");
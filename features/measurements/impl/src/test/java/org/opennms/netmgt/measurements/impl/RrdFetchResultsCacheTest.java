@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.measurements.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.netmgt.measurements.api.FetchResults;
+import org.opennms.netmgt.measurements.model.Source;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Maps;
+
+public class RrdFetchResultsCacheTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private MetricRegistry metrics;
+
+    private RrdFetchResultsCache cache;
+
+    private File rrdFile;
+
+    private Map<Source, String> rrdsBySource;
+
+    @Before
+    public void setUp() throws Exception {
+        metrics = new MetricRegistry();
+        cache = new RrdFetchResultsCache(metrics, 1000, TimeUnit.MINUTES.toMillis(5));
+        rrdFile = tempFolder.newFile("ifInOctets.jrb");
+        rrdsBySource = Maps.newHashMap();
+        rrdsBySource.put(new Source("octIn", "node[1].interfaceSnmp[eth0]", "ifInOctets", null, false), rrdFile.getAbsolutePath());
+    }
+
+    @Test
+    public void alignsWindowsOnTheStep() {
+        final RrdFetchResultsCache.Key key = cache.getKey(rrdsBySource, 3600000, 7200000, 300000, 0);
+        assertEquals(3600000, key.getStart());
+        assertEquals(7200000, key.getEnd());
+
+        // Windows that slide within the same step share the same key
+        assertEquals(key, cache.getKey(rrdsBySource, 3630000, 7230000, 300000, 0));
+        assertNotEquals(key, cache.getKey(rrdsBySource, 3930000, 7530000, 300000, 0));
+        assertNotEquals(key, cache.getKey(rrdsBySource, 3600000, 7200000, 60000, 0));
+        assertNotEquals(key, cache.getKey(rrdsBySource, 3600000, 7200000, 300000, 100));
+
+        // Windows that are smaller than the step cannot be aligned
+        assertNull(cache.getKey(rrdsBySource, 3630000, 3660000, 300000, 0));
+    }
+
+    @Test
+    public void returnsCopiesOfTheCachedValues() {
+        final RrdFetchResultsCache.Key key = cache.getKey(rrdsBySource, 3600000, 7200000, 300000, 0);
+        assertNull(cache.get(key, Collections.emptyMap()));
+
+        cache.put(key, createResults(), cache.getModificationTimes(rrdsBySource.values()));
+
+        final FetchResults results = cache.get(key, Collections.singletonMap("octIn.ifSpeed", 1000d));
+        assertNotNull(results);
+        assertEquals(1000d, results.getConstants().get("octIn.ifSpeed"));
+        results.getColumns().get("octIn")[0] = Double.NaN;
+        results.getColumns().put("expression", new double[0]);
+
+        final FetchResults otherResults = cache.get(key, Collections.emptyMap());
+        assertArrayEquals(new double[] { 1, 2, 3 }, otherResults.getColumns().get("octIn"), 0.0d);
+        assertFalse(otherResults.getColumns().containsKey("expression"));
+
+        assertEquals(2, metrics.meter("cache.hits").getCount());
+        assertEquals(1, metrics.meter("cache.misses").getCount());
+        assertEquals(6, metrics.counter("cache.values").getCount());
+    }
+
+    @Test
+    public void invalidatesEntriesWhenFilesAreModified() throws Exception {
+        final RrdFetchResultsCache.Key key = cache.getKey(rrdsBySource, 3600000, 7200000, 300000, 0);
+        cache.put(key, createResults(), cache.getModificationTimes(rrdsBySource.values()));
+        assertNotNull(cache.get(key, Collections.emptyMap()));
+
+        // Persist a new sample
+        Files.setLastModifiedTime(rrdFile.toPath(), FileTime.fromMillis(System.currentTimeMillis() + 60000));
+
+        assertNull(cache.get(key, Collections.emptyMap()));
+        assertEquals(0, cache.size());
+        assertEquals(1, metrics.meter("cache.invalidations").getCount());
+        assertEquals(0, metrics.counter("cache.values").getCount());
+    }
+
+    @Test
+    public void canBeDisabled() {
+        assertFalse(new RrdFetchResultsCache(new MetricRegistry(), 0, 0).isEnabled());
+    }
+
+    private static FetchResults createResults() {
+        final Map<String, double[]> columns = Maps.newHashMap();
+        columns.put("octIn", new double[] { 1, 2, 3 });
+        return new FetchResults(new long[] { 3600000, 3900000, 4200000 }, columns, 300000, Collections.emptyMap());
+    }
+}
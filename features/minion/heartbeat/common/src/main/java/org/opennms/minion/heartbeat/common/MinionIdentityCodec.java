@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.minion.heartbeat.common;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.opennms.core.ipc.sink.xml.BinaryCodec;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Encodes {@link MinionIdentityDTO}s as:
+ *
+ * <pre>
+ * message MinionIdentity {
+ *     optional string id = 1;
+ *     optional string location = 2;
+ *     optional uint64 timestamp = 3;
+ * }
+ * </pre>
+ */
+public class MinionIdentityCodec implements BinaryCodec<MinionIdentityDTO> {
+
+    private static final int VERSION = 1;
+
+    private static final int ID = 1;
+    private static final int LOCATION = 2;
+    private static final int TIMESTAMP = 3;
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public void write(MinionIdentityDTO identity, CodedOutputStream out) throws IOException {
+        if (identity.getId() != null) {
+            out.writeString(ID, identity.getId());
+        }
+        if (identity.getLocation() != null) {
+            out.writeString(LOCATION, identity.getLocation());
+        }
+        if (identity.getTimestamp() != null) {
+            out.writeUInt64(TIMESTAMP, identity.getTimestamp().getTime());
+        }
+    }
+
+    @Override
+    public MinionIdentityDTO read(CodedInputStream in) throws IOException {
+        final MinionIdentityDTO identity = new MinionIdentityDTO();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+            case ID:
+                identity.setId(in.readString());
+                break;
+            case LOCATION:
+                identity.setLocation(in.readString());
+                break;
+            case TIMESTAMP:
+                identity.setTimestamp(new Date(in.readUInt64()));
+                break;
+            default:
+                in.skipField(tag);
+            }
+        }
+        return identity;
+    }
+}
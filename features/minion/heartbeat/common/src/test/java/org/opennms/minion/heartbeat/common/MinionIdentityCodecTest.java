@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.minion.heartbeat.common;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Date;
+
+import org.junit.Test;
+import org.opennms.core.ipc.sink.xml.AbstractXmlSinkModule.Format;
+import org.opennms.core.ipc.sink.xml.BinaryCodecs;
+
+public class MinionIdentityCodecTest {
+
+    private final MinionIdentityCodec codec = new MinionIdentityCodec();
+
+    @Test
+    public void canEncodeAndDecode() throws Exception {
+        final MinionIdentityDTO identity = createIdentity();
+        assertEquals(identity, BinaryCodecs.fromByteArray(codec, BinaryCodecs.toByteArray(codec, identity)));
+    }
+
+    @Test
+    public void canEncodeAndDecodeEmptyIdentity() throws Exception {
+        final MinionIdentityDTO identity = new MinionIdentityDTO();
+        assertEquals(identity, BinaryCodecs.fromByteArray(codec, BinaryCodecs.toByteArray(codec, identity)));
+    }
+
+    @Test
+    public void canMarshalAndUnmarshalWithModule() throws Exception {
+        final HeartbeatModule module = new HeartbeatModule();
+        final MinionIdentityDTO identity = createIdentity();
+
+        module.setFormat(Format.BINARY);
+        final byte[] binary = module.marshal(identity);
+        assertEquals(identity, module.unmarshal(binary));
+
+        // Heartbeats sent by Minions that still use XML must remain readable
+        module.setFormat(Format.XML);
+        assertEquals(identity, module.unmarshal(module.marshal(identity)));
+        assertEquals(identity, module.unmarshal(binary));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void refusesNewerVersions() throws Exception {
+        final HeartbeatModule module = new HeartbeatModule();
+        module.setFormat(Format.BINARY);
+        final byte[] bytes = module.marshal(createIdentity());
+        // The version of the codec follows the magic byte
+        bytes[1] = (byte)(codec.getVersion() + 1);
+        module.unmarshal(bytes);
+    }
+
+    private static MinionIdentityDTO createIdentity() {
+        final MinionIdentityDTO identity = new MinionIdentityDTO();
+        identity.setId("00000000-0000-0000-0000-000000ddba11");
+        identity.setLocation("MINION");
+        identity.setTimestamp(new Date(1000L));
+        return identity;
+    }
+}
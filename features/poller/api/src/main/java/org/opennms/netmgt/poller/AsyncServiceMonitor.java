@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>
+ * A {@link ServiceMonitor} that can poll services without blocking the calling
+ * thread for the duration of the poll.
+ * </p>
+ *
+ * <p>
+ * Implementations are expected to perform their I/O on a small, shared pool of
+ * threads and to complete the returned future once the status of the service is known.
+ * The synchronous {@link #poll(MonitoredService, Map)} method must remain functional,
+ * so that the monitor can still be used by callers that are not aware of this interface.
+ * </p>
+ *
+ * <P>
+ * <STRONG>NOTE: </STRONG> The callbacks attached to the returned future may be invoked
+ * on the I/O threads of the monitor, and must therefore never block.
+ * </P>
+ */
+public interface AsyncServiceMonitor extends ServiceMonitor {
+
+    /**
+     * Asynchronously polls the given service.
+     *
+     * @param svc
+     *            Includes details about to the service being monitored.
+     * @param parameters
+     *            Includes the service parameters defined in <EM>poller-configuration.xml</EM> and those
+     *            returned by {@link #getRuntimeAttributes(MonitoredService, Map)}.
+     * @return a future that completes with the availability of the service, or
+     *         exceptionally if an unrecoverable error prevents the service from being monitored.
+     */
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters);
+
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.support;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.ServiceMonitor;
+
+/**
+ * Exposes a synchronous {@link ServiceMonitor} as an {@link AsyncServiceMonitor} by
+ * running its polls on the given executor.
+ *
+ * The adapted monitor still holds a thread of the executor for the whole duration
+ * of the poll, so the size of the executor bounds the number of concurrent polls
+ * of the synchronous monitors.
+ */
+public class SyncServiceMonitorAdapter implements AsyncServiceMonitor {
+
+    private final ServiceMonitor m_delegate;
+
+    private final Executor m_executor;
+
+    public SyncServiceMonitorAdapter(ServiceMonitor delegate, Executor executor) {
+        m_delegate = Objects.requireNonNull(delegate);
+        m_executor = Objects.requireNonNull(executor);
+    }
+
+    /**
+     * Returns the given monitor as-is if it already supports asynchronous polls,
+     * or wraps it otherwise.
+     */
+    public static AsyncServiceMonitor adapt(ServiceMonitor monitor, Executor executor) {
+        if (monitor instanceof AsyncServiceMonitor) {
+            return (AsyncServiceMonitor)monitor;
+        }
+        return new SyncServiceMonitorAdapter(monitor, executor);
+    }
+
+    @Override
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+        return CompletableFuture.supplyAsync(() -> m_delegate.poll(svc, parameters), m_executor);
+    }
+
+    @Override
+    public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+        return m_delegate.poll(svc, parameters);
+    }
+
+    @Override
+    public Map<String, Object> getRuntimeAttributes(MonitoredService svc, Map<String, Object> parameters) {
+        return m_delegate.getRuntimeAttributes(svc, parameters);
+    }
+
+    @Override
+    public String getEffectiveLocation(String location) {
+        return m_delegate.getEffectiveLocation(location);
+    }
+
+    public ServiceMonitor getDelegate() {
+        return m_delegate;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncServiceMonitorAdapter[" + m_delegate + "]";
+    }
+}
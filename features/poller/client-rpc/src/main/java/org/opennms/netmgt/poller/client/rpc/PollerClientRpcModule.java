@@ -28,22 +28,46 @@
 
 package org.opennms.netmgt.poller.client.rpc;
 
-import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
-import java.util.function.Supplier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.core.rpc.xml.AbstractXmlRpcModule;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.ServiceMonitor;
 import org.opennms.netmgt.poller.ServiceMonitorRegistry;
+import org.opennms.netmgt.poller.support.SyncServiceMonitorAdapter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Executes polls on behalf of the poller clients.
+ *
+ * Monitors implementing {@link AsyncServiceMonitor} are polled without holding
+ * a thread of the executor, while the other monitors are adapted to run on it.
+ * The number of polls in-flight and their latency are tracked per monitor.
+ */
 public class PollerClientRpcModule extends AbstractXmlRpcModule<PollerRequestDTO, PollerResponseDTO> {
 
     public static final String RPC_MODULE_ID = "Poller";
 
+    /**
+     * The maximum number of threads used to run the polls of the synchronous monitors.
+     */
+    public static final String MAX_THREADS_PROPERTY = "org.opennms.netmgt.poller.client.rpc.maxThreads";
+
+    private static final int DEFAULT_MAX_THREADS = 100;
+
     @Autowired
     private ServiceMonitorRegistry serviceMonitorRegistry;
 
@@ -51,10 +75,48 @@ public class PollerClientRpcModule extends AbstractXmlRpcModule<PollerRequestDTO
     @Qualifier("pollerExecutor")
     private Executor executor;
 
+    private MetricRegistry metrics = new MetricRegistry();
+
+    private JmxReporter reporter;
+
     public PollerClientRpcModule() {
         super(PollerRequestDTO.class, PollerResponseDTO.class);
     }
 
+    /**
+     * Builds the executor used to run the polls of the synchronous monitors.
+     *
+     * Once all of its threads are busy, polls run on the thread that requested them,
+     * which holds back the caller (i.e. the scheduler of pollerd) instead of queuing
+     * or starting more threads.
+     */
+    public static ExecutorService createExecutor() {
+        final int maxThreads = Integer.getInteger(MAX_THREADS_PROPERTY, DEFAULT_MAX_THREADS);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                // Unlike CallerRunsPolicy, also run the poll once the executor is shut down, so that its future completes
+                (r, e) -> r.run());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public void init() {
+        if (reporter == null) {
+            reporter = JmxReporter.forRegistry(metrics)
+                    .inDomain(PollerClientRpcModule.class.getPackage().getName())
+                    .build();
+            reporter.start();
+        }
+    }
+
+    public void destroy() {
+        if (reporter != null) {
+            reporter.close();
+            reporter = null;
+        }
+    }
+
     @Override
     public String getId() {
         return RPC_MODULE_ID;
@@ -68,19 +130,31 @@ public class PollerClientRpcModule extends AbstractXmlRpcModule<PollerRequestDTO
             return CompletableFuture.completedFuture(new PollerResponseDTO(PollStatus.unknown("No monitor found with class name '" + className + "'.")));
         }
 
-        return CompletableFuture.supplyAsync(new Supplier<PollerResponseDTO>() {
-            @Override
-            public PollerResponseDTO get() {
-                PollStatus pollStatus;
-                try {
-                    final Map<String, Object> parameters = request.getMonitorParameters();
-                    pollStatus = monitor.poll(request, parameters);
-                } catch (RuntimeException e) {
-                    pollStatus = PollStatus.unknown(e.getMessage());
+        final Counter inFlight = metrics.counter(MetricRegistry.name(className, "in-flight"));
+        final Timer.Context latency = metrics.timer(MetricRegistry.name(className, "latency")).time();
+        inFlight.inc();
+
+        CompletableFuture<PollStatus> future;
+        try {
+            future = SyncServiceMonitorAdapter.adapt(monitor, executor)
+                    .pollAsync(request, request.getMonitorParameters());
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+
+        return future.handle((pollStatus, ex) -> {
+            latency.stop();
+            inFlight.dec();
+            if (ex != null) {
+                final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                if (!(cause instanceof RuntimeException)) {
+                    throw new CompletionException(cause);
                 }
-                return new PollerResponseDTO(pollStatus);
+                pollStatus = PollStatus.unknown(cause.getMessage());
             }
-        }, executor);
+            return new PollerResponseDTO(pollStatus);
+        });
     }
 
     public void setServiceMonitorRegistry(ServiceMonitorRegistry serviceMonitorRegistry) {
@@ -91,6 +165,10 @@ public class PollerClientRpcModule extends AbstractXmlRpcModule<PollerRequestDTO
         this.executor = executor;
     }
 
+    public void setMetricRegistry(MetricRegistry metrics) {
+        this.metrics = metrics;
+    }
+
     @Override
     public PollerResponseDTO createResponseWithException(Throwable ex) {
         return new PollerResponseDTO(ex);
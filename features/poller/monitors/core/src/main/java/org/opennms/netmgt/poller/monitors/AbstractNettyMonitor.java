@@ -0,0 +1,298 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.ParameterMap;
+import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.support.AbstractServiceMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ConnectTimeoutException;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.timeout.ReadTimeoutException;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+
+/**
+ * Base class for the monitors that poll services with non-blocking I/O.
+ *
+ * All of the monitors share the same event loop group, so that a small, fixed
+ * number of threads can serve any number of concurrent polls. The number of
+ * threads can be set with the <em>org.opennms.netmgt.poller.monitors.netty.threads</em>
+ * system property, and defaults to twice the number of available processors.
+ *
+ * The synchronous {@link #poll(MonitoredService, Map)} simply waits for the
+ * result of {@link #pollAsync(MonitoredService, Map)}.
+ */
+public abstract class AbstractNettyMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractNettyMonitor.class);
+
+    private static final String THREADS_PROPERTY = "org.opennms.netmgt.poller.monitors.netty.threads";
+
+    /**
+     * Created on first use, since most systems only poll with the synchronous monitors.
+     */
+    private static class EventLoopGroupHolder {
+        private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+                .setNameFormat("poller-monitors-netty-%d")
+                .setDaemon(true)
+                .build();
+
+        private static final EventLoopGroup GROUP = new NioEventLoopGroup(Integer.getInteger(THREADS_PROPERTY, 0), THREAD_FACTORY);
+    }
+
+    protected static EventLoopGroup getEventLoopGroup() {
+        return EventLoopGroupHolder.GROUP;
+    }
+
+    @Override
+    public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+        try {
+            return pollAsync(svc, parameters).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Invokes the given attempt until the service is available, an attempt
+     * ends in a way that is not worth retrying, or all of the retries allowed
+     * by the tracker have been used.
+     *
+     * Attempts that complete exceptionally are mapped to a status with
+     * {@link #getStatusForException(Throwable, InetAddress, TimeoutTracker)}.
+     *
+     * When <em>strict-timeout</em> is set, the next attempt is scheduled on the
+     * event loop instead of sleeping until the timeout elapses.
+     */
+    protected CompletableFuture<PollStatus> pollWithRetries(final InetAddress address, final Map<String, Object> parameters, final TimeoutTracker tracker, final Supplier<CompletableFuture<PollStatus>> attempt) {
+        final boolean strictTimeouts = ParameterMap.getKeyedBoolean(parameters, "strict-timeout", false);
+        final CompletableFuture<PollStatus> result = new CompletableFuture<>();
+        tracker.reset();
+        nextAttempt(address, tracker, strictTimeouts, attempt, result);
+        return result;
+    }
+
+    private void nextAttempt(final InetAddress address, final TimeoutTracker tracker, final boolean strictTimeouts, final Supplier<CompletableFuture<PollStatus>> attempt, final CompletableFuture<PollStatus> result) {
+        final long startNanos = System.nanoTime();
+        final CompletableFuture<PollStatus> future;
+        try {
+            tracker.startAttempt();
+            future = attempt.get();
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+
+        future.whenComplete((attemptStatus, ex) -> {
+            final PollStatus status;
+            final boolean retryable;
+            if (ex != null) {
+                final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                status = getStatusForException(cause, address, tracker);
+                retryable = isRetryable(cause);
+            } else {
+                status = attemptStatus;
+                retryable = isRetryable(status);
+            }
+            tracker.nextAttempt();
+            if (!retryable || !tracker.shouldRetry()) {
+                result.complete(status);
+                return;
+            }
+            final long delayNanos = strictTimeouts ? startNanos + TimeUnit.MILLISECONDS.toNanos(tracker.getTimeoutInMillis()) - System.nanoTime() : 0;
+            if (delayNanos > 0) {
+                getEventLoopGroup().schedule(() -> nextAttempt(address, tracker, strictTimeouts, attempt, result), delayNanos, TimeUnit.NANOSECONDS);
+            } else {
+                nextAttempt(address, tracker, strictTimeouts, attempt, result);
+            }
+        });
+    }
+
+    /**
+     * @return true if another attempt should be made after the given status was returned
+     */
+    protected boolean isRetryable(PollStatus status) {
+        return !status.isAvailable();
+    }
+
+    /**
+     * @return true if another attempt should be made after an attempt failed with the given exception
+     */
+    protected boolean isRetryable(Throwable cause) {
+        return !(cause instanceof NoRouteToHostException);
+    }
+
+    /**
+     * Opens a TCP connection to the given address, and feeds the resulting channel to the handler.
+     * The connection and the reads are both bound by the timeout of the tracker.
+     *
+     * @param pipelineCustomizer adds the codecs that sit between the channel and the handler
+     * @return the status computed by the handler, which completes exceptionally if the channel fails
+     */
+    protected CompletableFuture<PollStatus> connect(final InetAddress address, final int port, final TimeoutTracker tracker, final Consumer<ChannelPipeline> pipelineCustomizer, final PollHandler<?> handler) {
+        final Bootstrap bootstrap = new Bootstrap()
+                .group(getEventLoopGroup())
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, tracker.getConnectionTimeout())
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) throws Exception {
+                        final ChannelPipeline pipeline = ch.pipeline();
+                        pipeline.addLast(new ReadTimeoutHandler(tracker.getSoTimeout(), TimeUnit.MILLISECONDS));
+                        pipelineCustomizer.accept(pipeline);
+                        pipeline.addLast(handler);
+                    }
+                });
+
+        bootstrap.connect(new InetSocketAddress(address, port)).addListener((ChannelFuture f) -> {
+            if (!f.isSuccess()) {
+                handler.fail(f.cause());
+            }
+        });
+        return handler.getStatus();
+    }
+
+    /**
+     * Maps the failures of the channels to the status of the service.
+     */
+    protected PollStatus getStatusForException(Throwable cause, InetAddress address, TimeoutTracker tracker) {
+        final String hostAddress = InetAddressUtils.str(address);
+        final String reason;
+        if (cause instanceof NoRouteToHostException) {
+            reason = "No route to host exception for address " + hostAddress;
+            LOG.debug(reason, cause);
+        } else if (cause instanceof ConnectTimeoutException || cause instanceof ReadTimeoutException) {
+            reason = "Did not receive expected response within timeout " + tracker;
+            LOG.debug(reason);
+        } else if (cause instanceof ConnectException) {
+            reason = "Connection exception for address: " + hostAddress;
+            LOG.debug(reason, cause);
+        } else if (cause instanceof IOException) {
+            reason = "IOException while polling address: " + hostAddress + ": " + cause.getMessage();
+            LOG.debug(reason, cause);
+        } else {
+            reason = "Unexpected exception while polling address: " + hostAddress + ": " + cause.getMessage();
+            LOG.warn(reason, cause);
+        }
+        return PollStatus.unavailable(reason);
+    }
+
+    /**
+     * Drives the conversation with the service over a single channel, and
+     * closes the channel as soon as the status is known.
+     *
+     * The status defaults to the last one set by {@link #setStatus(PollStatus)} when
+     * the remote end closes the connection before the conversation is over.
+     */
+    protected abstract static class PollHandler<I> extends SimpleChannelInboundHandler<I> {
+        private final CompletableFuture<PollStatus> m_status = new CompletableFuture<>();
+
+        private PollStatus m_lastStatus = PollStatus.unavailable();
+
+        protected PollHandler(Class<? extends I> inboundMessageType) {
+            super(inboundMessageType);
+        }
+
+        public CompletableFuture<PollStatus> getStatus() {
+            return m_status;
+        }
+
+        protected void setStatus(PollStatus status) {
+            m_lastStatus = status;
+        }
+
+        protected void complete(ChannelHandlerContext ctx, PollStatus status) {
+            if (m_status.complete(status)) {
+                ctx.close();
+            }
+        }
+
+        protected void fail(Throwable cause) {
+            m_status.completeExceptionally(cause);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            m_status.complete(m_lastStatus);
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            if (m_status.completeExceptionally(cause)) {
+                ctx.close();
+            }
+        }
+
+        /**
+         * Writes the message, and fails the poll if the write does not succeed.
+         */
+        protected void write(ChannelHandlerContext ctx, Object msg) {
+            ctx.writeAndFlush(msg).addListener((ChannelFuture f) -> {
+                if (!f.isSuccess()) {
+                    exceptionCaught(ctx, f.cause());
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.ParameterMap;
+import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.handler.timeout.ReadTimeoutException;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+
+/**
+ * Non-blocking counterpart of the {@link DnsMonitor}, which accepts the same parameters.
+ *
+ * A single 'A' query is sent over UDP for each attempt. Like with the {@link DnsMonitor},
+ * only the attempts that time out are retried, and the timeout is rounded down to the
+ * second, with a minimum of one second.
+ */
+public class AsyncDnsMonitor extends AbstractNettyMonitor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncDnsMonitor.class);
+
+    private static final int DEFAULT_PORT = 53;
+
+    private static final int DEFAULT_RETRY = 0;
+
+    private static final int DEFAULT_TIMEOUT = 5000;
+
+    private static final int[] DEFAULT_FATAL_RESP_CODES = { 2 };
+
+    private static final int DEFAULT_MIN_ANSWERS = 0;
+
+    private static final int DEFAULT_MAX_ANSWERS = Integer.MAX_VALUE;
+
+    @Override
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+        final TimeoutTracker tracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
+        final int port = ParameterMap.getKeyedInteger(parameters, "port", DEFAULT_PORT);
+
+        String lookup = ParameterMap.getKeyedString(parameters, "lookup", null);
+        if (lookup == null || lookup.length() == 0) {
+            lookup = InetAddressUtils.getLocalHostAddressAsString();
+            if (lookup == null) {
+                throw new UnsupportedOperationException("Unable to look up local host address.");
+            }
+        }
+
+        final Name name;
+        try {
+            name = Name.fromString(lookup, Name.root);
+        } catch (TextParseException e) {
+            final String reason = "Invalid name to look up: " + lookup;
+            LOG.debug(reason, e);
+            return CompletableFuture.completedFuture(PollStatus.unavailable(reason));
+        }
+
+        final List<Integer> fatalCodes = new ArrayList<>();
+        for (final int code : ParameterMap.getKeyedIntegerArray(parameters, "fatal-response-codes", DEFAULT_FATAL_RESP_CODES)) {
+            fatalCodes.add(code);
+        }
+        final int minAnswers = ParameterMap.getKeyedInteger(parameters, "min-answers", DEFAULT_MIN_ANSWERS);
+        final int maxAnswers = ParameterMap.getKeyedInteger(parameters, "max-answers", DEFAULT_MAX_ANSWERS);
+
+        final InetAddress address = svc.getAddress();
+        final InetSocketAddress server = new InetSocketAddress(address, port);
+        final long timeoutInSeconds = Math.max(1, tracker.getSoTimeout() / 1000);
+
+        return pollWithRetries(address, parameters, tracker, () -> {
+            final Message query = Message.newQuery(Record.newRecord(name, Type.A, DClass.IN));
+            final DnsHandler handler = new DnsHandler(query, server, tracker, fatalCodes, minAnswers, maxAnswers);
+            final Bootstrap bootstrap = new Bootstrap()
+                    .group(getEventLoopGroup())
+                    .channel(NioDatagramChannel.class)
+                    .handler(new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(Channel ch) throws Exception {
+                            ch.pipeline().addLast(new ReadTimeoutHandler(timeoutInSeconds, TimeUnit.SECONDS));
+                            ch.pipeline().addLast(handler);
+                        }
+                    });
+            bootstrap.bind(0).addListener((ChannelFuture f) -> {
+                if (!f.isSuccess()) {
+                    handler.fail(f.cause());
+                }
+            });
+            return handler.getStatus();
+        }).thenApply(status -> {
+            if (status.isUnavailable() && status.getReason() == null) {
+                return PollStatus.unavailable("Never received valid DNS response for address: " + InetAddressUtils.str(address));
+            }
+            return status;
+        });
+    }
+
+    @Override
+    protected boolean isRetryable(PollStatus status) {
+        // Any response from the server is final
+        return false;
+    }
+
+    @Override
+    protected boolean isRetryable(Throwable cause) {
+        return cause instanceof ReadTimeoutException;
+    }
+
+    @Override
+    protected PollStatus getStatusForException(Throwable cause, InetAddress address, TimeoutTracker tracker) {
+        if (cause instanceof ReadTimeoutException) {
+            return PollStatus.unavailable();
+        }
+        return super.getStatusForException(cause, address, tracker);
+    }
+
+    private static class DnsHandler extends PollHandler<DatagramPacket> {
+        private final Message m_query;
+        private final InetSocketAddress m_server;
+        private final TimeoutTracker m_tracker;
+        private final List<Integer> m_fatalCodes;
+        private final int m_minAnswers;
+        private final int m_maxAnswers;
+
+        private DnsHandler(Message query, InetSocketAddress server, TimeoutTracker tracker, List<Integer> fatalCodes, int minAnswers, int maxAnswers) {
+            super(DatagramPacket.class);
+            m_query = query;
+            m_server = server;
+            m_tracker = tracker;
+            m_fatalCodes = fatalCodes;
+            m_minAnswers = minAnswers;
+            m_maxAnswers = maxAnswers;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            write(ctx, new DatagramPacket(Unpooled.wrappedBuffer(m_query.toWire()), m_server));
+            super.channelActive(ctx);
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) throws Exception {
+            final double responseTime = m_tracker.elapsedTimeInMillis();
+            if (!m_server.equals(packet.sender())) {
+                return;
+            }
+
+            final ByteBuf content = packet.content();
+            final byte[] bytes = new byte[content.readableBytes()];
+            content.getBytes(content.readerIndex(), bytes);
+            final Message response;
+            try {
+                response = new Message(bytes);
+            } catch (IOException e) {
+                LOG.debug("Ignoring malformed DNS response from {}", m_server, e);
+                return;
+            }
+            if (response.getHeader().getID() != m_query.getHeader().getID()) {
+                return;
+            }
+
+            final int rcode = response.getHeader().getRcode();
+            LOG.debug("received response code: {}", rcode);
+
+            if (m_fatalCodes.contains(rcode)) {
+                final PollStatus status = PollStatus.unavailable("Received an invalid DNS response for address: " + InetAddressUtils.str(m_server.getAddress()));
+                LOG.debug(status.getReason());
+                complete(ctx, status);
+            } else if (m_minAnswers != DEFAULT_MIN_ANSWERS || m_maxAnswers != DEFAULT_MAX_ANSWERS) {
+                final int numAnswers = response.getSectionArray(Section.ANSWER).length;
+                final PollStatus status;
+                if (numAnswers < m_minAnswers) {
+                    status = PollStatus.unavailable("Response contained only " + numAnswers + " answer(s), but at least " + m_minAnswers + " answers(s) are needed.");
+                    LOG.warn(status.getReason());
+                } else if (numAnswers > m_maxAnswers) {
+                    status = PollStatus.unavailable("Response contained " + numAnswers + " answer(s), but " + m_maxAnswers + " or fewer answers(s) are needed.");
+                    LOG.warn(status.getReason());
+                } else {
+                    status = PollStatus.up(responseTime);
+                    LOG.debug("valid DNS response received with {} answer(s), responseTime = {}ms", numAnswers, responseTime);
+                }
+                complete(ctx, status);
+            } else {
+                LOG.debug("valid DNS response received, responseTime = {}ms", responseTime);
+                complete(ctx, PollStatus.up(responseTime));
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang.StringUtils;
+import org.opennms.core.utils.IPLike;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.ParameterMap;
+import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.handler.codec.string.StringEncoder;
+import io.netty.handler.ssl.SslContext;
+
+/**
+ * Non-blocking counterpart of the {@link HttpMonitor}, which accepts the same parameters
+ * and sends the same request.
+ *
+ * The ports are tried in order until the service is found to be available on one
+ * of them. When a <em>response-text</em> is given, the body of the response is only
+ * read until a line matches it.
+ */
+public class AsyncHttpMonitor extends AbstractNettyMonitor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncHttpMonitor.class);
+
+    private static final int[] DEFAULT_PORTS = { 80, 8080, 8888 };
+
+    private static final int DEFAULT_RETRY = 0;
+
+    private static final int DEFAULT_TIMEOUT = 3000;
+
+    @Override
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+        // Sort the parameters so that the headers are always sent in the same order
+        final Map<String, Object> sortedParameters = new TreeMap<>(parameters);
+        final InetAddress address = svc.getAddress();
+        final int[] ports = determinePorts(sortedParameters);
+        final String command = HttpMonitor.buildCommand(svc.getNodeLabel(), address, sortedParameters);
+
+        return pollPort(address, ports, 0, command, sortedParameters).thenApply(status -> {
+            if (status.isUnavailable()) {
+                final String testedPorts = Arrays.stream(ports).mapToObj(Integer::toString).collect(Collectors.joining(","));
+                final String reason = status.getReason() + "/Ports: " + testedPorts;
+                LOG.debug("checkStatus: Reason: \"{}\"", reason);
+                return PollStatus.unavailable(reason);
+            }
+            return status;
+        });
+    }
+
+    private CompletableFuture<PollStatus> pollPort(final InetAddress address, final int[] ports, final int portIndex, final String command, final Map<String, Object> parameters) {
+        final int port = ports[portIndex];
+        final TimeoutTracker tracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
+        LOG.debug("Port = {}, Address = {}, {}", port, address, tracker);
+
+        return pollWithRetries(address, parameters, tracker, () -> connect(address, port, tracker, pipeline -> {
+            final SslContext sslContext = getSslContext();
+            if (sslContext != null) {
+                pipeline.addLast(sslContext.newHandler(pipeline.channel().alloc(), InetAddressUtils.str(address), port));
+            }
+            addLineCodecs(pipeline);
+        }, new HttpHandler(command, parameters, tracker))).thenCompose(status -> {
+            if (status.isAvailable() || portIndex + 1 >= ports.length) {
+                return CompletableFuture.completedFuture(status);
+            }
+            return pollPort(address, ports, portIndex + 1, command, parameters);
+        });
+    }
+
+    private static void addLineCodecs(ChannelPipeline pipeline) {
+        pipeline.addLast(new LineBasedFrameDecoder(AsyncTcpMonitor.MAX_LINE_LENGTH));
+        pipeline.addLast(new StringDecoder(Charset.defaultCharset()));
+        pipeline.addLast(new StringEncoder(Charset.defaultCharset()));
+    }
+
+    protected int[] determinePorts(final Map<String, Object> parameters) {
+        return ParameterMap.getKeyedIntegerArray(parameters, HttpMonitor.PARAMETER_PORT, DEFAULT_PORTS);
+    }
+
+    /**
+     * @return the context used to secure the connections, or null to use plain connections
+     */
+    protected SslContext getSslContext() {
+        return null;
+    }
+
+    private static class HttpHandler extends PollHandler<String> {
+        private final String m_command;
+        private final String m_response;
+        private final String m_responseText;
+        private final boolean m_verbose;
+        private final TimeoutTracker m_tracker;
+        private boolean m_statusLineRead = false;
+        private boolean m_headerFinished = false;
+        private double m_responseTime;
+
+        private HttpHandler(String command, Map<String, Object> parameters, TimeoutTracker tracker) {
+            super(String.class);
+            m_command = command;
+            m_response = HttpMonitor.determineResponse(parameters);
+            m_responseText = HttpMonitor.determineResponseText(parameters);
+            m_verbose = HttpMonitor.determineVerbosity(parameters);
+            m_tracker = tracker;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            setStatus(PollStatus.unresponsive());
+            if (m_verbose) {
+                LOG.debug("Sending HTTP command: {}", m_command);
+            }
+            write(ctx, m_command);
+            super.channelActive(ctx);
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, String line) throws Exception {
+            if (m_verbose) {
+                LOG.debug("\t<<: {}", line);
+            }
+
+            if (!m_statusLineRead) {
+                m_statusLineRead = true;
+                m_responseTime = m_tracker.elapsedTimeInMillis();
+                LOG.debug("poll: response= {}", line);
+                LOG.debug("poll: responseTime= {}ms", m_responseTime);
+
+                final PollStatus status = getStatusForStatusLine(line);
+                if (!status.isAvailable() || StringUtils.isBlank(m_responseText)) {
+                    complete(ctx, status);
+                } else {
+                    setStatus(PollStatus.unavailable("Matching text: [" + m_responseText + "] not found in body of HTTP response"));
+                }
+                return;
+            }
+
+            // Skip the headers
+            if (!m_headerFinished) {
+                m_headerFinished = line.isEmpty();
+                return;
+            }
+
+            final boolean found;
+            if (m_responseText.charAt(0) == '~') {
+                found = line.matches(m_responseText.substring(1));
+            } else {
+                found = line.indexOf(m_responseText) != -1;
+            }
+            if (found) {
+                LOG.debug("response-text: {}: found.", m_responseText);
+                complete(ctx, PollStatus.available(m_responseTime));
+            }
+        }
+
+        private PollStatus getStatusForStatusLine(String line) {
+            if (!line.startsWith("HTTP/")) {
+                return PollStatus.unresponsive();
+            }
+
+            int serverResponse = -1;
+            final StringTokenizer t = new StringTokenizer(line);
+            if (t.hasMoreTokens()) {
+                t.nextToken();
+            }
+            if (t.hasMoreTokens()) {
+                try {
+                    serverResponse = Integer.parseInt(t.nextToken());
+                } catch (final NumberFormatException e) {
+                    LOG.info("Error converting response code from response = {}", line);
+                }
+            }
+
+            if (IPLike.matchNumericListOrRange(String.valueOf(serverResponse), m_response)) {
+                LOG.debug("determineServerResponse: valid server response: {} found.", serverResponse);
+                return PollStatus.available(m_responseTime);
+            }
+            return PollStatus.unavailable("HTTP response value: " + serverResponse + ". Expecting: " + m_response + ".");
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.util.Map;
+
+import javax.net.ssl.SSLException;
+
+import org.opennms.core.utils.ParameterMap;
+
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+
+/**
+ * Non-blocking counterpart of the {@link HttpsMonitor}.
+ *
+ * Like the {@link HttpsMonitor}, the certificates presented by the services are not verified.
+ */
+public class AsyncHttpsMonitor extends AsyncHttpMonitor {
+
+    private static final int[] DEFAULT_PORTS = { 443 };
+
+    private static final SslContext SSL_CONTEXT;
+
+    static {
+        try {
+            SSL_CONTEXT = SslContextBuilder.forClient()
+                    .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                    .build();
+        } catch (SSLException e) {
+            throw new IllegalStateException("Failed to initialize the SSL context.", e);
+        }
+    }
+
+    @Override
+    protected int[] determinePorts(Map<String, Object> parameters) {
+        return ParameterMap.getKeyedIntegerArray(parameters, "port", DEFAULT_PORTS);
+    }
+
+    @Override
+    protected SslContext getSslContext() {
+        return SSL_CONTEXT;
+    }
+}
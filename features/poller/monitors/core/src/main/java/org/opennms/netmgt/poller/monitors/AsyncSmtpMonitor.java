@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.ParameterMap;
+import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.handler.codec.string.StringEncoder;
+
+/**
+ * Non-blocking counterpart of the {@link SmtpMonitor}, which accepts the same parameters.
+ *
+ * The monitor expects a 220 greeting, sends a 'HELO' command and expects a 250
+ * reply, and then sends a 'QUIT' command and expects a 221 reply. Multi-line
+ * replies are read up to their last line.
+ */
+public class AsyncSmtpMonitor extends AbstractNettyMonitor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncSmtpMonitor.class);
+
+    private static final int DEFAULT_PORT = 25;
+
+    private static final int DEFAULT_RETRY = 0;
+
+    private static final int DEFAULT_TIMEOUT = 3000;
+
+    private static final String LOCALHOST_NAME = InetAddressUtils.getLocalHostName();
+
+    private static final Pattern MULTILINE = Pattern.compile("^[0-9]{3}-");
+
+    @Override
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+        final TimeoutTracker tracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
+        final int port = ParameterMap.getKeyedInteger(parameters, "port", DEFAULT_PORT);
+        final InetAddress address = svc.getAddress();
+        final String hostAddress = InetAddressUtils.str(address);
+        LOG.debug("poll: address = {}, port = {}, {}", hostAddress, port, tracker);
+
+        return pollWithRetries(address, parameters, tracker, () -> connect(address, port, tracker, pipeline -> {
+            pipeline.addLast(new LineBasedFrameDecoder(AsyncTcpMonitor.MAX_LINE_LENGTH));
+            pipeline.addLast(new StringDecoder(StandardCharsets.US_ASCII));
+            pipeline.addLast(new StringEncoder(StandardCharsets.US_ASCII));
+        }, new SmtpHandler(hostAddress, tracker)));
+    }
+
+    private enum State {
+        GREETING,
+        HELO,
+        QUIT
+    }
+
+    private static class SmtpHandler extends PollHandler<String> {
+        private final String m_hostAddress;
+        private final TimeoutTracker m_tracker;
+        private State m_state = State.GREETING;
+        private String m_multiLineCode = null;
+        private double m_responseTime;
+
+        private SmtpHandler(String hostAddress, TimeoutTracker tracker) {
+            super(String.class);
+            m_hostAddress = hostAddress;
+            m_tracker = tracker;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            LOG.debug("AsyncSmtpMonitor: connected to host: {}", m_hostAddress);
+            setStatus(PollStatus.unresponsive());
+            super.channelActive(ctx);
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, String line) throws Exception {
+            if (m_state == State.HELO && m_multiLineCode == null) {
+                m_responseTime = m_tracker.elapsedTimeInMillis();
+            }
+
+            // Wait for the last line of multi-line replies
+            if (m_multiLineCode != null) {
+                if (!line.startsWith(m_multiLineCode + " ")) {
+                    return;
+                }
+                m_multiLineCode = null;
+            } else if (MULTILINE.matcher(line).find()) {
+                m_multiLineCode = line.substring(0, 3);
+                return;
+            }
+
+            final int rc;
+            try {
+                rc = Integer.parseInt(new StringTokenizer(line).nextToken());
+            } catch (NumberFormatException | NoSuchElementException e) {
+                final String reason = "NumberFormatException while polling address " + m_hostAddress;
+                LOG.debug(reason, e);
+                complete(ctx, PollStatus.unavailable(reason));
+                return;
+            }
+
+            switch (m_state) {
+            case GREETING:
+                LOG.debug("poll: banner = {}", line);
+                if (rc == 220) {
+                    m_state = State.HELO;
+                    write(ctx, "HELO " + LOCALHOST_NAME + "\r\n");
+                } else if (rc == 554) {
+                    write(ctx, "QUIT\r\n");
+                    complete(ctx, PollStatus.unavailable("Server rejecting transactions with 554"));
+                } else {
+                    complete(ctx, PollStatus.unavailable());
+                }
+                break;
+            case HELO:
+                if (rc == 250) {
+                    m_state = State.QUIT;
+                    write(ctx, "QUIT\r\n");
+                } else {
+                    complete(ctx, PollStatus.unavailable());
+                }
+                break;
+            case QUIT:
+                complete(ctx, rc == 221 ? PollStatus.available(m_responseTime) : PollStatus.unavailable());
+                break;
+            }
+        }
+    }
+}
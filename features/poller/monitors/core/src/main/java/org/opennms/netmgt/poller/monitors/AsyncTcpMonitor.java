@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.ParameterMap;
+import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+
+/**
+ * Non-blocking counterpart of the {@link TcpMonitor}, which accepts the same parameters.
+ *
+ * The service is available once the connection is established or, when a
+ * <em>banner</em> is given, once the first line sent by the service matches it.
+ */
+public class AsyncTcpMonitor extends AbstractNettyMonitor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncTcpMonitor.class);
+
+    private static final int DEFAULT_PORT = -1;
+
+    private static final int DEFAULT_RETRY = 0;
+
+    private static final int DEFAULT_TIMEOUT = 3000;
+
+    static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    @Override
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+        final TimeoutTracker tracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
+
+        final int port = ParameterMap.getKeyedInteger(parameters, TcpMonitor.PARAMETER_PORT, DEFAULT_PORT);
+        if (port == DEFAULT_PORT) {
+            throw new RuntimeException("AsyncTcpMonitor: required parameter 'port' is not present in supplied properties.");
+        }
+
+        final String bannerMatch = ParameterMap.getKeyedString(parameters, TcpMonitor.PARAMETER_BANNER, null);
+        final InetAddress address = svc.getAddress();
+        LOG.debug("poll: address = {}, port = {}, {}", InetAddressUtils.str(address), port, tracker);
+
+        return pollWithRetries(address, parameters, tracker, () -> connect(address, port, tracker, pipeline -> {
+            pipeline.addLast(new LineBasedFrameDecoder(MAX_LINE_LENGTH));
+            pipeline.addLast(new StringDecoder(Charset.defaultCharset()));
+        }, new BannerHandler(bannerMatch, tracker)));
+    }
+
+    private static class BannerHandler extends PollHandler<String> {
+        private final String m_bannerMatch;
+        private final TimeoutTracker m_tracker;
+
+        private BannerHandler(String bannerMatch, TimeoutTracker tracker) {
+            super(String.class);
+            m_bannerMatch = bannerMatch;
+            m_tracker = tracker;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            if (m_bannerMatch == null || m_bannerMatch.length() == 0 || m_bannerMatch.equals("*")) {
+                complete(ctx, PollStatus.available(m_tracker.elapsedTimeInMillis()));
+            } else {
+                setStatus(PollStatus.unresponsive());
+            }
+            super.channelActive(ctx);
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, String response) throws Exception {
+            final double responseTime = m_tracker.elapsedTimeInMillis();
+            LOG.debug("poll: banner = {}", response);
+            LOG.debug("poll: responseTime= {}ms", responseTime);
+
+            if (m_bannerMatch.charAt(0) == '~') {
+                if (!response.matches(m_bannerMatch.substring(1))) {
+                    complete(ctx, PollStatus.unavailable("Banner does not match Regex '" + m_bannerMatch + "'"));
+                } else {
+                    complete(ctx, PollStatus.available(responseTime));
+                }
+            } else if (response.indexOf(m_bannerMatch) > -1) {
+                complete(ctx, PollStatus.available(responseTime));
+            } else {
+                complete(ctx, PollStatus.unavailable("Banner: '" + response + "' does not contain match string '" + m_bannerMatch + "'"));
+            }
+        }
+    }
+}
@@ -227,7 +227,7 @@ public class HttpMonitor extends AbstractServiceMonitor {
         return new DefaultSocketWrapper();
     }
 
-    private static boolean determineVerbosity(final Map<String, Object> parameters) {
+    static boolean determineVerbosity(final Map<String, Object> parameters) {
         final String verbose = ParameterMap.getKeyedString(parameters, PARAMETER_VERBOSE, null);
         return (verbose != null && verbose.equalsIgnoreCase("true")) ? true : false;
     }
@@ -264,11 +264,11 @@ public class HttpMonitor extends AbstractServiceMonitor {
         return ParameterMap.getKeyedString(parameters, key, null);
     }
     
-    private static String determineResponseText(final Map<String, Object> parameters) {
+    static String determineResponseText(final Map<String, Object> parameters) {
         return ParameterMap.getKeyedString(parameters, PARAMETER_RESPONSE_TEXT, null);
     }
 
-    private static String determineResponse(final Map<String, Object> parameters) {
+    static String determineResponse(final Map<String, Object> parameters) {
         return ParameterMap.getKeyedString(parameters, PARAMETER_RESPONSE, determineDefaultResponseRange(determineUrl(parameters)));
     }
 
@@ -293,6 +293,62 @@ public class HttpMonitor extends AbstractServiceMonitor {
         return "100-399";
     }
     
+    private static String determineVirtualHost(final String nodeLabel, final InetAddress addr, final Map<String, Object> parameters) {
+        final boolean res = ParameterMap.getKeyedBoolean(parameters, PARAMETER_RESOLVE_IP, false);
+        final boolean useNodeLabel = ParameterMap.getKeyedBoolean(parameters, PARAMETER_NODE_LABEL_HOST_NAME, false);
+        String virtualHost = ParameterMap.getKeyedString(parameters, PARAMETER_HOST_NAME, null);
+
+        if (isBlank(virtualHost)) {
+            if (res) {
+                return addr.getCanonicalHostName();
+            } else if (useNodeLabel) {
+                return nodeLabel;
+            } else {
+                final String host = InetAddressUtils.str(addr);
+                // Wrap IPv6 addresses in square brackets
+                if (addr instanceof Inet6Address) {
+                    return "[" + host + "]";
+                } else {
+                    return host;
+                }
+            }
+        }
+
+        return virtualHost;
+    }
+
+    /**
+     * Builds the HTTP 'GET' request, including the headers, that is sent to the monitored interface.
+     */
+    static String buildCommand(final String nodeLabel, final InetAddress addr, final Map<String, Object> parameters) {
+        /*
+         * Sorting this map just in case the poller gets changed and the Map
+         * is no longer a TreeMap.
+         */
+        final StringBuilder sb = new StringBuilder();
+        sb.append("GET ").append(determineUrl(parameters)).append(" HTTP/1.1\r\n");
+        sb.append("Connection: CLOSE \r\n");
+        sb.append("Host: ").append(determineVirtualHost(nodeLabel, addr, parameters)).append("\r\n");
+        sb.append("User-Agent: ").append(determineUserAgent(parameters)).append("\r\n");
+
+        if (determineBasicAuthentication(parameters) != null) {
+            sb.append("Authorization: Basic ").append(determineBasicAuthentication(parameters)).append("\r\n");
+        }
+
+        for (final String parmKey : parameters.keySet()) {
+            if (HEADER_PATTERN.matcher(parmKey).matches()) {
+                sb.append(determineHttpHeader(parameters, parmKey)).append("\r\n");
+            }
+        }
+
+        sb.append("\r\n");
+        final String cmd = sb.toString();
+        if (HttpMonitor.LOG.isDebugEnabled()) {
+            HttpMonitor.LOG.debug("checkStatus: cmd:\n", cmd);
+        }
+        return cmd;
+    }
+
     private static boolean isNotBlank(String str) {
         return org.apache.commons.lang.StringUtils.isNotBlank(str);
     }
@@ -353,30 +409,6 @@ public class HttpMonitor extends AbstractServiceMonitor {
             m_responseTextFound  = found;
         }
 
-        private String determineVirtualHost(final InetAddress addr, final Map<String, Object> parameters) {
-            final boolean res = ParameterMap.getKeyedBoolean(parameters, PARAMETER_RESOLVE_IP, false);
-            final boolean useNodeLabel = ParameterMap.getKeyedBoolean(parameters, PARAMETER_NODE_LABEL_HOST_NAME, false);
-            String virtualHost = ParameterMap.getKeyedString(parameters, PARAMETER_HOST_NAME, null);
-
-            if (isBlank(virtualHost)) {
-                if (res) {
-                    return addr.getCanonicalHostName();
-                } else if (useNodeLabel) {
-                    return m_nodeLabel;
-                } else {
-                    final String host = InetAddressUtils.str(addr);
-                    // Wrap IPv6 addresses in square brackets
-                    if (addr instanceof Inet6Address) {
-                        return "[" + host + "]";
-                    } else {
-                        return host;
-                    }
-                }
-            }
-
-            return virtualHost;
-        }
-
         public boolean checkCurrentLineMatchesResponseText() {
             if (!m_headerFinished && StringUtils.isEmpty(m_currentLine)) {
                 m_headerFinished = true;  // Set to true when all HTTP headers has been processed.
@@ -551,32 +583,7 @@ public class HttpMonitor extends AbstractServiceMonitor {
         }
 
         private void buildCommand() {
-            /*
-             * Sorting this map just in case the poller gets changed and the Map
-             * is no longer a TreeMap.
-             */
-            final StringBuilder sb = new StringBuilder();
-            sb.append("GET ").append(determineUrl(m_parameters)).append(" HTTP/1.1\r\n");
-            sb.append("Connection: CLOSE \r\n");
-            sb.append("Host: ").append(determineVirtualHost(m_addr, m_parameters)).append("\r\n");
-            sb.append("User-Agent: ").append(determineUserAgent(m_parameters)).append("\r\n");
-            
-            if (determineBasicAuthentication(m_parameters) != null) {
-                sb.append("Authorization: Basic ").append(determineBasicAuthentication(m_parameters)).append("\r\n");
-            }
-
-            for (final String parmKey : m_parameters.keySet()) {
-                if (HEADER_PATTERN.matcher(parmKey).matches()) {
-                    sb.append(determineHttpHeader(m_parameters, parmKey)).append("\r\n");
-                }
-            }
-
-            sb.append("\r\n");
-            final String cmd = sb.toString();
-            if (HttpMonitor.LOG.isDebugEnabled()) {
-                HttpMonitor.LOG.debug("checkStatus: cmd:\n", cmd);
-            }
-            m_httpCmd = cmd;
+            m_httpCmd = HttpMonitor.buildCommand(m_nodeLabel, m_addr, m_parameters);
         }
 
         public void setReason(final String reason) {
@@ -30,11 +30,16 @@ package org.opennms.netmgt.poller.monitors;
 
 import java.net.InetAddress;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.core.spring.BeanUtils;
 import org.opennms.core.utils.ParameterMap;
+import org.opennms.netmgt.icmp.EchoPacket;
 import org.opennms.netmgt.icmp.PingConstants;
+import org.opennms.netmgt.icmp.PingResponseCallback;
 import org.opennms.netmgt.icmp.PingerFactory;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.Distributable;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
@@ -57,7 +62,7 @@ import com.google.common.base.Suppliers;
  * @author <A HREF="http://www.opennms.org/">OpenNMS</A>
  */
 @Distributable
-public class IcmpMonitor extends AbstractServiceMonitor {
+public class IcmpMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
     private static final Logger LOG = LoggerFactory.getLogger(IcmpMonitor.class);
 
     private Supplier<PingerFactory> pingerFactory = Suppliers.memoize(() -> BeanUtils.getBean("daoContext", "pingerFactory", PingerFactory.class));
@@ -78,8 +83,21 @@ public class IcmpMonitor extends AbstractServiceMonitor {
      */
     @Override
     public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
-        Number rtt = null;
-        InetAddress host = svc.getAddress();
+        return pollAsync(svc, parameters).join();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <P>
+     * The echo request is tracked by the pinger, which completes the poll from
+     * its reply or timeout handling, so no thread waits for the reply.
+     * </P>
+     */
+    @Override
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+        final InetAddress host = svc.getAddress();
+        final CompletableFuture<PollStatus> future = new CompletableFuture<>();
 
         try {
             
@@ -91,19 +109,31 @@ public class IcmpMonitor extends AbstractServiceMonitor {
             final int dscp = ParameterMap.getKeyedDecodedInteger(parameters, "dscp", 0);
             final boolean allowFragmentation = ParameterMap.getKeyedBoolean(parameters, "allow-fragmentation", true);
 
-            rtt = pingerFactory.get().getInstance(dscp, allowFragmentation).ping(host, timeout, retries,packetSize);
+            pingerFactory.get().getInstance(dscp, allowFragmentation).ping(host, timeout, retries, packetSize, 1, new PingResponseCallback() {
+                @Override
+                public void handleResponse(InetAddress address, EchoPacket response) {
+                    final long rtt = Math.round(response.elapsedTime(TimeUnit.MICROSECONDS));
+                    future.complete(PollStatus.available((double)rtt));
+                }
+
+                @Override
+                public void handleTimeout(InetAddress address, EchoPacket request) {
+                    // TODO add a reason code for unavailability
+                    future.complete(PollStatus.unavailable(null));
+                }
+
+                @Override
+                public void handleError(InetAddress address, EchoPacket request, Throwable t) {
+                    LOG.debug("failed to ping {}", host, t);
+                    future.complete(PollStatus.unavailable(t.getMessage()));
+                }
+            });
         } catch (Throwable e) {
             LOG.debug("failed to ping {}", host, e);
-            return PollStatus.unavailable(e.getMessage());
-        }
-        
-        if (rtt != null) {
-            return PollStatus.available(rtt.doubleValue());
-        } else {
-            // TODO add a reason code for unavailability
-            return PollStatus.unavailable(null);
+            future.complete(PollStatus.unavailable(e.getMessage()));
         }
 
+        return future;
     }
 
     public void setPingerFactory(PingerFactory pingerFactory) {
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.mock.MockMonitoredService;
+
+/**
+ * Exercises the non-blocking monitors against a local server that replays canned responses.
+ */
+public class AsyncMonitorsTest {
+
+    private ServerSocket m_serverSocket;
+
+    private Thread m_serverThread;
+
+    private final List<String> m_received = new ArrayList<>();
+
+    private MonitoredService m_svc;
+
+    @Before
+    public void setUp() throws IOException {
+        m_serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        m_svc = new MockMonitoredService(1, "Node One", InetAddress.getLoopbackAddress(), "SVC");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_serverSocket.close();
+        if (m_serverThread != null) {
+            m_serverThread.join(1500);
+        }
+    }
+
+    /**
+     * Accepts a single connection, sends the greeting, and answers each of the
+     * commands with the matching reply. Only the first line of each command is kept.
+     */
+    private void serve(String greeting, String... replies) {
+        m_serverThread = new Thread(() -> {
+            try (Socket s = m_serverSocket.accept()) {
+                final OutputStream out = s.getOutputStream();
+                if (greeting != null) {
+                    out.write(greeting.getBytes(StandardCharsets.US_ASCII));
+                }
+                final BufferedReader r = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+                for (String reply : replies) {
+                    final String command = r.readLine();
+                    if (command == null) {
+                        return;
+                    }
+                    synchronized (m_received) {
+                        m_received.add(command);
+                    }
+                    out.write(reply.getBytes(StandardCharsets.US_ASCII));
+                }
+                // Wait for the client to hang up, so that none of what it sent is left unread
+                s.shutdownOutput();
+                s.setSoTimeout(5000);
+                while (r.readLine() != null) {
+                    // pass
+                }
+            } catch (IOException e) {
+                // The client hung up
+            }
+        });
+        m_serverThread.start();
+    }
+
+    private Map<String, Object> parameters(String... keyValues) {
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("port", Integer.toString(m_serverSocket.getLocalPort()));
+        parameters.put("timeout", "2000");
+        for (int i = 0; i < keyValues.length; i += 2) {
+            parameters.put(keyValues[i], keyValues[i + 1]);
+        }
+        return parameters;
+    }
+
+    private static PollStatus await(CompletableFuture<PollStatus> future) throws Exception {
+        return future.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void canMatchTcpBanner() throws Exception {
+        serve("SSH-2.0-OpenSSH_7.4\r\n");
+        final PollStatus status = await(new AsyncTcpMonitor().pollAsync(m_svc, parameters("banner", "~^SSH-2\\.0-.*")));
+        assertTrue("status should be available, but is: " + status, status.isAvailable());
+    }
+
+    @Test
+    public void canDetectTcpBannerMismatch() throws Exception {
+        serve("220 ftp.example.org ready\r\n");
+        final PollStatus status = await(new AsyncTcpMonitor().pollAsync(m_svc, parameters("banner", "SSH")));
+        assertTrue("status should be unavailable, but is: " + status, status.isUnavailable());
+        assertEquals("Banner: '220 ftp.example.org ready' does not contain match string 'SSH'", status.getReason());
+    }
+
+    @Test
+    public void canTimeoutWhenNoBannerIsSent() throws Exception {
+        serve(null, "never sent");
+        final PollStatus status = await(new AsyncTcpMonitor().pollAsync(m_svc, parameters("banner", "*", "timeout", "200")));
+        // No banner is expected with '*', so connecting is enough
+        assertTrue("status should be available, but is: " + status, status.isAvailable());
+
+        final PollStatus timedOut = await(new AsyncTcpMonitor().pollAsync(m_svc, parameters("banner", "SSH", "timeout", "200")));
+        assertTrue("status should be unavailable, but is: " + timedOut, timedOut.isUnavailable());
+    }
+
+    @Test
+    public void canCompleteSmtpConversation() throws Exception {
+        serve("220-mail.example.org ESMTP\r\n220 ready\r\n",
+                "250 mail.example.org\r\n",
+                "221 bye\r\n");
+        final PollStatus status = await(new AsyncSmtpMonitor().pollAsync(m_svc, parameters()));
+        assertTrue("status should be available, but is: " + status, status.isAvailable());
+        assertTrue(m_received.get(0).startsWith("HELO "));
+        assertEquals("QUIT", m_received.get(1));
+    }
+
+    @Test
+    public void canDetectSmtpRejection() throws Exception {
+        serve("554 go away\r\n", "221 bye\r\n");
+        final PollStatus status = await(new AsyncSmtpMonitor().pollAsync(m_svc, parameters()));
+        assertTrue("status should be unavailable, but is: " + status, status.isUnavailable());
+        assertEquals("Server rejecting transactions with 554", status.getReason());
+    }
+
+    @Test
+    public void canMatchHttpResponseText() throws Exception {
+        serve(null, "HTTP/1.1 200 OK\r\nContent-Type: text/html\r\n\r\n<html>\r\n<title>OpenNMS Web Console</title>\r\n</html>\r\n");
+        final PollStatus status = await(new AsyncHttpMonitor().pollAsync(m_svc, parameters("url", "/opennms/", "response-text", "~.*OpenNMS.*")));
+        assertTrue("status should be available, but is: " + status, status.isAvailable());
+        assertEquals("GET /opennms/ HTTP/1.1", m_received.get(0));
+    }
+
+    @Test
+    public void canDetectUnexpectedHttpResponseCode() throws Exception {
+        serve(null, "HTTP/1.1 404 Not Found\r\n\r\n");
+        final PollStatus status = await(new AsyncHttpMonitor().pollAsync(m_svc, parameters("url", "/opennms/")));
+        assertTrue("status should be unavailable, but is: " + status, status.isUnavailable());
+        assertEquals("HTTP response value: 404. Expecting: 100-399./Ports: " + m_serverSocket.getLocalPort(), status.getReason());
+    }
+
+    @Test
+    public void canPollSynchronously() throws Exception {
+        serve("SSH-2.0-OpenSSH_7.4\r\n");
+        final PollStatus status = new AsyncTcpMonitor().poll(m_svc, parameters("banner", "SSH"));
+        assertTrue("status should be available, but is: " + status, status.isAvailable());
+    }
+}
@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.telemetry.adapters.collection;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.io.Files;
 
 import org.opennms.features.osgi.script.OSGiScriptEngineManager;
@@ -45,17 +47,42 @@ import javax.script.SimpleBindings;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Uses an external script, executed via JSR-223, to generate a
  * {@link CollectionSet} from some given object using the
  * {@link CollectionSetBuilder}.
  *
+ * Script engines are not necessarily thread safe, so every thread evaluating
+ * the script borrows a compiled instance from a bounded pool. Instances are
+ * compiled on demand, with their own engine, until the pool is full.
+ *
  * @author jwhite
  */
 public class ScriptedCollectionSetBuilder {
 
-    private CompiledScript compiledScript;
+    /**
+     * System property used to override the default maximum number of
+     * compiled script instances.
+     */
+    public static final String POOL_SIZE_SYS_PROP = "org.opennms.netmgt.telemetry.adapters.collection.script.poolSize";
+
+    public static final int DEFAULT_POOL_SIZE = Integer.getInteger(POOL_SIZE_SYS_PROP, Runtime.getRuntime().availableProcessors());
+
+    private final File script;
+
+    private final ScriptEngineManager manager;
+
+    private final int poolSize;
+
+    private final BlockingQueue<CompiledScript> pool;
+
+    private final AtomicInteger numInstances = new AtomicInteger(0);
+
+    private final Timer evalTimer;
 
     public ScriptedCollectionSetBuilder(File script) throws IOException, ScriptException {
         this(script, new ScriptEngineManager());
@@ -65,11 +92,33 @@ public class ScriptedCollectionSetBuilder {
         this(script, new OSGiScriptEngineManager(bundleContext));
     }
 
+    public ScriptedCollectionSetBuilder(File script, BundleContext bundleContext, int poolSize, MetricRegistry metrics) throws IOException, ScriptException {
+        this(script, new OSGiScriptEngineManager(bundleContext), poolSize, metrics);
+    }
+
     public ScriptedCollectionSetBuilder(File script, ScriptEngineManager manager) throws IOException, ScriptException {
+        this(script, manager, DEFAULT_POOL_SIZE, new MetricRegistry());
+    }
+
+    public ScriptedCollectionSetBuilder(File script, ScriptEngineManager manager, int poolSize, MetricRegistry metrics) throws IOException, ScriptException {
         if (!script.canRead()) {
             throw new IllegalStateException("Cannot read script at '" + script + "'.");
         }
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("poolSize must be strictly positive");
+        }
+        this.script = script;
+        this.manager = manager;
+        this.poolSize = poolSize;
+        pool = new LinkedBlockingQueue<>(poolSize);
+        evalTimer = metrics.timer(MetricRegistry.name("scripts", script.getName(), "eval"));
 
+        // Compile the first instance right away so that errors are reported early
+        pool.add(compile());
+        numInstances.incrementAndGet();
+    }
+
+    private CompiledScript compile() throws IOException, ScriptException {
         final String ext = Files.getFileExtension(script.getAbsolutePath());
 
         final ScriptEngine engine = manager.getEngineByExtension(ext);
@@ -82,15 +131,15 @@ public class ScriptedCollectionSetBuilder {
         }
         final Compilable compilable = (Compilable) engine;
         try (FileReader reader = new FileReader(script)) {
-            compiledScript = compilable.compile(reader);
+            return compilable.compile(reader);
         }
     }
 
     /**
      * Builds a collection set from the given message.
      *
-     * WARNING: This method is not necessarily thread safe. This depends on the
-     * script, and the script engine that is being used.
+     * This method is thread safe. Callers will block while all of the
+     * compiled instances of the script are in use.
      *
      * @param agent
      *            the agent associated with the collection set
@@ -100,13 +149,66 @@ public class ScriptedCollectionSetBuilder {
      * @throws ScriptException
      */
     public CollectionSet build(CollectionAgent agent, Object message) throws ScriptException {
-        final CollectionSetBuilder builder = new CollectionSetBuilder(agent);
-        final SimpleBindings globals = new SimpleBindings();
-        globals.put("agent", agent);
-        globals.put("builder", builder);
-        globals.put("msg", message);
-        compiledScript.eval(globals);
-        return builder.build();
+        final CompiledScript compiledScript = borrow();
+        try {
+            final CollectionSetBuilder builder = new CollectionSetBuilder(agent);
+            final SimpleBindings globals = new SimpleBindings();
+            globals.put("agent", agent);
+            globals.put("builder", builder);
+            globals.put("msg", message);
+            try (Timer.Context ctx = evalTimer.time()) {
+                compiledScript.eval(globals);
+            }
+            return builder.build();
+        } finally {
+            pool.offer(compiledScript);
+        }
+    }
+
+    private CompiledScript borrow() throws ScriptException {
+        final CompiledScript compiledScript = pool.poll();
+        if (compiledScript != null) {
+            return compiledScript;
+        }
+
+        // Compile another instance if the pool isn't full yet
+        if (numInstances.getAndIncrement() < poolSize) {
+            try {
+                return compile();
+            } catch (IOException|ScriptException|RuntimeException e) {
+                numInstances.decrementAndGet();
+                throw new ScriptException(String.format("Failed to compile another instance of '%s': %s", script, e.getMessage()));
+            }
+        }
+        numInstances.decrementAndGet();
+
+        try {
+            return pool.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScriptException("Interrupted while waiting for an instance of script: " + script);
+        }
+    }
+
+    /**
+     * @return the maximum number of compiled instances of the script
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * @return the number of instances of the script that were compiled so far
+     */
+    public int getNumInstances() {
+        return Math.min(numInstances.get(), poolSize);
+    }
+
+    /**
+     * @return the timer used to track the time spent evaluating the script
+     */
+    public Timer getEvalTimer() {
+        return evalTimer;
     }
 
 }
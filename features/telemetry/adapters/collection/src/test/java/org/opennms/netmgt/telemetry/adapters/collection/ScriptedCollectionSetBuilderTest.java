@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.script.ScriptEngineManager;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.netmgt.collection.api.CollectionSet;
+import org.opennms.netmgt.collection.dto.CollectionAgentDTO;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.io.Files;
+
+public class ScriptedCollectionSetBuilderTest {
+
+    private static final int POOL_SIZE = 2;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void canBuildCollectionSetsConcurrently() throws Exception {
+        final File script = tempFolder.newFile("timestamp.groovy");
+        Files.write("builder.withTimestamp(new Date(msg))", script, StandardCharsets.UTF_8);
+
+        final MetricRegistry metrics = new MetricRegistry();
+        final ScriptedCollectionSetBuilder builder = new ScriptedCollectionSetBuilder(script,
+                new ScriptEngineManager(), POOL_SIZE, metrics);
+        assertEquals(1, builder.getNumInstances());
+
+        final CollectionAgentDTO agent = new CollectionAgentDTO();
+        agent.setNodeId(1);
+        agent.setAddress(InetAddress.getLoopbackAddress());
+
+        final int numMessages = 1000;
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<CollectionSet>> futures = new ArrayList<>(numMessages);
+            for (long i = 0; i < numMessages; i++) {
+                final long msg = i;
+                futures.add(executor.submit(() -> builder.build(agent, msg)));
+            }
+            // Every message must be evaluated with its own bindings
+            for (int i = 0; i < numMessages; i++) {
+                assertEquals(i, futures.get(i).get().getCollectionTimestamp().getTime());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(builder.getNumInstances() <= POOL_SIZE);
+        assertEquals(numMessages, builder.getEvalTimer().getCount());
+        assertEquals(builder.getEvalTimer(), metrics.getTimers().get("scripts.timestamp.groovy.eval"));
+    }
+}
@@ -30,6 +30,9 @@ package org.opennms.netmgt.telemetry.adapters.jti;
 
 import java.util.Map;
 
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+
 import org.opennms.features.telemetry.adapters.factory.api.AdapterFactory;
 import org.opennms.netmgt.collection.api.CollectionAgentFactory;
 import org.opennms.netmgt.collection.api.PersisterFactory;
@@ -59,10 +62,30 @@ public class JtiAdapterFactory implements AdapterFactory {
 
     private final BundleContext bundleContext;
 
+    private final MetricRegistry metrics = new MetricRegistry();
+
+    private JmxReporter reporter;
+
     public JtiAdapterFactory(BundleContext m_bundleContext) {
         this.bundleContext = m_bundleContext;
     }
 
+    public void init() {
+        if (reporter == null) {
+            reporter = JmxReporter.forRegistry(metrics)
+                    .inDomain(JtiAdapterFactory.class.getPackage().getName())
+                    .build();
+            reporter.start();
+        }
+    }
+
+    public void destroy() {
+        if (reporter != null) {
+            reporter.close();
+            reporter = null;
+        }
+    }
+
     public Adapter createAdapter(Protocol protocol, Map<String, String> properties) {
 
         final JtiGpbAdapter adapter = new JtiGpbAdapter();
@@ -74,6 +97,7 @@ public class JtiAdapterFactory implements AdapterFactory {
         adapter.setFilterDao(getFilterDao());
         adapter.setPersisterFactory(getPersisterFactory());
         adapter.setBundleContext(bundleContext);
+        adapter.setMetrics(metrics);
 
         final BeanWrapper wrapper = PropertyAccessorFactory.forBeanPropertyAccess(adapter);
         wrapper.setPropertyValues(properties);
@@ -120,6 +144,10 @@ public class JtiAdapterFactory implements AdapterFactory {
         this.filterDao = filterDao;
     }
 
+    public MetricRegistry getMetrics() {
+        return metrics;
+    }
+
     public PersisterFactory getPersisterFactory() {
         return persisterFactory;
     }
@@ -28,6 +28,9 @@
 
 package org.opennms.netmgt.telemetry.adapters.jti;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Iterables;
 import com.google.protobuf.ExtensionRegistry;
 import org.opennms.netmgt.collection.api.CollectionAgent;
@@ -57,10 +60,15 @@ import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionOperations;
 
+import javax.script.ScriptEngineManager;
 import java.io.File;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An adapter for handling Junos Telemetry Interface packets.
@@ -100,21 +108,20 @@ public class JtiGpbAdapter extends AbstractPersistingAdapter {
 
     private BundleContext bundleContext;
 
-    private final ThreadLocal<ScriptedCollectionSetBuilder> scriptedCollectionSetBuilders = new ThreadLocal<ScriptedCollectionSetBuilder>() {
-        @Override
-        protected ScriptedCollectionSetBuilder initialValue() {
-            try {
-                if (bundleContext != null) {
-                    return new ScriptedCollectionSetBuilder(new File(script), bundleContext);
-                } else {
-                    return new ScriptedCollectionSetBuilder(new File(script));
-                }
-            } catch (Exception e) {
-                LOG.error("Failed to create builder for script '{}'.", script, e);
-                return null;
-            }
-        }
-    };
+    private int scriptPoolSize = ScriptedCollectionSetBuilder.DEFAULT_POOL_SIZE;
+
+    private long agentCacheExpirationMs = TimeUnit.MINUTES.toMillis(1);
+
+    private MetricRegistry metrics = new MetricRegistry();
+
+    private volatile ScriptedCollectionSetBuilder scriptedCollectionSetBuilder;
+
+    /**
+     * Agents keyed by location and system id. Resolving an agent may require
+     * a DNS lookup and a database query, and consecutive messages from the
+     * same device all resolve to the same agent.
+     */
+    private volatile Cache<List<String>, Optional<CollectionAgent>> agentCache;
 
     @Override
     public Optional<CollectionSetWithAgent> handleMessage(TelemetryMessage message, TelemetryMessageLog messageLog)
@@ -122,18 +129,45 @@ public class JtiGpbAdapter extends AbstractPersistingAdapter {
         final TelemetryTop.TelemetryStream jtiMsg = TelemetryTop.TelemetryStream.parseFrom(message.getByteArray(),
                 s_registry);
 
+        final CollectionAgent agent = getAgent(messageLog.getLocation(), jtiMsg.getSystemId()).orElse(null);
+
+        if (agent == null) {
+            LOG.warn("Unable to find node and inteface for system id: {}", jtiMsg.getSystemId());
+            return Optional.empty();
+        }
+
+        final CollectionSet collectionSet = getScriptedCollectionSetBuilder().build(agent, jtiMsg);
+        return Optional.of(new CollectionSetWithAgent(agent, collectionSet));
+    }
+
+    private Optional<CollectionAgent> getAgent(String location, String systemId) throws ExecutionException {
+        Cache<List<String>, Optional<CollectionAgent>> cache = agentCache;
+        if (cache == null) {
+            synchronized (this) {
+                if (agentCache == null) {
+                    agentCache = CacheBuilder.newBuilder()
+                            .expireAfterWrite(agentCacheExpirationMs, TimeUnit.MILLISECONDS)
+                            .build();
+                }
+                cache = agentCache;
+            }
+        }
+        return cache.get(Arrays.asList(location, systemId), () -> resolveAgent(location, systemId));
+    }
+
+    private Optional<CollectionAgent> resolveAgent(String location, String systemId) {
         CollectionAgent agent = null;
         try {
             // Attempt to resolve the systemId to an InetAddress
-            final InetAddress inetAddress = InetAddress.getByName(jtiMsg.getSystemId());
-            final Optional<Integer> nodeId = interfaceToNodeCache.getFirstNodeId(messageLog.getLocation(), inetAddress);
+            final InetAddress inetAddress = InetAddress.getByName(systemId);
+            final Optional<Integer> nodeId = interfaceToNodeCache.getFirstNodeId(location, inetAddress);
             if (nodeId.isPresent()) {
                 // NOTE: This will throw a IllegalArgumentException if the
                 // nodeId/inetAddress pair does not exist in the database
                 agent = collectionAgentFactory.createCollectionAgent(Integer.toString(nodeId.get()), inetAddress);
             }
         } catch (UnknownHostException e) {
-            LOG.debug("Could not convert system id to address: {}", jtiMsg.getSystemId());
+            LOG.debug("Could not convert system id to address: {}", systemId);
         }
 
         if (agent == null) {
@@ -143,7 +177,7 @@ public class JtiGpbAdapter extends AbstractPersistingAdapter {
             agent = transactionTemplate.execute(new TransactionCallback<CollectionAgent>() {
                 @Override
                 public CollectionAgent doInTransaction(TransactionStatus status) {
-                    final OnmsNode node = Iterables.getFirst(nodeDao.findByLabel(jtiMsg.getSystemId()), null);
+                    final OnmsNode node = Iterables.getFirst(nodeDao.findByLabel(systemId), null);
                     if (node != null) {
                         final OnmsIpInterface primaryInterface = node.getPrimaryInterface();
                         return collectionAgentFactory.createCollectionAgent(primaryInterface);
@@ -152,19 +186,29 @@ public class JtiGpbAdapter extends AbstractPersistingAdapter {
                 }
             });
         }
+        return Optional.ofNullable(agent);
+    }
 
-        if (agent == null) {
-            LOG.warn("Unable to find node and inteface for system id: {}", jtiMsg.getSystemId());
-            return Optional.empty();
-        }
-
-        final ScriptedCollectionSetBuilder builder = scriptedCollectionSetBuilders.get();
+    private ScriptedCollectionSetBuilder getScriptedCollectionSetBuilder() throws Exception {
+        ScriptedCollectionSetBuilder builder = scriptedCollectionSetBuilder;
         if (builder == null) {
-            throw new Exception(String.format("Error compiling script '%s'. See logs for details.", script));
+            synchronized (this) {
+                if (scriptedCollectionSetBuilder == null) {
+                    try {
+                        if (bundleContext != null) {
+                            scriptedCollectionSetBuilder = new ScriptedCollectionSetBuilder(new File(script), bundleContext, scriptPoolSize, metrics);
+                        } else {
+                            scriptedCollectionSetBuilder = new ScriptedCollectionSetBuilder(new File(script), new ScriptEngineManager(), scriptPoolSize, metrics);
+                        }
+                    } catch (Exception e) {
+                        LOG.error("Failed to create builder for script '{}'.", script, e);
+                        throw new Exception(String.format("Error compiling script '%s'. See logs for details.", script));
+                    }
+                }
+                builder = scriptedCollectionSetBuilder;
+            }
         }
-
-        final CollectionSet collectionSet = builder.build(agent, jtiMsg);
-        return Optional.of(new CollectionSetWithAgent(agent, collectionSet));
+        return builder;
     }
 
     public String getScript() {
@@ -175,6 +219,26 @@ public class JtiGpbAdapter extends AbstractPersistingAdapter {
         this.script = script;
     }
 
+    public int getScriptPoolSize() {
+        return scriptPoolSize;
+    }
+
+    public void setScriptPoolSize(int scriptPoolSize) {
+        this.scriptPoolSize = scriptPoolSize;
+    }
+
+    public long getAgentCacheExpirationMs() {
+        return agentCacheExpirationMs;
+    }
+
+    public void setAgentCacheExpirationMs(long agentCacheExpirationMs) {
+        this.agentCacheExpirationMs = agentCacheExpirationMs;
+    }
+
+    public void setMetrics(MetricRegistry metrics) {
+        this.metrics = metrics;
+    }
+
     public void setCollectionAgentFactory(CollectionAgentFactory collectionAgentFactory) {
         this.collectionAgentFactory = collectionAgentFactory;
     }
@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.net.InetAddress;
+import java.util.Objects;
+
+/**
+ * A single flow record, as decoded from a NetFlow v5, NetFlow v9 or IPFIX packet.
+ *
+ * Counters are stored as they were exported, without accounting for sampling.
+ */
+public class Flow {
+
+    private InetAddress exporterAddress;
+
+    private int version;
+
+    private InetAddress srcAddress;
+
+    private InetAddress dstAddress;
+
+    private int srcPort;
+
+    private int dstPort;
+
+    private int protocol;
+
+    private int tos;
+
+    private int tcpFlags;
+
+    private long bytes;
+
+    private long packets;
+
+    private long firstSwitched;
+
+    private long lastSwitched;
+
+    private int inputIfIndex;
+
+    private int outputIfIndex;
+
+    private long srcAs;
+
+    private long dstAs;
+
+    private int samplingInterval = 1;
+
+    private Integer exporterNodeId;
+
+    private Integer srcNodeId;
+
+    private Integer dstNodeId;
+
+    public InetAddress getExporterAddress() {
+        return exporterAddress;
+    }
+
+    public void setExporterAddress(InetAddress exporterAddress) {
+        this.exporterAddress = exporterAddress;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public InetAddress getSrcAddress() {
+        return srcAddress;
+    }
+
+    public void setSrcAddress(InetAddress srcAddress) {
+        this.srcAddress = srcAddress;
+    }
+
+    public InetAddress getDstAddress() {
+        return dstAddress;
+    }
+
+    public void setDstAddress(InetAddress dstAddress) {
+        this.dstAddress = dstAddress;
+    }
+
+    public int getSrcPort() {
+        return srcPort;
+    }
+
+    public void setSrcPort(int srcPort) {
+        this.srcPort = srcPort;
+    }
+
+    public int getDstPort() {
+        return dstPort;
+    }
+
+    public void setDstPort(int dstPort) {
+        this.dstPort = dstPort;
+    }
+
+    public int getProtocol() {
+        return protocol;
+    }
+
+    public void setProtocol(int protocol) {
+        this.protocol = protocol;
+    }
+
+    public int getTos() {
+        return tos;
+    }
+
+    public void setTos(int tos) {
+        this.tos = tos;
+    }
+
+    public int getTcpFlags() {
+        return tcpFlags;
+    }
+
+    public void setTcpFlags(int tcpFlags) {
+        this.tcpFlags = tcpFlags;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    public long getPackets() {
+        return packets;
+    }
+
+    public void setPackets(long packets) {
+        this.packets = packets;
+    }
+
+    /**
+     * @return the time at which the first packet of the flow was seen, in milliseconds since the epoch
+     */
+    public long getFirstSwitched() {
+        return firstSwitched;
+    }
+
+    public void setFirstSwitched(long firstSwitched) {
+        this.firstSwitched = firstSwitched;
+    }
+
+    /**
+     * @return the time at which the last packet of the flow was seen, in milliseconds since the epoch
+     */
+    public long getLastSwitched() {
+        return lastSwitched;
+    }
+
+    public void setLastSwitched(long lastSwitched) {
+        this.lastSwitched = lastSwitched;
+    }
+
+    public int getInputIfIndex() {
+        return inputIfIndex;
+    }
+
+    public void setInputIfIndex(int inputIfIndex) {
+        this.inputIfIndex = inputIfIndex;
+    }
+
+    public int getOutputIfIndex() {
+        return outputIfIndex;
+    }
+
+    public void setOutputIfIndex(int outputIfIndex) {
+        this.outputIfIndex = outputIfIndex;
+    }
+
+    public long getSrcAs() {
+        return srcAs;
+    }
+
+    public void setSrcAs(long srcAs) {
+        this.srcAs = srcAs;
+    }
+
+    public long getDstAs() {
+        return dstAs;
+    }
+
+    public void setDstAs(long dstAs) {
+        this.dstAs = dstAs;
+    }
+
+    public int getSamplingInterval() {
+        return samplingInterval;
+    }
+
+    public void setSamplingInterval(int samplingInterval) {
+        this.samplingInterval = samplingInterval;
+    }
+
+    /**
+     * @return the id of the node that exported the flow, or <code>null</code> if unknown
+     */
+    public Integer getExporterNodeId() {
+        return exporterNodeId;
+    }
+
+    public void setExporterNodeId(Integer exporterNodeId) {
+        this.exporterNodeId = exporterNodeId;
+    }
+
+    /**
+     * @return the id of the node with the source address, or <code>null</code> if unknown
+     */
+    public Integer getSrcNodeId() {
+        return srcNodeId;
+    }
+
+    public void setSrcNodeId(Integer srcNodeId) {
+        this.srcNodeId = srcNodeId;
+    }
+
+    /**
+     * @return the id of the node with the destination address, or <code>null</code> if unknown
+     */
+    public Integer getDstNodeId() {
+        return dstNodeId;
+    }
+
+    public void setDstNodeId(Integer dstNodeId) {
+        this.dstNodeId = dstNodeId;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        final Flow other = (Flow) obj;
+        return Objects.equals(exporterAddress, other.exporterAddress)
+                && version == other.version
+                && Objects.equals(srcAddress, other.srcAddress)
+                && Objects.equals(dstAddress, other.dstAddress)
+                && srcPort == other.srcPort
+                && dstPort == other.dstPort
+                && protocol == other.protocol
+                && tos == other.tos
+                && tcpFlags == other.tcpFlags
+                && bytes == other.bytes
+                && packets == other.packets
+                && firstSwitched == other.firstSwitched
+                && lastSwitched == other.lastSwitched
+                && inputIfIndex == other.inputIfIndex
+                && outputIfIndex == other.outputIfIndex
+                && srcAs == other.srcAs
+                && dstAs == other.dstAs
+                && samplingInterval == other.samplingInterval
+                && Objects.equals(exporterNodeId, other.exporterNodeId)
+                && Objects.equals(srcNodeId, other.srcNodeId)
+                && Objects.equals(dstNodeId, other.dstNodeId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(exporterAddress, version, srcAddress, dstAddress, srcPort, dstPort, protocol,
+                bytes, packets, firstSwitched, lastSwitched, inputIfIndex, outputIfIndex);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Flow[exporter=%s, version=%d, %s:%d -> %s:%d, protocol=%d, bytes=%d, packets=%d, input=%d, output=%d]",
+                exporterAddress, version, srcAddress, srcPort, dstAddress, dstPort, protocol, bytes, packets,
+                inputIfIndex, outputIfIndex);
+    }
+}
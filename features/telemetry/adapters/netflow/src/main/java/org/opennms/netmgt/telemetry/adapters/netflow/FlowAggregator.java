@@ -0,0 +1,397 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates flows into fixed-size time buckets, and tracks the traffic of the
+ * conversations, applications, interfaces and hosts seen in each bucket.
+ *
+ * Flows are assigned to the bucket in which their last packet was seen. Only the most
+ * recent buckets are retained, and flows that are older than all of them are ignored.
+ *
+ * Each bucket tracks at most <code>maxKeysPerBucket</code> keys of each kind, keeping
+ * those with the most traffic (see {@link TopKeys}), so the memory used does not grow
+ * with the number of distinct hosts and ports seen by the exporters.
+ *
+ * Counters are scaled by the sampling interval of the flows.
+ */
+public class FlowAggregator {
+
+    public static final int DEFAULT_MAX_KEYS_PER_BUCKET = 1000;
+
+    /**
+     * A pair of hosts exchanging traffic over a given protocol, regardless of the direction.
+     */
+    public static class Conversation {
+        private final int protocol;
+        private final InetAddress lowerAddress;
+        private final InetAddress upperAddress;
+
+        public Conversation(int protocol, InetAddress address, InetAddress otherAddress) {
+            this.protocol = protocol;
+            if (compare(address, otherAddress) <= 0) {
+                this.lowerAddress = address;
+                this.upperAddress = otherAddress;
+            } else {
+                this.lowerAddress = otherAddress;
+                this.upperAddress = address;
+            }
+        }
+
+        public int getProtocol() {
+            return protocol;
+        }
+
+        public InetAddress getLowerAddress() {
+            return lowerAddress;
+        }
+
+        public InetAddress getUpperAddress() {
+            return upperAddress;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null || getClass() != obj.getClass()) return false;
+            final Conversation other = (Conversation) obj;
+            return protocol == other.protocol
+                    && Objects.equals(lowerAddress, other.lowerAddress)
+                    && Objects.equals(upperAddress, other.upperAddress);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(protocol, lowerAddress, upperAddress);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s <-> %s (%d)", lowerAddress, upperAddress, protocol);
+        }
+    }
+
+    /**
+     * A protocol and the service port, which is assumed to be the lowest of the two ports.
+     */
+    public static class Application {
+        private final int protocol;
+        private final int port;
+
+        public Application(int protocol, int port) {
+            this.protocol = protocol;
+            this.port = port;
+        }
+
+        public int getProtocol() {
+            return protocol;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null || getClass() != obj.getClass()) return false;
+            final Application other = (Application) obj;
+            return protocol == other.protocol && port == other.port;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(protocol, port);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d/%d", protocol, port);
+        }
+    }
+
+    /**
+     * An interface of the exporter, identified by its node when known, and by its address otherwise.
+     */
+    public static class Interface {
+        private final Integer nodeId;
+        private final InetAddress exporterAddress;
+        private final int ifIndex;
+
+        public Interface(Integer nodeId, InetAddress exporterAddress, int ifIndex) {
+            this.nodeId = nodeId;
+            // The address is only used to tell exporters apart when the node is unknown
+            this.exporterAddress = nodeId != null ? null : exporterAddress;
+            this.ifIndex = ifIndex;
+        }
+
+        public Integer getNodeId() {
+            return nodeId;
+        }
+
+        public InetAddress getExporterAddress() {
+            return exporterAddress;
+        }
+
+        public int getIfIndex() {
+            return ifIndex;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null || getClass() != obj.getClass()) return false;
+            final Interface other = (Interface) obj;
+            return ifIndex == other.ifIndex
+                    && Objects.equals(nodeId, other.nodeId)
+                    && Objects.equals(exporterAddress, other.exporterAddress);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(nodeId, exporterAddress, ifIndex);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s:%d", nodeId != null ? "node" + nodeId : exporterAddress, ifIndex);
+        }
+    }
+
+    /**
+     * An end of the flows, along with the node that has this address, if known.
+     */
+    public static class Host {
+        private final InetAddress address;
+        private final Integer nodeId;
+
+        public Host(InetAddress address, Integer nodeId) {
+            this.address = address;
+            this.nodeId = nodeId;
+        }
+
+        public InetAddress getAddress() {
+            return address;
+        }
+
+        public Integer getNodeId() {
+            return nodeId;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null || getClass() != obj.getClass()) return false;
+            final Host other = (Host) obj;
+            return Objects.equals(address, other.address)
+                    && Objects.equals(nodeId, other.nodeId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(address, nodeId);
+        }
+
+        @Override
+        public String toString() {
+            return nodeId != null ? String.format("%s (node%d)", address, nodeId) : String.valueOf(address);
+        }
+    }
+
+    /**
+     * The traffic of a key. Since only the heaviest keys are tracked, the counters may include
+     * the traffic of keys that were evicted before it, which is bounded by {@link #getError()}.
+     */
+    public static class Counters {
+        private final long bytes;
+        private final long packets;
+        private final long error;
+
+        public Counters(long bytes, long packets, long error) {
+            this.bytes = bytes;
+            this.packets = packets;
+            this.error = error;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getPackets() {
+            return packets;
+        }
+
+        /**
+         * @return the maximum number of bytes that were over-counted
+         */
+        public long getError() {
+            return error;
+        }
+    }
+
+    public static class Bucket {
+        private final long start;
+        private final TopKeys<Conversation> conversations;
+        private final TopKeys<Application> applications;
+        private final TopKeys<Interface> interfaces;
+        private final TopKeys<Host> hosts;
+        private final LongAdder numFlows = new LongAdder();
+
+        private Bucket(long start, int maxKeys) {
+            this.start = start;
+            conversations = new TopKeys<>(maxKeys);
+            applications = new TopKeys<>(maxKeys);
+            interfaces = new TopKeys<>(maxKeys);
+            hosts = new TopKeys<>(maxKeys);
+        }
+
+        private void add(Flow flow) {
+            final long bytes = flow.getBytes() * flow.getSamplingInterval();
+            final long packets = flow.getPackets() * flow.getSamplingInterval();
+            numFlows.increment();
+            conversations.add(new Conversation(flow.getProtocol(), flow.getSrcAddress(), flow.getDstAddress()), bytes, packets);
+            applications.add(new Application(flow.getProtocol(), Math.min(flow.getSrcPort(), flow.getDstPort())), bytes, packets);
+            // Account for the traffic on both the ingress and the egress interfaces
+            if (flow.getInputIfIndex() > 0) {
+                interfaces.add(new Interface(flow.getExporterNodeId(), flow.getExporterAddress(), flow.getInputIfIndex()), bytes, packets);
+            }
+            if (flow.getOutputIfIndex() > 0) {
+                interfaces.add(new Interface(flow.getExporterNodeId(), flow.getExporterAddress(), flow.getOutputIfIndex()), bytes, packets);
+            }
+            // And for both of the ends
+            hosts.add(new Host(flow.getSrcAddress(), flow.getSrcNodeId()), bytes, packets);
+            hosts.add(new Host(flow.getDstAddress(), flow.getDstNodeId()), bytes, packets);
+        }
+
+        /**
+         * @return the start of the bucket, in milliseconds since the epoch
+         */
+        public long getStart() {
+            return start;
+        }
+
+        public long getNumFlows() {
+            return numFlows.sum();
+        }
+
+        public List<Map.Entry<Conversation, Counters>> getTopConversations(int n) {
+            return conversations.top(n);
+        }
+
+        public List<Map.Entry<Application, Counters>> getTopApplications(int n) {
+            return applications.top(n);
+        }
+
+        public List<Map.Entry<Interface, Counters>> getTopInterfaces(int n) {
+            return interfaces.top(n);
+        }
+
+        public List<Map.Entry<Host, Counters>> getTopHosts(int n) {
+            return hosts.top(n);
+        }
+    }
+
+    private final long bucketSizeMs;
+
+    private final int numBuckets;
+
+    private final int maxKeysPerBucket;
+
+    private final ConcurrentNavigableMap<Long, Bucket> buckets = new ConcurrentSkipListMap<>();
+
+    public FlowAggregator(long bucketSizeMs, int numBuckets) {
+        this(bucketSizeMs, numBuckets, DEFAULT_MAX_KEYS_PER_BUCKET);
+    }
+
+    public FlowAggregator(long bucketSizeMs, int numBuckets, int maxKeysPerBucket) {
+        if (bucketSizeMs < 1) {
+            throw new IllegalArgumentException("bucketSizeMs must be strictly positive");
+        }
+        if (numBuckets < 1) {
+            throw new IllegalArgumentException("numBuckets must be strictly positive");
+        }
+        if (maxKeysPerBucket < 1) {
+            throw new IllegalArgumentException("maxKeysPerBucket must be strictly positive");
+        }
+        this.bucketSizeMs = bucketSizeMs;
+        this.numBuckets = numBuckets;
+        this.maxKeysPerBucket = maxKeysPerBucket;
+    }
+
+    public void aggregate(Flow flow) {
+        final long start = flow.getLastSwitched() - Math.floorMod(flow.getLastSwitched(), bucketSizeMs);
+        Bucket bucket = buckets.get(start);
+        if (bucket == null) {
+            if (buckets.size() >= numBuckets && start < buckets.firstKey()) {
+                // Older than anything we retain
+                return;
+            }
+            bucket = buckets.computeIfAbsent(start, k -> new Bucket(k, maxKeysPerBucket));
+            while (buckets.size() > numBuckets) {
+                buckets.pollFirstEntry();
+            }
+        }
+        bucket.add(flow);
+    }
+
+    /**
+     * @return the retained buckets, from the oldest to the most recent
+     */
+    public List<Bucket> getBuckets() {
+        return new ArrayList<>(buckets.values());
+    }
+
+    public long getBucketSizeMs() {
+        return bucketSizeMs;
+    }
+
+    private static int compare(InetAddress a, InetAddress b) {
+        final byte[] x = a != null ? a.getAddress() : new byte[0];
+        final byte[] y = b != null ? b.getAddress() : new byte[0];
+        if (x.length != y.length) {
+            return Integer.compare(x.length, y.length);
+        }
+        for (int i = 0; i < x.length; i++) {
+            final int c = Integer.compare(x[i] & 0xFF, y[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.opennms.netmgt.dao.api.InterfaceToNodeCache;
+import org.opennms.netmgt.telemetry.adapters.api.Adapter;
+import org.opennms.netmgt.telemetry.adapters.api.TelemetryMessage;
+import org.opennms.netmgt.telemetry.adapters.api.TelemetryMessageLog;
+import org.opennms.netmgt.telemetry.config.api.Protocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.net.InetAddresses;
+
+import io.netty.buffer.Unpooled;
+
+/**
+ * An adapter for handling NetFlow v5, NetFlow v9 and IPFIX packets.
+ *
+ * The packets are forwarded as-is by the listeners, and are decoded here so that the
+ * templates of each exporter are tracked in a single place. The decoded flows are
+ * associated with the nodes of the exporter, the source and the destination, and
+ * aggregated by the {@link FlowAggregator}.
+ */
+public class NetflowAdapter implements Adapter {
+    private static final Logger LOG = LoggerFactory.getLogger(NetflowAdapter.class);
+
+    private InterfaceToNodeCache interfaceToNodeCache;
+
+    private Protocol protocol;
+
+    private long bucketSizeMs = 60 * 1000;
+
+    private int numBuckets = 60;
+
+    private int maxKeysPerBucket = FlowAggregator.DEFAULT_MAX_KEYS_PER_BUCKET;
+
+    private final TemplateCache templateCache = new TemplateCache();
+
+    private final NetflowParser parser = new NetflowParser(templateCache);
+
+    private volatile FlowAggregator aggregator;
+
+    @Override
+    public void setProtocol(Protocol protocol) {
+        this.protocol = protocol;
+    }
+
+    @Override
+    public void handleMessageLog(TelemetryMessageLog messageLog) {
+        final InetAddress exporter = InetAddresses.forString(messageLog.getSourceAddress());
+        final Integer exporterNodeId = getNodeId(messageLog.getLocation(), exporter);
+        final FlowAggregator aggregator = getAggregator();
+        // The same hosts show up in many of the flows of a log, only look them up once
+        final Map<InetAddress, Optional<Integer>> nodeIds = new HashMap<>();
+        for (TelemetryMessage message : messageLog.getMessageList()) {
+            final List<Flow> flows;
+            try {
+                // Wrap the bytes without copying them
+                flows = parser.parse(exporter, Unpooled.wrappedBuffer(message.getByteArray()));
+            } catch (InvalidPacketException|RuntimeException e) {
+                LOG.warn("Failed to decode packet from {} for protocol {}.", exporter,
+                        protocol != null ? protocol.getName() : null, e);
+                continue;
+            }
+            for (Flow flow : flows) {
+                flow.setExporterNodeId(exporterNodeId);
+                flow.setSrcNodeId(getNodeId(nodeIds, messageLog.getLocation(), flow.getSrcAddress()));
+                flow.setDstNodeId(getNodeId(nodeIds, messageLog.getLocation(), flow.getDstAddress()));
+                aggregator.aggregate(flow);
+            }
+        }
+    }
+
+    private Integer getNodeId(String location, InetAddress address) {
+        if (interfaceToNodeCache == null) {
+            return null;
+        }
+        final Optional<Integer> nodeId = interfaceToNodeCache.getFirstNodeId(location, address);
+        return nodeId.orElse(null);
+    }
+
+    private Integer getNodeId(Map<InetAddress, Optional<Integer>> nodeIds, String location, InetAddress address) {
+        if (address == null) {
+            return null;
+        }
+        return nodeIds.computeIfAbsent(address, a -> Optional.ofNullable(getNodeId(location, a))).orElse(null);
+    }
+
+    public FlowAggregator getAggregator() {
+        FlowAggregator result = aggregator;
+        if (result == null) {
+            synchronized (this) {
+                result = aggregator;
+                if (result == null) {
+                    result = aggregator = new FlowAggregator(bucketSizeMs, numBuckets, maxKeysPerBucket);
+                }
+            }
+        }
+        return result;
+    }
+
+    public NetflowParser getParser() {
+        return parser;
+    }
+
+    public InterfaceToNodeCache getInterfaceToNodeCache() {
+        return interfaceToNodeCache;
+    }
+
+    public void setInterfaceToNodeCache(InterfaceToNodeCache interfaceToNodeCache) {
+        this.interfaceToNodeCache = interfaceToNodeCache;
+    }
+
+    public long getBucketSizeMs() {
+        return bucketSizeMs;
+    }
+
+    public void setBucketSizeMs(long bucketSizeMs) {
+        this.bucketSizeMs = bucketSizeMs;
+    }
+
+    public int getNumBuckets() {
+        return numBuckets;
+    }
+
+    public void setNumBuckets(int numBuckets) {
+        this.numBuckets = numBuckets;
+    }
+
+    public int getMaxKeysPerBucket() {
+        return maxKeysPerBucket;
+    }
+
+    public void setMaxKeysPerBucket(int maxKeysPerBucket) {
+        this.maxKeysPerBucket = maxKeysPerBucket;
+    }
+
+    public Protocol getProtocol() {
+        return protocol;
+    }
+}
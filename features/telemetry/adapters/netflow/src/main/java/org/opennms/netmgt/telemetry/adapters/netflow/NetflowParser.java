@@ -0,0 +1,437 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Decodes NetFlow v5, NetFlow v9 and IPFIX packets into {@link Flow}s.
+ *
+ * Packets are read in place from the given {@link ByteBuf}, using slices for the
+ * flow sets, so that no copies of the packet are made while decoding.
+ *
+ * The templates announced in NetFlow v9 and IPFIX packets are stored in the
+ * {@link TemplateCache}. Data records that reference a template that was not yet
+ * announced are skipped, and counted in {@link #getNumRecordsWithoutTemplate()}.
+ *
+ * Instances are thread-safe as long as the template cache is.
+ */
+public class NetflowParser {
+
+    public static final int VERSION_5 = 5;
+    public static final int VERSION_9 = 9;
+    public static final int VERSION_IPFIX = 10;
+
+    private static final int V5_HEADER_LENGTH = 24;
+    private static final int V5_RECORD_LENGTH = 48;
+    private static final int V9_HEADER_LENGTH = 20;
+    private static final int IPFIX_HEADER_LENGTH = 16;
+    private static final int SET_HEADER_LENGTH = 4;
+
+    private static final int V9_TEMPLATE_SET_ID = 0;
+    private static final int V9_OPTIONS_TEMPLATE_SET_ID = 1;
+    private static final int IPFIX_TEMPLATE_SET_ID = 2;
+    private static final int IPFIX_OPTIONS_TEMPLATE_SET_ID = 3;
+    private static final int MIN_DATA_SET_ID = 256;
+
+    // Information elements shared by NetFlow v9 and IPFIX
+    private static final int IN_BYTES = 1;
+    private static final int IN_PKTS = 2;
+    private static final int PROTOCOL = 4;
+    private static final int TOS = 5;
+    private static final int TCP_FLAGS = 6;
+    private static final int L4_SRC_PORT = 7;
+    private static final int IPV4_SRC_ADDR = 8;
+    private static final int INPUT_SNMP = 10;
+    private static final int L4_DST_PORT = 11;
+    private static final int IPV4_DST_ADDR = 12;
+    private static final int OUTPUT_SNMP = 14;
+    private static final int SRC_AS = 16;
+    private static final int DST_AS = 17;
+    private static final int LAST_SWITCHED = 21;
+    private static final int FIRST_SWITCHED = 22;
+    private static final int IPV6_SRC_ADDR = 27;
+    private static final int IPV6_DST_ADDR = 28;
+    private static final int SAMPLING_INTERVAL = 34;
+    private static final int OCTET_TOTAL_COUNT = 85;
+    private static final int PACKET_TOTAL_COUNT = 86;
+    private static final int FLOW_START_SECONDS = 150;
+    private static final int FLOW_END_SECONDS = 151;
+    private static final int FLOW_START_MILLISECONDS = 152;
+    private static final int FLOW_END_MILLISECONDS = 153;
+
+    private final TemplateCache templateCache;
+
+    private final LongAdder numRecordsWithoutTemplate = new LongAdder();
+
+    public NetflowParser(TemplateCache templateCache) {
+        this.templateCache = Objects.requireNonNull(templateCache);
+    }
+
+    /**
+     * Decodes the flows contained in the given packet.
+     *
+     * @param exporter address of the device that sent the packet
+     * @param buffer the contents of the packet, which are consumed
+     * @return the decoded flows, which may be empty if the packet only contained templates
+     * @throws InvalidPacketException if the packet is truncated, or uses an unsupported version
+     */
+    public List<Flow> parse(InetAddress exporter, ByteBuf buffer) throws InvalidPacketException {
+        checkReadable(buffer, 2);
+        final int version = buffer.getUnsignedShort(buffer.readerIndex());
+        switch (version) {
+        case VERSION_5:
+            return parseV5(exporter, buffer);
+        case VERSION_9:
+            return parseV9(exporter, buffer);
+        case VERSION_IPFIX:
+            return parseIpfix(exporter, buffer);
+        default:
+            throw new InvalidPacketException("Unsupported version: " + version);
+        }
+    }
+
+    private List<Flow> parseV5(InetAddress exporter, ByteBuf buffer) throws InvalidPacketException {
+        checkReadable(buffer, V5_HEADER_LENGTH);
+        buffer.skipBytes(2); // version
+        final int count = buffer.readUnsignedShort();
+        final long sysUptime = buffer.readUnsignedInt();
+        final long unixSecs = buffer.readUnsignedInt();
+        final long unixNsecs = buffer.readUnsignedInt();
+        buffer.skipBytes(6); // flow sequence, engine type and engine id
+        final int samplingInterval = buffer.readUnsignedShort() & 0x3FFF;
+        checkReadable(buffer, count * V5_RECORD_LENGTH);
+
+        final long bootTime = unixSecs * 1000 + unixNsecs / 1000000 - sysUptime;
+        final List<Flow> flows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final Flow flow = newFlow(exporter, VERSION_5);
+            flow.setSrcAddress(readAddress(buffer, 4));
+            flow.setDstAddress(readAddress(buffer, 4));
+            buffer.skipBytes(4); // next hop
+            flow.setInputIfIndex(buffer.readUnsignedShort());
+            flow.setOutputIfIndex(buffer.readUnsignedShort());
+            flow.setPackets(buffer.readUnsignedInt());
+            flow.setBytes(buffer.readUnsignedInt());
+            flow.setFirstSwitched(bootTime + buffer.readUnsignedInt());
+            flow.setLastSwitched(bootTime + buffer.readUnsignedInt());
+            flow.setSrcPort(buffer.readUnsignedShort());
+            flow.setDstPort(buffer.readUnsignedShort());
+            buffer.skipBytes(1); // padding
+            flow.setTcpFlags(buffer.readUnsignedByte());
+            flow.setProtocol(buffer.readUnsignedByte());
+            flow.setTos(buffer.readUnsignedByte());
+            flow.setSrcAs(buffer.readUnsignedShort());
+            flow.setDstAs(buffer.readUnsignedShort());
+            buffer.skipBytes(4); // masks and padding
+            if (samplingInterval > 1) {
+                flow.setSamplingInterval(samplingInterval);
+            }
+            flows.add(flow);
+        }
+        return flows;
+    }
+
+    private List<Flow> parseV9(InetAddress exporter, ByteBuf buffer) throws InvalidPacketException {
+        checkReadable(buffer, V9_HEADER_LENGTH);
+        buffer.skipBytes(4); // version and count
+        final long sysUptime = buffer.readUnsignedInt();
+        final long unixSecs = buffer.readUnsignedInt();
+        buffer.skipBytes(4); // sequence
+        final long sourceId = buffer.readUnsignedInt();
+
+        final long exportTime = unixSecs * 1000;
+        final long bootTime = exportTime - sysUptime;
+        List<Flow> flows = Collections.emptyList();
+        while (buffer.readableBytes() >= SET_HEADER_LENGTH) {
+            final int setId = buffer.readUnsignedShort();
+            final ByteBuf set = readSet(buffer);
+            if (setId == V9_TEMPLATE_SET_ID) {
+                parseTemplates(exporter, VERSION_9, sourceId, setId, set);
+            } else if (setId >= MIN_DATA_SET_ID) {
+                flows = parseData(exporter, VERSION_9, sourceId, setId, set, exportTime, bootTime, flows);
+            }
+            // Options templates and records are not used
+        }
+        return flows;
+    }
+
+    private List<Flow> parseIpfix(InetAddress exporter, ByteBuf buffer) throws InvalidPacketException {
+        checkReadable(buffer, IPFIX_HEADER_LENGTH);
+        buffer.skipBytes(2); // version
+        final int length = buffer.readUnsignedShort();
+        final long exportTime = buffer.readUnsignedInt() * 1000;
+        buffer.skipBytes(4); // sequence
+        final long observationDomainId = buffer.readUnsignedInt();
+        if (length < IPFIX_HEADER_LENGTH) {
+            throw new InvalidPacketException("Invalid message length: " + length);
+        }
+        checkReadable(buffer, length - IPFIX_HEADER_LENGTH);
+        final ByteBuf message = buffer.readSlice(length - IPFIX_HEADER_LENGTH);
+
+        List<Flow> flows = Collections.emptyList();
+        while (message.readableBytes() >= SET_HEADER_LENGTH) {
+            final int setId = message.readUnsignedShort();
+            final ByteBuf set = readSet(message);
+            if (setId == IPFIX_TEMPLATE_SET_ID) {
+                parseTemplates(exporter, VERSION_IPFIX, observationDomainId, setId, set);
+            } else if (setId == IPFIX_OPTIONS_TEMPLATE_SET_ID) {
+                // Options templates and records are not used
+                continue;
+            } else if (setId >= MIN_DATA_SET_ID) {
+                // The system init time is unknown, so the uptime based timestamps cannot be used
+                flows = parseData(exporter, VERSION_IPFIX, observationDomainId, setId, set, exportTime, -1, flows);
+            }
+        }
+        return flows;
+    }
+
+    private static ByteBuf readSet(ByteBuf buffer) throws InvalidPacketException {
+        final int length = buffer.readUnsignedShort();
+        if (length < SET_HEADER_LENGTH) {
+            throw new InvalidPacketException("Invalid set length: " + length);
+        }
+        checkReadable(buffer, length - SET_HEADER_LENGTH);
+        return buffer.readSlice(length - SET_HEADER_LENGTH);
+    }
+
+    private void parseTemplates(InetAddress exporter, int version, long domainId, int setId, ByteBuf set) throws InvalidPacketException {
+        while (set.readableBytes() >= 4) {
+            final int templateId = set.readUnsignedShort();
+            final int fieldCount = set.readUnsignedShort();
+            if (fieldCount == 0) {
+                if (templateId == setId) {
+                    // IPFIX withdrawal of all the templates in the domain
+                    templateCache.removeAll(exporter, version, domainId);
+                } else if (templateId >= MIN_DATA_SET_ID) {
+                    // IPFIX withdrawal of a single template
+                    templateCache.remove(exporter, version, domainId, templateId);
+                }
+                // Otherwise, this is padding
+                continue;
+            }
+            if (templateId < MIN_DATA_SET_ID) {
+                throw new InvalidPacketException("Invalid template id: " + templateId);
+            }
+
+            final List<Template.Field> fields = new ArrayList<>(fieldCount);
+            for (int i = 0; i < fieldCount; i++) {
+                checkReadable(set, 4);
+                int type = set.readUnsignedShort();
+                final int length = set.readUnsignedShort();
+                long enterpriseNumber = 0;
+                if (version == VERSION_IPFIX && (type & 0x8000) != 0) {
+                    checkReadable(set, 4);
+                    type &= 0x7FFF;
+                    enterpriseNumber = set.readUnsignedInt();
+                }
+                fields.add(new Template.Field(type, length, enterpriseNumber));
+            }
+            templateCache.put(exporter, version, domainId, new Template(templateId, fields));
+        }
+    }
+
+    private List<Flow> parseData(InetAddress exporter, int version, long domainId, int setId, ByteBuf set,
+            long exportTime, long bootTime, List<Flow> flows) throws InvalidPacketException {
+        final Template template = templateCache.get(exporter, version, domainId, setId);
+        if (template == null) {
+            numRecordsWithoutTemplate.increment();
+            return flows;
+        }
+        if (template.getRecordLength() < 1) {
+            return flows;
+        }
+
+        final List<Flow> result = flows.isEmpty() ? new ArrayList<>(set.readableBytes() / template.getRecordLength()) : flows;
+        // Anything shorter than a record is padding
+        while (set.readableBytes() >= template.getRecordLength()) {
+            final Flow flow = newFlow(exporter, version);
+            for (Template.Field field : template.getFields()) {
+                int length = field.getLength();
+                if (length == Template.VARIABLE_LENGTH) {
+                    checkReadable(set, 1);
+                    length = set.readUnsignedByte();
+                    if (length == 255) {
+                        checkReadable(set, 2);
+                        length = set.readUnsignedShort();
+                    }
+                }
+                checkReadable(set, length);
+                if (field.getEnterpriseNumber() != 0) {
+                    set.skipBytes(length);
+                } else {
+                    readField(flow, field.getType(), length, set, bootTime);
+                }
+            }
+            if (flow.getLastSwitched() == 0) {
+                flow.setLastSwitched(exportTime);
+            }
+            if (flow.getFirstSwitched() == 0) {
+                flow.setFirstSwitched(flow.getLastSwitched());
+            }
+            result.add(flow);
+        }
+        return result;
+    }
+
+    private static void readField(Flow flow, int type, int length, ByteBuf set, long bootTime) throws InvalidPacketException {
+        switch (type) {
+        case IN_BYTES:
+        case OCTET_TOTAL_COUNT:
+            flow.setBytes(readUnsigned(set, length));
+            break;
+        case IN_PKTS:
+        case PACKET_TOTAL_COUNT:
+            flow.setPackets(readUnsigned(set, length));
+            break;
+        case PROTOCOL:
+            flow.setProtocol((int) readUnsigned(set, length));
+            break;
+        case TOS:
+            flow.setTos((int) readUnsigned(set, length));
+            break;
+        case TCP_FLAGS:
+            flow.setTcpFlags((int) readUnsigned(set, length));
+            break;
+        case L4_SRC_PORT:
+            flow.setSrcPort((int) readUnsigned(set, length));
+            break;
+        case L4_DST_PORT:
+            flow.setDstPort((int) readUnsigned(set, length));
+            break;
+        case IPV4_SRC_ADDR:
+        case IPV6_SRC_ADDR:
+            flow.setSrcAddress(readAddress(set, length));
+            break;
+        case IPV4_DST_ADDR:
+        case IPV6_DST_ADDR:
+            flow.setDstAddress(readAddress(set, length));
+            break;
+        case INPUT_SNMP:
+            flow.setInputIfIndex((int) readUnsigned(set, length));
+            break;
+        case OUTPUT_SNMP:
+            flow.setOutputIfIndex((int) readUnsigned(set, length));
+            break;
+        case SRC_AS:
+            flow.setSrcAs(readUnsigned(set, length));
+            break;
+        case DST_AS:
+            flow.setDstAs(readUnsigned(set, length));
+            break;
+        case FIRST_SWITCHED:
+            final long firstUptime = readUnsigned(set, length);
+            if (bootTime >= 0) {
+                flow.setFirstSwitched(bootTime + firstUptime);
+            }
+            break;
+        case LAST_SWITCHED:
+            final long lastUptime = readUnsigned(set, length);
+            if (bootTime >= 0) {
+                flow.setLastSwitched(bootTime + lastUptime);
+            }
+            break;
+        case FLOW_START_SECONDS:
+            flow.setFirstSwitched(readUnsigned(set, length) * 1000);
+            break;
+        case FLOW_END_SECONDS:
+            flow.setLastSwitched(readUnsigned(set, length) * 1000);
+            break;
+        case FLOW_START_MILLISECONDS:
+            flow.setFirstSwitched(readUnsigned(set, length));
+            break;
+        case FLOW_END_MILLISECONDS:
+            flow.setLastSwitched(readUnsigned(set, length));
+            break;
+        case SAMPLING_INTERVAL:
+            final long samplingInterval = readUnsigned(set, length);
+            if (samplingInterval > 1) {
+                flow.setSamplingInterval((int) samplingInterval);
+            }
+            break;
+        default:
+            set.skipBytes(length);
+        }
+    }
+
+    /**
+     * Reads an unsigned integer, which may use reduced-size encoding.
+     */
+    private static long readUnsigned(ByteBuf buffer, int length) {
+        if (length > 8) {
+            buffer.skipBytes(length);
+            return 0;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | buffer.readUnsignedByte();
+        }
+        return value;
+    }
+
+    private static InetAddress readAddress(ByteBuf buffer, int length) throws InvalidPacketException {
+        if (length != 4 && length != 16) {
+            throw new InvalidPacketException("Invalid address length: " + length);
+        }
+        final byte[] address = new byte[length];
+        buffer.readBytes(address);
+        try {
+            return InetAddress.getByAddress(address);
+        } catch (UnknownHostException e) {
+            // Only thrown for invalid lengths
+            throw new InvalidPacketException(e.getMessage());
+        }
+    }
+
+    private static void checkReadable(ByteBuf buffer, int length) throws InvalidPacketException {
+        if (buffer.readableBytes() < length) {
+            throw new InvalidPacketException(String.format("Truncated packet: expected %d bytes, but only %d are available.",
+                    length, buffer.readableBytes()));
+        }
+    }
+
+    private static Flow newFlow(InetAddress exporter, int version) {
+        final Flow flow = new Flow();
+        flow.setExporterAddress(exporter);
+        flow.setVersion(version);
+        return flow;
+    }
+
+    public long getNumRecordsWithoutTemplate() {
+        return numRecordsWithoutTemplate.sum();
+    }
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A NetFlow v9 or IPFIX template, describing the layout of the data records
+ * that reference it.
+ */
+public class Template {
+
+    /**
+     * Length used by IPFIX fields whose length is encoded in each record.
+     */
+    public static final int VARIABLE_LENGTH = 0xFFFF;
+
+    public static class Field {
+        private final int type;
+        private final int length;
+        private final long enterpriseNumber;
+
+        public Field(int type, int length, long enterpriseNumber) {
+            this.type = type;
+            this.length = length;
+            this.enterpriseNumber = enterpriseNumber;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * @return the private enterprise number of the field, or 0 for IANA defined fields
+         */
+        public long getEnterpriseNumber() {
+            return enterpriseNumber;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null || getClass() != obj.getClass()) return false;
+            final Field other = (Field) obj;
+            return type == other.type && length == other.length && enterpriseNumber == other.enterpriseNumber;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, length, enterpriseNumber);
+        }
+    }
+
+    private final int id;
+
+    private final List<Field> fields;
+
+    private final int recordLength;
+
+    public Template(int id, List<Field> fields) {
+        this.id = id;
+        this.fields = Collections.unmodifiableList(fields);
+        int length = 0;
+        for (Field field : fields) {
+            if (field.getLength() == VARIABLE_LENGTH) {
+                // At least one byte is used to encode the length
+                length += 1;
+            } else {
+                length += field.getLength();
+            }
+        }
+        this.recordLength = length;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public List<Field> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return the minimum length of a record using this template
+     */
+    public int getRecordLength() {
+        return recordLength;
+    }
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.net.InetAddress;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Stores the templates announced by each exporter.
+ *
+ * Templates are scoped by the address of the exporter, the version of the protocol,
+ * and the source id (NetFlow v9) or observation domain (IPFIX) they were announced in.
+ */
+public class TemplateCache {
+
+    private static class Key {
+        private final InetAddress exporter;
+        private final int version;
+        private final long domainId;
+        private final int templateId;
+        private final int hashCode;
+
+        private Key(InetAddress exporter, int version, long domainId, int templateId) {
+            this.exporter = exporter;
+            this.version = version;
+            this.domainId = domainId;
+            this.templateId = templateId;
+            this.hashCode = Objects.hash(exporter, version, domainId, templateId);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null || getClass() != obj.getClass()) return false;
+            final Key other = (Key) obj;
+            return version == other.version
+                    && domainId == other.domainId
+                    && templateId == other.templateId
+                    && Objects.equals(exporter, other.exporter);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private final ConcurrentMap<Key, Template> templates = new ConcurrentHashMap<>();
+
+    public void put(InetAddress exporter, int version, long domainId, Template template) {
+        templates.put(new Key(exporter, version, domainId, template.getId()), template);
+    }
+
+    public Template get(InetAddress exporter, int version, long domainId, int templateId) {
+        return templates.get(new Key(exporter, version, domainId, templateId));
+    }
+
+    public void remove(InetAddress exporter, int version, long domainId, int templateId) {
+        templates.remove(new Key(exporter, version, domainId, templateId));
+    }
+
+    /**
+     * Removes all of the templates announced in the given domain.
+     */
+    public void removeAll(InetAddress exporter, int version, long domainId) {
+        templates.keySet().removeIf(key -> key.version == version
+                && key.domainId == domainId
+                && Objects.equals(key.exporter, exporter));
+    }
+
+    public int size() {
+        return templates.size();
+    }
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.opennms.netmgt.telemetry.adapters.netflow.FlowAggregator.Counters;
+
+/**
+ * Tracks the traffic of the heaviest keys in bounded space, using the Space-Saving algorithm.
+ *
+ * At most <code>capacity</code> keys are tracked. Once full, a new key replaces the key
+ * with the fewest bytes and inherits its counters, so the keys that carry most of the
+ * traffic are retained, and their counters are over-estimated by at most the error
+ * reported with them.
+ */
+class TopKeys<K> {
+
+    private static class Entry<K> {
+        private final K key;
+        private final long sequence;
+        private long bytes;
+        private long packets;
+        private long error;
+
+        private Entry(K key, long sequence) {
+            this.key = key;
+            this.sequence = sequence;
+        }
+    }
+
+    private final int capacity;
+
+    private final Map<K, Entry<K>> entries = new HashMap<>();
+
+    private final TreeSet<Entry<K>> entriesByBytes = new TreeSet<>(Comparator.<Entry<K>>comparingLong(e -> e.bytes)
+            .thenComparingLong(e -> e.sequence));
+
+    private long sequence = 0;
+
+    public TopKeys(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be strictly positive");
+        }
+        this.capacity = capacity;
+    }
+
+    public synchronized void add(K key, long bytes, long packets) {
+        Entry<K> entry = entries.get(key);
+        if (entry != null) {
+            // The entry must be re-inserted, since its position depends on the bytes
+            entriesByBytes.remove(entry);
+        } else {
+            entry = new Entry<>(key, sequence++);
+            if (entries.size() >= capacity) {
+                final Entry<K> smallest = entriesByBytes.pollFirst();
+                entries.remove(smallest.key);
+                entry.bytes = smallest.bytes;
+                entry.packets = smallest.packets;
+                entry.error = smallest.bytes;
+            }
+            entries.put(key, entry);
+        }
+        entry.bytes += bytes;
+        entry.packets += packets;
+        entriesByBytes.add(entry);
+    }
+
+    /**
+     * @return the <code>n</code> keys with the most bytes, in decreasing order
+     */
+    public synchronized List<Map.Entry<K, Counters>> top(int n) {
+        final List<Map.Entry<K, Counters>> top = new ArrayList<>(Math.min(n, entries.size()));
+        final Iterator<Entry<K>> it = entriesByBytes.descendingIterator();
+        while (it.hasNext() && top.size() < n) {
+            final Entry<K> entry = it.next();
+            top.add(new AbstractMap.SimpleImmutableEntry<>(entry.key, new Counters(entry.bytes, entry.packets, entry.error)));
+        }
+        return top;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
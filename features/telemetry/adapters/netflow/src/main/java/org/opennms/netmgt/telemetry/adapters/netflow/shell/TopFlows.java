@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow.shell;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.opennms.netmgt.telemetry.adapters.netflow.FlowAggregator;
+import org.opennms.netmgt.telemetry.adapters.netflow.FlowAggregator.Bucket;
+import org.opennms.netmgt.telemetry.adapters.netflow.FlowAggregator.Counters;
+import org.opennms.netmgt.telemetry.adapters.netflow.FlowAggregatorRegistry;
+
+@Command(scope = "telemetry", name = "top-flows", description = "Lists the top conversations, applications, interfaces and hosts seen by the NetFlow adapters.")
+@Service
+public class TopFlows implements Action {
+
+    @Option(name = "-p", aliases = "--protocol", description = "Only show the flows of the given protocol", required = false, multiValued = false)
+    String protocol;
+
+    @Option(name = "-n", aliases = "--count", description = "Number of entries to show of each kind", required = false, multiValued = false)
+    int count = 10;
+
+    @Option(name = "-b", aliases = "--buckets", description = "Number of buckets to show, starting with the most recent", required = false, multiValued = false)
+    int numBuckets = 1;
+
+    @Reference
+    public FlowAggregatorRegistry registry;
+
+    @Override
+    public Void execute() {
+        final Map<String, FlowAggregator> aggregators = registry.getAggregators();
+        if (protocol != null && !aggregators.containsKey(protocol)) {
+            System.out.printf("No NetFlow adapter found for protocol '%s'. Known protocols are: %s\n", protocol, aggregators.keySet());
+            return null;
+        }
+        for (Map.Entry<String, FlowAggregator> entry : aggregators.entrySet()) {
+            if (protocol != null && !protocol.equals(entry.getKey())) {
+                continue;
+            }
+            final List<Bucket> buckets = entry.getValue().getBuckets();
+            for (int i = buckets.size() - 1; i >= Math.max(0, buckets.size() - numBuckets); i--) {
+                final Bucket bucket = buckets.get(i);
+                System.out.printf("%s: %d flows starting at %s (%d ms)\n", entry.getKey(), bucket.getNumFlows(),
+                        new Date(bucket.getStart()), entry.getValue().getBucketSizeMs());
+                print("Conversations", bucket.getTopConversations(count));
+                print("Applications", bucket.getTopApplications(count));
+                print("Interfaces", bucket.getTopInterfaces(count));
+                print("Hosts", bucket.getTopHosts(count));
+                System.out.println();
+            }
+        }
+        return null;
+    }
+
+    private static <K> void print(String title, List<Map.Entry<K, Counters>> entries) {
+        System.out.printf("  %s:\n", title);
+        for (Map.Entry<K, Counters> entry : entries) {
+            final Counters counters = entry.getValue();
+            System.out.printf("    %-60s %15d bytes %12d packets%s\n", entry.getKey(), counters.getBytes(), counters.getPackets(),
+                    counters.getError() > 0 ? String.format(" (+/- %d bytes)", counters.getError()) : "");
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.opennms.netmgt.telemetry.adapters.netflow.FlowAggregator.Application;
+import org.opennms.netmgt.telemetry.adapters.netflow.FlowAggregator.Bucket;
+import org.opennms.netmgt.telemetry.adapters.netflow.FlowAggregator.Conversation;
+import org.opennms.netmgt.telemetry.adapters.netflow.FlowAggregator.Counters;
+import org.opennms.netmgt.telemetry.adapters.netflow.FlowAggregator.Host;
+import org.opennms.netmgt.telemetry.adapters.netflow.FlowAggregator.Interface;
+
+public class FlowAggregatorTest {
+
+    @Test
+    public void canAggregateFlowsIntoBuckets() throws Exception {
+        final FlowAggregator aggregator = new FlowAggregator(1000, 10);
+        aggregator.aggregate(flow(1500, "10.0.0.1", 1234, "10.0.0.2", 80, 100));
+        // Same conversation in the opposite direction
+        aggregator.aggregate(flow(1700, "10.0.0.2", 80, "10.0.0.1", 1234, 300));
+        aggregator.aggregate(flow(1900, "10.0.0.3", 5000, "10.0.0.4", 443, 50));
+        aggregator.aggregate(flow(2100, "10.0.0.1", 1234, "10.0.0.2", 80, 10));
+
+        final List<Bucket> buckets = aggregator.getBuckets();
+        assertEquals(2, buckets.size());
+        final Bucket bucket = buckets.get(0);
+        assertEquals(1000, bucket.getStart());
+        assertEquals(3, bucket.getNumFlows());
+
+        final List<Map.Entry<Conversation, Counters>> conversations = bucket.getTopConversations(10);
+        assertEquals(2, conversations.size());
+        assertEquals(new Conversation(6, address("10.0.0.1"), address("10.0.0.2")), conversations.get(0).getKey());
+        assertEquals(400, conversations.get(0).getValue().getBytes());
+        assertEquals(2, conversations.get(0).getValue().getPackets());
+
+        final List<Map.Entry<Application, Counters>> applications = bucket.getTopApplications(1);
+        assertEquals(1, applications.size());
+        assertEquals(new Application(6, 80), applications.get(0).getKey());
+
+        final List<Map.Entry<Interface, Counters>> interfaces = bucket.getTopInterfaces(10);
+        assertEquals(2, interfaces.size());
+        assertEquals(450, interfaces.get(0).getValue().getBytes());
+    }
+
+    @Test
+    public void scalesCountersBySamplingInterval() throws Exception {
+        final FlowAggregator aggregator = new FlowAggregator(1000, 10);
+        final Flow flow = flow(500, "10.0.0.1", 1234, "10.0.0.2", 80, 100);
+        flow.setSamplingInterval(10);
+        aggregator.aggregate(flow);
+
+        final Counters counters = aggregator.getBuckets().get(0).getTopConversations(1).get(0).getValue();
+        assertEquals(1000, counters.getBytes());
+        assertEquals(10, counters.getPackets());
+    }
+
+    @Test
+    public void tracksTheHostsWithTheirNodes() throws Exception {
+        final FlowAggregator aggregator = new FlowAggregator(1000, 10);
+        final Flow flow = flow(500, "10.0.0.1", 1234, "10.0.0.2", 80, 100);
+        flow.setSrcNodeId(1);
+        aggregator.aggregate(flow);
+        aggregator.aggregate(flow(600, "10.0.0.3", 1234, "10.0.0.2", 80, 50));
+
+        final List<Map.Entry<Host, Counters>> hosts = aggregator.getBuckets().get(0).getTopHosts(10);
+        assertEquals(3, hosts.size());
+        assertEquals(new Host(address("10.0.0.2"), null), hosts.get(0).getKey());
+        assertEquals(150, hosts.get(0).getValue().getBytes());
+        assertEquals(new Host(address("10.0.0.1"), 1), hosts.get(1).getKey());
+        assertEquals(100, hosts.get(1).getValue().getBytes());
+    }
+
+    @Test
+    public void boundsTheNumberOfKeysPerBucket() throws Exception {
+        final FlowAggregator aggregator = new FlowAggregator(1000, 10, 4);
+        // A few heavy conversations among many light ones
+        for (int i = 0; i < 1000; i++) {
+            aggregator.aggregate(flow(500, "10.0.1.1", 1234, "10.0.1.2", 80, 1000));
+            aggregator.aggregate(flow(500, "10.0.2.1", 1234, "10.0.2.2", 80, 500));
+            aggregator.aggregate(flow(500, "10.1." + (i / 250) + "." + (i % 250), 1024 + i, "10.0.3.1", 2000 + i, 1));
+        }
+
+        final List<Map.Entry<Conversation, Counters>> conversations = aggregator.getBuckets().get(0).getTopConversations(10);
+        assertEquals(4, conversations.size());
+        assertEquals(new Conversation(6, address("10.0.1.1"), address("10.0.1.2")), conversations.get(0).getKey());
+        assertEquals(new Conversation(6, address("10.0.2.1"), address("10.0.2.2")), conversations.get(1).getKey());
+        // The heavy hitters are counted exactly, the others may be over-estimated by their error
+        assertEquals(1000000, conversations.get(0).getValue().getBytes());
+        assertEquals(0, conversations.get(0).getValue().getError());
+        assertEquals(500000, conversations.get(1).getValue().getBytes());
+        assertEquals(4, aggregator.getBuckets().get(0).getTopApplications(10).size());
+    }
+
+    @Test
+    public void evictsTheOldestBuckets() throws Exception {
+        final FlowAggregator aggregator = new FlowAggregator(1000, 2);
+        aggregator.aggregate(flow(500, "10.0.0.1", 1, "10.0.0.2", 2, 1));
+        aggregator.aggregate(flow(1500, "10.0.0.1", 1, "10.0.0.2", 2, 1));
+        aggregator.aggregate(flow(2500, "10.0.0.1", 1, "10.0.0.2", 2, 1));
+        // Flows older than the retained buckets are dropped
+        aggregator.aggregate(flow(700, "10.0.0.1", 1, "10.0.0.2", 2, 1));
+
+        final List<Bucket> buckets = aggregator.getBuckets();
+        assertEquals(2, buckets.size());
+        assertEquals(1000, buckets.get(0).getStart());
+        assertEquals(2000, buckets.get(1).getStart());
+    }
+
+    private static Flow flow(long lastSwitched, String src, int srcPort, String dst, int dstPort, long bytes) {
+        final Flow flow = new Flow();
+        flow.setExporterAddress(address("192.168.1.1"));
+        flow.setVersion(NetflowParser.VERSION_5);
+        flow.setSrcAddress(address(src));
+        flow.setSrcPort(srcPort);
+        flow.setDstAddress(address(dst));
+        flow.setDstPort(dstPort);
+        flow.setProtocol(6);
+        flow.setBytes(bytes);
+        flow.setPackets(1);
+        flow.setFirstSwitched(lastSwitched);
+        flow.setLastSwitched(lastSwitched);
+        flow.setInputIfIndex(1);
+        flow.setOutputIfIndex(2);
+        return flow;
+    }
+
+    private static InetAddress address(String address) {
+        try {
+            return InetAddress.getByName(address);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
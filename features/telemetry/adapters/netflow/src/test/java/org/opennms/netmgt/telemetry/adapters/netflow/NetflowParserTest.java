@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+public class NetflowParserTest {
+
+    private static final InetAddress EXPORTER = address("10.0.0.1");
+
+    private static final long EXPORT_TIME_SECS = 1500000000L;
+
+    private final TemplateCache templateCache = new TemplateCache();
+
+    private final NetflowParser parser = new NetflowParser(templateCache);
+
+    @Test
+    public void canParseNetflowV5() throws Exception {
+        final ByteBuf packet = Unpooled.buffer();
+        packet.writeShort(5);
+        packet.writeShort(2); // count
+        packet.writeInt(10000); // sys uptime
+        packet.writeInt((int) EXPORT_TIME_SECS);
+        packet.writeInt(0); // nsecs
+        packet.writeInt(1); // sequence
+        packet.writeByte(0); // engine type
+        packet.writeByte(0); // engine id
+        packet.writeShort(0x4000 | 10); // sampling mode and interval
+        writeV5Record(packet, "192.168.0.1", "192.168.0.2", 1234, 80);
+        writeV5Record(packet, "192.168.0.3", "192.168.0.4", 4321, 443);
+
+        final List<Flow> flows = parser.parse(EXPORTER, packet);
+        assertEquals(2, flows.size());
+
+        final Flow flow = flows.get(0);
+        assertEquals(5, flow.getVersion());
+        assertEquals(EXPORTER, flow.getExporterAddress());
+        assertEquals(address("192.168.0.1"), flow.getSrcAddress());
+        assertEquals(address("192.168.0.2"), flow.getDstAddress());
+        assertEquals(1234, flow.getSrcPort());
+        assertEquals(80, flow.getDstPort());
+        assertEquals(6, flow.getProtocol());
+        assertEquals(3, flow.getInputIfIndex());
+        assertEquals(4, flow.getOutputIfIndex());
+        assertEquals(100, flow.getPackets());
+        assertEquals(64000, flow.getBytes());
+        assertEquals(10, flow.getSamplingInterval());
+        // The uptimes are relative to the boot time of the exporter
+        assertEquals(EXPORT_TIME_SECS * 1000 - 10000 + 5000, flow.getFirstSwitched());
+        assertEquals(EXPORT_TIME_SECS * 1000 - 10000 + 9000, flow.getLastSwitched());
+        assertEquals(443, flows.get(1).getDstPort());
+    }
+
+    @Test
+    public void canParseNetflowV9WithTemplates() throws Exception {
+        // Data received before the template is skipped
+        assertTrue(parser.parse(EXPORTER, v9Packet(false, true)).isEmpty());
+        assertEquals(1, parser.getNumRecordsWithoutTemplate());
+
+        // Both the template and the data in the same packet
+        final List<Flow> flows = parser.parse(EXPORTER, v9Packet(true, true));
+        assertEquals(1, templateCache.size());
+        assertEquals(1, flows.size());
+
+        final Flow flow = flows.get(0);
+        assertEquals(9, flow.getVersion());
+        assertEquals(address("172.16.0.1"), flow.getSrcAddress());
+        assertEquals(address("172.16.0.2"), flow.getDstAddress());
+        assertEquals(53, flow.getSrcPort());
+        assertEquals(5353, flow.getDstPort());
+        assertEquals(17, flow.getProtocol());
+        assertEquals(1500, flow.getBytes());
+        assertEquals(3, flow.getPackets());
+        assertEquals(7, flow.getInputIfIndex());
+        assertEquals(EXPORT_TIME_SECS * 1000 - 60000 + 50000, flow.getLastSwitched());
+
+        // Subsequent data uses the cached template
+        assertEquals(1, parser.parse(EXPORTER, v9Packet(false, true)).size());
+
+        // Templates are scoped by exporter
+        assertTrue(parser.parse(address("10.0.0.2"), v9Packet(false, true)).isEmpty());
+    }
+
+    @Test
+    public void canParseIpfixWithVariableLengthAndEnterpriseFields() throws Exception {
+        final ByteBuf set = Unpooled.buffer();
+        // Template set
+        set.writeShort(2);
+        set.writeShort(4 + 4 + 5 * 4 + 4);
+        set.writeShort(300); // template id
+        set.writeShort(5); // field count
+        writeField(set, 8, 4); // source address
+        writeField(set, 12, 4); // destination address
+        writeField(set, 85, 8); // octet total count
+        writeField(set, 153, 8); // flow end milliseconds
+        set.writeShort(0x8000 | 1); // enterprise specific, variable length
+        set.writeShort(0xFFFF);
+        set.writeInt(5951);
+        // Data set
+        final int dataLength = 4 + 4 + 4 + 8 + 8 + 1 + 3;
+        set.writeShort(300);
+        set.writeShort(dataLength);
+        set.writeBytes(address("10.1.1.1").getAddress());
+        set.writeBytes(address("10.1.1.2").getAddress());
+        set.writeLong(123456789L);
+        set.writeLong(EXPORT_TIME_SECS * 1000 + 250);
+        set.writeByte(3);
+        set.writeBytes(new byte[] { 1, 2, 3 });
+
+        final ByteBuf packet = Unpooled.buffer();
+        packet.writeShort(10);
+        packet.writeShort(16 + set.readableBytes());
+        packet.writeInt((int) EXPORT_TIME_SECS);
+        packet.writeInt(1); // sequence
+        packet.writeInt(42); // observation domain
+        packet.writeBytes(set);
+
+        final List<Flow> flows = parser.parse(EXPORTER, packet);
+        assertEquals(1, flows.size());
+        final Flow flow = flows.get(0);
+        assertEquals(10, flow.getVersion());
+        assertEquals(address("10.1.1.1"), flow.getSrcAddress());
+        assertEquals(address("10.1.1.2"), flow.getDstAddress());
+        assertEquals(123456789L, flow.getBytes());
+        assertEquals(EXPORT_TIME_SECS * 1000 + 250, flow.getLastSwitched());
+        assertEquals(flow.getLastSwitched(), flow.getFirstSwitched());
+    }
+
+    @Test(expected=InvalidPacketException.class)
+    public void failsOnTruncatedPackets() throws Exception {
+        final ByteBuf packet = Unpooled.buffer();
+        packet.writeShort(5);
+        packet.writeShort(30); // count
+        packet.writeZero(22);
+        parser.parse(EXPORTER, packet);
+    }
+
+    private static ByteBuf v9Packet(boolean withTemplate, boolean withData) {
+        final ByteBuf packet = Unpooled.buffer();
+        packet.writeShort(9);
+        packet.writeShort((withTemplate ? 1 : 0) + (withData ? 1 : 0));
+        packet.writeInt(60000); // sys uptime
+        packet.writeInt((int) EXPORT_TIME_SECS);
+        packet.writeInt(1); // sequence
+        packet.writeInt(0); // source id
+        if (withTemplate) {
+            packet.writeShort(0);
+            packet.writeShort(4 + 4 + 9 * 4);
+            packet.writeShort(256);
+            packet.writeShort(9);
+            writeField(packet, 8, 4);
+            writeField(packet, 12, 4);
+            writeField(packet, 7, 2);
+            writeField(packet, 11, 2);
+            writeField(packet, 4, 1);
+            writeField(packet, 1, 4);
+            writeField(packet, 2, 4);
+            writeField(packet, 10, 2);
+            writeField(packet, 21, 4);
+        }
+        if (withData) {
+            final int recordLength = 4 + 4 + 2 + 2 + 1 + 4 + 4 + 2 + 4;
+            // Padded to a multiple of 4 bytes
+            packet.writeShort(256);
+            packet.writeShort(4 + recordLength + 3);
+            packet.writeBytes(address("172.16.0.1").getAddress());
+            packet.writeBytes(address("172.16.0.2").getAddress());
+            packet.writeShort(53);
+            packet.writeShort(5353);
+            packet.writeByte(17);
+            packet.writeInt(1500);
+            packet.writeInt(3);
+            packet.writeShort(7);
+            packet.writeInt(50000);
+            packet.writeZero(3);
+        }
+        return packet;
+    }
+
+    private static void writeV5Record(ByteBuf packet, String src, String dst, int srcPort, int dstPort) {
+        packet.writeBytes(address(src).getAddress());
+        packet.writeBytes(address(dst).getAddress());
+        packet.writeInt(0); // next hop
+        packet.writeShort(3); // input
+        packet.writeShort(4); // output
+        packet.writeInt(100); // packets
+        packet.writeInt(64000); // bytes
+        packet.writeInt(5000); // first
+        packet.writeInt(9000); // last
+        packet.writeShort(srcPort);
+        packet.writeShort(dstPort);
+        packet.writeByte(0);
+        packet.writeByte(0x18); // tcp flags
+        packet.writeByte(6); // protocol
+        packet.writeByte(0); // tos
+        packet.writeShort(0); // src as
+        packet.writeShort(0); // dst as
+        packet.writeZero(4);
+    }
+
+    private static void writeField(ByteBuf buffer, int type, int length) {
+        buffer.writeShort(type);
+        buffer.writeShort(length);
+    }
+
+    private static InetAddress address(String address) {
+        try {
+            return InetAddress.getByName(address);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
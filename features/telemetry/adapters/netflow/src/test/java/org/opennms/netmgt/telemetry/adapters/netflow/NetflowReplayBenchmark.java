@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Replays a capture of flow export packets through the {@link NetflowParser}
+ * and the {@link FlowAggregator}.
+ *
+ * The capture is read from the classic libpcap file referenced by the
+ * {@link #PCAP_FILE_SYS_PROP} system property. Only IPv4 UDP packets on
+ * Ethernet are considered. When no capture is given, a set of synthetic
+ * NetFlow v5 packets is used instead.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NetflowReplayBenchmark {
+
+    public static final String PCAP_FILE_SYS_PROP = "org.opennms.netmgt.telemetry.adapters.netflow.benchmark.pcap";
+
+    private static final int PCAP_MAGIC = 0xa1b2c3d4;
+    private static final int PCAP_MAGIC_SWAPPED = 0xd4c3b2a1;
+    private static final int ETHERNET_HEADER_LENGTH = 14;
+    private static final int ETHER_TYPE_IPV4 = 0x0800;
+    private static final int IP_PROTOCOL_UDP = 17;
+    private static final int UDP_HEADER_LENGTH = 8;
+
+    private final List<Packet> packets = new ArrayList<>();
+
+    private long numFlows;
+
+    @Setup
+    public void setUp() throws IOException {
+        final String pcapFile = System.getProperty(PCAP_FILE_SYS_PROP);
+        if (pcapFile != null && !pcapFile.isEmpty()) {
+            readPcap(pcapFile);
+        } else {
+            generateV5Packets(1000);
+        }
+
+        // Parse everything once to count the flows and to seed the templates
+        final NetflowParser parser = new NetflowParser(new TemplateCache());
+        for (Packet packet : packets) {
+            try {
+                numFlows += parser.parse(packet.exporter, Unpooled.wrappedBuffer(packet.payload)).size();
+            } catch (InvalidPacketException e) {
+                // Ignore it
+            }
+        }
+        System.out.printf("Replaying %d packets containing %d flows.%n", packets.size(), numFlows);
+    }
+
+    /**
+     * Each invocation replays the whole capture, so the flows per second
+     * are the reported throughput multiplied by the number of flows printed
+     * during the setup.
+     */
+    @Benchmark
+    public FlowAggregator replay() {
+        final NetflowParser parser = new NetflowParser(new TemplateCache());
+        final FlowAggregator aggregator = new FlowAggregator(60000, 60);
+        for (Packet packet : packets) {
+            try {
+                for (Flow flow : parser.parse(packet.exporter, Unpooled.wrappedBuffer(packet.payload))) {
+                    aggregator.aggregate(flow);
+                }
+            } catch (InvalidPacketException e) {
+                // Ignore it
+            }
+        }
+        return aggregator;
+    }
+
+    private void readPcap(String file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            final byte[] globalHeader = new byte[24];
+            in.readFully(globalHeader);
+            final ByteBuffer header = ByteBuffer.wrap(globalHeader);
+            final int magic = header.getInt();
+            if (magic == PCAP_MAGIC_SWAPPED) {
+                header.order(ByteOrder.LITTLE_ENDIAN);
+            } else if (magic != PCAP_MAGIC) {
+                throw new IOException(String.format("Unsupported capture format with magic 0x%08x", magic));
+            }
+            final ByteOrder order = header.order();
+
+            final byte[] recordHeader = new byte[16];
+            while (true) {
+                try {
+                    in.readFully(recordHeader);
+                } catch (EOFException e) {
+                    break;
+                }
+                final int capturedLength = ByteBuffer.wrap(recordHeader).order(order).getInt(8);
+                final byte[] frame = new byte[capturedLength];
+                in.readFully(frame);
+                final Packet packet = toPacket(frame);
+                if (packet != null) {
+                    packets.add(packet);
+                }
+            }
+        }
+    }
+
+    private static Packet toPacket(byte[] frame) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(frame);
+        if (frame.length < ETHERNET_HEADER_LENGTH + 20 + UDP_HEADER_LENGTH
+                || (buffer.getShort(12) & 0xFFFF) != ETHER_TYPE_IPV4) {
+            return null;
+        }
+        final int ipHeaderLength = (buffer.get(ETHERNET_HEADER_LENGTH) & 0x0F) * 4;
+        if ((buffer.get(ETHERNET_HEADER_LENGTH + 9) & 0xFF) != IP_PROTOCOL_UDP) {
+            return null;
+        }
+        final byte[] source = new byte[4];
+        System.arraycopy(frame, ETHERNET_HEADER_LENGTH + 12, source, 0, source.length);
+        final int offset = ETHERNET_HEADER_LENGTH + ipHeaderLength + UDP_HEADER_LENGTH;
+        if (offset >= frame.length) {
+            return null;
+        }
+        final byte[] payload = new byte[frame.length - offset];
+        System.arraycopy(frame, offset, payload, 0, payload.length);
+        return new Packet(InetAddress.getByAddress(source), payload);
+    }
+
+    private void generateV5Packets(int numPackets) throws IOException {
+        final InetAddress exporter = InetAddress.getByName("10.0.0.1");
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < numPackets; i++) {
+            final ByteBuf buffer = Unpooled.buffer();
+            buffer.writeShort(NetflowParser.VERSION_5);
+            buffer.writeShort(30);
+            buffer.writeInt(3600000);
+            buffer.writeInt((int) (now / 1000));
+            buffer.writeInt(0);
+            buffer.writeInt(i * 30);
+            buffer.writeZero(4);
+            for (int j = 0; j < 30; j++) {
+                buffer.writeInt(0x0A000000 | (i & 0xFF) << 8 | j);
+                buffer.writeInt(0xC0A80000 | j);
+                buffer.writeInt(0);
+                buffer.writeShort(1 + j % 4);
+                buffer.writeShort(1 + (j + 1) % 4);
+                buffer.writeInt(10);
+                buffer.writeInt(1500 * 10);
+                buffer.writeInt(3600000 - 1000);
+                buffer.writeInt(3600000 - j);
+                buffer.writeShort(1024 + i % 1000);
+                buffer.writeShort(j % 2 == 0 ? 80 : 443);
+                buffer.writeByte(0);
+                buffer.writeByte(0x18);
+                buffer.writeByte(6);
+                buffer.writeByte(0);
+                buffer.writeZero(8);
+            }
+            final byte[] payload = new byte[buffer.readableBytes()];
+            buffer.readBytes(payload);
+            packets.add(new Packet(exporter, payload));
+        }
+    }
+
+    private static class Packet {
+        private final InetAddress exporter;
+        private final byte[] payload;
+
+        private Packet(InetAddress exporter, byte[] payload) {
+            this.exporter = exporter;
+            this.payload = payload;
+        }
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final OptionsBuilder options = new OptionsBuilder();
+        options.include(NetflowReplayBenchmark.class.getSimpleName());
+        if (args.length > 0) {
+            options.jvmArgsAppend("-D" + PCAP_FILE_SYS_PROP + "=" + args[0]);
+        }
+        new Runner(options.build()).run();
+    }
+}
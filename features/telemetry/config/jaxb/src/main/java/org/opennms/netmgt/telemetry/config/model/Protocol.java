@@ -55,6 +55,10 @@ public class Protocol implements org.opennms.netmgt.telemetry.config.api.Protoco
     private Integer batchIntervalMs;
     @XmlAttribute(name="queue-size")
     private Integer queueSize;
+    @XmlAttribute(name="num-lanes")
+    private Integer numLanes;
+    @XmlAttribute(name="lane-queue-size")
+    private Integer laneQueueSize;
     @XmlElement(name="listener")
     private List<Listener> listeners = new ArrayList<>();
     @XmlElement(name="adapter")
@@ -123,6 +127,37 @@ public class Protocol implements org.opennms.netmgt.telemetry.config.api.Protoco
         this.queueSize = queueSize;
     }
 
+    /**
+     * Number of lanes used to hand off the message logs to the adapters.
+     *
+     * Message logs are partitioned by source address, so that the messages
+     * from a given exporter are always handled in order. When unset, the
+     * adapters are invoked on the consumer threads.
+     *
+     * @return the number of lanes
+     */
+    public Optional<Integer> getNumLanes() {
+        return Optional.ofNullable(numLanes);
+    }
+
+    public void setNumLanes(Integer numLanes) {
+        this.numLanes = numLanes;
+    }
+
+    /**
+     * Maximum number of message logs waiting on each lane. The consumer
+     * threads block while the lane is full.
+     *
+     * @return the lane queue size
+     */
+    public Optional<Integer> getLaneQueueSize() {
+        return Optional.ofNullable(laneQueueSize);
+    }
+
+    public void setLaneQueueSize(Integer laneQueueSize) {
+        this.laneQueueSize = laneQueueSize;
+    }
+
     public List<Listener> getListeners() {
         return listeners;
     }
@@ -160,6 +195,8 @@ public class Protocol implements org.opennms.netmgt.telemetry.config.api.Protoco
                 Objects.equals(batchSize, protocol.batchSize) &&
                 Objects.equals(batchIntervalMs, protocol.batchIntervalMs) &&
                 Objects.equals(queueSize, protocol.queueSize) &&
+                Objects.equals(numLanes, protocol.numLanes) &&
+                Objects.equals(laneQueueSize, protocol.laneQueueSize) &&
                 Objects.equals(listeners, protocol.listeners) &&
                 Objects.equals(adapters, protocol.adapters) &&
                 Objects.equals(packages, protocol.packages);
@@ -167,7 +204,7 @@ public class Protocol implements org.opennms.netmgt.telemetry.config.api.Protoco
 
     @Override
     public int hashCode() {
-        return Objects.hash(name, description, enabled, numThreads, batchSize, batchIntervalMs, queueSize, listeners, adapters, packages);
+        return Objects.hash(name, description, enabled, numThreads, batchSize, batchIntervalMs, queueSize, numLanes, laneQueueSize, listeners, adapters, packages);
     }
 
     @Override
@@ -180,6 +217,8 @@ public class Protocol implements org.opennms.netmgt.telemetry.config.api.Protoco
                 ", batchSize=" + batchSize +
                 ", batchIntervalMs=" + batchIntervalMs +
                 ", queueSize=" + queueSize +
+                ", numLanes=" + numLanes +
+                ", laneQueueSize=" + laneQueueSize +
                 ", listeners=" + listeners +
                 ", adapters=" + adapters +
                 ", packages=" + packages +
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.daemon;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Runs tasks on a fixed number of lanes, each of which is served by a single
+ * thread.
+ *
+ * Tasks submitted with equal keys always run on the same lane, in the order
+ * in which they were submitted. Submitting a task blocks while the queue of
+ * the selected lane is full, which pushes back on the caller.
+ */
+public class PartitionedExecutor implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(PartitionedExecutor.class);
+
+    private static final Runnable STOP = () -> {};
+
+    private final Lane[] lanes;
+
+    private final MetricRegistry metrics;
+
+    private final String metricPrefix;
+
+    private volatile boolean closed = false;
+
+    public PartitionedExecutor(String name, int numLanes, int laneQueueSize, MetricRegistry metrics, String metricPrefix) {
+        if (numLanes < 1) {
+            throw new IllegalArgumentException("numLanes must be strictly positive");
+        }
+        this.metrics = Objects.requireNonNull(metrics);
+        this.metricPrefix = MetricRegistry.name(metricPrefix, "lanes");
+
+        final LogPreservingThreadFactory threadFactory = new LogPreservingThreadFactory(name, numLanes);
+        lanes = new Lane[numLanes];
+        for (int i = 0; i < numLanes; i++) {
+            lanes[i] = new Lane(i, laneQueueSize);
+            final Thread thread = threadFactory.newThread(lanes[i]);
+            thread.setDaemon(true);
+            lanes[i].thread = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Queues the given task on the lane associated with the key, waiting for
+     * space to become available if necessary.
+     *
+     * @param key used to select the lane
+     * @param task the task to run
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void execute(Object key, Runnable task) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("Executor is closed.");
+        }
+        final int hash = key != null ? key.hashCode() : 0;
+        // Spread the hash so that keys which only differ in their higher bits still use all of the lanes
+        lanes[Math.floorMod(hash ^ (hash >>> 16), lanes.length)].queue.put(task);
+    }
+
+    public int getNumLanes() {
+        return lanes.length;
+    }
+
+    /**
+     * Runs the tasks which were already queued and stops the lanes.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        for (Lane lane : lanes) {
+            lane.queue.put(STOP);
+        }
+        for (Lane lane : lanes) {
+            lane.thread.join(TimeUnit.SECONDS.toMillis(30));
+            if (lane.thread.isAlive()) {
+                LOG.warn("Lane {} did not stop in time. Interrupting.", lane.index);
+                lane.thread.interrupt();
+            }
+        }
+        metrics.removeMatching((name, metric) -> name.startsWith(metricPrefix + "."));
+    }
+
+    private class Lane implements Runnable {
+        private final int index;
+        private final BlockingQueue<Runnable> queue;
+        private final Meter busyNanos;
+        private Thread thread;
+
+        private Lane(int index, int queueSize) {
+            this.index = index;
+            queue = new ArrayBlockingQueue<>(queueSize);
+            busyNanos = metrics.meter(MetricRegistry.name(metricPrefix, Integer.toString(index), "busy-nanos"));
+            metrics.register(MetricRegistry.name(metricPrefix, Integer.toString(index), "queue-size"), new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return queue.size();
+                }
+            });
+            // The rate at which busy time accumulates, as a fraction of the elapsed time
+            metrics.register(MetricRegistry.name(metricPrefix, Integer.toString(index), "utilization"), new Gauge<Double>() {
+                @Override
+                public Double getValue() {
+                    return Math.min(1.0d, busyNanos.getOneMinuteRate() / TimeUnit.SECONDS.toNanos(1));
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final Runnable task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    LOG.info("Lane {} was interrupted. Stopping.", index);
+                    return;
+                }
+                if (task == STOP) {
+                    return;
+                }
+
+                final long start = System.nanoTime();
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    LOG.error("Task failed on lane {}.", index, t);
+                } finally {
+                    busyNanos.mark(System.nanoTime() - start);
+                }
+            }
+        }
+    }
+}
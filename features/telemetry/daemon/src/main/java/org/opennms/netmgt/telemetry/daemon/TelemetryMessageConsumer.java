@@ -52,9 +52,14 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
 public class TelemetryMessageConsumer implements MessageConsumer<TelemetryMessage, TelemetryProtos.TelemetryMessageLog> {
     private final Logger LOG = LoggerFactory.getLogger(TelemetryMessageConsumer.class);
 
+    public static final int DEFAULT_LANE_QUEUE_SIZE = 100;
+
     @Autowired
     private ApplicationContext applicationContext;
 
@@ -64,11 +69,15 @@ public class TelemetryMessageConsumer implements MessageConsumer<TelemetryMessag
     private final Protocol protocolDef;
     private final TelemetrySinkModule sinkModule;
     private final List<Adapter> adapters;
+    private final List<Timer> adapterTimers;
+    private MetricRegistry metrics = new MetricRegistry();
+    private PartitionedExecutor executor;
 
     public TelemetryMessageConsumer(Protocol protocol, TelemetrySinkModule sinkModule) throws Exception {
         this.protocolDef = Objects.requireNonNull(protocol);
         this.sinkModule = Objects.requireNonNull(sinkModule);
         adapters = new ArrayList<>(protocol.getAdapters().size());
+        adapterTimers = new ArrayList<>(protocol.getAdapters().size());
     }
 
     @PostConstruct
@@ -80,16 +89,52 @@ public class TelemetryMessageConsumer implements MessageConsumer<TelemetryMessag
             } catch (Exception e) {
                 throw new Exception("Failed to create adapter from definition: " + adapterDef, e);
             }
+            adapterTimers.add(metrics.timer(MetricRegistry.name(getMetricPrefix(), "adapters", adapterDef.getName(), "handle")));
+        }
+
+        // Hand the message logs off to the lanes, if enabled
+        final int numLanes = protocolDef.getNumLanes().orElse(0);
+        if (numLanes > 0) {
+            try (Logging.MDCCloseable mdc = Logging.withPrefixCloseable(Telemetryd.LOG_PREFIX)) {
+                executor = new PartitionedExecutor("Telemetryd-" + protocolDef.getName(), numLanes,
+                        protocolDef.getLaneQueueSize().orElse(DEFAULT_LANE_QUEUE_SIZE), metrics, getMetricPrefix());
+            }
         }
     }
 
+    public void destroy() throws InterruptedException {
+        if (executor != null) {
+            executor.close();
+            executor = null;
+        }
+        final String prefix = getMetricPrefix() + ".";
+        metrics.removeMatching((name, metric) -> name.startsWith(prefix));
+    }
+
     @Override
     public void handleMessage(TelemetryProtos.TelemetryMessageLog messageLog) {
+        if (executor == null) {
+            dispatch(messageLog);
+            return;
+        }
+
+        // Partition by exporter, so that the messages from any given exporter are handled in order
+        final String key = messageLog.hasSourceAddress() ? messageLog.getSourceAddress() : messageLog.getSystemId();
+        try {
+            executor.execute(key, () -> dispatch(messageLog));
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while queuing message log: {}. Dropping.", messageLog);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatch(TelemetryProtos.TelemetryMessageLog messageLog) {
         try (Logging.MDCCloseable mdc = Logging.withPrefixCloseable(Telemetryd.LOG_PREFIX)) {
             LOG.trace("Received message log: {}", messageLog);
             // Handle the message with all of the adapters
-            for (Adapter adapter : adapters) {
-                try {
+            for (int i = 0; i < adapters.size(); i++) {
+                final Adapter adapter = adapters.get(i);
+                try (Timer.Context ctx = adapterTimers.get(i).time()) {
                     adapter.handleMessageLog(messageLog);
                 } catch (RuntimeException e) {
                     LOG.warn("Adapter: {} failed to handle message log: {}. Skipping.", adapter, messageLog);
@@ -146,4 +191,12 @@ public class TelemetryMessageConsumer implements MessageConsumer<TelemetryMessag
     public Protocol getProtocol() {
         return protocolDef;
     }
+
+    public void setMetrics(MetricRegistry metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    private String getMetricPrefix() {
+        return MetricRegistry.name("protocols", protocolDef.getName());
+    }
 }
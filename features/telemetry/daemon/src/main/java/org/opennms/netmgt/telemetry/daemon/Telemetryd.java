@@ -53,6 +53,9 @@ import org.springframework.context.ApplicationContext;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+
 /**
  * telemetryd is responsible for managing the life cycle of
  * {@link Listener}s and {@link Adapter}s as well as connecting
@@ -84,12 +87,21 @@ public class Telemetryd implements SpringServiceDaemon {
     private List<AsyncDispatcher<?>> dispatchers = new ArrayList<>();
     private List<Listener> listeners = new ArrayList<>();
 
+    private final MetricRegistry metrics = new MetricRegistry();
+    private JmxReporter reporter;
+
     @Override
     public synchronized void start() throws Exception {
         if (consumers.size() > 0) {
             throw new IllegalStateException(NAME + " is already started.");
         }
         LOG.info("{} is starting.", NAME);
+        if (reporter == null) {
+            reporter = JmxReporter.forRegistry(metrics)
+                    .inDomain(Telemetryd.class.getPackage().getName())
+                    .build();
+            reporter.start();
+        }
         final TelemetrydConfiguration config = telemetrydConfigDao.getContainer().getObject();
         final AutowireCapableBeanFactory beanFactory = applicationContext.getAutowireCapableBeanFactory();
 
@@ -109,6 +121,7 @@ public class Telemetryd implements SpringServiceDaemon {
 
             // Create the consumer, but don't start it yet
             final TelemetryMessageConsumer consumer = new TelemetryMessageConsumer(protocol, sinkModule);
+            consumer.setMetrics(metrics);
             beanFactory.autowireBean(consumer);
             beanFactory.initializeBean(consumer, "consumer");
             consumers.add(consumer);
@@ -167,12 +180,19 @@ public class Telemetryd implements SpringServiceDaemon {
             try {
                 LOG.info("Stopping consumer for {} protocol.", consumer.getProtocol().getName());
                 messageConsumerManager.unregisterConsumer(consumer);
+                // Drain the lanes, if any
+                consumer.destroy();
             } catch (Exception e) {
                 LOG.error("Error while stopping consumer.", e);
             }
         }
         consumers.clear();
 
+        if (reporter != null) {
+            reporter.close();
+            reporter = null;
+        }
+
         LOG.info("{} is stopped.", NAME);
     }
 
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.daemon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class PartitionedExecutorTest {
+
+    @Test
+    public void preservesOrderingPerKey() throws Exception {
+        final MetricRegistry metrics = new MetricRegistry();
+        final Map<String, List<Integer>> results = Collections.synchronizedMap(new HashMap<>());
+        final int numKeys = 16;
+        final int numTasksPerKey = 1000;
+
+        final PartitionedExecutor executor = new PartitionedExecutor("test", 4, 10, metrics, "test");
+        assertEquals(4 * 2, metrics.getGauges().size());
+        for (int i = 0; i < numTasksPerKey; i++) {
+            for (int k = 0; k < numKeys; k++) {
+                final String key = "10.0.0." + k;
+                final int value = i;
+                executor.execute(key, () -> results.computeIfAbsent(key, (x) -> new ArrayList<>()).add(value));
+            }
+        }
+        // Closing runs all of the queued tasks
+        executor.close();
+
+        assertEquals(numKeys, results.size());
+        for (List<Integer> values : results.values()) {
+            assertEquals(numTasksPerKey, values.size());
+            for (int i = 0; i < numTasksPerKey; i++) {
+                assertEquals(i, values.get(i).intValue());
+            }
+        }
+        assertTrue(metrics.getGauges().isEmpty());
+    }
+}
@@ -177,6 +177,12 @@ public class MockNodeDao implements NodeDao {
         return null;
     }
 
+    @Override
+    public Map<String, String> getForeignIdToRequisitionHashMap(String foreignSource) {
+        // TODO Auto-generated method stub
+        return null;
+    }
+
     @Override
     public Map<String, Set<String>> getForeignIdsPerForeignSourceMap() {
         // TODO Auto-generated method stub
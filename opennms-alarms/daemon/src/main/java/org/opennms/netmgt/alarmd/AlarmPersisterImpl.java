@@ -28,7 +28,23 @@
 
 package org.opennms.netmgt.alarmd;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Collectors;
+
 import org.hibernate.Hibernate;
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.criteria.CriteriaBuilder;
 import org.opennms.netmgt.dao.api.AlarmDao;
 import org.opennms.netmgt.dao.api.EventDao;
 import org.opennms.netmgt.events.api.EventConstants;
@@ -41,18 +57,49 @@ import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.UpdateField;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 import org.springframework.transaction.support.TransactionOperations;
 import org.springframework.util.Assert;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Striped;
+
 /**
  * Singleton to persist OnmsAlarms.
  *
+ * When {@link #setFlushWindowMs(long)} is greater than zero, the persister keeps
+ * the alarms it has recently created or reduced in a cache keyed by reduction key.
+ * Further reductions of a cached alarm are applied to the cached copy and written
+ * behind: all of the reductions of the same key received within the flush window
+ * are stored with a single update of the alarm, rather than with one transaction
+ * per event. Events that miss the cache (i.e. new alarms) flush the pending
+ * reductions of their reduction key first, and the alarm lifecycle events are
+ * forwarded once the reductions they describe are committed, so the events of
+ * a given reduction key are still sent in the order in which they were received.
+ *
+ * The alarms returned by {@link #persist(Event)} are snapshots, so callers can use
+ * them outside of the persister while further reductions are applied to the cache.
+ *
+ * The cache and the pending reductions are guarded by a lock per reduction key, which
+ * is never held while talking to the database. Instead, a reduction key that is being
+ * written is marked as such, and the events that miss the cache for that key wait
+ * for the write to complete; the other reduction keys are not held up.
+ *
  * @author <a href="mailto:david@opennms.org">David Hustace</a>
  * @version $Id: $
  */
-public class AlarmPersisterImpl implements AlarmPersister {
+public class AlarmPersisterImpl implements AlarmPersister, InitializingBean, DisposableBean {
     private static final Logger LOG = LoggerFactory.getLogger(AlarmPersisterImpl.class);
 
     private AlarmDao m_alarmDao;
@@ -60,6 +107,32 @@ public class AlarmPersisterImpl implements AlarmPersister {
     private EventForwarder m_eventForwarder;
     private TransactionOperations m_transactionOperations;
 
+    private long m_flushWindowMs = Long.getLong("org.opennms.alarmd.reduction.flushWindowMs", 0L);
+
+    private long m_cacheTtlMs = Long.getLong("org.opennms.alarmd.reduction.cacheTtlMs", TimeUnit.MINUTES.toMillis(1));
+
+    private long m_cacheSize = Long.getLong("org.opennms.alarmd.reduction.cacheSize", 10000L);
+
+    private final Striped<Lock> m_locks = Striped.lock(64);
+
+    private Cache<String, CachedAlarm> m_reductionCache;
+
+    // The reductions that were not written yet, by reduction key, in the order in which they were received
+    private final Map<String, List<PendingReduction>> m_pendingReductions = new ConcurrentHashMap<>();
+
+    // The writes in progress, by reduction key
+    private final Map<String, CompletableFuture<Void>> m_writesInProgress = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService m_flushExecutor;
+
+    private final Counter m_reductions;
+
+    private final Counter m_coalescedReductions;
+
+    private final Timer m_flushTimer;
+
+    private final Histogram m_flushSizes;
+
     private static class OnmsAlarmAndLifecycleEvent {
         private final OnmsAlarm m_alarm;
         private final Event m_event;
@@ -78,6 +151,87 @@ public class AlarmPersisterImpl implements AlarmPersister {
         }
     }
 
+    /**
+     * The state of an alarm kept in the reduction cache. The alarm is detached from
+     * the session it was loaded in, and is only used to answer {@link #persist(Event)}
+     * for the reductions that are written behind.
+     */
+    private static class CachedAlarm {
+        private final String m_reductionKey;
+        private final Integer m_alarmId;
+        private OnmsAlarm m_alarm;
+
+        public CachedAlarm(String reductionKey, OnmsAlarm alarm) {
+            m_reductionKey = reductionKey;
+            m_alarmId = alarm.getId();
+            m_alarm = alarm;
+        }
+    }
+
+    private static class PendingReduction {
+        private final String m_reductionKey;
+        private final CachedAlarm m_cachedAlarm;
+        private final Event m_event;
+        private final Event m_lifecycleEvent;
+
+        public PendingReduction(String reductionKey, CachedAlarm cachedAlarm, Event event, Event lifecycleEvent) {
+            m_reductionKey = reductionKey;
+            m_cachedAlarm = cachedAlarm;
+            m_event = event;
+            m_lifecycleEvent = lifecycleEvent;
+        }
+    }
+
+    public AlarmPersisterImpl() {
+        this(new MetricRegistry());
+    }
+
+    public AlarmPersisterImpl(MetricRegistry registry) {
+        m_reductions = Objects.requireNonNull(registry).counter("reductions");
+        m_coalescedReductions = registry.counter("reductions.coalesced");
+        m_flushTimer = registry.timer("reductions.flush");
+        m_flushSizes = registry.histogram("reductions.flush.sizes");
+        registry.register(MetricRegistry.name("reductions.coalescingRatio"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(m_coalescedReductions.getCount(), m_reductions.getCount());
+            }
+        });
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (m_flushWindowMs <= 0) {
+            return;
+        }
+        m_reductionCache = CacheBuilder.newBuilder()
+                .maximumSize(m_cacheSize)
+                .expireAfterAccess(m_cacheTtlMs, TimeUnit.MILLISECONDS)
+                .build();
+        m_flushExecutor = Executors.newSingleThreadScheduledExecutor(new LogPreservingThreadFactory("AlarmPersister-Flush", 1));
+        m_flushExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (Throwable t) {
+                LOG.error("Failed to flush the pending alarm reductions.", t);
+            }
+        }, m_flushWindowMs, m_flushWindowMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (m_flushExecutor != null) {
+            m_flushExecutor.shutdown();
+            try {
+                m_flushExecutor.awaitTermination(m_flushWindowMs * 2, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            m_flushExecutor = null;
+        }
+        flush();
+    }
+
     /** {@inheritDoc} 
      * @return */
     @Override
@@ -90,6 +244,226 @@ public class AlarmPersisterImpl implements AlarmPersister {
             LOG.debug("process: {}; nodeid: {}; ipaddr: {}; serviceid: {}", event.getUei(), event.getNodeid(), event.getInterface(), event.getService());
         }
 
+        m_reductions.inc();
+
+        if (m_reductionCache == null) {
+            return addOrReduceEventAsAlarmAndForward(event);
+        }
+
+        final String reductionKey = event.getAlarmData().getReductionKey();
+        final Lock lock = m_locks.get(reductionKey);
+        final CompletableFuture<Void> write = new CompletableFuture<>();
+        List<PendingReduction> pendingReductions;
+        for (;;) {
+            final CompletableFuture<Void> writeInProgress;
+            lock.lock();
+            try {
+                final CachedAlarm cachedAlarm = m_reductionCache.getIfPresent(reductionKey);
+                if (cachedAlarm != null) {
+                    return snapshot(reduceCachedAlarm(reductionKey, cachedAlarm, event));
+                }
+                writeInProgress = m_writesInProgress.putIfAbsent(reductionKey, write);
+                if (writeInProgress == null) {
+                    pendingReductions = m_pendingReductions.remove(reductionKey);
+                    break;
+                }
+            } finally {
+                lock.unlock();
+            }
+            // The alarm is being written by another thread, look it up again once it's done
+            writeInProgress.join();
+        }
+
+        try {
+            // Write the pending reductions of the alarm first (they are left behind when
+            // it is evicted), so that the alarm and its lifecycle events are in the same
+            // state as they would be without the cache
+            if (pendingReductions != null) {
+                write(pendingReductions);
+            }
+
+            final OnmsAlarm alarm = addOrReduceEventAsAlarmAndForward(event);
+            lock.lock();
+            try {
+                m_reductionCache.put(reductionKey, new CachedAlarm(reductionKey, alarm));
+                return snapshot(alarm);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            endWrite(reductionKey, write);
+        }
+    }
+
+    /**
+     * Writes the pending reductions in a single transaction, and forwards
+     * their lifecycle events once they are committed.
+     */
+    protected void flush() {
+        final List<PendingReduction> pendingReductions = new ArrayList<>();
+        final Map<String, CompletableFuture<Void>> writes = new HashMap<>();
+        for (String reductionKey : m_pendingReductions.keySet()) {
+            final Lock lock = m_locks.get(reductionKey);
+            lock.lock();
+            try {
+                // The reductions of an alarm that is being written are left for the next flush
+                if (m_writesInProgress.containsKey(reductionKey)) {
+                    continue;
+                }
+                final List<PendingReduction> reductions = m_pendingReductions.remove(reductionKey);
+                if (reductions != null) {
+                    final CompletableFuture<Void> write = new CompletableFuture<>();
+                    m_writesInProgress.put(reductionKey, write);
+                    writes.put(reductionKey, write);
+                    pendingReductions.addAll(reductions);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (pendingReductions.isEmpty()) {
+            return;
+        }
+
+        try {
+            write(pendingReductions);
+        } finally {
+            writes.forEach(this::endWrite);
+        }
+    }
+
+    private void endWrite(String reductionKey, CompletableFuture<Void> write) {
+        m_writesInProgress.remove(reductionKey, write);
+        write.complete(null);
+    }
+
+    /**
+     * Writes reductions whose reduction keys are marked as being written by the caller.
+     */
+    private void write(List<PendingReduction> pendingReductions) {
+        final List<PendingReduction> orphanedReductions = new ArrayList<>();
+        final Map<CachedAlarm, OnmsAlarm> writtenAlarms = new LinkedHashMap<>();
+        try (Context ctx = m_flushTimer.time()) {
+            m_flushSizes.update(pendingReductions.size());
+            m_transactionOperations.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    orphanedReductions.addAll(writePendingReductions(pendingReductions, writtenAlarms));
+                }
+            });
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to write {} coalesced alarm reductions, persisting them one at a time.", pendingReductions.size(), e);
+            for (PendingReduction reduction : pendingReductions) {
+                m_reductionCache.invalidate(reduction.m_reductionKey);
+                addOrReduceEventAsAlarmAndForward(reduction.m_event);
+            }
+            return;
+        }
+
+        writtenAlarms.forEach(this::refresh);
+
+        for (PendingReduction reduction : pendingReductions) {
+            if (!orphanedReductions.contains(reduction)) {
+                m_eventForwarder.sendNow(reduction.m_lifecycleEvent);
+            }
+        }
+
+        // The alarms of these were deleted before we could write the reductions;
+        // let them go through the regular path again, which creates new alarms
+        for (PendingReduction reduction : orphanedReductions) {
+            m_reductionCache.invalidate(reduction.m_reductionKey);
+            addOrReduceEventAsAlarmAndForward(reduction.m_event);
+        }
+    }
+
+    private OnmsAlarm reduceCachedAlarm(String reductionKey, CachedAlarm cachedAlarm, Event event) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("reduceCachedAlarm: reductionKey:{} cached, coalescing event {} with alarm: {}", reductionKey, event.getDbid(), cachedAlarm.m_alarmId);
+        }
+        reduceEvent(toTransientEvent(event, cachedAlarm.m_alarm), cachedAlarm.m_alarm, event);
+
+        final EventBuilder ebldr = new EventBuilder(EventConstants.ALARM_UPDATED_WITH_REDUCED_EVENT_UEI, Alarmd.NAME);
+        ebldr.addParam(EventConstants.PARM_ALARM_UEI, cachedAlarm.m_alarm.getUei());
+        ebldr.addParam(EventConstants.PARM_ALARM_ID, cachedAlarm.m_alarmId);
+
+        m_pendingReductions.computeIfAbsent(reductionKey, k -> new ArrayList<>()).add(new PendingReduction(reductionKey, cachedAlarm, event, ebldr.getEvent()));
+        m_coalescedReductions.inc();
+        return cachedAlarm.m_alarm;
+    }
+
+    /**
+     * Replaces the cached copy of an alarm with the one that was just written, and
+     * applies to it the reductions that were received in the meantime.
+     */
+    private void refresh(CachedAlarm cachedAlarm, OnmsAlarm alarm) {
+        final Lock lock = m_locks.get(cachedAlarm.m_reductionKey);
+        lock.lock();
+        try {
+            final List<PendingReduction> pendingReductions = m_pendingReductions.get(cachedAlarm.m_reductionKey);
+            if (pendingReductions != null) {
+                for (PendingReduction reduction : pendingReductions) {
+                    if (reduction.m_cachedAlarm == cachedAlarm) {
+                        reduceEvent(toTransientEvent(reduction.m_event, alarm), alarm, reduction.m_event);
+                    }
+                }
+            }
+            cachedAlarm.m_alarm = alarm;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Applies the pending reductions, grouped by alarm.
+     *
+     * @param writtenAlarms receives the alarms that were written, by cached alarm
+     * @return the reductions whose alarm no longer exists
+     */
+    private List<PendingReduction> writePendingReductions(List<PendingReduction> pendingReductions, Map<CachedAlarm, OnmsAlarm> writtenAlarms) {
+        final Map<CachedAlarm, List<PendingReduction>> reductionsByAlarm = pendingReductions.stream()
+                .collect(Collectors.groupingBy(r -> r.m_cachedAlarm, LinkedHashMap::new, Collectors.toList()));
+
+        final List<Integer> eventIds = pendingReductions.stream()
+                .map(r -> r.m_event.getDbid())
+                .collect(Collectors.toList());
+        final Map<Integer, OnmsEvent> eventsById = m_eventDao.findMatching(new CriteriaBuilder(OnmsEvent.class).in("id", eventIds).toCriteria())
+                .stream()
+                .collect(Collectors.toMap(OnmsEvent::getId, e -> e));
+
+        final List<PendingReduction> orphanedReductions = new ArrayList<>();
+        for (Map.Entry<CachedAlarm, List<PendingReduction>> entry : reductionsByAlarm.entrySet()) {
+            final CachedAlarm cachedAlarm = entry.getKey();
+            final OnmsAlarm alarm = m_alarmDao.get(cachedAlarm.m_alarmId);
+            if (alarm == null) {
+                orphanedReductions.addAll(entry.getValue());
+                continue;
+            }
+
+            OnmsEvent autoCleanEvent = null;
+            for (PendingReduction reduction : entry.getValue()) {
+                final OnmsEvent e = eventsById.get(reduction.m_event.getDbid());
+                if (e == null) {
+                    LOG.warn("writePendingReductions: event {} was deleted before it could be reduced to alarm {}.", reduction.m_event.getDbid(), alarm.getId());
+                    continue;
+                }
+                reduceEvent(e, alarm, reduction.m_event);
+                if (reduction.m_event.getAlarmData().isAutoClean()) {
+                    autoCleanEvent = e;
+                }
+            }
+            m_alarmDao.update(alarm);
+
+            if (autoCleanEvent != null) {
+                m_eventDao.deletePreviousEventsForAlarm(alarm.getId(), autoCleanEvent);
+            }
+
+            initializeAlarm(alarm);
+            writtenAlarms.put(cachedAlarm, alarm);
+        }
+        return orphanedReductions;
+    }
+
+    private OnmsAlarm addOrReduceEventAsAlarmAndForward(Event event) {
         // Process the alarm inside a transaction
         OnmsAlarmAndLifecycleEvent alarmAndEvent = m_transactionOperations.execute(new TransactionCallback<OnmsAlarmAndLifecycleEvent>() {
             @Override
@@ -140,16 +514,87 @@ public class AlarmPersisterImpl implements AlarmPersister {
             ebldr = new EventBuilder(EventConstants.ALARM_UPDATED_WITH_REDUCED_EVENT_UEI, Alarmd.NAME);
         }
 
-        if (alarm.getNodeId() != null) {
-            alarm.getNode().getForeignSource(); // This should trigger the lazy loading of the node object, to properly populate the NorthboundAlarm class.
-        }
+        initializeAlarm(alarm);
 
         ebldr.addParam(EventConstants.PARM_ALARM_UEI, alarm.getUei());
         ebldr.addParam(EventConstants.PARM_ALARM_ID, alarm.getId());
 
+        return new OnmsAlarmAndLifecycleEvent(alarm, ebldr.getEvent());
+    }
+
+    /**
+     * Copies the state of the alarm used by the northbound interfaces, so that it
+     * isn't changed by the reductions applied to the cached alarm afterwards.
+     */
+    private static OnmsAlarm snapshot(OnmsAlarm alarm) {
+        final OnmsAlarm snapshot = new OnmsAlarm();
+        snapshot.setId(alarm.getId());
+        snapshot.setUei(alarm.getUei());
+        snapshot.setDistPoller(alarm.getDistPoller());
+        snapshot.setNode(alarm.getNode());
+        snapshot.setIpAddr(alarm.getIpAddr());
+        snapshot.setServiceType(alarm.getServiceType());
+        snapshot.setReductionKey(alarm.getReductionKey());
+        snapshot.setAlarmType(alarm.getAlarmType());
+        snapshot.setIfIndex(alarm.getIfIndex());
+        snapshot.setCounter(alarm.getCounter());
+        snapshot.setSeverity(alarm.getSeverity());
+        snapshot.setFirstEventTime(alarm.getFirstEventTime());
+        snapshot.setLastEvent(alarm.getLastEvent());
+        snapshot.setLastEventTime(alarm.getLastEventTime());
+        snapshot.setFirstAutomationTime(alarm.getFirstAutomationTime());
+        snapshot.setLastAutomationTime(alarm.getLastAutomationTime());
+        snapshot.setDescription(alarm.getDescription());
+        snapshot.setLogMsg(alarm.getLogMsg());
+        snapshot.setOperInstruct(alarm.getOperInstruct());
+        snapshot.setTTicketId(alarm.getTTicketId());
+        snapshot.setTTicketState(alarm.getTTicketState());
+        snapshot.setMouseOverText(alarm.getMouseOverText());
+        snapshot.setSuppressedUntil(alarm.getSuppressedUntil());
+        snapshot.setSuppressedUser(alarm.getSuppressedUser());
+        snapshot.setSuppressedTime(alarm.getSuppressedTime());
+        snapshot.setAlarmAckUser(alarm.getAlarmAckUser());
+        snapshot.setAlarmAckTime(alarm.getAlarmAckTime());
+        snapshot.setClearKey(alarm.getClearKey());
+        snapshot.setManagedObjectInstance(alarm.getManagedObjectInstance());
+        snapshot.setManagedObjectType(alarm.getManagedObjectType());
+        snapshot.setApplicationDN(alarm.getApplicationDN());
+        snapshot.setOssPrimaryKey(alarm.getOssPrimaryKey());
+        snapshot.setX733AlarmType(alarm.getX733AlarmType());
+        snapshot.setX733ProbableCause(alarm.getX733ProbableCause());
+        snapshot.setQosAlarmState(alarm.getQosAlarmState());
+        return snapshot;
+    }
+
+    private static void initializeAlarm(OnmsAlarm alarm) {
+        if (alarm.getNodeId() != null) {
+            alarm.getNode().getForeignSource(); // This should trigger the lazy loading of the node object, to properly populate the NorthboundAlarm class.
+        }
+        if (alarm.getServiceType() != null) {
+            alarm.getServiceType().getName(); // To avoid potential LazyInitializationException when dealing with NorthboundAlarm
+        }
+
         Hibernate.initialize(alarm.getEventParameters());
+    }
 
-        return new OnmsAlarmAndLifecycleEvent(alarm, ebldr.getEvent());
+    /**
+     * Builds an unsaved {@link OnmsEvent} with the fields used by {@link #reduceEvent(OnmsEvent, OnmsAlarm, Event)},
+     * so that reductions can be applied to a cached alarm without loading the event.
+     */
+    private static OnmsEvent toTransientEvent(Event event, OnmsAlarm alarm) {
+        final OnmsEvent e = new OnmsEvent();
+        e.setId(event.getDbid());
+        e.setEventUei(event.getUei());
+        e.setEventTime(event.getTime());
+        e.setDistPoller(alarm.getDistPoller());
+        e.setIpAddr(event.getInterfaceAddress());
+        e.setEventDescr(event.getDescr());
+        e.setEventLogMsg(event.getLogmsg() == null ? null : event.getLogmsg().getContent());
+        e.setEventMouseOverText(event.getMouseovertext());
+        e.setEventOperInstruct(event.getOperinstruct());
+        e.setEventSeverity(OnmsSeverity.get(event.getSeverity()).getId());
+        e.setEventParametersFromEvent(event);
+        return e;
     }
 
     private static void reduceEvent(OnmsEvent e, OnmsAlarm alarm, Event event) {
@@ -312,6 +757,34 @@ public class AlarmPersisterImpl implements AlarmPersister {
         return m_eventDao;
     }
 
+    public long getFlushWindowMs() {
+        return m_flushWindowMs;
+    }
+
+    /**
+     * Sets the interval at which the coalesced reductions are written.
+     * Use 0 to disable the reduction cache and persist every event in its own transaction.
+     */
+    public void setFlushWindowMs(long flushWindowMs) {
+        m_flushWindowMs = flushWindowMs;
+    }
+
+    public long getCacheTtlMs() {
+        return m_cacheTtlMs;
+    }
+
+    public void setCacheTtlMs(long cacheTtlMs) {
+        m_cacheTtlMs = cacheTtlMs;
+    }
+
+    public long getCacheSize() {
+        return m_cacheSize;
+    }
+
+    public void setCacheSize(long cacheSize) {
+        m_cacheSize = cacheSize;
+    }
+
     public void setEventForwarder(EventForwarder eventForwarder) {
         m_eventForwarder = eventForwarder;
     }
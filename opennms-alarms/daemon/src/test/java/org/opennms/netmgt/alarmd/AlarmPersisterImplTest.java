@@ -0,0 +1,323 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.opennms.core.criteria.Criteria;
+import org.opennms.netmgt.dao.api.AlarmDao;
+import org.opennms.netmgt.dao.api.EventDao;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventForwarder;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.AlarmData;
+import org.opennms.netmgt.xml.event.Event;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+public class AlarmPersisterImplTest {
+
+    private static final String REDUCTION_KEY = "uei.opennms.org/test/flapping::1:eth0";
+
+    private final Map<Integer, OnmsEvent> m_events = new HashMap<>();
+
+    private final Map<Integer, OnmsAlarm> m_alarms = new HashMap<>();
+
+    private final MetricRegistry m_registry = new MetricRegistry();
+
+    private AlarmPersisterImpl m_persister;
+
+    private TransactionOperations m_transactionOperations;
+
+    private AlarmDao m_alarmDao;
+
+    private EventDao m_eventDao;
+
+    private EventForwarder m_eventForwarder;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        m_transactionOperations = mock(TransactionOperations.class);
+        when(m_transactionOperations.execute(any(TransactionCallback.class))).thenAnswer(invocation -> {
+            return ((TransactionCallback<?>)invocation.getArguments()[0]).doInTransaction(null);
+        });
+
+        m_eventDao = mock(EventDao.class);
+        when(m_eventDao.get(any(Integer.class))).thenAnswer(invocation -> m_events.get(invocation.getArguments()[0]));
+        when(m_eventDao.findMatching(any(Criteria.class))).thenAnswer(invocation -> {
+            // The events that were not yet associated with the alarm
+            return m_events.values().stream().filter(e -> e.getAlarm() == null).collect(Collectors.toList());
+        });
+
+        m_alarmDao = mock(AlarmDao.class);
+        // Like a session would, hand out a different instance on every lookup
+        when(m_alarmDao.get(any(Integer.class))).thenAnswer(invocation -> copy(m_alarms.get(invocation.getArguments()[0])));
+        when(m_alarmDao.findByReductionKey(any(String.class))).thenAnswer(invocation -> {
+            return m_alarms.values().stream()
+                    .filter(a -> a.getReductionKey().equals(invocation.getArguments()[0]))
+                    .findFirst()
+                    .map(AlarmPersisterImplTest::copy)
+                    .orElse(null);
+        });
+        when(m_alarmDao.save(any(OnmsAlarm.class))).thenAnswer(invocation -> {
+            final OnmsAlarm alarm = (OnmsAlarm)invocation.getArguments()[0];
+            alarm.setId(m_alarms.size() + 1);
+            m_alarms.put(alarm.getId(), copy(alarm));
+            return alarm.getId();
+        });
+        doAnswer(invocation -> {
+            final OnmsAlarm alarm = (OnmsAlarm)invocation.getArguments()[0];
+            m_alarms.put(alarm.getId(), copy(alarm));
+            return null;
+        }).when(m_alarmDao).update(any(OnmsAlarm.class));
+
+        m_eventForwarder = mock(EventForwarder.class);
+
+        m_persister = new AlarmPersisterImpl(m_registry);
+        m_persister.setTransactionOperations(m_transactionOperations);
+        m_persister.setAlarmDao(m_alarmDao);
+        m_persister.setEventDao(m_eventDao);
+        m_persister.setEventForwarder(m_eventForwarder);
+    }
+
+    @After
+    public void tearDown() {
+        m_persister.destroy();
+    }
+
+    @Test
+    public void testEveryReductionIsWrittenWithoutCache() {
+        m_persister.afterPropertiesSet();
+
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, m_persister.persist(createEvent(i)).getCounter().intValue());
+        }
+
+        verify(m_transactionOperations, times(4)).execute(any());
+        verify(m_alarmDao, times(3)).update(any(OnmsAlarm.class));
+        verify(m_eventForwarder, times(4)).sendNow(any(Event.class));
+    }
+
+    @Test
+    public void testReductionsAreCoalesced() {
+        // Long enough for the scheduled flush not to interfere
+        m_persister.setFlushWindowMs(3600000);
+        m_persister.afterPropertiesSet();
+
+        for (int i = 1; i <= 4; i++) {
+            final OnmsAlarm alarm = m_persister.persist(createEvent(i));
+            assertEquals(1, alarm.getId().intValue());
+            assertEquals(i, alarm.getCounter().intValue());
+            assertEquals("event " + i, alarm.getLogMsg());
+        }
+
+        // Only the alarm creation was written so far
+        verify(m_transactionOperations, times(1)).execute(any());
+        verify(m_alarmDao, never()).update(any(OnmsAlarm.class));
+        verify(m_eventForwarder, times(1)).sendNow(any(Event.class));
+
+        m_persister.flush();
+
+        verify(m_transactionOperations, times(2)).execute(any());
+        verify(m_alarmDao, times(1)).update(any(OnmsAlarm.class));
+
+        final OnmsAlarm alarm = m_alarms.get(1);
+        assertEquals(4, alarm.getCounter().intValue());
+        assertEquals(4, alarm.getLastEvent().getId().intValue());
+        assertEquals("event 4", alarm.getLogMsg());
+        for (OnmsEvent e : m_events.values()) {
+            assertEquals(alarm.getId(), e.getAlarm().getId());
+        }
+
+        // The lifecycle events are sent in order
+        final ArgumentCaptor<Event> lifecycleEvents = ArgumentCaptor.forClass(Event.class);
+        verify(m_eventForwarder, times(4)).sendNow(lifecycleEvents.capture());
+        final List<String> ueis = lifecycleEvents.getAllValues().stream().map(Event::getUei).collect(Collectors.toList());
+        assertEquals(EventConstants.ALARM_CREATED_UEI, ueis.get(0));
+        for (int i = 1; i < 4; i++) {
+            assertEquals(EventConstants.ALARM_UPDATED_WITH_REDUCED_EVENT_UEI, ueis.get(i));
+        }
+
+        final Gauge<?> ratio = m_registry.getGauges().get("reductions.coalescingRatio");
+        assertNotNull(ratio);
+        assertEquals(0.75, (Double)ratio.getValue(), 0.001);
+        assertEquals(1, m_registry.timer("reductions.flush").getCount());
+    }
+
+    @Test
+    public void testReturnedAlarmsAreSnapshots() {
+        m_persister.setFlushWindowMs(3600000);
+        m_persister.afterPropertiesSet();
+
+        final OnmsAlarm first = m_persister.persist(createEvent(1));
+        final OnmsAlarm second = m_persister.persist(createEvent(2));
+
+        assertEquals(1, first.getCounter().intValue());
+        assertEquals("event 1", first.getLogMsg());
+        assertEquals(2, second.getCounter().intValue());
+    }
+
+    @Test
+    public void testPendingReductionsAreFlushedOnEvictedAlarm() {
+        m_persister.setFlushWindowMs(3600000);
+        m_persister.setCacheSize(1);
+        m_persister.afterPropertiesSet();
+
+        m_persister.persist(createEvent(1));
+        m_persister.persist(createEvent(2));
+
+        // A different reduction key misses the cache, but doesn't need the pending reduction written first
+        final Event event = createEvent(3);
+        event.getAlarmData().setReductionKey("uei.opennms.org/test/other");
+        m_persister.persist(event);
+
+        verify(m_alarmDao, never()).update(any(OnmsAlarm.class));
+        verify(m_alarmDao, times(2)).save(any(OnmsAlarm.class));
+
+        // The first alarm was evicted by the second one, and must see its pending reduction written first
+        assertEquals(3, m_persister.persist(createEvent(4)).getCounter().intValue());
+
+        verify(m_alarmDao, times(2)).update(any(OnmsAlarm.class));
+
+        final ArgumentCaptor<Event> lifecycleEvents = ArgumentCaptor.forClass(Event.class);
+        verify(m_eventForwarder, times(4)).sendNow(lifecycleEvents.capture());
+        assertEquals(EventConstants.ALARM_CREATED_UEI, lifecycleEvents.getAllValues().get(0).getUei());
+        assertEquals(EventConstants.ALARM_CREATED_UEI, lifecycleEvents.getAllValues().get(1).getUei());
+        assertEquals(EventConstants.ALARM_UPDATED_WITH_REDUCED_EVENT_UEI, lifecycleEvents.getAllValues().get(2).getUei());
+        assertEquals(EventConstants.ALARM_UPDATED_WITH_REDUCED_EVENT_UEI, lifecycleEvents.getAllValues().get(3).getUei());
+    }
+
+    @Test(timeout = 30000)
+    public void testOtherReductionKeysAreNotHeldUpByAWrite() throws Exception {
+        m_persister.setFlushWindowMs(3600000);
+        m_persister.afterPropertiesSet();
+
+        m_persister.persist(createEvent(1));
+        m_persister.persist(createEvent(2));
+
+        // Hold the flush of the first alarm in its transaction
+        final CountDownLatch inTransaction = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            inTransaction.countDown();
+            release.await();
+            final OnmsAlarm alarm = (OnmsAlarm)invocation.getArguments()[0];
+            m_alarms.put(alarm.getId(), copy(alarm));
+            return null;
+        }).when(m_alarmDao).update(any(OnmsAlarm.class));
+
+        final Thread flusher = new Thread(m_persister::flush, "flusher");
+        flusher.start();
+        inTransaction.await();
+
+        // Another alarm can be created in the meantime
+        final Event event = createEvent(3);
+        event.getAlarmData().setReductionKey("uei.opennms.org/test/other");
+        assertEquals(1, m_persister.persist(event).getCounter().intValue());
+
+        // And the alarm being written still coalesces reductions
+        assertEquals(3, m_persister.persist(createEvent(4)).getCounter().intValue());
+
+        release.countDown();
+        flusher.join();
+
+        // The reduction received during the write is applied to the refreshed copy of the alarm
+        assertEquals(4, m_persister.persist(createEvent(5)).getCounter().intValue());
+
+        m_persister.flush();
+        assertEquals(4, m_alarms.get(1).getCounter().intValue());
+        assertEquals(5, m_alarms.get(1).getLastEvent().getId().intValue());
+    }
+
+    private static OnmsAlarm copy(OnmsAlarm alarm) {
+        if (alarm == null) {
+            return null;
+        }
+        final OnmsAlarm copy = new OnmsAlarm();
+        copy.setId(alarm.getId());
+        copy.setUei(alarm.getUei());
+        copy.setReductionKey(alarm.getReductionKey());
+        copy.setCounter(alarm.getCounter());
+        copy.setLogMsg(alarm.getLogMsg());
+        copy.setSeverity(alarm.getSeverity());
+        copy.setLastEvent(alarm.getLastEvent());
+        copy.setLastEventTime(alarm.getLastEventTime());
+        return copy;
+    }
+
+    private Event createEvent(int dbid) {
+        final Date time = new Date(dbid * 1000L);
+
+        final OnmsEvent e = new OnmsEvent();
+        e.setId(dbid);
+        e.setEventUei("uei.opennms.org/test/flapping");
+        e.setEventTime(time);
+        e.setEventLogMsg("event " + dbid);
+        e.setEventSeverity(5);
+        m_events.put(dbid, e);
+
+        final AlarmData alarmData = new AlarmData();
+        alarmData.setAlarmType(1);
+        alarmData.setReductionKey(REDUCTION_KEY);
+
+        final Event event = new EventBuilder("uei.opennms.org/test/flapping", "test")
+                .setTime(time)
+                .setLogMessage("event " + dbid)
+                .setSeverity("Minor")
+                .setAlarmData(alarmData)
+                .getEvent();
+        event.setDbid(dbid);
+        return event;
+    }
+}
@@ -474,6 +474,8 @@ CREATE UNIQUE INDEX scanreportlogs_scanReportId_idx on scanreportlogs(scanReport
 --#                       nodes, null otherwise
 --# foriegnId        : When importing nodes this contains the id of the node
 --#                       as known to the foriegn source, null otherwise
+--# requisitionHash  : When importing nodes this contains a hash of the
+--#                       requisitioned content of the node, null otherwise
 --########################################################################
 
 create table node (
@@ -494,6 +496,7 @@ create table node (
 	lastCapsdPoll   timestamp with time zone,
 	foreignSource	varchar(64),
 	foreignId       varchar(64),
+	requisitionHash varchar(64),
 	location        text not null,
 
 	constraint pk_nodeID primary key (nodeID),
@@ -0,0 +1,388 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.xml.eventconf;
+
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_EID;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_GENERIC;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_SPECIFIC;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_UEI;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeSet;
+
+/**
+ * A decision index over a list of event definitions that is compiled once,
+ * when the configuration is loaded, and used to find the first event definition
+ * matching an incoming event.
+ *
+ * Every event definition is filed under the most selective of its mask
+ * constraints that can be evaluated with a hash lookup: the UEI, the enterprise id,
+ * varbind constants and the generic/specific trap numbers, in that order of preference.
+ * Constant values are looked up directly, values ending in '%' and regular expressions
+ * that start with a literal are looked up by prefix, and definitions whose constraints
+ * cannot be reduced to a lookup fall back to a list that is always considered.
+ *
+ * The index only ever prunes definitions that cannot match, and the remaining
+ * candidates are still verified with {@link Event#matches(org.opennms.netmgt.xml.event.Event)}
+ * in definition order, so the first-match semantics of the linear scan are preserved.
+ */
+public class EventMatcherIndex {
+
+    private static final String VARBIND_PREFIX = "vb#";
+
+    private static final int[] EMPTY = new int[0];
+
+    private final Event[] m_events;
+
+    private final Dimension[] m_dimensions;
+
+    private final int[] m_unindexed;
+
+    public EventMatcherIndex(final List<Event> events) {
+        m_events = events.toArray(new Event[events.size()]);
+
+        final Map<String, DimensionBuilder> builders = new LinkedHashMap<>();
+        final List<Integer> unindexed = new ArrayList<>();
+        for (int i = 0; i < m_events.length; i++) {
+            final Constraint constraint = selectConstraint(m_events[i]);
+            if (constraint == null) {
+                unindexed.add(i);
+                continue;
+            }
+            DimensionBuilder builder = builders.get(constraint.m_name);
+            if (builder == null) {
+                builder = new DimensionBuilder(constraint.m_field);
+                builders.put(constraint.m_name, builder);
+            }
+            builder.add(i, constraint.m_values);
+        }
+
+        m_dimensions = new Dimension[builders.size()];
+        int index = 0;
+        for (final DimensionBuilder builder : builders.values()) {
+            m_dimensions[index++] = builder.build();
+        }
+        m_unindexed = toArray(unindexed);
+    }
+
+    public Event findFirstMatchingEvent(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+        // Collect the sorted candidate lists: at most one exact list and one list
+        // per prefix length for each dimension, plus the unindexed definitions
+        final List<int[]> candidates = new ArrayList<>(m_dimensions.length + 1);
+        for (final Dimension dimension : m_dimensions) {
+            dimension.collect(matchingEvent, candidates);
+        }
+        if (m_unindexed.length > 0) {
+            candidates.add(m_unindexed);
+        }
+
+        if (candidates.size() == 1) {
+            for (final int candidate : candidates.get(0)) {
+                if (m_events[candidate].matches(matchingEvent)) {
+                    return m_events[candidate];
+                }
+            }
+            return null;
+        }
+
+        // Walk the candidate lists in definition order (k-way merge)
+        final int[] cursors = new int[candidates.size()];
+        int last = -1;
+        while (true) {
+            int next = Integer.MAX_VALUE;
+            int nextList = -1;
+            for (int k = 0; k < cursors.length; k++) {
+                final int[] list = candidates.get(k);
+                if (cursors[k] < list.length && list[cursors[k]] < next) {
+                    next = list[cursors[k]];
+                    nextList = k;
+                }
+            }
+            if (nextList < 0) {
+                return null;
+            }
+            cursors[nextList]++;
+            // The same definition can be listed under several values of one dimension
+            if (next == last) {
+                continue;
+            }
+            last = next;
+            if (m_events[next].matches(matchingEvent)) {
+                return m_events[next];
+            }
+        }
+    }
+
+    public int size() {
+        return m_events.length;
+    }
+
+    public int getUnindexedCount() {
+        return m_unindexed.length;
+    }
+
+    private static Constraint selectConstraint(final Event event) {
+        final Mask mask = event.getMask();
+        if (mask == null || mask.getMaskelements().size() <= 0) {
+            // Without a mask, the definition matches on its UEI alone
+            if (event.getUei() == null) {
+                return null;
+            }
+            final List<String> values = new ArrayList<>(1);
+            values.add(event.getUei());
+            return new Constraint(TAG_UEI, EventMatchers.field(TAG_UEI), values, 0);
+        }
+
+        Constraint best = null;
+        for (final Maskelement maskElement : mask.getMaskelements()) {
+            if (!isIndexable(maskElement.getMevalues())) {
+                continue;
+            }
+            final String name = maskElement.getMename();
+            final Constraint constraint = new Constraint(name, EventMatchers.field(name), maskElement.getMevalues(), rank(name));
+            if (constraint.isBetterThan(best)) {
+                best = constraint;
+            }
+        }
+        for (final Varbind varbind : mask.getVarbinds()) {
+            if (varbind.getVbnumber() == null || !isIndexable(varbind.getVbvalues())) {
+                continue;
+            }
+            final Constraint constraint = new Constraint(VARBIND_PREFIX + varbind.getVbnumber(), EventMatchers.varbind(varbind.getVbnumber()), varbind.getVbvalues(), 2);
+            if (constraint.isBetterThan(best)) {
+                best = constraint;
+            }
+        }
+        return best;
+    }
+
+    private static int rank(final String name) {
+        if (TAG_UEI.equals(name)) {
+            return 0;
+        } else if (TAG_SNMP_EID.equals(name)) {
+            return 1;
+        } else if (TAG_SNMP_SPECIFIC.equals(name)) {
+            return 3;
+        } else if (TAG_SNMP_GENERIC.equals(name)) {
+            return 4;
+        }
+        return 5;
+    }
+
+    /**
+     * A list of mask values can be indexed when it contains at least one
+     * value and all of the regular expressions start with a literal prefix.
+     */
+    private static boolean isIndexable(final List<String> values) {
+        boolean hasValue = false;
+        for (final String value : values) {
+            if (value == null) continue;
+            if (value.startsWith("~") && literalPrefix(value.substring(1)).isEmpty()) {
+                return false;
+            }
+            hasValue = true;
+        }
+        return hasValue;
+    }
+
+    /**
+     * Returns the literal text every string matched by the given regular
+     * expression must start with, or an empty string if there is none.
+     */
+    protected static String literalPrefix(final String regex) {
+        if (regex.indexOf('|') >= 0) {
+            // Alternations could match any number of prefixes
+            return "";
+        }
+        final StringBuilder prefix = new StringBuilder();
+        int i = regex.startsWith("^") ? 1 : 0;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            int next = i + 1;
+            char literal = c;
+            if (c == '\\') {
+                if (next >= regex.length() || Character.isLetterOrDigit(regex.charAt(next))) {
+                    // Character classes, back references and quoting
+                    break;
+                }
+                literal = regex.charAt(next);
+                next++;
+            } else if (".[]()*+?{}^$".indexOf(c) >= 0) {
+                break;
+            }
+            if (next < regex.length() && "*?{".indexOf(regex.charAt(next)) >= 0) {
+                // The character is optional or repeated, so it can't be part of the prefix
+                break;
+            }
+            prefix.append(literal);
+            i = next;
+        }
+        return prefix.toString();
+    }
+
+    private static int[] toArray(final List<Integer> positions) {
+        if (positions.isEmpty()) {
+            return EMPTY;
+        }
+        final int[] array = new int[positions.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = positions.get(i);
+        }
+        return array;
+    }
+
+    private static class Constraint {
+        private final String m_name;
+        private final Field m_field;
+        private final List<String> m_values;
+        private final int m_rank;
+        private final boolean m_exact;
+
+        public Constraint(final String name, final Field field, final List<String> values, final int rank) {
+            m_name = name;
+            m_field = field;
+            m_values = values;
+            m_rank = rank;
+            boolean exact = true;
+            for (final String value : values) {
+                if (value != null && (value.endsWith("%") || value.startsWith("~"))) {
+                    exact = false;
+                }
+            }
+            m_exact = exact;
+        }
+
+        public boolean isBetterThan(final Constraint other) {
+            if (other == null) {
+                return true;
+            } else if (m_rank != other.m_rank) {
+                return m_rank < other.m_rank;
+            }
+            return m_exact && !other.m_exact;
+        }
+    }
+
+    private static class DimensionBuilder {
+        private final Field m_field;
+        private final Map<String, List<Integer>> m_exact = new HashMap<>();
+        private final Map<String, List<Integer>> m_prefixes = new HashMap<>();
+
+        public DimensionBuilder(final Field field) {
+            m_field = field;
+        }
+
+        public void add(final int position, final List<String> values) {
+            for (final String value : values) {
+                if (value == null) continue;
+                if (value.startsWith("~")) {
+                    add(m_prefixes, literalPrefix(value.substring(1)), position);
+                    // The regular expression matchers also accept the value itself
+                    add(m_exact, value, position);
+                } else if (value.endsWith("%")) {
+                    add(m_prefixes, value.substring(0, value.length() - 1), position);
+                } else {
+                    add(m_exact, value, position);
+                }
+            }
+        }
+
+        private static void add(final Map<String, List<Integer>> map, final String key, final int position) {
+            List<Integer> positions = map.get(key);
+            if (positions == null) {
+                positions = new ArrayList<>(1);
+                map.put(key, positions);
+            }
+            // Positions are added in ascending order, skip duplicate values of the same definition
+            if (positions.isEmpty() || positions.get(positions.size() - 1) != position) {
+                positions.add(position);
+            }
+        }
+
+        public Dimension build() {
+            final TreeSet<Integer> prefixLengths = new TreeSet<>();
+            for (final String prefix : m_prefixes.keySet()) {
+                prefixLengths.add(prefix.length());
+            }
+            final int[] lengths = new int[prefixLengths.size()];
+            int index = 0;
+            for (final Integer length : prefixLengths) {
+                lengths[index++] = length;
+            }
+            return new Dimension(m_field, compile(m_exact), compile(m_prefixes), lengths);
+        }
+
+        private static Map<String, int[]> compile(final Map<String, List<Integer>> map) {
+            final Map<String, int[]> compiled = new HashMap<>(map.size() * 2);
+            for (final Entry<String, List<Integer>> entry : map.entrySet()) {
+                compiled.put(entry.getKey(), toArray(entry.getValue()));
+            }
+            return compiled;
+        }
+    }
+
+    private static class Dimension {
+        private final Field m_field;
+        private final Map<String, int[]> m_exact;
+        private final Map<String, int[]> m_prefixes;
+        private final int[] m_prefixLengths;
+
+        public Dimension(final Field field, final Map<String, int[]> exact, final Map<String, int[]> prefixes, final int[] prefixLengths) {
+            m_field = field;
+            m_exact = exact;
+            m_prefixes = prefixes;
+            m_prefixLengths = prefixLengths;
+        }
+
+        public void collect(final org.opennms.netmgt.xml.event.Event matchingEvent, final List<int[]> candidates) {
+            final String value = m_field.get(matchingEvent);
+            if (value == null) {
+                return;
+            }
+            final int[] exact = m_exact.get(value);
+            if (exact != null) {
+                candidates.add(exact);
+            }
+            for (final int length : m_prefixLengths) {
+                if (length > value.length()) {
+                    break;
+                }
+                final int[] prefixed = m_prefixes.get(value.substring(0, length));
+                if (prefixed != null) {
+                    candidates.add(prefixed);
+                }
+            }
+        }
+    }
+}
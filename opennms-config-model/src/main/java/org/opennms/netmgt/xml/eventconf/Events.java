@@ -117,6 +117,9 @@ public class Events implements Serializable {
     @XmlTransient
     private EventOrdering m_ordering;
 
+    @XmlTransient
+    private EventMatcherIndex m_matcherIndex;
+
     public Global getGlobal() {
         return m_global;
     }
@@ -282,7 +285,24 @@ public class Events implements Serializable {
             }
         }
 
-        // If the UEI match failed, fallback to searching with the matchers through the partitions
+        // If the UEI match failed, fallback to searching with the matchers
+        final Event matchedEvent = m_matcherIndex != null ? m_matcherIndex.findFirstMatchingEvent(matchingEvent) : findFirstMatchingEventInPartitions(matchingEvent);
+        if (matchedEvent != null) {
+            return matchedEvent;
+        }
+
+        for(Entry<String, Events> loadedEvents : m_loadedEventFiles.entrySet()) {
+            final Events subEvents = loadedEvents.getValue();
+            final Event event = subEvents.findFirstMatchingEvent(matchingEvent);
+            if (event != null) {
+                return event;
+            }
+        }
+
+        return null;
+    }
+
+    private Event findFirstMatchingEventInPartitions(final org.opennms.netmgt.xml.event.Event matchingEvent) {
         final String key = m_partition.group(matchingEvent);
         Collection<Event> potentialMatches = m_nullPartitionedEvents;
         if (key != null) {
@@ -298,15 +318,6 @@ public class Events implements Serializable {
                 return event;
             }
         }
-
-        for(Entry<String, Events> loadedEvents : m_loadedEventFiles.entrySet()) {
-            final Events subEvents = loadedEvents.getValue();
-            final Event event = subEvents.findFirstMatchingEvent(matchingEvent);
-            if (event != null) {
-                return event;
-            }
-        }
-
         return null;
     }
 
@@ -346,6 +357,18 @@ public class Events implements Serializable {
     }
 
     public void initialize(final Partition partition, final EventOrdering eventOrdering) {
+        initialize(partition, eventOrdering, true);
+    }
+
+    /**
+     * Prepares the event definitions for matching.
+     *
+     * @param partition used to group the definitions when scanning linearly
+     * @param eventOrdering the ordering used to assign the definition indexes
+     * @param indexMatchers when true, an {@link EventMatcherIndex} is compiled and used
+     *   instead of scanning the partitions linearly
+     */
+    public void initialize(final Partition partition, final EventOrdering eventOrdering, final boolean indexMatchers) {
         m_ordering = eventOrdering;
 
         for (final Event event : m_events) {
@@ -353,10 +376,11 @@ public class Events implements Serializable {
         }
 
         partitionEvents(partition);
+        m_matcherIndex = indexMatchers ? new EventMatcherIndex(m_events) : null;
 
         for(final Entry<String, Events> loadedEvents : m_loadedEventFiles.entrySet()) {
             final Events events = loadedEvents.getValue();
-            events.initialize(partition, m_ordering.subsequence());
+            events.initialize(partition, m_ordering.subsequence(), indexMatchers);
         }
 
         indexEventsByUei();
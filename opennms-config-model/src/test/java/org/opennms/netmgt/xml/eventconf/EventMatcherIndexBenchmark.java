@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.xml.eventconf;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the compiled {@link EventMatcherIndex} against the linear scan
+ * over the event definitions.
+ *
+ * Run with the main method, from the IDE, or with the JMH runner on the test classpath.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventMatcherIndexBenchmark {
+
+    @Param({"1000", "12000"})
+    public int definitions;
+
+    private Events m_indexed;
+
+    private Events m_scanned;
+
+    private List<org.opennms.netmgt.xml.event.Event> m_events;
+
+    @Setup
+    public void setUp() {
+        m_indexed = EventMatcherIndexTest.createTrapDefinitions(definitions, 42);
+        m_indexed.initialize(EventMatcherIndexTest.LINEAR_SCAN, new EventOrdering(), true);
+        m_scanned = EventMatcherIndexTest.createTrapDefinitions(definitions, 42);
+        m_scanned.initialize(EventMatcherIndexTest.LINEAR_SCAN, new EventOrdering(), false);
+        m_events = EventMatcherIndexTest.createTrapInstances(1000, 7);
+    }
+
+    @Benchmark
+    public void indexed(final Blackhole blackhole) {
+        for (final org.opennms.netmgt.xml.event.Event event : m_events) {
+            blackhole.consume(m_indexed.findFirstMatchingEvent(event));
+        }
+    }
+
+    @Benchmark
+    public void linearScan(final Blackhole blackhole) {
+        for (final org.opennms.netmgt.xml.event.Event event : m_events) {
+            blackhole.consume(m_scanned.findFirstMatchingEvent(event));
+        }
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(EventMatcherIndexBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.xml.eventconf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.opennms.netmgt.xml.event.Parm;
+
+public class EventMatcherIndexTest {
+
+    private static final String[] ENTERPRISES = new String[] {
+            ".1.3.6.1.4.1.9.9.41.2",
+            ".1.3.6.1.4.1.9.9.43.2",
+            ".1.3.6.1.4.1.2636.4.1",
+            ".1.3.6.1.4.1.11.2.14.12",
+            ".1.3.6.1.6.3.1.1.5"
+    };
+
+    /**
+     * Places every definition in the null partition, so that all of them are scanned.
+     */
+    protected static final Partition LINEAR_SCAN = new Partition() {
+        @Override
+        public List<String> group(final Event eventConf) {
+            return null;
+        }
+
+        @Override
+        public String group(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+            return null;
+        }
+    };
+
+    @Test
+    public void canMatchInDefinitionOrder() {
+        final Events events = new Events();
+        // A catch-all for the enterprise, declared first, must win over more specific definitions
+        events.addEvent(trap("uei.opennms.org/test/catchAll", ".1.3.6.1.4.1.9.9.41.2%", null, null, null, null));
+        events.addEvent(trap("uei.opennms.org/test/specific", ".1.3.6.1.4.1.9.9.41.2", "6", "1", null, null));
+        events.addEvent(trap("uei.opennms.org/test/other", ".1.3.6.1.4.1.2636.4.1", "6", "1", null, null));
+        events.initialize(new EnterpriseIdPartition(), new EventOrdering());
+
+        assertEquals("uei.opennms.org/test/catchAll", events.findFirstMatchingEvent(trapInstance(".1.3.6.1.4.1.9.9.41.2", 6, 1)).getUei());
+        assertEquals("uei.opennms.org/test/other", events.findFirstMatchingEvent(trapInstance(".1.3.6.1.4.1.2636.4.1", 6, 1)).getUei());
+        assertNull(events.findFirstMatchingEvent(trapInstance(".1.3.6.1.4.1.2636.4.1", 6, 2)));
+    }
+
+    @Test
+    public void canMatchVarbindsAndRegularExpressions() {
+        final Events events = new Events();
+        events.addEvent(trap("uei.opennms.org/test/up", null, null, null, 1, "1"));
+        events.addEvent(trap("uei.opennms.org/test/regex", "~^\\.1\\.3\\.6\\.1\\.4\\.1\\.11\\..*", null, null, null, null));
+        events.addEvent(trap("uei.opennms.org/test/down", null, null, null, 1, "2"));
+        events.initialize(new EnterpriseIdPartition(), new EventOrdering());
+
+        final org.opennms.netmgt.xml.event.Event down = trapInstance(".1.3.6.1.4.1.9.9.43.2", 6, 2);
+        down.addParm(new Parm(".1.3.6.1.2.1.2.2.1.8", "2"));
+        assertEquals("uei.opennms.org/test/down", events.findFirstMatchingEvent(down).getUei());
+
+        final org.opennms.netmgt.xml.event.Event regex = trapInstance(".1.3.6.1.4.1.11.2.14.12", 6, 2);
+        regex.addParm(new Parm(".1.3.6.1.2.1.2.2.1.8", "2"));
+        assertEquals("uei.opennms.org/test/regex", events.findFirstMatchingEvent(regex).getUei());
+    }
+
+    @Test
+    public void canExtractLiteralPrefixes() {
+        assertEquals(".1.3.6.1.4.1.11.", EventMatcherIndex.literalPrefix("^\\.1\\.3\\.6\\.1\\.4\\.1\\.11\\..*"));
+        assertEquals("uei.opennms.org", EventMatcherIndex.literalPrefix("uei\\.opennms\\.org.*"));
+        assertEquals("abc", EventMatcherIndex.literalPrefix("abcd?"));
+        assertEquals("ab", EventMatcherIndex.literalPrefix("ab\\d+"));
+        assertEquals("", EventMatcherIndex.literalPrefix("(?i)abc"));
+        assertEquals("", EventMatcherIndex.literalPrefix("abc|def"));
+        assertEquals("", EventMatcherIndex.literalPrefix(".*abc"));
+    }
+
+    @Test
+    public void matchesLikeTheLinearScan() {
+        final Events indexed = createTrapDefinitions(2000, 42);
+        indexed.initialize(LINEAR_SCAN, new EventOrdering(), true);
+        final Events scanned = createTrapDefinitions(2000, 42);
+        scanned.initialize(LINEAR_SCAN, new EventOrdering(), false);
+
+        for (final org.opennms.netmgt.xml.event.Event event : createTrapInstances(5000, 7)) {
+            final Event expected = scanned.findFirstMatchingEvent(event);
+            final Event actual = indexed.findFirstMatchingEvent(event);
+            if (expected == null) {
+                assertNull(actual);
+            } else {
+                // The generated UEIs are unique for every definition
+                assertEquals(expected.getUei(), actual.getUei());
+            }
+        }
+    }
+
+    /**
+     * Generates a set of trap definitions that resembles the stock configuration:
+     * mostly constant enterprise ids with generic/specific numbers, some with varbind
+     * masks and a few prefix and regular expression matches.
+     */
+    protected static Events createTrapDefinitions(final int count, final long seed) {
+        final Random random = new Random(seed);
+        final Events events = new Events();
+        for (int i = 0; i < count; i++) {
+            final String enterprise = ENTERPRISES[random.nextInt(ENTERPRISES.length)] + "." + random.nextInt(count / 10 + 1);
+            final String specific = Integer.toString(random.nextInt(20));
+            final int kind = random.nextInt(100);
+            if (kind < 2) {
+                events.addEvent(trap("uei.opennms.org/generated/prefix/" + i, enterprise.substring(0, enterprise.lastIndexOf('.')) + "%", "6", specific, null, null));
+            } else if (kind < 4) {
+                events.addEvent(trap("uei.opennms.org/generated/regex/" + i, "~^" + enterprise.replace(".", "\\.") + "$", "6", specific, null, null));
+            } else if (kind < 30) {
+                events.addEvent(trap("uei.opennms.org/generated/varbind/" + i, enterprise, "6", specific, 1 + random.nextInt(3), Integer.toString(random.nextInt(5))));
+            } else {
+                events.addEvent(trap("uei.opennms.org/generated/trap/" + i, enterprise, "6", specific, null, null));
+            }
+        }
+        return events;
+    }
+
+    protected static List<org.opennms.netmgt.xml.event.Event> createTrapInstances(final int count, final long seed) {
+        final Random random = new Random(seed);
+        final List<org.opennms.netmgt.xml.event.Event> instances = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final String enterprise = ENTERPRISES[random.nextInt(ENTERPRISES.length)] + "." + random.nextInt(250);
+            final org.opennms.netmgt.xml.event.Event event = trapInstance(enterprise, 6, random.nextInt(20));
+            for (int vb = 0; vb < 3; vb++) {
+                event.addParm(new Parm(".1.3.6.1.4.1.99." + vb, Integer.toString(random.nextInt(5))));
+            }
+            instances.add(event);
+        }
+        return instances;
+    }
+
+    private static Event trap(final String uei, final String enterprise, final String generic, final String specific, final Integer vbnumber, final String vbvalue) {
+        final Event event = new Event();
+        event.setUei(uei);
+        final Mask mask = new Mask();
+        if (enterprise != null) {
+            mask.addMaskelement(maskElement(Maskelement.TAG_SNMP_EID, enterprise));
+        }
+        if (generic != null) {
+            mask.addMaskelement(maskElement(Maskelement.TAG_SNMP_GENERIC, generic));
+        }
+        if (specific != null) {
+            mask.addMaskelement(maskElement(Maskelement.TAG_SNMP_SPECIFIC, specific));
+        }
+        if (vbnumber != null) {
+            if (mask.getMaskelements().isEmpty()) {
+                mask.addMaskelement(maskElement(Maskelement.TAG_SNMP_GENERIC, "6"));
+            }
+            final Varbind varbind = new Varbind();
+            varbind.setVbnumber(vbnumber);
+            varbind.addVbvalue(vbvalue);
+            mask.addVarbind(varbind);
+        }
+        event.setMask(mask);
+        return event;
+    }
+
+    private static Maskelement maskElement(final String name, final String value) {
+        final Maskelement maskElement = new Maskelement();
+        maskElement.setMename(name);
+        maskElement.addMevalue(value);
+        return maskElement;
+    }
+
+    private static org.opennms.netmgt.xml.event.Event trapInstance(final String enterprise, final int generic, final int specific) {
+        final org.opennms.netmgt.xml.event.Snmp snmp = new org.opennms.netmgt.xml.event.Snmp();
+        snmp.setId(enterprise);
+        snmp.setGeneric(generic);
+        snmp.setSpecific(specific);
+        final org.opennms.netmgt.xml.event.Event event = new org.opennms.netmgt.xml.event.Event();
+        event.setSnmp(snmp);
+        return event;
+    }
+}
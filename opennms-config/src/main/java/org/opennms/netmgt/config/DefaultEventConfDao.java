@@ -70,6 +70,12 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 
 	private Partition m_partition;
 
+	/**
+	 * Whether or not the event definitions are compiled into an index used
+	 * to match incoming events, instead of scanning the partitions linearly.
+	 */
+	private boolean m_indexMatchers = Boolean.parseBoolean(System.getProperty("org.opennms.eventd.eventconf.indexMatchers", "true"));
+
     /**
      * Used to keep track of the last modified time for the loaded event files.
      * See the reloadConfig() for details.
@@ -84,6 +90,14 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 		m_programmaticStoreRelativePath = programmaticStoreRelativeUrl;
 	}
 
+	public boolean isIndexMatchers() {
+		return m_indexMatchers;
+	}
+
+	public void setIndexMatchers(boolean indexMatchers) {
+		m_indexMatchers = indexMatchers;
+	}
+
 	@Override
 	public void reload() throws DataAccessException {
 		try {
@@ -176,7 +190,7 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 	@Override
 	public void addEvent(Event event) {
 		m_events.addEvent(event);
-		m_events.initialize(m_partition, new EventOrdering());
+		m_events.initialize(m_partition, new EventOrdering(), m_indexMatchers);
 	}
 
 	@Override
@@ -188,7 +202,7 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 		}
 
 		programmaticEvents.addEvent(event);
-		m_events.initialize(m_partition, new EventOrdering());
+		m_events.initialize(m_partition, new EventOrdering(), m_indexMatchers);
 
 	}
 
@@ -202,7 +216,7 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 			m_events.removeLoadedEventFile(m_programmaticStoreRelativePath);
 		} 
 
-		m_events.initialize(m_partition, new EventOrdering());
+		m_events.initialize(m_partition, new EventOrdering(), m_indexMatchers);
 
 		return true;
 
@@ -292,7 +306,7 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
             events.loadEventFilesIfModified(m_configResource, m_lastModifiedEventFiles);
 
             // Order the events for efficient searching
-            events.initialize(m_partition, new EventOrdering());
+            events.initialize(m_partition, new EventOrdering(), m_indexMatchers);
 
             m_events = events;
         } catch (Exception e) {
@@ -306,7 +320,7 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 			m_lastModifiedEventFiles = events.loadEventFiles(m_configResource);
 
 			m_partition = new EnterpriseIdPartition();
-			events.initialize(m_partition, new EventOrdering());
+			events.initialize(m_partition, new EventOrdering(), m_indexMatchers);
 
 			m_events = events;
 		} catch (Exception e) {
@@ -0,0 +1,312 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import static org.opennms.core.utils.InetAddressUtils.addr;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventListener;
+import org.opennms.netmgt.events.api.EventSubscriptionService;
+import org.opennms.netmgt.filter.api.FilterParseException;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Parm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Holds the results of filter rules evaluated by the {@link JdbcFilterDao},
+ * keyed by the text of the rule.
+ *
+ * Results are stored as rows grouped by node ID. When a node changes, it is
+ * marked as dirty in every cached result, and the next lookup of a result
+ * only queries the rows of its dirty nodes before answering from memory.
+ * This lets a burst of inventory events be handled with a single query per
+ * rule, instead of running every rule again.
+ *
+ * Once {@link #subscribe(EventSubscriptionService)} has been called, node,
+ * interface, service, asset and category change events mark the nodes they
+ * refer to as dirty.
+ *
+ * Some changes, like a new sysObjectID or changes to the SNMP interfaces,
+ * are not announced by any event, so results are loaded again as a whole
+ * once they are older than {@link #MAX_AGE_SYS_PROP} milliseconds.
+ */
+public class FilterResultCache implements EventListener {
+    private static final Logger LOG = LoggerFactory.getLogger(FilterResultCache.class);
+
+    /**
+     * The events after which the rules matching a node must be evaluated again
+     */
+    public static final List<String> UEIS = Collections.unmodifiableList(Arrays.asList(
+        EventConstants.NODE_ADDED_EVENT_UEI,
+        EventConstants.NODE_UPDATED_EVENT_UEI,
+        EventConstants.NODE_INFO_CHANGED_EVENT_UEI,
+        EventConstants.PRIMARY_SNMP_INTERFACE_CHANGED_EVENT_UEI,
+        EventConstants.NODE_DELETED_EVENT_UEI,
+        EventConstants.DUP_NODE_DELETED_EVENT_UEI,
+        EventConstants.NODE_LABEL_CHANGED_EVENT_UEI,
+        EventConstants.NODE_CATEGORY_MEMBERSHIP_CHANGED_EVENT_UEI,
+        EventConstants.ASSET_INFO_CHANGED_EVENT_UEI,
+        EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI,
+        EventConstants.INTERFACE_DELETED_EVENT_UEI,
+        EventConstants.INTERFACE_REPARENTED_EVENT_UEI,
+        EventConstants.NODE_GAINED_SERVICE_EVENT_UEI,
+        EventConstants.SERVICE_DELETED_EVENT_UEI,
+        EventConstants.SERVICE_UNMANAGED_EVENT_UEI
+    ));
+
+    public static final String MAX_AGE_SYS_PROP = "org.opennms.netmgt.filter.cache.maxAge";
+
+    public static final long DEFAULT_MAX_AGE_MS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Above this many dirty nodes, a result is loaded again as a whole
+     */
+    private static final int MAX_DIRTY_NODES = 1000;
+
+    /**
+     * Loads the rows matched by a rule, grouped by node ID.
+     */
+    public interface RowLoader {
+        /**
+         * @param nodeIds the nodes to load the rows for, or <code>null</code> for all nodes
+         */
+        Map<Integer, List<String>> load(Collection<Integer> nodeIds) throws FilterParseException;
+    }
+
+    private final Cache<String, Entry> m_entries;
+
+    private volatile boolean m_subscribed = false;
+
+    public FilterResultCache() {
+        this(Long.getLong(MAX_AGE_SYS_PROP, DEFAULT_MAX_AGE_MS), Ticker.systemTicker());
+    }
+
+    /**
+     * @param maxAgeMs the age after which a result is loaded again as a whole
+     * @param ticker the source of time
+     */
+    protected FilterResultCache(final long maxAgeMs, final Ticker ticker) {
+        // Entries are updated in place, so they expire once their first load is older than the maximum age
+        m_entries = CacheBuilder.newBuilder()
+                .maximumSize(1000)
+                .expireAfterWrite(maxAgeMs, TimeUnit.MILLISECONDS)
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * Registers this cache for the events that change the results of rules.
+     *
+     * @param eventSubscriptionService the service to subscribe to
+     */
+    public void subscribe(final EventSubscriptionService eventSubscriptionService) {
+        eventSubscriptionService.addEventListener(this, UEIS);
+        m_subscribed = true;
+    }
+
+    /**
+     * @return whether the cache receives the events needed to keep results up to date
+     */
+    public boolean isSubscribed() {
+        return m_subscribed;
+    }
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    @Override
+    public void onEvent(final Event e) {
+        final Set<Integer> nodeIds = new HashSet<>();
+        if (e.hasNodeid() && e.getNodeid() > 0) {
+            nodeIds.add(e.getNodeid().intValue());
+        }
+        if (EventConstants.INTERFACE_REPARENTED_EVENT_UEI.equals(e.getUei())) {
+            addNodeId(nodeIds, e.getParm(EventConstants.PARM_OLD_NODEID));
+            addNodeId(nodeIds, e.getParm(EventConstants.PARM_NEW_NODEID));
+        }
+
+        if (nodeIds.isEmpty()) {
+            LOG.debug("Event {} does not refer to a node, flushing all filter results", e.getUei());
+            invalidateAll();
+        } else {
+            nodeIds.forEach(this::invalidateNode);
+        }
+    }
+
+    private static void addNodeId(final Set<Integer> nodeIds, final Parm parm) {
+        if (parm != null && parm.getValue() != null) {
+            try {
+                nodeIds.add(Integer.parseInt(parm.getValue().getContent()));
+            } catch (final NumberFormatException e) {
+                LOG.warn("Parameter {} cannot be non-numeric", parm.getParmName(), e);
+            }
+        }
+    }
+
+    /**
+     * Marks the node as dirty in every cached result.
+     *
+     * @param nodeId the node that changed
+     */
+    public void invalidateNode(final int nodeId) {
+        for (final Entry entry : m_entries.asMap().values()) {
+            entry.m_dirtyNodes.add(nodeId);
+        }
+    }
+
+    /**
+     * Discards every cached result.
+     */
+    public void invalidateAll() {
+        m_entries.invalidateAll();
+    }
+
+    /**
+     * Returns the current result for the given key, loading it or the rows of
+     * its dirty nodes as needed.
+     */
+    protected Result getResult(final String key, final RowLoader loader) throws FilterParseException {
+        final Entry entry;
+        try {
+            entry = m_entries.get(key, Entry::new);
+        } catch (final ExecutionException | UncheckedExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+
+        final Result result = entry.m_result;
+        if (result != null && entry.m_dirtyNodes.isEmpty()) {
+            return result;
+        }
+        synchronized (entry) {
+            if (entry.m_result == null || entry.m_dirtyNodes.size() > MAX_DIRTY_NODES) {
+                entry.m_dirtyNodes.clear();
+                entry.m_result = new Result(loader.load(null));
+            } else if (!entry.m_dirtyNodes.isEmpty()) {
+                // nodes marked while the rows are loaded stay dirty for the next lookup
+                final List<Integer> dirtyNodes = new ArrayList<>(entry.m_dirtyNodes);
+                entry.m_dirtyNodes.removeAll(dirtyNodes);
+
+                final Map<Integer, List<String>> rows = new HashMap<>(entry.m_result.m_rowsByNode);
+                rows.keySet().removeAll(dirtyNodes);
+                rows.putAll(loader.load(dirtyNodes));
+                LOG.debug("Refreshed {} dirty nodes for filter result {}", dirtyNodes.size(), key);
+                entry.m_result = new Result(rows);
+            }
+            return entry.m_result;
+        }
+    }
+
+    private static final class Entry {
+        private final Set<Integer> m_dirtyNodes = ConcurrentHashMap.newKeySet();
+        private volatile Result m_result;
+    }
+
+    /**
+     * An immutable set of rows matched by a rule, along with the views built from them.
+     */
+    protected static final class Result {
+        private final Map<Integer, List<String>> m_rowsByNode;
+        private volatile List<InetAddress> m_addresses;
+        private volatile Set<InetAddress> m_addressIndex;
+        private volatile SortedMap<Integer, String> m_nodeMap;
+
+        private Result(final Map<Integer, List<String>> rowsByNode) {
+            m_rowsByNode = rowsByNode;
+        }
+
+        /**
+         * @return the distinct addresses, when the rows hold IP addresses
+         */
+        public List<InetAddress> getAddresses() {
+            if (m_addresses == null) {
+                final Set<InetAddress> addresses = new LinkedHashSet<>();
+                for (final List<String> rows : m_rowsByNode.values()) {
+                    for (final String row : rows) {
+                        final InetAddress address = addr(row);
+                        if (address != null) {
+                            addresses.add(address);
+                        }
+                    }
+                }
+                m_addressIndex = Collections.unmodifiableSet(addresses);
+                m_addresses = Collections.unmodifiableList(new ArrayList<>(addresses));
+            }
+            return m_addresses;
+        }
+
+        /**
+         * @return whether the address is one of the rows, when the rows hold IP addresses
+         */
+        public boolean containsAddress(final InetAddress address) {
+            getAddresses();
+            return m_addressIndex.contains(address);
+        }
+
+        /**
+         * @return the node labels by node ID, when the rows hold node labels
+         */
+        public SortedMap<Integer, String> getNodeMap() {
+            if (m_nodeMap == null) {
+                final SortedMap<Integer, String> nodeMap = new TreeMap<>();
+                for (final Map.Entry<Integer, List<String>> rows : m_rowsByNode.entrySet()) {
+                    for (final String row : rows.getValue()) {
+                        nodeMap.put(rows.getKey(), row);
+                    }
+                }
+                m_nodeMap = Collections.unmodifiableSortedMap(nodeMap);
+            }
+            return m_nodeMap;
+        }
+    }
+}
@@ -37,13 +37,17 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -58,14 +62,24 @@ import org.opennms.netmgt.filter.api.FilterParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 
+import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
 /**
  * <p>JdbcFilterDao class.</p>
  *
+ * <p>The SQL generated for a rule is cached by rule text. The active IP
+ * address list of a rule is kept in a {@link FilterResultCache} until it is
+ * flushed, and once that cache is subscribed to inventory events the node
+ * maps and IP address lists are kept there as well, so that they only need
+ * to be queried again for the nodes that changed.</p>
+ *
  * @author <a href="mailto:dj@opennms.org">DJ Gregor</a>
  * @version $Id: $
  */
@@ -81,6 +95,8 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
 
 	private DataSource m_dataSource;
     private DatabaseSchemaConfig m_databaseSchemaConfigFactory;
+    private FilterResultCache m_resultCache = new FilterResultCache();
+    private final Cache<String, String> m_statements = CacheBuilder.newBuilder().maximumSize(1000).build();
 
     /**
      * <p>setDataSource</p>
@@ -118,6 +134,24 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
         return m_databaseSchemaConfigFactory;
     }
 
+    /**
+     * <p>setResultCache</p>
+     *
+     * @param resultCache a {@link org.opennms.netmgt.filter.FilterResultCache} object.
+     */
+    public void setResultCache(final FilterResultCache resultCache) {
+        m_resultCache = resultCache;
+    }
+
+    /**
+     * <p>getResultCache</p>
+     *
+     * @return a {@link org.opennms.netmgt.filter.FilterResultCache} object.
+     */
+    public FilterResultCache getResultCache() {
+        return m_resultCache;
+    }
+
     /**
      * <p>afterPropertiesSet</p>
      */
@@ -125,6 +159,7 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
     public void afterPropertiesSet() {
         Assert.state(m_dataSource != null, "property dataSource cannot be null");
         Assert.state(m_databaseSchemaConfigFactory != null, "property databaseSchemaConfigFactory cannot be null");
+        Assert.state(m_resultCache != null, "property resultCache cannot be null");
     }
 
     /**
@@ -138,6 +173,12 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
      */
     @Override
     public SortedMap<Integer, String> getNodeMap(final String rule) throws FilterParseException {
+        if (m_resultCache.isSubscribed()) {
+            return m_resultCache.getResult("nodeMap:" + rule, nodeIds -> {
+                return getRows(restrictToNodes(getNodeMappingStatement(rule), nodeIds), 1, 2);
+            }).getNodeMap();
+        }
+
     	final SortedMap<Integer, String> resultMap = new TreeMap<Integer, String>();
         String sqlString;
 
@@ -243,16 +284,16 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
     }
 
     @Override
-    @CacheEvict(value="activeIpAddressList", allEntries=true)
-    public void flushActiveIpAddressListCache() {}
+    public void flushActiveIpAddressListCache() {
+        m_resultCache.invalidateAll();
+    }
 
     /**
      * {@inheritDoc}
      */
-    @Cacheable("activeIpAddressList")
     @Override
     public List<InetAddress> getActiveIPAddressList(final String rule) throws FilterParseException {
-    	return getIPAddressList(rule, true);
+    	return new ArrayList<>(getIPAddressResult(rule, true).getAddresses());
     }
 
     /**
@@ -260,9 +301,76 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
      */
     @Override
     public List<InetAddress> getIPAddressList(final String rule) throws FilterParseException {
+        if (m_resultCache.isSubscribed()) {
+            return new ArrayList<>(getIPAddressResult(rule, false).getAddresses());
+        }
     	return getIPAddressList(rule, false);
     }
 
+    private FilterResultCache.Result getIPAddressResult(final String rule, final boolean filterDeleted) throws FilterParseException {
+        return m_resultCache.getResult((filterDeleted ? "activeIpAddressList:" : "ipAddressList:") + rule, nodeIds -> {
+            String sqlString = getIPAddressNodeStatement(rule);
+            if (filterDeleted) {
+                sqlString = filterDeleted(sqlString);
+            }
+            return getRows(restrictToNodes(sqlString, nodeIds), 2, 1);
+        });
+    }
+
+    private static String filterDeleted(final String sqlString) {
+        if (!sqlString.contains("isManaged")) {
+            return sqlString + " AND (ipInterface.isManaged != 'D' or ipInterface.isManaged IS NULL)";
+        }
+        return sqlString;
+    }
+
+    /**
+     * Restricts the results of a statement selecting a nodeID column to the given nodes.
+     *
+     * @param nodeIds the nodes to select, or <code>null</code> to select all of them
+     */
+    private static String restrictToNodes(final String sqlString, final Collection<Integer> nodeIds) {
+        if (nodeIds == null) {
+            return sqlString;
+        } else if (nodeIds.isEmpty()) {
+            return "SELECT * FROM (" + sqlString + ") AS matches WHERE false";
+        }
+        return "SELECT * FROM (" + sqlString + ") AS matches WHERE matches.nodeID IN (" + Joiner.on(',').join(nodeIds) + ")";
+    }
+
+    /**
+     * Runs a statement and groups the values in one of its columns by the node IDs in another.
+     */
+    private Map<Integer, List<String>> getRows(final String sqlString, final int nodeIdColumn, final int valueColumn) throws FilterParseException {
+        final Map<Integer, List<String>> rows = new HashMap<>();
+
+        LOG.debug("Filter.getRows: SQL statement: {}", sqlString);
+
+        final DBUtils d = new DBUtils(getClass());
+        try {
+            final Connection conn = getDataSource().getConnection();
+            d.watch(conn);
+
+            final Statement stmt = conn.createStatement();
+            d.watch(stmt);
+            final ResultSet rset = stmt.executeQuery(sqlString);
+            d.watch(rset);
+
+            if (rset != null) {
+                while (rset.next()) {
+                    rows.computeIfAbsent(rset.getInt(nodeIdColumn), k -> new ArrayList<>()).add(rset.getString(valueColumn));
+                }
+            }
+        } catch (final SQLException e) {
+            LOG.warn("SQL Exception occurred getting filter results.", e);
+            throw new FilterParseException("SQL Exception occurred getting filter results: " + e.getLocalizedMessage(), e);
+        } finally {
+            d.cleanUp();
+        }
+
+        return rows;
+    }
+
     private List<InetAddress> getIPAddressList(final String rule, final boolean filterDeleted) throws FilterParseException {
     	final List<InetAddress> resultList = new ArrayList<>();
         String sqlString;
@@ -277,9 +385,7 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
             sqlString = getSQLStatement(rule);
 
             if (filterDeleted) {
-            	if (!sqlString.contains("isManaged")) {
-            		sqlString += " AND (ipInterface.isManaged != 'D' or ipInterface.isManaged IS NULL)";
-            	}
+                sqlString = filterDeleted(sqlString);
             }
 
             conn = getDataSource().getConnection();
@@ -330,12 +436,15 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
     public boolean isValid(final String addr, final String rule) throws FilterParseException {
         if (rule.length() == 0) {
             return true;
+        } else if (m_resultCache.isSubscribed()) {
+            // answer from the addresses indexed in memory
+            return getIPAddressResult(rule, true).containsAddress(addr(addr));
         } else {
             /*
              * see if the ip address is contained in the list that the
              * rule returns
              */
-            return getActiveIPAddressList(rule).contains(addr(addr));
+            return getIPAddressList(rule, true).contains(addr(addr));
         }
     }
 
@@ -401,16 +510,18 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
      * @throws org.opennms.netmgt.filter.api.FilterParseException if any.
      */
     public String getNodeMappingStatement(final String rule) throws FilterParseException {
-        final List<Table> tables = new ArrayList<>();
+        return getStatement("nodeMapping", rule, () -> {
+            final List<Table> tables = new ArrayList<>();
 
-        final StringBuilder columns = new StringBuilder();
-        columns.append(m_databaseSchemaConfigFactory.addColumn(tables, "nodeID"));
-        columns.append(", " + m_databaseSchemaConfigFactory.addColumn(tables, "nodeLabel"));
+            final StringBuilder columns = new StringBuilder();
+            columns.append(m_databaseSchemaConfigFactory.addColumn(tables, "nodeID"));
+            columns.append(", " + m_databaseSchemaConfigFactory.addColumn(tables, "nodeLabel"));
 
-        final String where = parseRule(tables, rule);
-        final String from = m_databaseSchemaConfigFactory.constructJoinExprForTables(tables);
+            final String where = parseRule(tables, rule);
+            final String from = m_databaseSchemaConfigFactory.constructJoinExprForTables(tables);
 
-        return "SELECT DISTINCT " + columns.toString() + " " + from + " " + where;
+            return "SELECT DISTINCT " + columns.toString() + " " + from + " " + where;
+        });
     }
 
     /**
@@ -421,16 +532,40 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
      * @throws org.opennms.netmgt.filter.api.FilterParseException if any.
      */
     public String getIPServiceMappingStatement(final String rule) throws FilterParseException {
-    	final List<Table> tables = new ArrayList<>();
+        return getStatement("ipServiceMapping", rule, () -> {
+            final List<Table> tables = new ArrayList<>();
 
-    	final StringBuilder columns = new StringBuilder();
-        columns.append(m_databaseSchemaConfigFactory.addColumn(tables, "ipAddr"));
-        columns.append(", " + m_databaseSchemaConfigFactory.addColumn(tables, "serviceName"));
+            final StringBuilder columns = new StringBuilder();
+            columns.append(m_databaseSchemaConfigFactory.addColumn(tables, "ipAddr"));
+            columns.append(", " + m_databaseSchemaConfigFactory.addColumn(tables, "serviceName"));
 
-        final String where = parseRule(tables, rule);
-        final String from = m_databaseSchemaConfigFactory.constructJoinExprForTables(tables);
+            final String where = parseRule(tables, rule);
+            final String from = m_databaseSchemaConfigFactory.constructJoinExprForTables(tables);
+
+            return "SELECT " + columns.toString() + " " + from + " " + where;
+        });
+    }
+
+    /**
+     * <p>getIPAddressNodeStatement</p>
+     *
+     * @param rule a {@link java.lang.String} object.
+     * @return a {@link java.lang.String} object.
+     * @throws org.opennms.netmgt.filter.api.FilterParseException if any.
+     */
+    public String getIPAddressNodeStatement(final String rule) throws FilterParseException {
+        return getStatement("ipAddressNode", rule, () -> {
+            final List<Table> tables = new ArrayList<>();
+
+            final StringBuilder columns = new StringBuilder();
+            columns.append(m_databaseSchemaConfigFactory.addColumn(tables, "ipAddr"));
+            columns.append(", " + m_databaseSchemaConfigFactory.addColumn(tables, "nodeID"));
 
-        return "SELECT " + columns.toString() + " " + from + " " + where;
+            final String where = parseRule(tables, rule);
+            final String from = m_databaseSchemaConfigFactory.constructJoinExprForTables(tables);
+
+            return "SELECT DISTINCT " + columns.toString() + " " + from + " " + where;
+        });
     }
 
     /**
@@ -441,17 +576,19 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
      * @throws org.opennms.netmgt.filter.api.FilterParseException if any.
      */
     public String getInterfaceWithServiceStatement(final String rule) throws FilterParseException {
-    	final List<Table> tables = new ArrayList<>();
+        return getStatement("interfaceWithService", rule, () -> {
+            final List<Table> tables = new ArrayList<>();
 
-    	final StringBuilder columns = new StringBuilder();
-        columns.append(m_databaseSchemaConfigFactory.addColumn(tables, "ipAddr"));
-        columns.append(", " + m_databaseSchemaConfigFactory.addColumn(tables, "serviceName"));
-        columns.append(", " + m_databaseSchemaConfigFactory.addColumn(tables, "nodeID"));
+            final StringBuilder columns = new StringBuilder();
+            columns.append(m_databaseSchemaConfigFactory.addColumn(tables, "ipAddr"));
+            columns.append(", " + m_databaseSchemaConfigFactory.addColumn(tables, "serviceName"));
+            columns.append(", " + m_databaseSchemaConfigFactory.addColumn(tables, "nodeID"));
 
-        final String where = parseRule(tables, rule);
-        final String from = m_databaseSchemaConfigFactory.constructJoinExprForTables(tables);
+            final String where = parseRule(tables, rule);
+            final String from = m_databaseSchemaConfigFactory.constructJoinExprForTables(tables);
 
-        return "SELECT DISTINCT " + columns.toString() + " " + from + " " + where;
+            return "SELECT DISTINCT " + columns.toString() + " " + from + " " + where;
+        });
     }
 
     /**
@@ -463,15 +600,30 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
      * @throws org.opennms.netmgt.filter.api.FilterParseException if any.
      */
     protected String getSQLStatement(final String rule) throws FilterParseException {
-        final List<Table> tables = new ArrayList<>();
+        return getStatement("ipAddress", rule, () -> {
+            final List<Table> tables = new ArrayList<>();
 
-        final StringBuilder columns = new StringBuilder();
-        columns.append(m_databaseSchemaConfigFactory.addColumn(tables, "ipAddr"));
+            final StringBuilder columns = new StringBuilder();
+            columns.append(m_databaseSchemaConfigFactory.addColumn(tables, "ipAddr"));
 
-        final String where = parseRule(tables, rule);
-        final String from = m_databaseSchemaConfigFactory.constructJoinExprForTables(tables);
+            final String where = parseRule(tables, rule);
+            final String from = m_databaseSchemaConfigFactory.constructJoinExprForTables(tables);
 
-        return "SELECT DISTINCT " + columns.toString() + " " + from + " " + where;
+            return "SELECT DISTINCT " + columns.toString() + " " + from + " " + where;
+        });
+    }
+
+    /**
+     * Returns the statement of the given type for a rule, building it only
+     * the first time the rule is seen.
+     */
+    private String getStatement(final String type, final String rule, final Callable<String> builder) throws FilterParseException {
+        try {
+            return m_statements.get(type + ":" + rule, builder);
+        } catch (final ExecutionException | UncheckedExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause());
+            throw new UndeclaredThrowableException(e.getCause());
+        }
     }
 
     /**
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.opennms.core.utils.InetAddressUtils.addr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.model.events.EventBuilder;
+
+import com.google.common.base.Ticker;
+
+public class FilterResultCacheTest {
+    private final Map<Integer, List<String>> m_rows = new HashMap<>();
+    private final List<Collection<Integer>> m_loads = new ArrayList<>();
+    private final FilterResultCache.RowLoader m_loader = nodeIds -> {
+        m_loads.add(nodeIds);
+        final Map<Integer, List<String>> rows = new HashMap<>();
+        m_rows.forEach((nodeId, values) -> {
+            if (nodeIds == null || nodeIds.contains(nodeId)) {
+                rows.put(nodeId, values);
+            }
+        });
+        return rows;
+    };
+
+    private final AtomicLong m_nanos = new AtomicLong();
+
+    private FilterResultCache m_cache;
+
+    @Before
+    public void setUp() {
+        m_cache = new FilterResultCache(TimeUnit.MINUTES.toMillis(10), new Ticker() {
+            @Override
+            public long read() {
+                return m_nanos.get();
+            }
+        });
+        m_rows.put(1, Arrays.asList("192.168.1.1", "192.168.1.2"));
+        m_rows.put(2, Arrays.asList("192.168.2.1"));
+    }
+
+    @Test
+    public void testResultIsLoadedOnce() {
+        assertEquals(3, m_cache.getResult("rule", m_loader).getAddresses().size());
+        assertTrue(m_cache.getResult("rule", m_loader).containsAddress(addr("192.168.2.1")));
+
+        assertEquals(1, m_loads.size());
+        assertNull(m_loads.get(0));
+    }
+
+    @Test
+    public void testOnlyDirtyNodesAreLoadedAgain() {
+        m_cache.getResult("rule", m_loader);
+
+        m_rows.put(2, Arrays.asList("192.168.2.2"));
+        m_rows.put(3, Arrays.asList("192.168.3.1"));
+        m_cache.onEvent(new EventBuilder(EventConstants.NODE_UPDATED_EVENT_UEI, "test").setNodeid(2).getEvent());
+        m_cache.onEvent(new EventBuilder(EventConstants.NODE_ADDED_EVENT_UEI, "test").setNodeid(3).getEvent());
+
+        final FilterResultCache.Result result = m_cache.getResult("rule", m_loader);
+        assertFalse(result.containsAddress(addr("192.168.2.1")));
+        assertTrue(result.containsAddress(addr("192.168.2.2")));
+        assertTrue(result.containsAddress(addr("192.168.3.1")));
+        assertTrue(result.containsAddress(addr("192.168.1.1")));
+
+        assertEquals(2, m_loads.size());
+        assertEquals(2, m_loads.get(1).size());
+        assertTrue(m_loads.get(1).containsAll(Arrays.asList(2, 3)));
+    }
+
+    @Test
+    public void testReparentedInterfaceDirtiesBothNodes() {
+        m_cache.getResult("rule", m_loader);
+
+        m_rows.put(1, Arrays.asList("192.168.1.1"));
+        m_rows.put(2, Arrays.asList("192.168.2.1", "192.168.1.2"));
+        m_cache.onEvent(new EventBuilder(EventConstants.INTERFACE_REPARENTED_EVENT_UEI, "test")
+                .setInterface(addr("192.168.1.2"))
+                .addParam(EventConstants.PARM_OLD_NODEID, 1)
+                .addParam(EventConstants.PARM_NEW_NODEID, 2)
+                .getEvent());
+
+        assertEquals(3, m_cache.getResult("rule", m_loader).getAddresses().size());
+        assertEquals(2, m_loads.get(1).size());
+    }
+
+    @Test
+    public void testEventWithoutNodeFlushesEverything() {
+        m_cache.getResult("nodeMap", m_loader);
+        m_cache.onEvent(new EventBuilder(EventConstants.SERVICE_UNMANAGED_EVENT_UEI, "test").getEvent());
+        m_cache.getResult("nodeMap", m_loader);
+
+        assertEquals(2, m_loads.size());
+        assertNull(m_loads.get(1));
+    }
+
+    @Test
+    public void testResultIsLoadedAgainOnceTooOld() {
+        m_cache.getResult("rule", m_loader);
+        m_cache.onEvent(new EventBuilder(EventConstants.NODE_INFO_CHANGED_EVENT_UEI, "test").setNodeid(2).getEvent());
+        m_cache.getResult("rule", m_loader);
+        assertEquals(2, m_loads.size());
+
+        // Changes which are not announced by an event are picked up after the maximum age
+        m_rows.put(1, Arrays.asList("192.168.1.3"));
+        m_nanos.addAndGet(TimeUnit.MINUTES.toNanos(5));
+        assertFalse(m_cache.getResult("rule", m_loader).containsAddress(addr("192.168.1.3")));
+        m_nanos.addAndGet(TimeUnit.MINUTES.toNanos(6));
+        assertTrue(m_cache.getResult("rule", m_loader).containsAddress(addr("192.168.1.3")));
+
+        assertEquals(3, m_loads.size());
+        assertNull(m_loads.get(2));
+    }
+}
@@ -103,6 +103,14 @@ public interface NodeDao extends LegacyOnmsDao<OnmsNode, Integer> {
      * @return a {@link java.util.Map} object.
      */
     Map<String, Integer> getForeignIdToNodeIdMap(String foreignSource);
+
+    /**
+     * <p>getForeignIdToRequisitionHashMap</p>
+     *
+     * @param foreignSource a {@link java.lang.String} object.
+     * @return the requisition hash of each node in the foreign source that has one, by foreign ID
+     */
+    Map<String, String> getForeignIdToRequisitionHashMap(String foreignSource);
     
     /**
      * <p>getForeignIdsPerForeignSourceMap</p>
@@ -199,6 +199,17 @@ public class MockNodeDao extends AbstractMockDao<OnmsNode, Integer> implements N
         return nodes;
     }
 
+    @Override
+    public Map<String, String> getForeignIdToRequisitionHashMap(final String foreignSource) {
+        final Map<String, String> hashes = new HashMap<String, String>();
+        for (final OnmsNode node : findAll()) {
+            if (foreignSource.equals(node.getForeignSource()) && node.getRequisitionHash() != null) {
+                hashes.put(node.getForeignId(), node.getRequisitionHash());
+            }
+        }
+        return hashes;
+    }
+
     @Override
     public List<OnmsNode> findAllByVarCharAssetColumn(final String columnName, final String columnValue) {
         final CriteriaBuilder builder = new CriteriaBuilder(OnmsNode.class);
@@ -373,6 +373,18 @@ public class NodeDaoHibernate extends AbstractDaoHibernate<OnmsNode, Integer> im
         return Collections.unmodifiableMap(foreignIdMap);
     }
 
+    /** {@inheritDoc} */
+    @SuppressWarnings("unchecked")
+    @Override
+    public Map<String, String> getForeignIdToRequisitionHashMap(String foreignSource) {
+        List<Object[]> pairs = (List<Object[]>)getHibernateTemplate().find("select n.foreignId, n.requisitionHash from OnmsNode n where n.foreignSource = ? and n.requisitionHash is not null", foreignSource);
+        Map<String, String> hashMap = new HashMap<String, String>();
+        for (Object[] pair : pairs) {
+            hashMap.put((String)pair[0], (String)pair[1]);
+        }
+        return Collections.unmodifiableMap(hashMap);
+    }
+
     /** {@inheritDoc} */
     @Override
     public List<OnmsNode> findByForeignSource(String foreignSource) {
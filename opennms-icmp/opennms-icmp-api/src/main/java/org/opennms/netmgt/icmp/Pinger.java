@@ -31,6 +31,9 @@ package org.opennms.netmgt.icmp;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import com.google.common.util.concurrent.RateLimiter;
 
 /**
  * <p>Pinger class.</p>
@@ -133,6 +136,72 @@ public interface Pinger {
          */
         public List<Number> parallelPing(InetAddress host, int count, long timeout, long pingInterval) throws Exception;
         
+        /**
+         * Ping each of the given hosts once, sending at most the given number of echo
+         * requests per second, and report the outcome for every host to the callback.
+         * The round-trip time of a host is available from the {@link EchoPacket} handed
+         * to {@link PingResponseCallback#handleResponse(InetAddress, EchoPacket)}.
+         *
+         * This call blocks until every host has responded, timed out, or failed.
+         *
+         * The default implementation issues one request per host through
+         * {@link #ping(InetAddress, long, int, int, int, PingResponseCallback)}; implementations
+         * should override it when they can track a large number of requests more cheaply.
+         *
+         * @param hosts The {@link java.net.InetAddress} addresses to poll.
+         * @param timeout The time to wait between each retry.
+         * @param retries The number of times to retry.
+         * @param packetsize The size in byte of the ICMP packet.
+         * @param packetsPerSecond The maximum rate at which packets will be sent, or 0 for no limit.
+         * @param cb the {@link org.opennms.netmgt.icmp.PingResponseCallback} callback to call upon success or error
+         */
+        public default void sweep(final Iterable<InetAddress> hosts, final long timeout, final int retries, final int packetsize, final double packetsPerSecond, final PingResponseCallback cb) throws Exception {
+            final RateLimiter limiter = packetsPerSecond > 0.0 ? RateLimiter.create(packetsPerSecond) : null;
+            final Semaphore completed = new Semaphore(0);
+            final PingResponseCallback countingCallback = new PingResponseCallback() {
+                @Override
+                public void handleResponse(InetAddress address, EchoPacket response) {
+                    try {
+                        cb.handleResponse(address, response);
+                    } finally {
+                        completed.release();
+                    }
+                }
+
+                @Override
+                public void handleTimeout(InetAddress address, EchoPacket request) {
+                    try {
+                        cb.handleTimeout(address, request);
+                    } finally {
+                        completed.release();
+                    }
+                }
+
+                @Override
+                public void handleError(InetAddress address, EchoPacket request, Throwable t) {
+                    try {
+                        cb.handleError(address, request, t);
+                    } finally {
+                        completed.release();
+                    }
+                }
+            };
+
+            int sent = 0;
+            for (final InetAddress host : hosts) {
+                if (limiter != null) {
+                    limiter.acquire();
+                }
+                try {
+                    ping(host, timeout, retries, packetsize, 1, countingCallback);
+                } catch (final Exception e) {
+                    countingCallback.handleError(host, null, e);
+                }
+                sent++;
+            }
+            completed.acquire(sent);
+        }
+
 	public void setAllowFragmentation(final boolean allow) throws Exception;
 
 	public void setTrafficClass(final int tc) throws Exception;
@@ -85,6 +85,12 @@ public class BestMatchPinger implements Pinger {
         return m_pinger.parallelPing(host, count, timeout, pingInterval, size);
     }
 
+    @Override
+    public void sweep(final Iterable<InetAddress> hosts, final long timeout, final int retries, final int packetsize, final double packetsPerSecond, final PingResponseCallback cb) throws Exception {
+        initialize();
+        m_pinger.sweep(hosts, timeout, retries, packetsize, packetsPerSecond, cb);
+    }
+
     @Override
     public void initialize4() throws Exception {
         initialize();
@@ -29,6 +29,7 @@
 package org.opennms.netmgt.icmp.jna;
 
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
@@ -95,6 +96,11 @@ public abstract class AbstractPinger<T extends InetAddress> implements Runnable
 
     abstract public void ping(T addr, int identifier, int sequenceNumber, long threadId, long count, long interval, int packetSize) throws InterruptedException;
 
+    /**
+     * Sends a single echo request without waiting afterwards.
+     */
+    abstract public void send(T addr, int identifier, int sequenceNumber, long threadId, int packetSize);
+
     public void addPingReplyListener(PingReplyListener listener) {
         m_listeners.add(listener);
     }
@@ -105,6 +111,17 @@ public abstract class AbstractPinger<T extends InetAddress> implements Runnable
         }
     }
 
+    /**
+     * Copies the remaining content of the given buffer, so that it outlives the
+     * reuse of the buffer it was received in.
+     */
+    protected static ByteBuffer copyOf(final ByteBuffer buffer) {
+        final ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer.duplicate());
+        copy.flip();
+        return copy;
+    }
+
     protected void setThrowable(Throwable e) {
         m_throwable.set(e);
     }
@@ -29,7 +29,12 @@
 package org.opennms.netmgt.icmp.jna;
 
 import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
 import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.opennms.netmgt.icmp.EchoPacket;
 import org.opennms.netmgt.icmp.IcmpMessengerIOException;
@@ -51,6 +56,8 @@ public class JnaIcmpMessenger implements Messenger<JnaPingRequest, JnaPingReply>
 	private V4Pinger m_v4;
 	private V6Pinger m_v6;
     private ReplyHandler<JnaPingReply> m_callback = null;
+    private final ConcurrentMap<Integer, JnaPingSweep> m_sweeps = new ConcurrentHashMap<>();
+    private final AtomicInteger m_nextSweepId = new AtomicInteger();
 
 	public JnaIcmpMessenger(final int pingerId) throws Exception {
 	    Throwable error = null;
@@ -107,9 +114,51 @@ public class JnaIcmpMessenger implements Messenger<JnaPingRequest, JnaPingReply>
 
         @Override
 	public void onPingReply(final InetAddress address, final EchoPacket packet) {
+        if (JnaPingSweep.isSweepThreadId(packet.getThreadId())) {
+            // Sweep replies bypass the request tracker and go straight to the sweep's own table
+            final JnaPingSweep sweep = m_sweeps.get(JnaPingSweep.getSweepId(packet.getThreadId()));
+            if (sweep != null) {
+                sweep.handleReply(address, packet);
+            }
+            return;
+        }
         m_callback.handleReply(new JnaPingReply(address, packet));
 	}
 
+        /**
+         * Registers the sweep so that it receives the replies to its requests.
+         *
+         * @return the id identifying the sweep in the thread id of its requests
+         */
+        public int register(final JnaPingSweep sweep) {
+            while (true) {
+                final int sweepId = m_nextSweepId.getAndIncrement() & JnaPingSweep.MAX_SWEEP_ID;
+                if (m_sweeps.putIfAbsent(sweepId, sweep) == null) {
+                    return sweepId;
+                }
+            }
+        }
+
+        public void unregister(final int sweepId) {
+            m_sweeps.remove(sweepId);
+        }
+
+        /**
+         * Sends a single echo request to the given address, bypassing the request tracker.
+         *
+         * @return false if no pinger can handle the address
+         */
+        public boolean send(final InetAddress addr, final int identifier, final int sequenceNumber, final long threadId, final int packetSize) {
+            if (addr instanceof Inet4Address && m_v4 != null) {
+                m_v4.send((Inet4Address)addr, identifier, sequenceNumber, threadId, packetSize);
+                return true;
+            } else if (addr instanceof Inet6Address && m_v6 != null) {
+                m_v6.send((Inet6Address)addr, identifier, sequenceNumber, threadId, packetSize);
+                return true;
+            }
+            return false;
+        }
+
         public void setTrafficClass(int tc) throws IOException {
             if (m_v4 != null) m_v4.getPingSocket().setTrafficClass(tc);
             if (m_v6 != null) m_v6.getPingSocket().setTrafficClass(tc);
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp.jna;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.icmp.EchoPacket;
+import org.opennms.netmgt.icmp.LogPrefixPreservingPingResponseCallback;
+import org.opennms.netmgt.icmp.PingResponseCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Pings a large number of hosts through the sockets of a {@link JnaIcmpMessenger}
+ * without going through the request tracker.
+ *
+ * The state of every target is kept in arrays indexed by the position of the target,
+ * and that position is carried in the thread id of the echo request, so matching a
+ * reply is a bounds check and an array lookup. Requests are paced by a token bucket,
+ * and the targets that have not replied once the timeout has elapsed are probed again
+ * until the retries are exhausted.
+ */
+public class JnaPingSweep {
+    private static final Logger LOG = LoggerFactory.getLogger(JnaPingSweep.class);
+
+    /**
+     * Marks the thread ids of sweep requests. Regular requests use sequential thread ids,
+     * which never reach the upper 16 bits.
+     */
+    private static final long SWEEP_MARKER = 0x5357L << 48;
+    private static final long SWEEP_MARKER_MASK = 0xFFFFL << 48;
+
+    public static final int MAX_SWEEP_ID = 0xFFFF;
+
+    private static final int PENDING = 0;
+    private static final int DONE = 1;
+
+    private final JnaIcmpMessenger m_messenger;
+    private final int m_identifier;
+    private final InetAddress[] m_targets;
+    private final long m_timeoutNanos;
+    private final int m_retries;
+    private final int m_packetSize;
+    private final RateLimiter m_limiter;
+    private final PingResponseCallback m_callback;
+
+    private final AtomicIntegerArray m_states;
+    private int m_remaining;
+
+    public JnaPingSweep(final JnaIcmpMessenger messenger, final int identifier, final Iterable<InetAddress> hosts, final long timeout, final int retries, final int packetSize, final double packetsPerSecond, final PingResponseCallback cb) {
+        m_messenger = messenger;
+        m_identifier = identifier;
+        final List<InetAddress> targets = new ArrayList<>();
+        hosts.forEach(targets::add);
+        m_targets = targets.toArray(new InetAddress[targets.size()]);
+        m_timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        m_retries = retries;
+        m_packetSize = packetSize;
+        m_limiter = packetsPerSecond > 0.0 ? RateLimiter.create(packetsPerSecond) : null;
+        m_callback = new LogPrefixPreservingPingResponseCallback(cb);
+        m_states = new AtomicIntegerArray(m_targets.length);
+        m_remaining = m_targets.length;
+    }
+
+    public static boolean isSweepThreadId(final long threadId) {
+        return (threadId & SWEEP_MARKER_MASK) == SWEEP_MARKER;
+    }
+
+    public static int getSweepId(final long threadId) {
+        return (int)(threadId >>> 32) & MAX_SWEEP_ID;
+    }
+
+    private static long toThreadId(final int sweepId, final int index) {
+        return SWEEP_MARKER | ((long)sweepId << 32) | (index & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Sends the requests and waits until every target has replied or timed out.
+     */
+    public void run() throws InterruptedException {
+        final int sweepId = m_messenger.register(this);
+        try {
+            int[] pending = new int[m_targets.length];
+            for (int i = 0; i < pending.length; i++) {
+                pending[i] = i;
+            }
+            int numPending = pending.length;
+
+            for (int attempt = 0; attempt <= m_retries && numPending > 0; attempt++) {
+                for (int i = 0; i < numPending; i++) {
+                    final int index = pending[i];
+                    if (m_states.get(index) != PENDING) {
+                        continue;
+                    }
+                    if (m_limiter != null) {
+                        m_limiter.acquire();
+                    }
+                    send(sweepId, index, attempt);
+                }
+
+                awaitReplies(System.nanoTime() + m_timeoutNanos);
+
+                // Only keep the targets that are still waiting for a reply
+                int numStillPending = 0;
+                for (int i = 0; i < numPending; i++) {
+                    if (m_states.get(pending[i]) == PENDING) {
+                        pending[numStillPending++] = pending[i];
+                    }
+                }
+                numPending = numStillPending;
+                if (numPending > 0 && attempt < m_retries) {
+                    LOG.debug("Retrying {} of {} targets without reply", numPending, m_targets.length);
+                }
+            }
+
+            for (int i = 0; i < numPending; i++) {
+                final int index = pending[i];
+                if (m_states.compareAndSet(index, PENDING, DONE)) {
+                    completed();
+                    m_callback.handleTimeout(m_targets[index], null);
+                }
+            }
+        } finally {
+            m_messenger.unregister(sweepId);
+        }
+    }
+
+    private void send(final int sweepId, final int index, final int attempt) {
+        final InetAddress target = m_targets[index];
+        try {
+            if (!m_messenger.send(target, m_identifier, attempt, toThreadId(sweepId, index), m_packetSize)) {
+                throw new IllegalStateException("Cannot ping " + InetAddressUtils.str(target) + ": No pinger found that can handle this address");
+            }
+        } catch (final Throwable t) {
+            if (m_states.compareAndSet(index, PENDING, DONE)) {
+                completed();
+                m_callback.handleError(target, null, t);
+            }
+        }
+    }
+
+    /**
+     * Called by the socket reader threads for every reply to a request of this sweep.
+     */
+    public void handleReply(final InetAddress address, final EchoPacket packet) {
+        final long index = packet.getThreadId() & 0xFFFFFFFFL;
+        if (index >= m_targets.length || !m_targets[(int)index].equals(address)) {
+            LOG.debug("Ignoring unexpected sweep reply from {}", address);
+            return;
+        }
+        // Only the first reply counts, the others are duplicates or answers to retries
+        if (m_states.compareAndSet((int)index, PENDING, DONE)) {
+            completed();
+            m_callback.handleResponse(address, new JnaPingReply(address, packet));
+        }
+    }
+
+    private synchronized void completed() {
+        if (--m_remaining == 0) {
+            notifyAll();
+        }
+    }
+
+    private synchronized void awaitReplies(final long deadline) throws InterruptedException {
+        long remainingNanos;
+        while (m_remaining > 0 && (remainingNanos = deadline - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+        }
+    }
+}
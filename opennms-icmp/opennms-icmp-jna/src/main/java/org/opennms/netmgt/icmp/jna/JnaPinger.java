@@ -257,6 +257,26 @@ public class JnaPinger implements Pinger {
         return parallelPing(host, count, timeout, pingInterval, DEFAULT_PACKET_SIZE);
     }
 
+    /**
+     * Ping each of the given hosts once, sending at most the given number of echo
+     * requests per second, and report the outcome for every host to the callback.
+     *
+     * The requests share the sockets of the single pings, but are tracked by a
+     * {@link JnaPingSweep} rather than by the request tracker.
+     *
+     * @param hosts The {@link java.net.InetAddress} addresses to poll.
+     * @param timeout The time to wait between each retry.
+     * @param retries The number of times to retry.
+     * @param packetsize The size in byte of the ICMP packet.
+     * @param packetsPerSecond The maximum rate at which packets will be sent, or 0 for no limit.
+     * @param cb the {@link org.opennms.netmgt.icmp.PingResponseCallback} callback to call upon success or error
+     */
+    @Override
+    public void sweep(final Iterable<InetAddress> hosts, final long timeout, final int retries, final int packetsize, final double packetsPerSecond, final PingResponseCallback cb) throws Exception {
+        initialize();
+        new JnaPingSweep(m_messenger, m_pingerId, hosts, timeout == 0 ? DEFAULT_TIMEOUT : timeout, retries, packetsize, packetsPerSecond, cb).run();
+    }
+
     @Override
     public void setAllowFragmentation(boolean allow) throws Exception {
         initialize();
@@ -74,16 +74,18 @@ public class V4Pinger extends AbstractPinger<Inet4Address> {
         Logging.putPrefix("icmp");
         try {
             final int pingerId = getPingerId();
+            // The receive buffer is reused for every packet, and only the replies
+            // that are handed to the listeners get a copy of their own
+            final NativeDatagramPacket datagram = new NativeDatagramPacket(65535);
             while (!isFinished()) {
-                final NativeDatagramPacket datagram = new NativeDatagramPacket(65535);
                 getPingSocket().receive(datagram);
                 final long received = System.nanoTime();
     
                 final ICMPPacket icmpPacket = new ICMPPacket(getIPPayload(datagram));
                 final V4PingReply echoReply = icmpPacket.getType() == Type.EchoReply ? new V4PingReply(icmpPacket, received) : null;
             
-                if (echoReply != null && echoReply.getIdentifier() ==  pingerId && echoReply.isValid()) {
-                    notifyPingListeners(datagram.getAddress(), echoReply);
+                if (echoReply != null && echoReply.getIdentifier() == pingerId && echoReply.isValid()) {
+                    notifyPingListeners(datagram.getAddress(), new V4PingReply(new ICMPPacket(copyOf(getIPPayload(datagram))), received));
                 }
             }
         } catch(final Throwable e) {
@@ -98,11 +100,15 @@ public class V4Pinger extends AbstractPinger<Inet4Address> {
     
     @Override
     public void ping(final Inet4Address addr, final int identifier, final int sequenceNumber, final long threadId, final long count, final long interval, final int packetSize) throws InterruptedException {
-        final NativeDatagramSocket socket = getPingSocket();
         for(int i = sequenceNumber; i < sequenceNumber + count; i++) {
-            final V4PingRequest request = new V4PingRequest(identifier, i, threadId,packetSize);
-            request.send(socket, addr);
+            send(addr, identifier, i, threadId, packetSize);
             Thread.sleep(interval);
         }
     }
+
+    @Override
+    public void send(final Inet4Address addr, final int identifier, final int sequenceNumber, final long threadId, final int packetSize) {
+        final V4PingRequest request = new V4PingRequest(identifier, sequenceNumber, threadId, packetSize);
+        request.send(getPingSocket(), addr);
+    }
 }
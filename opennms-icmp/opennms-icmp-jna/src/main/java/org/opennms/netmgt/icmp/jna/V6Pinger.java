@@ -83,8 +83,10 @@ public class V6Pinger extends AbstractPinger<Inet6Address> {
         Logging.putPrefix("icmp");
         try {
             final int pingerId = getPingerId();
+            // The receive buffer is reused for every packet, and only the replies
+            // that are handed to the listeners get a copy of their own
+            final NativeDatagramPacket datagram = new NativeDatagramPacket(65535);
             while (!isFinished()) {
-                final NativeDatagramPacket datagram = new NativeDatagramPacket(65535);
                 getPingSocket().receive(datagram);
                 final long received = System.nanoTime();
     
@@ -92,7 +94,7 @@ public class V6Pinger extends AbstractPinger<Inet6Address> {
                 final V6PingReply echoReply = icmpPacket.getType() == Type.EchoReply ? new V6PingReply(icmpPacket, received) : null;
             
                 if (echoReply != null && echoReply.getIdentifier() == pingerId && echoReply.isValid()) {
-                    notifyPingListeners(datagram.getAddress(), echoReply);
+                    notifyPingListeners(datagram.getAddress(), new V6PingReply(new ICMPv6Packet(copyOf(getIPPayload(datagram))), received));
                 }
             }
         } catch(final Throwable t) {
@@ -107,11 +109,15 @@ public class V6Pinger extends AbstractPinger<Inet6Address> {
     
     @Override
     public void ping(final Inet6Address addr, final int identifier, final int sequenceNumber, final long threadId, final long count, final long interval, final int packetSize) throws InterruptedException {
-        final NativeDatagramSocket socket = getPingSocket();
         for(int i = sequenceNumber; i < sequenceNumber + count; i++) {
-            final V6PingRequest request = new V6PingRequest(identifier, i, threadId,packetSize);
-            request.send(socket, addr);
+            send(addr, identifier, i, threadId, packetSize);
             Thread.sleep(interval);
         }
     }
+
+    @Override
+    public void send(final Inet6Address addr, final int identifier, final int sequenceNumber, final long threadId, final int packetSize) {
+        final V6PingRequest request = new V6PingRequest(identifier, sequenceNumber, threadId, packetSize);
+        request.send(getPingSocket(), addr);
+    }
 }
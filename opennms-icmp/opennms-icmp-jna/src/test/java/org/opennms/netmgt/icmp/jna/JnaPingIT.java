@@ -35,8 +35,12 @@ import static org.junit.Assert.assertTrue;
 
 import java.net.InetAddress;
 import java.net.NoRouteToHostException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -49,6 +53,8 @@ import org.springframework.test.annotation.IfProfileValue;
 import org.springframework.test.context.TestExecutionListeners;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import com.google.common.collect.Sets;
+
 /**
  * 
  * @author <a href="mailto:ranger@opennms.org">Ben Reed</a>
@@ -244,6 +250,42 @@ public class JnaPingIT {
         assertTrue("Collection contained some numeric values when all parallel pings should have failed", CollectionMath.countNotNull(items) == 0);
     }
 
+    @Test
+    @IfProfileValue(name="runPingTests", value="true")
+    public void testSweepIPv4() throws Exception {
+        sweep(m_goodHost, m_badHost);
+    }
+
+    @Test
+    @IfProfileValue(name="runPingTests", value="true")
+    public void testSweepIPv6() throws Exception {
+        sweep(m_ipv6goodHost, m_ipv6badHost);
+    }
+
+    private void sweep(InetAddress goodHost, InetAddress badHost) throws Exception {
+        final Set<InetAddress> responded = Sets.newConcurrentHashSet();
+        final Set<InetAddress> timedOut = Sets.newConcurrentHashSet();
+        s_jnaPinger.sweep(Arrays.asList(goodHost, badHost), PingConstants.DEFAULT_TIMEOUT, 1, PingConstants.DEFAULT_PACKET_SIZE, 10.0, new PingResponseCallback() {
+            @Override
+            public void handleResponse(InetAddress address, EchoPacket response) {
+                assertTrue("Negative RTT value returned from sweep", response.elapsedTime(TimeUnit.MICROSECONDS) > 0);
+                responded.add(address);
+            }
+
+            @Override
+            public void handleTimeout(InetAddress address, EchoPacket request) {
+                timedOut.add(address);
+            }
+
+            @Override
+            public void handleError(InetAddress address, EchoPacket request, Throwable t) {
+                t.printStackTrace();
+            }
+        });
+        assertEquals(Collections.singleton(goodHost), responded);
+        assertEquals(Collections.singleton(badHost), timedOut);
+    }
+
     private void printResponse(List<Number> items) {
         Long passed = CollectionMath.countNotNull(items);
         Long failed = CollectionMath.countNull(items);
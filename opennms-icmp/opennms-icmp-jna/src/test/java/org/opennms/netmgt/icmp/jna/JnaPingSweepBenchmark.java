@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp.jna;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opennms.netmgt.icmp.EchoPacket;
+import org.opennms.netmgt.icmp.PingResponseCallback;
+
+/**
+ * Measures how many hosts per second can be pinged by a {@link JnaPinger}, either with
+ * a sweep or with one tracked request per host.
+ *
+ * The targets are taken from 127.0.0.0/8, which the loopback interface answers for on
+ * Linux, so the benchmark needs no remote hosts but must be allowed to open ICMP sockets.
+ * Every invocation pings all of the targets, so the score must be multiplied by the
+ * number of targets to get the number of hosts per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JnaPingSweepBenchmark {
+
+    private static final long TIMEOUT = 800;
+
+    private static final int RETRIES = 0;
+
+    private static final int PACKET_SIZE = 64;
+
+    @Param({"256", "4096"})
+    public int numTargets;
+
+    private JnaPinger pinger;
+
+    private List<InetAddress> targets;
+
+    @Setup
+    public void setUp() throws Exception {
+        pinger = new JnaPinger();
+        pinger.initialize4();
+
+        targets = new ArrayList<>(numTargets);
+        for (int i = 1; i <= numTargets; i++) {
+            targets.add(toLoopbackAddress(i));
+        }
+    }
+
+    @Benchmark
+    public int sweep() throws Exception {
+        final CountingCallback cb = new CountingCallback(targets.size());
+        pinger.sweep(targets, TIMEOUT, RETRIES, PACKET_SIZE, 0.0, cb);
+        return cb.getResponses();
+    }
+
+    @Benchmark
+    public int trackedPings() throws Exception {
+        final CountingCallback cb = new CountingCallback(targets.size());
+        for (final InetAddress target : targets) {
+            pinger.ping(target, TIMEOUT, RETRIES, PACKET_SIZE, 1, cb);
+        }
+        cb.await();
+        return cb.getResponses();
+    }
+
+    private static InetAddress toLoopbackAddress(final int i) throws UnknownHostException {
+        return InetAddress.getByAddress(new byte[] { 127, (byte)(i >>> 16), (byte)(i >>> 8), (byte)i });
+    }
+
+    private static class CountingCallback implements PingResponseCallback {
+        private final CountDownLatch m_latch;
+        private final AtomicInteger m_responses = new AtomicInteger();
+
+        public CountingCallback(final int count) {
+            m_latch = new CountDownLatch(count);
+        }
+
+        @Override
+        public void handleResponse(final InetAddress address, final EchoPacket response) {
+            m_responses.incrementAndGet();
+            m_latch.countDown();
+        }
+
+        @Override
+        public void handleTimeout(final InetAddress address, final EchoPacket request) {
+            m_latch.countDown();
+        }
+
+        @Override
+        public void handleError(final InetAddress address, final EchoPacket request, final Throwable t) {
+            m_latch.countDown();
+        }
+
+        public void await() throws InterruptedException {
+            m_latch.await();
+        }
+
+        public int getResponses() {
+            return m_responses.get();
+        }
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(JnaPingSweepBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
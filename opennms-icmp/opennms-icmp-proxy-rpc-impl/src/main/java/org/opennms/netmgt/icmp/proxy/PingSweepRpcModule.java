@@ -32,9 +32,8 @@ import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -54,8 +53,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.google.common.base.Throwables;
-import com.google.common.collect.Sets;
-import com.google.common.util.concurrent.RateLimiter;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 @Component
@@ -89,28 +86,22 @@ public class PingSweepRpcModule extends AbstractXmlRpcModule<PingSweepRequestDTO
             ranges.add(pollRange);
         }
 
-        // Use a RateLimiter to limit the ping packets per second that we send
-        RateLimiter limiter = RateLimiter.create(request.getPacketsPerSecond());
-
-        List<IPPollAddress> addresses = StreamSupport.stream(getAddresses(ranges).spliterator(), false)
-                .filter(j -> j.getAddress() != null).collect(Collectors.toList());
-
         return CompletableFuture.supplyAsync(() -> {
-            addresses.stream().forEach(pollAddress -> {
+            // Sweep the ranges one after the other, since they may use different timeouts and retries,
+            // and let the pinger limit the ping packets per second that we send
+            for (IPPollRange range : ranges) {
+                final List<InetAddress> addresses = StreamSupport.stream(range.spliterator(), false)
+                        .map(IPPollAddress::getAddress)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList());
                 try {
-                    tracker.expectCallbackFor(pollAddress.getAddress());
-                    limiter.acquire();
-                    pinger.ping(pollAddress.getAddress(), pollAddress.getTimeout(), pollAddress.getRetries(), packetSize, 1, tracker);
+                    pinger.sweep(addresses, range.getTimeout(), range.getRetries(), packetSize, request.getPacketsPerSecond(), tracker);
+                } catch (InterruptedException e) {
+                    throw Throwables.propagate(e);
                 } catch (Exception e) {
-                    tracker.handleError(pollAddress.getAddress(), null, e);
                     tracker.completeExceptionally(e);
+                    throw Throwables.propagate(e);
                 }
-            });
-
-            try {
-                tracker.getLatch().await();
-            } catch (InterruptedException e) {
-                throw Throwables.propagate(e);
             }
             tracker.complete();
             return tracker.getResponse();
@@ -121,40 +112,29 @@ public class PingSweepRpcModule extends AbstractXmlRpcModule<PingSweepRequestDTO
     private static class PingSweepResultTracker extends CompletableFuture<PingSweepResponseDTO>
             implements PingResponseCallback {
 
-        private final Set<InetAddress> waitingFor = Sets.newConcurrentHashSet();
-        private final CountDownLatch m_doneSignal = new CountDownLatch(1);
         private final PingSweepResponseDTO responseDTO = new PingSweepResponseDTO();
 
-        public void expectCallbackFor(InetAddress address) {
-            waitingFor.add(address);
-        }
-
         @Override
         public void handleResponse(InetAddress address, EchoPacket response) {
             if (response != null) {
                 PingSweepResultDTO sweepResult = new PingSweepResultDTO();
                 sweepResult.setAddress(address);
                 sweepResult.setRtt(response.elapsedTime(TimeUnit.MILLISECONDS));
-                responseDTO.addPingSweepResult(sweepResult);
+                // Replies to IPv4 and IPv6 requests are handled by different threads
+                synchronized (responseDTO) {
+                    responseDTO.addPingSweepResult(sweepResult);
+                }
             }
-            afterHandled(address);
         }
 
         @Override
         public void handleTimeout(InetAddress address, EchoPacket request) {
-            afterHandled(address);
+            // pass
         }
 
         @Override
         public void handleError(InetAddress address, EchoPacket request, Throwable t) {
-            afterHandled(address);
-        }
-
-        private void afterHandled(InetAddress address) {
-            waitingFor.remove(address);
-            if (waitingFor.isEmpty()) {
-                m_doneSignal.countDown();
-            }
+            // pass
         }
 
         public void complete() {
@@ -165,10 +145,6 @@ public class PingSweepRpcModule extends AbstractXmlRpcModule<PingSweepRequestDTO
             return responseDTO;
         }
 
-        public CountDownLatch getLatch() {
-            return m_doneSignal;
-        }
-
     }
 
     @Override
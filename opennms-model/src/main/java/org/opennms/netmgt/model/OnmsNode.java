@@ -169,6 +169,8 @@ public class OnmsNode extends OnmsEntity implements Serializable, Comparable<Onm
 
     private String m_foreignId;
 
+    private String m_requisitionHash;
+
     /** persistent field */
     private OnmsMonitoringLocation m_location;
 
@@ -733,6 +735,28 @@ public class OnmsNode extends OnmsEntity implements Serializable, Comparable<Onm
         m_foreignId = foreignId;
     }
 
+    /**
+     * Hash of the requisition content this node was last imported from,
+     * used to skip unchanged nodes on differential imports.
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    @XmlTransient
+    @JsonIgnore
+    @Column(name="requisitionHash", length=64)
+    public String getRequisitionHash() {
+        return m_requisitionHash;
+    }
+
+    /**
+     * <p>setRequisitionHash</p>
+     *
+     * @param requisitionHash a {@link java.lang.String} object.
+     */
+    public void setRequisitionHash(String requisitionHash) {
+        m_requisitionHash = requisitionHash;
+    }
+
     /**
      * <p>getForeignSource</p>
      *
@@ -44,8 +44,10 @@ import org.opennms.netmgt.provision.service.lifecycle.LifeCycleInstance;
 import org.opennms.netmgt.provision.service.lifecycle.Phase;
 import org.opennms.netmgt.provision.service.lifecycle.annotations.Activity;
 import org.opennms.netmgt.provision.service.lifecycle.annotations.ActivityProvider;
+import org.opennms.netmgt.provision.service.lifecycle.annotations.Attribute;
 import org.opennms.netmgt.provision.service.operations.ImportOperation;
 import org.opennms.netmgt.provision.service.operations.ImportOperationsManager;
+import org.opennms.netmgt.provision.service.operations.ProvisionMonitor;
 import org.opennms.netmgt.provision.service.operations.RequisitionImport;
 import org.springframework.core.io.Resource;
 
@@ -58,6 +60,18 @@ import org.springframework.core.io.Resource;
 @ActivityProvider
 public class CoreImportActivities {
     private static final Logger LOG = LoggerFactory.getLogger(CoreImportActivities.class);
+
+    /**
+     * When set to true, imports skip the nodes whose requisition did not
+     * change since they were last imported, and write the other nodes in
+     * batches.
+     */
+    public static final String DIFFERENTIAL_IMPORT = "org.opennms.provisiond.differentialImport";
+
+    /** The number of nodes written per transaction by differential imports */
+    public static final String IMPORT_BATCH_SIZE = "org.opennms.provisiond.importBatchSize";
+
+    private static final int DEFAULT_IMPORT_BATCH_SIZE = 100;
     
     private final ProvisionService m_provisionService;
     
@@ -66,23 +80,26 @@ public class CoreImportActivities {
     }
 
     @Activity( lifecycle = "import", phase = "validate", schedulingHint="import")
-    public RequisitionImport loadSpecFile(final Resource resource) {
+    public RequisitionImport loadSpecFile(final Resource resource, final ProvisionMonitor monitor) {
         final RequisitionImport ri = new RequisitionImport();
 
         info("Loading requisition from resource {}", resource);
+        monitor.beginLoadingResource(resource);
         try {
             final Requisition specFile = m_provisionService.loadRequisition(resource);
             ri.setRequisition(specFile);
             debug("Finished loading requisition.");
         } catch (final Throwable t) {
             ri.abort(t);
+        } finally {
+            monitor.finishLoadingResource(resource);
         }
 
         return ri;
     }
     
     @Activity( lifecycle = "import", phase = "audit", schedulingHint="import" )
-    public ImportOperationsManager auditNodes(final RequisitionImport ri, final String rescanExisting) {
+    public ImportOperationsManager auditNodes(final RequisitionImport ri, final String rescanExisting, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping audit phase import.");
             return null;
@@ -98,21 +115,33 @@ public class CoreImportActivities {
         final ImportOperationsManager opsMgr = new ImportOperationsManager(foreignIdsToNodes, m_provisionService, rescanExisting);
         
         opsMgr.setForeignSource(foreignSource);
+        if (Boolean.getBoolean(DIFFERENTIAL_IMPORT)) {
+            opsMgr.setRequisitionHashes(m_provisionService.getForeignIdToRequisitionHashMap(foreignSource));
+        }
+
+        monitor.beginAuditNodes();
         opsMgr.auditNodes(specFile);
+        monitor.finishAuditNodes();
+        monitor.skippedUnchangedNodes(opsMgr.getUnchangedCount());
 
         debug("Finished auditing nodes.");
+        if (opsMgr.isDifferential()) {
+            info("Differential import of requisition {}: {} nodes are unchanged, {} to delete, {} to update and {} to insert.", specFile,
+                 opsMgr.getUnchangedCount(), opsMgr.getDeleteCount(), opsMgr.getUpdateCount(), opsMgr.getInsertCount());
+        }
         
         return opsMgr;
     }
     
     @Activity( lifecycle = "import", phase = "scan", schedulingHint="import" )
-    public static void scanNodes(final Phase currentPhase, final ImportOperationsManager opsMgr, final RequisitionImport ri, final String rescanExisting) {
+    public static void scanNodes(final Phase currentPhase, final ImportOperationsManager opsMgr, final RequisitionImport ri, final String rescanExisting, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping scan phase import.");
             return;
         }
 
         info("Scheduling nodes for phase {}", currentPhase);
+        monitor.beginProcessingOps(opsMgr.getDeleteCount(), opsMgr.getUpdateCount(), opsMgr.getInsertCount());
         
         final Collection<ImportOperation> operations = opsMgr.getOperations();
         
@@ -124,6 +153,9 @@ public class CoreImportActivities {
             nodeScan.setAttribute("operation", op);
             nodeScan.setAttribute("requisitionImport", ri);
             nodeScan.setAttribute("rescanExisting", rescanExisting);
+            nodeScan.setAttribute("monitor", monitor);
+            // differential imports persist the nodes in the delete, update and insert phases
+            nodeScan.setAttribute("batchPersist", opsMgr.isDifferential());
             nodeScan.trigger();
         }
 
@@ -132,7 +164,7 @@ public class CoreImportActivities {
     
     
     @Activity( lifecycle = "nodeImport", phase = "scan", schedulingHint="import" )
-    public static void scanNode(final ImportOperation operation, final RequisitionImport ri, final String rescanExisting) {
+    public static void scanNode(final ImportOperation operation, final RequisitionImport ri, final String rescanExisting, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping scan phase nodeImport.");
             return;
@@ -140,7 +172,9 @@ public class CoreImportActivities {
 
         if (rescanExisting == null || Boolean.valueOf(rescanExisting)) {
             info("Running scan phase of {}, the parameter {} was set to {} during import.", operation, EventConstants.PARM_IMPORT_RESCAN_EXISTING, rescanExisting);
+            monitor.beginPreprocessing(operation);
             operation.scan();
+            monitor.finishPreprocessing(operation);
     
             info("Finished Running scan phase of {}", operation);
         } else {
@@ -149,31 +183,81 @@ public class CoreImportActivities {
     }
     
     @Activity( lifecycle = "nodeImport", phase = "persist" , schedulingHint = "import" )
-    public static void persistNode(final ImportOperation operation, final RequisitionImport ri) {
+    public static void persistNode(final ImportOperation operation, final RequisitionImport ri, final ProvisionMonitor monitor, @Attribute("batchPersist") final Boolean batchPersist) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping persist phase.");
             return;
         }
 
+        if (Boolean.TRUE.equals(batchPersist)) {
+            debug("Deferring persist phase of {} to the batched writes of the import", operation);
+            return;
+        }
+
         info("Running persist phase of {}", operation);
+        monitor.beginPersisting(operation);
         operation.persist();
+        monitor.finishPersisting(operation);
         info("Finished Running persist phase of {}", operation);
 
     }
+
+    @Activity( lifecycle = "import", phase = "delete" , schedulingHint = "import" )
+    public static void deleteNodes(final ImportOperationsManager opsMgr, final RequisitionImport ri, final ProvisionMonitor monitor) {
+        if (ri.isAborted() || !opsMgr.isDifferential()) {
+            return;
+        }
+
+        info("Running delete phase for {} nodes", opsMgr.getDeleteCount());
+        opsMgr.persistDeletes(monitor);
+    }
+
+    @Activity( lifecycle = "import", phase = "update" , schedulingHint = "import" )
+    public static void updateNodes(final ImportOperationsManager opsMgr, final RequisitionImport ri, final ProvisionMonitor monitor) {
+        if (ri.isAborted() || !opsMgr.isDifferential()) {
+            return;
+        }
+
+        info("Running update phase for {} nodes", opsMgr.getUpdateCount());
+        opsMgr.persistUpdates(getImportBatchSize(), monitor);
+    }
+
+    @Activity( lifecycle = "import", phase = "insert" , schedulingHint = "import" )
+    public static void insertNodes(final ImportOperationsManager opsMgr, final RequisitionImport ri, final ProvisionMonitor monitor) {
+        if (ri.isAborted()) {
+            return;
+        }
+
+        if (opsMgr.isDifferential()) {
+            info("Running insert phase for {} nodes", opsMgr.getInsertCount());
+            opsMgr.persistInserts(getImportBatchSize(), monitor);
+        }
+        monitor.finishProcessingOps();
+    }
+
+    private static int getImportBatchSize() {
+        return Math.max(1, Integer.getInteger(IMPORT_BATCH_SIZE, DEFAULT_IMPORT_BATCH_SIZE));
+    }
     
     @Activity( lifecycle = "import", phase = "relate" , schedulingHint = "import" )
-    public void relateNodes(final BatchTask currentPhase, final RequisitionImport ri) {
+    public void relateNodes(final BatchTask currentPhase, final RequisitionImport ri, final ImportOperationsManager opsMgr, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping relate phase.");
             return;
         }
 
         info("Running relate phase");
+        monitor.beginRelateNodes();
         
         final Requisition requisition = ri.getRequisition();
         RequisitionVisitor visitor = new AbstractRequisitionVisitor() {
             @Override
             public void visitNode(final OnmsNodeRequisition nodeReq) {
+                // an unchanged node without a parent has nothing to relate, but the
+                // parent of an unchanged node may have been inserted again
+                if (opsMgr.isUnchanged(nodeReq.getForeignId()) && nodeReq.getParentForeignId() == null && nodeReq.getParentNodeLabel() == null) {
+                    return;
+                }
                 LOG.debug("Scheduling relate of node {}", nodeReq);
                 currentPhase.add(parentSetter(m_provisionService, nodeReq, requisition.getForeignSource()));
             }
@@ -181,6 +265,7 @@ public class CoreImportActivities {
         
         requisition.visit(visitor);
         
+        monitor.finishRelateNodes();
         LOG.info("Finished Running relate phase");
 
     }
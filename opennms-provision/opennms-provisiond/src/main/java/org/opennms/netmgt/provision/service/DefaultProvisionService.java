@@ -224,34 +224,59 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
     @Transactional
     @Override
     public void insertNode(final OnmsNode node) {
-        updateLocation(node);
-        m_nodeDao.save(node);
+        insertNodes(Collections.singletonList(node));
+    }
+
+    /** {@inheritDoc} */
+    @Transactional
+    @Override
+    public void insertNodes(final List<OnmsNode> nodes) {
+        for (final OnmsNode node : nodes) {
+            updateLocation(node);
+            m_nodeDao.save(node);
+        }
         m_nodeDao.flush();
 
         final EntityVisitor visitor = new AddEventVisitor(m_eventForwarder);
-        node.visit(visitor);
+        for (final OnmsNode node : nodes) {
+            node.visit(visitor);
+        }
     }
 
     /** {@inheritDoc} */
     @Transactional
     @Override
     public void updateNode(final OnmsNode node, String rescanExisting) {
-        updateLocation(node);
-        final OnmsNode dbNode = m_nodeDao.getHierarchy(node.getId());
-
-        // on an update, leave categories alone, let the NodeScan handle applying requisitioned categories
-        node.setCategories(dbNode.getCategories());
+        updateNodes(Collections.singletonList(node), rescanExisting);
+    }
 
+    /** {@inheritDoc} */
+    @Transactional
+    @Override
+    public void updateNodes(final List<OnmsNode> nodes, final String rescanExisting) {
         final EventAccumulator accumulator = new EventAccumulator(m_eventForwarder);
-        dbNode.mergeNode(node, accumulator, false);
+        final List<OnmsNode> dbNodes = new ArrayList<>(nodes.size());
+        for (final OnmsNode node : nodes) {
+            updateLocation(node);
+            final OnmsNode dbNode = m_nodeDao.getHierarchy(node.getId());
+
+            // on an update, leave categories alone, let the NodeScan handle applying requisitioned categories
+            node.setCategories(dbNode.getCategories());
 
-        updateNodeHostname(dbNode);
-        m_nodeDao.update(dbNode);
+            dbNode.mergeNode(node, accumulator, false);
+            dbNode.setRequisitionHash(node.getRequisitionHash());
+
+            updateNodeHostname(dbNode);
+            m_nodeDao.update(dbNode);
+            dbNodes.add(dbNode);
+        }
         m_nodeDao.flush();
 
         accumulator.flush();
         final EntityVisitor eventAccumlator = new UpdateEventVisitor(m_eventForwarder, rescanExisting);
-        dbNode.visit(eventAccumlator);
+        for (final OnmsNode dbNode : dbNodes) {
+            dbNode.visit(eventAccumlator);
+        }
     }
 
     private void updateNodeHostname(final OnmsNode node) {
@@ -699,6 +724,13 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         return m_nodeDao.getForeignIdToNodeIdMap(foreignSource);
     }
 
+    /** {@inheritDoc} */
+    @Transactional(readOnly=true)
+    @Override
+    public Map<String, String> getForeignIdToRequisitionHashMap(final String foreignSource) {
+        return m_nodeDao.getForeignIdToRequisitionHashMap(foreignSource);
+    }
+
     /** {@inheritDoc} */
     @Override
     @Transactional
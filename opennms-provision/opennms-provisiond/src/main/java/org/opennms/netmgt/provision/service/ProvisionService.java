@@ -98,6 +98,15 @@ public interface ProvisionService {
      */
     @Transactional
     void updateNode(OnmsNode node, String rescanExisting);
+
+    /**
+     * Update a batch of nodes in a single transaction, flushing the changes
+     * to the database once for the whole batch.
+     *
+     * @see #updateNode(OnmsNode, String)
+     */
+    @Transactional
+    void updateNodes(List<OnmsNode> nodes, String rescanExisting);
     
     @Transactional
     OnmsNode updateNodeAttributes(OnmsNode node);
@@ -141,6 +150,13 @@ public interface ProvisionService {
     @Transactional
     void insertNode(OnmsNode node);
 
+    /**
+     * Insert a batch of nodes in a single transaction, flushing the changes
+     * to the database once for the whole batch.
+     */
+    @Transactional
+    void insertNodes(List<OnmsNode> nodes);
+
     /**
      * Look up the OnmsServiceType with the given name, creating one if it
      * doesn't exist.
@@ -172,6 +188,12 @@ public interface ProvisionService {
     @Transactional(readOnly = true)
     Map<String, Integer> getForeignIdToNodeIdMap(String foreignSource);
 
+    /**
+     * Creates a map of foreignIds to the requisition hashes stored for the nodes that have the indicated foreignSource.
+     */
+    @Transactional(readOnly = true)
+    Map<String, String> getForeignIdToRequisitionHashMap(String foreignSource);
+
     /**
      * Sets the parent of the node and adds the relationship to the path
      * element for the node. The foreignId is used to reference the node and
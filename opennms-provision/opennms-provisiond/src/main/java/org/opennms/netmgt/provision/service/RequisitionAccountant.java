@@ -28,17 +28,24 @@
 
 package org.opennms.netmgt.provision.service;
 
+import java.nio.charset.StandardCharsets;
+
+import org.opennms.core.xml.JaxbUtils;
 import org.opennms.netmgt.provision.persist.AbstractRequisitionVisitor;
 import org.opennms.netmgt.provision.persist.OnmsAssetRequisition;
 import org.opennms.netmgt.provision.persist.OnmsIpInterfaceRequisition;
 import org.opennms.netmgt.provision.persist.OnmsMonitoredServiceRequisition;
 import org.opennms.netmgt.provision.persist.OnmsNodeCategoryRequisition;
 import org.opennms.netmgt.provision.persist.OnmsNodeRequisition;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
 import org.opennms.netmgt.provision.service.operations.ImportOperationsManager;
 import org.opennms.netmgt.provision.service.operations.SaveOrUpdateOperation;
 
+import com.google.common.hash.Hashing;
+
 public class RequisitionAccountant extends AbstractRequisitionVisitor {
 	private final ImportOperationsManager m_opsMgr;
+    /** <code>null</code> while visiting a node that a differential import skips */
     private SaveOrUpdateOperation m_currentOp;
         
     /**
@@ -53,7 +60,15 @@ public class RequisitionAccountant extends AbstractRequisitionVisitor {
     /** {@inheritDoc} */
     @Override
     public void visitNode(OnmsNodeRequisition nodeReq) {
-        m_currentOp = m_opsMgr.foundNode(nodeReq.getForeignId(), nodeReq.getNodeLabel(), nodeReq.getLocation(), nodeReq.getBuilding(), nodeReq.getCity());
+        m_currentOp = m_opsMgr.foundNode(nodeReq.getForeignId(), nodeReq.getNodeLabel(), nodeReq.getLocation(), nodeReq.getBuilding(), nodeReq.getCity(), requisitionHash(nodeReq.getNode()));
+    }
+
+    /**
+     * Hashes everything requisitioned for the node, so that a node can be
+     * recognized as unchanged since it was last imported.
+     */
+    protected static String requisitionHash(final RequisitionNode node) {
+        return Hashing.sha256().hashString(JaxbUtils.marshal(node), StandardCharsets.UTF_8).toString();
     }
 
     /** {@inheritDoc} */
@@ -65,25 +80,33 @@ public class RequisitionAccountant extends AbstractRequisitionVisitor {
     /** {@inheritDoc} */
     @Override
     public void visitInterface(OnmsIpInterfaceRequisition ifaceReq) {
-        m_currentOp.foundInterface(ifaceReq.getIpAddr().trim(), ifaceReq.getDescr(), ifaceReq.getSnmpPrimary(), ifaceReq.getManaged(), ifaceReq.getStatus());
+        if (m_currentOp != null) {
+            m_currentOp.foundInterface(ifaceReq.getIpAddr().trim(), ifaceReq.getDescr(), ifaceReq.getSnmpPrimary(), ifaceReq.getManaged(), ifaceReq.getStatus());
+        }
         
     }
     
     /** {@inheritDoc} */
     @Override
     public void visitMonitoredService(OnmsMonitoredServiceRequisition svcReq) {
-        m_currentOp.foundMonitoredService(svcReq.getServiceName());
+        if (m_currentOp != null) {
+            m_currentOp.foundMonitoredService(svcReq.getServiceName());
+        }
     }
 
     /** {@inheritDoc} */
     @Override
     public void visitNodeCategory(OnmsNodeCategoryRequisition catReq) {
-        m_currentOp.foundCategory(catReq.getName());
+        if (m_currentOp != null) {
+            m_currentOp.foundCategory(catReq.getName());
+        }
     }
 
     /** {@inheritDoc} */
     @Override
     public void visitAsset(OnmsAssetRequisition assetReq) {
-        m_currentOp.foundAsset(assetReq.getName(), assetReq.getValue());
+        if (m_currentOp != null) {
+            m_currentOp.foundAsset(assetReq.getName(), assetReq.getValue());
+        }
     }
 }
@@ -57,6 +57,10 @@ public class TimeTrackingMonitor implements ProvisionMonitor {
 	private int m_insertCount;
 	private int m_updateCount;
 	private int m_eventCount;
+	private int m_unchangedCount;
+	private int m_batchCount;
+	private int m_batchNodeCount;
+	private long m_batchTime;
 
 	/** {@inheritDoc} */
         @Override
@@ -193,6 +197,29 @@ public class TimeTrackingMonitor implements ProvisionMonitor {
 	public void finishRelateNodes() {
 		m_relateDuration.end();
 	}
+
+	/**
+	 * <p>skippedUnchangedNodes</p>
+	 *
+	 * @param count a int.
+	 */
+        @Override
+	public void skippedUnchangedNodes(int count) {
+		m_unchangedCount = count;
+	}
+
+	/**
+	 * <p>persistedBatch</p>
+	 *
+	 * @param nodeCount a int.
+	 * @param elapsedMillis a long.
+	 */
+        @Override
+	public void persistedBatch(int nodeCount, long elapsedMillis) {
+		m_batchCount++;
+		m_batchNodeCount += nodeCount;
+		m_batchTime += elapsedMillis;
+	}
 	
 	/**
 	 * <p>toString</p>
@@ -204,7 +231,11 @@ public class TimeTrackingMonitor implements ProvisionMonitor {
 		final StringBuilder stats = new StringBuilder();
 		stats.append("Deletes: ").append(m_deleteCount).append(", ");
 		stats.append("Updates: ").append(m_updateCount).append(", ");
-		stats.append("Inserts: ").append(m_insertCount).append("\n");
+		stats.append("Inserts: ").append(m_insertCount);
+		if (m_unchangedCount > 0) {
+			stats.append(", Unchanged: ").append(m_unchangedCount);
+		}
+		stats.append("\n");
 		stats.append(m_importDuration).append(", ");
 		stats.append(m_loadingDuration).append(", ");
 		stats.append(m_auditDuration).append('\n');
@@ -217,6 +248,12 @@ public class TimeTrackingMonitor implements ProvisionMonitor {
 		if (m_eventCount > 0) {
 			stats.append(", Avg ").append((double)m_eventEffort.getTotalTime()/(double)m_eventCount).append(" ms per event");
 		}
+		if (m_batchCount > 0) {
+			stats.append("\nBatched Writes: ").append(m_batchNodeCount).append(" nodes in ").append(m_batchCount).append(" batches");
+			if (m_batchTime > 0) {
+				stats.append(", ").append((double)m_batchNodeCount * 1000.0 / (double)m_batchTime).append(" nodes per second");
+			}
+		}
 		
 		return stats.toString();
 	}
@@ -33,14 +33,17 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.provision.persist.requisition.Requisition;
@@ -70,6 +73,12 @@ public class ImportOperationsManager {
     private final ProvisionService m_provisionService;
     private final Map<String, Integer> m_foreignIdToNodeMap;
     private String m_rescanExisting;
+
+    /**
+     * The requisition hashes stored with the existing nodes, only set for differential imports
+     */
+    private Map<String, String> m_requisitionHashes;
+    private final Set<String> m_unchanged = new HashSet<>();
     
     private String m_foreignSource;
     
@@ -97,13 +106,36 @@ public class ImportOperationsManager {
      * @return a {@link org.opennms.netmgt.provision.service.operations.SaveOrUpdateOperation} object.
      */
     public SaveOrUpdateOperation foundNode(String foreignId, String nodeLabel, String location, String building, String city) {
-        
+        return foundNode(foreignId, nodeLabel, location, building, city, null);
+    }
+
+    /**
+     * <p>foundNode</p>
+     *
+     * @param foreignId a {@link java.lang.String} object.
+     * @param nodeLabel a {@link java.lang.String} object.
+     * @param location a {@link java.lang.String} object.
+     * @param building a {@link java.lang.String} object.
+     * @param city a {@link java.lang.String} object.
+     * @param requisitionHash the hash of the requisitioned content of the node
+     * @return the operation for the node, or <code>null</code> if the node is unchanged
+     *         and the import is differential
+     */
+    public SaveOrUpdateOperation foundNode(String foreignId, String nodeLabel, String location, String building, String city, String requisitionHash) {
+        if (isDifferential() && nodeExists(foreignId) && requisitionHash != null && requisitionHash.equals(m_requisitionHashes.get(foreignId))) {
+            // keep the node out of the deletes, but otherwise leave it alone
+            processForeignId(foreignId);
+            m_unchanged.add(foreignId);
+            return null;
+        }
+
         SaveOrUpdateOperation ret;
         if (nodeExists(foreignId)) {
             ret = updateNode(foreignId, nodeLabel, location, building, city);
         } else {
             ret = insertNode(foreignId, nodeLabel, location, building, city);
         }        
+        ret.getNode().setRequisitionHash(requisitionHash);
         return ret;
     }
 
@@ -120,7 +152,7 @@ public class ImportOperationsManager {
     private SaveOrUpdateOperation updateNode(final String foreignId, final String nodeLabel, final String location, final String building, final String city) {
         final Integer nodeId = processForeignId(foreignId);
         final UpdateOperation updateOperation;
-        if (Boolean.valueOf(m_rescanExisting) || m_rescanExisting.equalsIgnoreCase("dbonly")) {
+        if (isPersistingUpdates()) {
             updateOperation = new UpdateOperation(nodeId, getForeignSource(), foreignId, nodeLabel, location, building, city, m_provisionService, m_rescanExisting);
         } else {
             updateOperation = new NullUpdateOperation(nodeId, getForeignSource(), foreignId, nodeLabel, location, building, city, m_provisionService, m_rescanExisting);
@@ -129,6 +161,10 @@ public class ImportOperationsManager {
         return updateOperation;
     }
 
+    private boolean isPersistingUpdates() {
+        return Boolean.valueOf(m_rescanExisting) || m_rescanExisting.equalsIgnoreCase("dbonly");
+    }
+
     /**
      * Return NodeId and remove it from the Map so we know which nodes have been operated on thereby
      * tracking nodes to be deleted.
@@ -174,6 +210,45 @@ public class ImportOperationsManager {
     public int getDeleteCount() {
     	return m_foreignIdToNodeMap.size();
     }
+
+    /**
+     * <p>getUnchangedCount</p>
+     *
+     * @return the number of nodes skipped because their requisition did not change
+     */
+    public int getUnchangedCount() {
+        return m_unchanged.size();
+    }
+
+    /**
+     * <p>isUnchanged</p>
+     *
+     * @param foreignId a {@link java.lang.String} object.
+     * @return whether the node was skipped because its requisition did not change
+     */
+    public boolean isUnchanged(final String foreignId) {
+        return m_unchanged.contains(foreignId);
+    }
+
+    /**
+     * Makes this a differential import: existing nodes whose requisition hash
+     * matches the one they were last imported with are skipped, and the
+     * changes are persisted in batches instead of one node at a time.
+     *
+     * @param requisitionHashes the requisition hashes of the existing nodes, by foreign ID
+     */
+    public void setRequisitionHashes(final Map<String, String> requisitionHashes) {
+        m_requisitionHashes = requisitionHashes;
+    }
+
+    /**
+     * <p>isDifferential</p>
+     *
+     * @return a boolean.
+     */
+    public boolean isDifferential() {
+        return m_requisitionHashes != null;
+    }
     
     private class DeleteIterator implements Iterator<ImportOperation> {
     	
@@ -313,6 +388,73 @@ public class ImportOperationsManager {
         requisition.visit(new RequisitionAccountant(this));
     }
 
+    /**
+     * Deletes the nodes that are no longer requisitioned, one at a time.
+     *
+     * @param monitor a {@link org.opennms.netmgt.provision.service.operations.ProvisionMonitor} object.
+     */
+    public void persistDeletes(final ProvisionMonitor monitor) {
+        final Iterator<ImportOperation> deletes = new DeleteIterator();
+        while (deletes.hasNext()) {
+            final ImportOperation operation = deletes.next();
+            monitor.beginPersisting(operation);
+            operation.persist();
+            monitor.finishPersisting(operation);
+        }
+    }
+
+    /**
+     * Writes the updated nodes in batches of the given size, each in a single transaction.
+     *
+     * @param batchSize a int.
+     * @param monitor a {@link org.opennms.netmgt.provision.service.operations.ProvisionMonitor} object.
+     */
+    public void persistUpdates(final int batchSize, final ProvisionMonitor monitor) {
+        if (!isPersistingUpdates()) {
+            LOG.debug("Skipping persist of {} updated nodes: rescanExisting is {}", m_updates.size(), m_rescanExisting);
+            return;
+        }
+        persistInBatches(m_updates, batchSize, monitor, nodes -> m_provisionService.updateNodes(nodes, m_rescanExisting));
+    }
+
+    /**
+     * Writes the new nodes in batches of the given size, each in a single transaction.
+     *
+     * @param batchSize a int.
+     * @param monitor a {@link org.opennms.netmgt.provision.service.operations.ProvisionMonitor} object.
+     */
+    public void persistInserts(final int batchSize, final ProvisionMonitor monitor) {
+        persistInBatches(m_inserts, batchSize, monitor, nodes -> m_provisionService.insertNodes(nodes));
+    }
+
+    private void persistInBatches(final List<ImportOperation> operations, final int batchSize, final ProvisionMonitor monitor, final Consumer<List<OnmsNode>> persister) {
+        final List<OnmsNode> batch = new ArrayList<>(batchSize);
+        for (final ImportOperation operation : operations) {
+            batch.add(((SaveOrUpdateOperation)operation).getNode());
+            if (batch.size() >= batchSize) {
+                persistBatch(batch, monitor, persister);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            persistBatch(batch, monitor, persister);
+        }
+    }
+
+    private void persistBatch(final List<OnmsNode> batch, final ProvisionMonitor monitor, final Consumer<List<OnmsNode>> persister) {
+        final long start = System.currentTimeMillis();
+        try {
+            persister.accept(batch);
+            monitor.persistedBatch(batch.size(), System.currentTimeMillis() - start);
+        } catch (final RuntimeException e) {
+            // the nodes keep their old requisition hash, so the next differential import tries them again
+            LOG.error("Failed to persist a batch of {} nodes starting with {}", batch.size(), batch.get(0).getForeignId(), e);
+        } finally {
+            // clear the cache to we don't use up all the memory
+            m_provisionService.clearCache();
+        }
+    }
+
     @SuppressWarnings("unused")
     private Runnable persister(final ImportOperation oper) {
         Runnable r = new Runnable() {
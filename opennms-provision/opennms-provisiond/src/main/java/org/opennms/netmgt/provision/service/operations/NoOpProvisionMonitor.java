@@ -141,4 +141,23 @@ public class NoOpProvisionMonitor implements ProvisionMonitor {
 	public void finishRelateNodes() {
 	}
 
+	/**
+	 * <p>skippedUnchangedNodes</p>
+	 *
+	 * @param count a int.
+	 */
+        @Override
+	public void skippedUnchangedNodes(int count) {
+	}
+
+	/**
+	 * <p>persistedBatch</p>
+	 *
+	 * @param nodeCount a int.
+	 * @param elapsedMillis a long.
+	 */
+        @Override
+	public void persistedBatch(int nodeCount, long elapsedMillis) {
+	}
+
 }
@@ -147,4 +147,19 @@ public interface ProvisionMonitor {
 	 */
 	void finishRelateNodes();
 
+	/**
+	 * <p>skippedUnchangedNodes</p>
+	 *
+	 * @param count the number of nodes left alone because their requisition did not change
+	 */
+	void skippedUnchangedNodes(int count);
+
+	/**
+	 * <p>persistedBatch</p>
+	 *
+	 * @param nodeCount the number of nodes written in the batch
+	 * @param elapsedMillis the time spent writing the batch, in milliseconds
+	 */
+	void persistedBatch(int nodeCount, long elapsedMillis);
+
 }
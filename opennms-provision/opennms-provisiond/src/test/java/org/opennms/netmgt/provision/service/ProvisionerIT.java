@@ -43,6 +43,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ExecutionException;
 
@@ -1197,6 +1198,39 @@ public class ProvisionerIT extends ProvisioningITCase implements InitializingBea
         assertEquals(0, getNodeDao().countAll());
     }
 
+    /**
+     * This test imports 10 nodes then runs a differential import with 1 node
+     * missing from the import file, and makes sure the other nodes are left alone.
+     */
+    @Test(timeout=300000)
+    public void testDifferentialImport() throws Exception {
+        System.setProperty(CoreImportActivities.DIFFERENTIAL_IMPORT, "true");
+        try {
+            importFromResource("classpath:/tec_dump.xml.smalltest", Boolean.TRUE.toString());
+            assertEquals(10, getNodeDao().countAll());
+            final Map<String, String> hashes = getNodeDao().getForeignIdToRequisitionHashMap("empty");
+            assertEquals(10, hashes.size());
+
+            // a node that is skipped keeps the changes made outside of the requisition
+            final OnmsNode node = getNodeDao().findByForeignId("empty", "4243");
+            node.setLabel("changed outside of the requisition");
+            getNodeDao().update(node);
+            getNodeDao().flush();
+
+            importFromResource("classpath:/tec_dump.xml.smalltest.delete", Boolean.TRUE.toString());
+            assertEquals(9, getNodeDao().countAll());
+            assertEquals("changed outside of the requisition", getNodeDao().findByForeignId("empty", "4243").getLabel());
+
+            final Map<String, String> unchanged = getNodeDao().getForeignIdToRequisitionHashMap("empty");
+            assertEquals(9, unchanged.size());
+            for (final Map.Entry<String, String> entry : unchanged.entrySet()) {
+                assertEquals(hashes.get(entry.getKey()), entry.getValue());
+            }
+        } finally {
+            System.clearProperty(CoreImportActivities.DIFFERENTIAL_IMPORT);
+        }
+    }
+
     /**
      * This test makes sure that asset information is getting imported properly.
      * @throws Exception
@@ -31,20 +31,31 @@ package org.opennms.netmgt.rrd;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.ListIterator;
 import java.util.Properties;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.opennms.core.logging.Logging;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
 /**
  * Provides queuing implementation of RrdStrategy.
  *
@@ -74,13 +85,25 @@ import org.slf4j.LoggerFactory;
  * updates are put at the lowest priority and are only written when the highest
  * priority updates have been written
  *
+ * The queue is split into shards, one per write thread. Each file hashes to a
+ * single shard, which holds the pending operations of its files in concurrent
+ * collections and is drained by its own write thread. Since a file is only
+ * ever written by the thread of its shard, enqueuing and dequeuing never take a
+ * global lock and the write threads don't need to reserve the files they are
+ * working on. Consecutive zero value updates are merged while holding only the
+ * monitor of the file they are queued for.
+ *
+ * The queue depth, the number of merged updates as well as the time files
+ * spend waiting in each shard and the time it takes to write them are
+ * published to the {@link MetricRegistry} given to the constructor.
+ *
  * This implementation delegates all the actual writing to another RrdStrategy
  * implementation.
  *
  * System properties effecting the operation:
  *
  * org.opennms.rrd.queuing.writethreads: (default 2) The number of rrd write
- * threads that process the queue
+ * threads that process the queue, and therefore the number of queue shards
  *
  * org.opennms.rrd.queuing.queueCreates: (default false) indicates whether rrd
  * file creates should be queued or processed synchronously
@@ -109,7 +132,7 @@ import org.slf4j.LoggerFactory;
  * @author ranger
  * @version $Id: $
  */
-public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.CreateOperation,String>, Runnable {
+public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.CreateOperation,String> {
 
     private Logger m_log = LoggerFactory.getLogger(QueuingRrdStrategy.class);
 
@@ -357,41 +380,35 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         m_writeThreadExitDelay = writeThreadExitDelay;
     }
 
-    LinkedList<String> filesWithSignificantWork = new LinkedList<String>();
-
-    LinkedList<String> filesWithInsignificantWork = new LinkedList<String>();
-
-    Map<String, LinkedList<Operation>> pendingFileOperations = new HashMap<String, LinkedList<Operation>>();
-
-    Map<Thread, String> fileAssignments = new HashMap<Thread, String>();
+    private final MetricRegistry m_registry;
 
-    Set<String> reservedFiles = new HashSet<String>();
+    private final Meter m_coalescedOperations;
 
-    private long m_totalOperationsPending = 0;
+    private volatile Shard[] m_shards;
 
-    private long m_enqueuedOperations = 0;
+    private final AtomicLong m_totalOperationsPending = new AtomicLong(0);
 
-    private long m_dequeuedOperations = 0;
+    private final AtomicLong m_enqueuedOperations = new AtomicLong(0);
 
-    private long m_significantOpsEnqueued = 0;
+    private final AtomicLong m_dequeuedOperations = new AtomicLong(0);
 
-    private long m_significantOpsDequeued = 0;
+    private final AtomicLong m_significantOpsEnqueued = new AtomicLong(0);
 
-    private long m_significantOpsCompleted = 0;
+    private final AtomicLong m_significantOpsDequeued = new AtomicLong(0);
 
-    private long m_dequeuedItems = 0;
+    private final AtomicLong m_significantOpsCompleted = new AtomicLong(0);
 
-    private long m_createsCompleted = 0;
+    private final AtomicLong m_dequeuedItems = new AtomicLong(0);
 
-    private long m_updatesCompleted = 0;
+    private final AtomicLong m_createsCompleted = new AtomicLong(0);
 
-    private long m_errors = 0;
+    private final AtomicLong m_updatesCompleted = new AtomicLong(0);
 
-    int threadsRunning = 0;
+    private final AtomicLong m_errors = new AtomicLong(0);
 
-    private long m_startTime = 0;
+    private volatile long m_startTime = 0;
 
-    private long m_promotionCount = 0;
+    private final AtomicLong m_promotionCount = new AtomicLong(0);
 
     long lastLap = System.currentTimeMillis();
 
@@ -477,7 +494,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             m_delegate.createFile(getData());
 
             // keep stats
-            setCreatesCompleted(getCreatesCompleted() + 1);
+            m_createsCompleted.incrementAndGet();
 
             // return the file
             return rrd;
@@ -516,8 +533,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             }
 
             // keep stats
-            setUpdatesCompleted(getUpdatesCompleted() + 1);
-            if (getUpdatesCompleted() % m_modulus == 0) {
+            if (m_updatesCompleted.incrementAndGet() % m_modulus == 0) {
                 logStats();
             }
             // return the open rrd for further processing
@@ -563,8 +579,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                 ts += getInterval();
 
                 // keep stats
-                setUpdatesCompleted(getUpdatesCompleted() + 1);
-                if (getUpdatesCompleted() % m_modulus == 0) {
+                if (m_updatesCompleted.incrementAndGet() % m_modulus == 0) {
                     logStats();
                 }
             }
@@ -673,8 +688,6 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
     //
     // Queue management functions.
     //
-    // TODO: Put this all in a class of its own. This is really ugly.
-    //
 
     /**
      * Add an operation to the queue.
@@ -682,31 +695,29 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param op a {@link org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation} object.
      */
     private void addOperation(final Operation op) {
-        synchronized (this) {
-            if (queueIsFull()) {
-                m_log.error("RRD Data Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
-            }
+        if (queueIsFull()) {
+            m_log.error("RRD Data Queue is Full!! Discarding operation for file {}", op.getFileName());
+            return;
+        }
 
-            if (op.isSignificant() && sigQueueIsFull()) {
-                m_log.error("RRD Data Significant Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
-            }
+        if (op.isSignificant() && sigQueueIsFull()) {
+            m_log.error("RRD Data Significant Queue is Full!! Discarding operation for file {}", op.getFileName());
+            return;
+        }
 
-            if (!op.isSignificant() && inSigQueueIsFull()) {
-                m_log.error("RRD Insignificant Data Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
-            }
+        if (!op.isSignificant() && inSigQueueIsFull()) {
+            m_log.error("RRD Insignificant Data Queue is Full!! Discarding operation for file {}", op.getFileName());
+            return;
+        }
 
-            storeAssignment(op);
+        // count the operation before it becomes visible to the write thread
+        // so the pending counters never drop below zero
+        m_totalOperationsPending.incrementAndGet();
+        m_enqueuedOperations.incrementAndGet();
+        if (op.isSignificant())
+            m_significantOpsEnqueued.incrementAndGet();
 
-            setTotalOperationsPending(getTotalOperationsPending() + 1);
-            setEnqueuedOperations(getEnqueuedOperations() + 1);
-            if (op.isSignificant())
-                setSignificantOpsEnqueued(getSignificantOpsEnqueued() + 1);
-            notifyAll();
-            ensureThreadsStarted();
-        }
+        getShard(op.getFileName()).addOperation(op);
     }
 
 
@@ -732,207 +743,397 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
     }
 
     /**
-     * Ensure that we have threads started to process the queue.
+     * Return the shard responsible for the given file. The shards are created
+     * on first use since the number of write threads is configured after
+     * construction.
      */
-    private synchronized void ensureThreadsStarted() {
-        if (threadsRunning < m_writeThreads) {
-            threadsRunning++;
-            new Thread(this, this.getClass().getSimpleName() + "-" + threadsRunning).start();
+    Shard getShard(final String fileName) {
+        Shard[] shards = m_shards;
+        if (shards == null) {
+            shards = createShards();
         }
+        return shards[(fileName.hashCode() & Integer.MAX_VALUE) % shards.length];
     }
 
-    /**
-     * Get the operations for the next file that should be worked on.
-     *
-     * @return a linkedList of operations to be processed all for the same file.
-     */
-    private LinkedList<Operation> getNext() {
-        LinkedList<Operation> ops = null;
-        synchronized (this) {
-
-            // turn in our previous assignment
-            completeAssignment();
-
-            String newAssignment;
-            // wait until there is work to do
-            while ((newAssignment = selectNewAssignment()) == null) {
-                try {
-                    wait();
-                } catch (InterruptedException e) {
-                }
+    private synchronized Shard[] createShards() {
+        if (m_shards == null) {
+            final Shard[] shards = new Shard[Math.max(m_writeThreads, 1)];
+            for (int i = 0; i < shards.length; i++) {
+                shards[i] = new Shard(i + 1);
             }
+            m_shards = shards;
+        }
+        return m_shards;
+    }
 
-            // initialize start time for stats
-            if (getStartTime() == 0)
-                setStartTime(System.currentTimeMillis());
+    private long getFilesPending() {
+        long files = 0;
+        final Shard[] shards = m_shards;
+        if (shards != null) {
+            for (final Shard shard : shards) {
+                files += shard.m_pendingFiles.size();
+            }
+        }
+        return files;
+    }
 
-            // reserve the assignment and take work items
-            ops = takeAssignment(newAssignment);
+    private long getFilesWithInsignificantWork() {
+        long files = 0;
+        final Shard[] shards = m_shards;
+        if (shards != null) {
+            for (final Shard shard : shards) {
+                files += shard.m_insignificantFiles.get();
+            }
+        }
+        return files;
+    }
 
-            // keep stats
-            if (ops != null) {
-                for(Operation op : ops) {
-                    setTotalOperationsPending(getTotalOperationsPending()-op.getCount());
-                    setDequeuedOperations(getDequeuedOperations() + op.getCount());
-                    if (op.isSignificant()) {
-                        setSignificantOpsDequeued(getSignificantOpsDequeued() + op.getCount());
-                    }
-                }
-                setDequeuedItems(getDequeuedItems() + 1);
+    /** {@inheritDoc} */
+    @Override
+    public void promoteEnqueuedFiles(Collection<String> rrdFiles) {
+        // walk the files backwards so they keep their order at the head of the queues
+        final List<String> files = new ArrayList<String>(rrdFiles);
+        for (final ListIterator<String> it = files.listIterator(files.size()); it.hasPrevious();) {
+            final String file = it.previous();
+            final Shard shard = getShard(file);
+            if (shard.m_pendingFiles.containsKey(file)) {
+                shard.m_filesWithSignificantWork.addFirst(file);
+                shard.signal();
             }
         }
+        m_delegate.promoteEnqueuedFiles(rrdFiles);
+    }
+
+    /**
+     * The operations waiting to be written to a single file.
+     */
+    static class PendingFile {
+        final LinkedList<Operation> operations = new LinkedList<Operation>();
 
-        return ops;
+        final long enqueuedAt = System.nanoTime();
 
+        boolean significant = false;
+
+        /**
+         * Set once the write thread has taken the operations, after which the
+         * file must be queued again.
+         */
+        boolean taken = false;
     }
 
     /**
-     * We need to track which files are being processed by which threads so that
-     * we don't try to process updates for the same file on more than one
-     * thread.
+     * A shard holds the pending work for the files that hash to it and runs the
+     * single write thread that processes this work. Files with work are queued
+     * on lock-free deques, while the operations of a file are guarded by the
+     * monitor of its {@link PendingFile} only.
      */
-    private synchronized void storeAssignment(Operation op) {
-        // look and see if there a pending ops list for this file
-        LinkedList<Operation> pendingOperations = pendingFileOperations.get(op.getFileName());
+    class Shard implements Runnable {
+
+        final int m_index;
+
+        final ConcurrentMap<String, PendingFile> m_pendingFiles = new ConcurrentHashMap<String, PendingFile>();
+
+        final Deque<String> m_filesWithSignificantWork = new ConcurrentLinkedDeque<String>();
+
+        final Deque<String> m_filesWithInsignificantWork = new ConcurrentLinkedDeque<String>();
 
-        // if not then we create an ops list for the file and add the file to
-        // the work items list
-        if (pendingOperations == null) {
-            pendingOperations = new LinkedList<Operation>();
-            pendingFileOperations.put(op.getFileName(), pendingOperations);
+        /**
+         * The number of entries in m_filesWithInsignificantWork, since the
+         * size of a concurrent deque is expensive to compute.
+         */
+        final AtomicInteger m_insignificantFiles = new AtomicInteger(0);
 
-            // add the file to the correct list based on what type of work we
-            // are adding.  (if we aren't prioritizing then every file is counted as
-            // signficant
-            if (!m_prioritizeSignificantUpdates || op.isSignificant())
-                filesWithSignificantWork.addLast(op.getFileName());
-            else
-                filesWithInsignificantWork.addLast(op.getFileName());
-        } else if (m_prioritizeSignificantUpdates && op.isSignificant() && hasOnlyInsignificant(pendingOperations)) {
-            // only do this when we are prioritizing as this bumps files from inSig
-            // up to insig
-            // promote the file to the significant list if this is the first
-            // significant
-            filesWithSignificantWork.addLast(op.getFileName());
+        final AtomicLong m_operationsPending = new AtomicLong(0);
+
+        final AtomicBoolean m_running = new AtomicBoolean(false);
+
+        volatile Thread m_thread;
+
+        /**
+         * Only used by the write thread.
+         */
+        long m_shardPromotions = 0;
+
+        final Timer m_queueLatency;
+
+        final Timer m_writes;
+
+        Shard(final int index) {
+            m_index = index;
+            final String prefix = MetricRegistry.name("shards", Integer.toString(index));
+            m_registry.register(MetricRegistry.name(prefix, "operations.pending"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return m_operationsPending.get();
+                }
+            });
+            m_registry.register(MetricRegistry.name(prefix, "files.pending"), new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return m_pendingFiles.size();
+                }
+            });
+            m_queueLatency = m_registry.timer(MetricRegistry.name(prefix, "queueLatency"));
+            m_writes = m_registry.timer(MetricRegistry.name(prefix, "writes"));
         }
 
-        promoteAgedFiles();
+        void addOperation(final Operation op) {
+            final String fileName = op.getFileName();
+            m_operationsPending.incrementAndGet();
+
+            boolean queueFile;
+            boolean promoteFile;
+            while (true) {
+                PendingFile pending = m_pendingFiles.get(fileName);
+                if (pending == null) {
+                    final PendingFile newPending = new PendingFile();
+                    pending = m_pendingFiles.putIfAbsent(fileName, newPending);
+                    if (pending == null) {
+                        pending = newPending;
+                    }
+                }
 
-        op.addToPendingList(pendingOperations);
-    }
+                synchronized (pending) {
+                    if (pending.taken) {
+                        // the write thread took the operations in the meantime, start over
+                        continue;
+                    }
 
-    /**
-     * Ensure that files with insignificant changes are getting promoted if
-     * necessary
-     *
-     */
-    private synchronized void promoteAgedFiles() {
+                    queueFile = pending.operations.isEmpty();
+                    // promote the file to the significant list if this is the first
+                    // significant operation. (if we aren't prioritizing then every file
+                    // is already counted as significant)
+                    promoteFile = !queueFile && m_prioritizeSignificantUpdates && op.isSignificant() && !pending.significant;
 
-        // no need to do this is we aren't prioritizing
-        if (!m_prioritizeSignificantUpdates) return;
+                    final int pendingOperations = pending.operations.size();
+                    op.addToPendingList(pending.operations);
+                    if (pending.operations.size() == pendingOperations) {
+                        m_coalescedOperations.mark();
+                    }
+                    pending.significant |= op.isSignificant();
+                    break;
+                }
+            }
 
-        // the num seconds to update files is 0 then use unfair prioritization
-        if (m_maxInsigUpdateSeconds == 0 || filesWithInsignificantWork.isEmpty())
-            return;
+            if (queueFile) {
+                // add the file to the correct list based on what type of work we
+                // are adding.  (if we aren't prioritizing then every file is counted as
+                // signficant
+                if (!m_prioritizeSignificantUpdates || op.isSignificant()) {
+                    m_filesWithSignificantWork.addLast(fileName);
+                } else {
+                    m_filesWithInsignificantWork.addLast(fileName);
+                    m_insignificantFiles.incrementAndGet();
+                }
+                signal();
+            } else if (promoteFile) {
+                // the file stays on the insignificant list as well, whichever entry
+                // is reached last will find no pending operations and is skipped
+                m_filesWithSignificantWork.addLast(fileName);
+                signal();
+            }
+        }
 
-        // calculate the elapsed time we first queued updates
-        long now = System.currentTimeMillis();
-        long elapsedMillis = Math.max(now - getStartTime(), 1);
-
-        // calculate the milliseconds between promotions necessary to age
-        // insignificant files into
-        // the significant queue
-        double millisPerPromotion = ((m_maxInsigUpdateSeconds * 1000.0) / filesWithInsignificantWork.size());
-
-        // calculate the number of millis since start until the next file needs
-        // to be promotoed
-        long nextPromotionMillis = (long) (millisPerPromotion * getPromotionCount());
-
-        // if more time has elapsed than the next promotion time then promote a
-        // file
-        if (elapsedMillis > nextPromotionMillis) {
-            String file = filesWithInsignificantWork.removeFirst();
-            filesWithSignificantWork.addFirst(file);
-            setPromotionCount(getPromotionCount() + 1);
+        /**
+         * Wake up the write thread of the shard, or start one if none is running.
+         */
+        void signal() {
+            final Thread thread = m_thread;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            } else if (m_running.compareAndSet(false, true)) {
+                final Thread newThread = new Thread(this, QueuingRrdStrategy.class.getSimpleName() + "-" + m_index);
+                m_thread = newThread;
+                newThread.start();
+            }
         }
 
-    }
+        boolean hasWork() {
+            return !m_filesWithSignificantWork.isEmpty() || !m_filesWithInsignificantWork.isEmpty();
+        }
 
-    /** {@inheritDoc} */
-    @Override
-    public synchronized void promoteEnqueuedFiles(Collection<String> rrdFiles) {
-        filesWithSignificantWork.addAll(0, rrdFiles);
-        m_delegate.promoteEnqueuedFiles(rrdFiles);
-    }
+        @Override
+        public void run() {
+            Logging.withPrefix(m_category, new Runnable() {
+                @Override public void run() {
+                    processUntilIdle();
+                }
+            });
+        }
 
-    /**
-     * Return true if and only if all the operations in the list are
-     * insignificant
-     */
-    private boolean hasOnlyInsignificant(List<Operation> pendingOps) {
-        for(Operation op : pendingOps) {
-            if (op.isSignificant()) {
-                return false;
+        /**
+         * Process the pending operations until the shard was idle for the
+         * configured exit delay.
+         */
+        private void processUntilIdle() {
+            long waitStart = -1L;
+            while (true) {
+                if (processNext()) {
+                    waitStart = -1L;
+                    continue;
+                }
+
+                final long now = System.currentTimeMillis();
+                if (waitStart < 0) {
+                    waitStart = now;
+                } else if (now - waitStart >= m_writeThreadExitDelay) {
+                    m_thread = null;
+                    m_running.set(false);
+                    // work may have been added after we last looked, in which case
+                    // we continue unless another thread was started for it already
+                    if (!hasWork() || !m_running.compareAndSet(false, true)) {
+                        return;
+                    }
+                    m_thread = Thread.currentThread();
+                    waitStart = -1L;
+                    continue;
+                }
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(m_writeThreadSleepTime));
             }
         }
-        return true;
-    }
 
-    /**
-     * register the file that the currentThread is be working on. This enables
-     * us to ensure that another thread doesn't try to work on operations for
-     * that file.  Note: this is not synchronized as it is called from getNext which
-     * is thread safe
-     */
-    private LinkedList<Operation> takeAssignment(String newAssignment) {
+        /**
+         * Process the operations of the next file with work.
+         *
+         * @return false if there was no work to do
+         */
+        boolean processNext() {
+            promoteAgedFiles();
 
-        // make the file as reserved by the current thread
-        fileAssignments.put(Thread.currentThread(), newAssignment);
-        reservedFiles.add(newAssignment);
+            final String fileName = selectNewAssignment();
+            if (fileName == null) {
+                return false;
+            }
 
-        // get the assignments work list and return it
-        return pendingFileOperations.remove(newAssignment);
-    }
+            final PendingFile pending = m_pendingFiles.remove(fileName);
+            if (pending == null) {
+                // a duplicate entry for a file that was promoted and already written
+                return true;
+            }
 
-    /**
-     * Return the name of the next file with available work
-     */
-    private String selectNewAssignment() {
-        for (Iterator<String> it = filesWithSignificantWork.iterator(); it.hasNext();) {
-            String fn = it.next();
-            if (!reservedFiles.contains(fn)) {
-                it.remove();
-                return fn;
+            final List<Operation> ops;
+            synchronized (pending) {
+                pending.taken = true;
+                ops = pending.operations;
+            }
+
+            // initialize start time for stats
+            if (getStartTime() == 0)
+                setStartTime(System.currentTimeMillis());
+
+            m_queueLatency.update(System.nanoTime() - pending.enqueuedAt, TimeUnit.NANOSECONDS);
+
+            // keep stats
+            long count = 0;
+            for (final Operation op : ops) {
+                count += op.getCount();
+                if (op.isSignificant()) {
+                    m_significantOpsDequeued.addAndGet(op.getCount());
+                }
             }
+            m_operationsPending.addAndGet(-count);
+            m_totalOperationsPending.addAndGet(-count);
+            m_dequeuedOperations.addAndGet(count);
+            m_dequeuedItems.incrementAndGet();
+
+            final Timer.Context context = m_writes.time();
+            try {
+                processPendingOperations(ops);
+            } finally {
+                context.stop();
+            }
+            return true;
+        }
+
+        /**
+         * Return the name of the next file with available work
+         */
+        private String selectNewAssignment() {
+            final String fileName = m_filesWithSignificantWork.pollFirst();
+            if (fileName != null) {
+                return fileName;
+            }
+            final String insignificantFileName = m_filesWithInsignificantWork.pollFirst();
+            if (insignificantFileName != null) {
+                m_insignificantFiles.decrementAndGet();
+            }
+            return insignificantFileName;
         }
-        for (Iterator<String> it = filesWithInsignificantWork.iterator(); it.hasNext();) {
-            String fn = it.next();
-            if (!reservedFiles.contains(fn)) {
-                it.remove();
-                return fn;
+
+        /**
+         * Ensure that files with insignificant changes are getting promoted if
+         * necessary
+         */
+        private void promoteAgedFiles() {
+
+            // no need to do this is we aren't prioritizing
+            if (!m_prioritizeSignificantUpdates) return;
+
+            // the num seconds to update files is 0 then use unfair prioritization
+            final int insignificantFiles = m_insignificantFiles.get();
+            if (m_maxInsigUpdateSeconds == 0 || insignificantFiles <= 0)
+                return;
+
+            // calculate the elapsed time we first queued updates
+            long now = System.currentTimeMillis();
+            long elapsedMillis = Math.max(now - getStartTime(), 1);
+
+            // calculate the milliseconds between promotions necessary to age
+            // insignificant files into
+            // the significant queue
+            double millisPerPromotion = ((m_maxInsigUpdateSeconds * 1000.0) / insignificantFiles);
+
+            // calculate the number of millis since start until the next file needs
+            // to be promotoed
+            long nextPromotionMillis = (long) (millisPerPromotion * m_shardPromotions);
+
+            // if more time has elapsed than the next promotion time then promote a
+            // file
+            if (elapsedMillis > nextPromotionMillis) {
+                final String file = m_filesWithInsignificantWork.pollFirst();
+                if (file != null) {
+                    m_insignificantFiles.decrementAndGet();
+                    m_filesWithSignificantWork.addFirst(file);
+                    m_shardPromotions++;
+                    m_promotionCount.incrementAndGet();
+                }
             }
+
         }
-        return null;
     }
 
     /**
-     * Record that fact that the current thread has finished process operations
-     * for its current assignment
+     * <p>Constructor for QueuingRrdStrategy.</p>
+     *
+     * @param delegate a {@link org.opennms.netmgt.rrd.RrdStrategy} object.
      */
-    private synchronized void completeAssignment() {
-        // remove any existing reservation of the current thread
-        String previousAssignment = fileAssignments.remove(Thread.currentThread());
-        if (previousAssignment != null)
-            reservedFiles.remove(previousAssignment);
+    public QueuingRrdStrategy(RrdStrategy<Object, Object> delegate) {
+        this(delegate, new MetricRegistry());
     }
 
     /**
      * <p>Constructor for QueuingRrdStrategy.</p>
      *
      * @param delegate a {@link org.opennms.netmgt.rrd.RrdStrategy} object.
+     * @param registry the {@link MetricRegistry} to publish the queue metrics to
      */
-    public QueuingRrdStrategy(RrdStrategy<Object, Object> delegate) {
+    public QueuingRrdStrategy(RrdStrategy<Object, Object> delegate, MetricRegistry registry) {
         m_delegate = delegate;
+        m_registry = registry;
+
+        m_coalescedOperations = m_registry.meter("operations.coalesced");
+        m_registry.register("operations.pending", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return getTotalOperationsPending();
+            }
+        });
+        m_registry.register("files.pending", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return getFilesPending();
+            }
+        });
     }
 
     /**
@@ -1054,79 +1255,36 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
     //
 
     /**
-     * <p>run</p>
+     * Actually process the operations be calling the underlying delegate
+     * strategy
      */
-    @Override
-    public void run() {
-        try {
+    private void processPendingOperations(final List<Operation> ops) {
+        Object rrd = null;
+        String fileName = null;
 
-            long waitStart = -1L;
-            long delayed = 0;
-            while (delayed < m_writeThreadExitDelay) {
-                if (getTotalOperationsPending() > 0) {
-                    delayed = 0;
-                    waitStart = -1L;
-                    processPendingOperations();
-                } else {
-                    if (waitStart < 0) {
-                        waitStart = System.currentTimeMillis();
-                    }
-                    try {
-                        Thread.sleep(m_writeThreadSleepTime);
-                    } catch (InterruptedException e) {
-                    }
-                    long now = System.currentTimeMillis();
-                    delayed = now - waitStart;
+        try {
+            // update stats correctly we update them even if an exception occurs
+            // while we are processing
+            for (final Operation op : ops) {
+                if (op.isSignificant()) {
+                    m_significantOpsCompleted.incrementAndGet();
                 }
 
             }
-        } finally {
-            synchronized (this) {
-                threadsRunning--;
-                completeAssignment();
+            // now we actually process the events
+            for (final Operation op : ops) {
+                fileName = op.getFileName();
+                rrd = op.process(rrd);
             }
+        } catch (final Throwable e) {
+            m_errors.incrementAndGet();
+            logLapTime("Error updating file " + fileName + ": " + e.getMessage());
+            m_log.debug("Error updating file {}: {}", fileName, e.getMessage(), e);
+        } finally {
+            processClose(rrd);
         }
     }
 
-    /**
-     * Actually process the operations be calling the underlying delegate
-     * strategy
-     */
-    private void processPendingOperations() {
-        Logging.withPrefix(m_category, new Runnable() {
-            @Override public void run() {
-                Object rrd = null;
-                String fileName = null;
-
-                try {
-                    final LinkedList<Operation> ops = getNext();
-                    if (ops == null) {
-                        return;
-                    }
-                    // update stats correctly we update them even if an exception occurs
-                    // while we are processing
-                    for (final Operation op : ops) {
-                        if (op.isSignificant()) {
-                            setSignificantOpsCompleted(getSignificantOpsCompleted() + 1);
-                        }
-
-                    }
-                    // now we actually process the events
-                    for (final Operation op : ops) {
-                        fileName = op.getFileName();
-                        rrd = op.process(rrd);
-                    }
-                } catch (final Throwable e) {
-                    setErrors(getErrors() + 1);
-                    logLapTime("Error updating file " + fileName + ": " + e.getMessage());
-                    m_log.debug("Error updating file {}: {}", fileName, e.getMessage(), e);
-                } finally {
-                    processClose(rrd);
-                }
-            }
-        });
-    }
-
     /**
      * close the rrd file
      */
@@ -1135,7 +1293,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             try {
                 m_delegate.closeFile(rrd);
             } catch (final Throwable e) {
-                setErrors(getErrors() + 1);
+                m_errors.incrementAndGet();
                 logLapTime("Error closing rrd " + rrd + ": " + e.getMessage());
                 m_log.debug("Error closing rrd {}: {}", rrd, e.getMessage(), e);
             }
@@ -1148,7 +1306,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a {@link java.lang.String} object.
      */
     @Override
-    public String getStats() {
+    public synchronized String getStats() {
         long now = System.currentTimeMillis();
 
         long currentElapsedMillis = Math.max(now - lastStatsTime, 1);
@@ -1181,8 +1339,8 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
         String stats = "\nQS:\t" + "totalOperationsPending=" + getTotalOperationsPending() +
                 ", significantOpsPending=" + (getSignificantOpsEnqueued() - getSignificantOpsCompleted()) +
-                ", filesWithSignificantWork=" + filesWithSignificantWork.size() +
-                ", filesWithInsignificantWork=" + filesWithInsignificantWork.size()
+                ", filesWithPendingWork=" + getFilesPending() +
+                ", filesWithInsignificantWork=" + getFilesWithInsignificantWork()
 
                 + "\nQS:\t" + ", createsCompleted=" + getCreatesCompleted() +
                 ", updatesCompleted=" + getUpdatesCompleted() +
@@ -1238,7 +1396,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      *
      * @return a {@link java.lang.String} object.
      */
-    private String getLapTime() {
+    private synchronized String getLapTime() {
         final long newLap = System.currentTimeMillis();
         final double seconds = (newLap - lastLap) / 1000.0;
         lastLap = newLap;
@@ -1297,7 +1455,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getTotalOperationsPending() {
-        return m_totalOperationsPending;
+        return m_totalOperationsPending.get();
     }
 
     /**
@@ -1306,7 +1464,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param totalOperationsPending a long.
      */
     public void setTotalOperationsPending(long totalOperationsPending) {
-        m_totalOperationsPending = totalOperationsPending;
+        m_totalOperationsPending.set(totalOperationsPending);
     }
 
     /**
@@ -1315,7 +1473,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getCreatesCompleted() {
-        return m_createsCompleted;
+        return m_createsCompleted.get();
     }
 
     /**
@@ -1324,7 +1482,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param createsCompleted a long.
      */
     public void setCreatesCompleted(long createsCompleted) {
-        m_createsCompleted = createsCompleted;
+        m_createsCompleted.set(createsCompleted);
     }
 
     /**
@@ -1333,7 +1491,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getUpdatesCompleted() {
-        return m_updatesCompleted;
+        return m_updatesCompleted.get();
     }
 
     /**
@@ -1342,7 +1500,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param updatesCompleted a long.
      */
     public void setUpdatesCompleted(long updatesCompleted) {
-        m_updatesCompleted = updatesCompleted;
+        m_updatesCompleted.set(updatesCompleted);
     }
 
     /**
@@ -1351,7 +1509,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getErrors() {
-        return m_errors;
+        return m_errors.get();
     }
 
     /**
@@ -1360,7 +1518,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param errors a long.
      */
     public void setErrors(long errors) {
-        m_errors = errors;
+        m_errors.set(errors);
     }
 
     /**
@@ -1369,7 +1527,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getPromotionCount() {
-        return m_promotionCount;
+        return m_promotionCount.get();
     }
 
     /**
@@ -1378,7 +1536,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param promotionCount a long.
      */
     public void setPromotionCount(long promotionCount) {
-        m_promotionCount = promotionCount;
+        m_promotionCount.set(promotionCount);
     }
 
     /**
@@ -1387,7 +1545,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getSignificantOpsEnqueued() {
-        return m_significantOpsEnqueued;
+        return m_significantOpsEnqueued.get();
     }
 
     /**
@@ -1396,7 +1554,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param significantOpsEnqueued a long.
      */
     public void setSignificantOpsEnqueued(long significantOpsEnqueued) {
-        m_significantOpsEnqueued = significantOpsEnqueued;
+        m_significantOpsEnqueued.set(significantOpsEnqueued);
     }
 
     /**
@@ -1405,7 +1563,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getSignificantOpsDequeued() {
-        return m_significantOpsDequeued;
+        return m_significantOpsDequeued.get();
     }
 
     /**
@@ -1414,7 +1572,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param significantOpsDequeued a long.
      */
     public void setSignificantOpsDequeued(long significantOpsDequeued) {
-        m_significantOpsDequeued = significantOpsDequeued;
+        m_significantOpsDequeued.set(significantOpsDequeued);
     }
 
     /**
@@ -1423,7 +1581,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getEnqueuedOperations() {
-        return m_enqueuedOperations;
+        return m_enqueuedOperations.get();
     }
 
     /**
@@ -1432,7 +1590,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param enqueuedOperations a long.
      */
     public void setEnqueuedOperations(long enqueuedOperations) {
-        m_enqueuedOperations = enqueuedOperations;
+        m_enqueuedOperations.set(enqueuedOperations);
     }
 
     /**
@@ -1441,7 +1599,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getDequeuedOperations() {
-        return m_dequeuedOperations;
+        return m_dequeuedOperations.get();
     }
 
     /**
@@ -1450,7 +1608,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param dequeuedOperations a long.
      */
     public void setDequeuedOperations(long dequeuedOperations) {
-        m_dequeuedOperations = dequeuedOperations;
+        m_dequeuedOperations.set(dequeuedOperations);
     }
 
     /**
@@ -1459,7 +1617,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getDequeuedItems() {
-        return m_dequeuedItems;
+        return m_dequeuedItems.get();
     }
 
     /**
@@ -1468,7 +1626,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param dequeuedItems a long.
      */
     public void setDequeuedItems(long dequeuedItems) {
-        m_dequeuedItems = dequeuedItems;
+        m_dequeuedItems.set(dequeuedItems);
     }
 
     /**
@@ -1477,7 +1635,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getSignificantOpsCompleted() {
-        return m_significantOpsCompleted;
+        return m_significantOpsCompleted.get();
     }
 
     /**
@@ -1486,7 +1644,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param significantOpsCompleted a long.
      */
     public void setSignificantOpsCompleted(long significantOpsCompleted) {
-        m_significantOpsCompleted = significantOpsCompleted;
+        m_significantOpsCompleted.set(significantOpsCompleted);
     }
 
     /**
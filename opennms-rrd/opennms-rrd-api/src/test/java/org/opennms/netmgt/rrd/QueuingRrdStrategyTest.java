@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+public class QueuingRrdStrategyTest {
+
+    private final Map<String, List<String>> m_updates = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<String>> m_writers = new ConcurrentHashMap<>();
+
+    private final CountDownLatch m_blocked = new CountDownLatch(1);
+
+    private final MetricRegistry m_registry = new MetricRegistry();
+
+    private RrdStrategy<Object, Object> m_delegate;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        m_delegate = mock(RrdStrategy.class);
+        when(m_delegate.openFile(anyString())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                final String fileName = (String) invocation.getArguments()[0];
+                if ("blocked".equals(fileName)) {
+                    m_blocked.await();
+                }
+                return fileName;
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                final String fileName = (String) invocation.getArguments()[0];
+                updatesFor(fileName).add((String) invocation.getArguments()[2]);
+                writersFor(fileName).add(Thread.currentThread().getName());
+                return null;
+            }
+        }).when(m_delegate).updateFile(any(), anyString(), anyString());
+    }
+
+    @Test
+    public void canWriteUpdatesInOrderFromManyThreads() throws Exception {
+        final QueuingRrdStrategy strategy = createStrategy(4);
+
+        final int numFiles = 100;
+        final int numUpdates = 50;
+        final List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            final int producer = p;
+            producers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int update = 1; update <= numUpdates; update++) {
+                        for (int file = producer; file < numFiles; file += 4) {
+                            try {
+                                strategy.updateFile("file" + file, "test", update + ":" + update);
+                            } catch (Exception e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread producer : producers) {
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        awaitUpdates(strategy, numFiles * numUpdates);
+
+        for (int file = 0; file < numFiles; file++) {
+            final List<String> updates = updatesFor("file" + file);
+            assertEquals(numUpdates, updates.size());
+            for (int update = 1; update <= numUpdates; update++) {
+                assertEquals(update + ":" + update, updates.get(update - 1));
+            }
+            // every file is written by the thread of its shard only
+            assertEquals(1, writersFor("file" + file).size());
+        }
+        assertEquals(numFiles * numUpdates, strategy.getUpdatesCompleted());
+        assertEquals(numFiles * numUpdates, strategy.getDequeuedOperations());
+        assertEquals(0L, m_registry.getGauges().get("operations.pending").getValue());
+        assertEquals(0L, m_registry.getGauges().get("files.pending").getValue());
+        assertEquals(4, m_registry.getTimers().keySet().stream().filter(t -> t.endsWith(".writes")).count());
+    }
+
+    @Test
+    public void canCoalesceZeroValueUpdates() throws Exception {
+        final QueuingRrdStrategy strategy = createStrategy(1);
+
+        // keep the write thread busy while the updates are queued
+        strategy.updateFile("blocked", "test", "1:1");
+        while (strategy.getDequeuedItems() < 1) {
+            Thread.sleep(10);
+        }
+        for (int i = 0; i < 10; i++) {
+            strategy.updateFile("zeros", "test", (1000 + i * 300) + ":0");
+        }
+        strategy.updateFile("zeros", "test", "5000:1");
+
+        final Gauge<?> pending = m_registry.getGauges().get("shards.1.operations.pending");
+        assertEquals(11L, pending.getValue());
+        assertEquals(9, m_registry.meter("operations.coalesced").getCount());
+        m_blocked.countDown();
+
+        awaitUpdates(strategy, 12);
+
+        final List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            expected.add((1000 + i * 300) + ":0");
+        }
+        expected.add("5000:1");
+        assertEquals(expected, updatesFor("zeros"));
+        assertEquals(0L, pending.getValue());
+        assertEquals(2, m_registry.timer("shards.1.queueLatency").getCount());
+    }
+
+    @Test
+    public void canPromoteInsignificantFiles() throws Exception {
+        final QueuingRrdStrategy strategy = createStrategy(1);
+        strategy.setPrioritizeSignificantUpdates(true);
+
+        strategy.updateFile("blocked", "test", "1:1");
+        strategy.updateFile("insignificant", "test", "1000:0");
+        strategy.updateFile("significant", "test", "1000:1");
+        strategy.updateFile("promoted", "test", "1000:0");
+        strategy.promoteEnqueuedFiles(Collections.singletonList("promoted"));
+        m_blocked.countDown();
+
+        awaitUpdates(strategy, 4);
+
+        assertEquals(1, updatesFor("insignificant").size());
+        assertEquals(1, updatesFor("significant").size());
+        assertEquals(1, updatesFor("promoted").size());
+        assertEquals(0, strategy.getErrors());
+    }
+
+    private QueuingRrdStrategy createStrategy(int writeThreads) {
+        final QueuingRrdStrategy strategy = new QueuingRrdStrategy(m_delegate, m_registry);
+        strategy.setWriteThreads(writeThreads);
+        strategy.setModulus(10000);
+        strategy.setWriteThreadSleepTime(50);
+        strategy.setWriteThreadExitDelay(1000);
+        return strategy;
+    }
+
+    private void awaitUpdates(QueuingRrdStrategy strategy, long updates) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (strategy.getUpdatesCompleted() < updates) {
+            assertTrue("Timed out waiting for the queue to drain", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private List<String> updatesFor(String fileName) {
+        m_updates.putIfAbsent(fileName, Collections.synchronizedList(new ArrayList<String>()));
+        return m_updates.get(fileName);
+    }
+
+    private Set<String> writersFor(String fileName) {
+        m_writers.putIfAbsent(fileName, Collections.synchronizedSet(new HashSet<String>()));
+        return m_writers.get(fileName);
+    }
+}
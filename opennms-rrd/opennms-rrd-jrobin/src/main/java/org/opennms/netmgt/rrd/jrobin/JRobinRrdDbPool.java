@@ -0,0 +1,320 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of open {@link RrdDb} handles.
+ *
+ * Handles are reference counted: every call to {@link #acquire(String)} must
+ * be matched by a call to {@link #release(RrdDb)}. Handles which are no longer
+ * referenced are kept open, and the least recently used ones are closed once
+ * the number of open handles exceeds the capacity. Handles which are still
+ * referenced are never closed, so the pool may temporarily grow beyond its
+ * capacity.
+ *
+ * {@link RrdDb} synchronizes its own operations, so readers and writers share
+ * the same handle.
+ *
+ * Handles to a file must be evicted with {@link #evict(String)} before the
+ * file is re-created. Handles to files which were deleted are dropped the
+ * next time they are acquired.
+ */
+public class JRobinRrdDbPool {
+    private static final Logger LOG = LoggerFactory.getLogger(JRobinRrdDbPool.class);
+
+    private final int m_capacity;
+
+    /**
+     * Entries in access order, from the least to the most recently used.
+     */
+    private final LinkedHashMap<String, Entry> m_entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long m_hits = 0;
+
+    private long m_misses = 0;
+
+    private long m_evictions = 0;
+
+    /**
+     * Entries which were removed from the pool while still referenced, their
+     * handles are closed once they are released.
+     */
+    private final List<Entry> m_detached = new ArrayList<>();
+
+    private boolean m_closed = false;
+
+    private static class Entry {
+        private final CountDownLatch m_opened = new CountDownLatch(1);
+        private volatile RrdDb m_rrdDb;
+        private Exception m_failure;
+        private int m_refCount = 0;
+
+        private RrdDb await() throws IOException, RrdException {
+            try {
+                m_opened.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the file to be opened.", e);
+            }
+            if (m_failure instanceof IOException) {
+                throw (IOException)m_failure;
+            } else if (m_failure != null) {
+                throw (RrdException)m_failure;
+            }
+            return m_rrdDb;
+        }
+    }
+
+    public JRobinRrdDbPool(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be strictly positive");
+        }
+        m_capacity = capacity;
+    }
+
+    /**
+     * Returns an open handle to the given file, opening it if necessary.
+     */
+    public RrdDb acquire(final String path) throws IOException, RrdException {
+        // Stat the file outside of the lock, a pooled handle would otherwise keep writing to a deleted file
+        final boolean exists = new File(path).exists();
+        final Entry entry;
+        final boolean created;
+        synchronized (this) {
+            if (m_closed) {
+                return new RrdDb(path);
+            }
+            Entry existing = m_entries.get(path);
+            if (existing != null && !exists) {
+                LOG.debug("{} was deleted, dropping its pooled handle.", path);
+                detach(path, existing);
+                existing = null;
+            }
+            if (existing != null) {
+                m_hits++;
+                entry = existing;
+                created = false;
+            } else {
+                m_misses++;
+                entry = new Entry();
+                m_entries.put(path, entry);
+                created = true;
+            }
+            entry.m_refCount++;
+        }
+
+        if (!created) {
+            try {
+                return entry.await();
+            } catch (IOException|RrdException e) {
+                // The entry was removed by the thread which failed to open it
+                synchronized (this) {
+                    entry.m_refCount--;
+                }
+                throw e;
+            }
+        }
+
+        // Open the file outside of the lock, other threads requesting the same file wait on the entry
+        try {
+            entry.m_rrdDb = new RrdDb(path);
+        } catch (IOException|RrdException e) {
+            entry.m_failure = e;
+            synchronized (this) {
+                entry.m_refCount--;
+                if (!m_entries.remove(path, entry)) {
+                    m_detached.remove(entry);
+                }
+            }
+            throw e;
+        } finally {
+            entry.m_opened.countDown();
+        }
+
+        synchronized (this) {
+            evictIdleEntries();
+        }
+        return entry.m_rrdDb;
+    }
+
+    /**
+     * Releases a handle previously returned by {@link #acquire(String)}.
+     */
+    public void release(final RrdDb rrdDb) throws IOException {
+        synchronized (this) {
+            final Entry entry = m_entries.get(rrdDb.getPath());
+            if (entry == null || entry.m_rrdDb != rrdDb) {
+                final Iterator<Entry> it = m_detached.iterator();
+                while (it.hasNext()) {
+                    final Entry detached = it.next();
+                    if (detached.m_rrdDb == rrdDb) {
+                        if (--detached.m_refCount < 1) {
+                            it.remove();
+                            close(rrdDb);
+                        }
+                        return;
+                    }
+                }
+                // Not one of ours
+                if (!m_closed) {
+                    LOG.warn("Releasing a handle to {} which is not pooled. Closing it.", rrdDb.getPath());
+                }
+                rrdDb.close();
+                return;
+            }
+            entry.m_refCount--;
+            evictIdleEntries();
+        }
+    }
+
+    /**
+     * Closes all of the handles which are no longer referenced.
+     */
+    public synchronized void closeIdle() {
+        final Iterator<Map.Entry<String, Entry>> it = m_entries.entrySet().iterator();
+        while (it.hasNext()) {
+            final Entry entry = it.next().getValue();
+            if (entry.m_refCount < 1 && entry.m_rrdDb != null) {
+                it.remove();
+                close(entry.m_rrdDb);
+            }
+        }
+    }
+
+    /**
+     * Removes the handle to the given file from the pool. The handle is
+     * closed immediately if it is idle, or as soon as it is released
+     * otherwise.
+     */
+    public synchronized void evict(final String path) {
+        final Entry entry = m_entries.get(path);
+        if (entry != null) {
+            detach(path, entry);
+        }
+    }
+
+    /**
+     * Closes all of the idle handles, and the referenced ones once they are
+     * released. Files acquired after the pool was closed are not pooled.
+     */
+    public synchronized void close() {
+        m_closed = true;
+        final Iterator<Map.Entry<String, Entry>> it = m_entries.entrySet().iterator();
+        while (it.hasNext()) {
+            final Entry entry = it.next().getValue();
+            it.remove();
+            if (entry.m_refCount < 1 && entry.m_rrdDb != null) {
+                close(entry.m_rrdDb);
+            } else {
+                m_detached.add(entry);
+            }
+        }
+    }
+
+    private void detach(final String path, final Entry entry) {
+        m_entries.remove(path);
+        if (entry.m_refCount < 1 && entry.m_rrdDb != null) {
+            close(entry.m_rrdDb);
+        } else {
+            m_detached.add(entry);
+        }
+    }
+
+    /**
+     * Handles are closed while holding the lock, so that a file is never
+     * re-opened before the previous handle to it was flushed.
+     */
+    private void evictIdleEntries() {
+        if (m_entries.size() <= m_capacity) {
+            return;
+        }
+        final Iterator<Map.Entry<String, Entry>> it = m_entries.entrySet().iterator();
+        while (m_entries.size() > m_capacity && it.hasNext()) {
+            final Entry entry = it.next().getValue();
+            if (entry.m_refCount < 1 && entry.m_rrdDb != null) {
+                it.remove();
+                m_evictions++;
+                close(entry.m_rrdDb);
+            }
+        }
+    }
+
+    private static void close(final RrdDb rrdDb) {
+        try {
+            rrdDb.close();
+        } catch (IOException e) {
+            LOG.error("Failed to close rrd file: {}", rrdDb.getPath(), e);
+        }
+    }
+
+    public int getCapacity() {
+        return m_capacity;
+    }
+
+    public synchronized int getNumOpen() {
+        return m_entries.size();
+    }
+
+    public synchronized long getHits() {
+        return m_hits;
+    }
+
+    public synchronized long getMisses() {
+        return m_misses;
+    }
+
+    public synchronized long getEvictions() {
+        return m_evictions;
+    }
+
+    public synchronized double getHitRatio() {
+        final long requests = m_hits + m_misses;
+        return requests > 0 ? (double)m_hits / requests : 0d;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("JRobinRrdDbPool[capacity=%d, open=%d, hits=%d, misses=%d, hitRatio=%.3f, evictions=%d]",
+                m_capacity, m_entries.size(), m_hits, m_misses, getHitRatio(), m_evictions);
+    }
+}
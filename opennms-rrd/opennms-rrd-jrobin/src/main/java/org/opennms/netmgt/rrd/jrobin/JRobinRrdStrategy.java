@@ -58,6 +58,12 @@ import org.opennms.netmgt.rrd.RrdStrategy;
 import org.opennms.netmgt.rrd.RrdMetaDataUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 
 
 /**
@@ -68,11 +74,17 @@ import org.slf4j.LoggerFactory;
  * @author ranger
  * @version $Id: $
  */
-public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
+public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb>, DisposableBean {
     private static final Logger LOG = LoggerFactory.getLogger(JRobinRrdStrategy.class);
     private static final String BACKEND_FACTORY_PROPERTY = "org.jrobin.core.RrdBackendFactory";
     private static final String DEFAULT_BACKEND_FACTORY = "FILE";
 
+    /**
+     * Maximum number of idle RRD files to keep open. Files are re-opened
+     * on every access when set to 0.
+     */
+    public static final String POOL_CAPACITY_PROPERTY = "org.opennms.rrd.jrobin.pool.capacity";
+
     /*
      * Ensure that we only initialize certain things *once* per
      * Java VM, not once per instantiation of this class.
@@ -81,6 +93,8 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
 
     private Properties m_configurationProperties;
 
+    private volatile JRobinRrdDbPool m_pool;
+
     /**
      * An extremely simple Plottable for holding static datasources that
      * can't be represented with an SDEF -- currently used only for PERCENT
@@ -137,6 +151,74 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
                 LOG.error("Could not set default JRobin RRD factory", e);
             }
         }
+
+        final int capacity = m_configurationProperties == null ? 0
+                : Integer.parseInt(m_configurationProperties.getProperty(POOL_CAPACITY_PROPERTY, "0"));
+        final JRobinRrdDbPool pool = m_pool;
+        if (pool != null && pool.getCapacity() == capacity) {
+            pool.closeIdle();
+            return;
+        }
+        m_pool = capacity > 0 ? new JRobinRrdDbPool(capacity) : null;
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    /**
+     * Publishes the statistics of the pool of open files to the given registry.
+     *
+     * @param registry a {@link com.codahale.metrics.MetricRegistry} object.
+     */
+    @Autowired(required=false)
+    public void setMetricRegistry(@Qualifier("rrdMetricRegistry") final MetricRegistry registry) {
+        registry.register(MetricRegistry.name("jrobin", "pool", "open"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                final JRobinRrdDbPool pool = m_pool;
+                return pool != null ? pool.getNumOpen() : 0;
+            }
+        });
+        registry.register(MetricRegistry.name("jrobin", "pool", "hitRatio"), new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                final JRobinRrdDbPool pool = m_pool;
+                return pool != null ? pool.getHitRatio() : 0d;
+            }
+        });
+        registry.register(MetricRegistry.name("jrobin", "pool", "evictions"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                final JRobinRrdDbPool pool = m_pool;
+                return pool != null ? pool.getEvictions() : 0L;
+            }
+        });
+    }
+
+    /**
+     * Closes the pool of open files, if enabled.
+     */
+    @Override
+    public void destroy() {
+        final JRobinRrdDbPool pool = m_pool;
+        m_pool = null;
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    private RrdDb open(final String fileName, boolean readOnly) throws IOException, RrdException {
+        final JRobinRrdDbPool pool = m_pool;
+        return pool != null ? pool.acquire(fileName) : new RrdDb(fileName, readOnly);
+    }
+
+    private void close(final RrdDb rrdDb) throws IOException {
+        final JRobinRrdDbPool pool = m_pool;
+        if (pool != null) {
+            pool.release(rrdDb);
+        } else {
+            rrdDb.close();
+        }
     }
 
     /**
@@ -147,7 +229,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
      */
     @Override
     public void closeFile(final RrdDb rrdFile) throws Exception {
-        rrdFile.close();
+        close(rrdFile);
     }
 
     /** {@inheritDoc} */
@@ -202,6 +284,12 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         }
         LOG.info("createRRD: creating RRD file {}", rrdDef.getPath());
 
+        // Don't let a handle to a previous version of the file be re-used
+        final JRobinRrdDbPool pool = m_pool;
+        if (pool != null) {
+            pool.evict(rrdDef.getPath());
+        }
+
         RrdDb rrd = new RrdDb(rrdDef);
         rrd.close();
     }
@@ -213,7 +301,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
      */
     @Override
     public RrdDb openFile(final String fileName) throws Exception {
-        return new RrdDb(fileName);
+        return open(fileName, false);
     }
 
     /**
@@ -256,7 +344,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         try {
             long now = System.currentTimeMillis();
             long collectTime = (now - (now % interval)) / 1000L;
-            rrd = new RrdDb(fileName, true);
+            rrd = open(fileName, true);
             FetchData data = rrd.createFetchRequest(consolidationFunction, collectTime, collectTime).fetchData();
             LOG.debug(data.toString());
             double[] vals = data.getValues(ds);
@@ -271,7 +359,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         } finally {
             if (rrd != null) {
                 try {
-                    rrd.close();
+                    close(rrd);
                 } catch (IOException e) {
                     LOG.error("Failed to close rrd file: {}", fileName, e);
                 }
@@ -284,7 +372,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     public Double fetchLastValueInRange(final String fileName, final String ds, final int interval, final int range) throws NumberFormatException, org.opennms.netmgt.rrd.RrdException {
         RrdDb rrd = null;
         try {
-        	rrd = new RrdDb(fileName, true);
+        	rrd = open(fileName, true);
          	long now = System.currentTimeMillis();
             long latestUpdateTime = (now - (now % interval)) / 1000L;
             long earliestUpdateTime = ((now - (now % interval)) - range) / 1000L;
@@ -313,7 +401,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         } finally {
             if (rrd != null) {
                 try {
-                    rrd.close();
+                    close(rrd);
                 } catch (IOException e) {
                     LOG.error("Failed to close rrd file: {}", fileName, e);
                 }
@@ -861,13 +949,21 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     }
 
     /**
-     * This implementation does not track any stats.
+     * Returns the statistics of the pool of open files, if enabled.
      *
      * @return a {@link java.lang.String} object.
      */
     @Override
     public String getStats() {
-        return "";
+        final JRobinRrdDbPool pool = m_pool;
+        return pool != null ? pool.toString() : "";
+    }
+
+    /**
+     * @return the pool of open files, or <code>null</code> if disabled
+     */
+    public JRobinRrdDbPool getPool() {
+        return m_pool;
     }
 
     /*
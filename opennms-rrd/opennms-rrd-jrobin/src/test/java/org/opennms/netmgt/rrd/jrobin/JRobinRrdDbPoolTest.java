@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdDef;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JRobinRrdDbPoolTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final JRobinRrdDbPool m_pool = new JRobinRrdDbPool(2);
+
+    private String[] m_paths;
+
+    @Before
+    public void setUp() throws Exception {
+        m_paths = new String[4];
+        for (int i = 0; i < m_paths.length; i++) {
+            m_paths[i] = new File(tempFolder.getRoot(), "file" + i + ".jrb").getAbsolutePath();
+            final RrdDef def = new RrdDef(m_paths[i]);
+            def.setStartTime(1000);
+            def.setStep(300);
+            def.addDatasource("ds", "GAUGE", 600, Double.NaN, Double.NaN);
+            def.addArchive("RRA:AVERAGE:0.5:1:100");
+            new RrdDb(def).close();
+        }
+    }
+
+    @Test
+    public void sharesOpenHandles() throws Exception {
+        final RrdDb first = m_pool.acquire(m_paths[0]);
+        final RrdDb second = m_pool.acquire(m_paths[0]);
+        assertSame(first, second);
+        m_pool.release(first);
+        m_pool.release(second);
+
+        // Idle handles remain open
+        assertSame(first, m_pool.acquire(m_paths[0]));
+        assertFalse(first.isClosed());
+        m_pool.release(first);
+
+        assertEquals(2, m_pool.getHits());
+        assertEquals(1, m_pool.getMisses());
+        assertEquals(1, m_pool.getNumOpen());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedIdleHandles() throws Exception {
+        final RrdDb first = m_pool.acquire(m_paths[0]);
+        final RrdDb second = m_pool.acquire(m_paths[1]);
+        m_pool.release(second);
+        m_pool.release(first);
+
+        // Opening a third file closes the least recently used one
+        m_pool.release(m_pool.acquire(m_paths[2]));
+        assertEquals(2, m_pool.getNumOpen());
+        assertEquals(1, m_pool.getEvictions());
+        assertTrue(second.isClosed());
+        assertFalse(first.isClosed());
+
+        m_pool.release(m_pool.acquire(m_paths[0]));
+        assertEquals(1, m_pool.getHits());
+    }
+
+    @Test
+    public void neverClosesReferencedHandles() throws Exception {
+        final RrdDb[] rrdDbs = new RrdDb[m_paths.length];
+        for (int i = 0; i < m_paths.length; i++) {
+            rrdDbs[i] = m_pool.acquire(m_paths[i]);
+        }
+        assertEquals(m_paths.length, m_pool.getNumOpen());
+        for (RrdDb rrdDb : rrdDbs) {
+            assertFalse(rrdDb.isClosed());
+            m_pool.release(rrdDb);
+        }
+        assertEquals(2, m_pool.getNumOpen());
+    }
+
+    @Test
+    public void doesNotPoolMissingFiles() throws Exception {
+        try {
+            m_pool.acquire(new File(tempFolder.getRoot(), "missing.jrb").getAbsolutePath());
+            fail("Expected an exception");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals(0, m_pool.getNumOpen());
+    }
+
+    @Test
+    public void closesEvictedHandles() throws Exception {
+        final RrdDb idle = m_pool.acquire(m_paths[0]);
+        m_pool.release(idle);
+        m_pool.evict(m_paths[0]);
+        assertTrue(idle.isClosed());
+        assertEquals(0, m_pool.getNumOpen());
+
+        // Referenced handles are closed once released, and never handed out again
+        final RrdDb referenced = m_pool.acquire(m_paths[0]);
+        m_pool.evict(m_paths[0]);
+        assertFalse(referenced.isClosed());
+        final RrdDb reopened = m_pool.acquire(m_paths[0]);
+        assertNotSame(referenced, reopened);
+        m_pool.release(referenced);
+        assertTrue(referenced.isClosed());
+        m_pool.release(reopened);
+        assertFalse(reopened.isClosed());
+    }
+
+    @Test
+    public void dropsHandlesToDeletedFiles() throws Exception {
+        final RrdDb rrdDb = m_pool.acquire(m_paths[0]);
+        m_pool.release(rrdDb);
+        assertTrue(new File(m_paths[0]).delete());
+        try {
+            m_pool.acquire(m_paths[0]);
+            fail("Expected an exception");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertTrue(rrdDb.isClosed());
+        assertEquals(0, m_pool.getNumOpen());
+    }
+
+    @Test
+    public void closesAllHandles() throws Exception {
+        final RrdDb idle = m_pool.acquire(m_paths[0]);
+        m_pool.release(idle);
+        final RrdDb referenced = m_pool.acquire(m_paths[1]);
+        m_pool.close();
+        assertTrue(idle.isClosed());
+        assertFalse(referenced.isClosed());
+        m_pool.release(referenced);
+        assertTrue(referenced.isClosed());
+        assertEquals(0, m_pool.getNumOpen());
+    }
+}
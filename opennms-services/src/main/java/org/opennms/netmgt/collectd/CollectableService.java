@@ -31,6 +31,10 @@ package org.opennms.netmgt.collectd;
 import java.io.File;
 import java.util.Date;
 import java.net.InetAddress;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import org.opennms.core.logging.Logging;
 import org.opennms.core.utils.InetAddressUtils;
@@ -139,6 +143,11 @@ class CollectableService implements ReadyRunnable {
 
     private final ResourceStorageDao m_resourceStorageDao;
 
+    /**
+     * Dispatches the collection when set, instead of running it on the scheduler's thread
+     */
+    private volatile CollectionBatcher m_batcher;
+
     /**
      * Constructs a new instance of a CollectableService object.
      *
@@ -309,15 +318,37 @@ class CollectableService implements ReadyRunnable {
         return m_agent.getHostAddress();
     }
 
+    /**
+     * <p>setCollectionBatcher</p>
+     *
+     * @param batcher dispatches the collections of this service along with the
+     *            other services that are due, or null to collect on the scheduler's thread
+     */
+    public void setCollectionBatcher(CollectionBatcher batcher) {
+        m_batcher = batcher;
+    }
+
     /**
      * This is the main method of the class. An instance is normally enqueued on
      * the scheduler which checks its <code>isReady</code> method to determine
      * execution. If the instance is ready for execution then it is started with
      * it's own thread context to execute the query. The last step in the method
      * before it exits is to reschedule the interface.
+     *
+     * When a {@link CollectionBatcher} is set, the service is handed to it
+     * instead, and is rescheduled once its data has been persisted.
      */
     @Override
     public void run() {
+        final CollectionBatcher batcher = m_batcher;
+        if (batcher != null) {
+            batcher.submit(this::collectAsync);
+            return;
+        }
+        withLoggingContext(this::doRun);
+    }
+
+    private void withLoggingContext(final Runnable runnable) {
         Logging.withPrefix(Collectd.LOG4J_CATEGORY, new Runnable() {
 
             @Override
@@ -329,17 +360,86 @@ class CollectableService implements ReadyRunnable {
                 Logging.putThreadContext("foreignSource", m_agent.getForeignSource());
                 Logging.putThreadContext("foreignId", m_agent.getForeignId());
                 Logging.putThreadContext("sysObjectId", m_agent.getSysObjectId());
-                doRun();
+                runnable.run();
             }
             
         });
     }
 
     private void doRun() {
+        if (!prepareCollection()) {
+            return;
+        }
+
+        /*
+         * Check scheduled outages to see if any apply indicating
+         * that the collection should be skipped.
+         */
+        if (!m_spec.scheduledOutage(m_agent)) {
+            try {
+                doCollection();
+                updateStatus(CollectionStatus.SUCCEEDED, null);
+            } catch (Throwable e) {
+                handleCollectionFailure(e);
+            }
+        }
+
+        reschedule();
+    }
+
+    /**
+     * Starts the collection without waiting for the agent to respond. The
+     * collection set is persisted on the given executor once complete, after
+     * which the service is rescheduled.
+     *
+     * @param persister the executor used to persist the collection set
+     * @return a future that completes once the collection set was persisted
+     */
+    CompletableFuture<Void> collectAsync(final Executor persister) {
+        final CompletableFuture<Void> persisted = new CompletableFuture<>();
+        withLoggingContext(() -> {
+            if (!prepareCollection()) {
+                persisted.complete(null);
+                return;
+            }
+            if (m_spec.scheduledOutage(m_agent)) {
+                reschedule();
+                persisted.complete(null);
+                return;
+            }
+
+            LOG.info("run: starting new collection for {}/{}/{}/{}", m_nodeId, getHostAddress(), m_spec.getServiceName(), m_spec.getPackageName());
+            m_spec.collectAsync(m_agent).whenCompleteAsync((result, ex) -> withLoggingContext(() -> {
+                try {
+                    completeCollection(() -> {
+                        if (ex != null) {
+                            final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                            throw cause instanceof Exception ? (Exception)cause : new CompletionException(cause);
+                        }
+                        return result;
+                    });
+                    updateStatus(CollectionStatus.SUCCEEDED, null);
+                } catch (Throwable e) {
+                    handleCollectionFailure(e);
+                } finally {
+                    reschedule();
+                    persisted.complete(null);
+                }
+            }), persister);
+        });
+        return persisted;
+    }
+
+    /**
+     * Processes the outstanding updates and updates the last scheduled collection time.
+     *
+     * @return false if the collection was aborted
+     */
+    private boolean prepareCollection() {
         // Process any outstanding updates.
         if (processUpdates() == ABORT_COLLECTION) {
             LOG.debug("run: Aborting because processUpdates returned ABORT_COLLECTION (probably marked for deletion) for {}", this);
-            return;
+            return false;
         }
 
         // Update last scheduled poll time; if we are not doing strict interval,
@@ -350,33 +450,29 @@ class CollectableService implements ReadyRunnable {
         } else {
             m_lastScheduledCollectionTime += m_spec.getInterval();
         }
+        return true;
+    }
 
-        /*
-         * Check scheduled outages to see if any apply indicating
-         * that the collection should be skipped.
-         */
-        if (!m_spec.scheduledOutage(m_agent)) {
-            try {
-                doCollection();
-                updateStatus(CollectionStatus.SUCCEEDED, null);
-            } catch (CollectionTimedOut e) {
-                LOG.info(e.getMessage());
-                updateStatus(CollectionStatus.FAILED, e);
-            } catch (CollectionWarning e) {
-                LOG.warn(e.getMessage(), e);
-                updateStatus(CollectionStatus.FAILED, e);
-            } catch (CollectionUnknown e) {
-                LOG.warn(e.getMessage(), e);
-                // Omit any status updates
-            } catch (CollectionException e) {
-                LOG.error(e.getMessage(), e);
-                updateStatus(CollectionStatus.FAILED, e);
-            } catch (Throwable e) {
-                LOG.error(e.getMessage(), e);
-                updateStatus(CollectionStatus.FAILED, new CollectionException("Collection failed unexpectedly: " + e.getClass().getSimpleName() + ": " + e.getMessage(), e));
-            }
+    private void handleCollectionFailure(Throwable e) {
+        if (e instanceof CollectionTimedOut) {
+            LOG.info(e.getMessage());
+            updateStatus(CollectionStatus.FAILED, (CollectionTimedOut)e);
+        } else if (e instanceof CollectionWarning) {
+            LOG.warn(e.getMessage(), e);
+            updateStatus(CollectionStatus.FAILED, (CollectionWarning)e);
+        } else if (e instanceof CollectionUnknown) {
+            LOG.warn(e.getMessage(), e);
+            // Omit any status updates
+        } else if (e instanceof CollectionException) {
+            LOG.error(e.getMessage(), e);
+            updateStatus(CollectionStatus.FAILED, (CollectionException)e);
+        } else {
+            LOG.error(e.getMessage(), e);
+            updateStatus(CollectionStatus.FAILED, new CollectionException("Collection failed unexpectedly: " + e.getClass().getSimpleName() + ": " + e.getMessage(), e));
         }
+    }
 
+    private void reschedule() {
         // If we are doing strict interval, determine how long the collection
         // has taken, so we can cut that off of the service interval
         long diff = 0;
@@ -423,9 +519,18 @@ class CollectableService implements ReadyRunnable {
      */
 	private void doCollection() throws CollectionException {
 		LOG.info("run: starting new collection for {}/{}/{}/{}", m_nodeId, getHostAddress(), m_spec.getServiceName(), m_spec.getPackageName());
+		completeCollection(() -> m_spec.collect(m_agent));
+	}
+
+	/**
+	 * Persists and applies the thresholds to the collection set.
+	 *
+	 * @param collection returns the collection set, or throws the exception the collection failed with
+	 */
+	private void completeCollection(Callable<CollectionSet> collection) throws CollectionException {
 		CollectionSet result = null;
 		try {
-		    result = m_spec.collect(m_agent);
+		    result = collection.call();
 		    if (result != null) {
                         Collectd.instrumentation().beginPersistingServiceData(m_spec.getPackageName(), m_nodeId, getHostAddress(), m_spec.getServiceName());
                         try {
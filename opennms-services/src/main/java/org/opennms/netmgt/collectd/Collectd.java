@@ -76,9 +76,9 @@ import org.opennms.netmgt.model.OnmsMonitoredService;
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.model.events.EventUtils;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.SchedulerFactory;
 import org.opennms.netmgt.snmp.InetAddrUtils;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Parm;
@@ -92,6 +92,8 @@ import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
 
+import com.codahale.metrics.MetricRegistry;
+
 /**
  * <p>Collectd class.</p>
  *
@@ -143,6 +145,11 @@ public class Collectd extends AbstractServiceDaemon implements
      */
     private volatile Scheduler m_scheduler;
 
+    /**
+     * Dispatches the collections in batches when enabled, null otherwise
+     */
+    private volatile CollectionBatcher m_batcher;
+
     /**
      * Indicates if scheduling of existing interfaces has been completed
      */
@@ -216,6 +223,12 @@ public class Collectd extends AbstractServiceDaemon implements
         
         // make sure the instrumentation gets initialized
         instrumentation();
+
+        if (CollectionBatcher.isEnabled()) {
+            final MetricRegistry metrics = instrumentation() instanceof DefaultCollectdInstrumentation
+                    ? ((DefaultCollectdInstrumentation)instrumentation()).getMetricRegistry() : new MetricRegistry();
+            m_batcher = new CollectionBatcher(metrics);
+        }
         
         instantiateCollectors();
 
@@ -324,7 +337,7 @@ public class Collectd extends AbstractServiceDaemon implements
                 // Create a scheduler
                 try {
                     LOG.debug("init: Creating collectd scheduler");
-                    setScheduler(new LegacyScheduler("Collectd", m_collectdConfigFactory.getCollectdConfig().getThreads()));
+                    setScheduler(SchedulerFactory.createScheduler("Collectd", m_collectdConfigFactory.getCollectdConfig().getThreads()));
                 } catch (final RuntimeException e) {
                     LOG.error("init: Failed to create collectd scheduler", e);
                     throw e;
@@ -341,6 +354,12 @@ public class Collectd extends AbstractServiceDaemon implements
             LOG.debug("start: Starting collectd scheduler");
 
             getScheduler().start();
+            if (instrumentation() instanceof DefaultCollectdInstrumentation) {
+                ((DefaultCollectdInstrumentation)instrumentation()).start();
+            }
+            if (m_batcher != null) {
+                m_batcher.start();
+            }
         } catch (RuntimeException e) {
             LOG.error("start: Failed to start scheduler", e);
             throw e;
@@ -354,6 +373,12 @@ public class Collectd extends AbstractServiceDaemon implements
         deinstallMessageSelectors();
 
         setScheduler(null);
+        if (m_batcher != null) {
+            m_batcher.stop();
+        }
+        if (instrumentation() instanceof DefaultCollectdInstrumentation) {
+            ((DefaultCollectdInstrumentation)instrumentation()).stop();
+        }
     }
 
     /** {@inheritDoc} */
@@ -526,6 +551,7 @@ public class Collectd extends AbstractServiceDaemon implements
                     m_persisterFactory,
                     m_resourceStorageDao
                 );
+                cSvc.setCollectionBatcher(m_batcher);
 
                 // Add new collectable service to the collectable service list.
                 m_collectableServices.add(cSvc);
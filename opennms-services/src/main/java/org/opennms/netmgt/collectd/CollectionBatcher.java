@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.collectd;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Collects the services that fall due within the same window together.
+ *
+ * Services are queued by the scheduler as they become ready, and every window
+ * the queued services are dispatched at once without waiting for the agents
+ * to respond, so that the requests to all of the agents (the GETBULK requests of
+ * the SNMP walks for instance) are in flight at the same time instead of holding
+ * a scheduler thread each. The collection sets are persisted on a separate pool
+ * as soon as they arrive.
+ *
+ * The number of collections in flight is bounded; when the bound is reached, the
+ * dispatching of the batch waits for the earlier collections to complete.
+ *
+ * Batching is disabled by default, and enabled by setting the
+ * <code>org.opennms.netmgt.collectd.batch</code> system property to true.
+ */
+public class CollectionBatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(CollectionBatcher.class);
+
+    public static final String BATCH_SYS_PROP = "org.opennms.netmgt.collectd.batch";
+
+    public static final String WINDOW_SYS_PROP = "org.opennms.netmgt.collectd.batch.window";
+
+    public static final String MAX_IN_FLIGHT_SYS_PROP = "org.opennms.netmgt.collectd.batch.maxInFlight";
+
+    public static final String PERSISTER_THREADS_SYS_PROP = "org.opennms.netmgt.collectd.batch.persisterThreads";
+
+    private final long m_windowMs;
+
+    private final Semaphore m_inFlight;
+
+    private final int m_persisterThreads;
+
+    private final Queue<Function<Executor, CompletableFuture<?>>> m_queue = new ConcurrentLinkedQueue<>();
+
+    private final Histogram m_batchSizes;
+
+    private final Counter m_inFlightCounter;
+
+    private ScheduledExecutorService m_dispatcher;
+
+    private ExecutorService m_persister;
+
+    /**
+     * @return true if the collections should be batched
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(BATCH_SYS_PROP);
+    }
+
+    /**
+     * Creates a batcher configured by the system properties.
+     *
+     * @param metrics the registry in which the batch sizes and the number of
+     *            collections in flight are recorded
+     */
+    public CollectionBatcher(MetricRegistry metrics) {
+        this(Long.getLong(WINDOW_SYS_PROP, 1000), Integer.getInteger(MAX_IN_FLIGHT_SYS_PROP, 1000),
+                Integer.getInteger(PERSISTER_THREADS_SYS_PROP, 10), metrics);
+    }
+
+    protected CollectionBatcher(long windowMs, int maxInFlight, int persisterThreads, MetricRegistry metrics) {
+        if (windowMs <= 0 || maxInFlight <= 0 || persisterThreads <= 0) {
+            throw new IllegalArgumentException("The window, the maximum number of collections in flight and the number of persister threads must be positive.");
+        }
+        m_windowMs = windowMs;
+        m_inFlight = new Semaphore(maxInFlight);
+        m_persisterThreads = persisterThreads;
+        m_batchSizes = metrics.histogram(MetricRegistry.name("batches", "size"));
+        m_inFlightCounter = metrics.counter(MetricRegistry.name("batches", "inFlight"));
+    }
+
+    /**
+     * Starts dispatching the queued collections every window.
+     */
+    public synchronized void start() {
+        if (m_dispatcher != null) {
+            return;
+        }
+        m_persister = Executors.newFixedThreadPool(m_persisterThreads,
+                new LogPreservingThreadFactory("CollectdPersister", m_persisterThreads));
+        m_dispatcher = Executors.newSingleThreadScheduledExecutor(
+                new LogPreservingThreadFactory("CollectdBatcher", 1));
+        m_dispatcher.scheduleWithFixedDelay(this::dispatch, m_windowMs, m_windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops dispatching. The collections still queued are dropped, along with
+     * the data of those in flight that has not been persisted yet.
+     */
+    public synchronized void stop() {
+        if (m_dispatcher == null) {
+            return;
+        }
+        m_dispatcher.shutdownNow();
+        m_persister.shutdownNow();
+        m_dispatcher = null;
+        m_persister = null;
+        final int dropped = m_queue.size();
+        m_queue.clear();
+        if (dropped > 0) {
+            LOG.info("stop: dropped {} queued collections", dropped);
+        }
+    }
+
+    /**
+     * Queues a collection for the next batch.
+     *
+     * @param collection starts the collection, persisting its data on the given
+     *            executor, and returns a future that completes once the data was persisted
+     */
+    public void submit(Function<Executor, CompletableFuture<?>> collection) {
+        m_queue.add(collection);
+    }
+
+    /**
+     * Dispatches the collections queued when the batch begins. Those queued
+     * while dispatching go with the next batch.
+     */
+    protected void dispatch() {
+        final Executor persister = m_persister;
+        final int size = m_queue.size();
+        if (size == 0 || persister == null) {
+            return;
+        }
+        m_batchSizes.update(size);
+        LOG.debug("dispatch: collecting {} services", size);
+
+        for (int i = 0; i < size; i++) {
+            final Function<Executor, CompletableFuture<?>> collection = m_queue.poll();
+            if (collection == null) {
+                break;
+            }
+            try {
+                m_inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            m_inFlightCounter.inc();
+
+            CompletableFuture<?> future;
+            try {
+                future = collection.apply(persister);
+            } catch (Throwable t) {
+                LOG.error("dispatch: failed to start a collection", t);
+                future = CompletableFuture.completedFuture(null);
+            }
+            future.whenComplete((result, ex) -> {
+                m_inFlightCounter.dec();
+                m_inFlight.release();
+            });
+        }
+    }
+}
@@ -33,6 +33,7 @@ import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 import org.opennms.core.rpc.api.RpcExceptionHandler;
@@ -267,54 +268,89 @@ public class CollectionSpecification {
      * @throws org.opennms.netmgt.collection.api.CollectionException if any.
      */
     public CollectionSet collect(CollectionAgent agent) throws CollectionException {
+        try {
+            return collectAsync(agent).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            final CollectionException ce = new CollectionUnknown("Interrupted.", e);
+            m_instrumentation.reportCollectionException(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName, ce);
+            throw ce;
+        } catch (ExecutionException e) {
+            // The future always fails with a CollectionException
+            throw (CollectionException)e.getCause();
+        }
+    }
+
+    /**
+     * Invokes the collector without waiting for the collection to complete.
+     *
+     * @param agent a {@link org.opennms.netmgt.collection.api.CollectionAgent} object.
+     * @return a future that completes with the collection set, or exceptionally with a {@link CollectionException}
+     */
+    public CompletableFuture<CollectionSet> collectAsync(CollectionAgent agent) {
         m_instrumentation.beginCollectorCollect(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName);
+        CompletableFuture<CollectionSet> future;
         try {
-            final CollectionSet set = m_locationAwareCollectorClient.collect()
+            future = m_locationAwareCollectorClient.collect()
                 .withAgent(agent)
                 .withAttributes(getPropertyMap())
                 .withCollector(getCollector())
                 // Use the service interval as the TTL
                 .withTimeToLive(getService().getInterval())
-                .execute()
-                .get();
+                .execute();
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
 
-            // There are collector implementations that never throw an exception just return a collection failed
-            if (CollectionStatus.FAILED.equals(set.getStatus())) {
-                m_instrumentation.reportCollectionException(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName, new CollectionFailed(CollectionStatus.FAILED));
-            }
-            return set;
-        } catch (InterruptedException|ExecutionException e) {
-            final CollectionException ce = RpcExceptionUtils.handleException(e, new RpcExceptionHandler<CollectionException>() {
-                @Override
-                public CollectionException onInterrupted(Throwable t) {
-                    return new CollectionUnknown("Interrupted.", t);
+        final CompletableFuture<CollectionSet> collected = new CompletableFuture<>();
+        future.whenComplete((set, ex) -> {
+            try {
+                if (ex != null) {
+                    final CollectionException ce = toCollectionException(ex);
+                    m_instrumentation.reportCollectionException(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName, ce);
+                    collected.completeExceptionally(ce);
+                    return;
                 }
-
-                @Override
-                public CollectionException onTimedOut(Throwable t) {
-                    return new CollectionUnknown("Request timed out.", t);
+                // There are collector implementations that never throw an exception just return a collection failed
+                if (CollectionStatus.FAILED.equals(set.getStatus())) {
+                    m_instrumentation.reportCollectionException(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName, new CollectionFailed(CollectionStatus.FAILED));
                 }
+                collected.complete(set);
+            } finally {
+                m_instrumentation.endCollectorCollect(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName);
+            }
+        });
+        return collected;
+    }
 
-                @Override
-                public CollectionException onRejected(Throwable t) {
-                    return new CollectionUnknown("Request rejected.", e);
-                }
+    private static CollectionException toCollectionException(Throwable e) {
+        return RpcExceptionUtils.handleException(e, new RpcExceptionHandler<CollectionException>() {
+            @Override
+            public CollectionException onInterrupted(Throwable t) {
+                return new CollectionUnknown("Interrupted.", t);
+            }
 
-                @Override
-                public CollectionException onUnknown(Throwable t) {
-                    if (t instanceof CollectionException) {
-                        return (CollectionException)t;
-                    } else if (t.getCause() != null && t.getCause() instanceof CollectionException) {
-                        return (CollectionException)t.getCause();
-                    }
-                    return new CollectionException("Collection failed.", t);
+            @Override
+            public CollectionException onTimedOut(Throwable t) {
+                return new CollectionUnknown("Request timed out.", t);
+            }
+
+            @Override
+            public CollectionException onRejected(Throwable t) {
+                return new CollectionUnknown("Request rejected.", e);
+            }
+
+            @Override
+            public CollectionException onUnknown(Throwable t) {
+                if (t instanceof CollectionException) {
+                    return (CollectionException)t;
+                } else if (t.getCause() != null && t.getCause() instanceof CollectionException) {
+                    return (CollectionException)t.getCause();
                 }
-            });
-            m_instrumentation.reportCollectionException(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName, ce);
-            throw ce;
-        } finally {
-            m_instrumentation.endCollectorCollect(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName);
-        }
+                return new CollectionException("Collection failed.", t);
+            }
+        });
     }
 
     /**
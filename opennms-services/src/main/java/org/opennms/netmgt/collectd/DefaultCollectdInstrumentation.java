@@ -28,19 +28,75 @@
 
 package org.opennms.netmgt.collectd;
 
+import java.util.concurrent.TimeUnit;
+
 import org.opennms.core.logging.Logging;
 import org.opennms.netmgt.collection.api.CollectionInstrumentation;
 import org.opennms.netmgt.collection.api.CollectionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 
 /**
+ * Logs the progress of Collectd, and how long collecting and persisting the data of
+ * every agent took. The durations are also aggregated by service in timers named
+ * <code>collect.&lt;service&gt;</code> and <code>persist.&lt;service&gt;</code>,
+ * exposed over JMX between {@link #start()} and {@link #stop()}.
+ *
  * @author <a href="mailto:brozow@opennms.org">Mathew Brozowski</a>
  */
 public class DefaultCollectdInstrumentation implements CollectionInstrumentation {
     public static final Logger LOG = LoggerFactory.getLogger(DefaultCollectdInstrumentation.class);
 
+    /**
+     * Operations that have not ended after this long are forgotten.
+     */
+    private static final long DEFAULT_MAX_DURATION = TimeUnit.HOURS.toMillis(1);
+
+    private final MetricRegistry m_metrics = new MetricRegistry();
+
+    private JmxReporter m_reporter;
+
+    // Start times (in nanoseconds) of the collections and persistence operations in progress
+    private final Cache<String, Long> m_startTimes;
+
+    public DefaultCollectdInstrumentation() {
+        this(DEFAULT_MAX_DURATION, Ticker.systemTicker());
+    }
+
+    protected DefaultCollectdInstrumentation(final long maxDurationMs, final Ticker ticker) {
+        m_startTimes = CacheBuilder.newBuilder()
+                .expireAfterWrite(maxDurationMs, TimeUnit.MILLISECONDS)
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * Exposes the metrics over JMX.
+     */
+    public synchronized void start() {
+        if (m_reporter == null) {
+            m_reporter = JmxReporter.forRegistry(m_metrics).inDomain(DefaultCollectdInstrumentation.class.getPackage().getName()).build();
+            m_reporter.start();
+        }
+    }
+
+    /**
+     * Removes the metrics from JMX.
+     */
+    public synchronized void stop() {
+        if (m_reporter != null) {
+            m_reporter.close();
+            m_reporter = null;
+        }
+    }
+
     @Override
     public void beginScheduleExistingInterfaces() {
         log("scheduleExistingInterfaces: begin");
@@ -83,12 +139,14 @@ public class DefaultCollectdInstrumentation implements CollectionInstrumentation
 
     @Override
     public void beginCollectorCollect(final String packageName, final int nodeId, final String ipAddress, final String svcName) {
+        begin("collect", packageName, nodeId, ipAddress, svcName);
         log("collector.collect: begin:{}/{}/{}/{}", packageName, nodeId, ipAddress, svcName);
     }
 
     @Override
     public void endCollectorCollect(final String packageName, final int nodeId, final String ipAddress, final String svcName) {
-        log("collector.collect: end:{}/{}/{}/{}", packageName, nodeId, ipAddress, svcName);
+        final long duration = end("collect", packageName, nodeId, ipAddress, svcName);
+        log("collector.collect: end:{}/{}/{}/{} in {}ms", packageName, nodeId, ipAddress, svcName, duration);
     }
 
     @Override
@@ -103,12 +161,14 @@ public class DefaultCollectdInstrumentation implements CollectionInstrumentation
 
     @Override
     public void beginPersistingServiceData(final String packageName, final int nodeId, final String ipAddress, final String svcName) {
+        begin("persist", packageName, nodeId, ipAddress, svcName);
         log("collector.collect: persistDataQueueing: begin: {}/{}/{}/{}", packageName, nodeId, ipAddress, svcName);
     }
 
     @Override
     public void endPersistingServiceData(final String packageName, final int nodeId, final String ipAddress, final String svcName) {
-        log("collector.collect: persistDataQueueing: end: {}/{}/{}/{}", packageName, nodeId, ipAddress, svcName);
+        final long duration = end("persist", packageName, nodeId, ipAddress, svcName);
+        log("collector.collect: persistDataQueueing: end: {}/{}/{}/{} in {}ms", packageName, nodeId, ipAddress, svcName, duration);
     }
 
     @Override
@@ -136,6 +196,36 @@ public class DefaultCollectdInstrumentation implements CollectionInstrumentation
         log("collector.collect: error: {}/{}/{}/{}: {}", packageName, nodeId, ipAddress, svcName, e.getMessage());
     }
 
+    /**
+     * @return the metrics aggregated by service
+     */
+    public MetricRegistry getMetricRegistry() {
+        return m_metrics;
+    }
+
+    private void begin(final String operation, final String packageName, final int nodeId, final String ipAddress, final String svcName) {
+        m_startTimes.put(key(operation, packageName, nodeId, ipAddress, svcName), System.nanoTime());
+    }
+
+    /**
+     * @return the duration of the operation in milliseconds, or -1 if its beginning was not recorded or has expired
+     */
+    private long end(final String operation, final String packageName, final int nodeId, final String ipAddress, final String svcName) {
+        final String key = key(operation, packageName, nodeId, ipAddress, svcName);
+        final Long start = m_startTimes.getIfPresent(key);
+        if (start == null) {
+            return -1;
+        }
+        m_startTimes.invalidate(key);
+        final long duration = System.nanoTime() - start;
+        m_metrics.timer(MetricRegistry.name(operation, svcName)).update(duration, TimeUnit.NANOSECONDS);
+        return TimeUnit.NANOSECONDS.toMillis(duration);
+    }
+
+    private static String key(final String operation, final String packageName, final int nodeId, final String ipAddress, final String svcName) {
+        return operation + '/' + packageName + '/' + nodeId + '/' + ipAddress + '/' + svcName;
+    }
+
     private void log(final String msg, final Object... args) {
         Logging.withPrefix("instrumentation", new Runnable() {
             @Override public void run() {
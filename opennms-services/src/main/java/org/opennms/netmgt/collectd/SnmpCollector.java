@@ -32,9 +32,12 @@ import java.io.IOException;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.opennms.core.spring.BeanUtils;
 import org.opennms.netmgt.collection.api.AbstractServiceCollector;
+import org.opennms.netmgt.collection.api.AsyncServiceCollector;
 import org.opennms.netmgt.collection.api.CollectionAgent;
 import org.opennms.netmgt.collection.api.CollectionException;
 import org.opennms.netmgt.collection.api.CollectionInitializationException;
@@ -57,7 +60,7 @@ import org.slf4j.LoggerFactory;
  *
  * @author <A HREF="mailto:brozow@opennms.org">Matt Brozowski</A>
  */
-public class SnmpCollector extends AbstractServiceCollector {
+public class SnmpCollector extends AbstractServiceCollector implements AsyncServiceCollector {
 
     private static final Logger LOG = LoggerFactory.getLogger(SnmpCollector.class);
 
@@ -223,47 +226,89 @@ public class SnmpCollector extends AbstractServiceCollector {
     @Override
     public CollectionSet collect(CollectionAgent agent, Map<String, Object> parameters) throws CollectionException {
         try {
-            final ServiceParameters params = new ServiceParameters(parameters);
-            params.logIfAliasConfig();
+            final SnmpCollectionSet collectionSet = createCollectionSet(agent, parameters);
+            collectionSet.collect();
+            return checkForRescan(agent, collectionSet);
+        } catch (Throwable t) {
+            throw toCollectionException(agent, t);
+        }
+    }
 
-            if (m_client == null) {
-                m_client = BeanUtils.getBean("daoContext", "locationAwareSnmpClient", LocationAwareSnmpClient.class);
-            }
-            OnmsSnmpCollection snmpCollection = new OnmsSnmpCollection((SnmpCollectionAgent)agent, params, m_client);
+    /**
+     * {@inheritDoc}
+     *
+     * Perform data collection without waiting for the walk of the agent to complete.
+     */
+    @Override
+    public CompletableFuture<CollectionSet> collectAsync(CollectionAgent agent, Map<String, Object> parameters) {
+        final CompletableFuture<CollectionSet> future = new CompletableFuture<>();
+        try {
+            final SnmpCollectionSet collectionSet = createCollectionSet(agent, parameters);
+            collectionSet.collectAsync().whenComplete((v, ex) -> {
+                if (ex != null) {
+                    future.completeExceptionally(toCollectionException(agent, ex));
+                    return;
+                }
+                try {
+                    future.complete(checkForRescan(agent, collectionSet));
+                } catch (Throwable t) {
+                    future.completeExceptionally(toCollectionException(agent, t));
+                }
+            });
+        } catch (Throwable t) {
+            future.completeExceptionally(toCollectionException(agent, t));
+        }
+        return future;
+    }
 
-            final EventProxy eventProxy = EventIpcManagerFactory.getIpcManager();
-            final ForceRescanState forceRescanState = new ForceRescanState(agent, eventProxy);
+    private SnmpCollectionSet createCollectionSet(CollectionAgent agent, Map<String, Object> parameters) {
+        final ServiceParameters params = new ServiceParameters(parameters);
+        params.logIfAliasConfig();
 
-            SnmpCollectionSet collectionSet = snmpCollection.createCollectionSet((SnmpCollectionAgent)agent);
-            collectionSet.setCollectionTimestamp(new Date());
-            if (!collectionSet.hasDataToCollect()) {
-                LOG.info("agent {} defines no data to collect.  Skipping.", agent);
-                // should we return here?
-            }
+        if (m_client == null) {
+            m_client = BeanUtils.getBean("daoContext", "locationAwareSnmpClient", LocationAwareSnmpClient.class);
+        }
+        OnmsSnmpCollection snmpCollection = new OnmsSnmpCollection((SnmpCollectionAgent)agent, params, m_client);
 
-            collectionSet.collect();
+        SnmpCollectionSet collectionSet = snmpCollection.createCollectionSet((SnmpCollectionAgent)agent);
+        collectionSet.setCollectionTimestamp(new Date());
+        if (!collectionSet.hasDataToCollect()) {
+            LOG.info("agent {} defines no data to collect.  Skipping.", agent);
+            // should we return here?
+        }
+        return collectionSet;
+    }
+
+    private static CollectionSet checkForRescan(CollectionAgent agent, SnmpCollectionSet collectionSet) {
+        final EventProxy eventProxy = EventIpcManagerFactory.getIpcManager();
+        final ForceRescanState forceRescanState = new ForceRescanState(agent, eventProxy);
 
+        /*
+         * FIXME: Should we even be doing this? I say we get rid of this force rescan thingie
+         * {@see http://issues.opennms.org/browse/NMS-1057}
+         */
+        if (System.getProperty("org.opennms.netmgt.collectd.SnmpCollector.forceRescan", "false").equalsIgnoreCase("true")
+                && collectionSet.rescanNeeded()) {
             /*
-             * FIXME: Should we even be doing this? I say we get rid of this force rescan thingie
-             * {@see http://issues.opennms.org/browse/NMS-1057}
+             * TODO: the behavior of this object may have been re-factored away.
+             * Verify that this is correct and remove this unused object if it
+             * is no longer needed.  My gut thinks this should be investigated.
              */
-            if (System.getProperty("org.opennms.netmgt.collectd.SnmpCollector.forceRescan", "false").equalsIgnoreCase("true")
-                    && collectionSet.rescanNeeded()) {
-                /*
-                 * TODO: the behavior of this object may have been re-factored away.
-                 * Verify that this is correct and remove this unused object if it
-                 * is no longer needed.  My gut thinks this should be investigated.
-                 */
-                forceRescanState.rescanIndicated();
-            } else {
-                collectionSet.checkForSystemRestart();
-            }
-            return collectionSet;
-        } catch (CollectionException e) {
-            throw e;
-        } catch (Throwable t) {
-            throw new CollectionException("Unexpected error during node SNMP collection for: " + agent.getHostAddress(), t);
+            forceRescanState.rescanIndicated();
+        } else {
+            collectionSet.checkForSystemRestart();
+        }
+        return collectionSet;
+    }
+
+    private static CollectionException toCollectionException(CollectionAgent agent, Throwable t) {
+        if (t instanceof CompletionException && t.getCause() != null) {
+            t = t.getCause();
+        }
+        if (t instanceof CollectionException) {
+            return (CollectionException)t;
         }
+        return new CollectionException("Unexpected error during node SNMP collection for: " + agent.getHostAddress(), t);
     }
 
     /** {@inheritDoc} */
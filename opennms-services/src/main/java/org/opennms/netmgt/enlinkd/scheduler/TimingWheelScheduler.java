@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.enlinkd.scheduler;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link Scheduler} that dispatches the enlinkd collections with a
+ * {@link org.opennms.netmgt.scheduler.TimingWheelScheduler} instead of
+ * polling the interval queues.
+ *
+ * The runnables that are waiting to run are tracked so that they can still be
+ * looked up with {@link #getReadyRunnable(ReadyRunnable)} and removed with
+ * {@link #unschedule(ReadyRunnable)}: an unscheduled runnable is skipped
+ * when its deadline expires.
+ */
+public class TimingWheelScheduler extends Scheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelScheduler.class);
+
+    private final org.opennms.netmgt.scheduler.TimingWheelScheduler m_delegate;
+
+    private final Set<Entry> m_entries = ConcurrentHashMap.newKeySet();
+
+    private class Entry implements org.opennms.netmgt.scheduler.ReadyRunnable {
+        private final ReadyRunnable m_runnable;
+        private final long m_interval;
+
+        public Entry(ReadyRunnable runnable, long interval) {
+            m_runnable = runnable;
+            m_interval = interval;
+        }
+
+        @Override
+        public boolean isReady() {
+            // Let unscheduled entries expire right away
+            return !m_entries.contains(this) || m_runnable.isReady();
+        }
+
+        @Override
+        public void run() {
+            if (m_entries.remove(this)) {
+                m_runnable.run();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return m_runnable.getInfo();
+        }
+    }
+
+    /**
+     * Constructs a new instance of the scheduler.
+     *
+     * @param parent
+     *            String prepended to the names of the threads and metrics
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     */
+    public TimingWheelScheduler(String parent, int maxSize) {
+        // The queues and thread pool of the parent class are left unused
+        super(parent, 1);
+        m_delegate = new org.opennms.netmgt.scheduler.TimingWheelScheduler(parent, maxSize);
+    }
+
+    @Override
+    public void schedule(ReadyRunnable runnable, long interval) {
+        LOG.debug("schedule: Adding ready runnable {} at interval {}", runnable.getInfo(), interval);
+        schedule(new Entry(runnable, interval), 0);
+    }
+
+    @Override
+    public void schedule(long interval, ReadyRunnable runnable) {
+        LOG.debug("schedule: Adding ready runnable {} in {}ms", runnable.getInfo(), interval);
+        schedule(new Entry(runnable, interval), interval);
+    }
+
+    private void schedule(Entry entry, long delay) {
+        m_entries.add(entry);
+        m_delegate.schedule(delay, entry);
+    }
+
+    @Override
+    public void unschedule(ReadyRunnable runnable) {
+        LOG.debug("unschedule: Removing all {}", runnable.getInfo());
+        m_entries.removeIf(e -> e.m_runnable.equals(runnable));
+    }
+
+    @Override
+    public void unschedule(ReadyRunnable runnable, long interval) {
+        LOG.debug("unschedule: Removing {} at interval {}", runnable.getInfo(), interval);
+        m_entries.removeIf(e -> e.m_interval == interval && e.m_runnable.equals(runnable));
+    }
+
+    @Override
+    public ReadyRunnable getReadyRunnable(ReadyRunnable runnable) {
+        for (Entry entry : m_entries) {
+            if (entry.m_runnable.equals(runnable)) {
+                return entry.m_runnable;
+            }
+        }
+        LOG.info("getReadyRunnable: instance {} not found on scheduler", runnable.getInfo());
+        return null;
+    }
+
+    @Override
+    public ReadyRunnable getReadyRunnable(ReadyRunnable runnable, long interval) {
+        for (Entry entry : m_entries) {
+            if (entry.m_interval == interval && entry.m_runnable.equals(runnable)) {
+                return entry.m_runnable;
+            }
+        }
+        LOG.info("getReadyRunnable: instance {} not found on scheduler", runnable.getInfo());
+        return null;
+    }
+
+    @Override
+    public long getCurrentTime() {
+        return m_delegate.getCurrentTime();
+    }
+
+    @Override
+    public void start() {
+        m_delegate.start();
+    }
+
+    @Override
+    public void stop() {
+        m_delegate.stop();
+    }
+
+    @Override
+    public void pause() {
+        m_delegate.pause();
+    }
+
+    @Override
+    public void resume() {
+        m_delegate.resume();
+    }
+
+    @Override
+    public int getStatus() {
+        return m_delegate.getStatus();
+    }
+
+    @Override
+    public String getName() {
+        return m_delegate.getName();
+    }
+
+    @Override
+    public long getNumTasksExecuted() {
+        return m_delegate.getNumTasksExecuted();
+    }
+}
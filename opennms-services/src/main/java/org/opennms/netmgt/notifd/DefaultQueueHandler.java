@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.notifd;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.SortedMap;
 
@@ -38,20 +39,24 @@ import org.opennms.core.utils.TimeConverter;
 /**
  * This class is used as a thread for executing notices for events that are
  * discovered by the notice daemon. The notices are read from an scheduler queue
- * and the processes are created by the fiber. Each created process is added to
- * garbage collection list that is periodically polled and culled based upon the
- * status of the process or how long the process is run. If the process has run
- * long than allocated it is terminated during collection.
+ * and handed over to the {@link NotificationExecutor} once they are due. The
+ * thread sleeps until the next notice is due, or until an earlier notice is
+ * queued, but never longer than the configured interval.
  *
  * @author <a href="mailto:jason@opennms.org">Jason Johns</a>
  * @author <a href="http://www.opennms.org/>OpenNMS</a>
  */
 public class DefaultQueueHandler implements NotifdQueueHandler {
     private static final Logger LOG = LoggerFactory.getLogger(DefaultQueueHandler.class);
+
+    /**
+     * How long to wait before dispatching notices again when their lanes were full
+     */
+    private static final long RETRY_INTERVAL = 1000;
     /**
      * The input queue of runnable commands.
      */
-    private NoticeQueue m_noticeQueue;
+    private volatile NoticeQueue m_noticeQueue;
 
     /**
      * The name of this Fiber
@@ -63,10 +68,15 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
      */
     private long m_interval;
 
+    /**
+     * Runs the notices once they are due
+     */
+    private volatile NotificationExecutor m_executor;
+
     /**
      * The status of this fiber.
      */
-    private int m_status;
+    private volatile int m_status;
 
     /**
      * <p>Constructor for DefaultQueueHandler.</p>
@@ -93,6 +103,12 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
         m_interval = TimeConverter.convertToMillis(interval);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void setNotificationExecutor(final NotificationExecutor executor) {
+        m_executor = executor;
+    }
+
     /**
      * The main worker of the fiber. This method is executed by the encapsulated
      * thread to read commands from the execution queue and to execute those
@@ -132,14 +148,11 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
 
             processQueue();
 
-            synchronized (this) {
-                // wait for the next iteration
-                try {
-                    wait(m_interval);
-                } catch (final InterruptedException ex) {
-                    // exit
-                    break;
-                }
+            try {
+                waitForNextNotice();
+            } catch (final InterruptedException ex) {
+                // exit
+                break;
             }
 
         } // end infinite loop
@@ -155,21 +168,26 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
      */
     @Override
     public void processQueue() {
-        if (m_noticeQueue != null) {
-            synchronized(m_noticeQueue) {
+        final NoticeQueue noticeQueue = m_noticeQueue;
+        if (noticeQueue != null) {
+            // Resolve the executor first, the locks on the handler and on the queue are never nested
+            final NotificationExecutor executor = getNotificationExecutor();
+            synchronized(noticeQueue) {
                 try {
                 	final Long now = System.currentTimeMillis();
-                	final SortedMap<Long, List<NotificationTask>> readyNotices = m_noticeQueue.headMap(now);
+                	final SortedMap<Long, List<NotificationTask>> readyNotices = noticeQueue.headMap(now);
         
-                    for (final List<NotificationTask> list : readyNotices.values()) {
-                        for (final NotificationTask task : list) {
-                            startTask(task);
+                    // Tasks whose lanes are full stay in the queue, and are retried on the next pass
+                    for (final Iterator<List<NotificationTask>> it = readyNotices.values().iterator(); it.hasNext();) {
+                        final List<NotificationTask> list = it.next();
+                        list.removeIf(executor::execute);
+                        if (list.isEmpty()) {
+                            it.remove();
                         }
                     }
-                    readyNotices.clear();
         
-                    if (m_noticeQueue != null && m_noticeQueue.size() > 0) {
-			LOG.debug("current state of tree: {}", m_noticeQueue);
+                    if (noticeQueue.size() > 0) {
+			LOG.debug("current state of tree: {}", noticeQueue);
                     }
                 } catch (final Throwable e) {
                     LOG.error("failed to start notification task", e);
@@ -179,10 +197,59 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
         }
     }
 
-	private void startTask(final NotificationTask task) {
-		if (!task.isStarted())
-			task.start();
-	}
+    private NotificationExecutor getNotificationExecutor() {
+        NotificationExecutor executor = m_executor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = m_executor;
+                if (executor == null) {
+                    executor = new NotificationExecutor();
+                    m_executor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Waits until the first notice in the queue is due, or an earlier one is
+     * queued, or the status of the fiber changes.
+     */
+    private void waitForNextNotice() throws InterruptedException {
+        final NoticeQueue noticeQueue = m_noticeQueue;
+        if (noticeQueue == null) {
+            synchronized (this) {
+                wait(m_interval);
+            }
+            return;
+        }
+        synchronized (noticeQueue) {
+            if (m_status != RUNNING) {
+                return;
+            }
+            long delay = m_interval;
+            if (!noticeQueue.isEmpty()) {
+                final long untilDue = noticeQueue.firstKey() - System.currentTimeMillis();
+                // Notices that are already due are waiting for room on their lanes
+                delay = Math.min(delay, untilDue > 0 ? untilDue : RETRY_INTERVAL);
+            }
+            noticeQueue.wait(Math.max(delay, 1));
+        }
+    }
+
+    /**
+     * Wakes up the thread waiting for the next notice. Must not be called
+     * while holding the lock on this handler, the locks on the handler and
+     * on the queue are never nested.
+     */
+    private void wakeUpQueue() {
+        final NoticeQueue noticeQueue = m_noticeQueue;
+        if (noticeQueue != null) {
+            synchronized (noticeQueue) {
+                noticeQueue.notifyAll();
+            }
+        }
+    }
 
     /**
      * Starts the fiber. If the fiber has already been run or is currently
@@ -212,11 +279,13 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
      *             Thrown if the fiber was never started.
      */
     @Override
-    public synchronized void stop() {
-        if (m_status != STOPPED)
-            m_status = STOP_PENDING;
-
-        notifyAll();
+    public void stop() {
+        synchronized (this) {
+            if (m_status != STOPPED)
+                m_status = STOP_PENDING;
+            notifyAll();
+        }
+        wakeUpQueue();
     }
 
     /**
@@ -228,11 +297,15 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
      *             Thrown if the fiber is stopped or has never run.
      */
     @Override
-    public synchronized void pause() {
-        if (m_status == RUNNING || m_status == RESUME_PENDING) {
+    public void pause() {
+        synchronized (this) {
+            if (m_status != RUNNING && m_status != RESUME_PENDING) {
+                return;
+            }
             m_status = PAUSE_PENDING;
             notifyAll();
         }
+        wakeUpQueue();
     }
 
     /**
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.notifd;
 
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,11 +50,23 @@ public class NoticeQueue extends DuplicateTreeMap<Long, NotificationTask> {
      */
     private static final long serialVersionUID = 7463770974135218140L;
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     *
+     * Wakes up the queue handler waiting on this queue when the task is due
+     * before any of the tasks that were already queued.
+     */
     @Override
-    public NotificationTask putItem(Long key, NotificationTask value) {
+    public synchronized NotificationTask putItem(Long key, NotificationTask value) {
+        final boolean earliest = isEmpty() || key < firstKey();
         NotificationTask ret = super.putItem(key, value);
 
+        if (ret == null) {
+            NotifdMetrics.getQueueDepth(value.getDestinationPath()).inc();
+            if (earliest) {
+                notifyAll();
+            }
+        }
         
         if (LOG.isDebugEnabled()) {
             if (value.getNotifyId() == -1) {
@@ -65,4 +78,22 @@ public class NoticeQueue extends DuplicateTreeMap<Long, NotificationTask> {
         
         return ret;
     }
+
+    /**
+     * Removes all the queued tasks, which will then never be sent, and takes
+     * them out of the queue depth of their destination paths.
+     *
+     * @return the number of tasks that were removed
+     */
+    public synchronized int discardAll() {
+        int discarded = 0;
+        for (final List<NotificationTask> tasks : values()) {
+            for (final NotificationTask task : tasks) {
+                NotifdMetrics.getQueueDepth(task.getDestinationPath()).dec();
+                discarded++;
+            }
+        }
+        clear();
+        return discarded;
+    }
 }
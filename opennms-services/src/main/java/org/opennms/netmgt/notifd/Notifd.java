@@ -32,6 +32,7 @@ import java.lang.reflect.UndeclaredThrowableException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import org.opennms.netmgt.config.NotifdConfigManager;
 import org.opennms.netmgt.config.NotificationManager;
@@ -75,6 +76,8 @@ public final class Notifd extends AbstractServiceDaemon {
      */
     private final Map<String, NotifdQueueHandler> m_queueHandlers = new HashMap<String, NotifdQueueHandler>();
 
+    private final NotificationExecutor m_executor = new NotificationExecutor();
+
     /**
      * The broadcast event receiver.
      */
@@ -115,6 +118,7 @@ public final class Notifd extends AbstractServiceDaemon {
                 handlerQueue.setQueueID(queue.getQueueId());
                 handlerQueue.setNoticeQueue(curQueue);
                 handlerQueue.setInterval(queue.getInterval());
+                handlerQueue.setNotificationExecutor(m_executor);
 
                 m_noticeQueues.put(queue.getQueueId(), curQueue);
                 m_queueHandlers.put(queue.getQueueId(), handlerQueue);
@@ -175,6 +179,7 @@ public final class Notifd extends AbstractServiceDaemon {
      */
     @Override
     protected void onStart() {
+        NotifdMetrics.start();
         for (NotifdQueueHandler curHandler : m_queueHandlers.values()) {
             curHandler.start();
         }
@@ -192,9 +197,21 @@ public final class Notifd extends AbstractServiceDaemon {
         } catch (Throwable e) {
         }
 
+        m_executor.shutdown();
+
         if (m_eventReader != null) {
             m_eventReader.close();
         }
+
+        // The executor no longer accepts tasks, so the notices still queued will never be sent
+        for (final Entry<String, NoticeQueue> queue : m_noticeQueues.entrySet()) {
+            final int discarded = queue.getValue().discardAll();
+            if (discarded > 0) {
+                LOG.info("Discarded {} notices that were still queued on {}.", discarded, queue.getKey());
+            }
+        }
+
+        NotifdMetrics.stop();
     }
 
     /**
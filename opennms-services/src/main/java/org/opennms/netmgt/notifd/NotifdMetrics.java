@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.notifd;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Metrics for notifications, published over JMX while notifd is running.
+ *
+ * Notices are tracked by destination path from the moment they are queued until all
+ * of their commands have completed, and by lane (see {@link NotificationExecutor})
+ * while they are waiting for, or running on, a lane's threads.
+ */
+public final class NotifdMetrics {
+
+    private static final String NO_DESTINATION_PATH = "none";
+
+    private static final MetricRegistry METRICS = new MetricRegistry();
+
+    private static JmxReporter s_reporter;
+
+    private NotifdMetrics() {}
+
+    public static MetricRegistry getMetricRegistry() {
+        return METRICS;
+    }
+
+    /**
+     * Publishes the metrics over JMX.
+     */
+    public static synchronized void start() {
+        if (s_reporter == null) {
+            s_reporter = JmxReporter.forRegistry(METRICS).inDomain(NotifdMetrics.class.getPackage().getName()).build();
+            s_reporter.start();
+        }
+    }
+
+    /**
+     * Stops publishing the metrics over JMX.
+     */
+    public static synchronized void stop() {
+        if (s_reporter != null) {
+            s_reporter.close();
+            s_reporter = null;
+        }
+    }
+
+    /**
+     * @param destinationPath the destination path, may be null
+     * @return the number of notices that were queued for the path and have not been sent yet
+     */
+    public static Counter getQueueDepth(String destinationPath) {
+        return METRICS.counter(MetricRegistry.name("paths", pathName(destinationPath), "queued"));
+    }
+
+    /**
+     * @param destinationPath the destination path, may be null
+     * @return the time between the moment notices for the path were due and the moment they were sent
+     */
+    public static Timer getSendLatency(String destinationPath) {
+        return METRICS.timer(MetricRegistry.name("paths", pathName(destinationPath), "sendLatency"));
+    }
+
+    private static String pathName(String destinationPath) {
+        return destinationPath == null ? NO_DESTINATION_PATH : destinationPath;
+    }
+}
@@ -63,6 +63,13 @@ public interface NotifdQueueHandler extends Runnable, PausableFiber {
      */
     public void setInterval(String interval);
 
+    /**
+     * <p>setNotificationExecutor</p>
+     *
+     * @param executor runs the notices once they are due
+     */
+    public void setNotificationExecutor(NotificationExecutor executor);
+
     /**
      * <p>processQueue</p>
      */
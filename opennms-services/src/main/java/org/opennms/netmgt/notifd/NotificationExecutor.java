@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.notifd;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opennms.netmgt.config.notificationCommands.Command;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs notification tasks once they are due, on a bounded pool of threads per
+ * notification command (a "lane"), so that a slow mail server cannot hold back
+ * the notices sent over HTTP or Slack, and a storm of notices cannot spawn an
+ * unbounded number of threads.
+ *
+ * Each lane accepts a limited number of tasks that are either running or waiting
+ * for one of its threads. When a lane is full, {@link #execute(NotificationTask)}
+ * refuses the task and the queue handler keeps it in the notice queue until the
+ * lane has room again.
+ *
+ * The size of the lanes defaults to <code>org.opennms.notifd.lanes.threads</code> and
+ * <code>org.opennms.notifd.lanes.capacity</code>, and can be set for a given command
+ * with <code>org.opennms.notifd.lanes.&lt;command&gt;.threads</code> and
+ * <code>org.opennms.notifd.lanes.&lt;command&gt;.capacity</code>.
+ */
+public class NotificationExecutor {
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationExecutor.class);
+
+    private static final String PROPERTY_PREFIX = "org.opennms.notifd.lanes.";
+
+    public static final int DEFAULT_THREADS = Integer.getInteger(PROPERTY_PREFIX + "threads", 4);
+    public static final int DEFAULT_CAPACITY = Integer.getInteger(PROPERTY_PREFIX + "capacity", 1000);
+
+    private final ConcurrentMap<String, Lane> m_lanes = new ConcurrentHashMap<>();
+
+    private volatile boolean m_shutdown = false;
+
+    /**
+     * Submits the commands of the task to their lanes.
+     *
+     * @param task the task to run
+     * @return false if one of the lanes of the task is full, in which case none of its commands were submitted
+     */
+    public boolean execute(final NotificationTask task) {
+        if (m_shutdown) {
+            return false;
+        }
+
+        final Map<Lane, List<Command>> commandsByLane = new LinkedHashMap<>();
+        for (final Command command : task.getCommands()) {
+            commandsByLane.computeIfAbsent(getLane(command.getName()), lane -> new ArrayList<>()).add(command);
+        }
+
+        // Reserve room on every lane first, so that a task is never sent only in part
+        final List<Lane> reserved = new ArrayList<>(commandsByLane.size());
+        for (final Lane lane : commandsByLane.keySet()) {
+            if (!lane.tryReserve()) {
+                LOG.debug("execute: lane {} is full, deferring {}", lane, task);
+                reserved.forEach(Lane::release);
+                return false;
+            }
+            reserved.add(lane);
+        }
+
+        if (commandsByLane.isEmpty()) {
+            completed(task);
+            return true;
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(commandsByLane.size());
+        for (final Entry<Lane, List<Command>> entry : commandsByLane.entrySet()) {
+            final Command[] commands = entry.getValue().toArray(new Command[entry.getValue().size()]);
+            entry.getKey().submit(() -> task.run(commands), () -> {
+                if (remaining.decrementAndGet() == 0) {
+                    completed(task);
+                }
+            });
+        }
+        return true;
+    }
+
+    /**
+     * Stops accepting tasks. Tasks that were already accepted are still sent.
+     */
+    public void shutdown() {
+        m_shutdown = true;
+        for (final Lane lane : m_lanes.values()) {
+            lane.shutdown();
+        }
+    }
+
+    private Lane getLane(final String command) {
+        return m_lanes.computeIfAbsent(command, name -> new Lane(name,
+                Integer.getInteger(PROPERTY_PREFIX + name + ".threads", DEFAULT_THREADS),
+                Integer.getInteger(PROPERTY_PREFIX + name + ".capacity", DEFAULT_CAPACITY)));
+    }
+
+    private static void completed(final NotificationTask task) {
+        NotifdMetrics.getQueueDepth(task.getDestinationPath()).dec();
+        NotifdMetrics.getSendLatency(task.getDestinationPath()).update(Math.max(0, System.currentTimeMillis() - task.getSendTime()), TimeUnit.MILLISECONDS);
+    }
+
+    private static class Lane {
+        private final String m_name;
+        private final ThreadPoolExecutor m_executor;
+        private final Semaphore m_permits;
+        private final Counter m_pending;
+        private final Meter m_deferred;
+
+        private Lane(final String name, final int threads, final int capacity) {
+            m_name = name;
+            m_executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactoryBuilder().setNameFormat("Notifd-" + name + "-%d").build());
+            m_executor.allowCoreThreadTimeOut(true);
+            m_permits = new Semaphore(capacity);
+
+            final MetricRegistry metrics = NotifdMetrics.getMetricRegistry();
+            m_pending = metrics.counter(MetricRegistry.name("lanes", name, "pending"));
+            m_deferred = metrics.meter(MetricRegistry.name("lanes", name, "deferred"));
+            LOG.debug("Created lane {} with {} threads and room for {} tasks", name, threads, capacity);
+        }
+
+        private boolean tryReserve() {
+            if (m_permits.tryAcquire()) {
+                m_pending.inc();
+                return true;
+            }
+            m_deferred.mark();
+            return false;
+        }
+
+        private void release() {
+            m_permits.release();
+            m_pending.dec();
+        }
+
+        private void submit(final Runnable runnable, final Runnable onCompletion) {
+            try {
+                m_executor.execute(() -> {
+                    try {
+                        runnable.run();
+                    } finally {
+                        release();
+                        onCompletion.run();
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                LOG.warn("Lane {} has been shut down, dropping notification commands", m_name);
+                release();
+                onCompletion.run();
+            }
+        }
+
+        private void shutdown() {
+            m_executor.shutdown();
+        }
+
+        @Override
+        public String toString() {
+            return m_name;
+        }
+    }
+}
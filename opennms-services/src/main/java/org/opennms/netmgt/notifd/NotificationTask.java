@@ -60,7 +60,7 @@ import org.slf4j.LoggerFactory;
  * notificationCommands.xml by:
  * @author <A HREF="mailto:david@opennms.org">David Hustace </A>
  */
-public class NotificationTask extends Thread {
+public class NotificationTask implements Runnable {
     
     private static final Logger LOG = LoggerFactory.getLogger(NotificationTask.class);
     
@@ -92,7 +92,10 @@ public class NotificationTask extends Thread {
      */
     private final long m_sendTime;
 
-    private volatile boolean m_started = false;
+    /**
+     * The destination path the notice was sent to, if any
+     */
+    private volatile String m_destinationPath;
 
     private final NotificationManager m_notificationManager;
 
@@ -160,6 +163,24 @@ public class NotificationTask extends Thread {
         return m_notifyId;
     }
 
+    /**
+     * <p>getDestinationPath</p>
+     *
+     * @return the name of the destination path, or null if the task was not created from one
+     */
+    public String getDestinationPath() {
+        return m_destinationPath;
+    }
+
+    /**
+     * <p>setDestinationPath</p>
+     *
+     * @param destinationPath a {@link java.lang.String} object.
+     */
+    public void setDestinationPath(String destinationPath) {
+        m_destinationPath = destinationPath;
+    }
+
     /**
      * Sets the user that the page needs to be sent to.
      *
@@ -225,6 +246,16 @@ public class NotificationTask extends Thread {
      */
     @Override
     public void run() {
+        run(m_commands);
+    }
+
+    /**
+     * Sends the notice using the given subset of this task's commands, unless
+     * it was acknowledged in the meantime or the user is not on duty.
+     *
+     * @param commands the commands to execute
+     */
+    void run(final Command[] commands) {
         boolean outstanding = false;
         try {
             outstanding = getNotificationManager().noticeOutstanding(m_notifyId);
@@ -242,7 +273,7 @@ public class NotificationTask extends Thread {
                     boolean isBinary = false;
                     String cntct = "";
 
-                    for (Command command : m_commands) {
+                    for (Command command : commands) {
                         try {
                             cntct = getContactInfo(command.getName());
                             try {
@@ -388,23 +419,4 @@ public class NotificationTask extends Thread {
     public String getTuiPin() throws IOException {
         return getContactInfo("tuiPin");
     }
-
-    /**
-     * <p>start</p>
-     */
-    @Override
-    public synchronized void start() {
-        m_started = true;
-        super.start();
-    }
-
-    /**
-     * <p>isStarted</p>
-     *
-     * @return a boolean.
-     */
-    public boolean isStarted() {
-        return m_started;
-    }
-
 }
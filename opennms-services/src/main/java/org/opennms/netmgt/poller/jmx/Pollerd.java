@@ -31,7 +31,7 @@ package org.opennms.netmgt.poller.jmx;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
+import org.opennms.netmgt.scheduler.SchedulerFactory;
 
 /**
  * <p>Pollerd class.</p>
@@ -140,10 +140,10 @@ public class Pollerd extends AbstractSpringContextJmxServiceDaemon<org.opennms.n
     }
     
     private ThreadPoolExecutor getExecutor() {
-        return (ThreadPoolExecutor) ((LegacyScheduler) getDaemon().getScheduler()).getRunner();
+        return (ThreadPoolExecutor) SchedulerFactory.getRunner(getDaemon().getScheduler());
     }
     
     private boolean getThreadPoolStatsStatus() {
-        return (getDaemon().getScheduler() instanceof LegacyScheduler);
+        return (SchedulerFactory.getRunner(getDaemon().getScheduler()) instanceof ThreadPoolExecutor);
     }
 }
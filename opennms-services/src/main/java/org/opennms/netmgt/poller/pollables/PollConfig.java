@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.poller.pollables;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.scheduler.Timer;
 
@@ -47,6 +49,14 @@ public interface PollConfig extends Timer {
      */
     public PollStatus poll();
 
+    /**
+     * Polls the service without waiting for the result.
+     *
+     * @return a future which is never completed exceptionally, failures
+     *         are mapped to a {@link org.opennms.netmgt.poller.PollStatus}.
+     */
+    public CompletableFuture<PollStatus> pollAsync();
+
     /**
      * <p>getCurrentTime</p>
      *
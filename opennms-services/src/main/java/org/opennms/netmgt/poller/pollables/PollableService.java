@@ -31,6 +31,10 @@ package org.opennms.netmgt.poller.pollables;
 import java.net.InetAddress;
 import java.util.Date;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.opennms.core.logging.Logging;
 import org.opennms.netmgt.events.api.EventConstants;
@@ -52,12 +56,36 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
     
     private static final Logger LOG = LoggerFactory.getLogger(PollableService.class);
 
+    /**
+     * When enabled, scheduled polls release the scheduler thread while the
+     * monitor runs, and the result is processed once the poll completes.
+     */
+    public static final String ASYNC_POLLING_PROPERTY = "org.opennms.netmgt.poller.async";
+
+    /**
+     * How long (in milliseconds) an asynchronous poll can remain without a result
+     * before the service is polled again, and the result of that poll is ignored.
+     */
+    public static final String ASYNC_POLL_TIMEOUT_PROPERTY = "org.opennms.netmgt.poller.async.timeout";
+
+    private static final long DEFAULT_ASYNC_POLL_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+    private static final Random s_random = new Random();
+
     private final class PollRunner implements Runnable {
     	
+    	private final PollStatus m_result;
     	private volatile PollStatus m_pollStatus;
+
+    	private PollRunner(PollStatus result) {
+    	    m_result = result;
+    	}
             @Override
 		public void run() {
+		    // Set while holding the tree lock, so that only this poll consumes it
+		    m_pendingResult.set(m_result);
 		    doPoll();
+		    m_pendingResult.set(null);
 		    getNode().processStatusChange(new Date());
 		    m_pollStatus = getStatus();
 		}
@@ -72,6 +100,18 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
     private volatile PollStatus m_oldStatus;
     private volatile Schedule m_schedule;
     private volatile long m_statusChangeTime = 0L;
+
+    /**
+     * Result of an asynchronous poll, consumed by the next call to {@link #poll()}.
+     */
+    private final AtomicReference<PollStatus> m_pendingResult = new AtomicReference<>();
+
+    /**
+     * Identifies the asynchronous poll in progress, if any.
+     */
+    private final AtomicReference<Object> m_pollInProgress = new AtomicReference<>();
+
+    private volatile long m_pollStartTime;
     /**
      * <p>Constructor for PollableService.</p>
      *
@@ -174,9 +214,9 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
     /**
      * <p>setPollConfig</p>
      *
-     * @param pollConfig a {@link org.opennms.netmgt.poller.pollables.PollableServiceConfig} object.
+     * @param pollConfig a {@link org.opennms.netmgt.poller.pollables.PollConfig} object.
      */
-    public void setPollConfig(PollableServiceConfig pollConfig) {
+    public void setPollConfig(PollConfig pollConfig) {
         m_pollConfig = pollConfig;
     }
 
@@ -187,7 +227,10 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
      */
     @Override
     public PollStatus poll() {
-        PollStatus newStatus = m_pollConfig.poll();
+        PollStatus newStatus = m_pendingResult.getAndSet(null);
+        if (newStatus == null) {
+            newStatus = m_pollConfig.poll();
+        }
         if (!newStatus.isUnknown()) { 
             updateStatus(newStatus);
         }
@@ -376,7 +419,98 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
      */
     @Override
     public void run() {
-        doRun(500);
+        if (!Boolean.parseBoolean(System.getProperty(ASYNC_POLLING_PROPERTY, "true"))) {
+            doRun(500, null);
+            return;
+        }
+
+        final Object previousPoll = m_pollInProgress.get();
+        if (previousPoll != null) {
+            final long elapsed = m_pollConfig.getCurrentTime() - m_pollStartTime;
+            if (elapsed < Long.getLong(ASYNC_POLL_TIMEOUT_PROPERTY, DEFAULT_ASYNC_POLL_TIMEOUT)) {
+                LOG.debug("The previous poll of {} is still in progress, skipping this one.", this);
+                return;
+            }
+            LOG.warn("The previous poll of {} has not completed after {}ms, polling again and ignoring its result.", this, elapsed);
+            m_pollInProgress.compareAndSet(previousPoll, null);
+        }
+
+        final Object poll = new Object();
+        if (!m_pollInProgress.compareAndSet(null, poll)) {
+            return;
+        }
+        m_pollStartTime = m_pollConfig.getCurrentTime();
+        final CompletableFuture<PollStatus> future;
+        try {
+            future = m_pollConfig.pollAsync();
+        } catch (RuntimeException e) {
+            m_pollInProgress.compareAndSet(poll, null);
+            throw e;
+        }
+
+        if (future.isDone()) {
+            // Process the result on this thread, the scheduler postpones the whole poll if the lock is unavailable
+            try {
+                doRun(500, future.join());
+            } finally {
+                m_pollInProgress.compareAndSet(poll, null);
+            }
+        } else {
+            // Don't process the result on the thread which completed the poll, it may be an I/O thread
+            future.thenAccept(result -> {
+                if (m_pollInProgress.get() != poll) {
+                    LOG.info("Ignoring the result of an abandoned poll of {}: {}", this, result);
+                    return;
+                }
+                try {
+                    getSchedule().submit(0, new PollResultProcessor(poll, result));
+                } catch (RuntimeException e) {
+                    LOG.warn("Failed to schedule the processing of the poll of {}", this, e);
+                    m_pollInProgress.compareAndSet(poll, null);
+                }
+            });
+        }
+    }
+
+    /**
+     * Processes the result of an asynchronous poll on the scheduler.
+     */
+    private final class PollResultProcessor implements ReadyRunnable {
+        private final Object m_poll;
+        private final PollStatus m_result;
+
+        private PollResultProcessor(Object poll, PollStatus result) {
+            m_poll = poll;
+            m_result = result;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void run() {
+            if (isDeleted() || m_pollInProgress.get() != m_poll) {
+                m_pollInProgress.compareAndSet(m_poll, null);
+                return;
+            }
+            try {
+                doRun(500, m_result);
+                m_pollInProgress.compareAndSet(m_poll, null);
+            } catch (PostponeNecessary e) {
+                // Same back-off as the scheduler, but keep the result
+                getSchedule().submit(s_random.nextInt(10) * 1000L + 5000L, this);
+            } catch (RuntimeException e) {
+                m_pollInProgress.compareAndSet(m_poll, null);
+                throw e;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "PollResultProcessor for " + PollableService.this;
+        }
     }
     
     /**
@@ -385,10 +519,10 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
      * @return a {@link org.opennms.netmgt.poller.PollStatus} object.
      */
     public PollStatus doRun() {
-    	return doRun(0);
+    	return doRun(0, null);
     }
 
-    private PollStatus doRun(int timeout) {
+    private PollStatus doRun(int timeout, PollStatus result) {
         final Map<String, String> mdc = Logging.getCopyOfContextMap();
         try {
             Logging.putThreadContext("service", m_svcName);
@@ -399,7 +533,7 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
             LOG.debug("Start Scheduled Poll of service {}", this);
             PollStatus status;
             if (getContext().isNodeProcessingEnabled()) {
-                PollRunner r = new PollRunner();
+                PollRunner r = new PollRunner(result);
                 try {
                     withTreeLock(r, timeout);
                 } catch (LockUnavailable e) {
@@ -409,7 +543,9 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
                 status = r.getPollStatus();
             }
             else {
+                m_pendingResult.set(result);
                 doPoll();
+                m_pendingResult.set(null);
                 processStatusChange(new Date());
                 status = getStatus();
             }
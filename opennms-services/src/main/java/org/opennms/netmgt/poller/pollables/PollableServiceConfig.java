@@ -30,6 +30,8 @@ package org.opennms.netmgt.poller.pollables;
 
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.TimeUnit;
 
@@ -115,6 +117,26 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
      */
     @Override
     public PollStatus poll() {
+        try {
+            return pollAsync().get();
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while invoking the poll for {}."
+                    + " Marking the service as UNKNOWN.", m_service);
+            return PollStatus.unknown("Interrupted while invoking the poll for"+m_service+". "+e);
+        } catch (ExecutionException e) {
+            // pollAsync() handles all of the failures
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * <p>pollAsync</p>
+     *
+     * @return a future completed with the {@link org.opennms.netmgt.poller.PollStatus}, never exceptionally.
+     */
+    @Override
+    public CompletableFuture<PollStatus> pollAsync() {
+        CompletableFuture<PollStatus> future;
         try {
             final String packageName = getPackageName();
             // Use the service's configured interval as the TTL for this request
@@ -122,7 +144,7 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
             LOG.debug("Polling {} with TTL {} using pkg {}",
                     m_service, ttlInMs, packageName);
 
-            PollStatus result = m_locationAwarePollerClient.poll()
+            future = m_locationAwarePollerClient.poll()
                 .withService(m_service)
                 .withMonitor(m_serviceMonitor)
                 .withTimeToLive(ttlInMs)
@@ -130,10 +152,16 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
                 .withAdaptor(m_latencyStoringServiceMonitorAdaptor)
                 .withAdaptor(m_invertedStatusServiceMonitorAdaptor)
                 .execute()
-                .get().getPollStatus();
-            LOG.debug("Finish polling {} using pkg {} result = {}", m_service, packageName, result);
-            return result;
+                .thenApply(response -> response.getPollStatus());
         } catch (Throwable e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        return future.handle((result, e) -> {
+            if (e == null) {
+                LOG.debug("Finish polling {} using pkg {} result = {}", m_service, getPackageName(), result);
+                return result;
+            }
             return RpcExceptionUtils.handleException(e, new RpcExceptionHandler<PollStatus>() {
                 @Override
                 public PollStatus onInterrupted(Throwable cause) {
@@ -162,7 +190,7 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
                     return PollStatus.down("Unexpected exception while polling "+m_service+". "+e);
                 }
             });
-        }
+        });
     }
 
     /**
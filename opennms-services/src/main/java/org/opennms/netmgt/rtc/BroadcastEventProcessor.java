@@ -45,7 +45,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 /**
  * BroadcastEventProcessor is responsible for receiving events from eventd and
- * queuing them to the data updaters.
+ * queuing them to the data updaters. Events are only needed, and only
+ * queued, when the {@link DataManager} is the configured availability service.
  * 
  * @author <a href="mailto:sowmya@opennms.org">Sowmya Nataraj</a>
  * @author <a href="http://www.opennms.org/">OpenNMS</a>
@@ -61,6 +62,8 @@ public class BroadcastEventProcessor implements InitializingBean {
     private ExecutorService m_updater;
 
     @Autowired
+    private AvailabilityService m_availabilityService;
+
     private DataManager m_dataManager;
 
     @Autowired
@@ -68,6 +71,11 @@ public class BroadcastEventProcessor implements InitializingBean {
 
     @Override
     public void afterPropertiesSet() throws Exception {
+        if (!(m_availabilityService instanceof DataManager)) {
+            LOG.debug("Availability is not calculated from events, ignoring them");
+            return;
+        }
+        m_dataManager = (DataManager)m_availabilityService;
         m_updater = Executors.newFixedThreadPool(
             m_configFactory.getUpdaters(),
             new LogPreservingThreadFactory(getClass().getSimpleName(), m_configFactory.getUpdaters())
@@ -93,7 +101,7 @@ public class BroadcastEventProcessor implements InitializingBean {
         EventConstants.ASSET_INFO_CHANGED_EVENT_UEI
     })
     public void onEvent(Event event) {
-        if (event == null) {
+        if (event == null || m_dataManager == null) {
             return;
         }
 
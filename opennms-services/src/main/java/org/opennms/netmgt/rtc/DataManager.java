@@ -37,11 +37,12 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.config.RTCConfigFactory;
@@ -65,6 +66,9 @@ import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Striped;
+
 /**
  * Contains and maintains all the data for the RTC.
  *
@@ -80,6 +84,13 @@ import org.springframework.transaction.support.TransactionTemplate;
  * 'nodeGainedService' event would result in the 'nodeGainedService()' method
  * being called by the DataUpdater(s).
  *
+ * Updates are serialized per node using a set of striped locks, so events for
+ * different nodes are handled concurrently. Reads do not lock: the categories,
+ * the map and the nodes can all be read while they are being updated, and each
+ * node publishes an immutable snapshot of its outages
+ * ('RTCNodeSvcTimes') from which the down time in the rolling window is
+ * calculated.
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
@@ -102,16 +113,34 @@ public class DataManager implements AvailabilityService, InitializingBean {
 	@Autowired
 	private MonitoredServiceDao m_monitoredServiceDao;
 
+    /**
+     * Locks serializing the updates made to each node
+     */
+    private final Striped<Lock> m_nodeLocks = Striped.lock(64);
+
     /**
      * The category to XML mapper
      */
     private final LegacyEuiLevelMapper m_euiMapper;
 
+	/**
+	 * Builds the RTCNodes read from the database into the given map. The
+	 * category memberships found are only collected, so that the caller
+	 * decides when they become visible.
+	 */
 	private class RTCNodeProcessor implements RowCallbackHandler {
 		RTCNodeKey m_currentKey = null;
 
 		Map<String,Set<Integer>> m_categoryNodeIdLists = new HashMap<String,Set<Integer>>();
 
+		final RTCHashMap m_nodes;
+
+		final Map<String,Set<Integer>> m_memberships = new HashMap<String,Set<Integer>>();
+
+		RTCNodeProcessor(RTCHashMap nodes) {
+			m_nodes = nodes;
+		}
+
 
 		@Override
 		public void processRow(ResultSet rs) throws SQLException {
@@ -136,17 +165,19 @@ public class DataManager implements AvailabilityService, InitializingBean {
 			for (RTCCategory cat : m_categories.values()) {
 				if (catContainsIfService(cat, key)) {
 					RTCNode rtcN = getRTCNode(key);
-					addNodeToCategory(cat, rtcN);
+					rtcN.addCategory(cat.getLabel());
+					m_memberships.computeIfAbsent(cat.getLabel(), l -> new HashSet<Integer>()).add(rtcN.getNodeID());
+					LOG.debug("rtcN : {}/{}/{} added to cat: {}", rtcN.getNodeID(), rtcN.getIP(), rtcN.getSvcName(), cat.getLabel());
 				}
 			}
 		
 		}
 
 		private RTCNode getRTCNode(RTCNodeKey key) {
-			RTCNode rtcN = m_map.getRTCNode(key);
+			RTCNode rtcN = m_nodes.getRTCNode(key);
 			if (rtcN == null) {
 				rtcN = new RTCNode(key, m_configFactory.getRollingWindow());
-				addRTCNode(rtcN);
+				m_nodes.add(rtcN);
 			}
 			return rtcN;
 		}
@@ -172,7 +203,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
 		
 		// This is processed for each outage, passing two null means there is not outage
 		public void processOutage(RTCNodeKey key, Timestamp ifLostService, Timestamp ifRegainedService) {
-			RTCNode rtcN = m_map.getRTCNode(key);
+			RTCNode rtcN = m_nodes.getRTCNode(key);
 			// if we can't find the node it doesn't belong to any category
 			if (rtcN == null) return;
 			
@@ -204,28 +235,14 @@ public class DataManager implements AvailabilityService, InitializingBean {
 		rtcN.addSvcTime(lostTime, regainedTime);
 	}
 
-	private void addRTCNode(RTCNode rtcN) {
-		m_map.add(rtcN);
-	}
-
-	private static void addNodeToCategory(RTCCategory cat, RTCNode rtcN) {
-
-		// add the category info to the node
-        rtcN.addCategory(cat.getLabel());
-
-		// Add node to category
-		cat.addNode(rtcN);
-
-		LOG.debug("rtcN : {}/{}/{} added to cat: {}", rtcN.getNodeID(), rtcN.getIP(), rtcN.getSvcName(), cat.getLabel());
-	}
-
     /**
      * Populates nodes from the database. For each category in the categories
-     * list, this reads the services and outage tables to get the initial data,
-     * creates 'RTCNode' objects that are added to the map and and to the
-     * appropriate category.
-     * @param dbConn
-     *            the database connection.
+     * list, this reads the services and outage tables to get the initial data
+     * and creates 'RTCNode' objects that are added to the given map. The
+     * categories are left untouched: the memberships found are returned in
+     * the processor instead.
+     * @param nodes
+     *            the map the nodes are added to
      * 
      * @throws SQLException
      *             if the database read fails due to an SQL error
@@ -236,7 +253,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      *             if the database read or filtering the data against the
      *             category rule fails for some reason
      */
-    private void populateNodesFromDB(String query, Object[] args) throws SQLException, FilterParseException, RTCException {
+    private RTCNodeProcessor populateNodesFromDB(RTCHashMap nodes, String query, Object[] args) throws SQLException, FilterParseException, RTCException {
 
     	final String getOutagesInWindow = 
     			"select " + 
@@ -270,12 +287,13 @@ public class DataManager implements AvailabilityService, InitializingBean {
 		long window = (new Date()).getTime() - (24L * 60L * 60L * 1000L);
 		Timestamp windowTS = new Timestamp(window);
 
-    	RowCallbackHandler rowHandler = new RTCNodeProcessor();
+    	RTCNodeProcessor rowHandler = new RTCNodeProcessor(nodes);
 
     	Object[] sqlArgs = createArgs(windowTS, windowTS, args);
     	
     	m_jdbcTemplate.query(getOutagesInWindow, sqlArgs, rowHandler);
     	
+    	return rowHandler;
     }
 
 	private static Object[] createArgs(Object arg1, Object arg2, Object[] remaining) {
@@ -287,6 +305,12 @@ public class DataManager implements AvailabilityService, InitializingBean {
 		return args.toArray();
 	}
 
+    private Lock lockNode(int nodeid) {
+        final Lock lock = m_nodeLocks.get(nodeid);
+        lock.lock();
+        return lock;
+    }
+
     public DataManager() {
         // create category converter
         m_euiMapper = new LegacyEuiLevelMapper(this);
@@ -330,7 +354,10 @@ public class DataManager implements AvailabilityService, InitializingBean {
     		protected void doInTransactionWithoutResult(TransactionStatus arg0) {
     			// Populate the nodes initially from the database
     			try {
-    				populateNodesFromDB(null, null);
+    				RTCNodeProcessor processor = populateNodesFromDB(m_map, null, null);
+    				for (Map.Entry<String,Set<Integer>> membership : processor.m_memberships.entrySet()) {
+    					m_categories.get(membership.getKey()).addAllNodes(membership.getValue());
+    				}
     			} catch (FilterParseException e) {
     				throw new IllegalStateException("Cannot load RTC data from the database: " + e.getMessage(), e);
     			} catch (SQLException e) {
@@ -353,7 +380,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param svcName
      *            the service name
      */
-    public synchronized void nodeGainedService(int nodeid, InetAddress ip, String svcName) {
+    public void nodeGainedService(int nodeid, InetAddress ip, String svcName) {
         //
         // check the 'status' flag for the service
         //
@@ -414,18 +441,22 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param t
      *            the time at which service was lost
      */
-    public synchronized void outageCreated(int nodeid, InetAddress ip, String svcName, long t) {
-        RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
-        RTCNode rtcN = m_map.getRTCNode(key);
-        if (rtcN == null) {
-            // oops! got a lost/regained service for a node that is not known?
-            LOG.info("Received a outageCreated event for an unknown/irrelevant node: {}", key.toString());
-            return;
-        }
-
-        // inform node
-        rtcN.nodeLostService(t);
+    public void outageCreated(int nodeid, InetAddress ip, String svcName, long t) {
+        final Lock lock = lockNode(nodeid);
+        try {
+            RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
+            RTCNode rtcN = m_map.getRTCNode(key);
+            if (rtcN == null) {
+                // oops! got a lost/regained service for a node that is not known?
+                LOG.info("Received a outageCreated event for an unknown/irrelevant node: {}", key.toString());
+                return;
+            }
 
+            // inform node
+            rtcN.nodeLostService(t);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -441,17 +472,22 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param t
      *            the time at which service was regained
      */
-    public synchronized void outageResolved(int nodeid, InetAddress ip, String svcName, long t) {
-        RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
-        RTCNode rtcN = m_map.getRTCNode(key);
-        if (rtcN == null) {
-            // oops! got a lost/regained service for a node that is not known?
-            LOG.info("Received a outageResolved event for an unknown/irrelevant node: {}", key.toString());
-            return;
-        }
+    public void outageResolved(int nodeid, InetAddress ip, String svcName, long t) {
+        final Lock lock = lockNode(nodeid);
+        try {
+            RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
+            RTCNode rtcN = m_map.getRTCNode(key);
+            if (rtcN == null) {
+                // oops! got a lost/regained service for a node that is not known?
+                LOG.info("Received a outageResolved event for an unknown/irrelevant node: {}", key.toString());
+                return;
+            }
 
-        // inform node
-        rtcN.nodeRegainedService(t);
+            // inform node
+            rtcN.nodeRegainedService(t);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -464,50 +500,45 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param svcName
      *            the service that was deleted
      */
-    public synchronized void serviceDeleted(int nodeid, InetAddress ip, String svcName) {
-        // create lookup key
-        RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
+    public void serviceDeleted(int nodeid, InetAddress ip, String svcName) {
+        final Lock lock = lockNode(nodeid);
+        try {
+            // create lookup key
+            RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
 
-        // lookup the node
-        RTCNode rtcN = m_map.getRTCNode(key);
-        if (rtcN == null) {
-            LOG.warn("Received a {} event for an unknown node: {}", EventConstants.SERVICE_DELETED_EVENT_UEI, key.toString());
+            // lookup the node
+            RTCNode rtcN = m_map.getRTCNode(key);
+            if (rtcN == null) {
+                LOG.warn("Received a {} event for an unknown node: {}", EventConstants.SERVICE_DELETED_EVENT_UEI, key.toString());
 
-            return;
-        }
+                return;
+            }
 
-        //
-        // Go through from all the categories this node belongs to
-        // and delete the service
-        //
-        List<String> categories = rtcN.getCategories();
-        ListIterator<String> catIter = categories.listIterator();
-        while (catIter.hasNext()) {
-            String catlabel = (String) catIter.next();
-
-            RTCCategory cat = (RTCCategory) m_categories.get(catlabel);
-
-            // get nodes in this category
-            List<Integer> catNodes = cat.getNodes();
-
-            // check if the category contains this node
-            int nIndex = catNodes.indexOf(rtcN.getNodeID());
-            if (nIndex != -1) {
-                // remove from the category if it is the only service left.
-                if (m_map.getServiceCount(nodeid, catlabel) == 1) {
-                    catNodes.remove(nIndex);
-                    LOG.info("Removing node from category: {}", catlabel);
+            //
+            // Go through from all the categories this node belongs to
+            // and delete the service
+            //
+            for (String catlabel : rtcN.getCategories()) {
+                RTCCategory cat = m_categories.get(catlabel);
+
+                // check if the category contains this node
+                if (cat.getNodes().contains(rtcN.getNodeID())) {
+                    // remove from the category if it is the only service left.
+                    if (m_map.getServiceCount(nodeid, catlabel) == 1) {
+                        cat.deleteNode(nodeid);
+                        LOG.info("Removing node from category: {}", catlabel);
+                    }
+
+                    // let the node know that this category is out
+                    rtcN.removeCategory(catlabel);
                 }
-
-                // let the node know that this category is out
-                catIter.remove();
             }
-        }
-
-        // finally remove from map
-        
-        m_map.delete(rtcN);
 
+            // finally remove from map
+            m_map.delete(rtcN);
+        } finally {
+            lock.unlock();
+        }
     }
     
     /**
@@ -515,7 +546,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      *
      * @param nodeid a long.
      */
-    public synchronized void assetInfoChanged(int nodeid) {
+    public void assetInfoChanged(int nodeid) {
         try {
         	rtcNodeRescan(nodeid);
         } catch (FilterParseException ex) {
@@ -537,7 +568,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      *
      * @param nodeid a long.
      */
-    public synchronized void nodeCategoryMembershipChanged(int nodeid) {
+    public void nodeCategoryMembershipChanged(int nodeid) {
         try {
         	rtcNodeRescan(nodeid);
         } catch (FilterParseException ex) {
@@ -567,16 +598,26 @@ public class DataManager implements AvailabilityService, InitializingBean {
      *             if the database read or filtering the data against the
      *             category rule fails for some reason
      */
-    public synchronized void rtcNodeRescan(int nodeid) throws SQLException, FilterParseException, RTCException {
-    	
-    	for (RTCCategory cat : m_categories.values()) {
-			cat.deleteNode(nodeid);
-		}
-    	
-    	m_map.deleteNode(nodeid);
-    	
-    	populateNodesFromDB("ifsvc.nodeid = ?", new Object[] { Long.valueOf(nodeid) });
-    	
+    public void rtcNodeRescan(int nodeid) throws SQLException, FilterParseException, RTCException {
+        final Lock lock = lockNode(nodeid);
+        try {
+            // build the replacement aside so that readers never see the node
+            // missing while the database is being read
+            final RTCHashMap rescanned = new RTCHashMap(16);
+            final RTCNodeProcessor processor = populateNodesFromDB(rescanned, "ifsvc.nodeid = ?", new Object[] { Long.valueOf(nodeid) });
+
+            m_map.replaceNode(nodeid, rescanned.getRTCNodes(nodeid));
+
+            for (RTCCategory cat : m_categories.values()) {
+                if (processor.m_memberships.containsKey(cat.getLabel())) {
+                    cat.addNode(nodeid);
+                } else {
+                    cat.deleteNode(nodeid);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -599,27 +640,34 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param newNodeId
      *            the node that the IP now belongs to
      */
-    public synchronized void interfaceReparented(InetAddress ip, int oldNodeId, int newNodeId) {
-        // get all RTCNodes with the IP/old node ID
-        for (RTCNode rtcN : m_map.getRTCNodes(oldNodeId, ip)) {
+    public void interfaceReparented(InetAddress ip, int oldNodeId, int newNodeId) {
+        // lock both nodes, in the stripe order to avoid deadlocks
+        final List<Lock> locks = Lists.newArrayList(m_nodeLocks.bulkGet(Arrays.asList(oldNodeId, newNodeId)));
+        locks.forEach(Lock::lock);
+        try {
+            // get all RTCNodes with the IP/old node ID
+            for (RTCNode rtcN : m_map.getRTCNodes(oldNodeId, ip)) {
 
-            // remove the node with the old node id from the map
-            m_map.delete(rtcN);
+                // remove the node with the old node id from the map
+                m_map.delete(rtcN);
 
-            // change the node ID on the RTCNode
-            rtcN.setNodeID(newNodeId);
+                // change the node ID on the RTCNode
+                rtcN.setNodeID(newNodeId);
 
-            // now add the node with the new node ID
-            m_map.add(rtcN);
+                // now add the node with the new node ID
+                m_map.add(rtcN);
 
-            // remove old node ID from the categories it belonged to
-            // and the new node ID
-            for (String catlabel : rtcN.getCategories()) {
-                RTCCategory rtcCat = m_categories.get(catlabel);
-                rtcCat.deleteNode(oldNodeId);
-                rtcCat.addNode(newNodeId);
-            }
+                // remove old node ID from the categories it belonged to
+                // and the new node ID
+                for (String catlabel : rtcN.getCategories()) {
+                    RTCCategory rtcCat = m_categories.get(catlabel);
+                    rtcCat.deleteNode(oldNodeId);
+                    rtcCat.addNode(newNodeId);
+                }
 
+            }
+        } finally {
+            Lists.reverse(locks).forEach(Lock::unlock);
         }
     }
 
@@ -636,8 +684,8 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the value(uptime) for the category in the last 'rollingWindow'
      *         starting at current time
      */
-    public synchronized double getValue(RTCCategory category, long curTime, long rollingWindow) {
-        return m_map.getValue(category.getLabel(), curTime, rollingWindow);
+    public double getValue(RTCCategory category, long curTime, long rollingWindow) {
+        return m_map.getValue(category.getNodes(), category.getLabel(), curTime, rollingWindow);
     }
 
     /**
@@ -655,7 +703,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the value(uptime) for the node in the last 'rollingWindow'
      *         starting at current time in the context of the passed category
      */
-    public synchronized double getValue(int nodeid, RTCCategory category, long curTime, long rollingWindow) {
+    public double getValue(int nodeid, RTCCategory category, long curTime, long rollingWindow) {
         return m_map.getValue(nodeid, category.getLabel(), curTime, rollingWindow);
     }
 
@@ -670,7 +718,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the service count for the nodeid in the context of the passed
      *         category
      */
-    public synchronized int getServiceCount(int nodeid, RTCCategory category) {
+    public int getServiceCount(int nodeid, RTCCategory category) {
         return m_map.getServiceCount(nodeid, category.getLabel());
     }
 
@@ -685,7 +733,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the service down count for the nodeid in the context of the
      *         passed category
      */
-    public synchronized int getServiceDownCount(int nodeid, RTCCategory category) {
+    public int getServiceDownCount(int nodeid, RTCCategory category) {
         return m_map.getServiceDownCount(nodeid, category.getLabel());
     }
 
@@ -695,7 +743,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the categories
      */
     @Override
-    public synchronized Map<String, RTCCategory> getCategories() {
+    public Map<String, RTCCategory> getCategories() {
         return m_categories;
     }
 
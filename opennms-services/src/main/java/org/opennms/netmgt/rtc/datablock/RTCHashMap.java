@@ -30,12 +30,13 @@ package org.opennms.netmgt.rtc.datablock;
 
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.opennms.netmgt.rtc.NodeNotInCategoryException;
 import org.opennms.netmgt.rtc.RTCUtils;
@@ -45,6 +46,9 @@ import org.opennms.netmgt.rtc.RTCUtils;
  * convenience methods to add and remove 'RTCNodes' with these values - each key
  * points to a list of 'RTCNode's
  *
+ * Lookups do not lock and may run concurrently with updates, but callers are
+ * expected to serialize the updates made to a given node.
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Kumaraswamy </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
@@ -60,16 +64,7 @@ public class RTCHashMap {
      * @param initialCapacity a int.
      */
     public RTCHashMap(int initialCapacity) {
-        m_map = new HashMap<RTCNodeKey,List<RTCNode>>(initialCapacity);
-    }
-
-    private List<Integer> getNodeIDs() {
-    	List<Integer> nodes = new LinkedList<>();
-    	for (Iterator<RTCNodeKey> it = m_map.keySet().iterator(); it.hasNext();) {
-			RTCNodeKey key = it.next();
-			nodes.add(key.getNodeID());
-		}
-    	return nodes;
+        m_map = new ConcurrentHashMap<RTCNodeKey,List<RTCNode>>(initialCapacity);
     }
     
     /**
@@ -82,18 +77,7 @@ public class RTCHashMap {
      */
     private void add(int nodeid, RTCNode rtcN) {
         RTCNodeKey key = new RTCNodeKey(nodeid, null, null);
-
-        List<RTCNode> nodesList = m_map.get(key);
-        if (nodesList != null) {
-            nodesList.add(rtcN);
-        } else {
-            // add current node to list
-            nodesList = new ArrayList<>();
-            nodesList.add(rtcN);
-
-            // add list to map
-            m_map.put(key, nodesList);
-        }
+        m_map.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(rtcN);
     }
 
     /**
@@ -108,18 +92,7 @@ public class RTCHashMap {
      */
     private void add(int nodeid, InetAddress inetAddress, RTCNode rtcN) {
         RTCNodeKey key = new RTCNodeKey(nodeid, inetAddress, null);
-
-        List<RTCNode> nodesList = m_map.get(key);
-        if (nodesList != null) {
-            nodesList.add(rtcN);
-        } else {
-            // add current node to list
-            nodesList = new ArrayList<>();
-            nodesList.add(rtcN);
-
-            // add list to map
-            m_map.put(key, nodesList);
-        }
+        m_map.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(rtcN);
     }
     
     private void add(int nodeid, InetAddress ip, String svcName, RTCNode rtcN) {
@@ -194,6 +167,8 @@ public class RTCHashMap {
      * Get the value (uptime) for a category in the last 'rollingWindow'
      * starting at current time
      *
+     * @param nodeIds
+     *            the nodes in the category
      * @param catLabel
      *            the category to which the node should belong to
      * @param curTime
@@ -202,27 +177,19 @@ public class RTCHashMap {
      *            the window for which value is to be calculated
      * @return the value(uptime) for the node
      */
-    public double getValue(String catLabel, long curTime, long rollingWindow) {
+    public double getValue(Collection<Integer> nodeIds, String catLabel, long curTime, long rollingWindow) {
         // total outage time
         double outageTime = 0.0;
 
-        // number of entries for this node
+        // number of entries for this category
         int count = 0;
 
-        // get all nodes in the hashtable
-        for (Integer key : getNodeIDs()) {
-            List<RTCNode> valList = getRTCNodes(key);
-            if (valList == null || valList.size() == 0) {
-                continue;
-            }
-
-            for (RTCNode node : valList) {
-                try {
-                    long downTime = node.getDownTime(catLabel, curTime, rollingWindow);
+        // only visit the nodes in the category
+        for (Integer nodeid : nodeIds) {
+            for (RTCNode node : getRTCNodes(nodeid)) {
+                if (node.belongsTo(catLabel)) {
                     count++;
-                    outageTime += downTime;
-                } catch (NodeNotInCategoryException e) {
-                    continue;
+                    outageTime += node.getSvcTimes().getDownTime(curTime, rollingWindow);
                 }
             }
         }
@@ -358,6 +325,39 @@ public class RTCHashMap {
 		return Collections.unmodifiableList(nodes);
 	}
 
+	/**
+	 * Replace all the entries of a node with the given RTCNodes. The list
+	 * keyed by the node ID is swapped in a single step, so that values read
+	 * for the node see either the old or the new entries, never none.
+	 *
+	 * @param nodeid the node whose entries are replaced
+	 * @param rtcNodes the new entries for the node
+	 */
+	public void replaceNode(int nodeid, Collection<RTCNode> rtcNodes) {
+		final List<RTCNode> oldNodes = getRTCNodes(nodeid);
+
+		// index the new entries by IP and by service before publishing them
+		final Map<RTCNodeKey,List<RTCNode>> replacement = new HashMap<RTCNodeKey,List<RTCNode>>();
+		for (RTCNode rtcN : rtcNodes) {
+			replacement.computeIfAbsent(new RTCNodeKey(nodeid, rtcN.getIP(), null), k -> new CopyOnWriteArrayList<>()).add(rtcN);
+			replacement.put(new RTCNodeKey(nodeid, rtcN.getIP(), rtcN.getSvcName()), Collections.singletonList(rtcN));
+		}
+		m_map.putAll(replacement);
+		m_map.put(new RTCNodeKey(nodeid, null, null), new CopyOnWriteArrayList<>(rtcNodes));
+
+		// then drop the entries that are gone
+		for (RTCNode rtcN : oldNodes) {
+			final RTCNodeKey ipKey = new RTCNodeKey(nodeid, rtcN.getIP(), null);
+			if (!replacement.containsKey(ipKey)) {
+				m_map.remove(ipKey);
+			}
+			final RTCNodeKey svcKey = new RTCNodeKey(nodeid, rtcN.getIP(), rtcN.getSvcName());
+			if (!replacement.containsKey(svcKey)) {
+				m_map.remove(svcKey);
+			}
+		}
+	}
+
 	/**
 	 * <p>deleteNode</p>
 	 *
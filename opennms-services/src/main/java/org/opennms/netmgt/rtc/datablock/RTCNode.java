@@ -29,8 +29,8 @@
 package org.opennms.netmgt.rtc.datablock;
 
 import java.net.InetAddress;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.opennms.netmgt.rtc.NodeNotInCategoryException;
@@ -41,7 +41,7 @@ import org.opennms.netmgt.rtc.NodeNotInCategoryException;
  * RTCNode is the main data unit for the RTCManager - these datablocks are
  * created initially as data is read from the database and later if a
  * 'nodeGainedService' is received - each node maintains its node id, ip
- * address, service name and a list of 'RTCNodeSvcTime's
+ * address, service name and a snapshot of its 'RTCNodeSvcTimes'
  * </p>
  *
  * <p>
@@ -49,17 +49,21 @@ import org.opennms.netmgt.rtc.NodeNotInCategoryException;
  * belongs to
  * </p>
  *
+ * <p>
+ * Updates to the service times are serialized on the node and publish a new
+ * snapshot, so the down time can be read without locking
+ * </p>
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Kumaraswamy </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  * 
- * @see org.opennms.netmgt.rtc.datablock.RTCNodeSvcTime
- * @see org.opennms.netmgt.rtc.datablock.RTCNodeSvcTimesList
+ * @see org.opennms.netmgt.rtc.datablock.RTCNodeSvcTimes
  */
 public class RTCNode {
     /**
      * The node ID.
      */
-    private int m_nodeID;
+    private volatile int m_nodeID;
 
     /**
      * The ip address of the interface of the node.
@@ -72,14 +76,19 @@ public class RTCNode {
     private final String m_svcName;
 
     /**
-     * List of the lost/regained service times for this node.
+     * The window for which outages are kept.
      */
-    private RTCNodeSvcTimesList m_svcTimesList;
+    private final long m_rollingWindow;
+
+    /**
+     * The lost/regained service times for this node.
+     */
+    private volatile RTCNodeSvcTimes m_svcTimes = RTCNodeSvcTimes.EMPTY;
 
     /**
      * List of the categories this node belongs to
      */
-    private final List<String> m_categories = new ArrayList<>();
+    private final CopyOnWriteArrayList<String> m_categories = new CopyOnWriteArrayList<>();
 
     /**
      * <p>Constructor for RTCNode.</p>
@@ -107,7 +116,7 @@ public class RTCNode {
 
         m_svcName = svcName;
 
-        m_svcTimesList = new RTCNodeSvcTimesList(rollingWindow);
+        m_rollingWindow = rollingWindow;
     }
 
     /**
@@ -128,8 +137,12 @@ public class RTCNode {
      * @param regainedtime
      *            time at which service was regained
      */
-    public void addSvcTime(long losttime, long regainedtime) {
-        m_svcTimesList.addSvcTime(losttime, regainedtime);
+    public synchronized void addSvcTime(long losttime, long regainedtime) {
+        m_svcTimes = m_svcTimes.withOutage(losttime, regainedtime, getExpiry());
+    }
+
+    private long getExpiry() {
+        return System.currentTimeMillis() - m_rollingWindow;
     }
 
     /**
@@ -139,10 +152,7 @@ public class RTCNode {
      *            category label of the category this node has been added to
      */
     public void addCategory(String catLabel) {
-        int index = m_categories.indexOf(catLabel);
-        if (index == -1) {
-            m_categories.add(catLabel);
-        }
+        m_categories.addIfAbsent(catLabel);
     }
 
     /**
@@ -152,11 +162,7 @@ public class RTCNode {
      *            category label of the category this node has been added to
      */
     public void removeCategory(String catLabel) {
-        int index = m_categories.indexOf(catLabel);
-        if (index != -1) {
-            m_categories.remove(catLabel);
-
-        }
+        m_categories.remove(catLabel);
     }
 
     /**
@@ -167,24 +173,9 @@ public class RTCNode {
      *            the time at which service was lost
      */
     public synchronized void nodeLostService(long t) {
-        // check if the last element in the times list is 'open'
-        // i.e. is waiting for a regained service - if yes,
-        // don't add anything
-
-        int listsize = m_svcTimesList.size();
-        if (listsize > 0) {
-            RTCNodeSvcTime stime = (RTCNodeSvcTime) m_svcTimesList.get(listsize - 1);
-
-            if (stime.getRegainedTime() == -1) {
-                // last event was a 'lostService'
-                // ignore this event
-                return;
-            }
-        }
-
-        // create a new entry
-        RTCNodeSvcTime newStime = new RTCNodeSvcTime(t);
-        m_svcTimesList.add(newStime);
+        // if the last outage is still 'open', i.e. is waiting
+        // for a regained service, this event is ignored
+        m_svcTimes = m_svcTimes.lost(t, getExpiry());
     }
 
     /**
@@ -196,18 +187,8 @@ public class RTCNode {
      *            the time at which node regained service
      */
     public synchronized void nodeRegainedService(long t) {
-        int listsize = m_svcTimesList.size();
-        if (listsize > 0) {
-            RTCNodeSvcTime stime = (RTCNodeSvcTime) m_svcTimesList.get(listsize - 1);
-
-            if (stime.getRegainedTime() != -1) {
-                // last event was a 'regainedService'
-                // ignore this event
-                return;
-            }
-
-            stime.setRegainedTime(t);
-        }
+        // if there is no 'open' outage, this event is ignored
+        m_svcTimes = m_svcTimes.regained(t, getExpiry());
     }
 
     /**
@@ -245,11 +226,7 @@ public class RTCNode {
      * @return true if the node belongs to this category, false otherwise
      */
     public boolean belongsTo(String catLabel) {
-        if (m_categories.contains(catLabel)) {
-            return true;
-        } else {
-            return false;
-        }
+        return m_categories.contains(catLabel);
     }
 
     /**
@@ -261,6 +238,15 @@ public class RTCNode {
         return m_categories;
     }
 
+    /**
+     * Return the current snapshot of the lost/regained service times.
+     *
+     * @return the service times for this node
+     */
+    public RTCNodeSvcTimes getSvcTimes() {
+        return m_svcTimes;
+    }
+
     /**
      * Get the down time. Return the total outage time for this node in the
      * 'rollingWindow' milliseconds since 'curTime' for the category
@@ -283,7 +269,7 @@ public class RTCNode {
             throw new NodeNotInCategoryException();
         }
 
-        return m_svcTimesList.getDownTime(curTime, rollingWindow);
+        return m_svcTimes.getDownTime(curTime, rollingWindow);
     }
 
     /**
@@ -292,26 +278,7 @@ public class RTCNode {
      * @return true if the service is currently down
      */
     public boolean isServiceCurrentlyDown() {
-        int size = m_svcTimesList.size();
-        if (size == 0) {
-            return false;
-        }
-
-        // else get last entry
-        RTCNodeSvcTime svctime = (RTCNodeSvcTime) m_svcTimesList.get(size - 1);
-        if (svctime.getRegainedTime() != -1) {
-            // node has regained service - so service not currently down
-            return false;
-        }
-
-        // getting here means the service losttime is the one to be returned
-        long svclosttime = svctime.getLostTime();
-        if (svclosttime == -1) {
-            // huh? how is it possible?
-            return false;
-        }
-
-        return true;
+        return m_svcTimes.isDown();
     }
 
     /** {@inheritDoc} */
@@ -322,7 +289,7 @@ public class RTCNode {
             .append(m_ip)
             .append(m_svcName)
             .append(m_categories)
-            .append(m_svcTimesList)
+            .append(m_svcTimes)
             .toHashCode();
     }
 
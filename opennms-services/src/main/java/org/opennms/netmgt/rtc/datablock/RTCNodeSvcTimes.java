@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rtc.datablock;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An immutable snapshot of the lost/regained service times of an {@link RTCNode}.
+ *
+ * Closed outages are kept sorted by lost time along with the running sum of
+ * their durations, so the down time in a window is computed from two binary
+ * searches and the partial outages at either edge of the window, rather than by
+ * walking every outage. At most one outage is open at a time.
+ *
+ * Every update returns a new snapshot, which lets readers use the current one
+ * without any locking. Outages that ended before the given expiry time are
+ * dropped whenever a new snapshot is created.
+ */
+public final class RTCNodeSvcTimes {
+    private static final Logger LOG = LoggerFactory.getLogger(RTCNodeSvcTimes.class);
+
+    /**
+     * The snapshot of a service without any outages.
+     */
+    public static final RTCNodeSvcTimes EMPTY = new RTCNodeSvcTimes(new long[0], new long[0], -1);
+
+    /**
+     * Times at which the closed outages started, in ascending order
+     */
+    private final long[] m_lostTimes;
+
+    /**
+     * Times at which the closed outages ended
+     */
+    private final long[] m_regainedTimes;
+
+    /**
+     * m_downTimeSums[i] is the total duration of the first i closed outages
+     */
+    private final long[] m_downTimeSums;
+
+    /**
+     * Time at which the open outage started, or -1 if the service is up
+     */
+    private final long m_openSince;
+
+    private RTCNodeSvcTimes(long[] lostTimes, long[] regainedTimes, long openSince) {
+        m_lostTimes = lostTimes;
+        m_regainedTimes = regainedTimes;
+        m_openSince = openSince;
+
+        m_downTimeSums = new long[lostTimes.length + 1];
+        for (int i = 0; i < lostTimes.length; i++) {
+            m_downTimeSums[i + 1] = m_downTimeSums[i] + (regainedTimes[i] - lostTimes[i]);
+        }
+    }
+
+    /**
+     * Returns a snapshot with an outage that started at the given time. If an outage
+     * is already open, the service has not been regained since, so this snapshot is
+     * returned unchanged.
+     *
+     * @param lostTime
+     *            the time at which service was lost
+     * @param expiry
+     *            closed outages that ended before this time are dropped
+     */
+    public RTCNodeSvcTimes lost(long lostTime, long expiry) {
+        if (isDown()) {
+            return this;
+        }
+        return withClosedOutages(m_lostTimes, m_regainedTimes, lostTime, expiry);
+    }
+
+    /**
+     * Returns a snapshot where the open outage ended at the given time, or this
+     * snapshot if no outage is open.
+     *
+     * @param regainedTime
+     *            the time at which service was regained
+     * @param expiry
+     *            closed outages that ended before this time are dropped
+     */
+    public RTCNodeSvcTimes regained(long regainedTime, long expiry) {
+        if (!isDown()) {
+            return this;
+        }
+        if (regainedTime < m_openSince) {
+            throw new IllegalArgumentException("Cannot set outage end time to value less than outage start time: " + regainedTime + " < " + m_openSince);
+        }
+        final int n = m_lostTimes.length;
+        final long[] lostTimes = Arrays.copyOf(m_lostTimes, n + 1);
+        final long[] regainedTimes = Arrays.copyOf(m_regainedTimes, n + 1);
+        lostTimes[n] = m_openSince;
+        regainedTimes[n] = regainedTime;
+        return withClosedOutages(lostTimes, regainedTimes, -1, expiry);
+    }
+
+    /**
+     * Returns a snapshot with an outage read from the database added to it.
+     *
+     * @param lostTime
+     *            time at which service was lost
+     * @param regainedTime
+     *            time at which service was regained, or a value less than or
+     *            equal to zero if the outage is still open
+     * @param expiry
+     *            closed outages that ended before this time are dropped
+     */
+    public RTCNodeSvcTimes withOutage(long lostTime, long regainedTime, long expiry) {
+        if (regainedTime <= 0) {
+            return lost(lostTime, expiry);
+        }
+        if (regainedTime < lostTime) {
+            LOG.warn("Rejecting service time pair since regained time {} is less than lost time {}", regainedTime, lostTime);
+            return this;
+        }
+
+        // Outages are usually read in order, but keep the closed outages sorted regardless
+        final int n = m_lostTimes.length;
+        int index = n;
+        while (index > 0 && m_lostTimes[index - 1] > lostTime) {
+            index--;
+        }
+        final long[] lostTimes = new long[n + 1];
+        final long[] regainedTimes = new long[n + 1];
+        System.arraycopy(m_lostTimes, 0, lostTimes, 0, index);
+        System.arraycopy(m_regainedTimes, 0, regainedTimes, 0, index);
+        lostTimes[index] = lostTime;
+        regainedTimes[index] = regainedTime;
+        System.arraycopy(m_lostTimes, index, lostTimes, index + 1, n - index);
+        System.arraycopy(m_regainedTimes, index, regainedTimes, index + 1, n - index);
+        return withClosedOutages(lostTimes, regainedTimes, m_openSince, expiry);
+    }
+
+    private static RTCNodeSvcTimes withClosedOutages(long[] lostTimes, long[] regainedTimes, long openSince, long expiry) {
+        int expired = 0;
+        while (expired < regainedTimes.length && regainedTimes[expired] < expiry) {
+            expired++;
+        }
+        if (expired > 0) {
+            lostTimes = Arrays.copyOfRange(lostTimes, expired, lostTimes.length);
+            regainedTimes = Arrays.copyOfRange(regainedTimes, expired, regainedTimes.length);
+        }
+        return new RTCNodeSvcTimes(lostTimes, regainedTimes, openSince);
+    }
+
+    /**
+     * Return if the service is currently down.
+     *
+     * @return true if an outage is open
+     */
+    public boolean isDown() {
+        return m_openSince >= 0;
+    }
+
+    /**
+     * Calculate the total down time for the last 'rollingWindow' time starting
+     * at 'curTime'. Outages that are still open, or that end after 'curTime',
+     * are counted up to 'curTime'.
+     *
+     * @param curTime
+     *            the current time from which the down time is to be calculated
+     * @param rollingWindow
+     *            the last window for which the downtime is to be calculated
+     * @return total down time for all outages for this service
+     */
+    public long getDownTime(long curTime, long rollingWindow) {
+        final long startTime = curTime - rollingWindow;
+
+        long downTime = 0;
+
+        // closed outages [first, last) overlap the window, since they are sorted by both lost and regained time
+        final int first = firstIndexAbove(m_regainedTimes, startTime);
+        final int last = firstIndexAtOrAbove(m_lostTimes, curTime);
+        if (first < last) {
+            downTime = m_downTimeSums[last] - m_downTimeSums[first];
+            downTime -= Math.max(0, startTime - m_lostTimes[first]);
+            downTime -= Math.max(0, m_regainedTimes[last - 1] - curTime);
+        }
+
+        if (m_openSince >= 0 && m_openSince < curTime) {
+            downTime += curTime - Math.max(m_openSince, startTime);
+        }
+
+        return downTime;
+    }
+
+    private static int firstIndexAbove(long[] values, long key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (values[mid] > key) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private static int firstIndexAtOrAbove(long[] values, long key) {
+        return firstIndexAbove(values, key - 1);
+    }
+
+    /**
+     * @return the number of outages, including the open one
+     */
+    public int size() {
+        return m_lostTimes.length + (isDown() ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "RTCNodeSvcTimes[closed=" + m_lostTimes.length + ", openSince=" + m_openSince + "]";
+    }
+}
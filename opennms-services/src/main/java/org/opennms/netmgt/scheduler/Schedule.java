@@ -142,6 +142,17 @@ public class Schedule {
         m_schedulable.run();
     }
 
+    /**
+     * Runs the given task once on the timer of this schedule, after the
+     * given delay, without affecting the schedule itself.
+     *
+     * @param delay a long.
+     * @param task a {@link org.opennms.netmgt.scheduler.ReadyRunnable} object.
+     */
+    public void submit(long delay, ReadyRunnable task) {
+        m_timer.schedule(delay, task);
+    }
+
     /**
      * <p>adjustSchedule</p>
      */
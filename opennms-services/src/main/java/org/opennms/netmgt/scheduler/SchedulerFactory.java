@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Creates the {@link Scheduler} used by a daemon.
+ *
+ * The implementation is selected with the <code>org.opennms.&lt;name&gt;.scheduler</code>
+ * system property, where &lt;name&gt; is the lower-cased name given to the scheduler:
+ * <code>timingwheel</code> selects the {@link TimingWheelScheduler}, and anything else
+ * the {@link LegacyScheduler}.
+ */
+public abstract class SchedulerFactory {
+
+    public static final String TIMING_WHEEL = "timingwheel";
+
+    public static Scheduler createScheduler(final String name, final int maxSize) {
+        if (TIMING_WHEEL.equalsIgnoreCase(System.getProperty("org.opennms." + name.toLowerCase() + ".scheduler"))) {
+            return new TimingWheelScheduler(name, maxSize);
+        }
+        return new LegacyScheduler(name, maxSize);
+    }
+
+    /**
+     * Returns the thread pool of the given scheduler, or null if it does not expose one.
+     */
+    public static ExecutorService getRunner(final Scheduler scheduler) {
+        if (scheduler instanceof LegacyScheduler) {
+            return ((LegacyScheduler) scheduler).getRunner();
+        } else if (scheduler instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) scheduler).getRunner();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,522 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.scheduler;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.fiber.PausableFiber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * A {@link Scheduler} backed by a hierarchical timing wheel.
+ *
+ * The wheel has {@value #LEVELS} levels of {@value #WHEEL_SIZE} slots: the slots of the
+ * first level are one millisecond wide, and each slot of the following levels covers
+ * a full turn of the level below it. Scheduling a runnable files it in the slot of its
+ * deadline, and it is moved down a level each time the wheel below it completes a turn,
+ * so both inserting and expiring a runnable take constant time, regardless of the number
+ * of runnables that are scheduled.
+ *
+ * The wheel is only ever touched by the dispatcher thread: {@link #schedule(long, ReadyRunnable)}
+ * hands the runnable over through a lock-free queue, and only wakes the dispatcher up when
+ * the new deadline is earlier than the one it is sleeping until. When nothing is due, the
+ * dispatcher sleeps until the next occupied slot instead of polling.
+ *
+ * Runnables that are due but not {@link ReadyRunnable#isReady() ready} are checked again
+ * after {@link #NOT_READY_DELAY_MS} milliseconds.
+ *
+ * The delay between the deadline of a runnable and the time it is handed to the thread pool
+ * ({@code dispatchLag}), and the time it starts running ({@code startLag}), are tracked in
+ * histograms which are exposed over JMX while the scheduler is running.
+ */
+public class TimingWheelScheduler implements Runnable, PausableFiber, Scheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelScheduler.class);
+
+    private static final int WHEEL_BITS = 6;
+
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private static final int LEVELS = 6;
+
+    /**
+     * The longest delay the wheel can represent, a little over two years. Runnables
+     * scheduled further out are filed in the last level and moved down when they get closer.
+     */
+    private static final long MAX_DELAY = (1L << (WHEEL_BITS * LEVELS)) - 1;
+
+    /**
+     * The delay after which a runnable that was due but not ready is checked again.
+     */
+    public static final long NOT_READY_DELAY_MS = Long.getLong("org.opennms.scheduler.timingwheel.notReadyDelayMs", 100L);
+
+    private final String m_name;
+
+    /**
+     * The pool of threads that are used to executed the runnable instances
+     * scheduled by the class' instance.
+     */
+    private final ExecutorService m_runner;
+
+    /**
+     * Runnables that were scheduled, but not yet filed in the wheel by the dispatcher.
+     */
+    private final Queue<Timeout> m_incoming = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The slots of the wheel, as linked lists of {@link Timeout}s. Only accessed by the dispatcher.
+     */
+    private final Timeout[][] m_heads = new Timeout[LEVELS][WHEEL_SIZE];
+
+    private final Timeout[][] m_tails = new Timeout[LEVELS][WHEEL_SIZE];
+
+    private final int[] m_levelCounts = new int[LEVELS];
+
+    /**
+     * The next tick, in milliseconds since the epoch, that the dispatcher has to process.
+     */
+    private long m_tick;
+
+    /**
+     * The time until which the dispatcher is sleeping.
+     */
+    private volatile long m_wakeupAt = Long.MAX_VALUE;
+
+    private final AtomicInteger m_scheduled = new AtomicInteger();
+
+    private volatile long m_numTasksExecuted = 0;
+
+    private volatile int m_status;
+
+    private volatile Thread m_worker;
+
+    private final MetricRegistry m_metrics;
+
+    private final Histogram m_dispatchLag;
+
+    private final Histogram m_startLag;
+
+    private JmxReporter m_reporter;
+
+    /**
+     * A runnable filed in the wheel.
+     */
+    private class Timeout implements Runnable {
+        private final ReadyRunnable m_runnable;
+        private long m_deadline;
+        private Timeout m_next;
+
+        public Timeout(ReadyRunnable runnable, long deadline) {
+            m_runnable = runnable;
+            m_deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            m_startLag.update(System.currentTimeMillis() - m_deadline);
+            m_runnable.run();
+        }
+
+        @Override
+        public String toString() {
+            return m_runnable + " (due at " + m_deadline + ")";
+        }
+    }
+
+    /**
+     * Constructs a new instance of the scheduler, with its own metric registry.
+     *
+     * @param parent
+     *            String prepended to the names of the threads and metrics
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize) {
+        this(parent, maxSize, new MetricRegistry());
+    }
+
+    /**
+     * Constructs a new instance of the scheduler.
+     *
+     * @param parent
+     *            String prepended to the names of the threads and metrics
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     * @param metrics
+     *            The registry in which the dispatch lag histograms are registered.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize, final MetricRegistry metrics) {
+        m_name = parent + "-TimingWheelScheduler";
+        m_status = START_PENDING;
+        m_runner = Executors.newFixedThreadPool(maxSize, new LogPreservingThreadFactory(parent, maxSize));
+        m_metrics = Objects.requireNonNull(metrics);
+        m_dispatchLag = metrics.histogram(MetricRegistry.name(parent, "dispatchLag"));
+        m_startLag = metrics.histogram(MetricRegistry.name(parent, "startLag"));
+        metrics.register(MetricRegistry.name(parent, "scheduled"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return m_scheduled.get();
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void schedule(final long interval, final ReadyRunnable runnable) {
+        final Timeout timeout = new Timeout(runnable, getCurrentTime() + Math.max(0, interval));
+        m_scheduled.incrementAndGet();
+        m_incoming.add(timeout);
+        if (timeout.m_deadline < m_wakeupAt) {
+            final Thread worker = m_worker;
+            if (worker != null) {
+                LockSupport.unpark(worker);
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void start() {
+        Assert.state(m_worker == null, "The fiber has already run or is running");
+
+        m_reporter = JmxReporter.forRegistry(m_metrics).inDomain(getClass().getPackage().getName()).build();
+        m_reporter.start();
+
+        m_worker = new Thread(this, getName());
+        m_worker.start();
+        m_status = STARTING;
+
+        LOG.info("start: scheduler started");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void stop() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+
+        m_status = STOP_PENDING;
+        m_worker.interrupt();
+        m_runner.shutdown();
+        m_reporter.stop();
+
+        LOG.info("stop: scheduler stopped");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void pause() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == PAUSED) {
+            return;
+        }
+
+        m_status = PAUSE_PENDING;
+        LockSupport.unpark(m_worker);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void resume() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == RUNNING) {
+            return;
+        }
+
+        m_status = RESUME_PENDING;
+        notifyAll();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized int getStatus() {
+        if (m_worker != null && m_worker.isAlive() == false) {
+            m_status = STOPPED;
+        }
+        return m_status;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+        return m_name;
+    }
+
+    /**
+     * Returns total number of runnables currently scheduled.
+     *
+     * @return the number of runnables waiting for their deadline
+     */
+    public int getScheduled() {
+        return m_scheduled.get();
+    }
+
+    /**
+     * Returns the pool of threads that are used to executed the runnable
+     * instances scheduled by the class' instance.
+     *
+     * @return thread pool
+     */
+    public ExecutorService getRunner() {
+        return m_runner;
+    }
+
+    public MetricRegistry getMetricRegistry() {
+        return m_metrics;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNumTasksExecuted() {
+        return m_numTasksExecuted;
+    }
+
+    /**
+     * The main method of the scheduler. This method files the scheduled runnables
+     * in the wheel, and hands them to the thread pool once they are due.
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            m_status = RUNNING;
+        }
+
+        LOG.debug("run: scheduler running");
+
+        m_tick = System.currentTimeMillis();
+        for (;;) {
+            synchronized (this) {
+                if (m_status != RUNNING && m_status != PAUSED && m_status != PAUSE_PENDING && m_status != RESUME_PENDING) {
+                    LOG.debug("run: status = {}, time to exit", m_status);
+                    break;
+                }
+
+                // if paused or pause pending then block
+                while (m_status == PAUSE_PENDING || m_status == PAUSED) {
+                    if (m_status == PAUSE_PENDING) {
+                        LOG.debug("run: pausing.");
+                    }
+                    m_status = PAUSED;
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        // exit
+                        break;
+                    }
+                }
+
+                if (m_status == RESUME_PENDING) {
+                    LOG.debug("run: resuming.");
+                    m_status = RUNNING;
+                }
+
+                if (m_status != RUNNING) {
+                    continue;
+                }
+            }
+
+            drainIncoming();
+            try {
+                advance(System.currentTimeMillis());
+            } catch (RejectedExecutionException e) {
+                if (m_runner.isShutdown()) {
+                    continue;
+                }
+                throw new UndeclaredThrowableException(e);
+            }
+
+            // Publish the time we intend to wake up at before checking for new runnables one last
+            // time, so that schedule() either sees it and wakes us up, or we see the new runnable
+            final long wakeupAt = nextWakeup();
+            m_wakeupAt = wakeupAt;
+            if (m_incoming.isEmpty()) {
+                if (wakeupAt == Long.MAX_VALUE) {
+                    LockSupport.park(this);
+                } else {
+                    final long delay = wakeupAt - System.currentTimeMillis();
+                    if (delay > 0) {
+                        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(delay));
+                    }
+                }
+            }
+            m_wakeupAt = Long.MIN_VALUE;
+        }
+
+        LOG.debug("run: scheduler exiting, state = STOPPED");
+        synchronized (this) {
+            m_status = STOPPED;
+        }
+    }
+
+    private void drainIncoming() {
+        Timeout timeout;
+        while ((timeout = m_incoming.poll()) != null) {
+            insert(timeout);
+        }
+    }
+
+    /**
+     * Processes every tick up to, and including, the given time.
+     */
+    private void advance(final long now) {
+        while (m_tick <= now) {
+            // At the start of each turn of a level, move the runnables of the
+            // next slot of the level above it down into it
+            int level = 0;
+            while (level < LEVELS - 1 && ((m_tick >>> (WHEEL_BITS * level)) & WHEEL_MASK) == 0) {
+                level++;
+                cascade(level, (int)((m_tick >>> (WHEEL_BITS * level)) & WHEEL_MASK));
+            }
+
+            expire((int)(m_tick & WHEEL_MASK), now);
+            m_tick++;
+
+            // Nothing can be due before the next turn of the first level when it is empty
+            if (m_levelCounts[0] == 0 && (m_tick & WHEEL_MASK) != 0) {
+                m_tick = Math.min((m_tick | WHEEL_MASK) + 1, now + 1);
+            }
+        }
+    }
+
+    private void insert(final Timeout timeout) {
+        final long delay = Math.min(timeout.m_deadline - m_tick, MAX_DELAY);
+        int level = 0;
+        int slot;
+        if (delay < 0) {
+            slot = (int)(m_tick & WHEEL_MASK);
+        } else {
+            while (level < LEVELS - 1 && delay >= (1L << (WHEEL_BITS * (level + 1)))) {
+                level++;
+            }
+            slot = (int)(((m_tick + delay) >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        }
+
+        timeout.m_next = null;
+        if (m_tails[level][slot] == null) {
+            m_heads[level][slot] = timeout;
+        } else {
+            m_tails[level][slot].m_next = timeout;
+        }
+        m_tails[level][slot] = timeout;
+        m_levelCounts[level]++;
+    }
+
+    private Timeout detach(final int level, final int slot) {
+        final Timeout head = m_heads[level][slot];
+        m_heads[level][slot] = null;
+        m_tails[level][slot] = null;
+        return head;
+    }
+
+    private void cascade(final int level, final int slot) {
+        Timeout timeout = detach(level, slot);
+        while (timeout != null) {
+            final Timeout next = timeout.m_next;
+            m_levelCounts[level]--;
+            insert(timeout);
+            timeout = next;
+        }
+    }
+
+    private void expire(final int slot, final long now) {
+        Timeout timeout = detach(0, slot);
+        while (timeout != null) {
+            final Timeout next = timeout.m_next;
+            m_levelCounts[0]--;
+            if (timeout.m_runnable.isReady()) {
+                m_dispatchLag.update(now - timeout.m_deadline);
+                m_scheduled.decrementAndGet();
+                m_runner.execute(timeout);
+                m_numTasksExecuted++;
+            } else {
+                LOG.debug("expire: {} is not ready, checking again in {}ms", timeout.m_runnable, NOT_READY_DELAY_MS);
+                timeout.m_deadline = now + NOT_READY_DELAY_MS;
+                insert(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * Returns the first tick at which the wheel has work to do, or {@link Long#MAX_VALUE}
+     * if it is empty.
+     */
+    private long nextWakeup() {
+        long next = Long.MAX_VALUE;
+        for (int level = 0; level < LEVELS; level++) {
+            if (m_levelCounts[level] == 0) {
+                continue;
+            }
+            // The slots of this level are visited once per turn of the level below it,
+            // and the slot of the current turn may hold runnables for the next lap
+            final int shift = WHEEL_BITS * level;
+            final long turn = m_tick >>> shift;
+            for (int i = 0; i <= WHEEL_SIZE; i++) {
+                final long tick = (turn + i) << shift;
+                if (tick >= next) {
+                    break;
+                }
+                if (tick >= m_tick && m_heads[level][(int)((turn + i) & WHEEL_MASK)] != null) {
+                    next = tick;
+                    break;
+                }
+            }
+        }
+        return next;
+    }
+}
@@ -34,7 +34,6 @@ import java.io.File;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.opennms.netmgt.collectd.AliasedResource;
 import org.opennms.netmgt.collectd.IfInfo;
@@ -78,40 +77,15 @@ public class CollectionResourceWrapper {
     private final Map<String, CollectionAttribute> m_attributes;
     private final ResourceStorageDao m_resourceStorageDao;
 
-    /**
-     * Keeps track of both the Double value, and when it was collected, for the static cache of attributes
-     * 
-     * This is necessary for the *correct* calculation of Counter rates, across variable collection times and possible
-     * collection failures (see NMS-4244)
+    /*
+     * Holds last values for counter attributes (in order to calculate delta)
      */
-    public static class CacheEntry {
-        private final Date m_timestamp;
-        private final Double m_value;
-
-        public CacheEntry(final Date timestamp, final Double value) {
-            if (timestamp == null) {
-                throw new IllegalArgumentException("Illegal null timestamp in cache value");
-            } else if (value == null) {
-                throw new IllegalArgumentException("Illegal null value in cache value");
-            }
-            this.m_timestamp = timestamp;
-            this.m_value = value;
-        }
-
-        public Date getTimestamp() {
-            return m_timestamp;
-        }
+    static final CounterHistory s_counters = new CounterHistory();
 
-        public Double getValue() {
-            return m_value;
-        }
+    static {
+        s_counters.registerMetrics(ThresholdingMetrics.getMetricRegistry(), "counters");
     }
 
-    /*
-     * Holds last values for counter attributes (in order to calculate delta)
-     */
-    static final ConcurrentHashMap<String, CacheEntry> s_cache = new ConcurrentHashMap<String,CacheEntry>();
-    
     /*
      * To avoid update static cache on every call of getAttributeValue.
      * In some cases, the same DS could be needed in many thresholds definitions for same resource.
@@ -123,6 +97,11 @@ public class CollectionResourceWrapper {
      * Holds interface ifInfo data for interface resource only. This avoid multiple calls to database for same resource.
      */
     private final Map<String, String> m_ifInfo = new HashMap<String,String>();
+
+    /*
+     * Identifies the resource in the counter history, built on first use.
+     */
+    private String m_counterResourceId;
     
     /*
 	 * Holds the timestamp of the collection being thresholded, for the calculation of counter rates
@@ -403,77 +382,37 @@ public class CollectionResourceWrapper {
             LOG.info("getAttributeValue: can't find numeric value for {} on {}", ds, m_resource);
             return null;
         }
-        // Generating a unique ID for the node/resourceType/resource/metric combination.
-        String id =  "node[" + m_nodeId + "].resourceType[" + m_resource.getResourceTypeName() + "].instance[" + m_resource.getInterfaceLabel() + "].metric[" + ds + "]";
         Double current = numValue.doubleValue();
         if (!AttributeType.COUNTER.equals(m_attributes.get(ds).getType())) {
-            LOG.debug("getAttributeValue: id={}, value= {}", id, current);
+            LOG.debug("getAttributeValue: id={}.metric[{}], value= {}", getCounterResourceId(), ds, current);
             return current;
         } else {
-            return getCounterValue(id, current);
+            return getCounterValue(ds, current);
+        }
+    }
+
+    /*
+     * Generating a unique ID for the node/resourceType/resource combination.
+     */
+    private String getCounterResourceId() {
+        if (m_counterResourceId == null) {
+            m_counterResourceId = "node[" + m_nodeId + "].resourceType[" + m_resource.getResourceTypeName() + "].instance[" + m_resource.getInterfaceLabel() + "]";
         }
+        return m_counterResourceId;
     }
 
     /*
      * This will return the rate based on configured collection step
      */
-    private Double getCounterValue(String id, Double current) {
+    private Double getCounterValue(String ds, Double current) {
         synchronized (m_localCache) {
-
-        if (m_localCache.containsKey(id) == false) {
-            // Atomically replace the CacheEntry with the new value
-            // If the sysUpTime was changed, the "last" value must be null (to force update the cache).
-            CacheEntry last = m_counterReset ? null : s_cache.put(id, new CacheEntry(m_collectionTimestamp, current));
-            LOG.debug("getCounterValue: id={}, last={}, current={}", id, (last==null ? last : last.m_value +"@"+ last.m_timestamp), current);
-            if (last == null) {
-                m_localCache.put(id, Double.NaN);
-                if (m_counterReset) {
-                    s_cache.put(id, new CacheEntry(m_collectionTimestamp, current));
-                }
-                LOG.info("getCounterValue: unknown last value for {}, ignoring current", id);
-            } else {                
-                Double delta = current.doubleValue() - last.m_value.doubleValue();
-                // wrapped counter handling(negative delta), rrd style
-                if (delta < 0) {
-                    double newDelta = delta.doubleValue();
-                    // 2-phase adjustment method
-                    // try 32-bit adjustment
-                    newDelta += Math.pow(2, 32);
-                    if (newDelta < 0) {
-                        // try 64-bit adjustment
-                        newDelta += Math.pow(2, 64) - Math.pow(2, 32);
-                    }
-                    LOG.info("getCounterValue: {}(counter) wrapped counter adjusted last={}@{}, current={}, olddelta={}, newdelta={}", id, last.m_value, last.m_timestamp, current, delta, newDelta);
-                    delta = newDelta;
-                }
-                // Get the interval between when this current collection was taken, and the last time this
-                // value was collected (and had a counter rate calculated for it).
-                // If the interval is zero, than the current rate must returned as 0.0 since there can be 
-                // no delta across a time interval of zero.
-                long interval = ( m_collectionTimestamp.getTime() - last.m_timestamp.getTime() ) / 1000;
-                if (interval > 0) {
-                    final Double value = (delta/interval);
-                    LOG.debug("getCounterValue: id={}, value={}, delta={}, interval={}", id, value, delta, interval);
-                    m_localCache.put(id, value);
-                } else {
-                    LOG.info("getCounterValue: invalid zero-length rate interval for {}, returning rate of zero", id);
-                    m_localCache.put(id, 0.0);
-                    // Restore the original value inside the static cache
-                    s_cache.put(id, last);
-                }
+            Double value = m_localCache.get(ds);
+            if (value == null) {
+                value = s_counters.getRate(getCounterResourceId(), ds, m_collectionTimestamp.getTime(), current.doubleValue(), m_counterReset);
+                m_localCache.put(ds, value);
             }
-        }
-        Double value = m_localCache.get(id);
-        // This is just a sanity check, we should never have a value of null for the value at this point
-        if (value == null) {
-            LOG.error("getCounterValue: value was not calculated correctly for {}, using NaN", id);
-            m_localCache.put(id, Double.NaN);
-            return Double.NaN;
-        } else {
             return value;
         }
-
-        }
     }
 
     /**
@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.threshd;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * Holds the last sample of every counter attribute, in order to calculate rates across
+ * collection cycles (see NMS-4244).
+ *
+ * Samples are grouped by resource and stored as primitives, which avoids allocating a key and
+ * an entry per metric. The number of resources is bounded, and resources that have not been
+ * thresholded for a while (i.e. deleted nodes or interfaces) are evicted.
+ */
+public class CounterHistory {
+    private static final Logger LOG = LoggerFactory.getLogger(CounterHistory.class);
+
+    public static final long DEFAULT_MAX_RESOURCES = Long.getLong("org.opennms.threshd.counters.maxResources", 2000000L);
+
+    public static final long DEFAULT_EXPIRE_AFTER_SECONDS = Long.getLong("org.opennms.threshd.counters.expireAfterSeconds", TimeUnit.DAYS.toSeconds(1));
+
+    /**
+     * Rough estimate of the heap used by a resource, excluding its samples:
+     * the cache entry, the {@link ResourceCounters} and the headers of its arrays.
+     */
+    private static final long BYTES_PER_RESOURCE = 200;
+
+    /**
+     * Rough estimate of the heap used by a single sample: a reference to the
+     * interned metric name, a timestamp and a value.
+     */
+    private static final long BYTES_PER_SAMPLE = 20;
+
+    private static final Interner<String> s_ids = Interners.newWeakInterner();
+
+    private final Cache<String, ResourceCounters> m_resources;
+
+    private final LongAdder m_samples = new LongAdder();
+
+    public CounterHistory() {
+        this(DEFAULT_MAX_RESOURCES, DEFAULT_EXPIRE_AFTER_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public CounterHistory(long maxResources, long expireAfter, TimeUnit unit) {
+        m_resources = CacheBuilder.newBuilder()
+                .maximumSize(maxResources)
+                .expireAfterAccess(expireAfter, unit)
+                .recordStats()
+                .<String, ResourceCounters>removalListener(notification -> {
+                    m_samples.add(-notification.getValue().size());
+                })
+                .build();
+    }
+
+    /**
+     * Records the given sample and calculates the rate of change (per second) against
+     * the previous sample of the same metric.
+     *
+     * @param resourceId the id of the resource
+     * @param metric the name of the counter attribute
+     * @param timestamp when the sample was collected, in milliseconds
+     * @param value the counter value
+     * @param reset true if the counters of the agent were reset since the previous sample
+     * @return the rate, or NaN if there is no previous sample to compare against
+     */
+    public double getRate(String resourceId, String metric, long timestamp, double value, boolean reset) {
+        ResourceCounters counters = m_resources.getIfPresent(resourceId);
+        if (counters == null) {
+            counters = m_resources.asMap().computeIfAbsent(s_ids.intern(resourceId), id -> new ResourceCounters());
+        }
+        return counters.getRate(resourceId, s_ids.intern(metric), timestamp, value, reset);
+    }
+
+    /**
+     * @return the last value recorded for the given metric, or null if there is none
+     */
+    public Double getLastValue(String resourceId, String metric) {
+        final ResourceCounters counters = m_resources.getIfPresent(resourceId);
+        return counters != null ? counters.getLastValue(metric) : null;
+    }
+
+    public void clear() {
+        m_resources.invalidateAll();
+    }
+
+    public long getResourceCount() {
+        return m_resources.size();
+    }
+
+    public long getSampleCount() {
+        return m_samples.sum();
+    }
+
+    public long getEstimatedBytes() {
+        return getResourceCount() * BYTES_PER_RESOURCE + getSampleCount() * BYTES_PER_SAMPLE;
+    }
+
+    public void registerMetrics(MetricRegistry metrics, String prefix) {
+        metrics.register(MetricRegistry.name(prefix, "resources"), (Gauge<Long>) this::getResourceCount);
+        metrics.register(MetricRegistry.name(prefix, "samples"), (Gauge<Long>) this::getSampleCount);
+        metrics.register(MetricRegistry.name(prefix, "estimatedBytes"), (Gauge<Long>) this::getEstimatedBytes);
+        metrics.register(MetricRegistry.name(prefix, "evictions"), (Gauge<Long>) () -> m_resources.stats().evictionCount());
+    }
+
+    private class ResourceCounters {
+        private String[] m_metrics = new String[2];
+        private long[] m_timestamps = new long[2];
+        private double[] m_values = new double[2];
+        private int m_size = 0;
+
+        private synchronized double getRate(String resourceId, String metric, long timestamp, double current, boolean reset) {
+            final int i = indexOf(metric);
+            if (i < 0) {
+                add(metric, timestamp, current);
+                LOG.info("getRate: unknown last value for {}.metric[{}], ignoring current", resourceId, metric);
+                return Double.NaN;
+            } else if (reset) {
+                // If the sysUpTime was changed, the last value can't be used
+                m_timestamps[i] = timestamp;
+                m_values[i] = current;
+                LOG.info("getRate: counters were reset for {}.metric[{}], ignoring current", resourceId, metric);
+                return Double.NaN;
+            }
+
+            final double last = m_values[i];
+            final long lastTimestamp = m_timestamps[i];
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("getRate: id={}.metric[{}], last={}@{}, current={}", resourceId, metric, last, lastTimestamp, current);
+            }
+
+            double delta = current - last;
+            // wrapped counter handling(negative delta), rrd style
+            if (delta < 0) {
+                double newDelta = delta;
+                // 2-phase adjustment method
+                // try 32-bit adjustment
+                newDelta += Math.pow(2, 32);
+                if (newDelta < 0) {
+                    // try 64-bit adjustment
+                    newDelta += Math.pow(2, 64) - Math.pow(2, 32);
+                }
+                LOG.info("getRate: {}.metric[{}](counter) wrapped counter adjusted last={}@{}, current={}, olddelta={}, newdelta={}", resourceId, metric, last, lastTimestamp, current, delta, newDelta);
+                delta = newDelta;
+            }
+
+            // Get the interval between when this current collection was taken, and the last time this
+            // value was collected (and had a counter rate calculated for it).
+            // If the interval is zero, than the current rate must returned as 0.0 since there can be
+            // no delta across a time interval of zero.
+            final long interval = (timestamp - lastTimestamp) / 1000;
+            if (interval > 0) {
+                m_timestamps[i] = timestamp;
+                m_values[i] = current;
+                final double rate = delta / interval;
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("getRate: id={}.metric[{}], value={}, delta={}, interval={}", resourceId, metric, rate, delta, interval);
+                }
+                return rate;
+            } else {
+                // Keep the original sample
+                LOG.info("getRate: invalid zero-length rate interval for {}.metric[{}], returning rate of zero", resourceId, metric);
+                return 0.0;
+            }
+        }
+
+        private synchronized Double getLastValue(String metric) {
+            final int i = indexOf(metric);
+            return i < 0 ? null : m_values[i];
+        }
+
+        private synchronized int size() {
+            return m_size;
+        }
+
+        private int indexOf(String metric) {
+            for (int i = 0; i < m_size; i++) {
+                // Metric names are interned, but fall back to equals() for lookups
+                if (m_metrics[i] == metric || m_metrics[i].equals(metric)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void add(String metric, long timestamp, double value) {
+            if (m_size == m_metrics.length) {
+                final int capacity = m_size * 2;
+                m_metrics = Arrays.copyOf(m_metrics, capacity);
+                m_timestamps = Arrays.copyOf(m_timestamps, capacity);
+                m_values = Arrays.copyOf(m_values, capacity);
+            }
+            m_metrics[m_size] = metric;
+            m_timestamps[m_size] = timestamp;
+            m_values[m_size] = value;
+            m_size++;
+            m_samples.increment();
+        }
+    }
+}
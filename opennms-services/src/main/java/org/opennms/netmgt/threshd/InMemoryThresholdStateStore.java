@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.threshd;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the threshold states on the heap, where they are lost on restart.
+ */
+public class InMemoryThresholdStateStore implements ThresholdStateStore {
+
+    private static final class SavedState {
+        private final double[] m_state;
+        private final long m_timestamp;
+
+        private SavedState(double[] state, long timestamp) {
+            m_state = state;
+            m_timestamp = timestamp;
+        }
+    }
+
+    private final Map<String, SavedState> m_states = new ConcurrentHashMap<>();
+
+    @Override
+    public double[] load(String key, long notBefore) {
+        final SavedState saved = m_states.get(key);
+        return saved != null && saved.m_timestamp >= notBefore ? saved.m_state : null;
+    }
+
+    @Override
+    public void save(String key, double[] state, long timestamp) {
+        m_states.put(key, new SavedState(state, timestamp));
+    }
+
+    @Override
+    public void flush() {
+        // States are never deferred
+    }
+
+    @Override
+    public void close() {
+        m_states.clear();
+    }
+
+    public int size() {
+        return m_states.size();
+    }
+}
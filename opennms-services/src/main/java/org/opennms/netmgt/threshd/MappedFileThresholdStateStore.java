@@ -0,0 +1,423 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.threshd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A {@link ThresholdStateStore} backed by an append-only, memory-mapped file.
+ *
+ * <p>Saved states are queued in memory and appended to the file in batches by a
+ * background thread, either periodically or as soon as a full batch is pending.
+ * Every record carries the hash of its key, the time it was saved at and a checksum,
+ * so on startup only the
+ * offsets of the records are indexed and the values are decoded when a resource
+ * first asks for them. A torn record at the end of the file, left behind by a crash
+ * during a flush, ends the scan and only costs the states of that batch.</p>
+ *
+ * <p>Since the file is only ever appended to, superseded records are reclaimed by
+ * compacting the file when the live records account for less than half of it and
+ * the mapping would otherwise have to grow. The live records are copied to a new
+ * file which then atomically replaces the original, so a crash during compaction
+ * leaves the original file untouched.</p>
+ */
+public class MappedFileThresholdStateStore implements ThresholdStateStore {
+    private static final Logger LOG = LoggerFactory.getLogger(MappedFileThresholdStateStore.class);
+
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = Long.getLong("org.opennms.threshd.stateStore.flushInterval", 5000L);
+    public static final int DEFAULT_BATCH_SIZE = Integer.getInteger("org.opennms.threshd.stateStore.batchSize", 10000);
+
+    private static final int FILE_MAGIC = 0x54485354;
+    private static final int FILE_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_MARKER = 0x52454344;
+    // marker, 128-bit key, timestamp, number of values, checksum
+    private static final int RECORD_OVERHEAD = 4 + 16 + 8 + 4 + 4;
+    private static final int TIMESTAMP_OFFSET = 20;
+    private static final int LENGTH_OFFSET = 28;
+    private static final int VALUES_OFFSET = 32;
+    private static final int MAX_VALUES = 64;
+    private static final int INITIAL_SIZE = 1024 * 1024;
+
+    private static final HashFunction s_hashFunction = Hashing.murmur3_128();
+
+    private static final Timer s_loads = ThresholdingMetrics.getMetricRegistry().timer("states.load");
+    private static final Timer s_flushes = ThresholdingMetrics.getMetricRegistry().timer("states.flush");
+    private static final Histogram s_batchSizes = ThresholdingMetrics.getMetricRegistry().histogram("states.batchSize");
+
+    private final Path m_path;
+    private final Path m_compactionPath;
+    private final int m_batchSize;
+    private final ScheduledExecutorService m_flusher;
+    private final AtomicBoolean m_flushScheduled = new AtomicBoolean(false);
+    private final ConcurrentMap<HashCode, PendingState> m_pending = new ConcurrentHashMap<>();
+
+    // Guarded by this
+    private FileChannel m_channel;
+    private final Map<HashCode, Integer> m_offsets = new HashMap<>();
+    private MappedByteBuffer m_buffer;
+    private int m_end;
+    private int m_liveBytes;
+    private boolean m_closed = false;
+
+    private static final class PendingState {
+        private final double[] m_state;
+        private final long m_timestamp;
+
+        private PendingState(double[] state, long timestamp) {
+            m_state = state;
+            m_timestamp = timestamp;
+        }
+    }
+
+    public MappedFileThresholdStateStore(Path path) throws IOException {
+        this(path, DEFAULT_FLUSH_INTERVAL_MS, DEFAULT_BATCH_SIZE);
+    }
+
+    public MappedFileThresholdStateStore(Path path, long flushIntervalMs, int batchSize) throws IOException {
+        m_path = path;
+        m_compactionPath = path.resolveSibling(path.getFileName() + ".compact");
+        m_batchSize = batchSize;
+
+        final Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        // Left behind by a crash during compaction, the original file is still complete
+        Files.deleteIfExists(m_compactionPath);
+        m_channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final long size = m_channel.size();
+        if (size > Integer.MAX_VALUE) {
+            m_channel.close();
+            throw new IOException("Threshold state file " + path + " is larger than 2GB.");
+        }
+        map(Math.max(INITIAL_SIZE, (int)size));
+
+        if (size >= HEADER_SIZE && m_buffer.getInt(0) == FILE_MAGIC && m_buffer.getInt(4) == FILE_VERSION) {
+            scan();
+        } else {
+            if (size > 0) {
+                LOG.warn("Threshold state file {} has an unknown format, existing states will be discarded.", path);
+            }
+            m_buffer.putInt(0, FILE_MAGIC);
+            m_buffer.putInt(4, FILE_VERSION);
+            m_end = HEADER_SIZE;
+            m_buffer.putInt(m_end, 0);
+            m_buffer.force();
+        }
+        LOG.info("Loaded the index of {} threshold states from {}.", m_offsets.size(), path);
+
+        m_flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("threshd-state-flusher")
+                .setDaemon(true)
+                .build());
+        m_flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double[] load(String key, long notBefore) {
+        final Timer.Context context = s_loads.time();
+        try {
+            final HashCode hash = hash(key);
+            final PendingState pending = m_pending.get(hash);
+            if (pending != null) {
+                return pending.m_timestamp >= notBefore ? pending.m_state : null;
+            }
+            synchronized (this) {
+                final Integer offset = m_offsets.get(hash);
+                if (offset == null || m_buffer.getLong(offset + TIMESTAMP_OFFSET) < notBefore) {
+                    return null;
+                }
+                final double[] state = new double[m_buffer.getInt(offset + LENGTH_OFFSET)];
+                for (int i = 0; i < state.length; i++) {
+                    state[i] = m_buffer.getDouble(offset + VALUES_OFFSET + i * 8);
+                }
+                return state;
+            }
+        } finally {
+            context.stop();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void save(String key, double[] state, long timestamp) {
+        if (state.length > MAX_VALUES) {
+            throw new IllegalArgumentException("Threshold states are limited to " + MAX_VALUES + " values.");
+        }
+        m_pending.put(hash(key), new PendingState(state, timestamp));
+        if (m_pending.size() >= m_batchSize && !m_flusher.isShutdown() && m_flushScheduled.compareAndSet(false, true)) {
+            m_flusher.execute(this::flush);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void flush() {
+        m_flushScheduled.set(false);
+        if (m_closed || m_pending.isEmpty()) {
+            return;
+        }
+        final Timer.Context context = s_flushes.time();
+        try {
+            int written = 0;
+            for (final Entry<HashCode, PendingState> entry : m_pending.entrySet()) {
+                append(entry.getKey(), entry.getValue());
+                // Only drop the entry if it was not replaced while we were writing it
+                m_pending.remove(entry.getKey(), entry.getValue());
+                written++;
+            }
+            m_buffer.force();
+            s_batchSizes.update(written);
+            LOG.debug("Flushed {} threshold states to {}.", written, m_path);
+        } catch (IOException e) {
+            LOG.warn("Failed to flush threshold states to {}, will retry.", m_path, e);
+        } finally {
+            context.stop();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() {
+        m_flusher.shutdown();
+        try {
+            m_flusher.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            flush();
+            m_closed = true;
+            try {
+                m_channel.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close threshold state file {}.", m_path, e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of distinct states stored in the file
+     */
+    public synchronized int size() {
+        return m_offsets.size();
+    }
+
+    /**
+     * @return the number of bytes used by records in the file, including superseded ones
+     */
+    public synchronized int getUsedBytes() {
+        return m_end - HEADER_SIZE;
+    }
+
+    private static HashCode hash(String key) {
+        return s_hashFunction.hashUnencodedChars(key);
+    }
+
+    private void map(int size) throws IOException {
+        m_buffer = m_channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void scan() {
+        final byte[] key = new byte[16];
+        int offset = HEADER_SIZE;
+        while (offset + RECORD_OVERHEAD <= m_buffer.capacity() && m_buffer.getInt(offset) == RECORD_MARKER) {
+            final int length = m_buffer.getInt(offset + LENGTH_OFFSET);
+            if (length < 0 || length > MAX_VALUES || offset + RECORD_OVERHEAD + length * 8 > m_buffer.capacity()
+                    || m_buffer.getInt(offset + VALUES_OFFSET + length * 8) != checksum(offset, length)) {
+                LOG.warn("Ignoring the incomplete record at offset {} of threshold state file {}.", offset, m_path);
+                break;
+            }
+            final ByteBuffer slice = m_buffer.duplicate();
+            slice.position(offset + 4);
+            slice.get(key);
+            track(HashCode.fromBytes(key), offset);
+            offset += RECORD_OVERHEAD + length * 8;
+        }
+        m_end = offset;
+        m_buffer.putInt(m_end, 0);
+    }
+
+    private void append(HashCode hash, PendingState pending) throws IOException {
+        final double[] state = pending.m_state;
+        final int size = RECORD_OVERHEAD + state.length * 8;
+        ensureCapacity(size);
+
+        // Write the marker last so that a partial record is never mistaken for a valid one
+        final int offset = m_end;
+        final ByteBuffer slice = m_buffer.duplicate();
+        slice.position(offset + 4);
+        slice.put(hash.asBytes());
+        slice.putLong(pending.m_timestamp);
+        slice.putInt(state.length);
+        for (double value : state) {
+            slice.putDouble(value);
+        }
+        slice.putInt(checksum(offset, state.length));
+        m_buffer.putInt(offset + size, 0);
+        m_buffer.putInt(offset, RECORD_MARKER);
+
+        m_end += size;
+        track(hash, offset);
+    }
+
+    private void track(HashCode hash, int offset) {
+        final Integer previous = m_offsets.put(hash, offset);
+        if (previous != null) {
+            m_liveBytes -= recordSize(previous);
+        }
+        m_liveBytes += recordSize(offset);
+    }
+
+    private int recordSize(int offset) {
+        return RECORD_OVERHEAD + m_buffer.getInt(offset + LENGTH_OFFSET) * 8;
+    }
+
+    private int checksum(int offset, int length) {
+        final ByteBuffer slice = m_buffer.duplicate();
+        slice.position(offset + 4);
+        slice.limit(offset + VALUES_OFFSET + length * 8);
+        final CRC32 crc = new CRC32();
+        crc.update(slice);
+        return (int)crc.getValue();
+    }
+
+    private void ensureCapacity(int size) throws IOException {
+        // Leave room for the terminator following the last record
+        final long required = (long)m_end + size + 4;
+        if (required <= m_buffer.capacity()) {
+            return;
+        }
+        if (m_liveBytes * 2L < m_end - HEADER_SIZE) {
+            compact();
+            if ((long)m_end + size + 4 <= m_buffer.capacity()) {
+                return;
+            }
+        }
+        long capacity = m_buffer.capacity();
+        while (capacity < (long)m_end + size + 4) {
+            capacity *= 2;
+        }
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException("Threshold state file " + m_path + " cannot grow beyond 2GB.");
+        }
+        LOG.debug("Growing threshold state file {} to {} bytes.", m_path, capacity);
+        m_buffer.force();
+        map((int)capacity);
+    }
+
+    /**
+     * Copies the latest record of every key to a new file, in file order, and
+     * atomically replaces the original file with it once it was forced to disk.
+     */
+    private void compact() throws IOException {
+        final List<Entry<HashCode, Integer>> records = new ArrayList<>(m_offsets.entrySet());
+        records.sort(Entry.comparingByValue());
+
+        final Map<HashCode, Integer> offsets = new HashMap<>(records.size());
+        int offset = HEADER_SIZE;
+        try (FileChannel channel = FileChannel.open(m_compactionPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(FILE_MAGIC).putInt(FILE_VERSION).flip();
+            write(channel, header);
+            for (final Entry<HashCode, Integer> entry : records) {
+                final int source = entry.getValue();
+                final int size = recordSize(source);
+                final ByteBuffer slice = m_buffer.duplicate();
+                slice.position(source);
+                slice.limit(source + size);
+                write(channel, slice);
+                offsets.put(entry.getKey(), offset);
+                offset += size;
+            }
+            // Terminator following the last record
+            write(channel, ByteBuffer.allocate(4));
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(m_compactionPath);
+            throw e;
+        }
+
+        final int capacity = m_buffer.capacity();
+        m_channel.close();
+        try {
+            Files.move(m_compactionPath, m_path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(m_compactionPath);
+            throw e;
+        } finally {
+            // Either the compacted file or the original one if it could not be replaced
+            m_channel = FileChannel.open(m_path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            map(capacity);
+        }
+
+        LOG.debug("Compacted threshold state file {} from {} to {} bytes.", m_path, m_end, offset);
+        m_offsets.clear();
+        m_offsets.putAll(offsets);
+        m_end = offset;
+        m_liveBytes = offset - HEADER_SIZE;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -28,10 +28,12 @@
 
 package org.opennms.netmgt.threshd;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -61,6 +63,22 @@ public final class ThresholdEntity implements Cloneable {
     // in the Constructor.  Note that this means we must use a null-key capable map like HashMap
     private Map<String,List<ThresholdEvaluatorState>> m_thresholdEvaluatorStates = new HashMap<String,List<ThresholdEvaluatorState>>();
 
+    // Instances whose states have been restored from the ThresholdStateStore (may contain null)
+    private final Set<String> m_restoredInstances = new HashSet<>();
+
+    // The last state handed to the ThresholdStateStore for each evaluator, so unchanged states are not saved again
+    private final Map<ThresholdEvaluatorState, SavedState> m_savedStates = new IdentityHashMap<>();
+
+    private static final class SavedState {
+        private final double[] m_state;
+        private final long m_timestamp;
+
+        private SavedState(double[] state, long timestamp) {
+            m_state = state;
+            m_timestamp = timestamp;
+        }
+    }
+
     // the commands for these need to be listed in ThresholdController as well
     static {
         s_thresholdEvaluators = new LinkedList<ThresholdEvaluator>();
@@ -252,17 +270,68 @@ public final class ThresholdEntity implements Cloneable {
         
         LOG.debug("evaluate: value= {} against threshold: {}", dsValue, this);
 
-        for (ThresholdEvaluatorState item : getThresholdEvaluatorStates(instance)) {
+        final List<ThresholdEvaluatorState> states = getThresholdEvaluatorStates(instance);
+        final ThresholdStateStore store = resource != null ? ThresholdStateStoreFactory.getStore() : null;
+        if (store != null && m_restoredInstances.add(instance)) {
+            restoreStates(store, resource, states);
+        }
+
+        for (ThresholdEvaluatorState item : states) {
             Status status = item.evaluate(dsValue);
             Event event = item.getEventForState(status, date, dsValue, resource);
             if (event != null) {
                 events.add(event);
             }
+            if (store != null) {
+                saveState(store, resource, item);
+            }
         }
 
         return events;
     }
 
+    private void restoreStates(ThresholdStateStore store, CollectionResourceWrapper resource, List<ThresholdEvaluatorState> states) {
+        // States saved before an outage spanning a few collection intervals no longer describe the resource
+        final long notBefore = System.currentTimeMillis() - ThresholdStateStoreFactory.getMaxStateAge();
+        for (ThresholdEvaluatorState item : states) {
+            final double[] saved = store.load(getStateKey(resource, item), notBefore);
+            if (saved != null) {
+                LOG.debug("restoreStates: restoring {} for {} on {}", Arrays.toString(saved), item.getThresholdConfig().getType(), resource);
+                item.restorePersistentState(saved);
+                // Save it again with the next evaluation, so that it does not expire while unchanged
+                m_savedStates.put(item, new SavedState(saved, 0L));
+            }
+        }
+    }
+
+    private void saveState(ThresholdStateStore store, CollectionResourceWrapper resource, ThresholdEvaluatorState item) {
+        final double[] state = item.getPersistentState();
+        final long now = System.currentTimeMillis();
+        final SavedState saved = m_savedStates.get(item);
+        // Unchanged states are saved again once half of their maximum age has passed, so they can still be restored
+        if (saved == null || !Arrays.equals(state, saved.m_state) || now - saved.m_timestamp > ThresholdStateStoreFactory.getMaxStateAge() / 2) {
+            store.save(getStateKey(resource, item), state, now);
+            m_savedStates.put(item, new SavedState(state, now));
+        }
+    }
+
+    private static String getStateKey(CollectionResourceWrapper resource, ThresholdEvaluatorState item) {
+        final BaseThresholdDefConfigWrapper config = item.getThresholdConfig();
+        return new StringBuilder()
+                .append(resource.getNodeId()).append('/')
+                .append(resource.getHostAddress()).append('/')
+                .append(resource.getServiceName()).append('/')
+                .append(resource.getResourceTypeName()).append('/')
+                .append(resource.getInstanceLabel()).append('/')
+                .append(config.getType()).append('/')
+                .append(config.getDsType()).append('/')
+                .append(config.getDatasourceExpression()).append('/')
+                .append(config.hasValue() ? config.getValue() : "").append('/')
+                .append(config.hasRearm() ? config.getRearm() : "").append('/')
+                .append(config.hasTrigger() ? config.getTrigger() : "")
+                .toString();
+    }
+
     /**
      * <p>addThreshold</p>
      *
@@ -183,6 +183,19 @@ public class ThresholdEvaluatorAbsoluteChange implements ThresholdEvaluator {
         @Override
         public void clearState() {
         }
+
+        @Override
+        public double[] getPersistentState() {
+            return new double[] { m_lastSample, m_previousTriggeringSample };
+        }
+
+        @Override
+        public void restorePersistentState(double[] state) {
+            if (state != null && state.length == 2) {
+                setLastSample(state[0]);
+                setPreviousTriggeringSample(state[1]);
+            }
+        }
     }
 
 }
@@ -269,6 +269,19 @@ public class ThresholdEvaluatorHighLow implements ThresholdEvaluator {
             setArmed(true);
             setExceededCount(0);
         }
+
+        @Override
+        public double[] getPersistentState() {
+            return new double[] { m_armed ? 1 : 0, m_exceededCount };
+        }
+
+        @Override
+        public void restorePersistentState(double[] state) {
+            if (state != null && state.length == 2) {
+                setArmed(state[0] != 0);
+                setExceededCount((int)state[1]);
+            }
+        }
         
     }
 
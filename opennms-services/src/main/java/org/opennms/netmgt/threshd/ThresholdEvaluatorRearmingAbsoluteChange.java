@@ -199,5 +199,19 @@ public class ThresholdEvaluatorRearmingAbsoluteChange implements ThresholdEvalua
             setPreviousTriggeringSample(Double.NaN);
         }
 
+        @Override
+        public double[] getPersistentState() {
+            return new double[] { m_lastSample, m_previousTriggeringSample, m_triggerCount };
+        }
+
+        @Override
+        public void restorePersistentState(double[] state) {
+            if (state != null && state.length == 3) {
+                setLastSample(state[0]);
+                setPreviousTriggeringSample(state[1]);
+                m_triggerCount = (int)state[2];
+            }
+        }
+
     }
 }
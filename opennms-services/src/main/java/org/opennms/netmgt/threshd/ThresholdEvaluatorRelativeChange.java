@@ -194,6 +194,19 @@ public class ThresholdEvaluatorRelativeChange implements ThresholdEvaluator {
         public void clearState() {
         }
 
+        @Override
+        public double[] getPersistentState() {
+            return new double[] { m_lastSample, m_previousTriggeringSample };
+        }
+
+        @Override
+        public void restorePersistentState(double[] state) {
+            if (state != null && state.length == 2) {
+                setLastSample(state[0]);
+                setPreviousTriggeringSample(state[1]);
+            }
+        }
+
     }
 
 }
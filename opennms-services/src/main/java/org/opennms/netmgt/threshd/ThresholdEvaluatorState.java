@@ -93,4 +93,20 @@ public interface ThresholdEvaluatorState {
      * @return a {@link org.opennms.netmgt.threshd.ThresholdEvaluatorState} object.
      */
     public ThresholdEvaluatorState getCleanClone();
+
+    /**
+     * Returns the values that make up the current state of the evaluator (i.e. trigger
+     * counts and previous samples), so that it can be saved and restored across restarts.
+     *
+     * @return the state, which can be passed to {@link #restorePersistentState(double[])}
+     */
+    public double[] getPersistentState();
+
+    /**
+     * Restores a state previously returned by {@link #getPersistentState()}.
+     * States that don't match the evaluator are ignored.
+     *
+     * @param state the saved state
+     */
+    public void restorePersistentState(double[] state);
 }
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.threshd;
+
+/**
+ * Persists the state of the threshold evaluators (see {@link ThresholdEvaluatorState#getPersistentState()}),
+ * so that trigger counts and previous samples survive restarts.
+ *
+ * States are saved after every evaluation that changes them, and loaded the first time
+ * a threshold is evaluated against a given resource. Implementations may defer writes,
+ * but must return the most recently saved state from {@link #load(String, long)}.
+ *
+ * Every state is saved along with the time it was saved at, so that states which were
+ * saved too long ago to be relevant, i.e. before a long outage, are not restored.
+ */
+public interface ThresholdStateStore {
+
+    /**
+     * @param key identifies the threshold and the resource it is applied to
+     * @param notBefore states saved before this time, in milliseconds since the epoch, are ignored
+     * @return the last saved state, or null if there is none or it is too old
+     */
+    double[] load(String key, long notBefore);
+
+    /**
+     * @param key identifies the threshold and the resource it is applied to
+     * @param state the state to save, must not be modified by the caller afterwards
+     * @param timestamp the time at which the state is saved, in milliseconds since the epoch
+     */
+    void save(String key, double[] state, long timestamp);
+
+    /**
+     * Writes any deferred states.
+     */
+    void flush();
+
+    /**
+     * Writes any deferred states and releases the resources held by the store.
+     */
+    void close();
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.threshd;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the {@link ThresholdStateStore} shared by all thresholding sets.
+ *
+ * The store is chosen with the <code>org.opennms.threshd.stateStore</code> system property:
+ * <code>file</code> (the default) keeps the states in the file given by
+ * <code>org.opennms.threshd.stateStore.file</code>, and <code>memory</code> keeps them
+ * until the JVM exits.
+ *
+ * States saved more than <code>org.opennms.threshd.stateStore.maxAge</code> milliseconds
+ * ago are not restored.
+ */
+public abstract class ThresholdStateStoreFactory {
+    private static final Logger LOG = LoggerFactory.getLogger(ThresholdStateStoreFactory.class);
+
+    public static final String STORE_PROPERTY = "org.opennms.threshd.stateStore";
+    public static final String FILE_PROPERTY = "org.opennms.threshd.stateStore.file";
+    public static final String MAX_AGE_PROPERTY = "org.opennms.threshd.stateStore.maxAge";
+
+    /**
+     * Three times the default collection interval
+     */
+    public static final long DEFAULT_MAX_AGE_MS = 15 * 60 * 1000L;
+
+    private static volatile ThresholdStateStore s_store;
+
+    /**
+     * <p>getStore</p>
+     *
+     * @return the shared store, created on first use
+     */
+    public static ThresholdStateStore getStore() {
+        ThresholdStateStore store = s_store;
+        if (store == null) {
+            synchronized (ThresholdStateStoreFactory.class) {
+                store = s_store;
+                if (store == null) {
+                    store = createStore();
+                    s_store = store;
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * <p>getMaxStateAge</p>
+     *
+     * @return the age, in milliseconds, after which saved states are no longer restored
+     */
+    public static long getMaxStateAge() {
+        return Long.getLong(MAX_AGE_PROPERTY, DEFAULT_MAX_AGE_MS);
+    }
+
+    /**
+     * <p>setStore</p>
+     *
+     * @param store the store to use from now on, mostly useful for tests
+     */
+    public static synchronized void setStore(ThresholdStateStore store) {
+        s_store = store;
+    }
+
+    private static ThresholdStateStore createStore() {
+        final String type = System.getProperty(STORE_PROPERTY, "file");
+        if ("file".equalsIgnoreCase(type)) {
+            String file = System.getProperty(FILE_PROPERTY);
+            if (file == null && System.getProperty("opennms.home") != null) {
+                file = Paths.get(System.getProperty("opennms.home"), "share", "threshd", "states.dat").toString();
+            }
+            if (file == null) {
+                LOG.warn("Neither {} nor opennms.home are set, threshold states will be kept in memory.", FILE_PROPERTY);
+            } else {
+                try {
+                    final ThresholdStateStore store = new MappedFileThresholdStateStore(Paths.get(file));
+                    Runtime.getRuntime().addShutdownHook(new Thread(store::close, "threshd-state-store-shutdown"));
+                    return store;
+                } catch (IOException e) {
+                    LOG.warn("Failed to open threshold state file {}, threshold states will be kept in memory.", file, e);
+                }
+            }
+        } else if (!"memory".equalsIgnoreCase(type)) {
+            LOG.warn("Unknown threshold state store '{}', threshold states will be kept in memory.", type);
+        }
+        return new InMemoryThresholdStateStore();
+    }
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.threshd;
+
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Metrics for thresholding.
+ *
+ * Thresholds are applied from the threads of several daemons, so the registry
+ * is shared. Every daemon applying thresholds declares an instance of this
+ * class as a bean, and the registry is exposed over JMX for as long as one of
+ * them is running.
+ */
+public final class ThresholdingMetrics {
+
+    private static final MetricRegistry METRICS = new MetricRegistry();
+
+    private static JmxReporter s_reporter;
+
+    private static int s_users = 0;
+
+    private boolean m_started = false;
+
+    public static MetricRegistry getMetricRegistry() {
+        return METRICS;
+    }
+
+    public void start() {
+        synchronized (ThresholdingMetrics.class) {
+            if (m_started) {
+                return;
+            }
+            m_started = true;
+            if (s_users++ == 0) {
+                s_reporter = JmxReporter.forRegistry(METRICS)
+                        .inDomain(ThresholdingMetrics.class.getPackage().getName())
+                        .build();
+                s_reporter.start();
+            }
+        }
+    }
+
+    public void stop() {
+        synchronized (ThresholdingMetrics.class) {
+            if (!m_started) {
+                return;
+            }
+            m_started = false;
+            if (--s_users == 0) {
+                s_reporter.close();
+                s_reporter = null;
+            }
+        }
+    }
+}
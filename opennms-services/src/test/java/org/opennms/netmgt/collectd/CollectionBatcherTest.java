@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.collectd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class CollectionBatcherTest {
+
+    private final MetricRegistry m_metrics = new MetricRegistry();
+
+    private final List<CompletableFuture<?>> m_collections = new CopyOnWriteArrayList<>();
+
+    private CollectionBatcher m_batcher;
+
+    @After
+    public void tearDown() {
+        if (m_batcher != null) {
+            m_batcher.stop();
+        }
+    }
+
+    @Test
+    public void canDispatchQueuedCollectionsTogether() {
+        // Only dispatch when told to
+        m_batcher = new CollectionBatcher(TimeUnit.HOURS.toMillis(1), 10, 1, m_metrics);
+        m_batcher.start();
+        for (int i = 0; i < 3; i++) {
+            m_batcher.submit(this::collect);
+        }
+
+        m_batcher.dispatch();
+        assertEquals(3, m_collections.size());
+        assertEquals(1, m_metrics.histogram("batches.size").getCount());
+        assertEquals(3, m_metrics.histogram("batches.size").getSnapshot().getMax());
+        assertEquals(3, m_metrics.counter("batches.inFlight").getCount());
+
+        for (CompletableFuture<?> collection : m_collections) {
+            collection.complete(null);
+        }
+        assertEquals(0, m_metrics.counter("batches.inFlight").getCount());
+
+        // Nothing left to dispatch
+        m_batcher.dispatch();
+        assertEquals(3, m_collections.size());
+        assertEquals(1, m_metrics.histogram("batches.size").getCount());
+    }
+
+    @Test(timeout=10000)
+    public void canBoundCollectionsInFlight() throws InterruptedException {
+        m_batcher = new CollectionBatcher(TimeUnit.HOURS.toMillis(1), 2, 1, m_metrics);
+        m_batcher.start();
+        for (int i = 0; i < 3; i++) {
+            m_batcher.submit(this::collect);
+        }
+
+        final CountDownLatch dispatched = new CountDownLatch(1);
+        final Thread dispatcher = new Thread(() -> {
+            m_batcher.dispatch();
+            dispatched.countDown();
+        });
+        dispatcher.start();
+
+        // The third collection waits for one of the first two to complete
+        assertFalse(dispatched.await(500, TimeUnit.MILLISECONDS));
+        assertEquals(2, m_collections.size());
+
+        m_collections.get(0).complete(null);
+        assertTrue(dispatched.await(5, TimeUnit.SECONDS));
+        assertEquals(3, m_collections.size());
+        assertEquals(2, m_metrics.counter("batches.inFlight").getCount());
+    }
+
+    @Test
+    public void canDispatchOnEveryWindow() throws InterruptedException {
+        m_batcher = new CollectionBatcher(10, 10, 1, m_metrics);
+        m_batcher.start();
+
+        final CountDownLatch persisted = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            m_batcher.submit(persister -> CompletableFuture.runAsync(persisted::countDown, persister));
+        }
+        assertTrue(persisted.await(5, TimeUnit.SECONDS));
+    }
+
+    private CompletableFuture<?> collect(Executor persister) {
+        final CompletableFuture<?> collection = new CompletableFuture<>();
+        m_collections.add(collection);
+        return collection;
+    }
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.collectd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+
+public class DefaultCollectdInstrumentationTest {
+
+    private long m_now = 0;
+
+    private DefaultCollectdInstrumentation m_instrumentation;
+
+    @Before
+    public void setUp() {
+        m_instrumentation = new DefaultCollectdInstrumentation(TimeUnit.MINUTES.toMillis(10), new Ticker() {
+            @Override
+            public long read() {
+                return m_now;
+            }
+        });
+    }
+
+    @Test
+    public void canTimeCollectionsByService() {
+        m_instrumentation.beginCollectorCollect("example1", 1, "192.168.1.1", "SNMP");
+        m_instrumentation.beginCollectorCollect("example1", 2, "192.168.1.2", "SNMP");
+        m_instrumentation.endCollectorCollect("example1", 1, "192.168.1.1", "SNMP");
+        m_instrumentation.endCollectorCollect("example1", 2, "192.168.1.2", "SNMP");
+        m_instrumentation.beginPersistingServiceData("example1", 1, "192.168.1.1", "SNMP");
+        m_instrumentation.endPersistingServiceData("example1", 1, "192.168.1.1", "SNMP");
+
+        assertEquals(2, m_instrumentation.getMetricRegistry().timer("collect.SNMP").getCount());
+        assertEquals(1, m_instrumentation.getMetricRegistry().timer("persist.SNMP").getCount());
+
+        // An end without a begin is not timed
+        m_instrumentation.endCollectorCollect("example1", 3, "192.168.1.3", "SNMP");
+        assertEquals(2, m_instrumentation.getMetricRegistry().timer("collect.SNMP").getCount());
+    }
+
+    @Test
+    public void forgetsOperationsThatNeverEnd() {
+        m_instrumentation.beginCollectorCollect("example1", 1, "192.168.1.1", "SNMP");
+        m_now += TimeUnit.MINUTES.toNanos(11);
+        m_instrumentation.endCollectorCollect("example1", 1, "192.168.1.1", "SNMP");
+
+        assertEquals(0, m_instrumentation.getMetricRegistry().timer("collect.SNMP").getCount());
+    }
+
+    @Test
+    public void canStartAndStopReporting() throws Exception {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName query = new ObjectName(DefaultCollectdInstrumentation.class.getPackage().getName() + ":*");
+        m_instrumentation.getMetricRegistry().timer("collect.SNMP");
+
+        m_instrumentation.start();
+        try {
+            assertTrue(server.queryNames(query, null).size() > 0);
+        } finally {
+            m_instrumentation.stop();
+        }
+        assertEquals(0, server.queryNames(query, null).size());
+
+        // Stopping twice is harmless
+        m_instrumentation.stop();
+    }
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.notifd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.opennms.core.fiber.PausableFiber;
+
+public class DefaultQueueHandlerTest {
+
+    /**
+     * Stops the handler from another thread while the handler dispatches its
+     * first notice, and leaves every notice queued.
+     */
+    private static class StoppingExecutor extends NotificationExecutor {
+        private final DefaultQueueHandler m_handler;
+        private Thread m_stopper;
+
+        public StoppingExecutor(DefaultQueueHandler handler) {
+            m_handler = handler;
+        }
+
+        @Override
+        public boolean execute(NotificationTask task) {
+            if (m_stopper == null) {
+                m_stopper = new Thread(m_handler::stop, "stopper");
+                m_stopper.start();
+                // Give the stopper the time to block on the queue lock held by the handler
+                final long deadline = System.currentTimeMillis() + 1000;
+                while (m_stopper.getState() != Thread.State.BLOCKED && m_stopper.isAlive() && System.currentTimeMillis() < deadline) {
+                    Thread.yield();
+                }
+            }
+            return false;
+        }
+
+        public Thread getStopper() {
+            return m_stopper;
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void canBeStoppedWhileDispatching() throws Exception {
+        final NoticeQueue queue = new NoticeQueue();
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            queue.putItem(now - 1000 + i, new NotificationTask(null, null, now - 1000 + i, Collections.<String, String>emptyMap(), null, null));
+        }
+
+        final DefaultQueueHandler handler = new DefaultQueueHandler();
+        final StoppingExecutor executor = new StoppingExecutor(handler);
+        handler.setQueueID("test");
+        handler.setInterval("10s");
+        handler.setNoticeQueue(queue);
+        handler.setNotificationExecutor(executor);
+
+        final Thread runner = new Thread(handler, "handler");
+        runner.start();
+        runner.join(TimeUnit.SECONDS.toMillis(10));
+
+        assertFalse("the handler did not stop", runner.isAlive());
+        executor.getStopper().join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse("stop() did not return", executor.getStopper().isAlive());
+        assertEquals(PausableFiber.STOPPED, handler.getStatus());
+        assertEquals(3, queue.size());
+    }
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.notifd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.opennms.netmgt.config.notificationCommands.Command;
+
+public class NotificationExecutorTest {
+
+    /**
+     * Counts down the sent latch for every command it runs, once the release latch is open.
+     */
+    private static class TestTask extends NotificationTask {
+        private final CountDownLatch m_release;
+        private final CountDownLatch m_sent;
+
+        public TestTask(long sendTime, CountDownLatch release, CountDownLatch sent, String... commandNames) {
+            super(null, null, sendTime, Collections.<String, String>emptyMap(), null, null);
+            m_release = release;
+            m_sent = sent;
+            final Command[] commands = new Command[commandNames.length];
+            for (int i = 0; i < commandNames.length; i++) {
+                commands[i] = new Command();
+                commands[i].setName(commandNames[i]);
+            }
+            setCommands(commands);
+        }
+
+        @Override
+        void run(Command[] commands) {
+            try {
+                m_release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (int i = 0; i < commands.length; i++) {
+                m_sent.countDown();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "TestTask" + getCommands().length;
+        }
+    }
+
+    @Test
+    public void canDeferTasksWhenLaneIsFull() throws Exception {
+        System.setProperty("org.opennms.notifd.lanes.slowLane.capacity", "1");
+        final NotificationExecutor executor = new NotificationExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch sent = new CountDownLatch(3);
+        final long now = System.currentTimeMillis();
+
+        try {
+            assertTrue(executor.execute(new TestTask(now, release, sent, "slowLane")));
+            final TestTask deferred = new TestTask(now, release, sent, "slowLane");
+            assertFalse(executor.execute(deferred));
+
+            // Other lanes are not held back, but tasks are never sent in part
+            assertTrue(executor.execute(new TestTask(now, release, sent, "fastLane")));
+            assertFalse(executor.execute(new TestTask(now, release, sent, "fastLane", "slowLane")));
+
+            release.countDown();
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (!executor.execute(deferred) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(sent.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void canDispatchNoticesWhenTheyAreDue() throws Exception {
+        final NoticeQueue queue = new NoticeQueue();
+        final DefaultQueueHandler handler = new DefaultQueueHandler();
+        final NotificationExecutor executor = new NotificationExecutor();
+        handler.setQueueID("test");
+        handler.setNoticeQueue(queue);
+        handler.setInterval("1m");
+        handler.setNotificationExecutor(executor);
+        handler.start();
+
+        try {
+            final CountDownLatch release = new CountDownLatch(0);
+            final CountDownLatch sent = new CountDownLatch(2);
+            final long sendTime = System.currentTimeMillis() + 200;
+
+            // Well before the polling interval elapses
+            queue.putItem(sendTime, new TestTask(sendTime, release, sent, "javaEmail"));
+            queue.putItem(sendTime, new TestTask(sendTime, release, sent, "javaEmail"));
+            assertTrue(sent.await(5, TimeUnit.SECONDS));
+            assertTrue(System.currentTimeMillis() >= sendTime);
+            synchronized (queue) {
+                assertEquals(0, queue.size());
+            }
+        } finally {
+            handler.stop();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void canDiscardQueuedNotices() throws Exception {
+        final NoticeQueue queue = new NoticeQueue();
+        final long queued = NotifdMetrics.getQueueDepth(null).getCount();
+        final long sendTime = System.currentTimeMillis() + 60000;
+
+        queue.putItem(sendTime, new TestTask(sendTime, new CountDownLatch(0), new CountDownLatch(1), "javaEmail"));
+        queue.putItem(sendTime + 1, new TestTask(sendTime + 1, new CountDownLatch(0), new CountDownLatch(1), "javaEmail"));
+        assertEquals(queued + 2, NotifdMetrics.getQueueDepth(null).getCount());
+
+        assertEquals(2, queue.discardAll());
+        assertEquals(0, queue.size());
+        assertEquals(queued, NotifdMetrics.getQueueDepth(null).getCount());
+    }
+}
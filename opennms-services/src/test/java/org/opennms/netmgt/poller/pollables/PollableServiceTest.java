@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.pollables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.mock.MockInterval;
+import org.opennms.netmgt.poller.mock.MockPollContext;
+import org.opennms.netmgt.poller.mock.MockScheduler;
+import org.opennms.netmgt.poller.mock.MockTimer;
+import org.opennms.netmgt.scheduler.Schedule;
+
+/**
+ * Exercises the asynchronous polls of a service, which are enabled by default.
+ */
+public class PollableServiceTest {
+
+    /**
+     * Hands out a new pending future for every poll, unless a result is set.
+     */
+    private static class AsyncPollConfig implements PollConfig {
+        private final MockTimer m_timer;
+        private final List<CompletableFuture<PollStatus>> m_polls = new ArrayList<>();
+        private PollStatus m_result;
+
+        private AsyncPollConfig(MockTimer timer) {
+            m_timer = timer;
+        }
+
+        @Override
+        public PollStatus poll() {
+            throw new UnsupportedOperationException("Polls are expected to be asynchronous");
+        }
+
+        @Override
+        public CompletableFuture<PollStatus> pollAsync() {
+            final CompletableFuture<PollStatus> future = m_result != null ? CompletableFuture.completedFuture(m_result) : new CompletableFuture<>();
+            m_polls.add(future);
+            return future;
+        }
+
+        @Override
+        public long getCurrentTime() {
+            return m_timer.getCurrentTime();
+        }
+
+        @Override
+        public void refresh() {
+        }
+
+        @Override
+        public void refreshThresholds() {
+        }
+    }
+
+    private MockTimer m_timer;
+
+    private MockScheduler m_scheduler;
+
+    private AsyncPollConfig m_pollConfig;
+
+    private PollableService m_svc;
+
+    @Before
+    public void setUp() {
+        m_timer = new MockTimer();
+        m_scheduler = new MockScheduler(m_timer);
+        m_pollConfig = new AsyncPollConfig(m_timer);
+
+        final PollableNetwork network = new PollableNetwork(new MockPollContext());
+        m_svc = network.createService(1, "Router", null, InetAddressUtils.addr("192.168.1.1"), "ICMP");
+        m_svc.setPollConfig(m_pollConfig);
+        m_svc.setSchedule(new Schedule(m_svc, new MockInterval(m_timer, 300000L), m_scheduler));
+    }
+
+    @Test
+    public void canProcessResultsOnceCompleted() {
+        m_svc.run();
+        assertEquals(1, m_pollConfig.m_polls.size());
+
+        // The service isn't polled again while its poll is in progress
+        m_svc.run();
+        assertEquals(1, m_pollConfig.m_polls.size());
+        assertEquals(0, m_scheduler.getEntryCount());
+
+        // The result is processed on the scheduler
+        m_pollConfig.m_polls.get(0).complete(PollStatus.up());
+        assertEquals(1, m_scheduler.getEntryCount());
+        m_scheduler.next();
+        assertTrue(m_svc.getStatus().isUp());
+
+        m_svc.run();
+        assertEquals(2, m_pollConfig.m_polls.size());
+    }
+
+    @Test
+    public void canProcessResultsAvailableRightAway() {
+        m_pollConfig.m_result = PollStatus.up();
+        m_svc.run();
+        assertTrue(m_svc.getStatus().isUp());
+        assertEquals(0, m_scheduler.getEntryCount());
+
+        // Nothing is left in progress
+        m_svc.run();
+        assertEquals(2, m_pollConfig.m_polls.size());
+    }
+
+    @Test
+    public void abandonsPollsThatNeverComplete() {
+        m_svc.run();
+        assertEquals(1, m_pollConfig.m_polls.size());
+
+        m_timer.setCurrentTime(TimeUnit.MINUTES.toMillis(4));
+        m_svc.run();
+        assertEquals(1, m_pollConfig.m_polls.size());
+
+        // The first poll is given up on
+        m_timer.setCurrentTime(TimeUnit.MINUTES.toMillis(6));
+        m_svc.run();
+        assertEquals(2, m_pollConfig.m_polls.size());
+
+        // And its result is ignored if it ever shows up
+        m_pollConfig.m_polls.get(0).complete(PollStatus.down());
+        assertEquals(0, m_scheduler.getEntryCount());
+
+        m_pollConfig.m_polls.get(1).complete(PollStatus.up());
+        m_scheduler.next();
+        assertTrue(m_svc.getStatus().isUp());
+    }
+}
@@ -108,7 +108,9 @@ import org.springframework.test.context.ContextConfiguration;
         "classpath:/META-INF/opennms/applicationContext-rpc-poller.xml"
 })
 @JUnitConfigurationEnvironment(systemProperties={
-        "org.opennms.netmgt.icmp.pingerClass=org.opennms.netmgt.icmp.jna.JnaPinger"
+        "org.opennms.netmgt.icmp.pingerClass=org.opennms.netmgt.icmp.jna.JnaPinger",
+        // The mock scheduler expects every poll to complete when it is run
+        "org.opennms.netmgt.poller.async=false"
 })
 public class PollablesIT {
     private static final Logger LOG = LoggerFactory.getLogger(PollablesIT.class);
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rtc.datablock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RTCNodeSvcTimesTest {
+
+    private static final long WINDOW = 24L * 60L * 60L * 1000L;
+
+    @Test
+    public void testOpenAndClosedOutages() {
+        final long now = 10 * WINDOW;
+        RTCNodeSvcTimes times = RTCNodeSvcTimes.EMPTY;
+        assertEquals(0, times.getDownTime(now, WINDOW));
+
+        // closed outage that started before the window
+        times = times.withOutage(now - WINDOW - 1000, now - WINDOW + 500, 0);
+        assertEquals(500, times.getDownTime(now, WINDOW));
+
+        // closed outage inside the window
+        times = times.lost(now - 5000, 0).regained(now - 3000, 0);
+        assertEquals(2500, times.getDownTime(now, WINDOW));
+        assertFalse(times.isDown());
+
+        // open outage, a second lost event is ignored
+        times = times.lost(now - 1000, 0);
+        assertSame(times, times.lost(now - 500, 0));
+        assertTrue(times.isDown());
+        assertEquals(3500, times.getDownTime(now, WINDOW));
+
+        // outages that started after the current time are not counted
+        assertEquals(1500 + 2000, times.getDownTime(now - 2000, WINDOW));
+    }
+
+    @Test
+    public void testExpiredOutagesAreDropped() {
+        final long now = 10 * WINDOW;
+        RTCNodeSvcTimes times = RTCNodeSvcTimes.EMPTY
+                .withOutage(now - 3 * WINDOW, now - 2 * WINDOW, 0)
+                .withOutage(now - 1000, now - 500, now - WINDOW);
+        assertEquals(1, times.size());
+        assertEquals(500, times.getDownTime(now, 3 * WINDOW));
+    }
+
+    @Test
+    public void testDownTimeMatchesEveryOutage() {
+        final Random random = new Random(42);
+        final long[] lost = new long[200];
+        final long[] regained = new long[200];
+
+        RTCNodeSvcTimes times = RTCNodeSvcTimes.EMPTY;
+        long t = 0;
+        for (int i = 0; i < lost.length; i++) {
+            lost[i] = t + random.nextInt(10000000);
+            regained[i] = lost[i] + random.nextInt(10000000);
+            t = regained[i];
+            times = times.lost(lost[i], 0).regained(regained[i], 0);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            final long curTime = random.nextInt((int)t + 1000);
+            final long window = 1 + random.nextInt(100000000);
+            long expected = 0;
+            for (int j = 0; j < lost.length; j++) {
+                expected += Math.max(0, Math.min(regained[j], curTime) - Math.max(lost[j], curTime - window));
+            }
+            assertEquals(expected, times.getDownTime(curTime, window));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.codahale.metrics.Snapshot;
+
+/**
+ * Schedules one million runnables, spread over the next few seconds, and waits
+ * until all of them have run, with both the {@link LegacyScheduler} and the
+ * {@link TimingWheelScheduler}.
+ *
+ * The percentiles of the dispatch lag of the {@link TimingWheelScheduler} are
+ * printed after each iteration.
+ *
+ * Run with the main method, from the IDE, or with the JMH runner on the test classpath.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimingWheelSchedulerBenchmark {
+
+    @Param({"1000000"})
+    public int tasks;
+
+    @Param({"legacy", "timingwheel"})
+    public String scheduler;
+
+    @Param({"5000"})
+    public int spreadMs;
+
+    private Scheduler m_scheduler;
+
+    private long[] m_intervals;
+
+    private static class CountingRunnable implements ReadyRunnable {
+        private final CountDownLatch m_latch;
+
+        public CountingRunnable(CountDownLatch latch) {
+            m_latch = latch;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void run() {
+            m_latch.countDown();
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        m_intervals = new long[tasks];
+        for (int i = 0; i < tasks; i++) {
+            // Like the pollers and collectors, most of the runnables share a handful of intervals
+            m_intervals[i] = (random.nextInt(5) + 1) * (spreadMs / 5) - random.nextInt(spreadMs / 5);
+        }
+        m_scheduler = SchedulerFactory.TIMING_WHEEL.equals(scheduler)
+                ? new TimingWheelScheduler("Benchmark", 8)
+                : new LegacyScheduler("Benchmark", 8);
+        m_scheduler.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (m_scheduler instanceof TimingWheelScheduler) {
+            final Snapshot lag = ((TimingWheelScheduler)m_scheduler).getMetricRegistry().histogram("Benchmark.dispatchLag").getSnapshot();
+            System.out.printf("%ndispatch lag (ms): median=%.1f p99=%.1f max=%d%n", lag.getMedian(), lag.get99thPercentile(), lag.getMax());
+        }
+        m_scheduler.stop();
+    }
+
+    @Benchmark
+    public void scheduleAndRun() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(tasks);
+        final CountingRunnable runnable = new CountingRunnable(latch);
+        for (int i = 0; i < tasks; i++) {
+            m_scheduler.schedule(m_intervals[i], runnable);
+        }
+        latch.await();
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(TimingWheelSchedulerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
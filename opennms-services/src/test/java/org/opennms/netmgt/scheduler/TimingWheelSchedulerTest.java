@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.fiber.PausableFiber;
+
+public class TimingWheelSchedulerTest {
+
+    private TimingWheelScheduler m_scheduler;
+
+    private static class RecordingRunnable implements ReadyRunnable {
+        private final long m_deadline;
+        private final CountDownLatch m_latch;
+        private volatile long m_ranAt = -1;
+
+        public RecordingRunnable(long deadline, CountDownLatch latch) {
+            m_deadline = deadline;
+            m_latch = latch;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void run() {
+            m_ranAt = System.currentTimeMillis();
+            m_latch.countDown();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        m_scheduler = new TimingWheelScheduler("Test", 4);
+        m_scheduler.start();
+    }
+
+    @After
+    public void tearDown() {
+        m_scheduler.stop();
+    }
+
+    @Test
+    public void testRunnablesRunAfterTheirDeadline() throws InterruptedException {
+        final Random random = new Random(42);
+        final int count = 2000;
+        final CountDownLatch latch = new CountDownLatch(count);
+        final List<RecordingRunnable> runnables = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // Spread the delays across the first three levels of the wheel
+            final long interval = i % 10 == 0 ? 0 : random.nextInt(6000);
+            final RecordingRunnable runnable = new RecordingRunnable(m_scheduler.getCurrentTime() + interval, latch);
+            runnables.add(runnable);
+            m_scheduler.schedule(interval, runnable);
+        }
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        for (RecordingRunnable runnable : runnables) {
+            assertTrue(runnable.m_ranAt >= runnable.m_deadline);
+            assertTrue("ran " + (runnable.m_ranAt - runnable.m_deadline) + "ms late", runnable.m_ranAt - runnable.m_deadline < 1000);
+        }
+        assertEquals(count, m_scheduler.getNumTasksExecuted());
+        assertEquals(0, m_scheduler.getScheduled());
+        assertEquals(count, m_scheduler.getMetricRegistry().histogram("Test.dispatchLag").getCount());
+    }
+
+    @Test
+    public void testEarlierDeadlineWakesTheDispatcher() throws InterruptedException {
+        final CountDownLatch late = new CountDownLatch(1);
+        m_scheduler.schedule(60000, new RecordingRunnable(0, late));
+
+        // Give the dispatcher time to go to sleep until the first deadline
+        Thread.sleep(100);
+
+        final CountDownLatch early = new CountDownLatch(1);
+        final RecordingRunnable runnable = new RecordingRunnable(m_scheduler.getCurrentTime() + 50, early);
+        m_scheduler.schedule(50, runnable);
+
+        assertTrue(early.await(1, TimeUnit.SECONDS));
+        assertEquals(1, late.getCount());
+    }
+
+    @Test
+    public void testRunnablesThatAreNotReadyAreRetried() throws InterruptedException {
+        final AtomicInteger checks = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+        m_scheduler.schedule(0, new ReadyRunnable() {
+            @Override
+            public boolean isReady() {
+                return checks.incrementAndGet() > 2;
+            }
+
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(3, checks.get());
+    }
+
+    @Test
+    public void testPauseAndResume() throws InterruptedException {
+        while (m_scheduler.getStatus() != PausableFiber.RUNNING) {
+            Thread.sleep(10);
+        }
+        m_scheduler.pause();
+        final CountDownLatch latch = new CountDownLatch(1);
+        m_scheduler.schedule(0, new RecordingRunnable(0, latch));
+
+        assertFalse(latch.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(PausableFiber.PAUSED, m_scheduler.getStatus());
+
+        m_scheduler.resume();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -98,7 +98,8 @@ public class CollectionResourceWrapperIT {
 
     @Before
     public void setUp() throws Exception {
-        CollectionResourceWrapper.s_cache.clear();
+        CollectionResourceWrapper.s_counters.clear();
+        ThresholdStateStoreFactory.setStore(new InMemoryThresholdStateStore());
         MockLogAppender.setupLogging();
     }
 
@@ -157,7 +158,7 @@ public class CollectionResourceWrapperIT {
 
         // Add Counter Attribute
         String attributeName = "myCounter";
-        String attributeId = "node[1].resourceType[node].instance[null].metric[" + attributeName + "]";
+        String resourceId = "node[1].resourceType[node].instance[null]";
         Map<String, CollectionAttribute> attributes = new HashMap<String, CollectionAttribute>();
         SnmpAttribute attribute = addAttributeToCollectionResource(resource, attributeName, AttributeType.COUNTER, "0", "1000");
         attributes.put(attribute.getName(), attribute);
@@ -168,10 +169,10 @@ public class CollectionResourceWrapperIT {
         // Get counter value - first time
         CollectionResourceWrapper wrapper = createWrapper(resource, attributes, baseDate);
 
-        Assert.assertFalse(CollectionResourceWrapper.s_cache.containsKey(attributeId));
+        Assert.assertNull(CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
         Assert.assertEquals(Double.valueOf(Double.NaN), wrapper.getAttributeValue(attributeName)); // Last value is null
         Assert.assertEquals(Double.valueOf(Double.NaN), wrapper.getAttributeValue(attributeName)); // Last value is null
-        Assert.assertEquals(Double.valueOf(1000.0), CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+        Assert.assertEquals(Double.valueOf(1000.0), CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
 
         // Increase counter
         attribute = addAttributeToCollectionResource(resource, attributeName, AttributeType.COUNTER, "0", "2500");
@@ -181,15 +182,15 @@ public class CollectionResourceWrapperIT {
        
         // Get counter value - second time
         // Last value is 1000.0, so 2500-1000/300 = 1500/300 =  5.
-        Assert.assertEquals(Double.valueOf(1000.0), CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+        Assert.assertEquals(Double.valueOf(1000.0), CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
         Assert.assertEquals(Double.valueOf(5.0), wrapper.getAttributeValue(attributeName));
         //Validate that the cached counter value has been updated
-        Assert.assertEquals(Double.valueOf(2500.0), CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+        Assert.assertEquals(Double.valueOf(2500.0), CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
         //but that calling getAttributeValue doesn't re-calculate the rate inappropriately
         Assert.assertEquals(Double.valueOf(5.0), wrapper.getAttributeValue(attributeName));
-        Assert.assertEquals(Double.valueOf(2500.0), CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+        Assert.assertEquals(Double.valueOf(2500.0), CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
         Assert.assertEquals(Double.valueOf(5.0), wrapper.getAttributeValue(attributeName));
-        Assert.assertEquals(Double.valueOf(2500.0), CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+        Assert.assertEquals(Double.valueOf(2500.0), CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
 
         // Increase counter
         attribute = addAttributeToCollectionResource(resource, attributeName, AttributeType.COUNTER, "0", "5500");
@@ -199,13 +200,13 @@ public class CollectionResourceWrapperIT {
 
         // Get counter value - third time
         // Last value is 2500.0, so 5500-2500/300 = 3000/300 =  10;
-        Assert.assertEquals(Double.valueOf(2500.0), CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+        Assert.assertEquals(Double.valueOf(2500.0), CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
         Assert.assertEquals(Double.valueOf(10.0), wrapper.getAttributeValue(attributeName));
-        Assert.assertEquals(Double.valueOf(5500.0), CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+        Assert.assertEquals(Double.valueOf(5500.0), CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
         Assert.assertEquals(Double.valueOf(10.0), wrapper.getAttributeValue(attributeName));
-        Assert.assertEquals(Double.valueOf(5500.0), CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+        Assert.assertEquals(Double.valueOf(5500.0), CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
         Assert.assertEquals(Double.valueOf(10.0), wrapper.getAttributeValue(attributeName));
-        Assert.assertEquals(Double.valueOf(5500.0), CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+        Assert.assertEquals(Double.valueOf(5500.0), CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
     }
         
     
@@ -225,7 +226,7 @@ public class CollectionResourceWrapperIT {
 
 		// Add Counter Attribute
 		String attributeName = "myCounter";
-	        String attributeId = "node[1].resourceType[node].instance[null].metric[" + attributeName + "]";
+	        String resourceId = "node[1].resourceType[node].instance[null]";
 		Map<String, CollectionAttribute> attributes = new HashMap<String, CollectionAttribute>();
 		SnmpAttribute attribute = addAttributeToCollectionResource(resource, attributeName, AttributeType.COUNTER, "0", "1000");
 		attributes.put(attribute.getName(), attribute);
@@ -238,14 +239,13 @@ public class CollectionResourceWrapperIT {
 		CollectionResourceWrapper wrapper = createWrapper(resource, attributes,
 				baseDate);
 
-		Assert.assertFalse(CollectionResourceWrapper.s_cache
-				.containsKey(attributeId));
+		Assert.assertNull(CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
 		Assert.assertEquals(Double.valueOf(Double.NaN),
 				wrapper.getAttributeValue(attributeName)); // Last value is null
 		Assert.assertEquals(Double.valueOf(Double.NaN),
 				wrapper.getAttributeValue(attributeName)); // Last value is null
 		Assert.assertEquals(Double.valueOf(1000.0),
-				CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+				CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
 
         // Increase counter
         attribute = addAttributeToCollectionResource(resource, attributeName, AttributeType.COUNTER, "0", "2500");
@@ -255,13 +255,13 @@ public class CollectionResourceWrapperIT {
        
         // Get counter value - second time
         // Last value is 1000.0, so 2500-1000/300 = 1500/300 =  5.
-        Assert.assertEquals(Double.valueOf(1000.0), CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+        Assert.assertEquals(Double.valueOf(1000.0), CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
         Assert.assertEquals(Double.valueOf(5.0), wrapper.getAttributeValue(attributeName));
         //Validate that the cached counter value has been updated
-        Assert.assertEquals(Double.valueOf(2500.0), CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+        Assert.assertEquals(Double.valueOf(2500.0), CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
         //but that calling getAttributeValue doesn't re-calculate the rate inappropriately or update the static cache
         Assert.assertEquals(Double.valueOf(5.0), wrapper.getAttributeValue(attributeName));
-        Assert.assertEquals(Double.valueOf(2500.0), CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+        Assert.assertEquals(Double.valueOf(2500.0), CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
 
 		// Now create a collection that is missing the counter value; we're
 		// expecting null result and no cache updates
@@ -276,10 +276,10 @@ public class CollectionResourceWrapperIT {
 		// No change, so we expect the cache to have (and continue to) remain
 		// the same, and to get no attribute value out
 		Assert.assertEquals(Double.valueOf(2500.0),
-				CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+				CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
 		Assert.assertNull(wrapper.getAttributeValue(attributeName)); 
 		Assert.assertEquals(Double.valueOf(2500.0),
-				CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+				CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
 
 		// Now if we collect successfully again, we expect the counter to be the
 		// change divided by two collection cycles
@@ -296,16 +296,16 @@ public class CollectionResourceWrapperIT {
 		// Last value is 5500, but we've had two collection cycles, so
 		// 7300-2500/600 = 4800/600 = 8
 		Assert.assertEquals(Double.valueOf(2500.0),
-				CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+				CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
 		Assert.assertEquals(Double.valueOf(8.0), wrapper.getAttributeValue(attributeName));
 		Assert.assertEquals(Double.valueOf(7300.0),
-				CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+				CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
 		Assert.assertEquals(Double.valueOf(8.0), wrapper.getAttributeValue(attributeName));
 		Assert.assertEquals(Double.valueOf(7300.0),
-				CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+				CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
 		Assert.assertEquals(Double.valueOf(8.0), wrapper.getAttributeValue(attributeName));
 		Assert.assertEquals(Double.valueOf(7300.0),
-				CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+				CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
 
 		EasyMock.verify(agent);
 	}
@@ -322,7 +322,7 @@ public class CollectionResourceWrapperIT {
 
         // Add Counter Attribute
         String attributeName = "myCounter";
-        String attributeId = "node[1].resourceType[node].instance[null].metric[" + attributeName + "]";
+        String resourceId = "node[1].resourceType[node].instance[null]";
         Map<String, CollectionAttribute> attributes = new HashMap<String, CollectionAttribute>();
         BigInteger initialValue = new BigDecimal(Math.pow(2, 32) - 20000).toBigInteger();
         SnmpAttribute attribute = addAttributeToCollectionResource(resource, attributeName, AttributeType.COUNTER, "0", initialValue);
@@ -330,10 +330,10 @@ public class CollectionResourceWrapperIT {
         
         // Get counter value - first time
         CollectionResourceWrapper wrapper = createWrapper(resource, attributes, baseDate);
-        Assert.assertFalse(CollectionResourceWrapper.s_cache.containsKey(attributeId));
+        Assert.assertNull(CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
         Assert.assertEquals(Double.valueOf(Double.NaN), wrapper.getAttributeValue(attributeName)); // Last value is null
         Assert.assertEquals(Double.valueOf(Double.NaN), wrapper.getAttributeValue(attributeName)); // Last value is null
-        Assert.assertEquals(Double.valueOf(initialValue.doubleValue()), CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+        Assert.assertEquals(Double.valueOf(initialValue.doubleValue()), CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
 
         // Increase counter
         attribute = addAttributeToCollectionResource(resource, attributeName, AttributeType.COUNTER, "0", new BigInteger("40000"));
@@ -342,13 +342,13 @@ public class CollectionResourceWrapperIT {
 
         // Get counter value - second time (wrap)
         // last = MAX - 20000, new = 40000; then last - new = 60000, rate: 60000/300 = 200
-        Assert.assertEquals(Double.valueOf(initialValue.doubleValue()), CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+        Assert.assertEquals(Double.valueOf(initialValue.doubleValue()), CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
         Assert.assertEquals(Double.valueOf(200.0), wrapper.getAttributeValue(attributeName));
-        Assert.assertEquals(Double.valueOf(40000.0), CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+        Assert.assertEquals(Double.valueOf(40000.0), CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
         Assert.assertEquals(Double.valueOf(200.0), wrapper.getAttributeValue(attributeName));
-        Assert.assertEquals(Double.valueOf(40000.0), CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+        Assert.assertEquals(Double.valueOf(40000.0), CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
         Assert.assertEquals(Double.valueOf(200.0), wrapper.getAttributeValue(attributeName));
-        Assert.assertEquals(Double.valueOf(40000.0), CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+        Assert.assertEquals(Double.valueOf(40000.0), CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
 
         EasyMock.verify(agent);
     }
@@ -498,7 +498,7 @@ public class CollectionResourceWrapperIT {
         // Add Counter Attribute
         System.err.println("------------------------");
         String attributeName = "myCounter";
-        String attributeId = "node[1].resourceType[node].instance[null].metric[" + attributeName + "]";
+        String resourceId = "node[1].resourceType[node].instance[null]";
         Map<String, CollectionAttribute> attributes = new HashMap<String, CollectionAttribute>();
         BigInteger initialValue = new BigInteger("300");
         SnmpAttribute attribute = addAttributeToCollectionResource(resource, attributeName, AttributeType.COUNTER, "0", initialValue);
@@ -506,26 +506,26 @@ public class CollectionResourceWrapperIT {
 
         // Get counter value - first time
         CollectionResourceWrapper wrapper = createWrapper(resource, attributes, baseDate);
-        Assert.assertFalse(CollectionResourceWrapper.s_cache.containsKey(attributeId));
+        Assert.assertNull(CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
         Assert.assertEquals(Double.valueOf(Double.NaN), wrapper.getAttributeValue(attributeName)); // Last value is null
         Assert.assertEquals(Double.valueOf(Double.NaN), wrapper.getAttributeValue(attributeName)); // Last value is null
-        Assert.assertEquals(Double.valueOf(initialValue.doubleValue()), CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+        Assert.assertEquals(Double.valueOf(initialValue.doubleValue()), CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
         Assert.assertTrue(wrapper.getAttributeValue(attributeName).isNaN());
 
         // Increase counter
         attribute = addAttributeToCollectionResource(resource, attributeName, AttributeType.COUNTER, "0", new BigInteger("600"));
         attributes.put(attribute.getName(), attribute);
         wrapper = createWrapper(resource, attributes, new Date(baseDate.getTime() + 300000));
-        Assert.assertFalse(CollectionResourceWrapper.s_cache.get(attributeId).getValue().isNaN());
-        Assert.assertEquals(Double.valueOf(300.0), CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+        Assert.assertFalse(CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName).isNaN());
+        Assert.assertEquals(Double.valueOf(300.0), CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
         Assert.assertEquals(Double.valueOf(1.0), wrapper.getAttributeValue(attributeName)); // 600 - 300 / 300 = 1.0
 
         // Increase counter again
         attribute = addAttributeToCollectionResource(resource, attributeName, AttributeType.COUNTER, "0", new BigInteger("900"));
         attributes.put(attribute.getName(), attribute);
         wrapper = createWrapper(resource, attributes, new Date(baseDate.getTime() + 600000));
-        Assert.assertFalse(CollectionResourceWrapper.s_cache.get(attributeId).getValue().isNaN());
-        Assert.assertEquals(Double.valueOf(600.0), CollectionResourceWrapper.s_cache.get(attributeId).getValue());
+        Assert.assertFalse(CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName).isNaN());
+        Assert.assertEquals(Double.valueOf(600.0), CollectionResourceWrapper.s_counters.getLastValue(resourceId, attributeName));
         Assert.assertEquals(Double.valueOf(1.0), wrapper.getAttributeValue(attributeName)); // 900 - 600 / 300 = 1.0
 
         // Emulate a sysUpTime restart
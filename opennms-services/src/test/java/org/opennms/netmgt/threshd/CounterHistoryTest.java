@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.threshd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class CounterHistoryTest {
+
+    private static final String RESOURCE = "node[1].resourceType[interfaceSnmp].instance[eth0]";
+
+    @Test
+    public void canCalculateRates() {
+        CounterHistory history = new CounterHistory();
+
+        // No previous sample
+        assertTrue(Double.isNaN(history.getRate(RESOURCE, "ifInOctets", 0, 1000, false)));
+        assertEquals(Double.valueOf(1000), history.getLastValue(RESOURCE, "ifInOctets"));
+
+        // 1500 over 300 seconds
+        assertEquals(5.0, history.getRate(RESOURCE, "ifInOctets", 300000, 2500, false), 0);
+        assertEquals(Double.valueOf(2500), history.getLastValue(RESOURCE, "ifInOctets"));
+
+        // Other metrics on the same resource are tracked independently
+        assertTrue(Double.isNaN(history.getRate(RESOURCE, "ifOutOctets", 300000, 10, false)));
+        assertEquals(1, history.getResourceCount());
+        assertEquals(2, history.getSampleCount());
+
+        // A zero-length interval returns a rate of zero, and keeps the previous sample
+        assertEquals(0.0, history.getRate(RESOURCE, "ifInOctets", 300000, 4000, false), 0);
+        assertEquals(Double.valueOf(2500), history.getLastValue(RESOURCE, "ifInOctets"));
+
+        // The previous sample is discarded when the counters were reset
+        assertTrue(Double.isNaN(history.getRate(RESOURCE, "ifInOctets", 600000, 100, true)));
+        assertEquals(Double.valueOf(100), history.getLastValue(RESOURCE, "ifInOctets"));
+    }
+
+    @Test
+    public void canHandleWrappedCounters() {
+        CounterHistory history = new CounterHistory();
+        history.getRate(RESOURCE, "ifInOctets", 0, Math.pow(2, 32) - 100, false);
+        assertEquals(1.0, history.getRate(RESOURCE, "ifInOctets", 200000, 100, false), 0);
+    }
+
+    @Test
+    public void canEvictResources() {
+        CounterHistory history = new CounterHistory(10, 1, TimeUnit.DAYS);
+        for (int i = 0; i < 100; i++) {
+            history.getRate("node[" + i + "]", "ifInOctets", 0, i, false);
+            history.getRate("node[" + i + "]", "ifOutOctets", 0, i, false);
+        }
+        assertTrue(history.getResourceCount() <= 10);
+        assertEquals(history.getResourceCount() * 2, history.getSampleCount());
+        assertNull(history.getLastValue("node[0]", "ifInOctets"));
+        assertEquals(Double.valueOf(99), history.getLastValue("node[99]", "ifInOctets"));
+
+        history.clear();
+        assertEquals(0, history.getResourceCount());
+        assertEquals(0, history.getSampleCount());
+    }
+}
@@ -205,7 +205,8 @@ public class LatencyThresholdingSetIT implements TemporaryDatabaseAware<MockData
         BeanUtils.setStaticApplicationContext(m_context);
 
         // Resets Counters Cache Data
-        CollectionResourceWrapper.s_cache.clear();
+        CollectionResourceWrapper.s_counters.clear();
+        ThresholdStateStoreFactory.setStore(new InMemoryThresholdStateStore());
 
         MockLogAppender.setupLogging();
 
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.threshd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedFileThresholdStateStoreTest {
+
+    private static final String KEY = "1/127.0.0.1/SNMP/if/eth0/high/if/ifInOctets/90.0/50.0/3";
+
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    @Test
+    public void canReloadStates() throws Exception {
+        final File file = new File(m_folder.getRoot(), "states.dat");
+
+        MappedFileThresholdStateStore store = new MappedFileThresholdStateStore(file.toPath(), 60000, 1000);
+        assertNull(store.load(KEY, 0));
+        store.save(KEY, new double[] { 1, 2 }, 1000);
+        store.save("other", new double[] { 3 }, 1000);
+
+        // Pending states are visible before they are flushed
+        assertArrayEquals(new double[] { 1, 2 }, store.load(KEY, 0), 0);
+        assertEquals(0, store.size());
+        store.flush();
+        assertEquals(2, store.size());
+
+        store.save(KEY, new double[] { 4, Double.NaN }, 1000);
+        store.close();
+
+        store = new MappedFileThresholdStateStore(file.toPath(), 60000, 1000);
+        assertEquals(2, store.size());
+        assertArrayEquals(new double[] { 4, Double.NaN }, store.load(KEY, 0), 0);
+        assertArrayEquals(new double[] { 3 }, store.load("other", 0), 0);
+        assertNull(store.load("missing", 0));
+        store.close();
+    }
+
+    @Test
+    public void canCompactSupersededStates() throws Exception {
+        final File file = new File(m_folder.getRoot(), "states.dat");
+        final double[] state = new double[64];
+
+        final MappedFileThresholdStateStore store = new MappedFileThresholdStateStore(file.toPath(), 60000, 1000);
+        store.save("other", new double[] { 42 }, 1000);
+        for (int i = 0; i < 5000; i++) {
+            Arrays.fill(state, i);
+            store.save(KEY, state.clone(), 1000);
+            store.flush();
+        }
+
+        // 5000 records of 548 bytes would not fit in the initial mapping without compaction
+        assertTrue(file.length() <= 1024 * 1024);
+        assertTrue(store.getUsedBytes() < 1024 * 1024);
+        assertEquals(2, store.size());
+        assertArrayEquals(state, store.load(KEY, 0), 0);
+        assertArrayEquals(new double[] { 42 }, store.load("other", 0), 0);
+        assertFalse(new File(m_folder.getRoot(), "states.dat.compact").exists());
+        store.close();
+
+        final MappedFileThresholdStateStore reloaded = new MappedFileThresholdStateStore(file.toPath(), 60000, 1000);
+        assertEquals(2, reloaded.size());
+        assertArrayEquals(state, reloaded.load(KEY, 0), 0);
+        assertArrayEquals(new double[] { 42 }, reloaded.load("other", 0), 0);
+        reloaded.close();
+    }
+
+    @Test
+    public void ignoresInterruptedCompactions() throws Exception {
+        final File file = new File(m_folder.getRoot(), "states.dat");
+        final File compacted = new File(m_folder.getRoot(), "states.dat.compact");
+
+        MappedFileThresholdStateStore store = new MappedFileThresholdStateStore(file.toPath(), 60000, 1000);
+        store.save(KEY, new double[] { 1, 2 }, 1000);
+        store.close();
+
+        // A crash during compaction leaves a partial copy next to the original file
+        Files.write(compacted.toPath(), new byte[] { 1, 2, 3 });
+
+        store = new MappedFileThresholdStateStore(file.toPath(), 60000, 1000);
+        assertFalse(compacted.exists());
+        assertEquals(1, store.size());
+        assertArrayEquals(new double[] { 1, 2 }, store.load(KEY, 0), 0);
+        store.close();
+    }
+
+    @Test
+    public void canRecoverFromTornRecords() throws Exception {
+        final File file = new File(m_folder.getRoot(), "states.dat");
+
+        MappedFileThresholdStateStore store = new MappedFileThresholdStateStore(file.toPath(), 60000, 1000);
+        store.save(KEY, new double[] { 1, 2 }, 1000);
+        store.flush();
+        store.save("other", new double[] { 3, 4 }, 1000);
+        store.close();
+
+        // Corrupt a value of the second record: header (8) + first record (36 + 16) + offset of its values (32)
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(8 + 52 + 32);
+            raf.writeLong(Double.doubleToLongBits(5));
+        }
+
+        store = new MappedFileThresholdStateStore(file.toPath(), 60000, 1000);
+        assertEquals(1, store.size());
+        assertArrayEquals(new double[] { 1, 2 }, store.load(KEY, 0), 0);
+        assertNull(store.load("other", 0));
+
+        // New states are appended after the last valid record
+        store.save("other", new double[] { 6 }, 1000);
+        store.close();
+
+        store = new MappedFileThresholdStateStore(file.toPath(), 60000, 1000);
+        assertEquals(2, store.size());
+        assertArrayEquals(new double[] { 6 }, store.load("other", 0), 0);
+        store.close();
+    }
+
+    @Test
+    public void ignoresOldStates() throws Exception {
+        final File file = new File(m_folder.getRoot(), "states.dat");
+
+        MappedFileThresholdStateStore store = new MappedFileThresholdStateStore(file.toPath(), 60000, 1000);
+        store.save(KEY, new double[] { 1, 2 }, 1000);
+        store.save("other", new double[] { 3 }, 2000);
+        assertNull(store.load(KEY, 1500));
+        assertArrayEquals(new double[] { 3 }, store.load("other", 1500), 0);
+        store.close();
+
+        store = new MappedFileThresholdStateStore(file.toPath(), 60000, 1000);
+        assertNull(store.load(KEY, 1500));
+        assertArrayEquals(new double[] { 1, 2 }, store.load(KEY, 1000), 0);
+        assertArrayEquals(new double[] { 3 }, store.load("other", 1500), 0);
+        store.close();
+    }
+}
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2017 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2017 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.threshd;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.MapContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opennms.netmgt.config.threshd.Expression;
+
+/**
+ * Measures the throughput of the counter history and of expression thresholds
+ * when cycling through one million resources, each with two counters.
+ *
+ * Expressions are evaluated both with the compiled {@link ExpressionConfigWrapper} and by
+ * creating a new engine and parsing the expression for every evaluation, which is what
+ * the wrapper used to do.
+ *
+ * The size of the counter history is printed after each iteration.
+ *
+ * Run with the main method, from the IDE, or with the JMH runner on the test classpath.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class ThresholdingBenchmark {
+
+    private static final String EXPRESSION = "ifSpeed > 0 ? (ifInOctets * 8 / ifSpeed) * 100 : 0";
+
+    private static final long STEP_MS = 300000;
+
+    @Param({"1000000"})
+    public int resources;
+
+    private CounterHistory history;
+
+    private String[] resourceIds;
+
+    private ExpressionConfigWrapper expression;
+
+    private Map<String, Double> values;
+
+    private int next;
+
+    private long timestamp;
+
+    @Setup
+    public void setUp() throws ThresholdExpressionException {
+        history = new CounterHistory(resources, 1, TimeUnit.DAYS);
+        resourceIds = new String[resources];
+        for (int i = 0; i < resources; i++) {
+            resourceIds[i] = "node[" + (i / 100) + "].resourceType[interfaceSnmp].instance[eth" + (i % 100) + "]";
+            history.getRate(resourceIds[i], "ifInOctets", 0, i, false);
+            history.getRate(resourceIds[i], "ifOutOctets", 0, i, false);
+        }
+        next = 0;
+        timestamp = STEP_MS;
+
+        final Expression exp = new Expression();
+        exp.setExpression(EXPRESSION);
+        expression = new ExpressionConfigWrapper(exp);
+        values = new HashMap<>();
+        values.put("ifInOctets", 1000000.0);
+        values.put("ifSpeed", 100000000.0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.printf("%nCounter history: %d resources, %d samples, ~%d MB%n",
+                history.getResourceCount(), history.getSampleCount(), history.getEstimatedBytes() / (1024 * 1024));
+    }
+
+    @Benchmark
+    public double updateCounters() {
+        final String resourceId = resourceIds[next];
+        if (++next == resources) {
+            next = 0;
+            timestamp += STEP_MS;
+        }
+        return history.getRate(resourceId, "ifInOctets", timestamp, timestamp, false)
+                + history.getRate(resourceId, "ifOutOctets", timestamp, timestamp, false);
+    }
+
+    @Benchmark
+    public double evaluateCompiledExpression() throws ThresholdExpressionException {
+        return expression.evaluate(values);
+    }
+
+    @Benchmark
+    public double evaluateUncompiledExpression() {
+        final Map<String, Object> context = new HashMap<>(values);
+        context.put("datasources", new HashMap<>(values));
+        context.put("math", new ExpressionConfigWrapper.MathBinding());
+        final Object result = new JexlEngine().createExpression(EXPRESSION).evaluate(new MapContext(context));
+        return Double.parseDouble(result.toString());
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(ThresholdingBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
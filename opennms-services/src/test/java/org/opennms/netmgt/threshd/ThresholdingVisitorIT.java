@@ -216,7 +216,8 @@ public class ThresholdingVisitorIT {
     @Before
     public void setUp() throws Exception {
         // Resets Counters Cache Data
-        CollectionResourceWrapper.s_cache.clear();
+        CollectionResourceWrapper.s_counters.clear();
+        ThresholdStateStoreFactory.setStore(new InMemoryThresholdStateStore());
 
         MockLogAppender.setupLogging();
 
@@ -118,7 +118,12 @@ public class MonitorsListCommandIT {
             "org.opennms.netmgt.poller.monitors.CiscoIpSlaMonitor",
             "org.opennms.netmgt.poller.monitors.VmwareMonitor",
             "org.opennms.netmgt.poller.monitors.VmwareCimMonitor",
-            "org.opennms.netmgt.poller.monitors.WsManMonitor")
+            "org.opennms.netmgt.poller.monitors.WsManMonitor",
+            "org.opennms.netmgt.poller.monitors.AsyncDnsMonitor",
+            "org.opennms.netmgt.poller.monitors.AsyncHttpMonitor",
+            "org.opennms.netmgt.poller.monitors.AsyncHttpsMonitor",
+            "org.opennms.netmgt.poller.monitors.AsyncSmtpMonitor",
+            "org.opennms.netmgt.poller.monitors.AsyncTcpMonitor")
             .build();
 
     @ClassRule